@@ -23,6 +23,7 @@ import android.database.sqlite.SQLiteDatabase;
 import java.io.IOException;
 import java.io.StreamTokenizer;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
@@ -487,6 +488,30 @@ public class CallHistoryServiceImpl implements CallHistoryService, CallListener,
         return result;
     }
 
+    /**
+     * Returns the supplied number of calls made before the given date
+     *
+     * @param endDate Date the end date of the calls
+     * @param count calls count
+     *
+     * @return Collection of CallRecords with CallPeerRecord
+     */
+    public Collection<CallRecord> findLastBefore(Date endDate, int count) {
+        List<CallRecord> result = new ArrayList<>();
+
+        String endTimeStamp = String.valueOf(endDate.getTime());
+        String[] args = {endTimeStamp};
+
+        Cursor cursor = mDB.query(CallHistoryService.TABLE_NAME, null,
+                CallHistoryService.CALL_START + "<?", args, null, null, ORDER_DESC, String.valueOf(count));
+
+        while (cursor.moveToNext()) {
+            result.add(convertHistoryRecordToCallRecord(cursor));
+        }
+        cursor.close();
+        return result;
+    }
+
     /**
      * Find the calls made by the supplied peer address
      *
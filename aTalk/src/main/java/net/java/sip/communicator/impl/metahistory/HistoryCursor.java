@@ -0,0 +1,122 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.metahistory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazy cursor over the records of a single history source in descending timestamp order.
+ * The records are fetched in pages from a keyset position i.e. the timestamp of the oldest record
+ * returned so far; so each page is a bounded index range query on the source database.
+ *
+ * @author Eng Chong Meng
+ */
+class HistoryCursor implements Iterator<Object> {
+    /**
+     * Fetch a page of records from the history source.
+     */
+    interface PageLoader {
+        /**
+         * Returns up to the given number of the most recent records before the given date.
+         *
+         * @param endDate the records timestamp must be earlier than endDate
+         * @param count the maximum number of records to return
+         *
+         * @return Collection of the history records in any order.
+         */
+        Collection<?> loadBefore(Date endDate, int count);
+    }
+
+    private final PageLoader mLoader;
+
+    /**
+     * The records of the current page not yet returned, in descending timestamp order.
+     */
+    private final ArrayDeque<Object> mPage = new ArrayDeque<>();
+
+    private int mPageSize;
+
+    /**
+     * Exclusive upper bound timestamp of the next page.
+     */
+    private long mKeyset;
+
+    private boolean isExhausted = false;
+
+    /**
+     * Creates a cursor returning the records before the given date.
+     *
+     * @param loader the history source page loader
+     * @param endDate the records timestamp must be earlier than endDate
+     * @param pageSize the number of records to fetch per page
+     */
+    HistoryCursor(PageLoader loader, Date endDate, int pageSize) {
+        mLoader = loader;
+        mKeyset = endDate.getTime();
+        mPageSize = Math.max(1, pageSize);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mPage.isEmpty() && !isExhausted) {
+            loadPage();
+        }
+        return !mPage.isEmpty();
+    }
+
+    @Override
+    public Object next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return mPage.poll();
+    }
+
+    /**
+     * Fetch the next page before the keyset. The records sharing the oldest timestamp of a full page
+     * are held back to the next page, as the source may have more records with the same timestamp.
+     */
+    private void loadPage() {
+        while (true) {
+            List<Object> records = new ArrayList<>(mLoader.loadBefore(new Date(mKeyset), mPageSize));
+            if (records.size() < mPageSize) {
+                isExhausted = true;
+            }
+            if (records.isEmpty())
+                return;
+
+            records.sort(Collections.reverseOrder(new MetaHistoryServiceImpl.RecordsComparator()));
+            // A source may merge several per-contact queries, each limited to count; only the most recent
+            // count records of the page are complete.
+            int end = Math.min(records.size(), mPageSize);
+            if (!isExhausted) {
+                long oldest = getTime(records.get(end - 1));
+                while (end > 0 && getTime(records.get(end - 1)) == oldest) {
+                    end--;
+                }
+                // The whole page has the same timestamp; retry with a larger page.
+                if (end == 0) {
+                    mPageSize *= 2;
+                    continue;
+                }
+                mKeyset = oldest + 1;
+            }
+            mPage.addAll(records.subList(0, end));
+            return;
+        }
+    }
+
+    private static long getTime(Object record) {
+        return MetaHistoryServiceImpl.RecordsComparator.getDate(record).getTime();
+    }
+}
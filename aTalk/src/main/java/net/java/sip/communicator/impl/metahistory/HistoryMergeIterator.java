@@ -0,0 +1,78 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license.
+ * See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.metahistory;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Lazy k-way merge of the records of several history sources, each already sorted in the given order.
+ * Only the head record of each source is held in the merge heap, so a source is read no further than
+ * the records actually consumed. Records with the same timestamp are all kept, in the sources order.
+ *
+ * @author Eng Chong Meng
+ */
+class HistoryMergeIterator implements Iterator<Object> {
+    private final PriorityQueue<Head> mHeap;
+
+    /**
+     * Creates a merge iterator.
+     *
+     * @param sources the history sources iterators, each sorted according to order
+     * @param order the records order of the sources and the merged result
+     */
+    HistoryMergeIterator(List<? extends Iterator<?>> sources, final Comparator<Object> order) {
+        mHeap = new PriorityQueue<>(Math.max(1, sources.size()), (h1, h2) -> {
+            int result = order.compare(h1.record, h2.record);
+            return (result != 0) ? result : Integer.compare(h1.index, h2.index);
+        });
+
+        for (int i = 0; i < sources.size(); i++) {
+            Iterator<?> source = sources.get(i);
+            if (source.hasNext()) {
+                mHeap.add(new Head(source, i));
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !mHeap.isEmpty();
+    }
+
+    @Override
+    public Object next() {
+        Head head = mHeap.poll();
+        if (head == null)
+            throw new NoSuchElementException();
+
+        Object record = head.record;
+        if (head.source.hasNext()) {
+            head.record = head.source.next();
+            mHeap.add(head);
+        }
+        return record;
+    }
+
+    /**
+     * The next record of a history source.
+     */
+    private static class Head {
+        final Iterator<?> source;
+        final int index;
+        Object record;
+
+        Head(Iterator<?> source, int index) {
+            this.source = source;
+            this.index = index;
+            this.record = source.next();
+        }
+    }
+}
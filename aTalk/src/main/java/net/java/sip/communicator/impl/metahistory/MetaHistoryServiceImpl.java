@@ -12,9 +12,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Hashtable;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.TreeSet;
 
 import net.java.sip.communicator.service.callhistory.CallHistoryService;
 import net.java.sip.communicator.service.callhistory.CallPeerRecord;
@@ -72,7 +71,7 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
     public Collection<Object> findByStartDate(String[] services, Object descriptor, Date startDate) {
         MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
 
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
+        List<List<Object>> sources = new ArrayList<>();
         for (int i = 0; i < services.length; i++) {
             String name = services[i];
             Object serv = getService(name);
@@ -82,10 +81,10 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 mhs.addSearchProgressListener(listenWrapper);
 
                 if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findByStartDate((MetaContact) descriptor, startDate));
+                    sources.add(new ArrayList<>(mhs.findByStartDate((MetaContact) descriptor, startDate)));
                 }
                 else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findByStartDate((ChatRoom) descriptor, startDate));
+                    sources.add(new ArrayList<>(mhs.findByStartDate((ChatRoom) descriptor, startDate)));
                 }
                 mhs.removeSearchProgressListener(listenWrapper);
             }
@@ -93,12 +92,12 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 CallHistoryService chs = (CallHistoryService) serv;
                 listenWrapper.setIx(i);
                 chs.addSearchProgressListener(listenWrapper);
-                result.addAll(chs.findByStartDate(startDate));
+                sources.add(new ArrayList<>(chs.findByStartDate(startDate)));
                 chs.removeSearchProgressListener(listenWrapper);
             }
         }
         listenWrapper.fireLastProgress(startDate, null, null);
-        return result;
+        return mergeSorted(sources, Integer.MAX_VALUE);
     }
 
     /**
@@ -113,7 +112,7 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
     public Collection<Object> findByEndDate(String[] services, Object descriptor, Date endDate) {
         MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
 
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
+        List<List<Object>> sources = new ArrayList<>();
         for (int i = 0; i < services.length; i++) {
             String name = services[i];
             Object serv = getService(name);
@@ -123,10 +122,10 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 mhs.addSearchProgressListener(listenWrapper);
 
                 if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findByEndDate((MetaContact) descriptor, endDate));
+                    sources.add(new ArrayList<>(mhs.findByEndDate((MetaContact) descriptor, endDate)));
                 }
                 else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findByEndDate((ChatRoom) descriptor, endDate));
+                    sources.add(new ArrayList<>(mhs.findByEndDate((ChatRoom) descriptor, endDate)));
                 }
                 mhs.removeSearchProgressListener(listenWrapper);
             }
@@ -134,12 +133,12 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 CallHistoryService chs = (CallHistoryService) serv;
                 listenWrapper.setIx(i);
                 chs.addSearchProgressListener(listenWrapper);
-                result.addAll(chs.findByEndDate(endDate));
+                sources.add(new ArrayList<>(chs.findByEndDate(endDate)));
                 chs.removeSearchProgressListener(listenWrapper);
             }
         }
         listenWrapper.fireLastProgress(null, endDate, null);
-        return result;
+        return mergeSorted(sources, Integer.MAX_VALUE);
     }
 
     /**
@@ -155,7 +154,7 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
     public Collection<Object> findByPeriod(String[] services, Object descriptor, Date startDate, Date endDate) {
         MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
 
-        LinkedList<Object> result = new LinkedList<>();
+        List<List<Object>> sources = new ArrayList<>();
         for (int i = 0; i < services.length; i++) {
             String name = services[i];
             Object serv = getService(name);
@@ -165,10 +164,10 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 mhs.addSearchProgressListener(listenWrapper);
 
                 if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findByPeriod((MetaContact) descriptor, startDate, endDate));
+                    sources.add(new ArrayList<>(mhs.findByPeriod((MetaContact) descriptor, startDate, endDate)));
                 }
                 else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findByPeriod((ChatRoom) descriptor, startDate, endDate));
+                    sources.add(new ArrayList<>(mhs.findByPeriod((ChatRoom) descriptor, startDate, endDate)));
                 }
                 mhs.removeSearchProgressListener(listenWrapper);
             }
@@ -176,14 +175,12 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 CallHistoryService chs = (CallHistoryService) serv;
                 listenWrapper.setIx(i);
                 chs.addSearchProgressListener(listenWrapper);
-                result.addAll(chs.findByPeriod(startDate, endDate));
+                sources.add(new ArrayList<>(chs.findByPeriod(startDate, endDate)));
                 chs.removeSearchProgressListener(listenWrapper);
             }
         }
         listenWrapper.fireLastProgress(startDate, endDate, null);
-
-        Collections.sort(result, new RecordsComparator());
-        return result;
+        return mergeSorted(sources, Integer.MAX_VALUE);
     }
 
     /**
@@ -218,7 +215,7 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
             Date endDate, String[] keywords, boolean caseSensitive) {
         MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
 
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
+        List<List<Object>> sources = new ArrayList<>();
         for (int i = 0; i < services.length; i++) {
             String name = services[i];
             Object serv = getService(name);
@@ -228,10 +225,10 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 mhs.addSearchProgressListener(listenWrapper);
 
                 if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findByPeriod((MetaContact) descriptor, startDate, endDate, keywords, caseSensitive));
+                    sources.add(new ArrayList<>(mhs.findByPeriod((MetaContact) descriptor, startDate, endDate, keywords, caseSensitive)));
                 }
                 else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findByPeriod((ChatRoom) descriptor, startDate, endDate, keywords, caseSensitive));
+                    sources.add(new ArrayList<>(mhs.findByPeriod((ChatRoom) descriptor, startDate, endDate, keywords, caseSensitive)));
                 }
                 mhs.removeSearchProgressListener(listenWrapper);
             }
@@ -241,16 +238,17 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 chs.addSearchProgressListener(listenWrapper);
                 Collection<CallRecord> cs = chs.findByPeriod(startDate, endDate);
 
+                List<Object> callRecords = new ArrayList<>();
                 for (CallRecord callRecord : cs) {
                     if (matchCallPeer(callRecord.getPeerRecords(), keywords, caseSensitive))
-                        result.add(callRecord);
+                        callRecords.add(callRecord);
                 }
+                sources.add(callRecords);
                 chs.removeSearchProgressListener(listenWrapper);
             }
         }
         listenWrapper.fireLastProgress(startDate, endDate, keywords);
-
-        return result;
+        return mergeSorted(sources, Integer.MAX_VALUE);
     }
 
     /**
@@ -306,7 +304,7 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
     public Collection<Object> findByKeywords(String[] services, Object descriptor, String[] keywords, boolean caseSensitive) {
         MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
 
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
+        List<List<Object>> sources = new ArrayList<>();
         for (int i = 0; i < services.length; i++) {
             String name = services[i];
             Object serv = getService(name);
@@ -316,10 +314,10 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 mhs.addSearchProgressListener(listenWrapper);
 
                 if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findByKeywords((MetaContact) descriptor, keywords, caseSensitive));
+                    sources.add(new ArrayList<>(mhs.findByKeywords((MetaContact) descriptor, keywords, caseSensitive)));
                 }
                 else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findByKeywords((ChatRoom) descriptor, keywords, caseSensitive));
+                    sources.add(new ArrayList<>(mhs.findByKeywords((ChatRoom) descriptor, keywords, caseSensitive)));
                 }
                 mhs.removeSearchProgressListener(listenWrapper);
             }
@@ -331,15 +329,17 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 // this will get all call records
                 Collection<CallRecord> cs = chs.findByEndDate(new Date());
 
+                List<Object> callRecords = new ArrayList<>();
                 for (CallRecord callRecord : cs) {
                     if (matchCallPeer(callRecord.getPeerRecords(), keywords, caseSensitive))
-                        result.add(callRecord);
+                        callRecords.add(callRecord);
                 }
+                sources.add(callRecords);
                 chs.removeSearchProgressListener(listenWrapper);
             }
         }
         listenWrapper.fireLastProgress(null, null, keywords);
-        return result;
+        return mergeSorted(sources, Integer.MAX_VALUE);
     }
 
     /**
@@ -352,42 +352,7 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
      * @return Collection sorted result that consists of records returned from the services we wrap
      */
     public Collection<Object> findLast(String[] services, Object descriptor, int count) {
-        MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
-
-        for (int i = 0; i < services.length; i++) {
-            String name = services[i];
-            Object serv = getService(name);
-            if (serv instanceof MessageHistoryService) {
-                MessageHistoryService mhs = (MessageHistoryService) serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
-
-                // will also get fileHistory for metaContact and chatRoom
-                if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findLast((MetaContact) descriptor, count));
-                }
-                else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findLast((ChatRoom) descriptor, count));
-                }
-                mhs.removeSearchProgressListener(listenWrapper);
-            }
-            else if (serv instanceof CallHistoryService) {
-                CallHistoryService chs = (CallHistoryService) serv;
-                listenWrapper.setIx(i);
-                chs.addSearchProgressListener(listenWrapper);
-                result.addAll(chs.findLast(count));
-                chs.removeSearchProgressListener(listenWrapper);
-            }
-        }
-        listenWrapper.fireLastProgress(null, null, null);
-
-        LinkedList<Object> resultAsList = new LinkedList<>(result);
-        int startIndex = resultAsList.size() - count;
-
-        if (startIndex < 0)
-            startIndex = 0;
-        return resultAsList.subList(startIndex, resultAsList.size());
+        return findLastMessagesBefore(services, descriptor, new Date(Long.MAX_VALUE), count);
     }
 
     /**
@@ -403,7 +368,7 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
     public Collection<Object> findFirstMessagesAfter(String[] services, Object descriptor, Date date, int count) {
         MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
 
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
+        List<List<Object>> sources = new ArrayList<>();
         for (int i = 0; i < services.length; i++) {
             String name = services[i];
             Object serv = getService(name);
@@ -413,10 +378,10 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 mhs.addSearchProgressListener(listenWrapper);
 
                 if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findFirstMessagesAfter((MetaContact) descriptor, date, count));
+                    sources.add(new ArrayList<>(mhs.findFirstMessagesAfter((MetaContact) descriptor, date, count)));
                 }
                 else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findFirstMessagesAfter((ChatRoom) descriptor, date, count));
+                    sources.add(new ArrayList<>(mhs.findFirstMessagesAfter((ChatRoom) descriptor, date, count)));
                 }
                 mhs.removeSearchProgressListener(listenWrapper);
             }
@@ -425,26 +390,12 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
                 listenWrapper.setIx(i);
                 chs.addSearchProgressListener(listenWrapper);
 
-                Collection<CallRecord> col = chs.findByStartDate(date);
-                if (col.size() > count) {
-                    // before we make a sublist make sure there are sorted in the right order
-                    List<CallRecord> l = new LinkedList<>(col);
-                    Collections.sort(l, new RecordsComparator());
-                    result.addAll(l.subList(0, count));
-                }
-                else
-                    result.addAll(col);
+                sources.add(new ArrayList<>(chs.findByStartDate(date)));
                 chs.removeSearchProgressListener(listenWrapper);
             }
         }
         listenWrapper.fireLastProgress(date, null, null);
-        LinkedList<Object> resultAsList = new LinkedList<>(result);
-
-        int toIndex = count;
-        if (toIndex > resultAsList.size())
-            toIndex = resultAsList.size();
-
-        return resultAsList.subList(0, toIndex);
+        return mergeSorted(sources, count);
     }
 
     /**
@@ -459,46 +410,137 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
      */
     public Collection<Object> findLastMessagesBefore(String[] services, Object descriptor, Date date, int count) {
         MessageProgressWrapper listenWrapper = new MessageProgressWrapper(services.length);
-        TreeSet<Object> result = new TreeSet<>(new RecordsComparator());
+        Iterator<Object> records = findBefore(services, descriptor, date, count, listenWrapper);
+
+        List<Object> result = new ArrayList<>();
+        while (result.size() < count && records.hasNext()) {
+            result.add(records.next());
+        }
+        listenWrapper.fireLastProgress(date, null, null);
+
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Returns a lazy iterator over the records before the given date, in descending timestamp order.
+     * Each service is read in pages of pageSize records from the timestamp of its last returned record,
+     * and only as far as the records are consumed.
+     *
+     * @param services the services classNames we will query
+     * @param descriptor CallPeer address(String), MetaContact or ChatRoom.
+     * @param date records before date
+     * @param pageSize number of records to fetch from a service per query
+     *
+     * @return Iterator over the records of the services we wrap, most recent first
+     */
+    public Iterator<Object> findBefore(String[] services, Object descriptor, Date date, int pageSize) {
+        return findBefore(services, descriptor, date, pageSize, null);
+    }
+
+    /**
+     * Returns a lazy iterator over the records before the given date, in descending timestamp order.
+     * The listenWrapper, if any, is registered on a service for the duration of each of its page queries.
+     *
+     * @param services the services classNames we will query
+     * @param descriptor CallPeer address(String), MetaContact or ChatRoom.
+     * @param date records before date
+     * @param pageSize number of records to fetch from a service per query
+     * @param listenWrapper the progress listener of the search; may be null
+     *
+     * @return Iterator over the records of the services we wrap, most recent first
+     */
+    private Iterator<Object> findBefore(String[] services, Object descriptor, Date date, int pageSize,
+            MessageProgressWrapper listenWrapper) {
+        List<HistoryCursor> cursors = new ArrayList<>();
         for (int i = 0; i < services.length; i++) {
-            String name = services[i];
-            Object serv = getService(name);
+            Object serv = getService(services[i]);
+            HistoryCursor.PageLoader loader = null;
             if (serv instanceof MessageHistoryService) {
-                MessageHistoryService mhs = (MessageHistoryService) serv;
-                listenWrapper.setIx(i);
-                mhs.addSearchProgressListener(listenWrapper);
+                final MessageHistoryService mhs = (MessageHistoryService) serv;
 
+                // will also get fileHistory for metaContact and chatRoom
                 if (descriptor instanceof MetaContact) {
-                    result.addAll(mhs.findLastMessagesBefore((MetaContact) descriptor, date, count));
+                    final MetaContact metaContact = (MetaContact) descriptor;
+                    loader = (endDate, count) -> mhs.findLastMessagesBefore(metaContact, endDate, count);
                 }
                 else if (descriptor instanceof ChatRoom) {
-                    result.addAll(mhs.findLastMessagesBefore((ChatRoom) descriptor, date, count));
+                    final ChatRoom chatRoom = (ChatRoom) descriptor;
+                    loader = (endDate, count) -> mhs.findLastMessagesBefore(chatRoom, endDate, count);
                 }
-                mhs.removeSearchProgressListener(listenWrapper);
             }
             else if (serv instanceof CallHistoryService) {
+                loader = ((CallHistoryService) serv)::findLastBefore;
+            }
+
+            if (loader != null) {
+                if (listenWrapper != null)
+                    loader = withProgress(loader, serv, i, listenWrapper);
+                cursors.add(new HistoryCursor(loader, date, pageSize));
+            }
+        }
+        return new HistoryMergeIterator(cursors, Collections.reverseOrder(new RecordsComparator()));
+    }
+
+    /**
+     * Wraps a page loader so that the listenWrapper is registered on the service during each page query.
+     *
+     * @param loader the page loader of the service
+     * @param serv the MessageHistoryService or CallHistoryService queried by the loader
+     * @param ix the index of the service in the search
+     * @param listenWrapper the progress listener of the search
+     *
+     * @return the wrapped page loader
+     */
+    private static HistoryCursor.PageLoader withProgress(HistoryCursor.PageLoader loader, Object serv, int ix,
+            MessageProgressWrapper listenWrapper) {
+        return (endDate, count) -> {
+            listenWrapper.setIx(ix);
+            if (serv instanceof MessageHistoryService) {
+                MessageHistoryService mhs = (MessageHistoryService) serv;
+                mhs.addSearchProgressListener(listenWrapper);
+                try {
+                    return loader.loadBefore(endDate, count);
+                } finally {
+                    mhs.removeSearchProgressListener(listenWrapper);
+                }
+            }
+            else {
                 CallHistoryService chs = (CallHistoryService) serv;
-                listenWrapper.setIx(i);
                 chs.addSearchProgressListener(listenWrapper);
-
-                Collection<CallRecord> col = chs.findByEndDate(date);
-                if (col.size() > count) {
-                    List<CallRecord> l = new LinkedList<>(col);
-                    result.addAll(l.subList(l.size() - count, l.size()));
+                try {
+                    return loader.loadBefore(endDate, count);
+                } finally {
+                    chs.removeSearchProgressListener(listenWrapper);
                 }
-                else
-                    result.addAll(col);
-                chs.removeSearchProgressListener(listenWrapper);
             }
-        }
-        listenWrapper.fireLastProgress(date, null, null);
+        };
+    }
 
-        LinkedList<Object> resultAsList = new LinkedList<>(result);
-        int startIndex = resultAsList.size() - count;
-        if (startIndex < 0)
-            startIndex = 0;
+    /**
+     * Merge the records of the services, returning up to count records in ascending timestamp order.
+     *
+     * @param sources the records of each service in any order
+     * @param count the maximum number of records to return
+     *
+     * @return the merged records
+     */
+    private static List<Object> mergeSorted(List<List<Object>> sources, int count) {
+        RecordsComparator comparator = new RecordsComparator();
+        List<Iterator<Object>> iterators = new ArrayList<>(sources.size());
+        int size = 0;
+        for (List<Object> source : sources) {
+            source.sort(comparator);
+            iterators.add(source.iterator());
+            size += source.size();
+        }
 
-        return resultAsList.subList(startIndex, resultAsList.size());
+        HistoryMergeIterator records = new HistoryMergeIterator(iterators, comparator);
+        List<Object> result = new ArrayList<>(Math.min(size, count));
+        while (result.size() < count && records.hasNext()) {
+            result.add(records.next());
+        }
+        return result;
     }
 
     /**
@@ -607,10 +649,10 @@ public class MetaHistoryServiceImpl implements MetaHistoryService, ServiceListen
     }
 
     /**
-     * Used to compare various records to be ordered in TreeSet according their timestamp.
+     * Used to compare various records to be ordered according their timestamp.
      */
-    private static class RecordsComparator implements Comparator<Object> {
-        private Date getDate(Object o) {
+    static class RecordsComparator implements Comparator<Object> {
+        static Date getDate(Object o) {
             Date date = new Date(0);
             if (o instanceof MessageDeliveredEvent)
                 date = ((MessageDeliveredEvent) o).getTimestamp();
@@ -0,0 +1,475 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.msghistory;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.java.sip.communicator.service.protocol.ProtocolProviderService;
+import net.java.sip.communicator.service.protocol.RegistrationState;
+import net.java.sip.communicator.service.protocol.event.RegistrationStateChangeEvent;
+import net.java.sip.communicator.service.protocol.event.RegistrationStateChangeListener;
+
+import org.atalk.android.gui.chat.ChatSession;
+import org.atalk.persistance.DatabaseBackend;
+import org.atalk.service.configuration.ConfigurationService;
+import org.jivesoftware.smack.SmackException;
+import org.jivesoftware.smack.XMPPConnection;
+import org.jivesoftware.smack.XMPPException;
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smackx.forward.packet.Forwarded;
+import org.jivesoftware.smackx.mam.MamManager;
+import org.jivesoftware.smackx.muc.MultiUserChatManager;
+import org.jivesoftware.smackx.omemo.OmemoManager;
+import org.jxmpp.jid.EntityBareJid;
+import org.jxmpp.jid.EntityFullJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.jxmpp.stringprep.XmppStringprepException;
+
+import timber.log.Timber;
+
+/**
+ * Catches up the chat sessions of an account with the server message archive (XEP-0313) in the background when
+ * the account has registered; so that opening a chat after a long offline period does not stall while its archive
+ * is downloaded.
+ *
+ * The archive of each session is paged forward from its last mamDate, the most recently active sessions first,
+ * with at most {@link #PNAME_MAM_CATCHUP_CONCURRENCY} queries in progress. Each page is handed to a single history
+ * writer which saves it in one database transaction and advances the mamDate of the session; so a catch-up
+ * interrupted by a disconnection resumes from the last saved page when the account registers again. A
+ * <code>ChatPanel</code> opened on a session being caught up waits for it instead of querying the archive itself.
+ *
+ * The OMEMO stanza listeners of the account are only stopped while an archive page is being received, so that the
+ * archived messages are not decrypted twice; {@link #stopOmemoListeners} and {@link #resumeOmemoListeners} count
+ * the queries in progress of the engine and of the <code>ChatPanel</code>s, and resume the listeners after the last.
+ * The chat rooms which are not joined when the account registers e.g. joined lazily are left to their
+ * <code>ChatPanel</code>.
+ *
+ * @author Eng Chong Meng
+ */
+public class MamCatchUpEngine implements RegistrationStateChangeListener {
+    /**
+     * The property which enables the catch-up of the chat sessions with the message archive on registration.
+     */
+    public static final String PNAME_MAM_CATCHUP_ENABLED = "msghistory.MAM_CATCHUP_ENABLED";
+
+    /**
+     * The property of the maximum number of message archive queries in progress at the same time.
+     */
+    public static final String PNAME_MAM_CATCHUP_CONCURRENCY = "msghistory.MAM_CATCHUP_CONCURRENCY";
+
+    /**
+     * The property of the maximum number of chat sessions of an account, the most recently active, to catch up.
+     */
+    public static final String PNAME_MAM_CATCHUP_MAX_SESSIONS = "msghistory.MAM_CATCHUP_MAX_SESSIONS";
+
+    /**
+     * The default of {@link #PNAME_MAM_CATCHUP_CONCURRENCY}.
+     */
+    private static final int DEFAULT_CONCURRENCY = 3;
+
+    /**
+     * The default of {@link #PNAME_MAM_CATCHUP_MAX_SESSIONS}.
+     */
+    private static final int DEFAULT_MAX_SESSIONS = 50;
+
+    /**
+     * The number of messages requested per archive page.
+     */
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * The catch-up of a chat session.
+     */
+    private static class CatchUp implements Comparable<CatchUp> {
+        final ProtocolProviderService pps;
+
+        final String sessionUuid;
+
+        final EntityBareJid entityJid;
+
+        final boolean isMuc;
+
+        /**
+         * The mamDate of the session when queued; the later, the higher the priority.
+         */
+        final Date mamDate;
+
+        /**
+         * Counted down when the catch-up has ended.
+         */
+        final CountDownLatch done = new CountDownLatch(1);
+
+        /**
+         * Set when the account has unregistered; the catch-up stops after the page in progress.
+         */
+        volatile boolean cancelled;
+
+        CatchUp(ProtocolProviderService pps, String sessionUuid, EntityBareJid entityJid, boolean isMuc, Date mamDate) {
+            this.pps = pps;
+            this.sessionUuid = sessionUuid;
+            this.entityJid = entityJid;
+            this.isMuc = isMuc;
+            this.mamDate = mamDate;
+        }
+
+        @Override
+        public int compareTo(CatchUp other) {
+            return other.mamDate.compareTo(mamDate);
+        }
+    }
+
+    /**
+     * The message history service which saves the archived messages.
+     */
+    private final MessageHistoryServiceImpl mhs;
+
+    /**
+     * The catch-ups queued or in progress, by sessionUuid; guarded by this.
+     */
+    private final Map<String, CatchUp> catchUps = new HashMap<>();
+
+    /**
+     * The queued catch-ups, the most recently active session first; guarded by this.
+     */
+    private final PriorityQueue<CatchUp> queue = new PriorityQueue<>();
+
+    /**
+     * The number of catch-ups in progress on {@link #executor}; guarded by this.
+     */
+    private int running;
+
+    /**
+     * The number of archive queries in progress by OmemoManager, while which its stanza listeners are stopped;
+     * guarded by itself.
+     */
+    private final Map<OmemoManager, Integer> omemoQueries = new HashMap<>();
+
+    /**
+     * The executor of the archive queries.
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /**
+     * The single history writer which saves the pages of all the sessions in order.
+     */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    /**
+     * Creates a <code>MamCatchUpEngine</code>.
+     *
+     * @param mhs the message history service which saves the archived messages
+     */
+    MamCatchUpEngine(MessageHistoryServiceImpl mhs) {
+        this.mhs = mhs;
+    }
+
+    /**
+     * Starts the catch-up of an account when it has registered, and stops it when the account has unregistered
+     * or lost its connection.
+     *
+     * @param evt the <code>RegistrationStateChangeEvent</code>
+     */
+    @Override
+    public void registrationStateChanged(RegistrationStateChangeEvent evt) {
+        ProtocolProviderService pps = evt.getProvider();
+        RegistrationState state = evt.getNewState();
+
+        if (state == RegistrationState.REGISTERED) {
+            executor.execute(() -> start(pps));
+        }
+        else if (state == RegistrationState.UNREGISTERED
+                || state == RegistrationState.CONNECTION_FAILED
+                || state == RegistrationState.AUTHENTICATION_FAILED) {
+            cancel(pps);
+        }
+    }
+
+    /**
+     * Queues the catch-up of the most recently active chat sessions of an account.
+     *
+     * @param pps the protocol provider of the account
+     */
+    private void start(ProtocolProviderService pps) {
+        ConfigurationService cfg = MessageHistoryActivator.getConfigurationService();
+        if (!mhs.isHistoryLoggingEnabled() || ((cfg != null) && !cfg.getBoolean(PNAME_MAM_CATCHUP_ENABLED, true)))
+            return;
+
+        int maxSessions = (cfg == null) ? DEFAULT_MAX_SESSIONS
+                : cfg.getInt(PNAME_MAM_CATCHUP_MAX_SESSIONS, DEFAULT_MAX_SESSIONS);
+        XMPPConnection connection = pps.getConnection();
+        if (connection == null)
+            return;
+
+        Set<EntityBareJid> joinedRooms = MultiUserChatManager.getInstanceFor(connection).getJoinedRooms();
+        List<CatchUp> sessions = getSessions(pps, joinedRooms);
+        sessions.sort(null);
+
+        synchronized (this) {
+            for (CatchUp catchUp : sessions) {
+                if (maxSessions-- <= 0)
+                    break;
+                if (!catchUps.containsKey(catchUp.sessionUuid)) {
+                    catchUps.put(catchUp.sessionUuid, catchUp);
+                    queue.add(catchUp);
+                }
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Returns the chat sessions of an account which have been synchronized with the message archive before,
+     * except those of the chat rooms which are not joined.
+     *
+     * @param pps the protocol provider of the account
+     * @param joinedRooms the chat rooms joined by the account
+     *
+     * @return the catch-ups of the chat sessions of <code>pps</code>.
+     */
+    private List<CatchUp> getSessions(ProtocolProviderService pps, Set<EntityBareJid> joinedRooms) {
+        List<CatchUp> sessions = new ArrayList<>();
+        SQLiteDatabase db = DatabaseBackend.getReadableDB();
+        String[] columns = {ChatSession.SESSION_UUID, ChatSession.ENTITY_JID, ChatSession.MODE, ChatSession.MAM_DATE};
+        String[] args = {pps.getAccountID().getAccountUuid()};
+
+        Cursor cursor = db.query(ChatSession.TABLE_NAME, columns, ChatSession.ACCOUNT_UUID + "=?",
+                args, null, null, null);
+        while (cursor.moveToNext()) {
+            int mode = cursor.getInt(2);
+            String mamDate = cursor.getString(3);
+            if (((mode != ChatSession.MODE_SINGLE) && (mode != ChatSession.MODE_MULTI)) || (mamDate == null))
+                continue;
+
+            try {
+                EntityBareJid entityJid = JidCreate.entityBareFrom(cursor.getString(1));
+                boolean isMuc = (mode == ChatSession.MODE_MULTI);
+                if (isMuc && !joinedRooms.contains(entityJid))
+                    continue;
+
+                sessions.add(new CatchUp(pps, cursor.getString(0), entityJid, isMuc,
+                        new Date(Long.parseLong(mamDate))));
+            } catch (XmppStringprepException | IllegalArgumentException e) {
+                Timber.w("Skip MAM catch-up of invalid chat session %s: %s", cursor.getString(1), e.getMessage());
+            }
+        }
+        cursor.close();
+        return sessions;
+    }
+
+    /**
+     * Cancels the catch-up of an account: drops the queued chat sessions and stops those in progress after the
+     * page being fetched.
+     *
+     * @param pps the protocol provider of the account
+     */
+    synchronized void cancel(ProtocolProviderService pps) {
+        Iterator<CatchUp> i = catchUps.values().iterator();
+        while (i.hasNext()) {
+            CatchUp catchUp = i.next();
+            if (catchUp.pps == pps) {
+                catchUp.cancelled = true;
+                i.remove();
+                if (queue.remove(catchUp))
+                    catchUp.done.countDown();
+            }
+        }
+    }
+
+    /**
+     * Catches up a chat session at once e.g. when its chat is opened: runs it in the calling thread if it is
+     * queued, or waits for its end if it is in progress.
+     *
+     * @param sessionUuid the sessionUuid of the chat session
+     *
+     * @return <code>true</code> if the chat session has been caught up; <code>false</code> if it is not handled
+     * by this engine, and the caller must query the archive itself.
+     */
+    public boolean catchUpNow(String sessionUuid) {
+        CatchUp catchUp;
+        boolean queued;
+        synchronized (this) {
+            catchUp = catchUps.get(sessionUuid);
+            if (catchUp == null)
+                return false;
+            queued = queue.remove(catchUp);
+        }
+
+        if (queued) {
+            catchUp(catchUp);
+        }
+        else {
+            try {
+                catchUp.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !catchUp.cancelled;
+    }
+
+    /**
+     * Starts the queued catch-ups of the most recently active sessions, as long as the number of catch-ups in
+     * progress is below {@link #PNAME_MAM_CATCHUP_CONCURRENCY}.
+     */
+    private void drain() {
+        ConfigurationService cfg = MessageHistoryActivator.getConfigurationService();
+        int concurrency = (cfg == null) ? DEFAULT_CONCURRENCY
+                : cfg.getInt(PNAME_MAM_CATCHUP_CONCURRENCY, DEFAULT_CONCURRENCY);
+
+        synchronized (this) {
+            while ((running < Math.max(1, concurrency)) && !queue.isEmpty()) {
+                CatchUp catchUp = queue.poll();
+                running++;
+                executor.execute(() -> {
+                    try {
+                        catchUp(catchUp);
+                    } finally {
+                        synchronized (MamCatchUpEngine.this) {
+                            running--;
+                        }
+                        drain();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Pages the archive of a chat session forward from its mamDate to the end, fetching the next page while the
+     * history writer saves the last one. The OMEMO stanza listeners are stopped during each page query only.
+     *
+     * @param catchUp the catch-up of the chat session
+     */
+    private void catchUp(CatchUp catchUp) {
+        ProtocolProviderService pps = catchUp.pps;
+        XMPPConnection connection = pps.getConnection();
+        Future<?> saving = null;
+
+        try {
+            if ((connection == null) || !pps.isRegistered())
+                return;
+
+            MamManager mamManager = MamManager.getInstanceFor(connection, catchUp.isMuc ? catchUp.entityJid : null);
+            if (!mamManager.isSupported())
+                return;
+
+            OmemoManager omemoManager = OmemoManager.getInstanceFor(connection);
+
+            // The mamDate may have advanced since the catch-up was queued.
+            Date mamDate = mhs.getMamDate(catchUp.sessionUuid);
+            MamManager.MamQueryArgs mamQueryArgs = MamManager.MamQueryArgs.builder()
+                    .limitResultsSince((mamDate != null) ? mamDate : catchUp.mamDate)
+                    .setResultPageSizeTo(PAGE_SIZE)
+                    .limitResultsToJid(catchUp.isMuc ? null : catchUp.entityJid)
+                    .build();
+
+            EntityFullJid userJid = pps.getOurJid();
+            MamManager.MamQuery query;
+            // Prevent omemoManager from automatically decrypting MAM messages.
+            stopOmemoListeners(omemoManager);
+            try {
+                query = mamManager.queryArchive(mamQueryArgs);
+            } finally {
+                resumeOmemoListeners(omemoManager);
+            }
+            while (true) {
+                List<Forwarded<Message>> page = query.getPage().getForwarded();
+
+                // Keep at most one page of the session waiting for the writer
+                if (saving != null)
+                    saving.get();
+                if (!page.isEmpty()) {
+                    saving = writer.submit(()
+                            -> mhs.saveMamIfNotExit(omemoManager, catchUp.sessionUuid, userJid, page, null));
+                }
+
+                if (page.isEmpty() || query.isComplete() || catchUp.cancelled)
+                    break;
+                stopOmemoListeners(omemoManager);
+                try {
+                    query.pageNext(PAGE_SIZE);
+                } finally {
+                    resumeOmemoListeners(omemoManager);
+                }
+            }
+            if (saving != null)
+                saving.get();
+        } catch (SmackException.NoResponseException | XMPPException.XMPPErrorException
+                 | SmackException.NotConnectedException | SmackException.NotLoggedInException e) {
+            Timber.w("MAM catch-up of %s stopped: %s", catchUp.entityJid, e.getMessage());
+        } catch (ExecutionException e) {
+            Timber.e(e.getCause(), "MAM catch-up of %s failed to save", catchUp.entityJid);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                catchUps.remove(catchUp.sessionUuid, catchUp);
+            }
+            catchUp.done.countDown();
+        }
+    }
+
+    /**
+     * Stops the OMEMO stanza listeners of an account for an archive query, unless another query of the account
+     * has already stopped them; so that the archived messages are only decrypted when saved. Each call must be
+     * followed by a call to {@link #resumeOmemoListeners} when the query has returned.
+     *
+     * @param omemoManager the OmemoManager of the account
+     */
+    public void stopOmemoListeners(OmemoManager omemoManager) {
+        synchronized (omemoQueries) {
+            Integer count = omemoQueries.get(omemoManager);
+            omemoQueries.put(omemoManager, (count == null) ? 1 : count + 1);
+            if (count == null)
+                omemoManager.stopStanzaAndPEPListeners();
+        }
+    }
+
+    /**
+     * Resumes the OMEMO stanza listeners of an account when its last archive query in progress has returned.
+     *
+     * @param omemoManager the OmemoManager of the account
+     */
+    public void resumeOmemoListeners(OmemoManager omemoManager) {
+        synchronized (omemoQueries) {
+            Integer count = omemoQueries.get(omemoManager);
+            if ((count != null) && (count > 1)) {
+                omemoQueries.put(omemoManager, count - 1);
+            }
+            else {
+                omemoQueries.remove(omemoManager);
+                omemoManager.resumeStanzaAndPEPListeners();
+            }
+        }
+    }
+}
@@ -186,6 +186,12 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
     private ServiceRegistration<?> messageSourceServiceReg = null;
 
     private SQLiteDatabase mDB;
+
+    /**
+     * The background catch-up of the chat sessions with the server message archive.
+     */
+    private final MamCatchUpEngine mamCatchUpEngine = new MamCatchUpEngine(this);
+
     private final ContentValues contentValues = new ContentValues();
 
     /**
@@ -265,6 +271,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
      */
     private void handleProviderAdded(ProtocolProviderService provider) {
         Timber.d("Adding protocol provider %s", provider.getProtocolDisplayName());
+        provider.addRegistrationStateChangeListener(mamCatchUpEngine);
 
         // check whether the provider has a basic im operation set
         OperationSetBasicInstantMessaging opSetIm = provider.getOperationSet(OperationSetBasicInstantMessaging.class);
@@ -319,6 +326,9 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
      * @param provider the ProtocolProviderService that has been unregistered.
      */
     private void handleProviderRemoved(ProtocolProviderService provider) {
+        provider.removeRegistrationStateChangeListener(mamCatchUpEngine);
+        mamCatchUpEngine.cancel(provider);
+
         OperationSetBasicInstantMessaging opSetIm = provider.getOperationSet(OperationSetBasicInstantMessaging.class);
         if (opSetIm != null) {
             opSetIm.removeMessageListener(this);
@@ -740,6 +750,15 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
 
     // ============== Start mam Message utilities ======================
 
+    /**
+     * Returns the engine which catches up the chat sessions with the server message archive in the background.
+     *
+     * @return the <code>MamCatchUpEngine</code>
+     */
+    public MamCatchUpEngine getMamCatchUpEngine() {
+        return mamCatchUpEngine;
+    }
+
     /**
      * Fetch the mamDate from the DB;
      *
@@ -837,7 +856,36 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
             chatId = getSessionUuidByJid(((MetaContact) descriptor).getDefaultContact());
         }
         EntityFullJid userJid = chatPanel.getProtocolProvider().getOurJid();
+        saveMamIfNotExit(omemoManager, chatId, userJid, forwardedList, chatPanel);
+    }
 
+    /**
+     * Save a page of mam messages of a chat session in a single database transaction, then advances its mamDate;
+     * used by the <code>MamCatchUpEngine</code> and <code>ChatPanel</code>.
+     *
+     * @param omemoManager Instance of OmemoManager
+     * @param chatId the sessionUuid of the chat session
+     * @param userJid our own jid, to tell the direction of the messages
+     * @param forwardedList mam message received after the specific mamData.
+     * @param chatPanel the chat panel to update if history logging is disabled; may be null
+     */
+    void saveMamIfNotExit(OmemoManager omemoManager, String chatId, EntityFullJid userJid,
+            List<Forwarded<Message>> forwardedList, ChatPanel chatPanel) {
+        // A single transaction per page: one commit instead of one for each message and its mamDate update.
+        mDB.beginTransaction();
+        try {
+            saveMamPage(omemoManager, chatId, userJid, forwardedList, chatPanel);
+            mDB.setTransactionSuccessful();
+        } finally {
+            mDB.endTransaction();
+        }
+    }
+
+    /**
+     * Save the new mam messages of a page; see {@link #saveMamIfNotExit(OmemoManager, String, EntityFullJid, List, ChatPanel)}.
+     */
+    private void saveMamPage(OmemoManager omemoManager, String chatId, EntityFullJid userJid,
+            List<Forwarded<Message>> forwardedList, ChatPanel chatPanel) {
         // Use new Date() if forwardedList is empty.
         Date timeStamp = new Date();
         for (Forwarded<Message> forwarded : forwardedList) {
@@ -933,7 +981,7 @@ public class MessageHistoryServiceImpl implements MessageHistoryService,
                     if (isHistoryLoggingEnabled()) {
                         writeMessage(chatId, direction, sender, newMessage, timeStamp, msgType);
                     }
-                    else {
+                    else if (chatPanel != null) {
                         String fromJid = sender.toString();
                         ChatMessageImpl chatMessage = new ChatMessageImpl(fromJid, fromJid, timeStamp, msgType, newMessage, correctUid, direction);
                         // Do not proceed with translation if enabled, else overload translator server.
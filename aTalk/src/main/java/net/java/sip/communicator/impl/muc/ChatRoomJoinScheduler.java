@@ -0,0 +1,324 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.muc;
+
+import net.java.sip.communicator.service.muc.ChatRoomWrapper;
+import net.java.sip.communicator.service.protocol.ProtocolProviderService;
+
+import org.atalk.service.configuration.ConfigurationService;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+/**
+ * Joins the auto-join chat rooms of an account lazily after login. The rooms are registered as
+ * placeholders i.e. their <code>ChatRoomWrapper</code>s with a local, not joined <code>ChatRoom</code>,
+ * and are joined in the order of their priority with at most {@link #PNAME_JOIN_CONCURRENCY} joins in
+ * progress: a room opened by the user is joined at once, a room in which the user is mentioned (or
+ * invited to) before the others, and the remaining ones in the background once the login has settled
+ * i.e. {@link #PNAME_BACKGROUND_JOIN_DELAY} seconds later. A room joined in the background does not open
+ * its chat window, so its history is only fetched when the user opens it.
+ *
+ * @author Eng Chong Meng
+ */
+public class ChatRoomJoinScheduler {
+    /**
+     * The property which enables the lazy restoration of the auto-join chat rooms on login.
+     */
+    public static final String PNAME_LAZY_ROOM_RESTORE = "muc.LAZY_ROOM_RESTORE";
+
+    /**
+     * The property of the maximum number of chat room joins in progress at the same time.
+     */
+    public static final String PNAME_JOIN_CONCURRENCY = "muc.JOIN_CONCURRENCY";
+
+    /**
+     * The property of the delay in seconds after login before the placeholders are joined in the background.
+     */
+    public static final String PNAME_BACKGROUND_JOIN_DELAY = "muc.BACKGROUND_JOIN_DELAY";
+
+    /**
+     * The priority of a chat room opened by the user.
+     */
+    public static final int PRIORITY_OPENED = 0;
+
+    /**
+     * The priority of a chat room in which the user is mentioned or to which the user is invited.
+     */
+    public static final int PRIORITY_MENTION = 1;
+
+    /**
+     * The priority of a chat room due a background refresh.
+     */
+    public static final int PRIORITY_BACKGROUND = 2;
+
+    /**
+     * The priority of a placeholder which is not queued for joining yet.
+     */
+    private static final int PRIORITY_NONE = Integer.MAX_VALUE;
+
+    /**
+     * The default of {@link #PNAME_JOIN_CONCURRENCY}.
+     */
+    private static final int DEFAULT_JOIN_CONCURRENCY = 2;
+
+    /**
+     * The default of {@link #PNAME_BACKGROUND_JOIN_DELAY}.
+     */
+    private static final int DEFAULT_BACKGROUND_JOIN_DELAY = 15;
+
+    /**
+     * A placeholder chat room and its priority.
+     */
+    private static class Placeholder implements Comparable<Placeholder> {
+        final ChatRoomWrapper chatRoomWrapper;
+
+        /**
+         * The priority of the placeholder; one of the PRIORITY_XXX constants.
+         */
+        int priority = PRIORITY_NONE;
+
+        /**
+         * The order in which the placeholder has been queued, to join rooms of the same priority in order.
+         */
+        long sequence;
+
+        Placeholder(ChatRoomWrapper chatRoomWrapper) {
+            this.chatRoomWrapper = chatRoomWrapper;
+        }
+
+        @Override
+        public int compareTo(Placeholder other) {
+            return (priority != other.priority)
+                    ? Integer.compare(priority, other.priority) : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * The chat room service which joins the rooms.
+     */
+    private final MUCServiceImpl mucService;
+
+    /**
+     * The placeholders not joined yet; guarded by this.
+     */
+    private final Map<ChatRoomWrapper, Placeholder> placeholders = new HashMap<>();
+
+    /**
+     * The placeholders queued for joining, by priority; guarded by this.
+     */
+    private final PriorityQueue<Placeholder> queue = new PriorityQueue<>();
+
+    /**
+     * The number of joins in progress, except those of the rooms opened by the user; guarded by this.
+     */
+    private int joining;
+
+    /**
+     * The sequence of the next queued placeholder; guarded by this.
+     */
+    private long sequence;
+
+    /**
+     * The executor which joins the rooms and queues the background joins.
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a <code>ChatRoomJoinScheduler</code>.
+     *
+     * @param mucService the chat room service which joins the rooms
+     */
+    ChatRoomJoinScheduler(MUCServiceImpl mucService) {
+        this.mucService = mucService;
+    }
+
+    /**
+     * Returns whether the auto-join chat rooms are to be restored lazily.
+     *
+     * @return <code>true</code> if the auto-join chat rooms are to be restored lazily.
+     */
+    public static boolean isLazyRoomRestore() {
+        ConfigurationService cfg = MUCActivator.getConfigurationService();
+        return (cfg == null) || cfg.getBoolean(PNAME_LAZY_ROOM_RESTORE, true);
+    }
+
+    /**
+     * Registers a chat room as a placeholder, and queues it for joining in the background after the delay
+     * configured by {@link #PNAME_BACKGROUND_JOIN_DELAY}.
+     *
+     * @param chatRoomWrapper the chat room to join lazily
+     */
+    public synchronized void register(ChatRoomWrapper chatRoomWrapper) {
+        if (placeholders.containsKey(chatRoomWrapper))
+            return;
+
+        placeholders.put(chatRoomWrapper, new Placeholder(chatRoomWrapper));
+        if (placeholders.size() == 1) {
+            ConfigurationService cfg = MUCActivator.getConfigurationService();
+            int delay = (cfg == null) ? DEFAULT_BACKGROUND_JOIN_DELAY
+                    : cfg.getInt(PNAME_BACKGROUND_JOIN_DELAY, DEFAULT_BACKGROUND_JOIN_DELAY);
+            getExecutor().schedule(this::scheduleBackground, Math.max(0, delay), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Returns whether a chat room is a placeholder which has not been joined yet.
+     *
+     * @param chatRoomWrapper the chat room
+     *
+     * @return <code>true</code> if <code>chatRoomWrapper</code> is waiting to be joined.
+     */
+    public synchronized boolean isPending(ChatRoomWrapper chatRoomWrapper) {
+        return placeholders.containsKey(chatRoomWrapper);
+    }
+
+    /**
+     * Requests the join of a placeholder with a specific priority; does nothing if the chat room is not a
+     * placeholder, or is already queued with a higher priority. A room opened by the user is joined at once.
+     *
+     * @param chatRoomWrapper the chat room to join
+     * @param priority one of the PRIORITY_XXX constants
+     */
+    public void schedule(ChatRoomWrapper chatRoomWrapper, int priority) {
+        synchronized (this) {
+            Placeholder placeholder = placeholders.get(chatRoomWrapper);
+            if ((placeholder == null) || (placeholder.priority <= priority))
+                return;
+
+            if (priority == PRIORITY_OPENED) {
+                placeholders.remove(chatRoomWrapper);
+                queue.remove(placeholder);
+                getExecutor().execute(() -> join(chatRoomWrapper, false));
+                return;
+            }
+
+            if (placeholder.priority != PRIORITY_NONE)
+                queue.remove(placeholder);
+            placeholder.priority = priority;
+            placeholder.sequence = sequence++;
+            queue.add(placeholder);
+        }
+        drain();
+    }
+
+    /**
+     * Removes a chat room from the placeholders e.g. when the user joins it explicitly.
+     *
+     * @param chatRoomWrapper the chat room
+     */
+    public synchronized void remove(ChatRoomWrapper chatRoomWrapper) {
+        Placeholder placeholder = placeholders.remove(chatRoomWrapper);
+        if (placeholder != null)
+            queue.remove(placeholder);
+    }
+
+    /**
+     * Removes the placeholders of an account e.g. when it has logged off.
+     *
+     * @param pps the protocol provider of the account
+     */
+    public synchronized void remove(ProtocolProviderService pps) {
+        Iterator<Placeholder> i = placeholders.values().iterator();
+        while (i.hasNext()) {
+            Placeholder placeholder = i.next();
+            if (pps.equals(placeholder.chatRoomWrapper.getProtocolProvider())) {
+                i.remove();
+                queue.remove(placeholder);
+            }
+        }
+    }
+
+    /**
+     * Queues all the placeholders not queued yet for joining in the background.
+     */
+    private void scheduleBackground() {
+        synchronized (this) {
+            for (Placeholder placeholder : placeholders.values()) {
+                if (placeholder.priority == PRIORITY_NONE) {
+                    placeholder.priority = PRIORITY_BACKGROUND;
+                    placeholder.sequence = sequence++;
+                    queue.add(placeholder);
+                }
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Starts the joins of the queued placeholders with the highest priority, as long as the number of joins
+     * in progress is below {@link #PNAME_JOIN_CONCURRENCY}.
+     */
+    private void drain() {
+        int concurrency = getJoinConcurrency();
+
+        synchronized (this) {
+            while ((joining < concurrency) && !queue.isEmpty()) {
+                Placeholder placeholder = queue.poll();
+                placeholders.remove(placeholder.chatRoomWrapper);
+                joining++;
+                getExecutor().execute(() -> join(placeholder.chatRoomWrapper, true));
+            }
+        }
+    }
+
+    /**
+     * Joins a chat room, then starts the next queued join.
+     *
+     * @param chatRoomWrapper the chat room to join
+     * @param queued <code>true</code> if the join has been queued and counts against the concurrency cap
+     */
+    private void join(ChatRoomWrapper chatRoomWrapper, boolean queued) {
+        try {
+            mucService.joinChatRoomNow(chatRoomWrapper);
+        } catch (Throwable t) {
+            Timber.w(t, "Lazy join of chat room failed: %s", chatRoomWrapper.getChatRoomId());
+        } finally {
+            if (queued) {
+                synchronized (this) {
+                    joining--;
+                }
+                drain();
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of queued joins in progress, from {@link #PNAME_JOIN_CONCURRENCY}.
+     *
+     * @return the maximum number of queued joins in progress; at least 1.
+     */
+    private static int getJoinConcurrency() {
+        ConfigurationService cfg = MUCActivator.getConfigurationService();
+        int concurrency = (cfg == null) ? DEFAULT_JOIN_CONCURRENCY
+                : cfg.getInt(PNAME_JOIN_CONCURRENCY, DEFAULT_JOIN_CONCURRENCY);
+        return Math.max(1, concurrency);
+    }
+
+    /**
+     * Returns the executor which joins the rooms, creating it if needed. It has a thread for each of the
+     * queued joins, and one for the join of an opened room and the scheduling.
+     *
+     * @return the executor which joins the rooms.
+     */
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newScheduledThreadPool(getJoinConcurrency() + 1, r -> {
+                Thread t = new Thread(r, "ChatRoomJoinScheduler");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+}
@@ -206,6 +206,7 @@ public class ChatRoomListImpl implements RegistrationStateChangeListener, Servic
      */
     private void removeChatProvider(ChatRoomProviderWrapper chatRoomProvider, boolean permanently) {
         providersList.remove(chatRoomProvider);
+        MUCActivator.getMUCService().cancelLazyJoins(chatRoomProvider.getProtocolProvider());
         if (permanently) {
             chatRoomProvider.getProtocolProvider().removeRegistrationStateChangeListener(this);
 
@@ -282,10 +282,12 @@ public class ChatRoomProviderWrapperImpl implements ChatRoomProviderWrapper {
     /**
      * Goes through the locally stored chat rooms list and for each {@link ChatRoomWrapper}
      * tries to find the corresponding server stored {@link ChatRoom} in the specified operation set.
-     * Joins automatically if enabled for all found chat rooms.
+     * Joins automatically if enabled for all found chat rooms; lazily unless disabled by
+     * {@link ChatRoomJoinScheduler#PNAME_LAZY_ROOM_RESTORE}.
      */
     public void synchronizeProvider() {
         final OperationSetMultiUserChat groupChatOpSet = protocolProvider.getOperationSet(OperationSetMultiUserChat.class);
+        final boolean lazyJoin = ChatRoomJoinScheduler.isLazyRoomRestore();
 
         for (ChatRoomWrapper chatRoomWrapper : chatRoomsOrderedCopy) {
             ChatRoom chatRoom = groupChatOpSet.findRoom(chatRoomWrapper.getEntityBareJid());
@@ -295,6 +297,12 @@ public class ChatRoomProviderWrapperImpl implements ChatRoomProviderWrapper {
 
             if (chatRoomWrapper.isAutoJoin()) {
                 MUCServiceImpl mucService = MUCActivator.getMUCService();
+                // Defer the join until the room is opened, mentioned or due for a join in the background
+                if (lazyJoin) {
+                    mucService.joinChatRoomLazily(chatRoomWrapper);
+                    continue;
+                }
+
                 // For non-existent chat room, we must create it before joining
                 if (chatRoom == null) {
                     chatRoomWrapper = mucService.createChatRoom(chatRoomWrapper, "auto joined", false, false, true);
@@ -68,6 +68,11 @@ public class MUCServiceImpl extends MUCService {
      */
     private final ChatRoomListImpl chatRoomList = new ChatRoomListImpl();
 
+    /**
+     * The scheduler of the lazy joins of the auto-join chat rooms on login.
+     */
+    private final ChatRoomJoinScheduler joinScheduler = new ChatRoomJoinScheduler(this);
+
     /**
      * Called to accept an incoming invitation. Adds the invitation chat room to the list of chat rooms and joins it.
      *
@@ -209,6 +214,64 @@ public class MUCServiceImpl extends MUCService {
         new JoinChatRoomTask((ChatRoomWrapperImpl) chatRoomWrapper, null, null, null).start();
     }
 
+    /**
+     * Registers an auto-join chat room for a lazy join, see <code>ChatRoomJoinScheduler</code>.
+     *
+     * @param chatRoomWrapper the chat room to join when needed.
+     */
+    public void joinChatRoomLazily(ChatRoomWrapper chatRoomWrapper) {
+        joinScheduler.register(chatRoomWrapper);
+    }
+
+    /**
+     * Joins at once a chat room waiting for a lazy join, when the user opens it.
+     *
+     * @param chatRoomWrapper the chat room opened by the user.
+     */
+    public void chatRoomOpened(ChatRoomWrapper chatRoomWrapper) {
+        joinScheduler.schedule(chatRoomWrapper, ChatRoomJoinScheduler.PRIORITY_OPENED);
+    }
+
+    /**
+     * Joins before the others a chat room waiting for a lazy join, when the user is mentioned in it.
+     *
+     * @param chatRoomWrapper the chat room in which the user is mentioned.
+     */
+    public void chatRoomMentioned(ChatRoomWrapper chatRoomWrapper) {
+        joinScheduler.schedule(chatRoomWrapper, ChatRoomJoinScheduler.PRIORITY_MENTION);
+    }
+
+    /**
+     * Drops the chat rooms of an account waiting for a lazy join e.g. when it has logged off.
+     *
+     * @param protocolProvider the protocol provider of the account.
+     */
+    public void cancelLazyJoins(ProtocolProviderService protocolProvider) {
+        joinScheduler.remove(protocolProvider);
+    }
+
+    /**
+     * Joins a chat room waiting for a lazy join, in the calling thread and without opening its chat window;
+     * called by the <code>ChatRoomJoinScheduler</code>.
+     *
+     * @param chatRoomWrapper the chat room to join.
+     */
+    void joinChatRoomNow(ChatRoomWrapper chatRoomWrapper) {
+        if (chatRoomWrapper.getChatRoom() == null) {
+            chatRoomWrapper = createChatRoom(chatRoomWrapper, "auto joined", false, false, true);
+            if ((chatRoomWrapper == null) || (chatRoomWrapper.getChatRoom() == null))
+                return;
+        }
+        if (chatRoomWrapper.getChatRoom().isJoined())
+            return;
+
+        String pwd = chatRoomWrapper.loadPassword();
+        byte[] password = TextUtils.isEmpty(pwd) ? null : pwd.getBytes();
+
+        new JoinChatRoomTask((ChatRoomWrapperImpl) chatRoomWrapper, chatRoomWrapper.getNickName(), password,
+                false, true, null, false).run();
+    }
+
     /**
      * Joins the given chat room and manages all the exceptions that could occur during the join process.
      *
@@ -447,9 +510,20 @@ public class MUCServiceImpl extends MUCService {
         private final boolean isFirstAttempt;
         private final String subject;
 
+        /**
+         * Whether to open the chat window of the room; not for the lazy joins in the background.
+         */
+        private final boolean openChat;
+
         JoinChatRoomTask(ChatRoomWrapperImpl chatRoomWrapper, String nickName, byte[] password,
                 boolean rememberPassword, boolean isFirstAttempt, String subject) {
+            this(chatRoomWrapper, nickName, password, rememberPassword, isFirstAttempt, subject, true);
+        }
+
+        JoinChatRoomTask(ChatRoomWrapperImpl chatRoomWrapper, String nickName, byte[] password,
+                boolean rememberPassword, boolean isFirstAttempt, String subject, boolean openChat) {
             this.chatRoomWrapper = chatRoomWrapper;
+            this.openChat = openChat;
             this.chatRoomId = chatRoomWrapper.getChatRoomName();
             this.nickName = nickName;
             this.isFirstAttempt = isFirstAttempt;
@@ -482,6 +556,9 @@ public class MUCServiceImpl extends MUCService {
             // Must setup up chatRoom and ready to receive incoming messages before joining/sending presence to server
             // ChatPanel chatPanel = ChatSessionManager.getMultiChat(chatRoomWrapper, true);
 
+            // An explicit join supersedes a pending lazy join of the room.
+            joinScheduler.remove(chatRoomWrapper);
+
             ChatRoom chatRoom = chatRoomWrapper.getChatRoom();
             try {
                 if (chatRoom.isJoined()) {
@@ -493,7 +570,8 @@ public class MUCServiceImpl extends MUCService {
                     }
                 }
                 else {
-                    startChatActivity(chatRoomWrapper);
+                    if (openChat)
+                        startChatActivity(chatRoomWrapper);
                     /*
                      * Retry until Exception or canceled by user; join chatRoom captcha challenge from server
                      * @see ChatRoomJabberImpl#joinAs(),
@@ -0,0 +1,305 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.netaddr;
+
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import net.java.sip.communicator.service.netaddr.IceServerDescriptor;
+import net.java.sip.communicator.service.netaddr.event.ChangeEvent;
+import net.java.sip.communicator.service.netaddr.event.NetworkConfigurationChangeListener;
+
+import org.atalk.service.configuration.ConfigurationService;
+import org.ice4j.TransportAddress;
+import org.ice4j.ice.Agent;
+import org.ice4j.ice.CandidateType;
+import org.ice4j.ice.Component;
+import org.ice4j.ice.IceMediaStream;
+import org.ice4j.ice.LocalCandidate;
+import org.ice4j.ice.harvest.CandidateHarvester;
+import org.ice4j.ice.harvest.StunCandidateHarvester;
+
+import timber.log.Timber;
+
+/**
+ * Caches the STUN/TURN servers found by the server discoveries (XEP-0215 external services, DNS SRV and
+ * the resolution of the configured servers) and the outcome of the last harvest of each server, so that
+ * a new call neither redoes the discoveries nor waits for a server which has recently not answered. The
+ * entries are bound to the network they have been learned on, identified by the addresses of the network
+ * interfaces which are up, and are dropped when a network change is notified.
+ *
+ * @author Eng Chong Meng
+ */
+class IceHarvestCache implements NetworkConfigurationChangeListener {
+    /**
+     * The property of the time in seconds during which the servers found by a discovery are cached.
+     */
+    static final String PNAME_ICE_SERVER_CACHE_TTL = "netaddr.ICE_SERVER_CACHE_TTL";
+
+    /**
+     * The property of the time in seconds during which a server which has returned no candidate is skipped.
+     */
+    static final String PNAME_ICE_SERVER_RETRY_INTERVAL = "netaddr.ICE_SERVER_RETRY_INTERVAL";
+
+    /**
+     * The default of {@link #PNAME_ICE_SERVER_CACHE_TTL}.
+     */
+    private static final int DEFAULT_ICE_SERVER_CACHE_TTL = 600;
+
+    /**
+     * The default of {@link #PNAME_ICE_SERVER_RETRY_INTERVAL}.
+     */
+    private static final int DEFAULT_ICE_SERVER_RETRY_INTERVAL = 120;
+
+    /**
+     * The servers found by a discovery.
+     */
+    private static class Servers {
+        final String networkId;
+        final List<IceServerDescriptor> servers;
+        final long expires;
+
+        Servers(String networkId, List<IceServerDescriptor> servers, long expires) {
+            this.networkId = networkId;
+            this.servers = servers;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * The outcome of the last harvest of a server.
+     */
+    private static class Mapping {
+        final String networkId;
+
+        /**
+         * The server reflexive (or relayed) address returned by the server; <code>null</code> if the server
+         * has returned no candidate.
+         */
+        final TransportAddress mappedAddress;
+        final long timestamp;
+
+        Mapping(String networkId, TransportAddress mappedAddress, long timestamp) {
+            this.networkId = networkId;
+            this.mappedAddress = mappedAddress;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * The servers found by the discoveries, by the key of the discovery; guarded by this.
+     */
+    private final Map<String, Servers> servers = new HashMap<>();
+
+    /**
+     * The outcome of the last harvest of the servers, by the address of the server; guarded by this.
+     */
+    private final Map<TransportAddress, Mapping> mappings = new HashMap<>();
+
+    /**
+     * The identity of the current network; <code>null</code> until computed. Guarded by this.
+     */
+    private String networkId;
+
+    /**
+     * Returns the servers found by a discovery on the current network, if they have not expired.
+     *
+     * @param key the key of the discovery
+     *
+     * @return the cached servers or <code>null</code>.
+     */
+    synchronized List<IceServerDescriptor> getIceServers(String key) {
+        Servers entry = servers.get(key);
+        if (entry == null)
+            return null;
+
+        if (!entry.networkId.equals(getNetworkId()) || (System.currentTimeMillis() >= entry.expires)) {
+            servers.remove(key);
+            return null;
+        }
+        return entry.servers;
+    }
+
+    /**
+     * Caches the servers found by a discovery on the current network, until the first of them expires or
+     * {@link #PNAME_ICE_SERVER_CACHE_TTL} has elapsed.
+     *
+     * @param key the key of the discovery
+     * @param iceServers the servers found by the discovery
+     */
+    synchronized void putIceServers(String key, List<IceServerDescriptor> iceServers) {
+        long expires = System.currentTimeMillis()
+                + 1000L * getSeconds(PNAME_ICE_SERVER_CACHE_TTL, DEFAULT_ICE_SERVER_CACHE_TTL);
+        for (IceServerDescriptor iceServer : iceServers)
+            expires = Math.min(expires, iceServer.getExpires());
+
+        servers.put(key, new Servers(getNetworkId(),
+                Collections.unmodifiableList(new ArrayList<>(iceServers)), expires));
+    }
+
+    /**
+     * Returns whether a server has not failed to return any candidate on the current network during the
+     * last {@link #PNAME_ICE_SERVER_RETRY_INTERVAL}.
+     *
+     * @param server the address of the server
+     *
+     * @return <code>false</code> if the server is to be skipped.
+     */
+    synchronized boolean isResponsive(TransportAddress server) {
+        Mapping mapping = mappings.get(server);
+        if ((mapping == null) || (mapping.mappedAddress != null))
+            return true;
+
+        long retryInterval = 1000L * getSeconds(PNAME_ICE_SERVER_RETRY_INTERVAL, DEFAULT_ICE_SERVER_RETRY_INTERVAL);
+        if (!mapping.networkId.equals(getNetworkId())
+                || (System.currentTimeMillis() - mapping.timestamp >= retryInterval)) {
+            mappings.remove(server);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records, for each STUN/TURN harvester of an agent, the address returned by its server or the
+     * failure of the server when none of the candidates of the agent comes from it.
+     *
+     * @param agent the agent whose candidate harvest has completed
+     */
+    void harvestCompleted(Agent agent) {
+        Map<TransportAddress, TransportAddress> mapped = new HashMap<>();
+        for (IceMediaStream stream : agent.getStreams()) {
+            for (Component component : stream.getComponents()) {
+                for (LocalCandidate candidate : component.getLocalCandidates()) {
+                    TransportAddress server = candidate.getStunServerAddress();
+                    if (server == null)
+                        server = candidate.getRelayServerAddress();
+                    if (server == null)
+                        continue;
+
+                    // Prefer the server reflexive address to the relayed one of a TURN server.
+                    if ((candidate.getType() == CandidateType.SERVER_REFLEXIVE_CANDIDATE)
+                            || !mapped.containsKey(server))
+                        mapped.put(server, candidate.getTransportAddress());
+                }
+            }
+        }
+
+        List<TransportAddress> harvested = new ArrayList<>();
+        for (CandidateHarvester harvester : agent.getHarvesters()) {
+            if (harvester instanceof StunCandidateHarvester)
+                harvested.add(((StunCandidateHarvester) harvester).stunServer);
+        }
+
+        synchronized (this) {
+            String id = getNetworkId();
+            long now = System.currentTimeMillis();
+            for (TransportAddress server : harvested) {
+                TransportAddress mappedAddress = mapped.get(server);
+                if (mappedAddress == null)
+                    Timber.i("ICE server returned no candidate, skipped on this network: %s", server);
+                mappings.put(server, new Mapping(id, mappedAddress, now));
+            }
+        }
+    }
+
+    /**
+     * Drops the entries learned on another network when the network configuration changes.
+     *
+     * @param event the change event
+     */
+    @Override
+    public void configurationChanged(ChangeEvent event) {
+        if (event.isInitial())
+            return;
+
+        synchronized (this) {
+            networkId = null;
+            String id = getNetworkId();
+
+            Iterator<Servers> i = servers.values().iterator();
+            while (i.hasNext()) {
+                if (!id.equals(i.next().networkId))
+                    i.remove();
+            }
+            Iterator<Mapping> j = mappings.values().iterator();
+            while (j.hasNext()) {
+                if (!id.equals(j.next().networkId))
+                    j.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the identity of the current network, computing it if needed.
+     *
+     * @return the identity of the current network.
+     */
+    private String getNetworkId() {
+        if (networkId == null)
+            networkId = computeNetworkId();
+        return networkId;
+    }
+
+    /**
+     * Computes the identity of the current network i.e. the sorted names and addresses of the network
+     * interfaces which are up, except the loopback and link local ones.
+     *
+     * @return the identity of the current network.
+     */
+    private static String computeNetworkId() {
+        List<String> addresses = new ArrayList<>();
+        try {
+            Enumeration<NetworkInterface> ifaces = NetworkInterface.getNetworkInterfaces();
+            while ((ifaces != null) && ifaces.hasMoreElements()) {
+                NetworkInterface iface = ifaces.nextElement();
+                if (iface.isLoopback() || !iface.isUp())
+                    continue;
+
+                Enumeration<InetAddress> inetAddresses = iface.getInetAddresses();
+                while (inetAddresses.hasMoreElements()) {
+                    InetAddress address = inetAddresses.nextElement();
+                    if (!address.isLinkLocalAddress())
+                        addresses.add(iface.getName() + "/" + address.getHostAddress());
+                }
+            }
+        } catch (SocketException e) {
+            Timber.w("Failed to list the network interfaces: %s", e.getMessage());
+        }
+        Collections.sort(addresses);
+        return addresses.toString();
+    }
+
+    /**
+     * Returns a time in seconds from the configuration.
+     *
+     * @param pname the property name
+     * @param defaultValue the default value
+     *
+     * @return the configured time in seconds.
+     */
+    private static int getSeconds(String pname, int defaultValue) {
+        ConfigurationService cfg = NetaddrActivator.getConfigurationService();
+        return (cfg == null) ? defaultValue : cfg.getInt(pname, defaultValue);
+    }
+}
@@ -27,8 +27,11 @@ import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 
+import net.java.sip.communicator.service.netaddr.IceServerDescriptor;
 import net.java.sip.communicator.service.netaddr.NetworkAddressManagerService;
 import net.java.sip.communicator.service.netaddr.event.NetworkConfigurationChangeListener;
 import net.java.sip.communicator.util.NetworkUtils;
@@ -41,7 +44,6 @@ import org.ice4j.TransportAddress;
 import org.ice4j.ice.Agent;
 import org.ice4j.ice.IceMediaStream;
 import org.ice4j.ice.harvest.StunCandidateHarvester;
-import org.ice4j.ice.harvest.TurnCandidateHarvester;
 import org.ice4j.security.LongTermCredential;
 import org.minidns.record.SRV;
 
@@ -78,6 +80,11 @@ public class NetworkAddressManagerServiceImpl implements NetworkAddressManagerSe
      */
     private NetworkConfigurationWatcher networkConfigurationWatcher = null;
 
+    /**
+     * The cache of the STUN/TURN servers discovered on the current network; <code>null</code> until first used.
+     */
+    private IceHarvestCache iceHarvestCache = null;
+
     /**
      * The service name to use when discovering TURN servers through DNS using SRV requests as per RFC 5766.
      */
@@ -401,7 +408,8 @@ public class NetworkAddressManagerServiceImpl implements NetworkAddressManagerSe
     /**
      * Tries to discover a TURN or a STUN server for the specified <code>domainName</code>. The method
      * would first try to discover a TURN server and then fall back to STUN only. In both cases
-     * we would only care about a UDP transport.
+     * we would only care about a UDP transport. The outcome of the discovery is cached until the network
+     * changes, and a server which has recently returned no candidate on this network is not returned.
      *
      * @param domainName the domain name that we are trying to discover a TURN server for.
      * @param userName the name of the user we'd like to use when connecting to a TURN server (we won't be
@@ -413,12 +421,32 @@ public class NetworkAddressManagerServiceImpl implements NetworkAddressManagerSe
      * discovered or <code>null</code> if there were no such records for the specified <code>domainName</code>
      */
     public StunCandidateHarvester discoverStunServer(String domainName, byte[] userName, byte[] password) {
-        // cmeng - Do not proceed to check further if the domainName is not reachable, just return null
+        String key = "srv:" + domainName;
+        List<IceServerDescriptor> iceServers = getCachedIceServers(key);
+        if (iceServers == null) {
+            iceServers = discoverIceServers(domainName);
+            cacheIceServers(key, iceServers);
+        }
+
+        if (iceServers.isEmpty() || !isIceServerResponsive(iceServers.get(0).getAddress()))
+            return null;
+        return iceServers.get(0).createHarvester(new LongTermCredential(userName, password));
+    }
+
+    /**
+     * Looks up the TURN or else the STUN server of <code>domainName</code> through DNS SRV requests.
+     *
+     * @param domainName the domain name that we are trying to discover a TURN server for.
+     *
+     * @return a list of the discovered server, or an empty list if there were no such records.
+     */
+    private List<IceServerDescriptor> discoverIceServers(String domainName) {
+        // cmeng - Do not proceed to check further if the domainName is not reachable, just return none
         try {
             InetAddress inetAddress = InetAddress.getByName(domainName);
         } catch (UnknownHostException e) {
             Timber.w("Unreachable host for TURN/STUN discovery: %s", domainName);
-            return null;
+            return Collections.emptyList();
         }
 
         String srvrAddress = null;
@@ -431,8 +459,8 @@ public class NetworkAddressManagerServiceImpl implements NetworkAddressManagerSe
 
             // Seem to have a TURN server, so we'll be using it for both TURN and STUN harvesting.
             if (srvrAddress != null) {
-                return new TurnCandidateHarvester(new TransportAddress(srvrAddress, srvRecords[0].port, Transport.UDP),
-                        new LongTermCredential(userName, password));
+                return Collections.singletonList(new IceServerDescriptor(
+                        new TransportAddress(srvrAddress, srvRecords[0].port, Transport.UDP), true, null, Long.MAX_VALUE));
             }
 
             // srvrAddress was null. try for a STUN only server.
@@ -446,10 +474,53 @@ public class NetworkAddressManagerServiceImpl implements NetworkAddressManagerSe
         }
 
         if (srvrAddress != null) {
-            return new StunCandidateHarvester(new TransportAddress(srvrAddress, port, Transport.UDP));
+            return Collections.singletonList(new IceServerDescriptor(
+                    new TransportAddress(srvrAddress, port, Transport.UDP), false, null, Long.MAX_VALUE));
         }
         // srvrAddress was still null. sigh ...
-        return null;
+        return Collections.emptyList();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<IceServerDescriptor> getCachedIceServers(String key) {
+        return getIceHarvestCache().getIceServers(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void cacheIceServers(String key, List<IceServerDescriptor> servers) {
+        getIceHarvestCache().putIceServers(key, servers);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isIceServerResponsive(TransportAddress server) {
+        return getIceHarvestCache().isResponsive(server);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void harvestCompleted(Agent agent) {
+        getIceHarvestCache().harvestCompleted(agent);
+    }
+
+    /**
+     * Returns the cache of the STUN/TURN servers, creating it and registering it for the network changes
+     * if needed.
+     *
+     * @return the cache of the STUN/TURN servers.
+     */
+    private synchronized IceHarvestCache getIceHarvestCache() {
+        if (iceHarvestCache == null) {
+            iceHarvestCache = new IceHarvestCache();
+            addNetworkConfigurationChangeListener(iceHarvestCache);
+        }
+        return iceHarvestCache;
     }
 
     /**
@@ -0,0 +1,301 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.modes.GCMModeCipher;
+import org.jivesoftware.smackx.omemo_media_sharing.AesgcmUrl;
+import org.jivesoftware.smackx.omemo_media_sharing.OmemoMediaSharingUtils;
+
+import timber.log.Timber;
+
+/**
+ * In-process download engine for OMEMO media sharing <code>aesgcm:</code> links.
+ * The encrypted content is decrypted on the fly while it is being received and written directly into a partial
+ * file next to the destination file; hence there is neither a second pass over the data nor a second copy on disk.
+ * The GCM authentication tag is verified at the end of the stream before the partial file is renamed to the
+ * destination file.
+ *
+ * An interrupted download is resumed with an HTTP Range request from the end of the already decrypted partial
+ * file. As AES-GCM is a counter mode, the cipher state at that offset is restored by re-encrypting the local
+ * plaintext, without fetching the received data again from the server.
+ *
+ * @author Eng Chong Meng
+ */
+public class AesgcmFileDownloader {
+    /**
+     * Listener to receive the download progress i.e. the number of decrypted bytes written so far.
+     */
+    public interface ProgressListener {
+        void onProgress(long byteReceived);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Extra output space for the cipher buffered partial block and the held back authentication tag
+    private static final int SLACK_SIZE = 32;
+
+    private static final int CONNECT_TIMEOUT = 30000;
+
+    private static final int READ_TIMEOUT = 60000;
+
+    // Maximum number of attempts to resume an interrupted download
+    private static final int MAX_RETRIES = 3;
+
+    // Minimum interval between two progress updates
+    private static final long PROGRESS_INTERVAL = 100;
+
+    public static final String PARTIAL_FILE_EXT = ".part";
+
+    private final AesgcmUrl mAesgcmUrl;
+    private final File mOutFile;
+    private final File mPartFile;
+    private final ProgressListener mListener;
+
+    private volatile boolean isCancelled = false;
+    private volatile HttpURLConnection mConnection;
+
+    private long mLastProgressTime = 0;
+
+    /**
+     * Creates a downloader for the given aesgcm link.
+     *
+     * @param aesgcmUrl the aesgcm url containing the https link, key and iv
+     * @param outFile the destination file for the decrypted content
+     * @param listener the download progress listener; may be null
+     */
+    public AesgcmFileDownloader(AesgcmUrl aesgcmUrl, File outFile, ProgressListener listener) {
+        mAesgcmUrl = aesgcmUrl;
+        mOutFile = outFile;
+        mPartFile = new File(outFile.getPath() + PARTIAL_FILE_EXT);
+        mListener = listener;
+    }
+
+    /**
+     * Download and decrypt the file, resuming from the partial file on interruption.
+     *
+     * @throws IOException if the download failed, was cancelled or the content fails the authentication.
+     */
+    public void download() throws IOException {
+        IOException lastException = null;
+        for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+            if (isCancelled)
+                throw new IOException("Download cancelled: " + mAesgcmUrl.getDownloadUrl());
+            try {
+                downloadAttempt();
+                return;
+            } catch (AuthenticationFailedException e) {
+                deletePartFile();
+                throw e;
+            } catch (IOException e) {
+                lastException = e;
+                Timber.w("Aesgcm download interrupted (attempt %s): %s", attempt, e.getMessage());
+            }
+        }
+        throw lastException;
+    }
+
+    /**
+     * Abort the download in progress; the partial file is removed.
+     */
+    public void cancel() {
+        isCancelled = true;
+        HttpURLConnection connection = mConnection;
+        if (connection != null)
+            connection.disconnect();
+        deletePartFile();
+    }
+
+    private void downloadAttempt() throws IOException {
+        long offset = mPartFile.exists() ? mPartFile.length() : 0;
+        URL url = mAesgcmUrl.getDownloadUrl();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        mConnection = connection;
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        if (offset > 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+
+        try {
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                // Server ignores the Range request; restart from beginning.
+                offset = 0;
+            }
+            else if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("Http download failed with response code: " + responseCode);
+            }
+
+            GCMModeCipher cipher = mAesgcmUrl.getStreamingCipher(false);
+            try (RandomAccessFile raf = new RandomAccessFile(mPartFile, "rw");
+                 FileChannel outChannel = raf.getChannel();
+                 InputStream in = connection.getInputStream()) {
+                outChannel.truncate(offset);
+                long released = restoreCipherState(cipher, offset);
+                outChannel.position(offset);
+                decryptStream(cipher, in, connection.getContentLengthLong(), outChannel, offset, offset - released);
+            }
+        } finally {
+            connection.disconnect();
+            mConnection = null;
+        }
+
+        if (isCancelled)
+            throw new IOException("Download cancelled: " + mAesgcmUrl.getDownloadUrl());
+
+        if ((mOutFile.exists() && !mOutFile.delete()) || !mPartFile.renameTo(mOutFile)) {
+            throw new IOException("Unable to save downloaded file: " + mOutFile);
+        }
+    }
+
+    /**
+     * Bring the decryption cipher to the state it had after decrypting the first <code>length</code> bytes, by
+     * feeding it with the ciphertext regenerated from the local plaintext. The decrypted output is discarded.
+     *
+     * @param cipher the freshly initialized decryption cipher
+     * @param length number of plaintext bytes already saved in the partial file
+     *
+     * @return the number of plaintext bytes released by the cipher; the rest is held back for the tag check.
+     */
+    private long restoreCipherState(GCMModeCipher cipher, long length) throws IOException {
+        if (length == 0)
+            return 0;
+
+        GCMModeCipher encryptor = mAesgcmUrl.getStreamingCipher(true);
+        byte[] plain = new byte[BUFFER_SIZE];
+        byte[] cipherText = new byte[BUFFER_SIZE + SLACK_SIZE];
+        byte[] discard = new byte[BUFFER_SIZE + 2 * SLACK_SIZE];
+
+        long released = 0;
+        try (InputStream in = new FileInputStream(mPartFile)) {
+            long remain = length;
+            while (remain > 0) {
+                int count = in.read(plain, 0, (int) Math.min(plain.length, remain));
+                if (count == -1)
+                    throw new IOException("Partial file truncated: " + mPartFile);
+                int len = encryptor.processBytes(plain, 0, count, cipherText, 0);
+                released += cipher.processBytes(cipherText, 0, len, discard, 0);
+                remain -= count;
+            }
+        }
+        // Flush the encryptor's pending partial block; its trailing tag is not part of the ciphertext prefix.
+        byte[] tail = new byte[encryptor.getOutputSize(0)];
+        int len;
+        try {
+            len = encryptor.doFinal(tail, 0) - OmemoMediaSharingUtils.LEN_AUTH_TAG;
+        } catch (InvalidCipherTextException e) {
+            throw new IOException(e);
+        }
+        released += cipher.processBytes(tail, 0, len, discard, 0);
+        return released;
+    }
+
+    /**
+     * Decrypt the received stream into the output channel, verifying the authentication tag at end of stream.
+     *
+     * @param cipher the decryption cipher
+     * @param in the http input stream
+     * @param contentLength the expected number of bytes from the input stream, or -1 if unknown
+     * @param outChannel the partial file channel
+     * @param offset number of plaintext bytes already saved in the partial file
+     * @param skip number of bytes to be released by the cipher that are already saved in the partial file
+     */
+    private void decryptStream(GCMModeCipher cipher, InputStream in, long contentLength, FileChannel outChannel,
+            long offset, long skip) throws IOException {
+        byte[] inBuf = new byte[BUFFER_SIZE];
+        byte[] outBuf = new byte[BUFFER_SIZE + 2 * SLACK_SIZE];
+        ByteBuffer outBuffer = ByteBuffer.wrap(outBuf);
+
+        long written = offset;
+        long received = 0;
+        int count;
+        while (!isCancelled && (count = in.read(inBuf)) != -1) {
+            received += count;
+            int len = cipher.processBytes(inBuf, 0, count, outBuf, 0);
+            int start = (int) Math.min(skip, len);
+            skip -= start;
+            if (len > start) {
+                outBuffer.limit(len).position(start);
+                while (outBuffer.hasRemaining()) {
+                    outChannel.write(outBuffer);
+                }
+                written += len - start;
+                fireProgress(written, false);
+            }
+        }
+        if (isCancelled)
+            return;
+
+        // A premature end of stream must be resumed, and not be taken as an authentication failure.
+        if (contentLength >= 0 && received < contentLength) {
+            throw new IOException("Connection closed at " + (offset + received) + " bytes: " + mOutFile.getName());
+        }
+
+        try {
+            int len = cipher.doFinal(outBuf, 0);
+            int start = (int) Math.min(skip, len);
+            outBuffer.limit(len).position(start);
+            while (outBuffer.hasRemaining()) {
+                outChannel.write(outBuffer);
+            }
+            written += len - start;
+        } catch (InvalidCipherTextException e) {
+            throw new AuthenticationFailedException("Aesgcm file authentication failed: " + e.getMessage());
+        }
+        outChannel.force(false);
+        fireProgress(written, true);
+    }
+
+    private void fireProgress(long byteReceived, boolean force) {
+        if (mListener == null)
+            return;
+
+        long now = System.currentTimeMillis();
+        if (force || now - mLastProgressTime >= PROGRESS_INTERVAL) {
+            mLastProgressTime = now;
+            mListener.onProgress(byteReceived);
+        }
+    }
+
+    private void deletePartFile() {
+        if (mPartFile.exists() && !mPartFile.delete()) {
+            Timber.w("Failed to delete partial download file: %s", mPartFile);
+        }
+    }
+
+    /**
+     * Thrown when the GCM authentication tag check fails; the download is not retried.
+     */
+    public static class AuthenticationFailedException extends IOException {
+        private static final long serialVersionUID = 0L;
+
+        public AuthenticationFailedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -164,6 +164,19 @@ public class CallPeerMediaHandlerJabberImpl extends CallPeerMediaHandler<CallPee
      */
     private boolean localInputEvtAware = false;
 
+    /**
+     * Sends the local candidates of the transport manager in transport-info to the call peer.
+     */
+    private final TransportInfoSender transportInfoSender = contents -> {
+        try {
+            mPeer.sendTransportInfo(contents);
+        }
+        catch (SmackException.NotConnectedException | InterruptedException
+               | XMPPException.XMPPErrorException | SmackException.NoResponseException e) {
+            Timber.e(e, "Could not send transport info");
+        }
+    };
+
     /**
      * Creates a new handler that will be managing media streams for <code>peer</code>.
      *
@@ -817,6 +830,16 @@ public class CallPeerMediaHandlerJabberImpl extends CallPeerMediaHandler<CallPee
         return transportManager.wrapupCandidateHarvest();
     }
 
+    /**
+     * Starts trickling the local candidates which the transport manager has not included in the offer or
+     * the answer sent to the call peer, if it does so.
+     */
+    public void startCandidateTrickle() {
+        TransportManagerJabberImpl transportManager = queryTransportManager();
+        if (transportManager != null)
+            transportManager.startCandidateTrickle(transportInfoSender);
+    }
+
     /**
      * Creates if necessary, and configures the stream that this <code>MediaHandler</code> is using for
      * the <code>MediaType</code> matching the one of the <code>MediaDevice</code>. This method extends the
@@ -1131,15 +1154,8 @@ public class CallPeerMediaHandlerJabberImpl extends CallPeerMediaHandler<CallPee
                     OperationFailedException.ILLEGAL_ARGUMENT, null);
         }
 
-        harvestCandidates(offer, answer, contents -> {
-            try {
-                mPeer.sendTransportInfo(contents);
-            }
-            catch (SmackException.NotConnectedException | InterruptedException
-                   | XMPPException.XMPPErrorException | SmackException.NoResponseException e) {
-                Timber.e(e, "Could not send transport info");
-            }
-        });
+        harvestCandidates(offer, answer, transportInfoSender);
+        startCandidateTrickle();
 
         /*
          * cmeng (20210405): with mux on RTP channel has greatly improved the connection speed.
@@ -18,7 +18,6 @@ import java.util.Date;
 import java.util.EventObject;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.Vector;
@@ -47,6 +46,7 @@ import net.java.sip.communicator.service.protocol.event.ChatRoomMemberPropertyCh
 import net.java.sip.communicator.service.protocol.event.ChatRoomMemberPropertyChangeListener;
 import net.java.sip.communicator.service.protocol.event.ChatRoomMemberRoleChangeEvent;
 import net.java.sip.communicator.service.protocol.event.ChatRoomMemberRoleListener;
+import net.java.sip.communicator.service.protocol.event.ChatRoomMembersSnapshotEvent;
 import net.java.sip.communicator.service.protocol.event.ChatRoomMessageDeliveredEvent;
 import net.java.sip.communicator.service.protocol.event.ChatRoomMessageDeliveryFailedEvent;
 import net.java.sip.communicator.service.protocol.event.ChatRoomMessageListener;
@@ -207,9 +207,9 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
     private final MessageHistoryServiceImpl mMHS = MessageHistoryActivator.getMessageHistoryService();
 
     /**
-     * The list of members of this chat room EntityFullJid
+     * The members of this chat room by nickname; its monitor also guards {@link #mucOwnPresenceReceived}.
      */
-    private final Hashtable<Resourcepart, ChatRoomMemberJabberImpl> members = new Hashtable<>();
+    private final ChatRoomOccupantRegistry members = new ChatRoomOccupantRegistry();
 
     /**
      * The list of banned members of this chat room EntityFullJid.
@@ -257,7 +257,9 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
     private Presence lastPresenceSent = null;
 
     /**
-     * All <presence/>'s reason will default to REASON_USER_LIST until user own <code>Presence</code> has been received.
+     * The occupants reported before the user own <code>Presence</code> has been received are the room
+     * user list; they are collected and reported in a single <code>ChatRoomMembersSnapshotEvent</code>
+     * with reason REASON_USER_LIST on join. Guarded by {@link #members}.
      *
      * @see ChatRoomMemberPresenceChangeEvent#REASON_USER_LIST
      */
@@ -549,14 +551,26 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
 
     /**
      * Returns a List of <code>Member</code>s corresponding to all members currently participating in this room.
+     * The list is an immutable snapshot, which is shared by all the callers until the members change.
      *
      * @return a List of <code>Member</code> corresponding to all room members.
      */
     @Override
     public List<ChatRoomMember> getMembers() {
-        synchronized (members) {
-            return new LinkedList<>(members.values());
-        }
+        return members.getSnapshot().members;
+    }
+
+    /**
+     * Returns the members currently participating in this room with a specific role (which, for
+     * ChatRoomMemberRole.OWNER and ChatRoomMemberRole.ADMINISTRATOR, is their affiliation).
+     *
+     * @param role the role of the members to return
+     *
+     * @return an immutable List of the room members with the given role.
+     */
+    @Override
+    public List<ChatRoomMember> getMembers(ChatRoomMemberRole role) {
+        return members.getMembers(role);
     }
 
     /**
@@ -820,12 +834,22 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
     private void onJoinSuccess() {
         // update members list only on successful joining chatRoom
         ChatRoomMemberJabberImpl member = new ChatRoomMemberJabberImpl(this, mNickName, mPPS.getOurJid());
+        ChatRoomOccupantRegistry.Snapshot userList = null;
         synchronized (members) {
             members.put(mNickName, member);
+
+            // unblock all conference event UI display on received own <presence/> stanza e.g. participants' <presence/> etc
+            if (!mucOwnPresenceReceived) {
+                mucOwnPresenceReceived = true;
+                userList = members.getSnapshot();
+            }
         }
 
-        // unblock all conference event UI display on received own <presence/> stanza e.g. participants' <presence/> etc
-        mucOwnPresenceReceived = true;
+        // Report the occupants collected while joining in one go, not one event per occupant.
+        if (userList != null) {
+            fireMemberPresenceSnapshot(userList, ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED,
+                    ChatRoomMemberPresenceChangeEvent.REASON_USER_LIST);
+        }
         opSetMuc.fireLocalUserPresenceEvent(this, LocalUserChatRoomPresenceChangeEvent.LOCAL_USER_JOINED, null);
     }
 
@@ -894,15 +918,8 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
             return null;
         }
 
-        Resourcepart participantNick = participant.getResourceOrThrow();
-        synchronized (members) {
-            for (ChatRoomMemberJabberImpl member : members.values()) {
-                if (participantNick.equals(member.getNickAsResourcepart())
-                        || participant.equals(member.getJabberId()))
-                    return member;
-            }
-        }
-        return members.get(participantNick);
+        ChatRoomMemberJabberImpl member = members.get(participant.getResourceOrThrow());
+        return (member != null) ? member : members.find(participant);
     }
 
     /**
@@ -956,13 +973,14 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
         }
 
         // cmeng: removed as chatPanel will closed ?
+        ChatRoomOccupantRegistry.Snapshot lastMembers;
         synchronized (members) {
-            for (ChatRoomMember member : members.values()) {
-                fireMemberPresenceEvent(member, ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT,
-                        "Local user has left the chat room.");
-            }
-            members.clear();
+            lastMembers = members.clear();
+            // the occupants reported on the next join are again the room user list
+            mucOwnPresenceReceived = false;
         }
+        fireMemberPresenceSnapshot(lastMembers, ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT,
+                "Local user has left the chat room.");
 
         /*
          * Remove all the callback listeners for the chatRoom
@@ -1286,18 +1304,22 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
             // when somebody changes its nickname we first receive event for its nickname changed
             // and after that that has joined we check if this already joined and if so we skip it
             // Note: mNickName may be null so order of equals is important
-            if (!participantNick.equals(mNickName) && !members.containsKey(participantNick)) {
-                String reason = mucOwnPresenceReceived ? ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED
-                        : ChatRoomMemberPresenceChangeEvent.REASON_USER_LIST;
-
+            if (!participantNick.equals(mNickName) && !members.contains(participantNick)) {
                 // smack returns fully qualified occupant names.
                 Occupant occupant = mMultiUserChat.getOccupant(participant);
                 ChatRoomMemberJabberImpl member
                         = new ChatRoomMemberJabberImpl(ChatRoomJabberImpl.this, occupant.getNick(), occupant.getJid());
 
-                members.put(participantNick, member);
-                // REASON_USER_LIST reason will not show participant 'has joined' in chat window
-                fireMemberPresenceEvent(member, ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED, reason);
+                // The room user list received while joining is reported by onJoinSuccess() in one snapshot.
+                boolean userList;
+                synchronized (members) {
+                    if (!members.putIfAbsent(participantNick, member))
+                        return;
+                    userList = !mucOwnPresenceReceived;
+                }
+                if (!userList)
+                    fireMemberPresenceEvent(member, ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED,
+                            ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED);
             }
         }
 
@@ -1314,9 +1336,7 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
 
             ChatRoomMember member = findMemberFromParticipant(participant);
             if (member != null) {
-                synchronized (members) {
-                    members.remove(participant.getResourceOrThrow());
-                }
+                members.remove(participant.getResourceOrThrow());
                 fireMemberPresenceEvent(member, ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT, null);
             }
         }
@@ -1333,9 +1353,7 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
         public void kicked(EntityFullJid participant, Jid actor, String reason) {
             ChatRoomMember member = findMemberFromParticipant(participant);
             if (member != null) {
-                synchronized (members) {
-                    members.remove(participant.getResourceOrThrow());
-                }
+                members.remove(participant.getResourceOrThrow());
                 fireMemberPresenceEvent(member, actor, ChatRoomMemberPresenceChangeEvent.MEMBER_KICKED, reason);
             }
         }
@@ -1385,9 +1403,7 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
             ChatRoomMemberJabberImpl member = findMemberFromParticipant(participant);
             if (member != null) {
                 Resourcepart nick = participant.getResourceOrThrow();
-                synchronized (members) {
-                    members.remove(nick);
-                }
+                members.remove(nick);
                 banList.put(nick, member);
                 fireMemberRoleEvent(member, member.getCurrentRole(), ChatRoomMemberRole.OUTCAST);
             }
@@ -1525,11 +1541,8 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
                 mNickName = newNickname;
 
             member.setNick(newNickname);
-            synchronized (members) {
-                // change the member key
-                ChatRoomMemberJabberImpl mem = members.remove(participant.getResourceOrThrow());
-                members.put(newNickname, mem);
-            }
+            // change the member key
+            members.rename(participant.getResourceOrThrow(), newNickname);
 
             ChatRoomMemberPropertyChangeEvent evt = new ChatRoomMemberPropertyChangeEvent(member,
                     ChatRoomJabberImpl.this, ChatRoomMemberPropertyChangeEvent.MEMBER_NICKNAME,
@@ -1777,6 +1790,33 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
             listener.memberPresenceChanged(evt);
     }
 
+    /**
+     * Creates the corresponding ChatRoomMembersSnapshotEvent and notifies all
+     * <code>ChatRoomMemberPresenceListener</code>s that all the members of a snapshot have joined or left
+     * this <code>ChatRoom</code>; nothing is fired for an empty snapshot.
+     *
+     * @param snapshot the snapshot of the members that this event is about
+     * @param eventID the identifier of the event
+     * @param eventReason the reason of the event
+     */
+    private void fireMemberPresenceSnapshot(ChatRoomOccupantRegistry.Snapshot snapshot, String eventID,
+            String eventReason) {
+        if (snapshot.members.isEmpty())
+            return;
+
+        ChatRoomMembersSnapshotEvent evt
+                = new ChatRoomMembersSnapshotEvent(this, snapshot.members, snapshot.version, eventID, eventReason);
+
+        Timber.log(TimberLog.FINER, "Will dispatch the following ChatRoom event: %s", evt);
+
+        Iterable<ChatRoomMemberPresenceListener> listeners;
+        synchronized (memberListeners) {
+            listeners = new ArrayList<>(memberListeners);
+        }
+        for (ChatRoomMemberPresenceListener listener : listeners)
+            listener.memberPresenceSnapshot(evt);
+    }
+
     /**
      * Creates the corresponding ChatRoomMemberRoleChangeEvent and notifies all
      * <code>ChatRoomMemberRoleListener</code>s that a ChatRoomMember has changed its mRole in this <code>ChatRoom</code>.
@@ -1785,8 +1825,9 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
      * @param previousRole the previous mRole that member had
      * @param newRole the new mRole the member get
      */
-    private void fireMemberRoleEvent(ChatRoomMember member, ChatRoomMemberRole previousRole, ChatRoomMemberRole newRole) {
-        member.setRole(newRole);
+    private void fireMemberRoleEvent(ChatRoomMemberJabberImpl member, ChatRoomMemberRole previousRole,
+            ChatRoomMemberRole newRole) {
+        members.setRole(member, newRole);
         ChatRoomMemberRoleChangeEvent evt = new ChatRoomMemberRoleChangeEvent(this, member, previousRole, newRole);
 
         Timber.log(TimberLog.FINER, "Will dispatch the following ChatRoom event: %s", evt);
@@ -2472,7 +2513,7 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
         if (mNickName != null) {
             ChatRoomMemberJabberImpl mUserLocal = members.get(mNickName);
             if (mUserLocal != null) {
-                mUserLocal.setRole(newRole);
+                members.setRole(mUserLocal, newRole);
             }
         }
 
@@ -2618,9 +2659,7 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
      * @return the member of this chat room corresponding to the given nick name.
      */
     public ChatRoomMemberJabberImpl findMemberForNickName(Resourcepart nickName) {
-        synchronized (members) {
-            return members.get(nickName);
-        }
+        return members.get(nickName);
     }
 
     /**
@@ -2936,9 +2975,11 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
                 member.setDisplayName(nickExt.getName());
             }
 
-            // tell listeners the member was updated (and new information about it is available)
+            // tell listeners the member was updated (and new information about it is available);
+            // not while joining, the room user list snapshot carries the updated members.
             member.setLastPresence(presence);
-            fireMemberPresenceEvent(member, ChatRoomMemberPresenceChangeEvent.MEMBER_UPDATED, null);
+            if (mucOwnPresenceReceived)
+                fireMemberPresenceEvent(member, ChatRoomMemberPresenceChangeEvent.MEMBER_UPDATED, null);
         }
     }
 
@@ -3027,7 +3068,7 @@ public class ChatRoomJabberImpl implements ChatRoom, CaptchaDialog.CaptchaDialog
             return;
         }
 
-        boolean isOffline = !members.containsKey(nickname);
+        boolean isOffline = !members.contains(nickname);
         PresenceStatus offlineStatus = mPPS.getJabberStatusEnum().getStatus(
                 isOffline ? JabberStatusEnum.OFFLINE : JabberStatusEnum.AVAILABLE);
 
@@ -0,0 +1,284 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package net.java.sip.communicator.impl.protocol.jabber;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.java.sip.communicator.service.protocol.ChatRoomMember;
+import net.java.sip.communicator.service.protocol.ChatRoomMemberRole;
+
+import org.jxmpp.jid.Jid;
+import org.jxmpp.jid.parts.Resourcepart;
+
+/**
+ * The occupants of a <code>ChatRoomJabberImpl</code>, built for rooms with thousands of them. The
+ * occupants are kept in a concurrent map by nickname, so that the lookups of the stanza handlers do
+ * not lock; and in an index by role (<code>ChatRoomMemberRole</code> combines the MUC role and
+ * affiliation). The member list handed out is an immutable, versioned snapshot which is only
+ * rebuilt when it is asked for after a change: a burst of thousands of joins costs no copy at all.
+ *
+ * The changes are serialized on the monitor of the registry, which <code>ChatRoomJabberImpl</code>
+ * also holds to make a change and the snapshot that reports it atomic.
+ *
+ * @author Eng Chong Meng
+ */
+class ChatRoomOccupantRegistry {
+    /**
+     * An immutable snapshot of the occupants.
+     */
+    static final class Snapshot {
+        /**
+         * The snapshot of an empty room.
+         */
+        static final Snapshot EMPTY = new Snapshot(0, Collections.emptyList());
+
+        /**
+         * The version of the occupants that this is a snapshot of.
+         */
+        final long version;
+
+        /**
+         * The immutable list of the occupants.
+         */
+        final List<ChatRoomMember> members;
+
+        Snapshot(long version, List<ChatRoomMember> members) {
+            this.version = version;
+            this.members = members;
+        }
+    }
+
+    /**
+     * The occupants by nickname.
+     */
+    private final Map<Resourcepart, ChatRoomMemberJabberImpl> occupants = new ConcurrentHashMap<>();
+
+    /**
+     * The occupants by role, then by nickname; guarded by this.
+     */
+    private final Map<ChatRoomMemberRole, Map<Resourcepart, ChatRoomMemberJabberImpl>> roleIndex
+            = new EnumMap<>(ChatRoomMemberRole.class);
+
+    /**
+     * The last snapshot of the occupants; stale if its version is not {@link #version}.
+     */
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * The version of the occupants, incremented by every change; written while holding this.
+     */
+    private volatile long version;
+
+    /**
+     * Returns the occupant with a specific nickname.
+     *
+     * @param nick the nickname of the occupant; may be <code>null</code>
+     *
+     * @return the occupant with nickname <code>nick</code> or <code>null</code> if there is none.
+     */
+    ChatRoomMemberJabberImpl get(Resourcepart nick) {
+        return (nick == null) ? null : occupants.get(nick);
+    }
+
+    /**
+     * Returns whether there is an occupant with a specific nickname.
+     *
+     * @param nick the nickname of the occupant; may be <code>null</code>
+     *
+     * @return <code>true</code> if there is an occupant with nickname <code>nick</code>.
+     */
+    boolean contains(Resourcepart nick) {
+        return (nick != null) && occupants.containsKey(nick);
+    }
+
+    /**
+     * Returns the occupant with a specific jabber id. The lookup is linear, use {@link #get} when
+     * the nickname is known.
+     *
+     * @param jid the jabber id of the occupant
+     *
+     * @return the occupant with jabber id <code>jid</code> or <code>null</code> if there is none.
+     */
+    ChatRoomMemberJabberImpl find(Jid jid) {
+        for (ChatRoomMemberJabberImpl member : occupants.values()) {
+            if (jid.equals(member.getJabberId()))
+                return member;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of occupants.
+     *
+     * @return the number of occupants.
+     */
+    int size() {
+        return occupants.size();
+    }
+
+    /**
+     * Adds or replaces an occupant.
+     *
+     * @param nick the nickname of the occupant
+     * @param member the occupant
+     */
+    synchronized void put(Resourcepart nick, ChatRoomMemberJabberImpl member) {
+        ChatRoomMemberJabberImpl old = occupants.put(nick, member);
+        if (old != null)
+            unindex(nick);
+        index(nick, member);
+        version++;
+    }
+
+    /**
+     * Adds an occupant unless there is already one with the same nickname.
+     *
+     * @param nick the nickname of the occupant
+     * @param member the occupant
+     *
+     * @return <code>true</code> if <code>member</code> has been added.
+     */
+    synchronized boolean putIfAbsent(Resourcepart nick, ChatRoomMemberJabberImpl member) {
+        if (occupants.putIfAbsent(nick, member) != null)
+            return false;
+
+        index(nick, member);
+        version++;
+        return true;
+    }
+
+    /**
+     * Removes an occupant.
+     *
+     * @param nick the nickname of the occupant
+     *
+     * @return the removed occupant or <code>null</code> if there was none with nickname <code>nick</code>.
+     */
+    synchronized ChatRoomMemberJabberImpl remove(Resourcepart nick) {
+        ChatRoomMemberJabberImpl member = occupants.remove(nick);
+        if (member != null) {
+            unindex(nick);
+            version++;
+        }
+        return member;
+    }
+
+    /**
+     * Changes the key of an occupant which has changed its nickname.
+     *
+     * @param oldNick the old nickname of the occupant
+     * @param newNick the new nickname of the occupant
+     */
+    synchronized void rename(Resourcepart oldNick, Resourcepart newNick) {
+        ChatRoomMemberJabberImpl member = occupants.remove(oldNick);
+        if (member != null) {
+            unindex(oldNick);
+            put(newNick, member);
+        }
+    }
+
+    /**
+     * Sets the role of an occupant and updates the index.
+     *
+     * @param member the occupant
+     * @param role the new role of <code>member</code>
+     */
+    synchronized void setRole(ChatRoomMemberJabberImpl member, ChatRoomMemberRole role) {
+        member.setRole(role);
+
+        Resourcepart nick = member.getNickAsResourcepart();
+        if ((nick != null) && (occupants.get(nick) == member)) {
+            unindex(nick);
+            index(nick, member);
+        }
+    }
+
+    /**
+     * Removes all the occupants.
+     *
+     * @return the snapshot of the occupants before their removal.
+     */
+    synchronized Snapshot clear() {
+        Snapshot last = getSnapshot();
+        if (!occupants.isEmpty()) {
+            occupants.clear();
+            roleIndex.clear();
+            version++;
+        }
+        return last;
+    }
+
+    /**
+     * Returns the current snapshot of the occupants, building it if they have changed since the last one.
+     *
+     * @return the current snapshot of the occupants.
+     */
+    Snapshot getSnapshot() {
+        Snapshot s = snapshot;
+        if (s.version == version)
+            return s;
+
+        synchronized (this) {
+            s = snapshot;
+            if (s.version != version) {
+                s = new Snapshot(version, Collections.unmodifiableList(new ArrayList<>(occupants.values())));
+                snapshot = s;
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Returns the occupants with a specific role.
+     *
+     * @param role the role
+     *
+     * @return an immutable list of the occupants with role <code>role</code>.
+     */
+    synchronized List<ChatRoomMember> getMembers(ChatRoomMemberRole role) {
+        Map<Resourcepart, ChatRoomMemberJabberImpl> members = roleIndex.get(role);
+        return ((members == null) || members.isEmpty())
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(members.values()));
+    }
+
+    /**
+     * Adds an occupant to the index by role.
+     *
+     * @param nick the nickname of the occupant
+     * @param member the occupant
+     */
+    private void index(Resourcepart nick, ChatRoomMemberJabberImpl member) {
+        ChatRoomMemberRole role = member.getCurrentRole();
+        if (role == null)
+            role = ChatRoomMemberRole.GUEST;
+
+        Map<Resourcepart, ChatRoomMemberJabberImpl> members = roleIndex.get(role);
+        if (members == null) {
+            members = new LinkedHashMap<>();
+            roleIndex.put(role, members);
+        }
+        members.put(nick, member);
+    }
+
+    /**
+     * Removes an occupant from the index by role.
+     *
+     * @param nick the nickname of the occupant
+     */
+    private void unindex(Resourcepart nick) {
+        for (Map<Resourcepart, ChatRoomMemberJabberImpl> members : roleIndex.values()) {
+            if (members.remove(nick) != null)
+                break;
+        }
+    }
+}
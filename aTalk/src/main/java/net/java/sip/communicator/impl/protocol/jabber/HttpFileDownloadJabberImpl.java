@@ -29,14 +29,10 @@ import android.os.Looper;
 import androidx.core.content.ContextCompat;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.Hashtable;
 import java.util.Map;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherOutputStream;
-
 import net.java.sip.communicator.service.protocol.AbstractFileTransfer;
 import net.java.sip.communicator.service.protocol.Contact;
 import net.java.sip.communicator.service.protocol.IMessage;
@@ -83,6 +79,9 @@ public class HttpFileDownloadJabberImpl extends AbstractFileTransfer {
     // Downloading tmp file.
     private File tmpFile = null;
 
+    // In-process downloader for OMEMO aesgcm media, which decrypts while downloading.
+    private volatile AesgcmFileDownloader aesgcmDownloader = null;
+
     /**
      * The transfer file full path for saving the received file.
      */
@@ -135,6 +134,10 @@ public class HttpFileDownloadJabberImpl extends AbstractFileTransfer {
      */
     @Override
     public void cancel() {
+        if (aesgcmDownloader != null) {
+            aesgcmDownloader.cancel();
+            aesgcmDownloader = null;
+        }
         doCleanup(-1);
     }
 
@@ -273,6 +276,11 @@ public class HttpFileDownloadJabberImpl extends AbstractFileTransfer {
      */
     public void download(File xferFile) {
         mXferFile = xferFile;
+        if (mEncryption == IMessage.ENCRYPTION_OMEMO) {
+            downloadAesgcm();
+            return;
+        }
+
         DownloadManager.Request request = new DownloadManager.Request(mUri);
         request.setNotificationVisibility(DownloadManager.Request.VISIBILITY_VISIBLE_NOTIFY_COMPLETED);
         try {
@@ -292,6 +300,37 @@ public class HttpFileDownloadJabberImpl extends AbstractFileTransfer {
         }
     }
 
+    /**
+     * Download and decrypt the OMEMO media file in-process, directly into the destination file.
+     * This avoids the DownloadManager tmp file and a second decryption pass over it.
+     */
+    private void downloadAesgcm() {
+        final AesgcmFileDownloader downloader = new AesgcmFileDownloader(new AesgcmUrl(dnLink), mXferFile,
+                byteReceived -> fireProgressChangeEvent(System.currentTimeMillis(), byteReceived));
+        aesgcmDownloader = downloader;
+        fireStatusChangeEvent(FileTransferStatusChangeEvent.IN_PROGRESS, null);
+
+        new Thread("HttpFileDownload-aesgcm") {
+            @Override
+            public void run() {
+                try {
+                    downloader.download();
+                    mFileSize = mXferFile.length();
+                    fireStatusChangeEvent(FileTransferStatusChangeEvent.COMPLETED, null);
+                } catch (IOException e) {
+                    Timber.w("Aesgcm download failed: %s (%s)", mFileName, e.getMessage());
+                    if (aesgcmDownloader != null) {
+                        fireStatusChangeEvent(FileTransferStatusChangeEvent.FAILED,
+                                "Failed to download OMEMO media file: " + e.getMessage());
+                    }
+                } finally {
+                    aesgcmDownloader = null;
+                    doCleanup(-1);
+                }
+            }
+        }.start();
+    }
+
     /**
      * Queries the <code>DownloadManager</code> for the status of download job identified by given <code>id</code>.
      *
@@ -335,41 +374,11 @@ public class HttpFileDownloadJabberImpl extends AbstractFileTransfer {
 
                     // update fileSize for progress bar update, in case it is still not updated by download Manager
                     mFileSize = inFile.length();
-                    if (inFile.exists()) {
-                        // OMEMO media file sharing - need to decrypt file content.
-                        if ((dnLink != null) && dnLink.matches("^aesgcm:.*")) {
-                            try {
-                                AesgcmUrl aesgcmUrl = new AesgcmUrl(dnLink);
-                                Cipher decryptCipher = aesgcmUrl.getDecryptionCipher();
-
-                                FileInputStream fis = new FileInputStream(inFile);
-                                FileOutputStream outputStream = new FileOutputStream(mXferFile);
-                                CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, decryptCipher);
-
-                                int count;
-                                byte[] buffer = new byte[4096];
-                                while ((count = fis.read(buffer)) != -1) {
-                                    cipherOutputStream.write(buffer, 0, count);
-                                }
-
-                                fis.close();
-                                outputStream.flush();
-                                cipherOutputStream.close();
-                                // inFile.delete();
-
-                                fireStatusChangeEvent(FileTransferStatusChangeEvent.COMPLETED, null);
-                            } catch (Exception e) {
-                                fireStatusChangeEvent(FileTransferStatusChangeEvent.FAILED,
-                                        "Failed to decrypt OMEMO media file: " + inFile);
-                            }
-                        }
-                        else {
-                            // Plain media file sharing; rename will move the infile to outfile dir.
-                            if (inFile.renameTo(mXferFile)) {
-                                fireStatusChangeEvent(FileTransferStatusChangeEvent.COMPLETED, null);
-                                // Timber.d("Downloaded completed: %s (%s)", mFileName, mFileSize);
-                            }
-                        }
+                    // Only plain media file sharing uses the DownloadManager; OMEMO media is decrypted
+                    // in-process by downloadAesgcm(). Rename will move the infile to outfile dir.
+                    if (inFile.exists() && inFile.renameTo(mXferFile)) {
+                        fireStatusChangeEvent(FileTransferStatusChangeEvent.COMPLETED, null);
+                        // Timber.d("Downloaded completed: %s (%s)", mFileName, mFileSize);
                     }
                 }
                 else if (lastJobStatus == DownloadManager.STATUS_FAILED) {
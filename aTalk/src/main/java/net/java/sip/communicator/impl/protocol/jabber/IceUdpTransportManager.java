@@ -24,6 +24,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import net.java.sip.communicator.service.netaddr.IceServerDescriptor;
 import net.java.sip.communicator.service.netaddr.NetworkAddressManagerService;
 import net.java.sip.communicator.service.protocol.CallPeer;
 import net.java.sip.communicator.service.protocol.OperationFailedException;
@@ -36,6 +37,7 @@ import net.java.sip.communicator.util.PortTracker;
 import org.atalk.android.R;
 import org.atalk.android.aTalkApp;
 import org.atalk.impl.timberlog.TimberLog;
+import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.neomedia.DefaultStreamConnector;
 import org.atalk.service.neomedia.MediaStreamTarget;
 import org.atalk.service.neomedia.StreamConnector;
@@ -61,6 +63,7 @@ import org.ice4j.socket.MultiplexingDatagramSocket;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.packet.XmlElement;
 
+import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
 import org.jivesoftware.smackx.externalservicediscovery.IceCandidateHarvester;
 import org.jivesoftware.smackx.jingle.element.JingleContent;
 import org.jivesoftware.smackx.jingle_rtp.CandidateType;
@@ -84,6 +87,13 @@ import timber.log.Timber;
  * Enhance TURN with TCP, TLS, DTLS transport
  */
 public class IceUdpTransportManager extends TransportManagerJabberImpl implements PropertyChangeListener {
+    /**
+     * The name of the property which enables trickle ICE with the call peers which support it: the offer or
+     * the answer is sent with the host candidates only, and the candidates of the other harvesters
+     * (STUN/TURN, UPnP, Jingle Nodes) are sent in transport-info as they are gathered.
+     */
+    public static final String PNAME_TRICKLE_ICE = "protocol.jabber.TRICKLE_ICE";
+
     // The default STUN servers that will be used in the peer to peer connections if none is specified;
     // pick the first one that is reachable; multiple stun servers only add time in redundant candidates harvest
     List<String> stunServers = Arrays.asList(
@@ -159,6 +169,11 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
      */
     private DatagramSocket[] streamConnectorSockets = null;
 
+    /**
+     * Whether the trickle harvest of the local candidates has been started; guarded by this.
+     */
+    private boolean trickleStarted = false;
+
     /**
      * Creates a new instance of this transport manager, binding it to the specified peer.
      *
@@ -167,9 +182,37 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
     public IceUdpTransportManager(CallPeerJabberImpl callPeer) {
         super(callPeer);
         iceAgent = createIceAgent();
+        iceAgent.setTrickling(isTrickleSupported(callPeer));
         iceAgent.addStateChangeListener(this);
     }
 
+    /**
+     * Determines whether the local candidates are to be trickled to a specific call peer. Per XEP-0176, a
+     * peer advertising urn:ietf:rfc:3264 expects the classic offer/answer with all the candidates, so trickle
+     * ICE is used only if the peer is known (disco#info) to support ICE-UDP without it.
+     *
+     * @param callPeer the call peer
+     *
+     * @return <code>true</code> if the local candidates are to be trickled to <code>callPeer</code>.
+     */
+    private static boolean isTrickleSupported(CallPeerJabberImpl callPeer) {
+        ConfigurationService cfg = JabberActivator.getConfigurationService();
+        if ((cfg != null) && !cfg.getBoolean(PNAME_TRICKLE_ICE, true))
+            return false;
+
+        // The disco#info of the initiator of an incoming call may only be cached by the entity capabilities.
+        DiscoverInfo discoverInfo = callPeer.getDiscoveryInfo();
+        ServiceDiscoveryHelper scHelper = callPeer.getProtocolProvider().getScHelper();
+        if ((discoverInfo == null) && (scHelper != null))
+            discoverInfo = scHelper.discoverInfoNonBlocking(callPeer.getPeerJid());
+
+        boolean trickle = (discoverInfo != null)
+                && discoverInfo.containsFeature(ProtocolProviderServiceJabberImpl.URN_XMPP_JINGLE_ICE_UDP_1)
+                && !discoverInfo.containsFeature(ProtocolProviderServiceJabberImpl.URN_IETF_RFC_3264);
+        Timber.d("Trickle ICE with %s: %s", callPeer.getPeerJid(), trickle);
+        return trickle;
+    }
+
     /**
      * Creates the ICE agent that we would be using in this transport manager for all negotiation.
      *
@@ -194,13 +237,19 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
         JabberAccountIDImpl accID = (JabberAccountIDImpl) provider.getAccountID();
 
         if (accID.isStunServerDiscoveryEnabled()) {
-            List<StunCandidateHarvester> extServiceHarvester = IceCandidateHarvester.getExtServiceHarvester(connection, PROTOCOL_UDP);
-            Timber.i("Auto discovered STUN/TURN extService harvester: %s", extServiceHarvester);
-            if (!extServiceHarvester.isEmpty()) {
-                for (StunCandidateHarvester iceCandidate : extServiceHarvester) {
-                    agent.addCandidateHarvester(iceCandidate);
+            // The resolved services are cached until they expire or the network changes.
+            String key = "xep0215:" + accID.getAccountUid();
+            List<IceServerDescriptor> extServices = namSer.getCachedIceServers(key);
+            if (extServices == null) {
+                extServices = IceCandidateHarvester.getExtServices(connection, PROTOCOL_UDP);
+                namSer.cacheIceServers(key, extServices);
+            }
+            Timber.i("Auto discovered STUN/TURN extService: %s", extServices);
+            for (IceServerDescriptor iceServer : extServices) {
+                if (namSer.isIceServerResponsive(iceServer.getAddress())) {
+                    agent.addCandidateHarvester(iceServer.createHarvester(null));
+                    atLeastOneStunServer = true;
                 }
-                atLeastOneStunServer = true;
             }
 
             // the default server is supposed to use the same user name and password as the account itself.
@@ -283,6 +332,10 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
                     Timber.i("Unresolved STUN server address for %s", addr);
                     continue;
                 }
+                if (!namSer.isIceServerResponsive(addr)) {
+                    Timber.i("Skipped unresponsive STUN server %s", addr);
+                    continue;
+                }
 
                 StunCandidateHarvester harvester;
                 if (desc.isTurnSupported()) {
@@ -305,6 +358,8 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
             for (String stunServer : stunServers) {
                 String[] hostPort = stunServer.split(":");
                 for (TransportAddress addr : getTransportAddress(hostPort[0], Integer.parseInt(hostPort[1]), Transport.UDP)) {
+                    if (!namSer.isIceServerResponsive(addr))
+                        continue;
                     agent.addCandidateHarvester(new StunCandidateHarvester(addr));
                     atLeastOneStunServer = true;
                 }
@@ -339,7 +394,7 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
 
     /**
      * Generate a list of TransportAddress from the given hostname, port and transport.
-     * The given host name is resolved into both IPv4 and IPv6 InetAddresses.
+     * The given host name is resolved into both IPv4 and IPv6 InetAddresses, which are cached until the network changes.
      *
      * Note: android InetAddress.getByName(hostname) returns the first IP found, any may be an IPv6 InetAddress;
      * if mobile network setting for APN=IPV4/IPv6 or APN=IPv6. This causes problem in STUN candidate harvest:
@@ -352,12 +407,26 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
      */
     protected List<TransportAddress> getTransportAddress(String hostname, int port, Transport transport) {
         List<TransportAddress> transportAddress = new ArrayList<>();
+        NetworkAddressManagerService namSer = getNetAddrMgr();
+        String key = "dns:" + hostname + ":" + port + ":" + transport;
+        List<IceServerDescriptor> iceServers = namSer.getCachedIceServers(key);
+        if (iceServers != null) {
+            for (IceServerDescriptor iceServer : iceServers) {
+                transportAddress.add(iceServer.getAddress());
+            }
+            return transportAddress;
+        }
+
+        iceServers = new ArrayList<>();
         try {
             // return all associated InetAddress in both IPv4 and IPv6 address
             InetAddress[] inetAddresses = InetAddress.getAllByName(hostname);
             for (InetAddress inetAddress : inetAddresses) {
-                transportAddress.add(new TransportAddress(inetAddress, port, transport));
+                TransportAddress address = new TransportAddress(inetAddress, port, transport);
+                transportAddress.add(address);
+                iceServers.add(new IceServerDescriptor(address, false, null, Long.MAX_VALUE));
             }
+            namSer.cacheIceServers(key, iceServers);
         }
         catch (UnknownHostException e) {
             Timber.e("UnknownHostException: %s", e.getMessage());
@@ -602,17 +671,10 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
             pe = createTransportPacketExtension();
 
             /*
-             * Create the content to be sent in a transport-info. The transport is the only
-             * extension to be sent in transport-info so the content has the same attributes as in
-             * our answer and none of its non-transport extensions.
+             * Create the content to be sent in a transport-info.
              */
-            JingleContent.Builder content = JingleContent.getBuilder();
-            for (String name : ourContent.getAttributes().keySet()) {
-                String value = ourContent.getAttributeValue(name);
-                if (value != null)
-                    content.addAttribute(name, value);
-            }
-            content.addChildElement(createTransportForStartCandidateHarvest(media));
+            JingleContent content = createTransportInfoContent(ourContent,
+                    createTransportForStartCandidateHarvest(media));
 
             /*
              * We send each media content in separate transport-info. It is absolutely not mandatory
@@ -625,12 +687,111 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
              * sending all content in one transport-info.
              */
             Collection<JingleContent> transportInfoContents = new LinkedList<>();
-            transportInfoContents.add(content.build());
+            transportInfoContents.add(content);
             transportInfoSender.sendTransportInfo(transportInfoContents);
         }
         return pe;
     }
 
+    /**
+     * Creates the content to be sent in a transport-info. The transport is the only extension to be sent
+     * in transport-info so the content has the same attributes as in our offer or answer and none of its
+     * non-transport extensions.
+     *
+     * @param ourContent our content in the offer or the answer
+     * @param transport the transport to be sent for <code>ourContent</code>
+     *
+     * @return the content to be sent in a transport-info.
+     */
+    private static JingleContent createTransportInfoContent(JingleContent ourContent, XmlElement transport) {
+        JingleContent.Builder content = JingleContent.getBuilder();
+        for (String name : ourContent.getAttributes().keySet()) {
+            String value = ourContent.getAttributeValue(name);
+            if (value != null)
+                content.addAttribute(name, value);
+        }
+        content.addChildElement(transport);
+        return content.build();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The candidates of the harvesters other than the host harvesters are gathered in a separate thread
+     * and sent in a transport-info per content as each harvester completes; the remote peer adds them to
+     * its running check lists. Nothing is done if the local candidates are not trickled to the call peer.
+     */
+    @Override
+    public void startCandidateTrickle(final TransportInfoSender transportInfoSender) {
+        synchronized (this) {
+            if (!iceAgent.isTrickling() || trickleStarted)
+                return;
+            trickleStarted = true;
+        }
+
+        Thread trickleThread = new Thread("IceCandidateTrickle") {
+            @Override
+            public void run() {
+                long startTrickleTime = System.currentTimeMillis();
+                try {
+                    iceAgent.startCandidateTrickle(candidates -> {
+                        if (candidates == null) {
+                            Timber.i("End candidate trickle within %d ms",
+                                    System.currentTimeMillis() - startTrickleTime);
+                            getNetAddrMgr().harvestCompleted(iceAgent);
+                        }
+                        else {
+                            trickleCandidates(candidates, transportInfoSender);
+                        }
+                    });
+                }
+                catch (Throwable t) {
+                    Timber.w(t, "Candidate trickle failed");
+                }
+            }
+        };
+        trickleThread.setDaemon(true);
+        trickleThread.start();
+    }
+
+    /**
+     * Sends trickled local candidates in a transport-info per content.
+     *
+     * @param candidates the newly gathered local candidates
+     * @param transportInfoSender the <code>TransportInfoSender</code> to send the candidates with
+     */
+    private void trickleCandidates(Collection<LocalCandidate> candidates, TransportInfoSender transportInfoSender) {
+        Map<String, IceUdpTransport.Builder> transports = new LinkedHashMap<>();
+        for (LocalCandidate candidate : candidates) {
+            String media = candidate.getParentComponent().getParentStream().getName();
+            IceUdpTransport.Builder tpBuilder = transports.get(media);
+            if (tpBuilder == null) {
+                tpBuilder = IceUdpTransport.getBuilder()
+                        .setUfrag(iceAgent.getLocalUfrag())
+                        .setPassword(iceAgent.getLocalPassword());
+                transports.put(media, tpBuilder);
+            }
+            tpBuilder.addChildElement(createCandidate(candidate));
+        }
+
+        List<JingleContent> contents = cpeList;
+        if (contents == null)
+            return;
+
+        // Send each media content in separate transport-info; see startCandidateHarvest() for the reason.
+        for (Map.Entry<String, IceUdpTransport.Builder> e : transports.entrySet()) {
+            for (JingleContent ourContent : contents) {
+                RtpDescription description = ourContent.getFirstChildElement(RtpDescription.class);
+                if ((description != null) && e.getKey().equals(description.getMedia())) {
+                    Timber.d("Trickle candidates for media: %s", e.getKey());
+                    transportInfoSender.sendTransportInfo(Collections.singletonList(
+                            createTransportInfoContent(ourContent, e.getValue().build())));
+                    break;
+                }
+            }
+        }
+    }
+
     /**
      * Starts transport candidate harvest. This method should complete rapidly and, in case of lengthy procedures
      * like STUN/TURN/UPnP candidate harvests are necessary, they should be executed in a separate thread.
@@ -754,10 +915,18 @@ public class IceUdpTransportManager extends TransportManagerJabberImpl implement
         PortTracker portTracker;
 
         Timber.d("Created Ice stream agent for %s", media);
+
+        // A stream added once the trickle harvest has started is not part of it; so gather all its candidates now.
+        synchronized (this) {
+            if (trickleStarted)
+                iceAgent.setTrickling(false);
+        }
         try {
             portTracker = getPortTracker(media);
             // the following call involves STUN processing so it may take a while
             stream = getNetAddrMgr().createIceStream(rtcpmux ? 1 : 2, portTracker.getPort(), media, iceAgent);
+            if (!iceAgent.isTrickling())
+                getNetAddrMgr().harvestCompleted(iceAgent);
         }
         catch (Exception ex) {
             throw new OperationFailedException("Failed to initialize stream " + media,
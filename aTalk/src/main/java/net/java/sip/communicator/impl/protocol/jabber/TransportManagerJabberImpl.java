@@ -212,6 +212,17 @@ public abstract class TransportManagerJabberImpl extends TransportManager<CallPe
      */
     public abstract List<JingleContent> wrapupCandidateHarvest();
 
+    /**
+     * Starts the harvest of the local candidates which are trickled i.e. sent in <code>transport-info</code>
+     * <code>Jingle</code>s as they are gathered, once the offer or the answer carrying the first candidates
+     * has been sent. The default implementation does not trickle candidates and does nothing.
+     *
+     * @param transportInfoSender the <code>TransportInfoSender</code> to be used to send the trickled candidates
+     * from the local peer to the remote peer
+     */
+    public void startCandidateTrickle(TransportInfoSender transportInfoSender) {
+    }
+
     /**
      * Looks through the <code>cpExtList</code> and returns the {@link JingleContent} with the specified name.
      *
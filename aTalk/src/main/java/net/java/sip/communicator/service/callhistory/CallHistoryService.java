@@ -123,6 +123,15 @@ public interface CallHistoryService
      */
     Collection<CallRecord> findLast(int count);
 
+    /**
+     * Returns the supplied number of recent calls made before the given date.
+     *
+     * @param endDate Date the end date of the calls
+     * @param count calls count
+     * @return Collection of CallRecords with CallPeerRecord
+     */
+    Collection<CallRecord> findLastBefore(Date endDate, int count);
+
     /**
      * Find the calls made by the supplied peer address
      *
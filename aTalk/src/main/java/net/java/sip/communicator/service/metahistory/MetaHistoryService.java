@@ -10,6 +10,7 @@ import net.java.sip.communicator.service.history.event.HistorySearchProgressList
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 
 /**
  * The Meta History Service is wrapper around the other known history services. Query them all at
@@ -152,6 +153,18 @@ public interface MetaHistoryService
      */
     Collection<Object> findLastMessagesBefore(String[] services, Object descriptor, Date date, int count);
 
+    /**
+     * Returns a lazy iterator over the records before the given date, in descending timestamp order.
+     * The services are queried page by page, only as far as the records are consumed.
+     *
+     * @param services the services classNames we will query
+     * @param descriptor CallPeer address(String), MetaContact or ChatRoom.
+     * @param date records before date
+     * @param pageSize number of records to fetch from a service per query
+     * @return Iterator over the records of the services we wrap, most recent first
+     */
+    Iterator<Object> findBefore(String[] services, Object descriptor, Date date, int pageSize);
+
     /**
      * Adding progress listener for monitoring progress of search process
      *
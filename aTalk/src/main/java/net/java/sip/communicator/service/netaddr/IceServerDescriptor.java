@@ -0,0 +1,116 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.java.sip.communicator.service.netaddr;
+
+import org.ice4j.TransportAddress;
+import org.ice4j.ice.harvest.StunCandidateHarvester;
+import org.ice4j.ice.harvest.TurnCandidateHarvester;
+import org.ice4j.security.LongTermCredential;
+
+/**
+ * A resolved STUN or TURN server as found by a server discovery (XEP-0215 external services, DNS SRV or
+ * the resolution of a configured host name), which can be kept in the cache of the
+ * <code>NetworkAddressManagerService</code> and turned into a new harvester for each ICE agent.
+ *
+ * @author Eng Chong Meng
+ */
+public class IceServerDescriptor {
+    /**
+     * The resolved address of the server.
+     */
+    private final TransportAddress address;
+
+    /**
+     * Whether the server is a TURN server.
+     */
+    private final boolean turn;
+
+    /**
+     * The credential to use with the TURN server; <code>null</code> if the user's one is to be used.
+     */
+    private final LongTermCredential credential;
+
+    /**
+     * The time in milliseconds since the epoch after which the server or its credential is no longer valid;
+     * <code>Long.MAX_VALUE</code> if it does not expire.
+     */
+    private final long expires;
+
+    /**
+     * Creates a descriptor of a STUN or TURN server.
+     *
+     * @param address the resolved address of the server
+     * @param turn <code>true</code> if the server is a TURN server
+     * @param credential the credential to use with the TURN server or <code>null</code>
+     * @param expires the time in milliseconds since the epoch after which the server or its credential is no
+     * longer valid; <code>Long.MAX_VALUE</code> if it does not expire
+     */
+    public IceServerDescriptor(TransportAddress address, boolean turn, LongTermCredential credential, long expires) {
+        this.address = address;
+        this.turn = turn;
+        this.credential = credential;
+        this.expires = expires;
+    }
+
+    /**
+     * Returns the resolved address of the server.
+     *
+     * @return the resolved address of the server.
+     */
+    public TransportAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Returns whether the server is a TURN server.
+     *
+     * @return <code>true</code> if the server is a TURN server.
+     */
+    public boolean isTurn() {
+        return turn;
+    }
+
+    /**
+     * Returns the time after which the server or its credential is no longer valid.
+     *
+     * @return the time in milliseconds since the epoch after which the server or its credential is no
+     * longer valid; <code>Long.MAX_VALUE</code> if it does not expire.
+     */
+    public long getExpires() {
+        return expires;
+    }
+
+    /**
+     * Creates a new harvester for the server; a harvester gathers the candidates of a single ICE agent.
+     *
+     * @param credential the credential to use with a TURN server which has none of its own; may be <code>null</code>
+     *
+     * @return a new <code>TurnCandidateHarvester</code> or <code>StunCandidateHarvester</code> for the server.
+     */
+    public StunCandidateHarvester createHarvester(LongTermCredential credential) {
+        if (!turn)
+            return new StunCandidateHarvester(address);
+
+        LongTermCredential longTermCredential = (this.credential != null) ? this.credential : credential;
+        return (longTermCredential == null) ? new TurnCandidateHarvester(address)
+                : new TurnCandidateHarvester(address, longTermCredential);
+    }
+
+    @Override
+    public String toString() {
+        return (turn ? "turn:" : "stun:") + address;
+    }
+}
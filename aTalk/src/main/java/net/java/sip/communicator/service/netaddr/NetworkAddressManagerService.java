@@ -21,9 +21,11 @@ import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
+import java.util.List;
 
 import net.java.sip.communicator.service.netaddr.event.NetworkConfigurationChangeListener;
 
+import org.ice4j.TransportAddress;
 import org.ice4j.ice.Agent;
 import org.ice4j.ice.IceMediaStream;
 import org.ice4j.ice.harvest.StunCandidateHarvester;
@@ -163,6 +165,45 @@ public interface NetworkAddressManagerService {
      */
     StunCandidateHarvester discoverStunServer(String domainName, byte[] userName, byte[] password);
 
+    /**
+     * Returns the STUN/TURN servers found by a server discovery on the current network, if they are
+     * cached and have not expired. The cache is cleared when the network changes.
+     *
+     * @param key the key of the discovery e.g. the XEP-0215 external services of an account
+     *
+     * @return the cached servers, an empty list if the discovery found none, or <code>null</code> if the
+     * discovery is to be done (again).
+     */
+    List<IceServerDescriptor> getCachedIceServers(String key);
+
+    /**
+     * Caches the STUN/TURN servers found by a server discovery on the current network, until the first
+     * of them expires or the network changes.
+     *
+     * @param key the key of the discovery e.g. the XEP-0215 external services of an account
+     * @param servers the servers found by the discovery; may be empty
+     */
+    void cacheIceServers(String key, List<IceServerDescriptor> servers);
+
+    /**
+     * Returns whether a STUN/TURN server is worth a harvest on the current network i.e. it has not failed
+     * to return any candidate recently.
+     *
+     * @param server the address of the STUN/TURN server
+     *
+     * @return <code>false</code> if <code>server</code> has recently failed to return any candidate on
+     * the current network.
+     */
+    boolean isIceServerResponsive(TransportAddress server);
+
+    /**
+     * Records the outcome of the candidate harvest of an ICE agent: the server reflexive mapping returned
+     * by each of its STUN/TURN servers, or the failure of the servers which returned no candidate.
+     *
+     * @param agent the ICE agent whose candidate harvest has completed
+     */
+    void harvestCompleted(Agent agent);
+
     /**
      * Creates an <code>IceMediaStream</code> and adds to it an RTP and and RTCP component, which
      * also implies running the currently installed harvesters so that they would.
@@ -295,12 +295,22 @@ public interface ChatRoom {
 
     /**
      * Returns a <code>List</code> of <code>ChatRoomMember</code>s corresponding to all members currently
-     * participating in this room.
+     * participating in this room. The list is an immutable snapshot, which callers must not modify.
      *
      * @return a <code>List</code> of <code>ChatRoomMember</code> instances corresponding to all room members.
      */
     List<ChatRoomMember> getMembers();
 
+    /**
+     * Returns a <code>List</code> of the <code>ChatRoomMember</code>s currently participating in this room with the
+     * given role. The list is an immutable snapshot, which callers must not modify.
+     *
+     * @param role the role of the members to return
+     *
+     * @return a <code>List</code> of <code>ChatRoomMember</code> instances with the given role.
+     */
+    List<ChatRoomMember> getMembers(ChatRoomMemberRole role);
+
     /**
      * Returns the number of participants that are currently in this chat room.
      *
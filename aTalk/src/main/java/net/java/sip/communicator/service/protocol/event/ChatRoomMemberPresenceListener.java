@@ -13,6 +13,8 @@
  */
 package net.java.sip.communicator.service.protocol.event;
 
+import net.java.sip.communicator.service.protocol.ChatRoomMember;
+
 import java.util.EventListener;
 
 /**
@@ -33,4 +35,21 @@ public interface ChatRoomMemberPresenceListener extends EventListener
      */
     void memberPresenceChanged(ChatRoomMemberPresenceChangeEvent evt);
 
+    /**
+     * Called to notify interested parties that the presence of all the members of a particular
+     * chat room has changed at once i.e. the list of its occupants when the local user has joined
+     * it, or the members it left behind when the local user has left it. The default implementation
+     * reports each of the members to {@link #memberPresenceChanged}; listeners which keep a list
+     * of the members should rather take the whole snapshot at once.
+     *
+     * @param evt the <code>ChatRoomMembersSnapshotEvent</code> instance containing the source chat
+     * room, the members, and the type and reason of the presence change
+     */
+    default void memberPresenceSnapshot(ChatRoomMembersSnapshotEvent evt)
+    {
+        for (ChatRoomMember member : evt.getMembers()) {
+            memberPresenceChanged(new ChatRoomMemberPresenceChangeEvent(evt.getChatRoom(), member,
+                    evt.getEventType(), evt.getReason()));
+        }
+    }
 }
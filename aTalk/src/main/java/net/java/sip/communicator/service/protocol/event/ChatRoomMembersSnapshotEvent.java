@@ -0,0 +1,146 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package net.java.sip.communicator.service.protocol.event;
+
+import net.java.sip.communicator.service.protocol.ChatRoom;
+import net.java.sip.communicator.service.protocol.ChatRoomMember;
+
+import java.util.EventObject;
+import java.util.List;
+
+/**
+ * Dispatched to notify interested parties that the presence of all the members of a chat room has
+ * changed at once: when the local user joins the room, the whole list of its occupants is reported
+ * in a single event instead of one <code>ChatRoomMemberPresenceChangeEvent</code> per occupant; and
+ * when the local user leaves the room, so are all the members it leaves behind. The changes which
+ * follow the join are reported as <code>ChatRoomMemberPresenceChangeEvent</code>s.
+ *
+ * @author Eng Chong Meng
+ */
+public class ChatRoomMembersSnapshotEvent extends EventObject
+{
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 0L;
+
+    /**
+     * The members that the event relates to; an immutable list.
+     */
+    private final List<ChatRoomMember> members;
+
+    /**
+     * The version of the member list of the source chat room that {@link #members} is a snapshot of.
+     */
+    private final long version;
+
+    /**
+     * The type of this event; <code>ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED</code> or
+     * <code>ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT</code>.
+     */
+    private final String eventType;
+
+    /**
+     * An optional String indicating a possible reason as to why the event might have occurred.
+     */
+    private final String reason;
+
+    /**
+     * Creates a <code>ChatRoomMembersSnapshotEvent</code> representing that the presence of all the
+     * given members of a chat room has changed.
+     *
+     * @param sourceRoom the <code>ChatRoom</code> that produced this event
+     * @param members the immutable list of the <code>ChatRoomMember</code>s that this event is about
+     * @param version the version of the member list of <code>sourceRoom</code> that <code>members</code>
+     * is a snapshot of
+     * @param eventType the event type; <code>ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED</code> or
+     * <code>ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT</code>
+     * @param reason the reason explaining why this event might have occurred
+     */
+    public ChatRoomMembersSnapshotEvent(ChatRoom sourceRoom, List<ChatRoomMember> members, long version,
+            String eventType, String reason)
+    {
+        super(sourceRoom);
+        this.members = members;
+        this.version = version;
+        this.eventType = eventType;
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the chat room that produced this event.
+     *
+     * @return the <code>ChatRoom</code> that produced this event
+     */
+    public ChatRoom getChatRoom()
+    {
+        return (ChatRoom) getSource();
+    }
+
+    /**
+     * Returns the chat room members that this event is about: the occupants of the room when the
+     * local user joined or left it.
+     *
+     * @return the immutable list of the <code>ChatRoomMember</code>s that this event is about.
+     */
+    public List<ChatRoomMember> getMembers()
+    {
+        return members;
+    }
+
+    /**
+     * Returns the version of the member list of the source chat room that {@link #getMembers()} is
+     * a snapshot of; it increases with every change of the member list.
+     *
+     * @return the version of the member list that this event is a snapshot of.
+     */
+    public long getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * A reason String indicating a human readable reason for this event.
+     *
+     * @return a human readable String containing the reason for this event, or null if no
+     * particular reason was specified.
+     */
+    public String getReason()
+    {
+        return reason;
+    }
+
+    /**
+     * Returns the type of this event.
+     *
+     * @return <code>ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED</code> or
+     * <code>ChatRoomMemberPresenceChangeEvent.MEMBER_LEFT</code>.
+     */
+    public String getEventType()
+    {
+        return eventType;
+    }
+
+    /**
+     * Returns a String representation of this event.
+     *
+     * @return String representation of this event
+     */
+    @Override
+    public String toString()
+    {
+        return "ChatRoomMembersSnapshotEvent[type=" + getEventType() + " sourceRoom="
+                + getChatRoom().toString() + " members=" + members.size() + " version=" + version + "]";
+    }
+}
@@ -770,21 +770,25 @@ public class ChatActivity extends BaseActivity
                 return true;
 
             case R.id.show_chatroom_occupant:
+                // List the occupants grouped by role, from the owners down.
                 StringBuilder memberList = new StringBuilder();
-                List<ChatRoomMember> occupants = chatRoom.getMembers();
-                if (!occupants.isEmpty()) {
+                for (ChatRoomMemberRole role : ChatRoomMemberRole.values()) {
+                    List<ChatRoomMember> occupants = chatRoom.getMembers(role);
+                    if (occupants.isEmpty())
+                        continue;
+
+                    memberList.append("<b>")
+                            .append(role.getRoleName())
+                            .append("</b><br/>");
                     for (ChatRoomMember member : occupants) {
                         ChatRoomMemberJabberImpl occupant = (ChatRoomMemberJabberImpl) member;
                         memberList.append(occupant.getNickName())
                                 .append(" - ")
                                 .append(occupant.getJabberId())
-                                .append(" (")
-                                .append(member.getRole().getRoleName())
-                                .append(")")
                                 .append("<br/>");
                     }
                 }
-                else {
+                if (memberList.length() == 0) {
                     memberList.append(getString(R.string.none));
                 }
                 String user = chatRoomWrapper.getProtocolProvider().getAccountID().getUserID();
@@ -0,0 +1,365 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.android.gui.chat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timestamp ordered, segmented in-memory timeline of the <code>ChatMessage</code>s of a chat session.
+ * <p>
+ * The messages are kept in small sorted segments. A late or delayed message is placed with a binary search over
+ * the segments and within the target segment, and is inserted in place into that segment; only a full segment is
+ * split. The renderer gets a copy of the timeline with {@link #snapshot()}.
+ * <p>
+ * When a capacity is set, the saved messages of the oldest segments are evicted; these messages are re-fetched
+ * from the history database when the user scrolls back beyond the first cached saved message. The status, system,
+ * action and error messages are not saved in the history database, and are never evicted.
+ *
+ * @author Eng Chong Meng
+ */
+public class ChatMessageTimeline {
+    /**
+     * Maximum number of messages per segment.
+     */
+    private static final int SEGMENT_SIZE = 128;
+
+    /**
+     * The segments in timestamp order; none is empty. Guarded by this.
+     */
+    private final List<Segment> mSegments = new ArrayList<>();
+
+    /**
+     * Number of messages in all the segments; guarded by this.
+     */
+    private int mSize = 0;
+
+    /**
+     * Number of the saved, evictable messages in all the segments; guarded by this.
+     */
+    private int mSavedCount = 0;
+
+    /**
+     * Index of the cached messages by their message uid; guarded by this.
+     */
+    private final Map<String, ChatMessage> mUidIndex = new HashMap<>();
+
+    /**
+     * Insert the message in timestamp order. Messages with the same timestamp keep their arrival order.
+     *
+     * @param chatMessage the message to add
+     *
+     * @return true if the message is added
+     */
+    public synchronized boolean add(ChatMessage chatMessage) {
+        long time = chatMessage.getDate().getTime();
+        int segIdx = findSegment(time);
+
+        if (segIdx < 0) {
+            segIdx = 0;
+            mSegments.add(new Segment());
+        }
+        Segment segment = mSegments.get(segIdx);
+        if (segment.count == SEGMENT_SIZE) {
+            Segment upper = new Segment();
+            if (segIdx == mSegments.size() - 1
+                    && segment.messages[SEGMENT_SIZE - 1].getDate().getTime() <= time) {
+                // In-order append; keep the last segment full and start a new one.
+                segment = upper;
+            }
+            else {
+                // Split the full segment
+                segment.moveTail(SEGMENT_SIZE / 2, upper);
+                if (upper.messages[0].getDate().getTime() <= time) {
+                    segment = upper;
+                }
+            }
+            mSegments.add(segIdx + 1, upper);
+        }
+        segment.insert(chatMessage, time);
+
+        mSize++;
+        if (isSaved(chatMessage)) {
+            mSavedCount++;
+        }
+        String uid = chatMessage.getMessageUid();
+        if (uid != null) {
+            mUidIndex.put(uid, chatMessage);
+        }
+        return true;
+    }
+
+    /**
+     * Merge the given messages into the timeline; messages already in the timeline (same message uid) are skipped.
+     *
+     * @param chatMessages the messages to merge
+     */
+    public synchronized void addAll(Collection<ChatMessage> chatMessages) {
+        for (ChatMessage chatMessage : chatMessages) {
+            String uid = chatMessage.getMessageUid();
+            if (uid == null || !mUidIndex.containsKey(uid)) {
+                add(chatMessage);
+            }
+        }
+    }
+
+    /**
+     * Find the cached message with the given message uid.
+     *
+     * @param uid the message uid
+     *
+     * @return the cached message or null if none found.
+     */
+    public synchronized ChatMessage findByUid(String uid) {
+        return (uid == null) ? null : mUidIndex.get(uid);
+    }
+
+    /**
+     * Remove the cached messages with the given message uids.
+     *
+     * @param uids the message uids of the messages to remove
+     */
+    public synchronized void removeAll(Collection<String> uids) {
+        Iterator<Segment> iterator = mSegments.iterator();
+        while (iterator.hasNext()) {
+            Segment segment = iterator.next();
+            int kept = 0;
+            for (int i = 0; i < segment.count; i++) {
+                ChatMessage chatMessage = segment.messages[i];
+                String uid = chatMessage.getMessageUid();
+                if (uid != null && uids.contains(uid)) {
+                    mUidIndex.remove(uid);
+                    mSize--;
+                    if (isSaved(chatMessage)) {
+                        mSavedCount--;
+                    }
+                }
+                else {
+                    segment.messages[kept++] = chatMessage;
+                }
+            }
+            segment.truncate(kept);
+            if (kept == 0) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all the cached messages.
+     */
+    public synchronized void clear() {
+        mUidIndex.clear();
+        mSegments.clear();
+        mSize = 0;
+        mSavedCount = 0;
+    }
+
+    /**
+     * Evict the saved messages of the oldest segments until the timeline holds no more than the given number of
+     * saved messages. The messages which are not saved in the history database cannot be re-fetched, and are kept.
+     *
+     * @param capacity the maximum number of saved messages to keep
+     *
+     * @return true if any message has been evicted
+     */
+    public synchronized boolean trimToCapacity(int capacity) {
+        int first = 0;
+        boolean evicted = false;
+        boolean emptied = false;
+        // Always keep the newest segment
+        while (mSavedCount > capacity && first < mSegments.size() - 1) {
+            Segment segment = mSegments.get(first++);
+            if (segment.saved == 0)
+                continue;
+
+            int kept = 0;
+            for (int i = 0; i < segment.count; i++) {
+                ChatMessage chatMessage = segment.messages[i];
+                if (isSaved(chatMessage)) {
+                    String uid = chatMessage.getMessageUid();
+                    if (uid != null) {
+                        mUidIndex.remove(uid);
+                    }
+                    mSize--;
+                    mSavedCount--;
+                }
+                else {
+                    segment.messages[kept++] = chatMessage;
+                }
+            }
+            segment.truncate(kept);
+            evicted = true;
+            emptied |= (kept == 0);
+        }
+
+        if (emptied) {
+            mSegments.subList(0, first).removeIf(segment -> segment.count == 0);
+        }
+        return evicted;
+    }
+
+    /**
+     * Returns a timestamp ordered copy of the current messages, for use by the renderer without locking.
+     *
+     * @return the current messages
+     */
+    public synchronized List<ChatMessage> snapshot() {
+        List<ChatMessage> messages = new ArrayList<>(mSize);
+        for (Segment segment : mSegments) {
+            for (int i = 0; i < segment.count; i++) {
+                messages.add(segment.messages[i]);
+            }
+        }
+        return messages;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns the timestamp of the oldest cached message that is saved in the history database, i.e. the reference
+     * date to re-fetch the older messages; or of the oldest cached message if none is saved.
+     *
+     * @return the oldest message timestamp or null if the timeline is empty.
+     */
+    public synchronized Date getFirstDate() {
+        if (mSize == 0)
+            return null;
+
+        for (Segment segment : mSegments) {
+            if (segment.saved > 0) {
+                for (int i = 0; i < segment.count; i++) {
+                    if (isSaved(segment.messages[i]))
+                        return segment.messages[i].getDate();
+                }
+            }
+        }
+        return mSegments.get(0).messages[0].getDate();
+    }
+
+    /**
+     * Returns true if the message is saved in the history database; the status, system, action and error messages
+     * are only shown in the chat session.
+     */
+    private static boolean isSaved(ChatMessage chatMessage) {
+        switch (chatMessage.getMessageType()) {
+            case ChatMessage.MESSAGE_STATUS:
+            case ChatMessage.MESSAGE_SYSTEM:
+            case ChatMessage.MESSAGE_ACTION:
+            case ChatMessage.MESSAGE_ERROR:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Find the segment in which a message with the given time is to be inserted.
+     *
+     * @return the segment index, or -1 if there is no segment.
+     */
+    private int findSegment(long time) {
+        int low = 0;
+        int high = mSegments.size() - 1;
+        if (high < 0)
+            return -1;
+
+        // The last segment whose first message is not later than time; else the first segment.
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mSegments.get(mid).messages[0].getDate().getTime() <= time)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    /**
+     * A sorted run of at most {@link #SEGMENT_SIZE} messages.
+     */
+    private static final class Segment {
+        final ChatMessage[] messages = new ChatMessage[SEGMENT_SIZE];
+        int count = 0;
+
+        /* number of the saved messages in this segment */
+        int saved = 0;
+
+        /**
+         * Insert the message after the messages not later than the given time; the segment must not be full.
+         */
+        void insert(ChatMessage chatMessage, long time) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (messages[mid].getDate().getTime() <= time)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            System.arraycopy(messages, low, messages, low + 1, count - low);
+            messages[low] = chatMessage;
+            count++;
+            if (isSaved(chatMessage)) {
+                saved++;
+            }
+        }
+
+        /**
+         * Move the messages from the given index on to the empty target segment.
+         */
+        void moveTail(int from, Segment target) {
+            int length = count - from;
+            System.arraycopy(messages, from, target.messages, 0, length);
+            target.count = length;
+            truncate(from);
+            target.recount();
+        }
+
+        /**
+         * Drop the messages from the given index on.
+         */
+        void truncate(int length) {
+            for (int i = length; i < count; i++) {
+                messages[i] = null;
+            }
+            count = length;
+            recount();
+        }
+
+        private void recount() {
+            saved = 0;
+            for (int i = 0; i < count; i++) {
+                if (isSaved(messages[i])) {
+                    saved++;
+                }
+            }
+        }
+    }
+}
@@ -13,19 +13,18 @@ import androidx.appcompat.app.AppCompatActivity;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import net.java.sip.communicator.impl.msghistory.MamCatchUpEngine;
 import net.java.sip.communicator.impl.msghistory.MessageHistoryActivator;
 import net.java.sip.communicator.impl.msghistory.MessageHistoryServiceImpl;
 import net.java.sip.communicator.impl.muc.MUCActivator;
@@ -148,14 +147,16 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
      * Important: when historyLog is disabled i.e. all messages exchanges are only saved in msgCache.
      * CLosing of chat will destroy all the cached contents.
      * <p>
-     * Use CopyOnWriteArrayList instead to avoid ChatFragment#prependMessages ConcurrentModificationException
+     * The timeline is kept in timestamp order, and its snapshot copy is safe for ChatFragment#prependMessages
+     * without locking. When historyLog is enabled, the oldest saved messages are evicted beyond MAX_CACHE_SIZE;
+     * these are re-fetched from the history DB when the user scrolls back.
      */
-    private List<ChatMessage> msgCache = new CopyOnWriteArrayList<>();
+    private final ChatMessageTimeline msgCache = new ChatMessageTimeline();
 
     /**
-     * Synchronization root for messages cache.
+     * Maximum number of messages kept in msgCache when historyLog is enabled.
      */
-    private final Object cacheLock = new Object();
+    private static final int MAX_CACHE_SIZE = 1000;
 
     /**
      * Current chat session type: mChatSession can either be one of the following:
@@ -480,20 +481,21 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
     public List<ChatMessage> getHistory(boolean init) {
         /*
          * If chatFragment is initializing (or onResume) AND we have already cached the messages
-         * i.e. (historyLoaded == true), then just return the current msgCache content.
-         * Always perform msgCache.sort; more delayed normal/encrypted messages may have been added on user re-login,
+         * i.e. (historyLoaded == true), then just return the current msgCache content; delayed normal/encrypted
+         * messages added on user re-login are already inserted in their timestamp order.
+         * Older messages evicted from msgCache are re-fetched from the DB before the first cached message.
          */
         // Timber.e("Get History: init: %s; historyLoaded: %s:", init, historyLoaded);
         if (init && historyLoaded) {
-            msgCache.sort(new ChatMessageComparator<>());
-            return msgCache;
+            mLastMsgFetchDate = msgCache.getFirstDate();
+            return msgCache.snapshot();
         }
 
         // If the MetaHistoryService is not registered we have nothing to do here.
         // The history store could be "disabled" by the user via Chat History Logging option.
         final MetaHistoryService metaHistory = AppGUIActivator.getMetaHistoryService();
         if (metaHistory == null)
-            return msgCache;
+            return msgCache.snapshot();
 
         // descriptor can either be metaContact or chatRoomWrapper=>ChatRoom, from whom the history to be loaded
         Object descriptor = mDescriptor;
@@ -511,9 +513,8 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
             history = metaHistory.findLast(chatHistoryFilter, descriptor, HISTORY_CHUNK_SIZE);
         }
         /*
-         * Perform mamQuery if not done before. Received messages in msgCache may not in its timestamp order;
-         * Due to process time varies, this does happen for delayed encrypted messages received when user is offline. .
-         * So must sort them before using the timestamp of the first cached message as reference date.
+         * Perform mamQuery if not done before. Delayed encrypted messages received when user is offline are
+         * inserted into msgCache in their timestamp order, so the first cached message is the reference date.
          * Read in HISTORY_CHUNK_SIZE records earlier than the mLastMsgFetchDate i.e. top of the msgCache
          */
         else {
@@ -523,8 +524,7 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
             }
 
             if (mLastMsgFetchDate == null) {
-                msgCache.sort(new ChatMessageComparator<>());
-                mLastMsgFetchDate = msgCache.get(0).getDate();
+                mLastMsgFetchDate = msgCache.getFirstDate();
             }
             history = metaHistory.findLastMessagesBefore(chatHistoryFilter, descriptor, mLastMsgFetchDate, HISTORY_CHUNK_SIZE);
         }
@@ -565,23 +565,14 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
 
         // Must re-process msgHistory to merged with msgCache if this first getHistory.
         if (init) {
-            synchronized (cacheLock) {
-                // We have something cached, and we need to merge them with the msgHistory.
-                // Do this only when we haven't merged it yet (ever).
-                if (!historyLoaded) {
-                    msgCache = mergeMsgLists(msgHistory, msgCache);
-                    historyLoaded = true;
-                }
-                // Otherwise just prepend the history records.
-                else {
-                    msgCache.addAll(0, msgHistory);
-                }
-            }
+            // Merge the history records into the cached messages in timestamp order, skipping those already cached.
+            msgCache.addAll(msgHistory);
+            historyLoaded = true;
 
             if (!msgCache.isEmpty()) {
-                mLastMsgFetchDate = msgCache.get(0).getDate();
+                mLastMsgFetchDate = msgCache.getFirstDate();
             }
-            return msgCache;
+            return msgCache.snapshot();
         }
         else {
             if (!msgHistory.isEmpty()) {
@@ -591,46 +582,6 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
         }
     }
 
-    /**
-     * Merges given lists of messages. Output list is ordered by received timestamp.
-     *
-     * @param msgHistory first list to merge.
-     * @param msgCache the second list to merge.
-     *
-     * @return merged list of messages contained in the given lists ordered by the date.
-     */
-    private List<ChatMessage> mergeMsgLists(List<ChatMessage> msgHistory, List<ChatMessage> msgCache) {
-        List<ChatMessage> mergedList = new LinkedList<>();
-        int historyIdx = msgHistory.size() - 1;
-        int cacheIdx = msgCache.size() - 1;
-
-        while (historyIdx >= 0 && cacheIdx >= 0) {
-            ChatMessage historyMsg = msgHistory.get(historyIdx);
-            ChatMessage cacheMsg = msgCache.get(cacheIdx);
-            Date historyDate = historyMsg.getDate();
-            Date cacheDate = cacheMsg.getDate();
-
-            if (historyDate.after(cacheDate)) {
-                mergedList.add(0, historyMsg);
-                historyIdx--;
-            }
-            else if (historyDate.before(cacheDate)) {
-                mergedList.add(0, cacheMsg);
-                cacheIdx--;
-            }
-        }
-
-        // Input remaining history messages
-        while (historyIdx >= 0)
-            mergedList.add(0, msgHistory.get(historyIdx--));
-
-        // Input remaining cache messages
-        while (cacheIdx >= 0)
-            mergedList.add(0, msgCache.get(cacheIdx--));
-
-        return mergedList;
-    }
-
     /**
      * Fetch the server mam message and merged into the history database if new;
      * This method is accessed only after the user has registered with the network,
@@ -645,25 +596,30 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
         XMPPConnection connection = getProtocolProvider().getConnection();
         MamManager mamManager;
         Jid jid;
+        String sessionUuid;
         if (descriptor instanceof ChatRoomWrapper) {
             ChatRoom chatRoom = ((ChatRoomWrapper) descriptor).getChatRoom();
             jid = null;
             mamManager = MamManager.getInstanceFor(chatRoom.getMultiUserChat());
+            sessionUuid = mMHS.getSessionUuidByJid(chatRoom);
         }
         else {
             Contact contact = ((MetaContact) descriptor).getDefaultContact();
             jid = contact.getJid().asBareJid();
             mamManager = MamManager.getInstanceFor(connection, null);
+            sessionUuid = mMHS.getSessionUuidByJid(contact);
+        }
+
+        // Leave it to the background catch-up if it has not completed this chat session yet.
+        if (mMHS.getMamCatchUpEngine().catchUpNow(sessionUuid)) {
+            mamLastDate = mMHS.getMamDate(descriptor);
+            return true;
         }
 
         // Retrieve the mamData from the last message received in this chatSession
         Date mamDate = mMHS.getMamDate(descriptor);
         try {
             if (mamManager.isSupported()) {
-                // Prevent omemoManager from automatically decrypting MAM messages.
-                OmemoManager omemoManager = OmemoManager.getInstanceFor(connection);
-                omemoManager.stopStanzaAndPEPListeners();
-
                 // MamManager.MamQueryArgs
                 MamManager.MamQueryArgs mamQueryArgs = MamManager.MamQueryArgs.builder()
                         .limitResultsSince(mamDate)
@@ -672,12 +628,21 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
                         .queryLastPage()
                         .build();
 
-                MamManager.MamQuery query = mamManager.queryArchive(mamQueryArgs);
+                // Prevent omemoManager from automatically decrypting MAM messages, in step with the catch-up.
+                OmemoManager omemoManager = OmemoManager.getInstanceFor(connection);
+                MamCatchUpEngine catchUpEngine = mMHS.getMamCatchUpEngine();
+                MamManager.MamQuery query;
+                catchUpEngine.stopOmemoListeners(omemoManager);
+                try {
+                    query = mamManager.queryArchive(mamQueryArgs);
+                } finally {
+                    catchUpEngine.resumeOmemoListeners(omemoManager);
+                }
+
                 List<Forwarded<Message>> forwardedList = query.getPage().getForwarded();
                 if (!forwardedList.isEmpty()) {
                     mMHS.saveMamIfNotExit(omemoManager, this, forwardedList);
                 }
-                omemoManager.resumeStanzaAndPEPListeners();
             }
         }
         catch (SmackException.NoResponseException | XMPPException.XMPPErrorException // | IOException
@@ -942,21 +907,15 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
      * @param translateIfEnable true to proceed with translate if option is enabled.
      */
     public boolean updateCacheMessage(ChatMessageImpl chatMessage, boolean translateIfEnable) {
-        String msgId = chatMessage.getMessageUid();
-        int cacheIdx = msgCache.size() - 1;
-
-        while (cacheIdx >= 0) {
-            ChatMessageImpl cachedMessage = (ChatMessageImpl) msgCache.get(cacheIdx);
-            if (msgId.equals(cachedMessage.getMessageUid())) {
-                if (translateIfEnable && isTranslateReceive()) {
-                    translateIfRequire(chatMessage);
-                }
-
-                cachedMessage.setMessageContent(chatMessage.getMessageContent());
-                cachedMessage.setStatus(chatMessage.getStatus());
-                return true;
+        ChatMessageImpl cachedMessage = (ChatMessageImpl) msgCache.findByUid(chatMessage.getMessageUid());
+        if (cachedMessage != null) {
+            if (translateIfEnable && isTranslateReceive()) {
+                translateIfRequire(chatMessage);
             }
-            cacheIdx--;
+
+            cachedMessage.setMessageContent(chatMessage.getMessageContent());
+            cachedMessage.setStatus(chatMessage.getStatus());
+            return true;
         }
         return false;
     }
@@ -977,10 +936,12 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
 
         // Timber.d("Cache blocked is %s for: %s", cacheBlocked, newMsg.getMessageBody());
         if (!cacheBlocked) {
-            // FFR: ANR synchronized (cacheLock); fixed with new msgCache merging optimization (20221229)
-            synchronized (cacheLock) {
-                return (cacheUpdated = msgCache.add(chatMessage));
+            cacheUpdated = msgCache.add(chatMessage);
+            // Evicted messages can only be re-fetched if they are saved in the history DB.
+            if (mMHS.isHistoryLoggingEnabled()) {
+                msgCache.trimToCapacity(MAX_CACHE_SIZE);
             }
+            return cacheUpdated;
         }
         else {
             cacheBlocked = false;
@@ -999,14 +960,7 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
      */
     public void clearCacheMessage(List<String> deletedUUIDs) {
         if (deletedUUIDs != null) {
-            int cacheIdx = msgCache.size() - 1;
-            while (cacheIdx >= 0) {
-                ChatMessageImpl cacheMsg = (ChatMessageImpl) msgCache.get(cacheIdx);
-                if (deletedUUIDs.contains(cacheMsg.getMessageUid())) {
-                    msgCache.remove(cacheIdx);
-                }
-                cacheIdx--;
-            }
+            msgCache.removeAll(new HashSet<>(deletedUUIDs));
         }
         else {
             msgCache.clear();
@@ -1024,16 +978,10 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
      * @param recordType File record type see ChatMessage MESSAGE_FILE_
      */
     public void updateCacheFTRecord(String msgUuid, int status, String fileName, int encType, int recordType) {
-        int cacheIdx = msgCache.size() - 1;
-        while (cacheIdx >= 0) {
-            ChatMessageImpl cacheMsg = (ChatMessageImpl) msgCache.get(cacheIdx);
-            // 20220709: cacheMsg.getCorrectionUid() can be null
-            if (msgUuid.equals(cacheMsg.getMessageUid())) {
-                cacheMsg.updateFTStatus(mDescriptor, msgUuid, status, fileName, encType, recordType, cacheMsg.getMessageDir());
-                // Timber.d("updateCacheFTRecord msgUid: %s => %s (%s)", msgUuid, status, recordType );
-                break;
-            }
-            cacheIdx--;
+        ChatMessageImpl cacheMsg = (ChatMessageImpl) msgCache.findByUid(msgUuid);
+        if (cacheMsg != null) {
+            cacheMsg.updateFTStatus(mDescriptor, msgUuid, status, fileName, encType, recordType, cacheMsg.getMessageDir());
+            // Timber.d("updateCacheFTRecord msgUid: %s => %s (%s)", msgUuid, status, recordType );
         }
     }
 
@@ -1287,14 +1235,9 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
      * @param receiptStatus message receipt status to update; null is to delete message
      */
     private void updateCacheReceiptStatus(String msgUuid, Integer receiptStatus) {
-        int cacheIdx = msgCache.size() - 1;
-        while (cacheIdx >= 0) {
-            ChatMessageImpl cacheMsg = (ChatMessageImpl) msgCache.get(cacheIdx);
-            if (msgUuid.equals(cacheMsg.getMessageUid())) {
-                cacheMsg.setReceiptStatus(receiptStatus);
-                break;
-            }
-            cacheIdx--;
+        ChatMessageImpl cacheMsg = (ChatMessageImpl) msgCache.findByUid(msgUuid);
+        if (cacheMsg != null) {
+            cacheMsg.setReceiptStatus(receiptStatus);
         }
     }
     // ========== End ========== /
@@ -1477,34 +1420,6 @@ public class ChatPanel implements Chat, MessageListener, MessageReceiptListener
         }
     }
 
-    /**
-     * Used to compare ChatMessage and to be ordered in according their timestamp.
-     */
-    private static class ChatMessageComparator<T> implements Comparator<T> {
-        private final boolean reverseOrder;
-
-        ChatMessageComparator(boolean reverseOrder) {
-            this.reverseOrder = reverseOrder;
-        }
-
-        ChatMessageComparator() {
-            this(false);
-        }
-
-        public int compare(T o1, T o2) {
-            if (o1 instanceof ChatMessage && o2 instanceof ChatMessage) {
-                Date date1 = ((ChatMessage) o1).getDate();
-                Date date2 = ((ChatMessage) o2).getDate();
-
-                if (reverseOrder)
-                    return date2.compareTo(date1);
-                else
-                    return date1.compareTo(date2);
-            }
-            return 0;
-        }
-    }
-
     public void addMessageForTranslate(ChatMessageImpl chatMessage) {
         if (isTranslateReceive()) {
             mTranslator.addMessageForTranslate(chatMessage);
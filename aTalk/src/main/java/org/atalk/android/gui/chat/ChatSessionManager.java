@@ -188,6 +188,10 @@ public class ChatSessionManager {
             if (currChat != null) {
                 lastDescriptor = currChat.getChatSession().getDescriptor();
                 // Timber.d("Current chat descriptor: %s = %s", chatId, lastDescriptor);
+                // Join the chat room now if it is still waiting for a lazy join on login
+                if (lastDescriptor instanceof ChatRoomWrapper) {
+                    MUCActivator.getMUCService().chatRoomOpened((ChatRoomWrapper) lastDescriptor);
+                }
             }
 
             // Notifies about new current chat session
@@ -140,6 +140,11 @@ public class ConferenceChatManager implements ChatRoomMessageListener, ChatRoomI
         final OperationSetMultiUserChat multiUserChatOpSet = evt.getSourceOperationSet();
         final ChatRoomInvitation invitation = evt.getInvitation();
 
+        // Join before the others the invited room if it is still waiting for a lazy join on login
+        ChatRoomWrapper chatRoomWrapper = mucService.findChatRoomWrapperFromChatRoom(invitation.getTargetChatRoom());
+        if (chatRoomWrapper != null)
+            mucService.chatRoomMentioned(chatRoomWrapper);
+
         // Wake aTalk to show invitation dialog
         if (!aTalkApp.isForeground) {
             Context context = aTalkApp.getInstance();
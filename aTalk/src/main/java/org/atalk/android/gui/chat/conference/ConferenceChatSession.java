@@ -10,7 +10,9 @@ import android.os.Looper;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 import net.java.sip.communicator.service.metahistory.MetaHistoryService;
 import net.java.sip.communicator.service.muc.ChatRoomWrapper;
@@ -24,6 +26,7 @@ import net.java.sip.communicator.service.protocol.event.ChatRoomLocalUserRoleLis
 import net.java.sip.communicator.service.protocol.event.ChatRoomMemberPresenceChangeEvent;
 import net.java.sip.communicator.service.protocol.event.ChatRoomMemberPresenceListener;
 import net.java.sip.communicator.service.protocol.event.ChatRoomMemberRoleListener;
+import net.java.sip.communicator.service.protocol.event.ChatRoomMembersSnapshotEvent;
 import net.java.sip.communicator.service.protocol.event.ChatRoomPropertyChangeEvent;
 import net.java.sip.communicator.service.protocol.event.ChatRoomPropertyChangeFailedEvent;
 import net.java.sip.communicator.service.protocol.event.ChatRoomPropertyChangeListener;
@@ -397,6 +400,37 @@ public class ConferenceChatSession extends ChatSession implements ChatRoomMember
         });
     }
 
+    /**
+     * Invoked when <code>ChatRoomMembersSnapshotEvent</code> is received i.e. with the whole list of members
+     * when we have joined the chat room, or when we have left it. The chat participants are updated in
+     * one pass; and as for the individual <code>ChatRoomMemberPresenceChangeEvent</code>s of the user list,
+     * no 'has joined' or 'has left' status is shown for each of them.
+     *
+     * @param evt the <code>ChatRoomMembersSnapshotEvent</code> that notified us
+     */
+    @Override
+    public void memberPresenceSnapshot(final ChatRoomMembersSnapshotEvent evt) {
+        new Handler(Looper.getMainLooper()).post(() -> {
+            ChatRoom room = chatRoomWrapper.getChatRoom();
+            // return if this is not for this chatRoomWrapper session
+            if (!evt.getChatRoom().equals(room))
+                return;
+
+            Set<ChatRoomMember> members = new HashSet<>(evt.getMembers());
+            boolean joined = ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED.equals(evt.getEventType());
+            synchronized (chatParticipants) {
+                // Drop the members reported, then add them back if they have joined.
+                chatParticipants.removeIf(chatContact -> members.contains(chatContact.getDescriptor()));
+                if (joined) {
+                    for (ChatRoomMember member : evt.getMembers())
+                        chatParticipants.add(new ConferenceChatContact(member));
+                }
+            }
+            for (ChatRoomMember member : evt.getMembers())
+                room.updatePrivateContactPresenceStatus(member);
+        });
+    }
+
     public void chatRoomPropertyChangeFailed(ChatRoomPropertyChangeFailedEvent event) {
     }
 
@@ -48,6 +48,7 @@ import net.java.sip.communicator.service.protocol.IMessage;
 import net.java.sip.communicator.service.protocol.ProtocolProviderService;
 import net.java.sip.communicator.service.protocol.event.ChatRoomMemberPresenceChangeEvent;
 import net.java.sip.communicator.service.protocol.event.ChatRoomMemberPresenceListener;
+import net.java.sip.communicator.service.protocol.event.ChatRoomMembersSnapshotEvent;
 
 import org.atalk.android.BaseFragment;
 import org.atalk.android.R;
@@ -432,8 +433,28 @@ public class CryptoFragment extends BaseFragment
      */
     @Override
     public void memberPresenceChanged(ChatRoomMemberPresenceChangeEvent evt) {
-        if (mOmemoManager != null && (activeChat.isOmemoChat())
-                && ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED.equals(evt.getEventType())) {
+        if (ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED.equals(evt.getEventType()))
+            checkMembersOmemoIdentities();
+    }
+
+    /**
+     * Trigger when the room user list is received on joining the conference; all the participants are
+     * checked at once.
+     *
+     * @param evt the <code>ChatRoomMembersSnapshotEvent</code> instance containing the source chat
+     */
+    @Override
+    public void memberPresenceSnapshot(ChatRoomMembersSnapshotEvent evt) {
+        if (ChatRoomMemberPresenceChangeEvent.MEMBER_JOINED.equals(evt.getEventType()))
+            checkMembersOmemoIdentities();
+    }
+
+    /**
+     * Fills the partial identities table for the conference participants and requests fingerPrint
+     * verification of the undecided ones.
+     */
+    private void checkMembersOmemoIdentities() {
+        if (mOmemoManager != null && (activeChat.isOmemoChat())) {
             try {
                 mOmemoManager.encrypt(mMultiUserChat, "Hi everybody!");
             } catch (UndecidedOmemoIdentityException e) {
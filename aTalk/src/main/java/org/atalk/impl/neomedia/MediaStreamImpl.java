@@ -693,7 +693,9 @@ public class MediaStreamImpl extends AbstractMediaStream
                 ohbEngine.setExtensionID(effectiveId);
                 break;
             case RTPExtension.TRANSPORT_CC_URN: {
-                transportCCEngine.setExtensionID(effectiveId);
+                if (transportCCEngine != null) {
+                    transportCCEngine.setExtensionID(effectiveId);
+                }
                 RemoteBitrateEstimatorWrapper remoteBitrateEstimatorWrapper = getRemoteBitrateEstimator();
                 if (remoteBitrateEstimatorWrapper != null) {
                     remoteBitrateEstimatorWrapper.setTccExtensionID(effectiveId);
@@ -816,6 +818,29 @@ public class MediaStreamImpl extends AbstractMediaStream
      */
     protected void configureDataOutputStream(RTPConnectorOutputStream dataOutputStream) {
         dataOutputStream.setPriority(getPriority());
+        configureOutputLanes(dataOutputStream);
+    }
+
+    /**
+     * Sets the lanes in which the packets of this <code>MediaStreamImpl</code> wait to be sent on a specific
+     * <code>RTPConnectorOutputStream</code>: the RTX and the FEC payload types have their own lanes, the
+     * other packets use the audio or the video lane according to the type of this stream.
+     *
+     * @param dataOutputStream the <code>RTPConnectorOutputStream</code> used by this <code>MediaStreamImpl</code>
+     */
+    private void configureOutputLanes(RTPConnectorOutputStream dataOutputStream) {
+        Map<Byte, Integer> payloadTypeLanes = new HashMap<>();
+        for (Map.Entry<Byte, MediaFormat> e : getDynamicRTPPayloadTypes().entrySet()) {
+            String encoding = e.getValue().getEncoding();
+            if (Constants.RTX.equalsIgnoreCase(encoding)) {
+                payloadTypeLanes.put(e.getKey(), RTPConnectorOutputStream.LANE_RTX);
+            }
+            else if (Constants.ULPFEC.equalsIgnoreCase(encoding) || Constants.FLEXFEC_03.equalsIgnoreCase(encoding)) {
+                payloadTypeLanes.put(e.getKey(), RTPConnectorOutputStream.LANE_FEC);
+            }
+        }
+        dataOutputStream.setLanes((this instanceof AudioMediaStream)
+                ? RTPConnectorOutputStream.LANE_AUDIO : RTPConnectorOutputStream.LANE_VIDEO, payloadTypeLanes);
     }
 
     /**
@@ -3399,6 +3424,18 @@ public class MediaStreamImpl extends AbstractMediaStream
         if (rtxTransformer != null) {
             rtxTransformer.onDynamicPayloadTypesChanged();
         }
+
+        AbstractRTPConnector connector = getRTPConnector();
+        if (connector != null) {
+            try {
+                RTPConnectorOutputStream dataOutputStream = connector.getDataOutputStream(false);
+                if (dataOutputStream != null) {
+                    configureOutputLanes(dataOutputStream);
+                }
+            } catch (IOException ioe) {
+                // We should not enter here because we are not creating output stream
+            }
+        }
     }
 
     /**
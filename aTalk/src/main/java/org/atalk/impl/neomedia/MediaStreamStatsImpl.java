@@ -28,6 +28,7 @@ import net.sf.fmj.media.rtp.RTCPSRPacket;
 
 import org.atalk.impl.neomedia.device.MediaDeviceSession;
 import org.atalk.impl.neomedia.device.VideoMediaDeviceSession;
+import org.atalk.impl.neomedia.jitterbuffer.AdaptiveJitterBuffer;
 import org.atalk.impl.neomedia.rtcp.NACKPacket;
 import org.atalk.impl.neomedia.rtcp.RTCPREMBPacket;
 import org.atalk.impl.neomedia.rtcp.RTCPTCCPacket;
@@ -488,7 +489,7 @@ public class MediaStreamStatsImpl implements MediaStreamStats {
 
             if (devSession != null) {
                 for (ReceiveStream receiveStream : devSession.getReceiveStreams()) {
-                    JitterBufferControl pqc = getJitterBufferControl(receiveStream);
+                    JitterBufferControl pqc = devSession.getJitterBufferControl(receiveStream);
                     if (pqc != null)
                         set.add(pqc);
                 }
@@ -525,6 +526,66 @@ public class MediaStreamStatsImpl implements MediaStreamStats {
         return delay;
     }
 
+    /**
+     * Returns the target delay in milliseconds of the adaptive jitter buffer. Since there might be
+     * multiple <code>ReceiveStreams</code>, returns the biggest target found in any of them.
+     *
+     * @return the target delay in milliseconds of the adaptive jitter buffer
+     */
+    public int getJitterBufferTargetDelayMs() {
+        int delay = 0;
+        for (JitterBufferControl pqc : getJitterBufferControls())
+            if ((pqc instanceof AdaptiveJitterBuffer)
+                    && ((AdaptiveJitterBuffer) pqc).getTargetDelayMs() > delay)
+                delay = ((AdaptiveJitterBuffer) pqc).getTargetDelayMs();
+        return delay;
+    }
+
+    /**
+     * Returns the percentage of the played out audio which has been concealed by the adaptive
+     * jitter buffer. Since there might be multiple <code>ReceiveStreams</code>, returns the biggest
+     * percentage found in any of them.
+     *
+     * @return the percentage of the played out audio which has been concealed
+     */
+    public double getJitterBufferConcealedPercent() {
+        double percent = 0;
+        for (JitterBufferControl pqc : getJitterBufferControls())
+            if (pqc instanceof AdaptiveJitterBuffer)
+                percent = Math.max(percent, ((AdaptiveJitterBuffer) pqc).getPercentConcealed());
+        return percent;
+    }
+
+    /**
+     * Returns the percentage of the played out audio which has been removed by the adaptive jitter
+     * buffer. Since there might be multiple <code>ReceiveStreams</code>, returns the biggest
+     * percentage found in any of them.
+     *
+     * @return the percentage of the played out audio which has been removed by time stretching
+     */
+    public double getJitterBufferAcceleratedPercent() {
+        double percent = 0;
+        for (JitterBufferControl pqc : getJitterBufferControls())
+            if (pqc instanceof AdaptiveJitterBuffer)
+                percent = Math.max(percent, ((AdaptiveJitterBuffer) pqc).getPercentAccelerated());
+        return percent;
+    }
+
+    /**
+     * Returns the percentage of the played out audio which has been inserted by the adaptive jitter
+     * buffer. Since there might be multiple <code>ReceiveStreams</code>, returns the biggest
+     * percentage found in any of them.
+     *
+     * @return the percentage of the played out audio which has been inserted by time stretching
+     */
+    public double getJitterBufferDeceleratedPercent() {
+        double percent = 0;
+        for (JitterBufferControl pqc : getJitterBufferControls())
+            if (pqc instanceof AdaptiveJitterBuffer)
+                percent = Math.max(percent, ((AdaptiveJitterBuffer) pqc).getPercentDecelerated());
+        return percent;
+    }
+
     /**
      * Returns the jitter average of this upload/download stream.
      *
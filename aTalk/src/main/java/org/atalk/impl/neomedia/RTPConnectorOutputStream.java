@@ -18,12 +18,14 @@ import org.ice4j.util.RateStatistics;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
 
 import javax.media.rtp.OutputDataStream;
@@ -31,6 +33,12 @@ import javax.media.rtp.OutputDataStream;
 import timber.log.Timber;
 
 /**
+ * Sends RTP or RTCP packets to the targets of a stream. With the send thread enabled, the packets
+ * wait in priority lanes: audio, then retransmissions, then video, then FEC and padding. Once a
+ * pacing rate is set, the lanes but the audio one are drained through a token bucket, so that e.g.
+ * a key frame is spread over time instead of going out as a line rate burst. The bucket holds at
+ * most one frame duration worth of the pacing rate.
+ *
  * @author Bing SU (nova.su@gmail.com)
  * @author Lyubomir Marinov
  * @author Boris Grozev
@@ -56,6 +64,44 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
      */
     private static final int AVERAGE_BITRATE_WINDOW_MS;
 
+    /**
+     * The lane of the audio packets, which are sent ahead of all others and are never paced.
+     */
+    public static final int LANE_AUDIO = 0;
+
+    /**
+     * The lane of the retransmitted packets, plain or RTX.
+     */
+    public static final int LANE_RTX = 1;
+
+    /**
+     * The lane of the video packets.
+     */
+    public static final int LANE_VIDEO = 2;
+
+    /**
+     * The lane of the FEC and of the padding only packets, which are sent last.
+     */
+    public static final int LANE_FEC = 3;
+
+    /**
+     * The number of lanes of {@link Queue}.
+     */
+    private static final int LANE_COUNT = 4;
+
+    /**
+     * The factor applied to the target bitrate set through {@link #setPacingRate(long)} to obtain
+     * the pacing rate, which leaves room to drain the queue after e.g. a key frame. The larger it is,
+     * the more of a key frame queues up at the bottleneck of the path, ahead of the audio.
+     */
+    private static final double PACING_FACTOR;
+
+    /**
+     * The maximum time in milliseconds which the paced packets are expected to wait in the queue. The
+     * pacing rate is raised above the target bitrate times {@link #PACING_FACTOR} as needed to meet it.
+     */
+    private static final long MAX_QUEUE_TIME_MS;
+
     /**
      * The flag which controls whether this {@link RTPConnectorOutputStream} should create its own
      * thread which will perform the packetization (and potential transformation) and sending of
@@ -66,7 +112,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
      * and output (via {@link #sendToTarget(RawPacket, InetSocketAddress)} will be performed by the
      * calling thread. Note that these are potentially blocking operations.
      *
-     * Note: if pacing is to be
+     * Note: if pacing is to be performed, the send thread must be enabled.
      */
     private static final boolean USE_SEND_THREAD;
 
@@ -93,6 +139,16 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
     private static final String AVERAGE_BITRATE_WINDOW_MS_PNAME
             = RTPConnectorOutputStream.class.getName() + ".AVERAGE_BITRATE_WINDOW_MS";
 
+    /**
+     * The name of the property which specifies the value of {@link #PACING_FACTOR}.
+     */
+    private static final String PACING_FACTOR_PNAME = RTPConnectorOutputStream.class.getName() + ".PACING_FACTOR";
+
+    /**
+     * The name of the property which specifies the value of {@link #MAX_QUEUE_TIME_MS}.
+     */
+    private static final String MAX_QUEUE_TIME_MS_PNAME = RTPConnectorOutputStream.class.getName() + ".MAX_QUEUE_TIME_MS";
+
     static {
         ConfigurationService cfg = LibJitsi.getConfigurationService();
 
@@ -100,6 +156,8 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
         USE_SEND_THREAD = ConfigUtils.getBoolean(cfg, USE_SEND_THREAD_PNAME, true);
         POOL_CAPACITY = ConfigUtils.getInt(cfg, POOL_CAPACITY_PNAME, 100);
         AVERAGE_BITRATE_WINDOW_MS = ConfigUtils.getInt(cfg, AVERAGE_BITRATE_WINDOW_MS_PNAME, 5000);
+        PACING_FACTOR = Math.max(1d, cfg == null ? 1.1d : cfg.getDouble(PACING_FACTOR_PNAME, 1.1d));
+        MAX_QUEUE_TIME_MS = ConfigUtils.getLong(cfg, MAX_QUEUE_TIME_MS_PNAME, 2000L);
 
         // Set PACKET_QUEUE_CAPACITY
         int packetQueueCapacity = ConfigUtils.getInt(cfg, PACKET_QUEUE_CAPACITY_PNAME, -1);
@@ -390,6 +448,71 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
         return queue != null;
     }
 
+    /**
+     * Sets the lanes in which the packets written to this stream wait to be sent.
+     *
+     * @param defaultLane the lane of the packets with a payload type not in <code>payloadTypeLanes</code>
+     * @param payloadTypeLanes the lanes of specific RTP payload types e.g. {@link #LANE_FEC} for ulpfec.
+     */
+    public void setLanes(int defaultLane, Map<Byte, Integer> payloadTypeLanes)
+    {
+        if (queue != null) {
+            byte[] lanes = new byte[128];
+            Arrays.fill(lanes, (byte) defaultLane);
+            for (Map.Entry<Byte, Integer> e : payloadTypeLanes.entrySet()) {
+                lanes[e.getKey() & 0x7F] = e.getValue().byteValue();
+            }
+            queue.payloadTypeLanes = lanes;
+        }
+    }
+
+    /**
+     * Sets the target bitrate from which the pacing rate of this stream is derived.
+     *
+     * @param targetBitrateBps the target bitrate in bits per second e.g. the latest bandwidth estimate;
+     * <code>-1</code> to disable pacing.
+     */
+    public void setPacingRate(long targetBitrateBps)
+    {
+        if (queue != null) {
+            queue.setPacingRate(targetBitrateBps);
+        }
+    }
+
+    /**
+     * Sets the frame rate of the media sent through this stream, which bounds the bursts of the pacer.
+     *
+     * @param frameRate the number of frames per second.
+     */
+    public void setPacingFrameRate(int frameRate)
+    {
+        if (queue != null && frameRate > 0) {
+            queue.setFrameDurationMs(Math.max(1, 1000 / frameRate));
+        }
+    }
+
+    /**
+     * Gets the average time the packets of a specific lane have waited in the queue of this stream.
+     *
+     * @param lane the lane e.g. {@link #LANE_AUDIO}.
+     * @return the average queueing delay in milliseconds of the packets sent from <code>lane</code>.
+     */
+    public long getAverageQueueDelay(int lane)
+    {
+        return queue == null ? 0 : queue.getAverageQueueDelay(lane);
+    }
+
+    /**
+     * Gets the longest time a packet of a specific lane has waited in the queue of this stream.
+     *
+     * @param lane the lane e.g. {@link #LANE_AUDIO}.
+     * @return the maximum queueing delay in milliseconds of the packets sent from <code>lane</code>.
+     */
+    public long getMaxQueueDelay(int lane)
+    {
+        return queue == null ? 0 : queue.getMaxQueueDelay(lane);
+    }
+
     /**
      * Changes current thread priority.
      *
@@ -543,18 +666,76 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
         return rateStatistics.getRate(now);
     }
 
+
     private class Queue
     {
         /**
-         * The {@link java.util.Queue} which holds {@link Buffer}s to be processed by {@link #sendThread}.
+         * The lanes of {@link Buffer}s to be processed by {@link #sendThread}, by decreasing priority;
+         * guarded by this instance.
+         */
+        final ArrayDeque<Buffer>[] lanes;
+
+        /**
+         * The number of {@link Buffer}s in {@link #lanes}; guarded by this instance.
+         */
+        int size = 0;
+
+        /**
+         * The number of bytes waiting in the paced lanes i.e. all but {@link #LANE_AUDIO}; guarded by
+         * this instance.
          */
-        final ArrayBlockingQueue<Buffer> queue = new ArrayBlockingQueue<>(PACKET_QUEUE_CAPACITY);
+        long pacedBytes = 0;
 
         /**
          * A pool of {@link RTPConnectorOutputStream.Queue.Buffer} instances.
          */
         final ArrayBlockingQueue<Buffer> pool = new ArrayBlockingQueue<>(15);
 
+        /**
+         * The lane of each RTP payload type.
+         */
+        volatile byte[] payloadTypeLanes;
+
+        /**
+         * The target bitrate in bits per second which the pacing rate is derived from; <code>-1</code>
+         * if pacing is disabled. Guarded by this instance.
+         */
+        long targetBitrateBps = -1;
+
+        /**
+         * The duration in milliseconds of a frame. The token bucket holds no more than the pacing rate
+         * over it, which is the longest burst sent at line rate. Guarded by this instance.
+         */
+        long frameDurationMs = 33;
+
+        /**
+         * The tokens of the bucket in bits. It goes negative when a packet larger than the remaining
+         * tokens is sent, and the next paced packet then waits for it to be positive again. Guarded by
+         * this instance.
+         */
+        long budgetBits = 0;
+
+        /**
+         * The time in nanoseconds at which {@link #budgetBits} has last been refilled; guarded by this
+         * instance.
+         */
+        long budgetTimeNanos = -1;
+
+        /**
+         * The sum of the times in milliseconds which the packets of each lane have waited in the queue.
+         */
+        final long[] totalQueueDelayMs = new long[LANE_COUNT];
+
+        /**
+         * The number of packets of each lane which have been taken out of the queue.
+         */
+        final long[] dequeuedPackets = new long[LANE_COUNT];
+
+        /**
+         * The longest time in milliseconds which a packet of each lane has waited in the queue.
+         */
+        final long[] maxQueueDelayMs = new long[LANE_COUNT];
+
         /**
          * The maximum number of {@link Buffer}s to be processed by {@link #sendThread} per {@link #perNanos} nanoseconds.
          */
@@ -590,8 +771,17 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
         /**
          * Initializes a new {@link Queue} instance and starts its send thread.
          */
+        @SuppressWarnings("unchecked")
         private Queue()
         {
+            lanes = new ArrayDeque[LANE_COUNT];
+            for (int i = 0; i < LANE_COUNT; i++) {
+                lanes[i] = new ArrayDeque<>();
+            }
+            byte[] payloadTypeLanes = new byte[128];
+            Arrays.fill(payloadTypeLanes, (byte) LANE_VIDEO);
+            this.payloadTypeLanes = payloadTypeLanes;
+
             if (TimberLog.isTraceEnable) {
                 // queueStats = QueueStatistics.get(getClass().getSimpleName());
                 queueStats = new QueueStatistics(getClass().getSimpleName() + "-" + hashCode());
@@ -613,7 +803,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
         }
 
         /**
-         * Adds the given buffer (and its context) to this queue.
+         * Adds the given buffer (and its context) to the lane of this queue it belongs to.
          *
          * @param buf
          * @param off
@@ -629,40 +819,254 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
             System.arraycopy(buf, off, buffer.buf, 0, len);
             buffer.len = len;
             buffer.context = context;
+            buffer.lane = getLane(buf, off, len, context);
 
             long now = System.currentTimeMillis();
-            if (queue.size() >= PACKET_QUEUE_CAPACITY) {
-                // Drop from the head of the queue.
-                Buffer b = queue.poll();
-                if (b != null) {
-                    if (queueStats != null) {
-                        queueStats.remove(now);
+            buffer.enqueueTimeMs = now;
+            synchronized (this) {
+                if (size >= PACKET_QUEUE_CAPACITY) {
+                    // Drop from the head of the lane with the lowest priority.
+                    Buffer b = null;
+                    for (int i = LANE_COUNT - 1; b == null && i >= 0; i--) {
+                        b = poll(i);
                     }
-                    pool.offer(b);
-                    numDroppedPackets++;
-                    if (logDroppedPacket(numDroppedPackets)) {
-                        Timber.w("Packets dropped (hashCode = %s): %s", hashCode(), numDroppedPackets);
+                    if (b != null) {
+                        if (queueStats != null) {
+                            queueStats.remove(now);
+                        }
+                        pool.offer(b);
+                        numDroppedPackets++;
+                        if (logDroppedPacket(numDroppedPackets)) {
+                            Timber.w("Packets dropped (hashCode = %s): %s", hashCode(), numDroppedPackets);
+                        }
                     }
                 }
+
+                lanes[buffer.lane].add(buffer);
+                size++;
+                if (buffer.lane != LANE_AUDIO) {
+                    pacedBytes += len;
+                }
+                notify();
             }
-            //            if (queue.size() % 200 == 0) {
-            //                new Exception("queue check #" + buffer.context).printStackTrace();
-            //            }
-            if (queue.offer(buffer) && queueStats != null) {
+            if (queueStats != null) {
                 queueStats.add(now);
             }
         }
 
         /**
-         * Reads {@link Buffer}s from {@link #queue}, "packetizes" them through
+         * Determines the lane of a packet to be written.
+         *
+         * @param buf the buffer which holds the packet.
+         * @param off the offset of the packet in <code>buf</code>.
+         * @param len the length of the packet.
+         * @param context the context of the packet, which is set when it is injected e.g. retransmitted.
+         * @return the lane of the packet.
+         */
+        private int getLane(byte[] buf, int off, int len, Object context)
+        {
+            if (!RawPacket.isRtpRtcp(buf, off, len)) {
+                // e.g. DTLS or ZRTP, which must not wait behind the media.
+                return LANE_AUDIO;
+            }
+
+            int pt = buf[off + 1] & 0xFF;
+            if (pt >= 200 && pt <= 211) {
+                // RTCP, multiplexed with the RTP.
+                return LANE_AUDIO;
+            }
+
+            int lane = payloadTypeLanes[pt & 0x7F];
+            if (lane == LANE_AUDIO) {
+                return LANE_AUDIO;
+            }
+            // The injected packets are retransmissions.
+            if (context != null) {
+                return LANE_RTX;
+            }
+            if (RawPacket.getPayloadLength(buf, off, len, true) == 0) {
+                return LANE_FEC;
+            }
+            return lane;
+        }
+
+        /**
+         * Removes the head of a lane, if any.
+         *
+         * @param lane the lane.
+         * @return the removed {@link Buffer} or <code>null</code> if <code>lane</code> is empty.
+         */
+        private Buffer poll(int lane)
+        {
+            Buffer buffer = lanes[lane].poll();
+            if (buffer != null) {
+                size--;
+                if (lane != LANE_AUDIO) {
+                    pacedBytes -= buffer.len;
+                }
+            }
+            return buffer;
+        }
+
+        /**
+         * Waits for the next {@link Buffer} to be sent: the head of the lane with the highest priority
+         * once the token bucket allows it. The audio lane, and all lanes while pacing is disabled, are
+         * not held by the bucket.
+         *
+         * @return the next {@link Buffer} to be sent or <code>null</code> if this stream has been
+         * closed or if the wait has timed out.
+         */
+        private synchronized Buffer take()
+        {
+            while (!closed) {
+                int lane = 0;
+                while (lane < LANE_COUNT && lanes[lane].isEmpty()) {
+                    lane++;
+                }
+
+                long waitNanos;
+                if (lane == LANE_COUNT) {
+                    waitNanos = 500 * 1000000L;
+                }
+                else if (lane == LANE_AUDIO || targetBitrateBps <= 0) {
+                    return dequeue(lane, System.nanoTime());
+                }
+                else {
+                    long now = System.nanoTime();
+                    long rateBps = refill(now);
+                    if (budgetBits > 0) {
+                        return dequeue(lane, now);
+                    }
+                    waitNanos = (-budgetBits * 1000000000L) / rateBps + 1;
+                }
+
+                try {
+                    wait(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                } catch (InterruptedException iex) {
+                    return null;
+                }
+                if (lane == LANE_COUNT && size == 0) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds the tokens earned since the last refill to the bucket.
+         *
+         * @param now the current time in nanoseconds.
+         * @return the current pacing rate in bits per second.
+         */
+        private long refill(long now)
+        {
+            long rateBps = (long) (targetBitrateBps * PACING_FACTOR);
+            // Raise the rate so that the queue drains in MAX_QUEUE_TIME_MS.
+            if (MAX_QUEUE_TIME_MS > 0) {
+                rateBps = Math.max(rateBps, pacedBytes * 8000L / MAX_QUEUE_TIME_MS);
+            }
+
+            long maxBudgetBits = rateBps * frameDurationMs / 1000L;
+            if (budgetTimeNanos == -1) {
+                budgetBits = maxBudgetBits;
+            }
+            else {
+                long elapsedNanos = Math.min(now - budgetTimeNanos, 1000000000L);
+                budgetBits = Math.min(maxBudgetBits, budgetBits + rateBps * elapsedNanos / 1000000000L);
+            }
+            budgetTimeNanos = now;
+            return rateBps;
+        }
+
+        /**
+         * Takes the head of a lane out of this queue, charges it to the token bucket and accounts for
+         * the time it has waited.
+         *
+         * @param lane the lane which is not empty.
+         * @param now the current time in nanoseconds.
+         * @return the head of <code>lane</code>.
+         */
+        private Buffer dequeue(int lane, long now)
+        {
+            Buffer buffer = poll(lane);
+            if (targetBitrateBps > 0) {
+                // Audio is sent at once, but it still uses the bandwidth.
+                refill(now);
+                budgetBits -= buffer.len * 8L;
+            }
+
+            long delayMs = System.currentTimeMillis() - buffer.enqueueTimeMs;
+            totalQueueDelayMs[lane] += delayMs;
+            dequeuedPackets[lane]++;
+            if (delayMs > maxQueueDelayMs[lane]) {
+                maxQueueDelayMs[lane] = delayMs;
+            }
+            return buffer;
+        }
+
+        /**
+         * Sets the target bitrate which the pacing rate is derived from.
+         *
+         * @param targetBitrateBps the target bitrate in bits per second; <code>-1</code> to disable pacing.
+         */
+        private synchronized void setPacingRate(long targetBitrateBps)
+        {
+            if (this.targetBitrateBps <= 0) {
+                // Start with a full bucket.
+                budgetTimeNanos = -1;
+            }
+            this.targetBitrateBps = targetBitrateBps;
+            notify();
+        }
+
+        /**
+         * Sets the duration of a frame, which bounds the bursts of the pacer.
+         *
+         * @param frameDurationMs the duration of a frame in milliseconds.
+         */
+        private synchronized void setFrameDurationMs(long frameDurationMs)
+        {
+            this.frameDurationMs = frameDurationMs;
+        }
+
+        /**
+         * Gets the average time the packets of a specific lane have waited in this queue.
+         *
+         * @param lane the lane.
+         * @return the average queueing delay in milliseconds of the packets taken out of <code>lane</code>.
+         */
+        private synchronized long getAverageQueueDelay(int lane)
+        {
+            long count = dequeuedPackets[lane];
+            return count == 0 ? 0 : totalQueueDelayMs[lane] / count;
+        }
+
+        /**
+         * Gets the longest time a packet of a specific lane has waited in this queue.
+         *
+         * @param lane the lane.
+         * @return the maximum queueing delay in milliseconds of the packets taken out of <code>lane</code>.
+         */
+        private synchronized long getMaxQueueDelay(int lane)
+        {
+            return maxQueueDelayMs[lane];
+        }
+
+        /**
+         * Takes {@link Buffer}s out of the lanes of this queue, "packetizes" them through
          * {@link RTPConnectorOutputStream#packetize(byte[], int, int, Object)} and sends the
          * resulting packets to this {@link RTPConnectorOutputStream}'s targets.
          *
-         * If a pacing policy is configured, makes sure that it is respected. Note that this pacing
-         * is done on the basis of the number of {@link Buffer}s read from the queue, which
-         * technically could be different than the number of {@link RawPacket}s sent. This is done
-         * in order to keep the implementation simpler, and because in the majority of the cases
-         * (and in all current cases where pacing is enabled) the numbers do match.
+         * The pacing is done before the packetization, so that the transformations which stamp the
+         * send time, e.g. for the transport-wide congestion control, see the time the packets
+         * actually leave. It is done on the basis of the length of the {@link Buffer}s, the FEC
+         * packets which the transformations may add are sent along with the packet they protect.
+         *
+         * If a maximum number of packets per interval is configured, makes sure that it is
+         * respected. Note that this is done on the basis of the number of {@link Buffer}s read from
+         * the queue, which technically could be different than the number of {@link RawPacket}s sent.
+         * This is done in order to keep the implementation simpler, and because in the majority of
+         * the cases (and in all current cases where pacing is enabled) the numbers do match.
          */
         private void runInSendThread()
         {
@@ -674,12 +1078,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
 
             try {
                 while (!closed) {
-                    Buffer buffer;
-                    try {
-                        buffer = queue.poll(500, TimeUnit.MILLISECONDS);
-                    } catch (InterruptedException iex) {
-                        continue;
-                    }
+                    Buffer buffer = take();
 
                     // The current thread has potentially waited.
                     if (closed) {
@@ -695,7 +1094,7 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                     try {
                         // We will sooner or later process the Buffer. Since this
                         // may take a non-negligible amount of time, do it
-                        // before taking pacing into account.
+                        // before taking the packet rate limit into account.
                         pkts = packetize(buffer.buf, 0, buffer.len, buffer.context);
                     } catch (Exception e) {
                         // The sending thread must not die because of a failure
@@ -729,7 +1128,13 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
                     buffersProcessedInCurrentInterval++;
                 }
             } finally {
-                queue.clear();
+                synchronized (this) {
+                    for (ArrayDeque<Buffer> lane : lanes) {
+                        lane.clear();
+                    }
+                    size = 0;
+                    pacedBytes = 0;
+                }
             }
         }
 
@@ -768,6 +1173,16 @@ public abstract class RTPConnectorOutputStream implements OutputDataStream
             int len;
             Object context;
 
+            /**
+             * The lane of this buffer in {@link Queue#lanes}.
+             */
+            int lane;
+
+            /**
+             * The time in milliseconds at which this buffer has been added to the queue.
+             */
+            long enqueueTimeMs;
+
             private Buffer()
             {
             }
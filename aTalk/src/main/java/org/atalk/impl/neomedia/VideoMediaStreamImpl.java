@@ -18,6 +18,7 @@ import org.atalk.impl.neomedia.rtcp.RTCPReceiverFeedbackTermination;
 import org.atalk.impl.neomedia.rtp.MediaStreamTrackReceiver;
 import org.atalk.impl.neomedia.rtp.RTPEncodingDesc;
 import org.atalk.impl.neomedia.rtp.StreamRTPManager;
+import org.atalk.impl.neomedia.rtp.TransportCCEngine;
 import org.atalk.impl.neomedia.rtp.VideoMediaStreamTrackReceiver;
 import org.atalk.impl.neomedia.rtp.remotebitrateestimator.RemoteBitrateEstimatorWrapper;
 import org.atalk.impl.neomedia.rtp.sendsidebandwidthestimation.BandwidthEstimatorImpl;
@@ -40,7 +41,6 @@ import org.atalk.service.neomedia.control.KeyFrameControlAdapter;
 import org.atalk.service.neomedia.device.MediaDevice;
 import org.atalk.service.neomedia.device.ScreenDevice;
 import org.atalk.service.neomedia.format.MediaFormat;
-import org.atalk.service.neomedia.rtp.BandwidthEstimator;
 import org.atalk.util.OSUtils;
 import org.atalk.util.concurrent.RecurringRunnableExecutor;
 import org.atalk.util.event.VideoEvent;
@@ -51,6 +51,7 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -446,6 +447,10 @@ public class VideoMediaStreamImpl extends MediaStreamImpl implements VideoMediaS
     {
         super(connector, device, srtpControl);
         recurringRunnableExecutor.registerRecurringRunnable(rtcpFeedbackTermination);
+
+        // The REMBs and the losses of the receiver reports feed the estimate, and so the pacing
+        // rate, whether or not transport-cc is negotiated.
+        getOrCreateBandwidthEstimator();
     }
 
     /**
@@ -589,6 +594,14 @@ public class VideoMediaStreamImpl extends MediaStreamImpl implements VideoMediaS
     {
         super.configureDataOutputStream(dataOutputStream);
 
+        // Pace the video at the bandwidth estimate, in bursts of at most a frame duration.
+        dataOutputStream.setPacingFrameRate(
+                NeomediaServiceUtils.getMediaServiceImpl().getDeviceConfiguration().getFrameRate());
+        BandwidthEstimatorImpl bandwidthEstimator = this.bandwidthEstimator;
+        if (bandwidthEstimator != null) {
+            dataOutputStream.setPacingRate(bandwidthEstimator.getLatestEstimate());
+        }
+
         /*
          * XXX Android's current video CaptureDevice is based on MediaRecorder which gives no
          * control over the number and the size of the packets, frame dropping is not implemented
@@ -1048,6 +1061,11 @@ public class VideoMediaStreamImpl extends MediaStreamImpl implements VideoMediaS
     @Override
     protected void rtpConnectorChanged(AbstractRTPConnector oldValue, AbstractRTPConnector newValue)
     {
+        // The transform engine chain, which the super creates, hooks in the TransportCCEngine. It
+        // stays passive until the transport-cc RTP header extension is enabled.
+        if (newValue != null && getTransportCCEngine() == null) {
+            setTransportCCEngine(new TransportCCEngine(getDiagnosticContext()));
+        }
         super.rtpConnectorChanged(oldValue, newValue);
         if (newValue != null) {
             MediaDeviceSession deviceSession = getDeviceSession();
@@ -1146,14 +1164,36 @@ public class VideoMediaStreamImpl extends MediaStreamImpl implements VideoMediaS
         return paddingTermination;
     }
 
+    /**
+     * Sets the target bitrate of the pacer of the RTP output stream of this instance, if it exists.
+     *
+     * @param bitrateBps the latest bandwidth estimate in bits per second.
+     */
+    private void setPacingRate(long bitrateBps)
+    {
+        AbstractRTPConnector connector = getRTPConnector();
+        if (connector != null) {
+            try {
+                RTPConnectorOutputStream dataOutputStream = connector.getDataOutputStream(false);
+                if (dataOutputStream != null) {
+                    dataOutputStream.setPacingRate(bitrateBps);
+                }
+            } catch (IOException ioe) {
+                Timber.w(ioe, "Failed to set the pacing rate.");
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public BandwidthEstimator getOrCreateBandwidthEstimator()
+    public BandwidthEstimatorImpl getOrCreateBandwidthEstimator()
     {
         if (bandwidthEstimator == null) {
             bandwidthEstimator = new BandwidthEstimatorImpl(this);
+            bandwidthEstimator.addListener(this::setPacingRate);
+            setPacingRate(bandwidthEstimator.getLatestEstimate());
             recurringRunnableExecutor.registerRecurringRunnable(bandwidthEstimator);
             Timber.i("Creating a BandwidthEstimator for stream %s", this);
         }
@@ -0,0 +1,112 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.codec.audio.ilbc;
+
+import org.atalk.impl.neomedia.jitterbuffer.JitterBufferDecoder;
+import org.atalk.util.ArrayIOUtils;
+
+/**
+ * Implements the iLBC decoder for an <code>AdaptiveJitterBuffer</code>: a missing packet is concealed
+ * by the packet loss concealment of the iLBC decoder. The mode (20 or 30 ms) is set by the length
+ * of the first payload, as in <code>JavaDecoder</code>.
+ *
+ * @author Eng Chong Meng
+ */
+public class IlbcJitterBufferDecoder implements JitterBufferDecoder {
+    /**
+     * The maximum number of frames of a single payload which are decoded.
+     */
+    private static final int MAX_FRAMES_PER_PAYLOAD = 4;
+
+    /**
+     * The decoder, initialized with the mode of the first payload.
+     */
+    private ilbc_decoder dec;
+
+    /**
+     * The decoded samples of a frame, as written by the decoder.
+     */
+    private final byte[] decoded = new byte[2 * ilbc_constants.BLOCKL_MAX];
+
+    /**
+     * The length in bytes of a frame of the mode of {@link #dec}.
+     */
+    private int frameBytes;
+
+    /**
+     * The (ignored) input of the decoder when it conceals a lost frame.
+     */
+    private final byte[] lostFrame = new byte[ilbc_constants.NO_OF_BYTES_30MS];
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSampleRate() {
+        return 8000;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxDecodedSamples() {
+        return MAX_FRAMES_PER_PAYLOAD * ilbc_constants.BLOCKL_MAX;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int decode(byte[] in, int inOffset, int inLength, short[] out, int outOffset) {
+        int bytes;
+        if (inLength % ilbc_constants.NO_OF_BYTES_30MS == 0)
+            bytes = ilbc_constants.NO_OF_BYTES_30MS;
+        else if (inLength % ilbc_constants.NO_OF_BYTES_20MS == 0)
+            bytes = ilbc_constants.NO_OF_BYTES_20MS;
+        else
+            return 0;
+
+        if (bytes != frameBytes) {
+            /*
+             * The enhancer is off: its packet loss concealment overruns its buffers when frames are
+             * concealed in a row, which the jitter buffer does on an underrun.
+             */
+            dec = new ilbc_decoder((bytes == ilbc_constants.NO_OF_BYTES_20MS) ? 20 : 30, 0);
+            frameBytes = bytes;
+        }
+
+        int length = 0;
+        for (int i = 0; i < MAX_FRAMES_PER_PAYLOAD && (i + 1) * bytes <= inLength; i++)
+            length += decodeFrame(in, inOffset + i * bytes, (short) 1, out, outOffset + length);
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int conceal(byte[] next, int nextOffset, int nextLength, int distance, short[] out, int outOffset) {
+        return (dec == null) ? 0 : decodeFrame(lostFrame, 0, (short) 0, out, outOffset);
+    }
+
+    /**
+     * Decodes or conceals one frame.
+     *
+     * @param in the encoded frame
+     * @param inOffset the offset of the frame in <code>in</code>
+     * @param mode 0 to conceal, 1 to decode
+     * @param out the array to write the samples into
+     * @param outOffset the offset in <code>out</code> at which to start writing
+     * @return the number of samples written
+     */
+    private int decodeFrame(byte[] in, int inOffset, short mode, short[] out, int outOffset) {
+        int length = dec.decode(decoded, 0, in, inOffset, mode);
+        for (int i = 0; i < length; i++)
+            out[outOffset + i] = ArrayIOUtils.readShort(decoded, 2 * i);
+        return length;
+    }
+}
@@ -17,20 +17,40 @@ class bitstream
 
 	int pos;
 
-	final byte[] buffer;
+	byte[] buffer;
 
 	/**
 	 * The offset in {@link #buffer} of the first octet of this <code>bitstream</code>.
 	 */
-	final int buffer_off;
+	int buffer_off;
 
 	/**
 	 * The length in {@link #buffer} which is available to octets of this <code>bitstream</code>.
 	 */
-	final int buffer_len;
+	int buffer_len;
 	private int buffer_pos;
 
+	/**
+	 * Initializes a new <code>bitstream</code> which is to be set on a buffer with {@link #init}
+	 * before use; allows the encoder and the decoder to reuse one instance for every frame.
+	 */
+	public bitstream()
+	{
+	}
+
 	public bitstream(byte[] buffer, int offset, int length)
+	{
+		init(buffer, offset, length);
+	}
+
+	/**
+	 * Sets this <code>bitstream</code> on a new buffer and rewinds it to the first bit.
+	 *
+	 * @param buffer the buffer to pack into or unpack from
+	 * @param offset the offset in <code>buffer</code> of the first octet
+	 * @param length the number of octets available in <code>buffer</code>
+	 */
+	public void init(byte[] buffer, int offset, int length)
 	{
 		pos = 0;
 
@@ -47,24 +67,23 @@ class bitstream
 	 *  remaining least significant bits
 	 *---------------------------------------------------------------*/
 
-	public bitpack packsplit(int index, /* (i) the value to split */
+	public void packsplit(int index, /* (i) the value to split */
 		int bitno_firstpart, /*
 							 * (i) number of bits in most significant part
 							 */
-		int bitno_total) /*
+		int bitno_total, /*
 						 * (i) number of bits in full range of value
 						 */
+		bitpack rval) /* (o) the first part and the rest */
 	{
 		int bitno_rest = bitno_total - bitno_firstpart;
-		bitpack rval = new bitpack();
 
 		int fp = index >>> bitno_rest;
 
 		rval.set_firstpart(fp);
 		// *firstpart = *index>>(bitno_rest);
-		rval.set_rest(index - (rval.get_firstpart() << bitno_rest));
+		rval.set_rest(index - (fp << bitno_rest));
 		// *rest = *index-(*firstpart<<(bitno_rest));
-		return rval;
 	}
 
 	/*----------------------------------------------------------------*
@@ -77,15 +77,15 @@ class ilbc_common
 		int idxVec[], /* (i) vector of quantization indexes */
 		float syntDenum[], /* (i) synthesis filter denumerator */
 		int syntDenum_idx, float out[], /* (o) the decoded state vector */
-		int out_idx, int len /* (i) length of a state vector */
-	)
+		int out_idx, int len, /* (i) length of a state vector */
+		ilbc_scratch scratch) /* (i) scratch buffers */
 	{
 		float maxVal;
-		float[] tmpbuf = new float[ilbc_constants.LPC_FILTERORDER + 2 * ilbc_constants.STATE_LEN];
+		float[] tmpbuf = scratch.StateConstructW_tmpbuf;
 		// , *tmp,
 		int tmp;
-		float[] numerator = new float[ilbc_constants.LPC_FILTERORDER + 1];
-		float[] foutbuf = new float[ilbc_constants.LPC_FILTERORDER + 2 * ilbc_constants.STATE_LEN];
+		float[] numerator = scratch.StateConstructW_numerator;
+		float[] foutbuf = scratch.StateConstructW_foutbuf;
 		// , *fout;
 		int fout;
 		int k, tmpi;
@@ -167,11 +167,14 @@ class ilbc_common
 		int orderCoef) /* (i) number of filter coefficients */
 	{
 		int n, k;
+		float o;
 
 		for (n = 0; n < lengthInOut; n++) {
+			o = InOut[n + InOut_idx];
 			for (k = 1; k <= orderCoef; k++) {
-				InOut[n + InOut_idx] -= Coef[Coef_idx + k] * InOut[n - k + InOut_idx];
+				o -= Coef[Coef_idx + k] * InOut[n - k + InOut_idx];
 			}
+			InOut[n + InOut_idx] = o;
 		}
 	}
 
@@ -195,12 +198,14 @@ class ilbc_common
 		int Out_idx)
 	{
 		int n, k;
+		float o;
 
 		for (n = 0; n < lengthInOut; n++) {
-			Out[Out_idx] = Coef[0] * In[In_idx];
+			o = Coef[0] * In[In_idx];
 			for (k = 1; k <= orderCoef; k++) {
-				Out[Out_idx] += Coef[k] * In[In_idx - k];
+				o += Coef[k] * In[In_idx - k];
 			}
+			Out[Out_idx] = o;
 			Out_idx++;
 			In_idx++;
 		}
@@ -239,18 +244,18 @@ class ilbc_common
 	 *  conversion from lsf coefficients to lpc coefficients
 	 *---------------------------------------------------------------*/
 
-	public static void lsf2a(float a_coef[], float freq[])
+	public static void lsf2a(float a_coef[], float freq[], ilbc_scratch scratch)
 	{
 		int i, j;
 		float hlp;
-		float[] p = new float[ilbc_constants.LPC_HALFORDER];
-		float[] q = new float[ilbc_constants.LPC_HALFORDER];
-		float[] a = new float[ilbc_constants.LPC_HALFORDER + 1];
-		float[] a1 = new float[ilbc_constants.LPC_HALFORDER];
-		float[] a2 = new float[ilbc_constants.LPC_HALFORDER];
-		float[] b = new float[ilbc_constants.LPC_HALFORDER + 1];
-		float[] b1 = new float[ilbc_constants.LPC_HALFORDER];
-		float[] b2 = new float[ilbc_constants.LPC_HALFORDER];
+		float[] p = scratch.lsf2a_p;
+		float[] q = scratch.lsf2a_q;
+		float[] a = scratch.lsf2a_a;
+		float[] a1 = scratch.lsf2a_a1;
+		float[] a2 = scratch.lsf2a_a2;
+		float[] b = scratch.lsf2a_b;
+		float[] b1 = scratch.lsf2a_b1;
+		float[] b2 = scratch.lsf2a_b2;
 
 		// System.out.println("debut de lsf2a");
 
@@ -406,13 +411,14 @@ class ilbc_common
 		float mem[], /* (i) Codebook buffer */
 		int mem_idx, int index, /* (i) Codebook index */
 		int lMem, /* (i) Length of codebook buffer */
-		int cbveclen) /* (i) Codebook vector length */
+		int cbveclen, /* (i) Codebook vector length */
+		ilbc_scratch scratch) /* (i) scratch buffers */
 	{
 		int j, k, n, memInd, sFilt;
-		float[] tmpbuf = new float[ilbc_constants.CB_MEML];
+		float[] tmpbuf = scratch.getCBvec_tmpbuf;
 		int base_size;
 		int ilow, ihigh;
-		float alfa, alfa1;
+		float alfa, alfa1, o;
 
 		/* Determine size of codebook sections */
 
@@ -471,8 +477,7 @@ class ilbc_common
 			/* first non-interpolated vectors */
 
 			if (index - base_size < lMem - cbveclen + 1) {
-				float[] tempbuff2 = new float[ilbc_constants.CB_MEML + ilbc_constants.CB_FILTERLEN
-					+ 1];
+				float[] tempbuff2 = scratch.getCBvec_tempbuff2;
 				// float *pos;
 				// float *pp, *pp1;
 				int pos, pp, pp1;
@@ -496,20 +501,20 @@ class ilbc_common
 				/* do filtering */
 				// pos=cbvec;
 				pos = 0;
-				for (int li = 0; li < cbveclen; li++)
-					cbvec[li] = 0;
 				// memset(pos, 0, cbveclen*sizeof(float));
 				for (n = 0; n < cbveclen; n++) {
 					pp = memInd + n + ilbc_constants.CB_HALFFILTERLEN;
 					// pp=&tempbuff2[memInd+n+CB_HALFFILTERLEN];
 					pp1 = ilbc_constants.CB_FILTERLEN - 1;
 					// pp1=&cbfiltersTbl[CB_FILTERLEN-1];
+					o = 0.0f;
 					for (j = 0; j < ilbc_constants.CB_FILTERLEN; j++) {
 						// (*pos)+=(*pp++)*(*pp1--);
-						cbvec[pos] += tempbuff2[pp] * ilbc_constants.cbfiltersTbl[pp1];
+						o += tempbuff2[pp] * ilbc_constants.cbfiltersTbl[pp1];
 						pp++;
 						pp1--;
 					}
+					cbvec[pos] = o;
 					pos++;
 				}
 			}
@@ -517,8 +522,7 @@ class ilbc_common
 			/* interpolated vectors */
 
 			else {
-				float[] tempbuff2 = new float[ilbc_constants.CB_MEML + ilbc_constants.CB_FILTERLEN
-					+ 1];
+				float[] tempbuff2 = scratch.getCBvec_tempbuff2;
 
 				// float *pos;
 				// float *pp, *pp1;
@@ -545,20 +549,20 @@ class ilbc_common
 				// pos=&tmpbuf[sFilt];
 				pos = sFilt;
 				// memset(pos, 0, k*sizeof(float));
-				for (int li = 0; li < k; li++)
-					tmpbuf[pos + li] = 0.0f;
 
 				for (i = 0; i < k; i++) {
 					pp = memInd + i + ilbc_constants.CB_HALFFILTERLEN;
 					// pp=&tempbuff2[memInd+i+CB_HALFFILTERLEN];
 					pp1 = ilbc_constants.CB_FILTERLEN - 1;
 					// pp1=&cbfiltersTbl[CB_FILTERLEN-1];
+					o = 0.0f;
 					for (j = 0; j < ilbc_constants.CB_FILTERLEN; j++) {
 						// (*pos)+=(*pp++)*(*pp1--);
-						tmpbuf[pos] += tempbuff2[pp] * ilbc_constants.cbfiltersTbl[pp1];
+						o += tempbuff2[pp] * ilbc_constants.cbfiltersTbl[pp1];
 						pp++;
 						pp1--;
 					}
+					tmpbuf[pos] = o;
 					pos++;
 				}
 
@@ -680,13 +684,13 @@ class ilbc_common
 		int gain_index_idx, float mem[], /* (i) Buffer for codevector construction */
 		int mem_idx, int lMem, /* (i) Length of buffer */
 		int veclen, /* (i) Length of vector */
-		int nStages /* (i) Number of codebook stages */
-	)
+		int nStages, /* (i) Number of codebook stages */
+		ilbc_scratch scratch) /* (i) scratch buffers */
 	{
 		int j, k;
 
-		float[] gain = new float[ilbc_constants.CB_NSTAGES];
-		float[] cbvec = new float[ilbc_constants.SUBL];
+		float[] gain = scratch.iCBConstruct_gain;
+		float[] cbvec = scratch.iCBConstruct_cbvec;
 
 		/* gain de-quantization */
 
@@ -702,13 +706,13 @@ class ilbc_common
 		 * codebook vector construction and construction of total vector
 		 */
 
-		getCBvec(cbvec, mem, mem_idx, index[index_idx + 0], lMem, veclen);
+		getCBvec(cbvec, mem, mem_idx, index[index_idx + 0], lMem, veclen, scratch);
 		for (j = 0; j < veclen; j++) {
 			decvector[decvector_idx + j] = gain[0] * cbvec[j];
 		}
 		if (nStages > 1) {
 			for (k = 1; k < nStages; k++) {
-				getCBvec(cbvec, mem, mem_idx, index[index_idx + k], lMem, veclen);
+				getCBvec(cbvec, mem, mem_idx, index[index_idx + k], lMem, veclen, scratch);
 				for (j = 0; j < veclen; j++) {
 					decvector[decvector_idx + j] += gain[k] * cbvec[j];
 				}
@@ -36,6 +36,71 @@ class ilbc_decoder
 	float enh_buf[];
 	float enh_period[];
 
+	/* bitstream of the frame being decoded */
+	private final bitstream en_data = new bitstream();
+
+	private final ilbc_scratch scratch = new ilbc_scratch();
+
+	/* scratch buffers of the methods below, not part of the decoder state */
+
+	private final float[] LSFinterpolate2a_dec_lsftmp = new float[ilbc_constants.LPC_FILTERORDER];
+
+	private final float[] DecoderInterpolateLSF_lp = new float[ilbc_constants.LPC_FILTERORDER + 1];
+
+	private final int[] enh_upsample_polyp = new int[ilbc_constants.ENH_UPS0];
+
+	private final float[] refiner_vect = new float[ilbc_constants.ENH_VECTL];
+	private final float[] refiner_corrVec = new float[ilbc_constants.ENH_CORRDIM];
+	private final float[] refiner_corrVecUps =
+		new float[ilbc_constants.ENH_CORRDIM * ilbc_constants.ENH_UPS0];
+
+	private final float[] smath_surround = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] smath_wt = new float[2 * ilbc_constants.ENH_HL + 1];
+
+	private final float[] getsseq_blockStartPos = new float[2 * ilbc_constants.ENH_HL + 1];
+	private final int[] getsseq_lagBlock = new int[2 * ilbc_constants.ENH_HL + 1];
+	private final float[] getsseq_plocs2 = new float[ilbc_constants.ENH_PLOCSL];
+
+	private final float[] enhancer_sseq =
+		new float[(2 * ilbc_constants.ENH_HL + 1) * ilbc_constants.ENH_BLOCKL];
+
+	private final float[] enhancerInterface_plc_pred = new float[ilbc_constants.ENH_BLOCKL];
+	private final float[] enhancerInterface_lpState = new float[6];
+	private final float[] enhancerInterface_downsampled =
+		new float[(ilbc_constants.ENH_NBLOCKS * ilbc_constants.ENH_BLOCKL + 120) / 2];
+
+	private final float[] doThePLC_randvec = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] doThePLC_a_gain = new float[1];
+	private final float[] doThePLC_a_comp = new float[1];
+	private final float[] doThePLC_a_per = new float[1];
+
+	private final float[] decode_decblock = new float[ilbc_constants.BLOCKL_MAX];
+
+	private final float[] Decode_reverseDecresidual = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] Decode_mem = new float[ilbc_constants.CB_MEML];
+
+	private final float[] iLBC_decode_data = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] iLBC_decode_lsfdeq =
+		new float[ilbc_constants.LPC_FILTERORDER * ilbc_constants.LPC_N_MAX];
+	private final float[] iLBC_decode_PLCresidual = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] iLBC_decode_PLClpc = new float[ilbc_constants.LPC_FILTERORDER + 1];
+	private final float[] iLBC_decode_zeros = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] iLBC_decode_one = new float[ilbc_constants.LPC_FILTERORDER + 1];
+	private final int[] iLBC_decode_idxVec = new int[ilbc_constants.STATE_LEN];
+	private final int[] iLBC_decode_gain_index =
+		new int[ilbc_constants.NASUB_MAX * ilbc_constants.CB_NSTAGES];
+	private final int[] iLBC_decode_extra_gain_index = new int[ilbc_constants.CB_NSTAGES];
+	private final int[] iLBC_decode_cb_index =
+		new int[ilbc_constants.CB_NSTAGES * ilbc_constants.NASUB_MAX];
+	private final int[] iLBC_decode_extra_cb_index = new int[ilbc_constants.CB_NSTAGES];
+	private final int[] iLBC_decode_lsf_i =
+		new int[ilbc_constants.LSF_NSPLIT * ilbc_constants.LPC_N_MAX];
+	private final float[] iLBC_decode_weightdenum =
+		new float[(ilbc_constants.LPC_FILTERORDER + 1) * ilbc_constants.NSUB_MAX];
+	private final float[] iLBC_decode_syntdenum =
+		new float[ilbc_constants.NSUB_MAX * (ilbc_constants.LPC_FILTERORDER + 1)];
+	private final float[] iLBC_decode_decresidual = new float[ilbc_constants.BLOCKL_MAX];
+
 	// La plupart des variables globales sont dans ilbc_constants.etc...
 
 	void syntFilter(float Out[], /* (i/o) Signal to be filtered */
@@ -46,6 +111,7 @@ class ilbc_decoder
 		int i, j;
 		// float *po, *pi, *pa, *pm;
 		int po, pi, pa, pm;
+		float o;
 
 		// System.out.println("out size : " + Out.length);
 		// System.out.println("out idx : " + Out_idx);
@@ -65,6 +131,7 @@ class ilbc_decoder
 			pi = Out_idx + i - 1;
 			pa = a_idx + 1;
 			pm = ilbc_constants.LPC_FILTERORDER - 1;
+			o = Out[po];
 
 			for (j = 1; j <= i; j++) {
 				// *po-=(*pa++)*(*pi--);
@@ -72,7 +139,7 @@ class ilbc_decoder
 				// a[pa] + " * " +
 				// Out[pi]);
 				// System.out.println("index " + (po - Out_idx) + " <> " + (pi - Out_idx));
-				Out[po] -= a[pa] * Out[pi];
+				o -= a[pa] * Out[pi];
 				// System.out.println("Pour un resultat de " + Out[po]);
 				pa++;
 				pi--;
@@ -81,11 +148,12 @@ class ilbc_decoder
 				// *po-=(*pa++)*(*pm--);
 				// System.out.println("2 Soustraction a " + Out[po] + " de " + a[pa] + " * " +
 				// mem[pm]);
-				Out[po] -= a[pa] * mem[pm];
+				o -= a[pa] * mem[pm];
 				// System.out.println("Pour un resultat de " + Out[po]);
 				pa++;
 				pm--;
 			}
+			Out[po] = o;
 			po++;
 		}
 
@@ -98,15 +166,17 @@ class ilbc_decoder
 			pi = Out_idx + i - 1;
 			// pa=&a[1];
 			pa = a_idx + 1;
+			o = Out[po];
 			for (j = 1; j < ilbc_constants.LPC_FILTERORDER + 1; j++) {
 				// *po-=(*pa++)*(*pi--);
 				// System.out.println("3 Soustraction a " + Out[po] + " de " + a[pa] + " * " +
 				// Out[pi]);
-				Out[po] -= a[pa] * Out[pi];
+				o -= a[pa] * Out[pi];
 				// System.out.println("Pour un resultat de " + Out[po]);
 				pa++;
 				pi--;
 			}
+			Out[po] = o;
 			po++;
 		}
 
@@ -129,10 +199,10 @@ class ilbc_decoder
 		int length /* (i) length of lsf vectors */
 	)
 	{
-		float[] lsftmp = new float[ilbc_constants.LPC_FILTERORDER];
+		float[] lsftmp = this.LSFinterpolate2a_dec_lsftmp;
 
 		ilbc_common.interpolate(lsftmp, lsf1, lsf2, lsf2_idx, coef, length);
-		ilbc_common.lsf2a(a, lsftmp);
+		ilbc_common.lsf2a(a, lsftmp, this.scratch);
 	}
 
 	/*---------------------------------------------------------------*
@@ -189,7 +259,7 @@ class ilbc_decoder
 		int length) /* (i) length of lsf coefficient vector */
 	{
 		int i, pos, lp_length;
-		float[] lp = new float[ilbc_constants.LPC_FILTERORDER + 1];
+		float[] lp = this.DecoderInterpolateLSF_lp;
 		int lsfdeq2;
 
 		lsfdeq2 = length;
@@ -431,6 +501,7 @@ class ilbc_decoder
 		int seq2_idx, int dim2) /* (i) dimension seq2 */
 	{
 		int i, j;
+		float o;
 
 		// System.out.println("longueur 1 : " + seq1.length);
 		// System.out.println("distance 1 : " + seq1_idx);
@@ -442,11 +513,11 @@ class ilbc_decoder
 		// BUG in ILBC ???
 
 		for (i = 0; i <= dim1 - dim2; i++) {
-			if ((corr_idx + i) < corr.length)
-				corr[corr_idx + i] = 0.0f;
+			o = 0.0f;
 			for (j = 0; j < dim2; j++) {
-				corr[corr_idx + i] += seq1[seq1_idx + i + j] * seq2[seq2_idx + j];
+				o += seq1[seq1_idx + i + j] * seq2[seq2_idx + j];
 			}
+			corr[corr_idx + i] = o;
 		}
 	}
 
@@ -462,7 +533,8 @@ class ilbc_decoder
 		// float *pu,*ps;
 		int pu, ps;
 		int i, j, k, q, filterlength, hfl2;
-		int[] polyp = new int[ilbc_constants.ENH_UPS0]; /*
+		float o;
+		int[] polyp = this.enh_upsample_polyp; /*
 														 * pointers to polyphase columns
 														 */
 		// const float *pp;
@@ -493,16 +565,17 @@ class ilbc_decoder
 		for (i = hfl; i < filterlength; i++) {
 			for (j = 0; j < ilbc_constants.ENH_UPS0; j++) {
 				// *pu=0.0f;
-				useq1[pu] = 0.0f;
+				o = 0.0f;
 				// pp = polyp[j];
 				pp = polyp[j];
 				// ps = seq1+i;
 				ps = i;
 				for (k = 0; k <= i; k++) {
-					useq1[pu] += seq1[ps] * ilbc_constants.polyphaserTbl[pp];
+					o += seq1[ps] * ilbc_constants.polyphaserTbl[pp];
 					ps--;
 					pp++;
 				}
+				useq1[pu] = o;
 				pu++;
 			}
 		}
@@ -512,17 +585,18 @@ class ilbc_decoder
 		for (i = filterlength; i < dim1; i++) {
 			for (j = 0; j < ilbc_constants.ENH_UPS0; j++) {
 				// *pu=0.0f;
-				useq1[pu] = 0.0f;
+				o = 0.0f;
 				// pp = polyp[j];
 				pp = polyp[j];
 				// ps = seq1+i;
 				ps = i;
 				for (k = 0; k < filterlength; k++) {
 					// *pu += *ps-- * *pp++;
-					useq1[pu] += seq1[ps] * ilbc_constants.polyphaserTbl[pp];
+					o += seq1[ps] * ilbc_constants.polyphaserTbl[pp];
 					ps--;
 					pp++;
 				}
+				useq1[pu] = o;
 				pu++;
 			}
 		}
@@ -532,17 +606,18 @@ class ilbc_decoder
 		for (q = 1; q <= hfl; q++) {
 			for (j = 0; j < ilbc_constants.ENH_UPS0; j++) {
 				// *pu=0.0f;
-				useq1[pu] = 0.0f;
+				o = 0.0f;
 				// pp = polyp[j]+q;
 				pp = polyp[j] + q;
 				// ps = seq1+dim1-1;
 				ps = dim1 - 1;
 				for (k = 0; k < filterlength - q; k++) {
-					useq1[pu] += seq1[ps] * ilbc_constants.polyphaserTbl[pp];
+					o += seq1[ps] * ilbc_constants.polyphaserTbl[pp];
 					ps--;
 					pp++;
 					// *pu += *ps-- * *pp++;
 				}
+				useq1[pu] = o;
 				pu++;
 			}
 		}
@@ -569,10 +644,10 @@ class ilbc_decoder
 	{
 		int estSegPosRounded, searchSegStartPos, searchSegEndPos, corrdim;
 		int tloc, tloc2, i, st, en, fraction;
-		float[] vect = new float[ilbc_constants.ENH_VECTL];
-		float[] corrVec = new float[ilbc_constants.ENH_CORRDIM];
+		float[] vect = this.refiner_vect;
+		float[] corrVec = this.refiner_corrVec;
 		float maxv;
-		float[] corrVecUps = new float[ilbc_constants.ENH_CORRDIM * ilbc_constants.ENH_UPS0];
+		float[] corrVecUps = this.refiner_corrVecUps;
 		float updStartPos = 0.0f;
 
 		/* defining array bounds */
@@ -673,11 +748,11 @@ class ilbc_decoder
 	{
 		int i, k;
 		float w00, w10, w11, A, B, C, err, errs;
-		float[] surround = new float[ilbc_constants.BLOCKL_MAX]; /*
+		float[] surround = this.smath_surround; /*
 																 * shape contributed by other than
 																 * current
 																 */
-		float[] wt = new float[2 * ilbc_constants.ENH_HL + 1]; /*
+		float[] wt = this.smath_wt; /*
 																 * waveform weighting to get
 																 * surround shape
 																 */
@@ -781,9 +856,9 @@ class ilbc_decoder
 		int hl) /* (i) 2*hl+1 is the number of sequences */
 	{
 		int i, centerEndPos, q;
-		float[] blockStartPos = new float[2 * ilbc_constants.ENH_HL + 1];
-		int[] lagBlock = new int[2 * ilbc_constants.ENH_HL + 1];
-		float[] plocs2 = new float[ilbc_constants.ENH_PLOCSL];
+		float[] blockStartPos = this.getsseq_blockStartPos;
+		int[] lagBlock = this.getsseq_lagBlock;
+		float[] plocs2 = this.getsseq_plocs2;
 		// float *psseq;
 		int psseq;
 
@@ -866,7 +941,7 @@ class ilbc_decoder
 		int periodl /* (i) dimension of period and plocs */
 	)
 	{
-		float[] sseq = new float[(2 * ilbc_constants.ENH_HL + 1) * ilbc_constants.ENH_BLOCKL];
+		float[] sseq = this.enhancer_sseq;
 
 		/* get said second sequence of segments */
 
@@ -918,10 +993,10 @@ class ilbc_decoder
 		float ftmp1, ftmp2;
 		// float *inPtr, *enh_bufPtr1, *enh_bufPtr2;
 		int inPtr, enh_bufPtr1, enh_bufPtr2;
-		float[] plc_pred = new float[ilbc_constants.ENH_BLOCKL];
+		float[] plc_pred = this.enhancerInterface_plc_pred;
 
-		float[] lpState = new float[6];
-		float[] downsampled = new float[(ilbc_constants.ENH_NBLOCKS * ilbc_constants.ENH_BLOCKL + 120) / 2];
+		float[] lpState = this.enhancerInterface_lpState;
+		float[] downsampled = this.enhancerInterface_downsampled;
 		int inLen = ilbc_constants.ENH_NBLOCKS * ilbc_constants.ENH_BLOCKL + 120;
 		int start, plc_blockl, inlag;
 
@@ -1160,11 +1235,11 @@ class ilbc_decoder
 		float ftmp, randvec[], pitchfact, energy;
 		float[] a_gain, a_comp, a_per;
 
-		randvec = new float[ilbc_constants.BLOCKL_MAX];
+		randvec = this.doThePLC_randvec;
 
-		a_gain = new float[1];
-		a_comp = new float[1];
-		a_per = new float[1];
+		a_gain = this.doThePLC_a_gain;
+		a_comp = this.doThePLC_a_comp;
+		a_per = this.doThePLC_a_per;
 
 		/* Packet Loss */
 
@@ -1338,10 +1413,11 @@ class ilbc_decoder
 		short mode) /* (i) 0=PL, 1=Normal */
 	{
 		int k;
-		float decblock[] = new float[ilbc_constants.BLOCKL_MAX];
+		float decblock[] = this.decode_decblock;
 		float dtmp;
 		// char en_data[] = new char [this.ULP_inst.no_of_bytes];
-		bitstream en_data = new bitstream(encoded, encodedOffset, this.ULP_inst.no_of_bytes);
+
+		en_data.init(encoded, encodedOffset, this.ULP_inst.no_of_bytes);
 
 		/* check if mode is valid */
 		if ((mode < 0) || (mode > 1)) {
@@ -1400,8 +1476,8 @@ class ilbc_decoder
 						 * comes last
 						 */
 	{
-		float[] reverseDecresidual = new float[ilbc_constants.BLOCKL_MAX];
-		float[] mem = new float[ilbc_constants.CB_MEML];
+		float[] reverseDecresidual = this.Decode_reverseDecresidual;
+		float[] mem = this.Decode_mem;
 		int k, meml_gotten, Nfor, Nback, i;
 		int diff, start_pos;
 		int subcount, subframe;
@@ -1419,7 +1495,7 @@ class ilbc_decoder
 
 		ilbc_common.StateConstructW(idxForMax, idxVec, syntdenum, (start - 1)
 			* (ilbc_constants.LPC_FILTERORDER + 1), decresidual, start_pos,
-			this.ULP_inst.state_short_len);
+			this.ULP_inst.state_short_len, this.scratch);
 
 		if (state_first != 0) { /* put adaptive part in the end */
 
@@ -1440,7 +1516,7 @@ class ilbc_decoder
 			ilbc_common.iCBConstruct(decresidual, start_pos + this.ULP_inst.state_short_len,
 				extra_cb_index, 0, extra_gain_index, 0, mem, ilbc_constants.CB_MEML
 					- ilbc_constants.stMemLTbl, ilbc_constants.stMemLTbl, diff,
-				ilbc_constants.CB_NSTAGES);
+				ilbc_constants.CB_NSTAGES, this.scratch);
 
 		}
 		else {/* put adaptive part in the beginning */
@@ -1466,7 +1542,7 @@ class ilbc_decoder
 
 			ilbc_common.iCBConstruct(reverseDecresidual, 0, extra_cb_index, 0, extra_gain_index, 0,
 				mem, ilbc_constants.CB_MEML - ilbc_constants.stMemLTbl, ilbc_constants.stMemLTbl,
-				diff, ilbc_constants.CB_NSTAGES);
+				diff, ilbc_constants.CB_NSTAGES, this.scratch);
 
 			/* get decoded residual from reversed vector */
 
@@ -1505,7 +1581,7 @@ class ilbc_decoder
 					cb_index, subcount * ilbc_constants.CB_NSTAGES, gain_index, subcount
 						* ilbc_constants.CB_NSTAGES, mem, ilbc_constants.CB_MEML
 						- ilbc_constants.memLfTbl[subcount], ilbc_constants.memLfTbl[subcount],
-					ilbc_constants.SUBL, ilbc_constants.CB_NSTAGES);
+					ilbc_constants.SUBL, ilbc_constants.CB_NSTAGES, this.scratch);
 
 				/* update memory */
 
@@ -1555,7 +1631,7 @@ class ilbc_decoder
 					cb_index, subcount * ilbc_constants.CB_NSTAGES, gain_index, subcount
 						* ilbc_constants.CB_NSTAGES, mem, ilbc_constants.CB_MEML
 						- ilbc_constants.memLfTbl[subcount], ilbc_constants.memLfTbl[subcount],
-					ilbc_constants.SUBL, ilbc_constants.CB_NSTAGES);
+					ilbc_constants.SUBL, ilbc_constants.CB_NSTAGES, this.scratch);
 
 				/* update memory */
 
@@ -1588,31 +1664,29 @@ class ilbc_decoder
 				 * (i) 0: bad packet, PLC, 1: normal
 				 */
 	{
-		float[] data = new float[ilbc_constants.BLOCKL_MAX];
-		float[] lsfdeq = new float[ilbc_constants.LPC_FILTERORDER * ilbc_constants.LPC_N_MAX];
-		float[] PLCresidual = new float[ilbc_constants.BLOCKL_MAX];
-		float[] PLClpc = new float[ilbc_constants.LPC_FILTERORDER + 1];
-		float[] zeros = new float[ilbc_constants.BLOCKL_MAX];
-		float[] one = new float[ilbc_constants.LPC_FILTERORDER + 1];
+		float[] data = this.iLBC_decode_data;
+		float[] lsfdeq = this.iLBC_decode_lsfdeq;
+		float[] PLCresidual = this.iLBC_decode_PLCresidual;
+		float[] PLClpc = this.iLBC_decode_PLClpc;
+		float[] zeros = this.iLBC_decode_zeros;
+		float[] one = this.iLBC_decode_one;
 		int k, i, start, idxForMax, /* pos, */lastpart, ulp;
 		int lag, ilag;
 		float cc, maxcc;
-		int[] idxVec = new int[ilbc_constants.STATE_LEN];
+		int[] idxVec = this.iLBC_decode_idxVec;
 		// int check;
-		int[] gain_index = new int[ilbc_constants.NASUB_MAX * ilbc_constants.CB_NSTAGES];
-		int[] extra_gain_index = new int[ilbc_constants.CB_NSTAGES];
-		int[] cb_index = new int[ilbc_constants.CB_NSTAGES * ilbc_constants.NASUB_MAX];
-		int[] extra_cb_index = new int[ilbc_constants.CB_NSTAGES];
-		int[] lsf_i = new int[ilbc_constants.LSF_NSPLIT * ilbc_constants.LPC_N_MAX];
+		int[] gain_index = this.iLBC_decode_gain_index;
+		int[] extra_gain_index = this.iLBC_decode_extra_gain_index;
+		int[] cb_index = this.iLBC_decode_cb_index;
+		int[] extra_cb_index = this.iLBC_decode_extra_cb_index;
+		int[] lsf_i = this.iLBC_decode_lsf_i;
 		int state_first;
 		int last_bit;
 		// unsigned char *pbytes;
-		float[] weightdenum = new float[(ilbc_constants.LPC_FILTERORDER + 1)
-			* ilbc_constants.NSUB_MAX];
+		float[] weightdenum = this.iLBC_decode_weightdenum;
 		int order_plus_one;
-		float[] syntdenum = new float[ilbc_constants.NSUB_MAX
-			* (ilbc_constants.LPC_FILTERORDER + 1)];
-		float[] decresidual = new float[ilbc_constants.BLOCKL_MAX];
+		float[] syntdenum = this.iLBC_decode_syntdenum;
+		float[] decresidual = this.iLBC_decode_decresidual;
 
 		if (mode > 0) { /* the data are good */
 
@@ -33,6 +33,93 @@ class ilbc_encoder
 
 	ilbc_ulp ULP_inst = null;
 
+	/* bitstream of the frame being encoded */
+	private final bitstream en_data = new bitstream();
+	private final bitpack pack = new bitpack();
+
+	private final ilbc_scratch scratch = new ilbc_scratch();
+
+	private static final float[] a2lsf_steps = { 0.00635f, 0.003175f, 0.0015875f, 0.00079375f };
+
+	private static final float[] FrameClassify_ssqEn_win = { 0.8f, 0.9f, 1.0f, 0.9f, 0.8f };
+	private static final float[] FrameClassify_sampEn_win = { 1.0f / 6.0f, 2.0f / 6.0f,
+		3.0f / 6.0f, 4.0f / 6.0f, 5.0f / 6.0f };
+
+	/* scratch buffers of the methods below, not part of the encoder state */
+
+	private final float[] AbsQuantW_syntOutBuf =
+		new float[ilbc_constants.LPC_FILTERORDER + ilbc_constants.STATE_SHORT_LEN_30MS];
+	private final int[] AbsQuantW_index = new int[1];
+
+	private final float[] StateSearchW_tmpbuf =
+		new float[ilbc_constants.LPC_FILTERORDER + 2 * ilbc_constants.STATE_SHORT_LEN_30MS];
+	private final float[] StateSearchW_numerator = new float[1 + ilbc_constants.LPC_FILTERORDER];
+	private final float[] StateSearchW_foutbuf =
+		new float[ilbc_constants.LPC_FILTERORDER + 2 * ilbc_constants.STATE_SHORT_LEN_30MS];
+
+	private final float[] a2lsf_p = new float[ilbc_constants.LPC_HALFORDER];
+	private final float[] a2lsf_q = new float[ilbc_constants.LPC_HALFORDER];
+	private final float[] a2lsf_p_pre = new float[ilbc_constants.LPC_HALFORDER];
+	private final float[] a2lsf_q_pre = new float[ilbc_constants.LPC_HALFORDER];
+	private final float[] a2lsf_olds = new float[2];
+
+	private final float[] SimpleAnalysis_temp = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] SimpleAnalysis_lp = new float[ilbc_constants.LPC_FILTERORDER + 1];
+	private final float[] SimpleAnalysis_lp2 = new float[ilbc_constants.LPC_FILTERORDER + 1];
+	private final float[] SimpleAnalysis_r = new float[ilbc_constants.LPC_FILTERORDER + 1];
+
+	private final float[] LSFinterpolate2a_enc_lsftmp = new float[ilbc_constants.LPC_FILTERORDER];
+
+	private final float[] SimpleInterpolateLSF_lp = new float[ilbc_constants.LPC_FILTERORDER + 1];
+
+	private final float[] LPCencode_lsf =
+		new float[ilbc_constants.LPC_FILTERORDER * ilbc_constants.LPC_N_MAX];
+	private final float[] LPCencode_lsfdeq =
+		new float[ilbc_constants.LPC_FILTERORDER * ilbc_constants.LPC_N_MAX];
+
+	private final float[] iCBSearch_gains = new float[ilbc_constants.CB_NSTAGES];
+	private final float[] iCBSearch_target = new float[ilbc_constants.SUBL];
+	private final float[] iCBSearch_buf =
+		new float[ilbc_constants.CB_MEML + ilbc_constants.SUBL + 2 * ilbc_constants.LPC_FILTERORDER];
+	private final float[] iCBSearch_invenergy = new float[ilbc_constants.CB_EXPAND * 128];
+	private final float[] iCBSearch_energy = new float[ilbc_constants.CB_EXPAND * 128];
+	private final float[] iCBSearch_cbvectors = new float[ilbc_constants.CB_MEML];
+	private final float[] iCBSearch_cvec = new float[ilbc_constants.SUBL];
+	private final float[] iCBSearch_aug_vec = new float[ilbc_constants.SUBL];
+	private final float[] iCBSearch_a = new float[1];
+	private final int[] iCBSearch_b = new int[1];
+	private final float[] iCBSearch_c = new float[1];
+
+	private final float[] FrameClassify_fssqEn = new float[ilbc_constants.NSUB_MAX];
+	private final float[] FrameClassify_bssqEn = new float[ilbc_constants.NSUB_MAX];
+
+	private final float[] filteredCBvecs_tempbuff2 =
+		new float[ilbc_constants.CB_MEML + ilbc_constants.CB_FILTERLEN];
+
+	private final float[] encode_block = new float[ilbc_constants.BLOCKL_MAX];
+
+	private final int[] iLBC_encode_idxForMax = new int[1];
+	private final float[] iLBC_encode_data = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] iLBC_encode_residual = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] iLBC_encode_reverseResidual = new float[ilbc_constants.BLOCKL_MAX];
+	private final int[] iLBC_encode_idxVec = new int[ilbc_constants.STATE_LEN];
+	private final float[] iLBC_encode_reverseDecresidual = new float[ilbc_constants.BLOCKL_MAX];
+	private final float[] iLBC_encode_mem = new float[ilbc_constants.CB_MEML];
+	private final int[] iLBC_encode_gain_index =
+		new int[ilbc_constants.CB_NSTAGES * ilbc_constants.NASUB_MAX];
+	private final int[] iLBC_encode_extra_gain_index = new int[ilbc_constants.CB_NSTAGES];
+	private final int[] iLBC_encode_cb_index =
+		new int[ilbc_constants.CB_NSTAGES * ilbc_constants.NASUB_MAX];
+	private final int[] iLBC_encode_extra_cb_index = new int[ilbc_constants.CB_NSTAGES];
+	private final int[] iLBC_encode_lsf_i =
+		new int[ilbc_constants.LSF_NSPLIT * ilbc_constants.LPC_N_MAX];
+	private final float[] iLBC_encode_weightState = new float[ilbc_constants.LPC_FILTERORDER];
+	private final float[] iLBC_encode_syntdenum =
+		new float[ilbc_constants.NSUB_MAX * (ilbc_constants.LPC_FILTERORDER + 1)];
+	private final float[] iLBC_encode_weightdenum =
+		new float[ilbc_constants.NSUB_MAX * (ilbc_constants.LPC_FILTERORDER + 1)];
+	private final float[] iLBC_encode_decresidual = new float[ilbc_constants.BLOCKL_MAX];
+
 	/**
 	 * @param syntDenum
 	 *        Currently not used
@@ -58,11 +145,10 @@ class ilbc_encoder
 	{
 		// float *syntOut;
 		int syntOut;
-		float[] syntOutBuf = new float[ilbc_constants.LPC_FILTERORDER
-			+ ilbc_constants.STATE_SHORT_LEN_30MS];
+		float[] syntOutBuf = this.AbsQuantW_syntOutBuf;
 		float toQ;
 		int n;
-		int[] index = new int[1];
+		int[] index = this.AbsQuantW_index;
 
 		/* initialization of buffer for filtering */
 
@@ -154,13 +240,11 @@ class ilbc_encoder
 						 */
 	{
 		float maxVal;
-		float[] tmpbuf = new float[ilbc_constants.LPC_FILTERORDER + 2
-			* ilbc_constants.STATE_SHORT_LEN_30MS];
+		float[] tmpbuf = this.StateSearchW_tmpbuf;
 		// float *tmp,
 		int tmp;
-		float[] numerator = new float[1 + ilbc_constants.LPC_FILTERORDER];
-		float[] foutbuf = new float[ilbc_constants.LPC_FILTERORDER + 2
-			* ilbc_constants.STATE_SHORT_LEN_30MS];
+		float[] numerator = this.StateSearchW_numerator;
+		float[] foutbuf = this.StateSearchW_foutbuf;
 		// , *fout;
 		int fout;
 		int k;
@@ -245,17 +329,17 @@ class ilbc_encoder
 	void a2lsf(float freq[],/* (o) lsf coefficients */
 		int freq_idx, float a[]) /* (i) lpc coefficients */
 	{
-		float[] steps = { 0.00635f, 0.003175f, 0.0015875f, 0.00079375f };
+		float[] steps = a2lsf_steps;
 		float step;
 		int step_idx;
 		int lsp_index;
-		float[] p = new float[ilbc_constants.LPC_HALFORDER];
-		float[] q = new float[ilbc_constants.LPC_HALFORDER];
-		float[] p_pre = new float[ilbc_constants.LPC_HALFORDER];
-		float[] q_pre = new float[ilbc_constants.LPC_HALFORDER];
+		float[] p = this.a2lsf_p;
+		float[] q = this.a2lsf_q;
+		float[] p_pre = this.a2lsf_p_pre;
+		float[] q_pre = this.a2lsf_q_pre;
 		int old_p = 0, old_q = 1;
 		// float *old;
-		float[] olds = new float[2];
+		float[] olds = this.a2lsf_olds;
 		int old;
 		// float *pq_coef;
 		float[] pq_coef;
@@ -390,10 +474,10 @@ class ilbc_encoder
 		float data[]) /* (i) new data vector */
 	{
 		int k, is;
-		float[] temp = new float[ilbc_constants.BLOCKL_MAX];
-		float[] lp = new float[ilbc_constants.LPC_FILTERORDER + 1];
-		float[] lp2 = new float[ilbc_constants.LPC_FILTERORDER + 1];
-		float[] r = new float[ilbc_constants.LPC_FILTERORDER + 1];
+		float[] temp = this.SimpleAnalysis_temp;
+		float[] lp = this.SimpleAnalysis_lp;
+		float[] lp2 = this.SimpleAnalysis_lp2;
+		float[] r = this.SimpleAnalysis_r;
 
 		is = ilbc_constants.LPC_LOOKBACK + ilbc_constants.BLOCKL_MAX - this.ULP_inst.blockl;
 		// System.out.println("copie 1");
@@ -452,10 +536,10 @@ class ilbc_encoder
 		long length /* (i) length of coefficient vectors */
 	)
 	{
-		float[] lsftmp = new float[ilbc_constants.LPC_FILTERORDER];
+		float[] lsftmp = this.LSFinterpolate2a_enc_lsftmp;
 
 		ilbc_common.interpolate(lsftmp, lsf1, lsf2, lsf2_idx, coef, ((int) length));
-		ilbc_common.lsf2a(a, lsftmp);
+		ilbc_common.lsf2a(a, lsftmp, this.scratch);
 	}
 
 	/*----------------------------------------------------------------*
@@ -481,7 +565,7 @@ class ilbc_encoder
 		int length) /* (i) should equate LPC_FILTERORDER */
 	{
 		int i, pos, lp_length;
-		float[] lp = new float[ilbc_constants.LPC_FILTERORDER + 1];
+		float[] lp = this.SimpleInterpolateLSF_lp;
 		int lsf2, lsfdeq2;
 
 		lsf2 = length;
@@ -531,12 +615,9 @@ class ilbc_encoder
 					ilbc_constants.lsf_weightTbl_20ms[i], length);
 				// System.out.println("ici !");
 				System.arraycopy(lp, 0, syntdenum, pos, lp_length);
-				for (int li = 0; li < lp_length; li++)
-					// System.out.println("interpolate syntdenum [" + (li+pos) +"] is worth " +
-					// syntdenum[li+pos]);
-					// memcpy(syntdenum+pos,lp,lp_length*sizeof(float));
-					LSFinterpolate2a_enc(lp, lsfold, lsf, 0, ilbc_constants.lsf_weightTbl_20ms[i],
-						length);
+				// memcpy(syntdenum+pos,lp,lp_length*sizeof(float));
+				LSFinterpolate2a_enc(lp, lsfold, lsf, 0, ilbc_constants.lsf_weightTbl_20ms[i],
+					length);
 				ilbc_common.bwexpand(weightdenum, pos, lp, ilbc_constants.LPC_CHIRP_WEIGHTDENUM,
 					lp_length);
 				pos += lp_length;
@@ -599,8 +680,8 @@ class ilbc_encoder
 		int lsf_index[], /* (o) lsf quantization index */
 		float data[]) /* (i) lsf coefficients to quantize */
 	{
-		float[] lsf = new float[ilbc_constants.LPC_FILTERORDER * ilbc_constants.LPC_N_MAX];
-		float[] lsfdeq = new float[ilbc_constants.LPC_FILTERORDER * ilbc_constants.LPC_N_MAX];
+		float[] lsf = this.LPCencode_lsf;
+		float[] lsfdeq = this.LPCencode_lsfdeq;
 
 		SimpleAnalysis(lsf, data);
 		// for (int li = 0; li < ilbc_constants.LPC_FILTERORDER * ilbc_constants.LPC_N_MAX; li++)
@@ -635,26 +716,25 @@ class ilbc_encoder
 		int block) /* (i) the sub-block number */
 	{
 		int i, j, icount, stage, best_index, range, counter;
-		float max_measure, gain, measure, crossDot, ftmp;
-		float[] gains = new float[ilbc_constants.CB_NSTAGES];
-		float[] target = new float[ilbc_constants.SUBL];
+		float max_measure, gain, measure, crossDot, ftmp, nrj;
+		float[] gains = this.iCBSearch_gains;
+		float[] target = this.iCBSearch_target;
 		int base_index, sInd, eInd, base_size;
 		int sIndAug = 0, eIndAug = 0;
-		float[] buf = new float[ilbc_constants.CB_MEML + ilbc_constants.SUBL + 2
-			* ilbc_constants.LPC_FILTERORDER];
-		float[] invenergy = new float[ilbc_constants.CB_EXPAND * 128];
-		float[] energy = new float[ilbc_constants.CB_EXPAND * 128];
+		float[] buf = this.iCBSearch_buf;
+		float[] invenergy = this.iCBSearch_invenergy;
+		float[] energy = this.iCBSearch_energy;
 		// float *pp, *ppi=0, *ppo=0, *ppe=0;
 		int pp, ppi = 0, ppo = 0, ppe = 0;
 		float[] ppt;
-		float[] cbvectors = new float[ilbc_constants.CB_MEML];
+		float[] cbvectors = this.iCBSearch_cbvectors;
 		float tene, cene;
-		float[] cvec = new float[ilbc_constants.SUBL];
-		float[] aug_vec = new float[ilbc_constants.SUBL];
+		float[] cvec = this.iCBSearch_cvec;
+		float[] aug_vec = this.iCBSearch_aug_vec;
 
-		float[] a = new float[1];
-		int[] b = new int[1];
-		float[] c = new float[1];
+		float[] a = this.iCBSearch_a;
+		int[] b = this.iCBSearch_b;
+		float[] c = this.iCBSearch_c;
 
 		for (int li = 0; li < ilbc_constants.SUBL; li++)
 			cvec[li] = 0.0f;
@@ -754,13 +834,14 @@ class ilbc_encoder
 				// ppi = buf+ilbc_constants.LPC_FILTERORDER+lMem-lTarget-1;
 				// ppo = buf+ilbc_constants.LPC_FILTERORDER+lMem-1;
 
-				energy[ppe] = 0.0f;
+				nrj = 0.0f;
 				pp = ilbc_constants.LPC_FILTERORDER + lMem - lTarget;
 				// pp=buf+ilbc_constants.LPC_FILTERORDER+lMem-lTarget;
 				for (j = 0; j < lTarget; j++) {
-					energy[ppe] += (buf[pp]) * (buf[pp]);
+					nrj += (buf[pp]) * (buf[pp]);
 					pp++;
 				}
+				energy[ppe] = nrj;
 
 				if (energy[ppe] > 0.0f) {
 					invenergy[0] = 1.0f / (energy[ppe] + ilbc_constants.EPS);
@@ -962,14 +1043,15 @@ class ilbc_encoder
 			if (stage == 0) {
 				// ppe = energy+base_size;
 				ppe = base_size;
-				energy[ppe] = 0.0f;
+				nrj = 0.0f;
 
 				pp = lMem - lTarget;
 				// pp=cbvectors+lMem-lTarget;
 				for (j = 0; j < lTarget; j++) {
-					energy[ppe] += (cbvectors[pp]) * (cbvectors[pp]);
+					nrj += (cbvectors[pp]) * (cbvectors[pp]);
 					pp++;
 				}
+				energy[ppe] = nrj;
 
 				ppi = lMem - 1 - lTarget;
 				ppo = lMem - 1;
@@ -1436,15 +1518,15 @@ class ilbc_encoder
 	float residual[]) /* (i) lpc residual signal */
 	{
 		float max_ssqEn;
-		float[] fssqEn = new float[ilbc_constants.NSUB_MAX];
-		float[] bssqEn = new float[ilbc_constants.NSUB_MAX];
+		float[] fssqEn = this.FrameClassify_fssqEn;
+		float[] bssqEn = this.FrameClassify_bssqEn;
 		int pp;
 		int n, l, max_ssqEn_n;
 		// float [] ssqEn_win[NSUB_MAX-1]={(float)0.8,(float)0.9,
 
-		float[] ssqEn_win = { 0.8f, 0.9f, 1.0f, 0.9f, 0.8f };
+		float[] ssqEn_win = FrameClassify_ssqEn_win;
 
-		float[] sampEn_win = { 1.0f / 6.0f, 2.0f / 6.0f, 3.0f / 6.0f, 4.0f / 6.0f, 5.0f / 6.0f };
+		float[] sampEn_win = FrameClassify_sampEn_win;
 
 		/* init the front and back energies to zero */
 
@@ -1533,6 +1615,7 @@ class ilbc_encoder
 	{
 		int i, j;
 		int po, pi, pm, pa;
+		float o;
 
 		po = out_idx;
 
@@ -1542,18 +1625,19 @@ class ilbc_encoder
 			pi = in_idx + i;
 			pm = ilbc_constants.LPC_FILTERORDER - 1;
 			pa = a_idx;
-			Out[po] = 0.0f;
+			o = 0.0f;
 
 			for (j = 0; j <= i; j++) {
-				Out[po] += a[pa] * In[pi];
+				o += a[pa] * In[pi];
 				pa++;
 				pi--;
 			}
 			for (j = i + 1; j < ilbc_constants.LPC_FILTERORDER + 1; j++) {
-				Out[po] += a[pa] * mem[pm];
+				o += a[pa] * mem[pm];
 				pa++;
 				pm--;
 			}
+			Out[po] = o;
 			po++;
 		}
 
@@ -1564,12 +1648,13 @@ class ilbc_encoder
 		for (i = ilbc_constants.LPC_FILTERORDER; i < len; i++) {
 			pi = in_idx + i;
 			pa = a_idx;
-			Out[po] = 0.0f;
+			o = 0.0f;
 			for (j = 0; j < ilbc_constants.LPC_FILTERORDER + 1; j++) {
-				Out[po] += a[pa] * In[pi];
+				o += a[pa] * In[pi];
 				pa++;
 				pi--;
 			}
+			Out[po] = o;
 			po++;
 		}
 
@@ -1591,8 +1676,9 @@ class ilbc_encoder
 		int pp, pp1;
 		float tempbuff2[];
 		int pos;
+		float o;
 
-		tempbuff2 = new float[ilbc_constants.CB_MEML + ilbc_constants.CB_FILTERLEN];
+		tempbuff2 = this.filteredCBvecs_tempbuff2;
 
 		for (i = 0; i < ilbc_constants.CB_HALFFILTERLEN; i++)
 			tempbuff2[i] = 0.0f;
@@ -1604,18 +1690,18 @@ class ilbc_encoder
 
 		/* do filtering */
 		pos = 0;
-		for (i = 0; i < lMem; i++)
-			cbvectors[i] = 0;
 		for (k = 0; k < lMem; k++) {
 			// pp=&tempbuff2[k];
 			pp = k;
 			// pp1=&cbfiltersTbl[CB_FILTERLEN-1];
 			pp1 = ilbc_constants.CB_FILTERLEN - 1;
+			o = 0.0f;
 			for (j = 0; j < ilbc_constants.CB_FILTERLEN; j++) {
-				cbvectors[pos] += tempbuff2[pp] * ilbc_constants.cbfiltersTbl[pp1];
+				o += tempbuff2[pp] * ilbc_constants.cbfiltersTbl[pp1];
 				pp++;
 				pp1--;
 			}
+			cbvectors[pos] = o;
 			pos++;
 		}
 	}
@@ -1650,7 +1736,7 @@ class ilbc_encoder
 		int pp, ppo, ppi, ppe;
 		float crossDot, alfa;
 		float weighted, measure, nrjRecursive;
-		float ftmp;
+		float ftmp, nrj;
 
 		/*
 		 * Compute the energy for the first (low-5) noninterpolated samples
@@ -1682,7 +1768,7 @@ class ilbc_encoder
 			/* Update the energy recursively to save complexity */
 			nrjRecursive = nrjRecursive + buffer[ppe] * buffer[ppe];
 			ppe--;
-			energy[tmpIndex] = nrjRecursive;
+			nrj = nrjRecursive;
 
 			/*
 			 * Compute cross dot product for the first (low-5) samples
@@ -1703,7 +1789,7 @@ class ilbc_encoder
 				weighted = (1.0f - alfa) * (buffer[ppo]) + alfa * (buffer[ppi]);
 				ppo++;
 				ppi++;
-				energy[tmpIndex] += weighted * weighted;
+				nrj += weighted * weighted;
 				crossDot += target[j] * weighted;
 				alfa += (float) 0.2;
 			}
@@ -1713,10 +1799,11 @@ class ilbc_encoder
 			 */
 			pp = buffer_idx - icount;
 			for (j = icount; j < ilbc_constants.SUBL; j++) {
-				energy[tmpIndex] += buffer[pp] * buffer[pp];
+				nrj += buffer[pp] * buffer[pp];
 				crossDot += target[j] * buffer[pp];
 				pp++;
 			}
+			energy[tmpIndex] = nrj;
 
 			if (energy[tmpIndex] > 0.0f) {
 				invenergy[tmpIndex] = 1.0f / (energy[tmpIndex] + ilbc_constants.EPS);
@@ -1861,11 +1948,12 @@ class ilbc_encoder
 	// }
 	public int encode(byte[] encoded, int encodedOffset, byte[] decoded, int decodedOffset)
 	{
-		float block[] = new float[this.ULP_inst.blockl];
-		bitstream en_data = new bitstream(encoded, encodedOffset, this.ULP_inst.no_of_bytes);
+		float block[] = this.encode_block;
 		// char en_data[] = new char [this.ULP_inst.no_of_bytes];
 		int k;
 
+		en_data.init(encoded, encodedOffset, this.ULP_inst.no_of_bytes);
+
 		/* convert signal to float */
 		for (k = 0; k < this.ULP_inst.blockl; k++, decodedOffset += 2)
 			block[k] = ArrayIOUtils.readShort(decoded, decodedOffset);
@@ -1885,7 +1973,7 @@ class ilbc_encoder
 		float block[]) /* (o) speech vector to encode */
 	{
 		int start;
-		int[] idxForMax = new int[1];
+		int[] idxForMax = this.iLBC_encode_idxForMax;
 		int n, k, meml_gotten, Nfor, Nback, i;
 		// unsigned char *pbytes;
 		int diff, start_pos, state_first;
@@ -1895,28 +1983,24 @@ class ilbc_encoder
 		int firstpart;
 		int subcount, subframe;
 
-		float[] data = new float[ilbc_constants.BLOCKL_MAX];
-		float[] residual = new float[ilbc_constants.BLOCKL_MAX];
-		float[] reverseResidual = new float[ilbc_constants.BLOCKL_MAX];
-
-		int[] idxVec = new int[ilbc_constants.STATE_LEN];
-		float[] reverseDecresidual = new float[ilbc_constants.BLOCKL_MAX];
-		float[] mem = new float[ilbc_constants.CB_MEML];
+		float[] data = this.iLBC_encode_data;
+		float[] residual = this.iLBC_encode_residual;
+		float[] reverseResidual = this.iLBC_encode_reverseResidual;
 
-		int[] gain_index = new int[ilbc_constants.CB_NSTAGES * ilbc_constants.NASUB_MAX];
-		int[] extra_gain_index = new int[ilbc_constants.CB_NSTAGES];
-		int[] cb_index = new int[ilbc_constants.CB_NSTAGES * ilbc_constants.NASUB_MAX];
-		int[] extra_cb_index = new int[ilbc_constants.CB_NSTAGES];
-		int[] lsf_i = new int[ilbc_constants.LSF_NSPLIT * ilbc_constants.LPC_N_MAX];
+		int[] idxVec = this.iLBC_encode_idxVec;
+		float[] reverseDecresidual = this.iLBC_encode_reverseDecresidual;
+		float[] mem = this.iLBC_encode_mem;
 
-		float[] weightState = new float[ilbc_constants.LPC_FILTERORDER];
-		float[] syntdenum = new float[ilbc_constants.NSUB_MAX
-			* (ilbc_constants.LPC_FILTERORDER + 1)];
-		float[] weightdenum = new float[ilbc_constants.NSUB_MAX
-			* (ilbc_constants.LPC_FILTERORDER + 1)];
-		float[] decresidual = new float[ilbc_constants.BLOCKL_MAX];
+		int[] gain_index = this.iLBC_encode_gain_index;
+		int[] extra_gain_index = this.iLBC_encode_extra_gain_index;
+		int[] cb_index = this.iLBC_encode_cb_index;
+		int[] extra_cb_index = this.iLBC_encode_extra_cb_index;
+		int[] lsf_i = this.iLBC_encode_lsf_i;
 
-		bitpack pack;
+		float[] weightState = this.iLBC_encode_weightState;
+		float[] syntdenum = this.iLBC_encode_syntdenum;
+		float[] weightdenum = this.iLBC_encode_weightdenum;
+		float[] decresidual = this.iLBC_encode_decresidual;
 
 		/*
 		 * high pass filtering of input signal if such is not done prior to calling this function
@@ -1997,7 +2081,7 @@ class ilbc_encoder
 
 		ilbc_common.StateConstructW(idxForMax[0], idxVec, syntdenum, (start - 1)
 			* (ilbc_constants.LPC_FILTERORDER + 1), decresidual, start_pos,
-			this.ULP_inst.state_short_len);
+			this.ULP_inst.state_short_len, this.scratch);
 
 		/* predictive quantization in state */
 
@@ -2028,7 +2112,7 @@ class ilbc_encoder
 			ilbc_common.iCBConstruct(decresidual, start_pos + this.ULP_inst.state_short_len,
 				extra_cb_index, 0, extra_gain_index, 0, mem, ilbc_constants.CB_MEML
 					- ilbc_constants.stMemLTbl, ilbc_constants.stMemLTbl, diff,
-				ilbc_constants.CB_NSTAGES);
+				ilbc_constants.CB_NSTAGES, this.scratch);
 
 		}
 		else { /* put adaptive part in the beginning */
@@ -2064,7 +2148,7 @@ class ilbc_encoder
 
 			ilbc_common.iCBConstruct(reverseDecresidual, 0, extra_cb_index, 0, extra_gain_index, 0,
 				mem, ilbc_constants.CB_MEML - ilbc_constants.stMemLTbl, ilbc_constants.stMemLTbl,
-				diff, ilbc_constants.CB_NSTAGES);
+				diff, ilbc_constants.CB_NSTAGES, this.scratch);
 
 			/* get decoded residual from reversed vector */
 
@@ -2117,7 +2201,7 @@ class ilbc_encoder
 					cb_index, subcount * ilbc_constants.CB_NSTAGES, gain_index, subcount
 						* ilbc_constants.CB_NSTAGES, mem, ilbc_constants.CB_MEML
 						- ilbc_constants.memLfTbl[subcount], ilbc_constants.memLfTbl[subcount],
-					ilbc_constants.SUBL, ilbc_constants.CB_NSTAGES);
+					ilbc_constants.SUBL, ilbc_constants.CB_NSTAGES, this.scratch);
 
 				/* update memory */
 
@@ -2192,7 +2276,7 @@ class ilbc_encoder
 					cb_index, subcount * ilbc_constants.CB_NSTAGES, gain_index, subcount
 						* ilbc_constants.CB_NSTAGES, mem, ilbc_constants.CB_MEML
 						- ilbc_constants.memLfTbl[subcount], ilbc_constants.memLfTbl[subcount],
-					ilbc_constants.SUBL, ilbc_constants.CB_NSTAGES);
+					ilbc_constants.SUBL, ilbc_constants.CB_NSTAGES, this.scratch);
 
 				/* update memory */
 
@@ -2236,9 +2320,9 @@ class ilbc_encoder
 			// System.out.println("ULP Class " + ulp);
 			for (k = 0; k < ilbc_constants.LSF_NSPLIT * this.ULP_inst.lpc_n; k++) {
 				// System.out.println("LSF " + k);
-				pack = bytes.packsplit(lsf_i[k], this.ULP_inst.lsf_bits[k][ulp],
+				bytes.packsplit(lsf_i[k], this.ULP_inst.lsf_bits[k][ulp],
 					this.ULP_inst.lsf_bits[k][ulp] + this.ULP_inst.lsf_bits[k][ulp + 1]
-						+ this.ULP_inst.lsf_bits[k][ulp + 2]);
+						+ this.ULP_inst.lsf_bits[k][ulp + 2], pack);
 				firstpart = pack.get_firstpart();
 				lsf_i[k] = pack.get_rest();
 				bytes.dopack(firstpart, this.ULP_inst.lsf_bits[k][ulp]);
@@ -2248,26 +2332,26 @@ class ilbc_encoder
 
 			// System.out.println("start bits");
 
-			pack = bytes.packsplit(start, this.ULP_inst.start_bits[ulp],
+			bytes.packsplit(start, this.ULP_inst.start_bits[ulp],
 				this.ULP_inst.start_bits[ulp] + this.ULP_inst.start_bits[ulp + 1]
-					+ this.ULP_inst.start_bits[ulp + 2]);
+					+ this.ULP_inst.start_bits[ulp + 2], pack);
 			firstpart = pack.get_firstpart();
 			start = pack.get_rest();
 			bytes.dopack(firstpart, this.ULP_inst.start_bits[ulp]);
 
 			// System.out.println("startfirst bits");
 
-			pack = bytes.packsplit(state_first, this.ULP_inst.startfirst_bits[ulp],
+			bytes.packsplit(state_first, this.ULP_inst.startfirst_bits[ulp],
 				this.ULP_inst.startfirst_bits[ulp] + this.ULP_inst.startfirst_bits[ulp + 1]
-					+ this.ULP_inst.startfirst_bits[ulp + 2]);
+					+ this.ULP_inst.startfirst_bits[ulp + 2], pack);
 			firstpart = pack.get_firstpart();
 			state_first = pack.get_rest();
 			bytes.dopack(firstpart, this.ULP_inst.startfirst_bits[ulp]);
 
 			// System.out.println("scale bits");
-			pack = bytes.packsplit(idxForMax[0], this.ULP_inst.scale_bits[ulp],
+			bytes.packsplit(idxForMax[0], this.ULP_inst.scale_bits[ulp],
 				this.ULP_inst.scale_bits[ulp] + this.ULP_inst.scale_bits[ulp + 1]
-					+ this.ULP_inst.scale_bits[ulp + 2]);
+					+ this.ULP_inst.scale_bits[ulp + 2], pack);
 			firstpart = pack.get_firstpart();
 			idxForMax[0] = pack.get_rest();
 			bytes.dopack(firstpart, this.ULP_inst.scale_bits[ulp]);
@@ -2275,9 +2359,9 @@ class ilbc_encoder
 			// System.out.println("state bits");
 			for (k = 0; k < this.ULP_inst.state_short_len; k++) {
 				// System.out.println("state short len #" + k);
-				pack = bytes.packsplit(idxVec[k], this.ULP_inst.state_bits[ulp],
+				bytes.packsplit(idxVec[k], this.ULP_inst.state_bits[ulp],
 					this.ULP_inst.state_bits[ulp] + this.ULP_inst.state_bits[ulp + 1]
-						+ this.ULP_inst.state_bits[ulp + 2]);
+						+ this.ULP_inst.state_bits[ulp + 2], pack);
 				firstpart = pack.get_firstpart();
 				idxVec[k] = pack.get_rest();
 				bytes.dopack(firstpart, this.ULP_inst.state_bits[ulp]);
@@ -2287,9 +2371,9 @@ class ilbc_encoder
 
 			// System.out.println("extra_cb_index");
 			for (k = 0; k < ilbc_constants.CB_NSTAGES; k++) {
-				pack = bytes.packsplit(extra_cb_index[k], this.ULP_inst.extra_cb_index[k][ulp],
+				bytes.packsplit(extra_cb_index[k], this.ULP_inst.extra_cb_index[k][ulp],
 					this.ULP_inst.extra_cb_index[k][ulp] + this.ULP_inst.extra_cb_index[k][ulp + 1]
-						+ this.ULP_inst.extra_cb_index[k][ulp + 2]);
+						+ this.ULP_inst.extra_cb_index[k][ulp + 2], pack);
 				firstpart = pack.get_firstpart();
 				extra_cb_index[k] = pack.get_rest();
 				bytes.dopack(firstpart, this.ULP_inst.extra_cb_index[k][ulp]);
@@ -2297,9 +2381,9 @@ class ilbc_encoder
 
 			// System.out.println("extra_cb_gain");
 			for (k = 0; k < ilbc_constants.CB_NSTAGES; k++) {
-				pack = bytes.packsplit(extra_gain_index[k], this.ULP_inst.extra_cb_gain[k][ulp],
+				bytes.packsplit(extra_gain_index[k], this.ULP_inst.extra_cb_gain[k][ulp],
 					this.ULP_inst.extra_cb_gain[k][ulp] + this.ULP_inst.extra_cb_gain[k][ulp + 1]
-						+ this.ULP_inst.extra_cb_gain[k][ulp + 2]);
+						+ this.ULP_inst.extra_cb_gain[k][ulp + 2], pack);
 				firstpart = pack.get_firstpart();
 				extra_gain_index[k] = pack.get_rest();
 				// this.ULP_inst.extra_cb_gain[k][ulp] = pack.get_rest();
@@ -2312,10 +2396,10 @@ class ilbc_encoder
 
 			for (i = 0; i < this.ULP_inst.nasub; i++) {
 				for (k = 0; k < ilbc_constants.CB_NSTAGES; k++) {
-					pack = bytes.packsplit(cb_index[i * ilbc_constants.CB_NSTAGES + k],
+					bytes.packsplit(cb_index[i * ilbc_constants.CB_NSTAGES + k],
 						this.ULP_inst.cb_index[i][k][ulp], this.ULP_inst.cb_index[i][k][ulp]
 							+ this.ULP_inst.cb_index[i][k][ulp + 1]
-							+ this.ULP_inst.cb_index[i][k][ulp + 2]);
+							+ this.ULP_inst.cb_index[i][k][ulp + 2], pack);
 					firstpart = pack.get_firstpart();
 					cb_index[i * ilbc_constants.CB_NSTAGES + k] = pack.get_rest();
 					bytes.dopack(firstpart, this.ULP_inst.cb_index[i][k][ulp]);
@@ -2325,10 +2409,10 @@ class ilbc_encoder
 			// System.out.println("cb_gain");
 			for (i = 0; i < this.ULP_inst.nasub; i++) {
 				for (k = 0; k < ilbc_constants.CB_NSTAGES; k++) {
-					pack = bytes.packsplit(gain_index[i * ilbc_constants.CB_NSTAGES + k],
+					bytes.packsplit(gain_index[i * ilbc_constants.CB_NSTAGES + k],
 						this.ULP_inst.cb_gain[i][k][ulp], this.ULP_inst.cb_gain[i][k][ulp]
 							+ this.ULP_inst.cb_gain[i][k][ulp + 1]
-							+ this.ULP_inst.cb_gain[i][k][ulp + 2]);
+							+ this.ULP_inst.cb_gain[i][k][ulp + 2], pack);
 					firstpart = pack.get_firstpart();
 					gain_index[i * ilbc_constants.CB_NSTAGES + k] = pack.get_rest();
 					bytes.dopack(firstpart, this.ULP_inst.cb_gain[i][k][ulp]);
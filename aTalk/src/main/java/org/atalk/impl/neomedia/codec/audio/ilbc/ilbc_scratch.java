@@ -0,0 +1,42 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.codec.audio.ilbc;
+
+/**
+ * Scratch buffers of the <code>ilbc_common</code> functions, not part of the encoder or decoder
+ * state. Each <code>ilbc_encoder</code> and <code>ilbc_decoder</code> owns one instance so that
+ * no array is allocated per frame; an instance must not be shared between threads.
+ *
+ * @author Eng Chong Meng
+ */
+class ilbc_scratch
+{
+	/* StateConstructW() */
+	final float[] StateConstructW_tmpbuf = new float[ilbc_constants.LPC_FILTERORDER + 2
+		* ilbc_constants.STATE_LEN];
+	final float[] StateConstructW_numerator = new float[ilbc_constants.LPC_FILTERORDER + 1];
+	final float[] StateConstructW_foutbuf = new float[ilbc_constants.LPC_FILTERORDER + 2
+		* ilbc_constants.STATE_LEN];
+
+	/* lsf2a() */
+	final float[] lsf2a_p = new float[ilbc_constants.LPC_HALFORDER];
+	final float[] lsf2a_q = new float[ilbc_constants.LPC_HALFORDER];
+	final float[] lsf2a_a = new float[ilbc_constants.LPC_HALFORDER + 1];
+	final float[] lsf2a_a1 = new float[ilbc_constants.LPC_HALFORDER];
+	final float[] lsf2a_a2 = new float[ilbc_constants.LPC_HALFORDER];
+	final float[] lsf2a_b = new float[ilbc_constants.LPC_HALFORDER + 1];
+	final float[] lsf2a_b1 = new float[ilbc_constants.LPC_HALFORDER];
+	final float[] lsf2a_b2 = new float[ilbc_constants.LPC_HALFORDER];
+
+	/* getCBvec() */
+	final float[] getCBvec_tmpbuf = new float[ilbc_constants.CB_MEML];
+	final float[] getCBvec_tempbuff2 = new float[ilbc_constants.CB_MEML
+		+ ilbc_constants.CB_FILTERLEN + 1];
+
+	/* iCBConstruct() */
+	final float[] iCBConstruct_gain = new float[ilbc_constants.CB_NSTAGES];
+	final float[] iCBConstruct_cbvec = new float[ilbc_constants.SUBL];
+}
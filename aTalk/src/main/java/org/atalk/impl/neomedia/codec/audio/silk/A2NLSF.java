@@ -129,28 +129,27 @@ public class A2NLSF extends A2NLSF_constants
 	 *        Monic whitening filter coefficients in Q16 [d]
 	 * @param d
 	 *        Filter order (must be even)
+	 * @param scratch
+	 *        Scratch buffers.
 	 */
 	static void SKP_Silk_A2NLSF(int[] NLSF, /*
 											 * O Normalized Line Spectral Frequencies, Q15 (0 -
 											 * (2^15-1)), [d]
 											 */
 		int[] a_Q16, /* I/O Monic whitening filter coefficients in Q16 [d] */
-		final int d /* I Filter order (must be even) */
+		final int d, /* I Filter order (must be even) */
+		SKP_Silk_sigproc_scratch scratch /* I/O Scratch buffers */
 	)
 	{
 		int i, k, m, dd, root_ix, ffrac;
 		int xlo, xhi, xmid;
 		int ylo, yhi, ymid;
 		int nom, den;
-		int[] P = new int[SigProcFIX.SKP_Silk_MAX_ORDER_LPC / 2 + 1];
-		int[] Q = new int[SigProcFIX.SKP_Silk_MAX_ORDER_LPC / 2 + 1];
-		int[][] PQ = new int[2][];
+		int[] P = scratch.A2NLSF_P;
+		int[] Q = scratch.A2NLSF_Q;
+		int[][] PQ = scratch.A2NLSF_PQ; /* Pointers to P and Q */
 		int[] p;
 
-		/* Store pointers to array */
-		PQ[0] = P;
-		PQ[1] = Q;
-
 		dd = d >> 1;
 
 		SKP_Silk_A2NLSF_init(a_Q16, P, Q, dd);
@@ -8,8 +8,6 @@ package org.atalk.impl.neomedia.codec.audio.silk;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.CNG_BUF_MASK_MAX;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.CNG_GAIN_SMTH_Q16;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.CNG_NLSF_SMTH_Q16;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_FRAME_LENGTH;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LPC_ORDER;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NB_SUBFR;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NO_VOICE_ACTIVITY;
 import static org.atalk.impl.neomedia.codec.audio.silk.Macros.SKP_SMULWB;
@@ -117,8 +115,8 @@ public class CNG
 	{
 		int i, subfr;
 		int tmp_32, Gain_Q26, max_Gain_Q16;
-		short[] LPC_buf = new short[MAX_LPC_ORDER];
-		short[] CNG_sig = new short[MAX_FRAME_LENGTH];
+		short[] LPC_buf = psDec.sScratch.CNG_LPC_buf;
+		short[] CNG_sig = psDec.sScratch.CNG_sig;
 
 		SKP_Silk_CNG_struct psCNG;
 
@@ -163,7 +161,7 @@ public class CNG
 		if (psDec.lossCnt != 0) {// || psDec.vadFlag == NO_VOICE_ACTIVITY ) {
 
 			/* Generate CNG excitation */
-			int[] psCNG_rand_seed_ptr = new int[1];
+			int[] psCNG_rand_seed_ptr = psDec.sScratch.CNG_rand_seed_ptr;
 			psCNG_rand_seed_ptr[0] = psCNG.rand_seed;
 
 			SKP_Silk_CNG_exc(CNG_sig, 0, psCNG.CNG_exc_buf_Q10, 0, psCNG.CNG_smth_Gain_Q16, length,
@@ -171,7 +169,8 @@ public class CNG
 			psCNG.rand_seed = psCNG_rand_seed_ptr[0];
 
 			/* Convert CNG NLSF to filter representation */
-			NLSF2AStable.SKP_Silk_NLSF2A_stable(LPC_buf, psCNG.CNG_smth_NLSF_Q15, psDec.LPC_order);
+			NLSF2AStable.SKP_Silk_NLSF2A_stable(LPC_buf, psCNG.CNG_smth_NLSF_Q15, psDec.LPC_order,
+				psDec.sScratch);
 
 			Gain_Q26 = 1 << 26; /* 1.0 */
 
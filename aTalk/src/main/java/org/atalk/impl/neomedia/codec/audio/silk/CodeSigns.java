@@ -53,7 +53,7 @@ public class CodeSigns
 	{
 		int i;
 		int inData;
-		int[] cdf = new int[3];
+		int[] cdf = sRC.signs_cdf;
 
 		i = SKP_SMULBB(Define.N_RATE_LEVELS - 1, (sigtype << 1) + QuantOffsetType) + RateLevelIndex;
 		cdf[0] = 0;
@@ -95,8 +95,8 @@ public class CodeSigns
 	{
 		int i;
 		int data;
-		int data_ptr[] = new int[1];
-		int[] cdf = new int[3];
+		int data_ptr[] = sRC.data_ptr;
+		int[] cdf = sRC.signs_cdf;
 
 		i = SKP_SMULBB(Define.N_RATE_LEVELS - 1, (sigtype << 1) + QuantOffsetType) + RateLevelIndex;
 		cdf[0] = 0;
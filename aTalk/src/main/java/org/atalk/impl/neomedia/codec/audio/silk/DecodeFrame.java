@@ -48,10 +48,11 @@ public class DecodeFrame
 		int[] decBytes /* O Used bytes to decode this frame */
 	)
 	{
-		SKP_Silk_decoder_control sDecCtrl = new SKP_Silk_decoder_control();
+		SKP_Silk_decoder_control sDecCtrl = psDec.sScratch.sDecCtrl;
 		int L, fs_Khz_old, LPC_order_old, ret = 0;
-		int[] Pulses = new int[Define.MAX_FRAME_LENGTH];
+		int[] Pulses = psDec.sScratch.frame_Pulses;
 
+		sDecCtrl.memZero();
 		L = psDec.frame_length;
 		sDecCtrl.LTP_scale_Q14 = 0;
 
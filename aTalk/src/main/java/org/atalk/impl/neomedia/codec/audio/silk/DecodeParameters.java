@@ -33,13 +33,14 @@ public class DecodeParameters
 		final int fullDecoding /* I Flag to tell if only arithmetic decoding */
 	)
 	{
+		SKP_Silk_decoder_scratch scratch = psDec.sScratch;
 		int i, k, Ix, fs_kHz_dec, nBytesUsed;
-		int[] Ix_ptr = new int[1];
-		int[] Ixs = new int[Define.NB_SUBFR];
-		int[] GainsIndices = new int[Define.NB_SUBFR];
-		int[] NLSFIndices = new int[Define.NLSF_MSVQ_MAX_CB_STAGES];
-		int[] pNLSF_Q15 = new int[Define.MAX_LPC_ORDER];
-		int[] pNLSF0_Q15 = new int[Define.MAX_LPC_ORDER];
+		int[] Ix_ptr = scratch.param_Ix_ptr;
+		int[] Ixs = scratch.param_Ixs;
+		int[] GainsIndices = scratch.param_GainsIndices;
+		int[] NLSFIndices = scratch.param_NLSFIndices;
+		int[] pNLSF_Q15 = scratch.param_pNLSF_Q15;
+		int[] pNLSF0_Q15 = scratch.param_pNLSF0_Q15;
 
 		short[] cbk_ptr_Q14;
 		SKP_Silk_NLSF_CB_struct psNLSF_CB = null;
@@ -108,7 +109,7 @@ public class DecodeParameters
 		}
 
 		/* Dequant Gains */
-		int LastGainIndex_ptr[] = new int[1];
+		int LastGainIndex_ptr[] = scratch.param_ptr;
 		LastGainIndex_ptr[0] = psDec.LastGainIndex;
 		GainQuant.SKP_Silk_gains_dequant(psDecCtrl.Gains_Q16, GainsIndices, LastGainIndex_ptr,
 			psDec.nFramesDecoded);
@@ -131,7 +132,7 @@ public class DecodeParameters
 		/************************************/
 		/* Decode NLSF interpolation factor */
 		/************************************/
-		int[] NLSFInterpCoef_Q2_ptr = new int[1];
+		int[] NLSFInterpCoef_Q2_ptr = scratch.param_ptr;
 		NLSFInterpCoef_Q2_ptr[0] = psDecCtrl.NLSFInterpCoef_Q2;
 
 		RangeCoder.SKP_Silk_range_decoder(NLSFInterpCoef_Q2_ptr, 0, psRC,
@@ -148,7 +149,7 @@ public class DecodeParameters
 		if (fullDecoding != 0) {
 			/* Convert NLSF parameters to AR prediction filter coefficients */
 			NLSF2AStable.SKP_Silk_NLSF2A_stable(psDecCtrl.PredCoef_Q12[1], pNLSF_Q15,
-				psDec.LPC_order);
+				psDec.LPC_order, scratch);
 			if (psDecCtrl.NLSFInterpCoef_Q2 < 4) {
 				/* Calculation of the interpolated NLSF0 vector from the interpolation factor, */
 				/* the previous NLSF1, and the current NLSF1 */
@@ -159,7 +160,7 @@ public class DecodeParameters
 
 				/* Convert NLSF parameters to AR prediction filter coefficients */
 				NLSF2AStable.SKP_Silk_NLSF2A_stable(psDecCtrl.PredCoef_Q12[0], pNLSF0_Q15,
-					psDec.LPC_order);
+					psDec.LPC_order, scratch);
 			}
 			else {
 				/* Copy LPC coefficients for first half from second half */
@@ -227,7 +228,7 @@ public class DecodeParameters
 			/* Decode LTP gains */
 			/********************/
 			/* Decode PERIndex value */
-			int PERIndex_ptr[] = new int[1];
+			int PERIndex_ptr[] = scratch.param_ptr;
 			PERIndex_ptr[0] = psDecCtrl.PERIndex;
 
 			RangeCoder.SKP_Silk_range_decoder(PERIndex_ptr, 0, psRC,
@@ -281,7 +282,7 @@ public class DecodeParameters
 		/*********************************************/
 		/* Decode VAD flag */
 		/*********************************************/
-		int[] vadFlag_ptr = new int[1];
+		int[] vadFlag_ptr = scratch.param_ptr;
 		vadFlag_ptr[0] = psDec.vadFlag;
 		RangeCoder.SKP_Silk_range_decoder(vadFlag_ptr, 0, psRC, TablesOther.SKP_Silk_vadflag_CDF,
 			0, TablesOther.SKP_Silk_vadflag_offset);
@@ -290,7 +291,7 @@ public class DecodeParameters
 		/**************************************/
 		/* Decode Frame termination indicator */
 		/**************************************/
-		int[] FrameTermination_ptr = new int[1];
+		int[] FrameTermination_ptr = scratch.param_ptr;
 		FrameTermination_ptr[0] = psDec.FrameTermination;
 		RangeCoder.SKP_Silk_range_decoder(FrameTermination_ptr, 0, psRC,
 			TablesOther.SKP_Silk_FrameTermination_CDF, 0,
@@ -300,7 +301,7 @@ public class DecodeParameters
 		/****************************************/
 		/* get number of bytes used so far */
 		/****************************************/
-		int nBytesUsed_ptr[] = new int[1];
+		int nBytesUsed_ptr[] = scratch.param_ptr;
 		RangeCoder.SKP_Silk_range_coder_get_length(psRC, nBytesUsed_ptr);
 		nBytesUsed = nBytesUsed_ptr[0];
 
@@ -36,8 +36,8 @@ public class DecodePulses
 	)
 	{
 		int i, j, k, iter, abs_q, nLS, bit;
-		int[] sum_pulses = new int[Define.MAX_NB_SHELL_BLOCKS];
-		int[] nLshifts = new int[Define.MAX_NB_SHELL_BLOCKS];
+		int[] sum_pulses = psRC.sum_pulses;
+		int[] nLshifts = psRC.nShifts;
 		int[] pulses_ptr;
 		int pulses_ptr_offset;
 		int[] cdf_ptr;
@@ -45,7 +45,7 @@ public class DecodePulses
 		/*********************/
 		/* Decode rate level */
 		/*********************/
-		int RateLevelIndex_ptr[] = new int[1];
+		int RateLevelIndex_ptr[] = psRC.data_ptr;
 		RateLevelIndex_ptr[0] = psDecCtrl.RateLevelIndex;
 		RangeCoder.SKP_Silk_range_decoder(RateLevelIndex_ptr, 0, psRC,
 			TablesPulsesPerBlock.SKP_Silk_rate_levels_CDF[psDecCtrl.sigtype], 0,
@@ -101,7 +101,7 @@ public class DecodePulses
 					abs_q = pulses_ptr[pulses_ptr_offset + k];
 					for (j = 0; j < nLS; j++) {
 						abs_q = abs_q << 1;
-						int bit_ptr[] = new int[1];
+						int bit_ptr[] = psRC.data_ptr;
 						RangeCoder.SKP_Silk_range_decoder(bit_ptr, 0, psRC,
 							TablesOther.SKP_Silk_lsb_CDF, 0, 1);
 						bit = bit_ptr[0];
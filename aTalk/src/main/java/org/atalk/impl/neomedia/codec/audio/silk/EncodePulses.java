@@ -66,10 +66,10 @@ public class EncodePulses
 	{
 		int i, k, j, iter, bit, nLS, scale_down, RateLevelIndex = 0;
 		int abs_q, minSumBits_Q6, sumBits_Q6;
-		int[] abs_pulses = new int[Define.MAX_FRAME_LENGTH];
-		int[] sum_pulses = new int[Define.MAX_NB_SHELL_BLOCKS];
-		int[] nRshifts = new int[Define.MAX_NB_SHELL_BLOCKS];
-		int[] pulses_comb = new int[8];
+		int[] abs_pulses = psRC.abs_pulses;
+		int[] sum_pulses = psRC.sum_pulses;
+		int[] nRshifts = psRC.nShifts;
+		int[] pulses_comb = psRC.pulses_comb;
 		int[] abs_pulses_ptr;
 		int abs_pulses_ptr_offset;
 		byte[] pulses_ptr;
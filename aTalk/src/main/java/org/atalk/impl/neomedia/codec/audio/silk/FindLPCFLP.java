@@ -27,6 +27,8 @@ public class FindLPCFLP
 	 *        Input signal.
 	 * @param subfr_length
 	 *        Subframe length incl preceeding samples.
+	 * @param scratch
+	 *        Encoder scratch buffers.
 	 */
 	static void SKP_Silk_find_LPC_FLP(float NLSF[], /* O NLSFs */
 		int[] interpIndex, /* O NLSF interp. index for NLSF interp. */
@@ -34,23 +36,24 @@ public class FindLPCFLP
 		final int useInterpNLSFs, /* I Flag */
 		final int LPC_order, /* I LPC order */
 		final float x[], /* I Input signal */
-		final int subfr_length /* I Subframe length incl preceeding samples */
+		final int subfr_length, /* I Subframe length incl preceeding samples */
+		SKP_Silk_encoder_scratch_FLP scratch /* I/O Scratch buffers */
 	)
 	{
 		int k;
-		float[] a = new float[Define.MAX_LPC_ORDER];
+		float[] a = scratch.LPC_a;
 
 		/* Used only for NLSF interpolation */
 		double res_nrg, res_nrg_2nd, res_nrg_interp;
-		float a_tmp[] = new float[Define.MAX_LPC_ORDER], NLSF0[] = new float[Define.MAX_LPC_ORDER];
-		float LPC_res[] = new float[(Define.MAX_FRAME_LENGTH + Define.NB_SUBFR * Define.MAX_LPC_ORDER) / 2];
+		float a_tmp[] = scratch.LPC_a_tmp, NLSF0[] = scratch.LPC_NLSF0;
+		float LPC_res[] = scratch.LPC_res;
 
 		/* Default: No interpolation */
 		interpIndex[0] = 4;
 
 		/* Burg AR analysis for the full frame */
 		res_nrg = BurgModifiedFLP.SKP_Silk_burg_modified_FLP(a, x, 0, subfr_length, Define.NB_SUBFR,
-			DefineFLP.FIND_LPC_COND_FAC, LPC_order);
+			DefineFLP.FIND_LPC_COND_FAC, LPC_order, scratch);
 
 		if (useInterpNLSFs == 1) {
 
@@ -60,20 +63,21 @@ public class FindLPCFLP
 			 * below
 			 */
 			res_nrg -= BurgModifiedFLP.SKP_Silk_burg_modified_FLP(a_tmp, x, (Define.NB_SUBFR / 2)
-				* subfr_length, subfr_length, Define.NB_SUBFR / 2, DefineFLP.FIND_LPC_COND_FAC, LPC_order);
+				* subfr_length, subfr_length, Define.NB_SUBFR / 2, DefineFLP.FIND_LPC_COND_FAC, LPC_order,
+				scratch);
 
 			/* Convert to NLSFs */
-			WrappersFLP.SKP_Silk_A2NLSF_FLP(NLSF, a_tmp, LPC_order);
+			WrappersFLP.SKP_Silk_A2NLSF_FLP(NLSF, a_tmp, LPC_order, scratch);
 
 			/* Search over interpolation indices to find the one with lowest residual energy */
 			res_nrg_2nd = Float.MAX_VALUE;
 			for (k = 3; k >= 0; k--) {
 				/* Interpolate NLSFs for first half */
 				WrappersFLP.SKP_Silk_interpolate_wrapper_FLP(NLSF0, prev_NLSFq, NLSF, 0.25f * k,
-					LPC_order);
+					LPC_order, scratch);
 
 				/* Convert to LPC for residual energy evaluation */
-				WrappersFLP.SKP_Silk_NLSF2A_stable_FLP(a_tmp, NLSF0, LPC_order);
+				WrappersFLP.SKP_Silk_NLSF2A_stable_FLP(a_tmp, NLSF0, LPC_order, scratch);
 
 				/* Calculate residual energy with LSF interpolation */
 				LPCAnalysisFilterFLP.SKP_Silk_LPC_analysis_filter_FLP(LPC_res, a_tmp, x, 0,
@@ -102,7 +106,7 @@ public class FindLPCFLP
 			 * NLSF interpolation is currently inactive, calculate NLSFs from full frame AR
 			 * coefficients
 			 */
-			WrappersFLP.SKP_Silk_A2NLSF_FLP(NLSF, a, LPC_order);
+			WrappersFLP.SKP_Silk_A2NLSF_FLP(NLSF, a, LPC_order, scratch);
 		}
 	}
 }
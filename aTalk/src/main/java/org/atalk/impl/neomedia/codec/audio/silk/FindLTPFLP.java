@@ -37,6 +37,8 @@ public class FindLTPFLP
 	 *        Subframe length.
 	 * @param mem_offset
 	 *        Number of samples in LTP memory.
+	 * @param scratch
+	 *        Encoder scratch buffers.
 	 */
 	static void SKP_Silk_find_LTP_FLP(float b[], /* O LTP coefs */
 		float WLTP[], /* O Weight for LTP quantization */
@@ -46,15 +48,16 @@ public class FindLTPFLP
 		int r_last_offset, final int lag[], /* I LTP lags */
 		final float Wght[], /* I Weights */
 		final int subfr_length, /* I Subframe length */
-		final int mem_offset /* I Number of samples in LTP memory */
+		final int mem_offset, /* I Number of samples in LTP memory */
+		SKP_Silk_encoder_scratch_FLP scratch /* I/O Scratch buffers */
 	)
 	{
 		int i, k;
 		float b_ptr[], temp, WLTP_ptr[];
 		float LPC_res_nrg, LPC_LTP_res_nrg;
-		float d[] = new float[NB_SUBFR], m, g, delta_b[] = new float[LTP_ORDER];
-		float w[] = new float[NB_SUBFR], nrg[] = new float[NB_SUBFR], regu;
-		float Rr[] = new float[LTP_ORDER], rr[] = new float[NB_SUBFR];
+		float d[] = scratch.LTP_d, m, g, delta_b[] = scratch.LTP_delta_b;
+		float w[] = scratch.LTP_w, nrg[] = scratch.LTP_nrg, regu;
+		float Rr[] = scratch.LTP_Rr, rr[] = scratch.LTP_rr;
 		float r_ptr[], lag_ptr[];
 		int r_ptr_offset, lag_ptr_offset;
 
@@ -85,7 +88,7 @@ public class FindLTPFLP
 			RegularizeCorrelationsFLP.SKP_Silk_regularize_correlations_FLP(WLTP_ptr,
 				WLTP_ptr_offset, rr, k, regu, LTP_ORDER);
 			SolveLSFLP.SKP_Silk_solve_LDL_FLP(WLTP_ptr, WLTP_ptr_offset, LTP_ORDER, Rr, b_ptr,
-				b_ptr_offset);
+				b_ptr_offset, scratch);
 
 			/* Calculate residual energy */
 			nrg[k] = ResidualEnergyFLP.SKP_Silk_residual_energy_covar_FLP(b_ptr, b_ptr_offset,
@@ -38,10 +38,11 @@ public class FindPitchLagsFLP
 		// const SKP_float *x_buf_ptr, *x_buf;
 		float[] x_buf_ptr, x_buf;
 		int x_buf_ptr_offset, x_buf_offset;
-		float[] auto_corr = new float[Define.FIND_PITCH_LPC_ORDER_MAX + 1];
-		float[] A = new float[Define.FIND_PITCH_LPC_ORDER_MAX];
-		float[] refl_coef = new float[Define.FIND_PITCH_LPC_ORDER_MAX];
-		float[] Wsig = new float[Define.FIND_PITCH_LPC_WIN_MAX];
+		SKP_Silk_encoder_scratch_FLP scratch = psEnc.sScratch;
+		float[] auto_corr = scratch.pitch_auto_corr;
+		float[] A = scratch.pitch_A;
+		float[] refl_coef = scratch.pitch_refl_coef;
+		float[] Wsig = scratch.pitch_Wsig;
 		float thrhld;
 		float[] Wsig_ptr;
 		int Wsig_ptr_offset;
@@ -97,7 +98,8 @@ public class FindPitchLagsFLP
 		auto_corr[0] += auto_corr[0] * DefineFLP.FIND_PITCH_WHITE_NOISE_FRACTION;
 
 		/* Calculate the reflection coefficients using Schur */
-		SchurFLP.SKP_Silk_schur_FLP(refl_coef, 0, auto_corr, 0, psEnc.sCmn.pitchEstimationLPCOrder);
+		SchurFLP.SKP_Silk_schur_FLP(refl_coef, 0, auto_corr, 0, psEnc.sCmn.pitchEstimationLPCOrder,
+			scratch);
 
 		/* Convert reflection coefficients to prediction coefficients */
 		K2aFLP.SKP_Silk_k2a_FLP(A, refl_coef, psEnc.sCmn.pitchEstimationLPCOrder);
@@ -125,13 +127,16 @@ public class FindPitchLagsFLP
 		/*****************************************/
 		/* Call Pitch estimator */
 		/*****************************************/
-		int[] lagIndex_djinnaddress = { psEncCtrl.sCmn.lagIndex };
-		int[] contourIndex_djinnaddress = { psEncCtrl.sCmn.contourIndex };
-		float[] LTPCorr_djinnaddress = { psEnc.LTPCorr };
+		int[] lagIndex_djinnaddress = scratch.pitch_lagIndex_ptr;
+		int[] contourIndex_djinnaddress = scratch.pitch_contourIndex_ptr;
+		float[] LTPCorr_djinnaddress = scratch.pitch_LTPCorr_ptr;
+		lagIndex_djinnaddress[0] = psEncCtrl.sCmn.lagIndex;
+		contourIndex_djinnaddress[0] = psEncCtrl.sCmn.contourIndex;
+		LTPCorr_djinnaddress[0] = psEnc.LTPCorr;
 		psEncCtrl.sCmn.sigtype = PitchAnalysisCoreFLP.SKP_Silk_pitch_analysis_core_FLP(res,
 			psEncCtrl.sCmn.pitchL, lagIndex_djinnaddress, contourIndex_djinnaddress,
 			LTPCorr_djinnaddress, psEnc.sCmn.prevLag, psEnc.pitchEstimationThreshold, thrhld,
-			psEnc.sCmn.fs_kHz, psEnc.sCmn.pitchEstimationComplexity);
+			psEnc.sCmn.fs_kHz, psEnc.sCmn.pitchEstimationComplexity, scratch);
 		psEncCtrl.sCmn.lagIndex = lagIndex_djinnaddress[0];
 		psEncCtrl.sCmn.contourIndex = contourIndex_djinnaddress[0];
 		psEnc.LTPCorr = LTPCorr_djinnaddress[0];
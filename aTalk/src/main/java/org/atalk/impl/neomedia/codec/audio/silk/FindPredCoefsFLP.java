@@ -38,13 +38,14 @@ public class FindPredCoefsFLP
 		float res_pitch[] /* I Residual from pitch analysis */
 	)
 	{
+		SKP_Silk_encoder_scratch_FLP scratch = psEnc.sScratch;
 		int i;
-		float[] WLTP = new float[Define.NB_SUBFR * Define.LTP_ORDER * Define.LTP_ORDER];
-		float[] invGains = new float[Define.NB_SUBFR], Wght = new float[Define.NB_SUBFR];
-		float[] NLSF = new float[Define.MAX_LPC_ORDER];
+		float[] WLTP = scratch.pred_WLTP;
+		float[] invGains = scratch.pred_invGains, Wght = scratch.pred_Wght;
+		float[] NLSF = scratch.pred_NLSF;
 		float[] x_ptr;
 		int x_ptr_offset;
-		float[] x_pre_ptr, LPC_in_pre = new float[Define.NB_SUBFR * Define.MAX_LPC_ORDER + Define.MAX_FRAME_LENGTH];
+		float[] x_pre_ptr, LPC_in_pre = scratch.pred_LPC_in_pre;
 		int x_pre_ptr_offset;
 
 		/* Weighting for weighted least squares */
@@ -62,19 +63,19 @@ public class FindPredCoefsFLP
 				+ Define.LTP_ORDER / 2);
 
 			/* LTP analysis */
-			float[] LTPredCodGain_ptr = new float[1];
+			float[] LTPredCodGain_ptr = scratch.pred_LTPredCodGain_ptr;
 			LTPredCodGain_ptr[0] = psEncCtrl.LTPredCodGain;
 			FindLTPFLP.SKP_Silk_find_LTP_FLP(psEncCtrl.LTPCoef, WLTP, LTPredCodGain_ptr, res_pitch,
 				res_pitch, (psEnc.sCmn.frame_length >> 1), psEncCtrl.sCmn.pitchL, Wght,
-				psEnc.sCmn.subfr_length, psEnc.sCmn.frame_length);
+				psEnc.sCmn.subfr_length, psEnc.sCmn.frame_length, scratch);
 			psEncCtrl.LTPredCodGain = LTPredCodGain_ptr[0];
 
 			/* Quantize LTP gain parameters */
-			int[] PERIndex_ptr = new int[1];
+			int[] PERIndex_ptr = scratch.pred_PERIndex_ptr;
 			PERIndex_ptr[0] = psEncCtrl.sCmn.PERIndex;
 			QuantLTPGainsFLP.SKP_Silk_quant_LTP_gains_FLP(psEncCtrl.LTPCoef,
 				psEncCtrl.sCmn.LTPIndex, PERIndex_ptr, WLTP, psEnc.mu_LTP,
-				psEnc.sCmn.LTPQuantLowComplexity);
+				psEnc.sCmn.LTPQuantLowComplexity, scratch);
 			psEncCtrl.sCmn.PERIndex = PERIndex_ptr[0];
 
 			/* Control LTP scaling */
@@ -113,12 +114,12 @@ public class FindPredCoefsFLP
 		 * LPC_in_pre contains the LTP-filtered input for voiced, and the unfiltered input for
 		 * unvoiced
 		 */
-		int[] NLSFInterpCoef_Q2_ptr = new int[1];
+		int[] NLSFInterpCoef_Q2_ptr = scratch.pred_NLSFInterpCoef_Q2_ptr;
 		NLSFInterpCoef_Q2_ptr[0] = psEncCtrl.sCmn.NLSFInterpCoef_Q2;
 		FindLPCFLP.SKP_Silk_find_LPC_FLP(NLSF, NLSFInterpCoef_Q2_ptr, psEnc.sPred.prev_NLSFq,
 			psEnc.sCmn.useInterpolatedNLSFs * (1 - psEnc.sCmn.first_frame_after_reset),
 			psEnc.sCmn.predictLPCOrder, LPC_in_pre, psEnc.sCmn.subfr_length
-				+ psEnc.sCmn.predictLPCOrder);
+				+ psEnc.sCmn.predictLPCOrder, scratch);
 		psEncCtrl.sCmn.NLSFInterpCoef_Q2 = NLSFInterpCoef_Q2_ptr[0];
 
 		/* Quantize LSFs */
@@ -183,7 +184,7 @@ public class FindPredCoefsFLP
 		/* Calculate residual energy using quantized LPC coefficients */
 		ResidualEnergyFLP.SKP_Silk_residual_energy_FLP(psEncCtrl.ResNrg, LPC_in_pre,
 			psEncCtrl.PredCoef, psEncCtrl.Gains, psEnc.sCmn.subfr_length,
-			psEnc.sCmn.predictLPCOrder);
+			psEnc.sCmn.predictLPCOrder, scratch);
 
 		/* Copy to prediction struct for use in next frame for fluctuation reduction */
 		System.arraycopy(NLSF, 0, psEnc.sPred.prev_NLSFq, 0, psEnc.sCmn.predictLPCOrder);
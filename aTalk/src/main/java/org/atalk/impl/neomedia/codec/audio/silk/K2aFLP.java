@@ -29,14 +29,15 @@ public class K2aFLP
 	)
 	{
 		int k, n;
-		float[] Atmp = new float[SigProcFIX.SKP_Silk_MAX_ORDER_LPC];
+		float tmp1, tmp2;
 
 		for (k = 0; k < order; k++) {
-			for (n = 0; n < k; n++) {
-				Atmp[n] = A[n];
-			}
-			for (n = 0; n < k; n++) {
-				A[n] += Atmp[k - n - 1] * rc[k];
+			/* Update the coefficient pairs in place, instead of from a copy of A */
+			for (n = 0; n < (k + 1) >> 1; n++) {
+				tmp1 = A[n];
+				tmp2 = A[k - n - 1];
+				A[n] = tmp1 + tmp2 * rc[k];
+				A[k - n - 1] = tmp2 + tmp1 * rc[k];
 			}
 			A[k] = -rc[k];
 		}
@@ -23,11 +23,14 @@ public class LPCStabilize
 	 *        Bandwidth expansion factor
 	 * @param L
 	 *        Number of LPC parameters in the input vector
+	 * @param scratch
+	 *        Scratch buffers
 	 */
 	static void SKP_Silk_LPC_stabilize(short[] a_Q12, /* O stabilized LPC vector [L] */
 		int[] a_Q16, /* I LPC vector [L] */
 		final int bwe_Q16, /* I Bandwidth expansion factor */
-		final int L /* I Number of LPC parameters in the input vector */
+		final int L, /* I Number of LPC parameters in the input vector */
+		SKP_Silk_sigproc_scratch scratch /* I/O Scratch buffers */
 	)
 	{
 		int maxabs, absval, sc_Q16;
@@ -73,9 +76,9 @@ public class LPCStabilize
 		/**********************/
 		/* Ensure stable LPCs */
 		/**********************/
-		int invGain_Q30_ptr[] = new int[1];
+		int invGain_Q30_ptr[] = scratch.invGain_Q30_ptr;
 		invGain_Q30_ptr[0] = invGain_Q30;
-		while (LPCInvPredGain.SKP_Silk_LPC_inverse_pred_gain(invGain_Q30_ptr, a_Q12, L) == 1) {
+		while (LPCInvPredGain.SKP_Silk_LPC_inverse_pred_gain(invGain_Q30_ptr, a_Q12, L, scratch) == 1) {
 			invGain_Q30 = invGain_Q30_ptr[0];
 			Bwexpander.SKP_Silk_bwexpander(a_Q12, L, 65339); // 0.997 in Q16
 		}
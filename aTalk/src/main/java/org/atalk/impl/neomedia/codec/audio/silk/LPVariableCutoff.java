@@ -122,7 +122,7 @@ public class LPVariableCutoff
 		int in_offset, final int frame_length /* I Frame length */
 	)
 	{
-		int[] B_Q28 = new int[Define.TRANSITION_NB], A_Q28 = new int[Define.TRANSITION_NA];
+		int[] B_Q28 = psLP.B_Q28, A_Q28 = psLP.A_Q28;
 		int fac_Q16 = 0;
 		int ind = 0;
 
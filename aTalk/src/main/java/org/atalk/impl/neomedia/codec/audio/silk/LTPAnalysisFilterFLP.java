@@ -42,7 +42,7 @@ public class LTPAnalysisFilterFLP
 		float[] x_lag_ptr;
 		int x_ptr_offset, x_lag_ptr_offset;
 
-		float Btmp[] = new float[Define.LTP_ORDER];
+		int B_offset;
 		float[] LTP_res_ptr;
 		int LTP_res_ptr_offset;
 		float inv_gain;
@@ -56,16 +56,14 @@ public class LTPAnalysisFilterFLP
 			x_lag_ptr = x_ptr;
 			x_lag_ptr_offset = x_ptr_offset - pitchL[k];
 			inv_gain = invGains[k];
-			for (i = 0; i < Define.LTP_ORDER; i++) {
-				Btmp[i] = B[k * Define.LTP_ORDER + i];
-			}
+			B_offset = k * Define.LTP_ORDER;
 
 			/* LTP analysis FIR filter */
 			for (i = 0; i < subfr_length + pre_length; i++) {
 				LTP_res_ptr[LTP_res_ptr_offset + i] = x_ptr[x_ptr_offset + i];
 				/* Subtract long-term prediction */
 				for (j = 0; j < Define.LTP_ORDER; j++) {
-					LTP_res_ptr[LTP_res_ptr_offset + i] -= Btmp[j]
+					LTP_res_ptr[LTP_res_ptr_offset + i] -= B[B_offset + j]
 						* x_lag_ptr[x_lag_ptr_offset + Define.LTP_ORDER / 2 - j];
 				}
 				LTP_res_ptr[LTP_res_ptr_offset + i] *= inv_gain;
@@ -25,12 +25,9 @@ public class Lin2log
 	{
 		int lz, frac_Q7;
 
-		int[] lz_ptr = new int[1];
-		int[] frac_Q7_ptr = new int[1];
-
-		Inlines.SKP_Silk_CLZ_FRAC(inLin, lz_ptr, frac_Q7_ptr);
-		lz = lz_ptr[0];
-		frac_Q7 = frac_Q7_ptr[0];
+		/* SKP_Silk_CLZ_FRAC() without the out-parameter arrays */
+		lz = Integer.numberOfLeadingZeros(inLin);
+		frac_Q7 = SigProcFIX.SKP_ROR32(inLin, 24 - lz) & 0x7f;
 
 		/* Piece-wise parabolic approximation */
 		return (SigProcFIX.SKP_LSHIFT(31 - lz, 7) + Macros.SKP_SMLAWB(frac_Q7,
@@ -6,14 +6,10 @@
 package org.atalk.impl.neomedia.codec.audio.silk;
 
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.LOW_COMPLEXITY_ONLY;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LPC_ORDER;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_NLSF_MSVQ_SURVIVORS;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_NLSF_MSVQ_SURVIVORS_LC_MODE;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NLSF_MSVQ_FLUCTUATION_REDUCTION;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.NLSF_MSVQ_MAX_CB_STAGES;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NLSF_MSVQ_SURV_MAX_REL_RD;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.NLSF_MSVQ_TREE_SEARCH_MAX_VECTORS_EVALUATED;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.NLSF_MSVQ_TREE_SEARCH_MAX_VECTORS_EVALUATED_LC_MODE;
 
 import java.util.Arrays;
 
@@ -47,6 +43,8 @@ public class NLSFMSVQEncodeFLP
 	 *        LPC order
 	 * @param deactivate_fluc_red
 	 *        Deactivate fluctuation reduction
+	 * @param scratch
+	 *        Encoder scratch buffers
 	 */
 	@SuppressWarnings("unused")
 	static void SKP_Silk_NLSF_MSVQ_encode_FLP(int[] NLSFIndices, /*
@@ -61,41 +59,23 @@ public class NLSFMSVQEncodeFLP
 		final float NLSF_mu_fluc_red, /* I Fluctuation reduction error weight */
 		final int NLSF_MSVQ_Survivors,/* I Max survivors from each stage */
 		final int LPC_order, /* I LPC order */
-		final int deactivate_fluc_red /* I Deactivate fluctuation reduction */
+		final int deactivate_fluc_red, /* I Deactivate fluctuation reduction */
+		SKP_Silk_encoder_scratch_FLP scratch /* I/O Scratch buffers */
 	)
 	{
 		int i, s, k, cur_survivors, prev_survivors, input_index, cb_index, bestIndex;
 		float se, wsse, rateDistThreshold, bestRateDist;
-		float pNLSF_in[] = new float[MAX_LPC_ORDER];
-
-		float pRateDist[];
-		float pRate[];
-		float pRate_new[];
-		int pTempIndices[];
-		int pPath[];
-		int pPath_new[];
-		float pRes[];
-		float pRes_new[];
-		if (LOW_COMPLEXITY_ONLY) {
-			pRateDist = new float[NLSF_MSVQ_TREE_SEARCH_MAX_VECTORS_EVALUATED_LC_MODE()];
-			pRate = new float[MAX_NLSF_MSVQ_SURVIVORS_LC_MODE];
-			pRate_new = new float[MAX_NLSF_MSVQ_SURVIVORS_LC_MODE];
-			pTempIndices = new int[MAX_NLSF_MSVQ_SURVIVORS_LC_MODE];
-			pPath = new int[MAX_NLSF_MSVQ_SURVIVORS_LC_MODE * NLSF_MSVQ_MAX_CB_STAGES];
-			pPath_new = new int[MAX_NLSF_MSVQ_SURVIVORS_LC_MODE * NLSF_MSVQ_MAX_CB_STAGES];
-			pRes = new float[MAX_NLSF_MSVQ_SURVIVORS_LC_MODE * MAX_LPC_ORDER];
-			pRes_new = new float[MAX_NLSF_MSVQ_SURVIVORS_LC_MODE * MAX_LPC_ORDER];
-		}
-		else {
-			pRateDist = new float[NLSF_MSVQ_TREE_SEARCH_MAX_VECTORS_EVALUATED()];
-			pRate = new float[MAX_NLSF_MSVQ_SURVIVORS];
-			pRate_new = new float[MAX_NLSF_MSVQ_SURVIVORS];
-			pTempIndices = new int[MAX_NLSF_MSVQ_SURVIVORS];
-			pPath = new int[MAX_NLSF_MSVQ_SURVIVORS * NLSF_MSVQ_MAX_CB_STAGES];
-			pPath_new = new int[MAX_NLSF_MSVQ_SURVIVORS * NLSF_MSVQ_MAX_CB_STAGES];
-			pRes = new float[MAX_NLSF_MSVQ_SURVIVORS * MAX_LPC_ORDER];
-			pRes_new = new float[MAX_NLSF_MSVQ_SURVIVORS * MAX_LPC_ORDER];
-		}
+		float pNLSF_in[] = scratch.MSVQ_pNLSF_in;
+
+		/* The scratch buffers are sized for the (larger) non low complexity mode */
+		float pRateDist[] = scratch.MSVQ_pRateDist;
+		float pRate[] = scratch.MSVQ_pRate;
+		float pRate_new[] = scratch.MSVQ_pRate_new;
+		int pTempIndices[] = scratch.MSVQ_pTempIndices;
+		int pPath[] = scratch.MSVQ_pPath;
+		int pPath_new[] = scratch.MSVQ_pPath_new;
+		float pRes[] = scratch.MSVQ_pRes;
+		float pRes_new[] = scratch.MSVQ_pRes_new;
 
 		float[] pConstFloat;
 		int pConstFloat_offset;
@@ -244,7 +224,7 @@ public class NLSFMSVQEncodeFLP
 				for (s = 0; s < cur_survivors; s++) {
 					/* Decode survivor to compare with previous quantized NLSF vector */
 					NLSFMSVQDecodeFLP.SKP_Silk_NLSF_MSVQ_decode_FLP(pNLSF, psNLSF_CB_FLP,
-						pPath_new, s * psNLSF_CB_FLP.nStages, LPC_order);
+						pPath_new, s * psNLSF_CB_FLP.nStages, LPC_order, scratch);
 
 					/* Compare decoded NLSF vector with the previously quantized vector */
 					wsse = 0;
@@ -276,6 +256,6 @@ public class NLSFMSVQEncodeFLP
 
 		/* Decode and stabilize the best survivor */
 		NLSFMSVQDecodeFLP.SKP_Silk_NLSF_MSVQ_decode_FLP(pNLSF, psNLSF_CB_FLP, NLSFIndices, 0,
-			LPC_order);
+			LPC_order, scratch);
 	}
 }
@@ -7,7 +7,6 @@ package org.atalk.impl.neomedia.codec.audio.silk;
 
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.HARM_SHAPE_FIR_TAPS;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.LTP_ORDER;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_FRAME_LENGTH;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LPC_ORDER;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NB_SUBFR;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.SHAPE_LPC_ORDER_MAX;
@@ -72,6 +71,7 @@ public class NSQ
 		int LTP_scale_Q14 /* I LTP state scaling */
 	)
 	{
+		SKP_Silk_encoder_scratch scratch = psEncC.sScratch;
 		int k, lag, start_idx, subfr_length, LSF_interpolation_flag;
 		short[] A_Q12;
 		short[] B_Q14;
@@ -79,12 +79,16 @@ public class NSQ
 		int A_Q12_offset, B_Q14_offset, AR_shp_Q13_offset;
 		short[] pxq;
 		int pxq_offset;
-		int sLTP_Q16[] = new int[2 * MAX_FRAME_LENGTH];
-		short sLTP[] = new short[2 * MAX_FRAME_LENGTH];
+		int sLTP_Q16[] = scratch.nsq_sLTP_Q16;
+		short sLTP[] = scratch.nsq_sLTP;
 		int HarmShapeFIRPacked_Q14;
 		int offset_Q10;
-		int FiltState[] = new int[MAX_LPC_ORDER];
-		int x_sc_Q10[] = new int[MAX_FRAME_LENGTH / NB_SUBFR];
+		int FiltState[] = scratch.nsq_FiltState;
+		int x_sc_Q10[] = scratch.nsq_x_sc_Q10;
+
+		/* The LTP buffers may be read at lags not yet written in this frame */
+		Arrays.fill(sLTP_Q16, 0);
+		Arrays.fill(sLTP, (short) 0);
 
 		subfr_length = psEncC.frame_length / NB_SUBFR;
 
@@ -108,12 +112,8 @@ public class NSQ
 		NSQ.sLTP_buf_idx = psEncC.frame_length;
 		pxq = NSQ.xq;
 		pxq_offset = psEncC.frame_length;
-		// TODO: use a local copy of the parameter short x[], which is supposed to be input;
-		short[] x_tmp = x.clone();
-		int x_tmp_offset = 0;
-		// TODO: use a local copy of the parameter byte[] q, which is supposed to be output;
-		byte[] q_tmp = q.clone();
-		int q_tmp_offset = 0;
+		int x_offset = 0;
+		int q_offset = 0;
 
 		for (k = 0; k < NB_SUBFR; k++) {
 			A_Q12 = PredCoef_Q12;
@@ -151,17 +151,17 @@ public class NSQ
 				}
 			}
 
-			SKP_Silk_nsq_scale_states(NSQ, x_tmp, x_tmp_offset, x_sc_Q10, psEncC.subfr_length,
+			SKP_Silk_nsq_scale_states(NSQ, x, x_offset, x_sc_Q10, psEncC.subfr_length,
 				sLTP, sLTP_Q16, k, LTP_scale_Q14, Gains_Q16, psEncCtrlC.pitchL);
 
-			SKP_Silk_noise_shape_quantizer(NSQ, psEncCtrlC.sigtype, x_sc_Q10, q_tmp, q_tmp_offset,
+			SKP_Silk_noise_shape_quantizer(NSQ, psEncCtrlC.sigtype, x_sc_Q10, q, q_offset,
 				pxq, pxq_offset, sLTP_Q16, A_Q12, A_Q12_offset, B_Q14, B_Q14_offset, AR_shp_Q13,
 				AR_shp_Q13_offset, lag, HarmShapeFIRPacked_Q14, Tilt_Q14[k], LF_shp_Q14[k],
 				Gains_Q16[k], Lambda_Q10, offset_Q10, psEncC.subfr_length, psEncC.shapingLPCOrder,
 				psEncC.predictLPCOrder);
 
-			x_tmp_offset += psEncC.subfr_length;
-			q_tmp_offset += psEncC.subfr_length;
+			x_offset += psEncC.subfr_length;
+			q_offset += psEncC.subfr_length;
 			pxq_offset += psEncC.subfr_length;
 		}
 
@@ -173,9 +173,6 @@ public class NSQ
 		System.arraycopy(NSQ.xq, psEncC.frame_length, NSQ.xq, 0, psEncC.frame_length);
 		System.arraycopy(NSQ.sLTP_shp_Q10, psEncC.frame_length, NSQ.sLTP_shp_Q10, 0,
 			psEncC.frame_length);
-
-		// TODO: copy back the q_tmp to the output parameter q;
-		System.arraycopy(q_tmp, 0, q, 0, q.length);
 	}
 
 	/**
@@ -7,7 +7,6 @@ package org.atalk.impl.neomedia.codec.audio.silk;
 
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.DECISION_DELAY;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.DECISION_DELAY_MASK;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.DEL_DEC_STATES_MAX;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.HARM_SHAPE_FIR_TAPS;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.LTP_ORDER;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_FRAME_LENGTH;
@@ -85,6 +84,22 @@ class NSQ_sample_struct implements Cloneable
 		}
 		return clone;
 	}
+
+	/**
+	 * Copies all the fields of the source sample state, same as the SKP_memcpy() of the C code.
+	 *
+	 * @param src
+	 *        the sample state to copy from
+	 */
+	public void copyFrom(NSQ_sample_struct src)
+	{
+		this.Q_Q10 = src.Q_Q10;
+		this.RD_Q10 = src.RD_Q10;
+		this.xq_Q14 = src.xq_Q14;
+		this.LF_AR_Q12 = src.LF_AR_Q12;
+		this.sLTP_shp_Q10 = src.sLTP_shp_Q10;
+		this.LPC_exc_Q16 = src.LPC_exc_Q16;
+	}
 }
 
 /**
@@ -110,6 +125,7 @@ public class NSQDelDec
 		int LTP_scale_Q14 /* I LTP state scaling */
 	)
 	{
+		SKP_Silk_encoder_scratch scratch = psEncC.sScratch;
 		int i, k, lag, start_idx, LSF_interpolation_flag, Winner_ind, subfr;
 		int last_smple_idx, smpl_buf_idx, decisionDelay, subfr_length;
 		short[] A_Q12;
@@ -118,23 +134,19 @@ public class NSQDelDec
 		int A_Q12_offset, B_Q14_offset, AR_shp_Q13_offset;
 		short[] pxq;
 		int pxq_offset;
-		int sLTP_Q16[] = new int[2 * MAX_FRAME_LENGTH];
-		short sLTP[] = new short[2 * MAX_FRAME_LENGTH];
+		int sLTP_Q16[] = scratch.nsq_sLTP_Q16;
+		short sLTP[] = scratch.nsq_sLTP;
 		int HarmShapeFIRPacked_Q14;
 		int offset_Q10;
-		int FiltState[] = new int[MAX_LPC_ORDER], RDmin_Q10;
-		int x_sc_Q10[] = new int[MAX_FRAME_LENGTH / NB_SUBFR];
-		NSQDelDecStruct psDelDec[] = new NSQDelDecStruct[DEL_DEC_STATES_MAX];
-		/*
-		 * psDelDec is an array of references, which has to be created manually.
-		 */
-		{
-			for (int psDelDecIni_i = 0; psDelDecIni_i < DEL_DEC_STATES_MAX; psDelDecIni_i++) {
-				psDelDec[psDelDecIni_i] = new NSQDelDecStruct();
-			}
-		}
+		int FiltState[] = scratch.nsq_FiltState, RDmin_Q10;
+		int x_sc_Q10[] = scratch.nsq_x_sc_Q10;
+		NSQDelDecStruct psDelDec[] = scratch.nsq_psDelDec;
 		NSQDelDecStruct psDD;
 
+		/* The LTP buffers may be read at lags not yet written in this frame */
+		Arrays.fill(sLTP_Q16, 0);
+		Arrays.fill(sLTP, (short) 0);
+
 		subfr_length = psEncC.frame_length / NB_SUBFR;
 
 		/* Set unvoiced lag to the previous one, overwrite later for voiced */
@@ -142,12 +154,8 @@ public class NSQDelDec
 
 		assert (NSQ.prev_inv_gain_Q16 != 0);
 
-		// TODO: use a local copy of the parameter short x[], which is supposed to be input;
-		short[] x_tmp = x.clone();
-		int x_tmp_offset = 0;
-		// TODO: use a local copy of the parameter byte[] q, which is supposed to be output;
-		byte[] q_tmp = q.clone();
-		int q_tmp_offset = 0;
+		int x_offset = 0;
+		int q_offset = 0;
 
 		/* Initialize delayed decision states */
 		// SKP_memset( psDelDec, 0, psEncC.nStatesDelayedDecision * sizeof( NSQ_del_dec_struct ) );
@@ -235,7 +243,7 @@ public class NSQDelDec
 							last_smple_idx = (last_smple_idx - 1) & DECISION_DELAY_MASK;
 							// q[ i - decisionDelay ] = ( SKP_int )SKP_RSHIFT( psDD.Q_Q10[
 							// last_smple_idx ], 10 );
-							q_tmp[q_tmp_offset + i - decisionDelay] = (byte) (psDD.Q_Q10[last_smple_idx] >> 10);
+							q[q_offset + i - decisionDelay] = (byte) (psDD.Q_Q10[last_smple_idx] >> 10);
 
 							// pxq[ i - decisionDelay ] = ( SKP_int16 )SKP_SAT16( SKP_RSHIFT_ROUND(
 							// SKP_SMULWW( psDD.Xq_Q10[ last_smple_idx ],
@@ -271,22 +279,22 @@ public class NSQDelDec
 			HarmShapeFIRPacked_Q14 = (HarmShapeGain_Q14[k] >> 2);
 			HarmShapeFIRPacked_Q14 |= ((HarmShapeGain_Q14[k] >> 1) << 16);
 
-			SKP_Silk_nsq_del_dec_scale_states(NSQ, psDelDec, x_tmp, x_tmp_offset, x_sc_Q10,
+			SKP_Silk_nsq_del_dec_scale_states(NSQ, psDelDec, x, x_offset, x_sc_Q10,
 				subfr_length, sLTP, sLTP_Q16, k, psEncC.nStatesDelayedDecision, smpl_buf_idx,
 				LTP_scale_Q14, Gains_Q16, psEncCtrlC.pitchL);
 
-			int smpl_buf_idx_ptr[] = new int[1];
+			int smpl_buf_idx_ptr[] = scratch.nsq_smpl_buf_idx_ptr;
 			smpl_buf_idx_ptr[0] = smpl_buf_idx;
 			SKP_Silk_noise_shape_quantizer_del_dec(NSQ, psDelDec, psEncCtrlC.sigtype, x_sc_Q10,
-				q_tmp, q_tmp_offset, pxq, pxq_offset, sLTP_Q16, A_Q12, A_Q12_offset, B_Q14,
+				q, q_offset, pxq, pxq_offset, sLTP_Q16, A_Q12, A_Q12_offset, B_Q14,
 				B_Q14_offset, AR_shp_Q13, AR_shp_Q13_offset, lag, HarmShapeFIRPacked_Q14,
 				Tilt_Q14[k], LF_shp_Q14[k], Gains_Q16[k], Lambda_Q10, offset_Q10,
 				psEncC.subfr_length, subfr++, psEncC.shapingLPCOrder, psEncC.predictLPCOrder,
-				psEncC.nStatesDelayedDecision, smpl_buf_idx_ptr, decisionDelay);
+				psEncC.nStatesDelayedDecision, smpl_buf_idx_ptr, decisionDelay, scratch.nsq_psSampleState);
 			smpl_buf_idx = smpl_buf_idx_ptr[0];
 
-			x_tmp_offset += psEncC.subfr_length;
-			q_tmp_offset += psEncC.subfr_length;
+			x_offset += psEncC.subfr_length;
+			q_offset += psEncC.subfr_length;
 			pxq_offset += psEncC.subfr_length;
 		}
 
@@ -306,7 +314,7 @@ public class NSQDelDec
 		last_smple_idx = smpl_buf_idx + decisionDelay;
 		for (i = 0; i < decisionDelay; i++) {
 			last_smple_idx = (last_smple_idx - 1) & DECISION_DELAY_MASK;
-			q_tmp[q_tmp_offset + i - decisionDelay] = (byte) (psDD.Q_Q10[last_smple_idx] >> 10);
+			q[q_offset + i - decisionDelay] = (byte) (psDD.Q_Q10[last_smple_idx] >> 10);
 			pxq[pxq_offset + i - decisionDelay] = (short) SigProcFIX.SKP_SAT16(SigProcFIX
 				.SKP_RSHIFT_ROUND(
 					SKP_SMULWW(psDD.Xq_Q10[last_smple_idx], psDD.Gain_Q16[last_smple_idx]), 10));
@@ -332,8 +340,6 @@ public class NSQDelDec
 		System.arraycopy(NSQ.xq, psEncC.frame_length, NSQ.xq, 0, psEncC.frame_length);
 		System.arraycopy(NSQ.sLTP_shp_Q10, psEncC.frame_length, NSQ.sLTP_shp_Q10, 0,
 			psEncC.frame_length);
-		// TODO: copy back the q_tmp to the output parameter q;
-		System.arraycopy(q_tmp, 0, q, 0, q.length);
 	}
 
 	/**
@@ -383,6 +389,8 @@ public class NSQDelDec
 	 * @param smpl_buf_idx
 	 *        Index to newest samples in buffers
 	 * @param decisionDelay
+	 * @param psSampleState
+	 *        encoder scratch sample states
 	 */
 	static void SKP_Silk_noise_shape_quantizer_del_dec(SKP_Silk_nsq_state NSQ, /* I/O NSQ state */
 		NSQDelDecStruct psDelDec[], /* I/O Delayed decision states */
@@ -407,7 +415,8 @@ public class NSQDelDec
 		int predictLPCOrder, /* I Prediction LPC filter order */
 		int nStatesDelayedDecision, /* I Number of states in decision tree */
 		int[] smpl_buf_idx, /* I Index to newest samples in buffers */
-		int decisionDelay /* I */
+		int decisionDelay, /* I */
+		NSQ_sample_struct psSampleState[][] /* I/O Scratch sample states */
 	)
 	{
 		int i, j, k, Winner_ind, RDmin_ind, RDmax_ind, last_smple_idx;
@@ -423,17 +432,6 @@ public class NSQDelDec
 		int pred_lag_ptr_offset, shp_lag_ptr_offset;
 		int[] psLPC_Q14;
 		int psLPC_Q14_offset;
-		NSQ_sample_struct psSampleState[][] = new NSQ_sample_struct[DEL_DEC_STATES_MAX][2];
-		/*
-		 * psSampleState is an two-dimension array of reference, which should be created manually.
-		 */
-		{
-			for (int Ini_i = 0; Ini_i < DEL_DEC_STATES_MAX; Ini_i++) {
-				for (int Ini_j = 0; Ini_j < 2; Ini_j++) {
-					psSampleState[Ini_i][Ini_j] = new NSQ_sample_struct();
-				}
-			}
-		}
 		NSQDelDecStruct psDD;
 		NSQ_sample_struct[] psSS;
 
@@ -712,12 +710,10 @@ public class NSQDelDec
 			if (RDmin_Q10 < RDmax_Q10) {
 				// SKP_Silk_copy_del_dec_state( &psDelDec[ RDmax_ind ], &psDelDec[ RDmin_ind ], i );
 				SKP_Silk_copy_del_dec_state(psDelDec[RDmax_ind], psDelDec[RDmin_ind], i);
-				// TODO:how to copy a struct ???
 				// SKP_memcpy( &psSampleState[ RDmax_ind ][ 0 ], &psSampleState[ RDmin_ind ][ 1 ],
 				// sizeof(
 				// NSQ_sample_struct ) );
-				psSampleState[RDmax_ind][0] = (NSQ_sample_struct) psSampleState[RDmin_ind][1]
-					.clone();
+				psSampleState[RDmax_ind][0].copyFrom(psSampleState[RDmin_ind][1]);
 			}
 
 			/* Write samples from winner to output and long-term filter states */
@@ -38,12 +38,13 @@ public class NoiseShapeAnalysisFLP
 		int x_offset)
 	{
 		SKP_Silk_shape_state_FLP psShapeSt = psEnc.sShape;
+		SKP_Silk_encoder_scratch_FLP scratch = psEnc.sScratch;
 		int k, nSamples;
 		float SNR_adj_dB, HarmBoost, HarmShapeGain, Tilt;
 		float nrg, pre_nrg = 0, log_energy, log_energy_prev, energy_variation;
 		float delta, BWExp1, BWExp2, gain_mult, gain_add, strength, b;
-		float[] x_windowed = new float[Define.SHAPE_LPC_WIN_MAX];
-		float[] auto_corr = new float[Define.SHAPE_LPC_ORDER_MAX + 1];
+		float[] x_windowed = scratch.shape_x_windowed;
+		float[] auto_corr = scratch.shape_auto_corr;
 		float[] x_ptr, pitch_res_ptr;
 		int x_ptr_offset, pitch_res_ptr_offset = 0;
 
@@ -178,7 +179,7 @@ public class NoiseShapeAnalysisFLP
 
 			/* Make sure to fit in Q13 SKP_int16 */
 			LPC_fit_int16(psEncCtrl.AR2, k * Define.SHAPE_LPC_ORDER_MAX, 1.0f, psEnc.sCmn.shapingLPCOrder,
-				3.999f);
+				3.999f, scratch);
 
 			/* Compute noise shaping filter coefficients */
 			// SKP_memcpy(
@@ -198,13 +199,15 @@ public class NoiseShapeAnalysisFLP
 			psEncCtrl.Gains[k] = (float) Math.sqrt(nrg);
 
 			/* Ratio of prediction gains, in energy domain */
-			float[] pre_nrg_djinnaddress = { pre_nrg };
+			float[] pre_nrg_djinnaddress = scratch.shape_pre_nrg_ptr;
+			pre_nrg_djinnaddress[0] = pre_nrg;
 			LPCInvPredGainFLP.SKP_Silk_LPC_inverse_pred_gain_FLP(pre_nrg_djinnaddress,
-				psEncCtrl.AR2, k * Define.SHAPE_LPC_ORDER_MAX, psEnc.sCmn.shapingLPCOrder);
+				psEncCtrl.AR2, k * Define.SHAPE_LPC_ORDER_MAX, psEnc.sCmn.shapingLPCOrder, scratch);
 			pre_nrg = pre_nrg_djinnaddress[0];
-			float[] nrg_djinnaddress = { nrg };
+			float[] nrg_djinnaddress = scratch.shape_nrg_ptr;
+			nrg_djinnaddress[0] = nrg;
 			LPCInvPredGainFLP.SKP_Silk_LPC_inverse_pred_gain_FLP(nrg_djinnaddress, psEncCtrl.AR1, k
-				* Define.SHAPE_LPC_ORDER_MAX, psEnc.sCmn.shapingLPCOrder);
+				* Define.SHAPE_LPC_ORDER_MAX, psEnc.sCmn.shapingLPCOrder, scratch);
 			nrg = nrg_djinnaddress[0];
 			psEncCtrl.GainsPre[k] = (float) Math.sqrt(pre_nrg / nrg);
 			// psEncCtrl->GainsPre[ k ] = 1.0f - 0.7f * ( 1.0f - pre_nrg / nrg );
@@ -340,16 +343,19 @@ public class NoiseShapeAnalysisFLP
 	 *        Number of LPC parameters in the input vector.
 	 * @param maxVal
 	 *        Maximum value allowed.
+	 * @param scratch
+	 *        Encoder scratch buffers.
 	 */
 	static void LPC_fit_int16(float[] a, /* I/O: Unstable/stabilized LPC vector [L] */
 		int a_offset, final float bwe, /* I: Bandwidth expansion factor */
 		final int L, /* I: Number of LPC parameters in the input vector */
-		float maxVal /* I Maximum value allowed */
+		float maxVal, /* I Maximum value allowed */
+		SKP_Silk_encoder_scratch_FLP scratch /* I/O Scratch buffers */
 	)
 	{
 		float maxabs, absval, sc;
 		int k, i, idx = 0;
-		float[] invGain = new float[1];
+		float[] invGain = scratch.shape_invGain_ptr;
 
 		BwexpanderFLP.SKP_Silk_bwexpander_FLP(a, a_offset, L, bwe);
 
@@ -386,7 +392,7 @@ public class NoiseShapeAnalysisFLP
 		/* Ensure stable LPCs */
 		/**********************/
 		for (k = 0; k < 1000; k++) {
-			if (LPCInvPredGainFLP.SKP_Silk_LPC_inverse_pred_gain_FLP(invGain, a, a_offset, L) == 1) {
+			if (LPCInvPredGainFLP.SKP_Silk_LPC_inverse_pred_gain_FLP(invGain, a, a_offset, L, scratch) == 1) {
 				BwexpanderFLP.SKP_Silk_bwexpander_FLP(a, a_offset, L, 0.997f);
 			}
 			else {
@@ -6,7 +6,6 @@
 package org.atalk.impl.neomedia.codec.audio.silk;
 
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.LTP_ORDER;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_FRAME_LENGTH;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LPC_ORDER;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NB_SUBFR;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.SIG_TYPE_UNVOICED;
@@ -203,24 +202,24 @@ public class PLC
 	{
 		int i, j, k;
 		short[] B_Q14;
-		short[] exc_buf = new short[MAX_FRAME_LENGTH];
+		short[] exc_buf = psDec.sScratch.PLC_exc_buf;
 		short[] exc_buf_ptr;
 		int exc_buf_ptr_offset;
 
 		short rand_scale_Q14;
-		short[] A_Q12_tmp = new short[MAX_LPC_ORDER];
+		short[] A_Q12_tmp = psDec.sScratch.PLC_A_Q12_tmp;
 
 		int rand_seed, harm_Gain_Q15, rand_Gain_Q15;
 		int lag, idx, sLTP_buf_idx, shift1, shift2;
-		int[] shift_ptr = new int[1];
+		int[] shift_ptr = psDec.sScratch.PLC_shift_ptr;
 
 		int energy1, energy2;
-		int[] energy_ptr = new int[1];
+		int[] energy_ptr = psDec.sScratch.PLC_energy_ptr;
 
 		int[] rand_ptr, pred_lag_ptr;
 		int rand_ptr_offset, pred_lag_ptr_offset;
 
-		int[] sig_Q10 = new int[MAX_FRAME_LENGTH];
+		int[] sig_Q10 = psDec.sScratch.PLC_sig_Q10;
 		int[] sig_Q10_ptr;
 		int sig_Q10_ptr_offset;
 
@@ -298,10 +297,10 @@ public class PLC
 			/* Reduce random noise for unvoiced frames with high LPC gain */
 			if (psDec.prev_sigtype == SIG_TYPE_UNVOICED) {
 				int invGain_Q30, down_scale_Q30;
-				int invGain_Q30_ptr[] = new int[1];
+				int invGain_Q30_ptr[] = psDec.sScratch.invGain_Q30_ptr;
 
 				LPCInvPredGain.SKP_Silk_LPC_inverse_pred_gain(invGain_Q30_ptr, psPLC.prevLPC_Q12,
-					psDec.LPC_order);
+					psDec.LPC_order, psDec.sScratch);
 				invGain_Q30 = invGain_Q30_ptr[0];
 
 				down_scale_Q30 = Math.min(((1 << 30) >> LOG2_INV_LPC_GAIN_HIGH_THRES), invGain_Q30);
@@ -465,8 +464,8 @@ public class PLC
 
 		if (psDec.lossCnt != 0) {
 			/* Calculate energy in concealed residual */
-			int[] energy_ptr = new int[1];
-			int[] energy_shift_ptr = new int[1];
+			int[] energy_ptr = psDec.sScratch.PLC_energy_ptr;
+			int[] energy_shift_ptr = psDec.sScratch.PLC_shift_ptr;
 			SumSqrShift.SKP_Silk_sum_sqr_shift(energy_ptr, energy_shift_ptr, signal, signal_offset,
 				length);
 			psPLC.conc_energy = energy_ptr[0];
@@ -476,8 +475,8 @@ public class PLC
 		}
 		else {
 			if (psDec.sPLC.last_frame_lost != 0) {
-				int[] energy_ptr = new int[1];
-				int[] energy_shift_ptr = new int[1];
+				int[] energy_ptr = psDec.sScratch.PLC_energy_ptr;
+				int[] energy_shift_ptr = psDec.sScratch.PLC_shift_ptr;
 
 				/* Calculate residual in decoded signal if last frame was lost */
 				SumSqrShift.SKP_Silk_sum_sqr_shift(energy_ptr, energy_shift_ptr, signal,
@@ -8,7 +8,6 @@ package org.atalk.impl.neomedia.codec.audio.silk;
 import static org.atalk.impl.neomedia.codec.audio.silk.CommonPitchEstDefines.PITCH_EST_D_SRCH_LENGTH;
 import static org.atalk.impl.neomedia.codec.audio.silk.CommonPitchEstDefines.PITCH_EST_FRAME_LENGTH_MS;
 import static org.atalk.impl.neomedia.codec.audio.silk.CommonPitchEstDefines.PITCH_EST_MAX_DECIMATE_STATE_LENGTH;
-import static org.atalk.impl.neomedia.codec.audio.silk.CommonPitchEstDefines.PITCH_EST_MAX_FRAME_LENGTH;
 import static org.atalk.impl.neomedia.codec.audio.silk.CommonPitchEstDefines.PITCH_EST_MAX_LAG;
 import static org.atalk.impl.neomedia.codec.audio.silk.CommonPitchEstDefines.PITCH_EST_MAX_LAG_MS;
 import static org.atalk.impl.neomedia.codec.audio.silk.CommonPitchEstDefines.PITCH_EST_MIN_LAG_MS;
@@ -64,6 +63,8 @@ public class PitchAnalysisCoreFLP
 	 *        sample frequency (kHz)
 	 * @param complexity
 	 *        Complexity setting, 0-2, where 2 is highest
+	 * @param scratch
+	 *        encoder scratch buffers
 	 * @return voicing estimate: 0 voiced, 1 unvoiced
 	 */
 	static int SKP_Silk_pitch_analysis_core_FLP( /* O voicing estimate: 0 voiced, 1 unvoiced */
@@ -76,36 +77,30 @@ public class PitchAnalysisCoreFLP
 		final float search_thres1, /* I first stage threshold for lag candidates 0 - 1 */
 		final float search_thres2, /* I final threshold for lag candidates 0 - 1 */
 		final int Fs_kHz, /* I sample frequency (kHz) */
-		final int complexity /* I Complexity setting, 0-2, where 2 is highest */
+		final int complexity, /* I Complexity setting, 0-2, where 2 is highest */
+		SKP_Silk_encoder_scratch_FLP scratch /* I/O Encoder scratch buffers */
 	)
 	{
-		float[] signal_8kHz = new float[PITCH_EST_FRAME_LENGTH_MS * 8];
-		float[] signal_4kHz = new float[PITCH_EST_FRAME_LENGTH_MS * 4];
-		float[] scratch_mem = new float[PITCH_EST_MAX_FRAME_LENGTH * 3];
-		float[] filt_state = new float[PITCH_EST_MAX_DECIMATE_STATE_LENGTH];
+		float[] signal_8kHz = scratch.pitch_signal_8kHz;
+		float[] signal_4kHz = scratch.pitch_signal_4kHz;
+		float[] scratch_mem = scratch.pitch_scratch_mem;
+		float[] filt_state = scratch.pitch_filt_state;
 		int i, k, d, j;
 		float threshold, contour_bias;
-		float[][] C = new float[PITCH_EST_NB_SUBFR][(PITCH_EST_MAX_LAG >> 1) + 5]; /*
-																					 * use to be +2
-																					 * but then
-																					 * valgrind
-																					 * reported
-																					 * errors for
-																					 * SWB
-																					 */
-		float[] CC = new float[PITCH_EST_NB_CBKS_STAGE2_EXT];
+		float[][] C = scratch.pitch_C;
+		float[] CC = scratch.pitch_CC;
 		float[] target_ptr, basis_ptr;
 		int target_ptr_offset, basis_ptr_offset;
 		double cross_corr, normalizer, energy, energy_tmp;
-		int[] d_srch = new int[PITCH_EST_D_SRCH_LENGTH];
-		short[] d_comp = new short[(PITCH_EST_MAX_LAG >> 1) + 5];
+		int[] d_srch = scratch.pitch_d_srch;
+		short[] d_comp = scratch.pitch_d_comp;
 		int length_d_srch, length_d_comp;
 		float Cmax, CCmax, CCmax_b, CCmax_new_b, CCmax_new;
 		int CBimax, CBimax_new, lag, start_lag, end_lag, lag_new;
 		int cbk_offset, cbk_size;
 		float lag_log2, prevLag_log2, delta_lag_log2_sqr;
-		float[][][] energies_st3 = new float[PITCH_EST_NB_SUBFR][PITCH_EST_NB_CBKS_STAGE3_MAX][PITCH_EST_NB_STAGE3_LAGS];
-		float[][][] cross_corr_st3 = new float[PITCH_EST_NB_SUBFR][PITCH_EST_NB_CBKS_STAGE3_MAX][PITCH_EST_NB_STAGE3_LAGS];
+		float[][][] energies_st3 = scratch.pitch_energies_st3;
+		float[][][] cross_corr_st3 = scratch.pitch_cross_corr_st3;
 
 		int diff, lag_counter;
 		int frame_length, frame_length_8kHz, frame_length_4kHz;
@@ -145,9 +140,9 @@ public class PitchAnalysisCoreFLP
 
 		/* Resample from input sampled at Fs_kHz to 8 kHz */
 		if (Fs_kHz == 12) {
-			short[] signal_12 = new short[12 * PITCH_EST_FRAME_LENGTH_MS];
-			short[] signal_8 = new short[8 * PITCH_EST_FRAME_LENGTH_MS];
-			int[] R23 = new int[6];
+			short[] signal_12 = scratch.pitch_signal_short;
+			short[] signal_8 = scratch.pitch_signal_8;
+			int[] R23 = scratch.pitch_filt_state_fix;
 
 			/* Resample to 12 -> 8 khz */
 			for (int i_djinn = 0; i_djinn < 6; i_djinn++)
@@ -155,7 +150,7 @@ public class PitchAnalysisCoreFLP
 			SigProcFLP.SKP_float2short_array(signal_12, 0, signal, 0,
 				PITCH_EST_FRAME_LENGTH_MS * 12);
 			ResamplerDown23.SKP_Silk_resampler_down2_3(R23, 0, signal_8, 0, signal_12, 0,
-				PITCH_EST_FRAME_LENGTH_MS * 12);
+				PITCH_EST_FRAME_LENGTH_MS * 12, scratch.pitch_resampler_buf);
 			SigProcFLP.SKP_short2float_array(signal_8kHz, 0, signal_8, 0, frame_length_8kHz);
 		}
 		else if (Fs_kHz == 16) {
@@ -177,9 +172,9 @@ public class PitchAnalysisCoreFLP
 			}
 		}
 		else if (Fs_kHz == 24) {
-			short[] signal_24 = new short[PITCH_EST_MAX_FRAME_LENGTH];
-			short[] signal_8 = new short[8 * PITCH_EST_FRAME_LENGTH_MS];
-			int[] filt_state_fix = new int[8];
+			short[] signal_24 = scratch.pitch_signal_short;
+			short[] signal_8 = scratch.pitch_signal_8;
+			int[] filt_state_fix = scratch.pitch_filt_state_fix;
 
 			/* Resample to 24 -> 8 khz */
 			SigProcFLP.SKP_float2short_array(signal_24, 0, signal, 0,
@@ -187,7 +182,7 @@ public class PitchAnalysisCoreFLP
 			for (int i_djinn = 0; i_djinn < 8; i_djinn++)
 				filt_state_fix[i_djinn] = 0;
 			ResamplerDown3.SKP_Silk_resampler_down3(filt_state_fix, 0, signal_8, 0, signal_24, 0,
-				24 * PITCH_EST_FRAME_LENGTH_MS);
+				24 * PITCH_EST_FRAME_LENGTH_MS, scratch.pitch_resampler_buf);
 			SigProcFLP.SKP_short2float_array(signal_8kHz, 0, signal_8, 0, frame_length_8kHz);
 		}
 		else {
@@ -496,8 +491,10 @@ public class PitchAnalysisCoreFLP
 			CCmax = -1000.0f;
 
 			/* Calculate the correlations and energies needed in stage 3 */
-			SKP_P_Ana_calc_corr_st3(cross_corr_st3, signal, 0, start_lag, sf_length, complexity);
-			SKP_P_Ana_calc_energy_st3(energies_st3, signal, 0, start_lag, sf_length, complexity);
+			SKP_P_Ana_calc_corr_st3(cross_corr_st3, signal, 0, start_lag, sf_length, complexity,
+				scratch.pitch_scratch_st3);
+			SKP_P_Ana_calc_energy_st3(energies_st3, signal, 0, start_lag, sf_length, complexity,
+				scratch.pitch_scratch_st3);
 
 			lag_counter = 0;
 			assert (lag == SigProcFIX.SKP_SAT16(lag));
@@ -573,6 +570,8 @@ public class PitchAnalysisCoreFLP
 	 *        sub frame length.
 	 * @param complexity
 	 *        Complexity setting.
+	 * @param scratch_mem
+	 *        scratch buffer of SCRATCH_SIZE.
 	 */
 	static void SKP_P_Ana_calc_corr_st3(float[][][] cross_corr_st3, float signal[], /*
 																					 * I vector to
@@ -580,7 +579,8 @@ public class PitchAnalysisCoreFLP
 																					 */
 		int signal_offset, int start_lag, /* I start lag */
 		int sf_length, /* I sub frame length */
-		int complexity /* I Complexity setting */
+		int complexity, /* I Complexity setting */
+		float[] scratch_mem /* I/O scratch buffer of SCRATCH_SIZE */
 	)
 	/***********************************************************************
 	 * Calculates the correlations used in stage 3 search. In order to cover the whole lag codebook
@@ -599,7 +599,6 @@ public class PitchAnalysisCoreFLP
 		int target_ptr_offset, basis_ptr_offset;
 		int i, j, k, lag_counter;
 		int cbk_offset, cbk_size, delta, idx;
-		float[] scratch_mem = new float[SCRATCH_SIZE];
 
 		assert (complexity >= SigProcFIX.SKP_Silk_PITCH_EST_MIN_COMPLEX);
 		assert (complexity <= SigProcFIX.SKP_Silk_PITCH_EST_MAX_COMPLEX);
@@ -650,6 +649,8 @@ public class PitchAnalysisCoreFLP
 	 *        sub frame length.
 	 * @param complexity
 	 *        Complexity setting.
+	 * @param scratch_mem
+	 *        scratch buffer of SCRATCH_SIZE.
 	 */
 	static void SKP_P_Ana_calc_energy_st3(float[][][] energies_st3, float signal[], /*
 																					 * I vector to
@@ -657,7 +658,8 @@ public class PitchAnalysisCoreFLP
 																					 */
 		int signal_offset, int start_lag, /* I start lag */
 		int sf_length, /* I sub frame length */
-		int complexity /* I Complexity setting */
+		int complexity, /* I Complexity setting */
+		float[] scratch_mem /* I/O scratch buffer of SCRATCH_SIZE */
 	)
 	/****************************************************************
 	 * Calculate the energies for first two subframes. The energies are calculated recursively.
@@ -668,7 +670,6 @@ public class PitchAnalysisCoreFLP
 		double energy;
 		int k, i, j, lag_counter;
 		int cbk_offset, cbk_size, delta, idx;
-		float[] scratch_mem = new float[SCRATCH_SIZE];
 
 		assert (complexity >= SigProcFIX.SKP_Silk_PITCH_EST_MIN_COMPLEX);
 		assert (complexity <= SigProcFIX.SKP_Silk_PITCH_EST_MAX_COMPLEX);
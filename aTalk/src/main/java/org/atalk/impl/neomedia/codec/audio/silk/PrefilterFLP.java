@@ -7,8 +7,6 @@ package org.atalk.impl.neomedia.codec.audio.silk;
 
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.HARM_SHAPE_FIR_TAPS;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.LTP_MASK;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_FRAME_LENGTH;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LPC_ORDER;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NB_SUBFR;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.SHAPE_LPC_ORDER_MAX;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.SIG_TYPE_VOICED;
@@ -42,17 +40,18 @@ public class PrefilterFLP
 		int x_offset)
 	{
 		SKP_Silk_prefilter_state_FLP P = psEnc.sPrefilt;
+		SKP_Silk_encoder_scratch_FLP scratch = psEnc.sScratch;
 		int j, k, lag;
 		float HarmShapeGain, Tilt, LF_MA_shp, LF_AR_shp;
-		float[] B = new float[2];
-		float[] AR1_shp = new float[NB_SUBFR * SHAPE_LPC_ORDER_MAX];
+		float[] B = scratch.prefilt_B;
+		float[] AR1_shp = scratch.prefilt_AR1_shp;
 		float[] px;
 		int px_offset;
 		float[] pxw, pst_res;
 		int pxw_offset;
 		int pst_res_offset;
-		float[] HarmShapeFIR = new float[3];
-		float[] st_res = new float[MAX_FRAME_LENGTH / NB_SUBFR + MAX_LPC_ORDER];
+		float[] HarmShapeFIR = scratch.prefilt_HarmShapeFIR;
+		float[] st_res = scratch.prefilt_st_res;
 
 		/* Setup pointers */
 		px = x;
@@ -28,8 +28,9 @@ public class ProcessGainsFLP
 	)
 	{
 		SKP_Silk_shape_state_FLP psShapeSt = psEnc.sShape;
+		SKP_Silk_encoder_scratch_FLP scratch = psEnc.sScratch;
 		int k;
-		int pGains_Q16[] = new int[NB_SUBFR];
+		int pGains_Q16[] = scratch.gains_Gains_Q16;
 		float s, InvMaxSqrVal, gain;
 
 		/* Gain reduction when LTP coding gain is high */
@@ -56,7 +57,7 @@ public class ProcessGainsFLP
 		}
 
 		/* Noise shaping quantization */
-		int[] LastGainIndex_ptr = new int[1];
+		int[] LastGainIndex_ptr = scratch.gains_LastGainIndex_ptr;
 		LastGainIndex_ptr[0] = psShapeSt.LastGainIndex;
 		GainQuant.SKP_Silk_gains_quant(psEncCtrl.sCmn.GainsIndices, pGains_Q16, LastGainIndex_ptr,
 			psEnc.sCmn.nFramesInPayloadBuf);
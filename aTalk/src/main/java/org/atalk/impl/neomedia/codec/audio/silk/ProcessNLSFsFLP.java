@@ -5,7 +5,6 @@
  */
 package org.atalk.impl.neomedia.codec.audio.silk;
 
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LPC_ORDER;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.SIG_TYPE_UNVOICED;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.SIG_TYPE_VOICED;
 
@@ -31,14 +30,15 @@ public class ProcessNLSFsFLP
 		float[] pNLSF /* I/O NLSFs (quantized output) */
 	)
 	{
+		SKP_Silk_encoder_scratch_FLP scratch = psEnc.sScratch;
 		boolean doInterpolate;
-		float pNLSFW[] = new float[MAX_LPC_ORDER];
+		float pNLSFW[] = scratch.NLSF_pNLSFW;
 		float NLSF_mu, NLSF_mu_fluc_red, i_sqr, NLSF_interpolation_factor = 0.0f;
 		final SKP_Silk_NLSF_CB_FLP psNLSF_CB_FLP;
 
 		/* Used only for NLSF interpolation */
-		float pNLSF0_temp[] = new float[MAX_LPC_ORDER];
-		float pNLSFW0_temp[] = new float[MAX_LPC_ORDER];
+		float pNLSF0_temp[] = scratch.NLSF_pNLSF0_temp;
+		float pNLSFW0_temp[] = scratch.NLSF_pNLSFW0_temp;
 		int i;
 
 		assert (psEncCtrl.sCmn.sigtype == SIG_TYPE_VOICED || psEncCtrl.sCmn.sigtype == SIG_TYPE_UNVOICED);
@@ -67,7 +67,7 @@ public class ProcessNLSFsFLP
 			/* Calculate the interpolated NLSF vector for the first half */
 			NLSF_interpolation_factor = 0.25f * psEncCtrl.sCmn.NLSFInterpCoef_Q2;
 			WrappersFLP.SKP_Silk_interpolate_wrapper_FLP(pNLSF0_temp, psEnc.sPred.prev_NLSFq,
-				pNLSF, NLSF_interpolation_factor, psEnc.sCmn.predictLPCOrder);
+				pNLSF, NLSF_interpolation_factor, psEnc.sCmn.predictLPCOrder, scratch);
 
 			/* Calculate first half NLSF weights for the interpolated NLSFs */
 			NLSFVQWeightsLaroiaFLP.SKP_Silk_NLSF_VQ_weights_laroia_FLP(pNLSFW0_temp, pNLSF0_temp,
@@ -87,20 +87,20 @@ public class ProcessNLSFsFLP
 		NLSFMSVQEncodeFLP.SKP_Silk_NLSF_MSVQ_encode_FLP(psEncCtrl.sCmn.NLSFIndices, pNLSF,
 			psNLSF_CB_FLP, psEnc.sPred.prev_NLSFq, pNLSFW, NLSF_mu, NLSF_mu_fluc_red,
 			psEnc.sCmn.NLSF_MSVQ_Survivors, psEnc.sCmn.predictLPCOrder,
-			psEnc.sCmn.first_frame_after_reset);
+			psEnc.sCmn.first_frame_after_reset, scratch);
 
 		/* Convert quantized NLSFs back to LPC coefficients */
 		WrappersFLP.SKP_Silk_NLSF2A_stable_FLP(psEncCtrl.PredCoef[1], pNLSF,
-			psEnc.sCmn.predictLPCOrder);
+			psEnc.sCmn.predictLPCOrder, scratch);
 
 		if (doInterpolate) {
 			/* Calculate the interpolated, quantized NLSF vector for the first half */
 			WrappersFLP.SKP_Silk_interpolate_wrapper_FLP(pNLSF0_temp, psEnc.sPred.prev_NLSFq,
-				pNLSF, NLSF_interpolation_factor, psEnc.sCmn.predictLPCOrder);
+				pNLSF, NLSF_interpolation_factor, psEnc.sCmn.predictLPCOrder, scratch);
 
 			/* Convert back to LPC coefficients */
 			WrappersFLP.SKP_Silk_NLSF2A_stable_FLP(psEncCtrl.PredCoef[0], pNLSF0_temp,
-				psEnc.sCmn.predictLPCOrder);
+				psEnc.sCmn.predictLPCOrder, scratch);
 
 		}
 		else {
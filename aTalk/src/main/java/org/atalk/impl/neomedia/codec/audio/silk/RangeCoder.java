@@ -387,6 +387,20 @@ public class RangeCoder
 		psRC.error = 0;
 	}
 
+	/**
+	 * Determine length of bitstream in bits; the number of bytes is ((nBits + 7) >> 3).
+	 * 
+	 * @param psRC
+	 *        compressed data structure.
+	 * @return returns number of BITS in stream.
+	 */
+	static int SKP_Silk_range_coder_get_length( /* O returns number of BITS in stream */
+	SKP_Silk_range_coder_state psRC /* I compressed data structure */
+	)
+	{
+		return (psRC.bufferIx << 3) + SKP_Silk_CLZ32((int) (psRC.range_Q16 - 1)) - 14;
+	}
+
 	/**
 	 * Determine length of bitstream.
 	 * 
@@ -429,9 +443,8 @@ public class RangeCoder
 		/* Lower limit of interval, shifted 8 bits to the right */
 		base_Q24 = psRC.base_Q32 >>> 8;
 
-		int[] nBytes_ptr = new int[1];
-		bits_in_stream = SKP_Silk_range_coder_get_length(psRC, nBytes_ptr);
-		nBytes = nBytes_ptr[0];
+		bits_in_stream = SKP_Silk_range_coder_get_length(psRC);
+		nBytes = ((bits_in_stream + 7) >> 3);
 
 		/* Number of additional bits (1..9) required to be stored to stream */
 		// TODO: bits_to_store = bits_in_stream - psRC.bufferIx << 3 ;
@@ -487,10 +500,9 @@ public class RangeCoder
 	)
 	{
 		int bits_in_stream, nBytes, mask;
-		int nBytes_ptr[] = new int[1];
 
-		bits_in_stream = SKP_Silk_range_coder_get_length(psRC, nBytes_ptr);
-		nBytes = nBytes_ptr[0];
+		bits_in_stream = SKP_Silk_range_coder_get_length(psRC);
+		nBytes = ((bits_in_stream + 7) >> 3);
 
 		/* Make sure not to read beyond buffer */
 		if (nBytes - 1 >= psRC.bufferLength) {
@@ -32,15 +32,17 @@ public class ResamplerDown3
 	 *        offset of valid data.
 	 * @param inLen
 	 *        Number of input samples
+	 * @param buf
+	 *        Scratch buffer [ RESAMPLER_MAX_BATCH_SIZE_IN + ORDER_FIR ]
 	 */
 	static void SKP_Silk_resampler_down3(int[] S, /* I/O: State vector [ 8 ] */
 		int S_offset, short[] out, /* O: Output signal [ floor(inLen/3) ] */
 		int out_offset, short[] in, /* I: Input signal [ inLen ] */
-		int in_offset, int inLen /* I: Number of input samples */
+		int in_offset, int inLen, /* I: Number of input samples */
+		int[] buf /* I/O: Scratch buffer [ RESAMPLER_MAX_BATCH_SIZE_IN + ORDER_FIR ] */
 	)
 	{
 		int nSamplesIn, counter, res_Q6;
-		int[] buf = new int[ResamplerPrivate.RESAMPLER_MAX_BATCH_SIZE_IN + ORDER_FIR];
 		int buf_ptr;
 
 		/* Copy buffered samples to start of buffer */
@@ -62,6 +62,15 @@ class SKP_Silk_resampler_state_struct
 	int[] sDownPre = new int[2];
 	int[] sUpPost = new int[2];
 
+	/* Scratch buffers of the resampler functions, not part of the state */
+	short[] in_buf = new short[480];
+	short[] out_buf = new short[480];
+	short[] buf_IIR_FIR = new short[2 * ResamplerPrivate.RESAMPLER_MAX_BATCH_SIZE_IN
+		+ ResamplerRom.RESAMPLER_ORDER_FIR_144];
+	short[] buf1_down_FIR = new short[ResamplerPrivate.RESAMPLER_MAX_BATCH_SIZE_IN / 2];
+	int[] buf2_down_FIR = new int[ResamplerPrivate.RESAMPLER_MAX_BATCH_SIZE_IN
+		+ ResamplerRom.RESAMPLER_DOWN_ORDER_FIR];
+
 	String down_pre_function;
 	DownPreFP downPreCB;
 
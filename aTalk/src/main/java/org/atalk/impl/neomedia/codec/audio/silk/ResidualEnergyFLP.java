@@ -5,10 +5,6 @@
  */
 package org.atalk.impl.neomedia.codec.audio.silk;
 
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_FRAME_LENGTH;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LPC_ORDER;
-import static org.atalk.impl.neomedia.codec.audio.silk.Define.NB_SUBFR;
-
 /**
  * Residual energy.
  *
@@ -112,18 +108,21 @@ public class ResidualEnergyFLP
 	 *        Subframe length
 	 * @param LPC_order
 	 *        LPC order
+	 * @param scratch
+	 *        Encoder scratch buffers
 	 */
 	static void SKP_Silk_residual_energy_FLP(float nrgs[], /* O Residual energy per subframe */
 		final float x[], /* I Input signal */
 		final float a[][], /* I AR coefs for each frame half */
 		final float gains[], /* I Quantization gains */
 		final int subfr_length, /* I Subframe length */
-		final int LPC_order /* I LPC order */
+		final int LPC_order, /* I LPC order */
+		SKP_Silk_encoder_scratch_FLP scratch /* I/O Scratch buffers */
 	)
 	{
 		int shift;
 		// SKP_float *LPC_res_ptr, LPC_res[ ( MAX_FRAME_LENGTH + NB_SUBFR * MAX_LPC_ORDER ) / 2 ];
-		float LPC_res_ptr[], LPC_res[] = new float[(MAX_FRAME_LENGTH + NB_SUBFR * MAX_LPC_ORDER) / 2];
+		float LPC_res_ptr[], LPC_res[] = scratch.resNrg_LPC_res;
 
 		// LPC_res_ptr = LPC_res + LPC_order;
 		LPC_res_ptr = LPC_res;
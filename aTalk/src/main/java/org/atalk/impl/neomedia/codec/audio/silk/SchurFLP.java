@@ -24,14 +24,17 @@ public class SchurFLP
 	 *        offset of valid data.
 	 * @param order
 	 *        order
+	 * @param scratch
+	 *        encoder scratch buffers.
 	 */
 	static void SKP_Silk_schur_FLP(float refl_coef[], /* O reflection coefficients (length order) */
 		int ref1_coef_offset, float auto_corr[], /* I autotcorreation sequence (length order+1) */
-		int auto_corr_offset, int order /* I order */
+		int auto_corr_offset, int order, /* I order */
+		SKP_Silk_encoder_scratch_FLP scratch /* I/O Scratch buffers */
 	)
 	{
 		int k, n;
-		float[][] C = new float[SigProcFIX.SKP_Silk_MAX_ORDER_LPC + 1][2];
+		float[][] C = scratch.schur_C;
 		float Ctmp1, Ctmp2, rc_tmp;
 
 		/* copy correlations */
@@ -0,0 +1,153 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.codec.audio.silk;
+
+import org.atalk.impl.neomedia.jitterbuffer.JitterBufferDecoder;
+
+/**
+ * Implements the SILK decoder for an <code>AdaptiveJitterBuffer</code>: a missing packet is decoded
+ * from the LBRR (in-band FEC) data of a later packet if there is some, else it is concealed by the
+ * SILK packet loss concealment (see <code>PLC</code>).
+ *
+ * @author Eng Chong Meng
+ */
+public class SilkJitterBufferDecoder implements JitterBufferDecoder {
+    /**
+     * The maximum number of frames encoded into a single payload as defined by the SILK standard.
+     */
+    private static final int MAX_FRAMES_PER_PAYLOAD = 5;
+
+    /**
+     * The (empty) input of the decoder when it conceals a lost frame.
+     */
+    private static final byte[] NO_DATA = new byte[0];
+
+    /**
+     * The SILK decoder control (structure).
+     */
+    private final SKP_SILK_SDK_DecControlStruct decControl;
+
+    /**
+     * The SILK decoder state.
+     */
+    private final SKP_Silk_decoder_state decState;
+
+    /**
+     * Whether a frame has been decoded; the SILK packet loss concealment cannot run before.
+     */
+    private boolean decoded;
+
+    /**
+     * The length of an output frame in samples.
+     */
+    private final int frameLength;
+
+    /**
+     * The length of the LBRR data found by the last search.
+     */
+    private final short[] lbrrBytes = new short[1];
+
+    /**
+     * The LBRR data found by the last search.
+     */
+    private final byte[] lbrrData = new byte[JavaEncoder.MAX_BYTES_PER_FRAME];
+
+    /**
+     * The length of an output frame as reported by the decoder.
+     */
+    private final short[] outLength = new short[1];
+
+    /**
+     * The sample rate of the decoded audio in Hz.
+     */
+    private final int sampleRate;
+
+    /**
+     * Initializes a new <code>SilkJitterBufferDecoder</code>.
+     *
+     * @param sampleRate the sample rate of the decoded audio in Hz
+     */
+    public SilkJitterBufferDecoder(int sampleRate) {
+        decState = new SKP_Silk_decoder_state();
+        if (DecAPI.SKP_Silk_SDK_InitDecoder(decState) != 0)
+            throw new IllegalStateException("DecAPI.SKP_Silk_SDK_InitDecoder");
+
+        decControl = new SKP_SILK_SDK_DecControlStruct();
+        decControl.API_sampleRate = sampleRate;
+        this.sampleRate = sampleRate;
+        frameLength = JavaDecoder.FRAME_DURATION * sampleRate / 1000;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxDecodedSamples() {
+        return MAX_FRAMES_PER_PAYLOAD * frameLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Decodes all the frames of the payload.
+     */
+    @Override
+    public int decode(byte[] in, int inOffset, int inLength, short[] out, int outOffset) {
+        int length = 0;
+        int frames = 0;
+
+        do {
+            outLength[0] = (short) frameLength;
+            if (DecAPI.SKP_Silk_SDK_Decode(decState, decControl, 0, in, inOffset, inLength,
+                    out, outOffset + length, outLength) != 0)
+                break;
+            length += outLength[0];
+        } while (decControl.moreInternalDecoderFrames != 0 && ++frames < MAX_FRAMES_PER_PAYLOAD);
+        if (length > 0)
+            decoded = true;
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Conceals as many frames as there were in the last decoded packet.
+     */
+    @Override
+    public int conceal(byte[] next, int nextOffset, int nextLength, int distance, short[] out, int outOffset) {
+        if (!decoded)
+            return 0;
+        if (next != null && distance > 0 && distance <= Define.MAX_LBRR_DELAY) {
+            lbrrBytes[0] = 0;
+            DecAPI.SKP_Silk_SDK_search_for_LBRR(next, nextOffset, (short) nextLength, distance,
+                    lbrrData, 0, lbrrBytes);
+            if (lbrrBytes[0] > 0) {
+                int length = decode(lbrrData, 0, lbrrBytes[0], out, outOffset);
+                if (length > 0)
+                    return length;
+            }
+        }
+
+        int frames = Math.max(1, Math.min(decState.nFramesInPacket, MAX_FRAMES_PER_PAYLOAD));
+        int length = 0;
+        for (int i = 0; i < frames; i++) {
+            outLength[0] = (short) frameLength;
+            if (DecAPI.SKP_Silk_SDK_Decode(decState, decControl, 1, NO_DATA, 0, 0,
+                    out, outOffset + length, outLength) != 0)
+                break;
+            length += outLength[0];
+        }
+        return length;
+    }
+}
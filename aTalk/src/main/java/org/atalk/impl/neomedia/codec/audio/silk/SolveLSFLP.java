@@ -25,19 +25,22 @@ public class SolveLSFLP
 	 *        Pointer to x solution vector
 	 * @param x_offset
 	 *        offset of valid data.
+	 * @param scratch
+	 *        encoder scratch buffers.
 	 */
 	static void SKP_Silk_solve_LDL_FLP(float[] A, /* I/O Symmetric square matrix, out: reg. */
 		int A_offset, final int M, /* I Size of matrix */
 		final float[] b, /* I Pointer to b vector */
 		float[] x, /* O Pointer to x solution vector */
-		int x_offset)
+		int x_offset, SKP_Silk_encoder_scratch_FLP scratch /* I/O Scratch buffers */
+	)
 	{
 		int i;
 		// float L[][] = new float[MAX_MATRIX_SIZE][MAX_MATRIX_SIZE];
 		// TODO:change L from two dimension to one dimension.
-		float L_tmp[] = new float[MAX_MATRIX_SIZE * MAX_MATRIX_SIZE];
-		float T[] = new float[MAX_MATRIX_SIZE];
-		float Dinv[] = new float[MAX_MATRIX_SIZE];// inverse diagonal elements of D
+		float L_tmp[] = scratch.solve_L_tmp;
+		float T[] = scratch.solve_T;
+		float Dinv[] = scratch.solve_Dinv;// inverse diagonal elements of D
 
 		assert (M <= MAX_MATRIX_SIZE);
 
@@ -46,7 +49,7 @@ public class SolveLSFLP
 		 * diagonal
 		 ****************************************************/
 		// SKP_Silk_LDL_FLP( A, M, &L[ 0 ][ 0 ], Dinv );
-		SKP_Silk_LDL_FLP(A, A_offset, M, L_tmp, Dinv);
+		SKP_Silk_LDL_FLP(A, A_offset, M, L_tmp, Dinv, scratch);
 
 		/****************************************************
 		 * substitute D*(L^T) = T. ie: L*D*(L^T)*x = b => L*T = b <=> T = inv(L)*b
@@ -177,11 +180,14 @@ public class SolveLSFLP
 	 *        Pointer to Square Upper triangular Matrix
 	 * @param Dinv
 	 *        Pointer to vector holding the inverse diagonal elements of D
+	 * @param scratch
+	 *        encoder scratch buffers.
 	 */
 	static void SKP_Silk_LDL_FLP(float[] A, /* (I/O) Pointer to Symetric Square Matrix */
 		int A_offset, int M, /* (I) Size of Matrix */
 		float[] L, /* (I/O) Pointer to Square Upper triangular Matrix */
-		float[] Dinv /* (I/O) Pointer to vector holding the inverse diagonal elements of D */
+		float[] Dinv, /* (I/O) Pointer to vector holding the inverse diagonal elements of D */
+		SKP_Silk_encoder_scratch_FLP scratch /* (I/O) Scratch buffers */
 	)
 	{
 		/*
@@ -192,7 +198,7 @@ public class SolveLSFLP
 		float ptr1[], ptr2[];
 		int ptr1_offset, ptr2_offset;
 		double temp, diag_min_value;
-		float v[] = new float[MAX_MATRIX_SIZE], D[] = new float[MAX_MATRIX_SIZE]; // temp arrays
+		float v[] = scratch.solve_v, D[] = scratch.solve_D; // temp arrays
 
 		assert (M <= MAX_MATRIX_SIZE);
 
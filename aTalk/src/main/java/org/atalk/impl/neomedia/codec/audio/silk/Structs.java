@@ -6,11 +6,15 @@
 package org.atalk.impl.neomedia.codec.audio.silk;
 
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.DEC_HP_ORDER;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.DEL_DEC_STATES_MAX;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.FRAME_LENGTH_MS;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.LTP_ORDER;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_API_FS_KHZ;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_ARITHM_BYTES;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_FRAME_LENGTH;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LBRR_DELAY;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LPC_ORDER;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_NB_SHELL_BLOCKS;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NB_SOS;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NB_SUBFR;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NLSF_MSVQ_MAX_CB_STAGES;
@@ -66,6 +70,28 @@ class SKP_Silk_nsq_state implements Cloneable
 		return clone;
 	}
 
+	/**
+	 * Copies the fields of the source state the same way as <code>clone()</code>, i.e. the arrays
+	 * are shared and not copied.
+	 *
+	 * @param src
+	 *        the state to copy from
+	 */
+	public void shallowCopyFrom(SKP_Silk_nsq_state src)
+	{
+		this.xq = src.xq;
+		this.sLTP_shp_Q10 = src.sLTP_shp_Q10;
+		this.sLPC_Q14 = src.sLPC_Q14;
+		this.sAR2_Q14 = src.sAR2_Q14;
+		this.sLF_AR_shp_Q12 = src.sLF_AR_shp_Q12;
+		this.lagPrev = src.lagPrev;
+		this.sLTP_buf_idx = src.sLTP_buf_idx;
+		this.sLTP_shp_buf_idx = src.sLTP_shp_buf_idx;
+		this.rand_seed = src.rand_seed;
+		this.prev_inv_gain_Q16 = src.prev_inv_gain_Q16;
+		this.rewhite_flag = src.rewhite_flag;
+	}
+
 	/**
 	 * set all fields of the instance to zero
 	 */
@@ -124,6 +150,12 @@ class SKP_Silk_VAD_state
 	int[] inv_NL = new int[VAD_N_BANDS]; /* Inverse noise energy level in each band */
 	int[] NoiseLevelBias = new int[VAD_N_BANDS]; /* Noise level estimator bias/offset */
 	int counter; /* Frame counter used in the initial phase */
+
+	/* Scratch buffers of SKP_Silk_VAD_GetSA_Q8(), not part of the state */
+	int[] scratch = new int[3 * MAX_FRAME_LENGTH / 2];
+	short[][] X = new short[VAD_N_BANDS][MAX_FRAME_LENGTH / 2];
+	int[] Xnrg = new int[VAD_N_BANDS];
+	int[] NrgToNoiseRatio_Q8 = new int[VAD_N_BANDS];
 }
 
 /**
@@ -140,6 +172,18 @@ class SKP_Silk_range_coder_state
 	long range_Q16;
 	int error;
 	byte[] buffer = new byte[MAX_ARITHM_BYTES];/* Buffer containing payload */
+
+	/* Scratch buffers of the pulses, shell and signs coders, not part of the state */
+	int[] abs_pulses = new int[MAX_FRAME_LENGTH];
+	int[] sum_pulses = new int[MAX_NB_SHELL_BLOCKS];
+	int[] nShifts = new int[MAX_NB_SHELL_BLOCKS];
+	int[] pulses_comb = new int[8];
+	int[] shell_pulses1 = new int[8];
+	int[] shell_pulses2 = new int[4];
+	int[] shell_pulses3 = new int[2];
+	int[] shell_pulses4 = new int[1];
+	int[] signs_cdf = new int[3];
+	int[] data_ptr = new int[1];
 }
 
 /**
@@ -155,6 +199,11 @@ class SKP_Silk_detect_SWB_state
 	int ActiveSpeech_ms; /* Accumulated time with active speech */
 	int SWB_detected; /* Flag to indicate SWB input */
 	int WB_detected; /* Flag to indicate WB input */
+
+	/* Scratch buffers of SKP_Silk_detect_SWB_input(), not part of the state */
+	short[] in_HP_8_kHz = new short[MAX_FRAME_LENGTH];
+	int[] shift = new int[1];
+	int[] energy_32 = new int[1];
 }
 
 /**
@@ -168,6 +217,10 @@ class SKP_Silk_LP_state
 	int[] In_LP_State = new int[2]; /* Low pass filter state */
 	int transition_frame_no; /* Counter which is mapped to a cut-off frequency */
 	int mode; /* Operating mode, 0: switch down, 1: switch up */
+
+	/* Scratch buffers of SKP_Silk_LP_variable_cutoff(), not part of the state */
+	int[] B_Q28 = new int[Define.TRANSITION_NB];
+	int[] A_Q28 = new int[Define.TRANSITION_NA];
 }
 
 /**
@@ -255,6 +308,7 @@ class SKP_Silk_NLSF_CB_struct
  */
 class SKP_Silk_encoder_state
 {
+	SKP_Silk_encoder_scratch sScratch; /* Scratch buffers, owned by the FLP encoder state */
 	SKP_Silk_range_coder_state sRC = new SKP_Silk_range_coder_state(); /* Range coder state */
 	SKP_Silk_range_coder_state sRC_LBRR = new SKP_Silk_range_coder_state(); /*
 																			 * Range coder state
@@ -373,6 +427,27 @@ class SKP_Silk_encoder_control
 	int[] pitchL = new int[NB_SUBFR];
 
 	int LBRR_usage; /* Low bitrate redundancy usage */
+
+	/**
+	 * set all fields of the instance to zero
+	 */
+	public void memZero()
+	{
+		this.lagIndex = 0;
+		this.contourIndex = 0;
+		this.PERIndex = 0;
+		Arrays.fill(this.LTPIndex, 0);
+		Arrays.fill(this.NLSFIndices, 0);
+		this.NLSFInterpCoef_Q2 = 0;
+		Arrays.fill(this.GainsIndices, 0);
+		this.Seed = 0;
+		this.LTP_scaleIndex = 0;
+		this.RateLevelIndex = 0;
+		this.QuantOffsetType = 0;
+		this.sigtype = 0;
+		Arrays.fill(this.pitchL, 0);
+		this.LBRR_usage = 0;
+	}
 }
 
 /**
@@ -420,6 +495,7 @@ class SKP_Silk_CNG_struct
  */
 class SKP_Silk_decoder_state
 {
+	SKP_Silk_decoder_scratch sScratch = new SKP_Silk_decoder_scratch(); /* Scratch buffers */
 	SKP_Silk_range_coder_state sRC = new SKP_Silk_range_coder_state(); /* Range coder state */
 	int prev_inv_gain_Q16;
 	int[] sLTP_Q16 = new int[2 * MAX_FRAME_LENGTH];
@@ -499,4 +575,116 @@ class SKP_Silk_decoder_control
 	int QuantOffsetType;
 	int sigtype;
 	int NLSFInterpCoef_Q2;
+
+	/**
+	 * set all fields of the instance to zero
+	 */
+	public void memZero()
+	{
+		Arrays.fill(this.pitchL, 0);
+		Arrays.fill(this.Gains_Q16, 0);
+		this.Seed = 0;
+		Arrays.fill(this.dummy_int32PredCoef_Q12, 0);
+		Arrays.fill(this.PredCoef_Q12[0], (short) 0);
+		Arrays.fill(this.PredCoef_Q12[1], (short) 0);
+		Arrays.fill(this.LTPCoef_Q14, (short) 0);
+		this.LTP_scale_Q14 = 0;
+		this.PERIndex = 0;
+		this.RateLevelIndex = 0;
+		this.QuantOffsetType = 0;
+		this.sigtype = 0;
+		this.NLSFInterpCoef_Q2 = 0;
+	}
+}
+
+/**
+ * Scratch buffers of the signal processing functions shared by the encoder and the decoder. The
+ * buffers hold no state between the calls; each encoder or decoder instance owns its buffers, so
+ * that a frame is processed without any allocation.
+ *
+ * @author Eng Chong Meng
+ */
+class SKP_Silk_sigproc_scratch
+{
+	/* SKP_Silk_LPC_inverse_pred_gain() */
+	int[][] invGain_Atmp_QA = new int[2][SigProcFIX.SKP_Silk_MAX_ORDER_LPC];
+	int[] invGain_Q30_ptr = new int[1];
+
+	/* SKP_Silk_NLSF2A() */
+	int[] NLSF2A_cos_LSF_Q20 = new int[SigProcFIX.SKP_Silk_MAX_ORDER_LPC];
+	int[] NLSF2A_P = new int[SigProcFIX.SKP_Silk_MAX_ORDER_LPC / 2 + 1];
+	int[] NLSF2A_Q = new int[SigProcFIX.SKP_Silk_MAX_ORDER_LPC / 2 + 1];
+	int[] NLSF2A_a_int32 = new int[SigProcFIX.SKP_Silk_MAX_ORDER_LPC];
+
+	/* SKP_Silk_A2NLSF() */
+	int[] A2NLSF_P = new int[SigProcFIX.SKP_Silk_MAX_ORDER_LPC / 2 + 1];
+	int[] A2NLSF_Q = new int[SigProcFIX.SKP_Silk_MAX_ORDER_LPC / 2 + 1];
+	int[][] A2NLSF_PQ = { A2NLSF_P, A2NLSF_Q };
+}
+
+/**
+ * Scratch buffers of the encoder functions shared with the fixed-point code.
+ *
+ * @author Eng Chong Meng
+ */
+class SKP_Silk_encoder_scratch extends SKP_Silk_sigproc_scratch
+{
+	/* SKP_Silk_NSQ() and SKP_Silk_NSQ_del_dec() */
+	int[] nsq_sLTP_Q16 = new int[2 * MAX_FRAME_LENGTH];
+	short[] nsq_sLTP = new short[2 * MAX_FRAME_LENGTH];
+	int[] nsq_FiltState = new int[MAX_LPC_ORDER];
+	int[] nsq_x_sc_Q10 = new int[MAX_FRAME_LENGTH / NB_SUBFR];
+	int[] nsq_smpl_buf_idx_ptr = new int[1];
+	NSQDelDecStruct[] nsq_psDelDec = new NSQDelDecStruct[DEL_DEC_STATES_MAX];
+	NSQ_sample_struct[][] nsq_psSampleState = new NSQ_sample_struct[DEL_DEC_STATES_MAX][2];
+	{
+		for (int i = 0; i < DEL_DEC_STATES_MAX; i++) {
+			nsq_psDelDec[i] = new NSQDelDecStruct();
+			nsq_psSampleState[i][0] = new NSQ_sample_struct();
+			nsq_psSampleState[i][1] = new NSQ_sample_struct();
+		}
+	}
+}
+
+/**
+ * Scratch buffers of the decoder.
+ *
+ * @author Eng Chong Meng
+ */
+class SKP_Silk_decoder_scratch extends SKP_Silk_sigproc_scratch
+{
+	/* SKP_Silk_SDK_Decode() */
+	int[] API_used_bytes_ptr = new int[1];
+	short[] API_samplesOut_tmp = new short[MAX_API_FS_KHZ * FRAME_LENGTH_MS];
+
+	/* SKP_Silk_decode_frame() */
+	SKP_Silk_decoder_control sDecCtrl = new SKP_Silk_decoder_control();
+	int[] frame_Pulses = new int[MAX_FRAME_LENGTH];
+
+	/* SKP_Silk_decode_parameters() */
+	int[] param_Ix_ptr = new int[1];
+	int[] param_Ixs = new int[NB_SUBFR];
+	int[] param_GainsIndices = new int[NB_SUBFR];
+	int[] param_NLSFIndices = new int[NLSF_MSVQ_MAX_CB_STAGES];
+	int[] param_pNLSF_Q15 = new int[MAX_LPC_ORDER];
+	int[] param_pNLSF0_Q15 = new int[MAX_LPC_ORDER];
+	int[] param_ptr = new int[1];
+
+	/* SKP_Silk_decode_core() */
+	short[] core_A_Q12_tmp = new short[MAX_LPC_ORDER];
+	short[] core_sLTP = new short[MAX_FRAME_LENGTH];
+	int[] core_vec_Q10 = new int[MAX_FRAME_LENGTH / NB_SUBFR];
+	int[] core_FiltState = new int[MAX_LPC_ORDER];
+
+	/* SKP_Silk_PLC_conceal() and SKP_Silk_PLC_glue_frames() */
+	short[] PLC_exc_buf = new short[MAX_FRAME_LENGTH];
+	short[] PLC_A_Q12_tmp = new short[MAX_LPC_ORDER];
+	int[] PLC_sig_Q10 = new int[MAX_FRAME_LENGTH];
+	int[] PLC_energy_ptr = new int[1];
+	int[] PLC_shift_ptr = new int[1];
+
+	/* SKP_Silk_CNG() */
+	short[] CNG_LPC_buf = new short[MAX_LPC_ORDER];
+	short[] CNG_sig = new short[MAX_FRAME_LENGTH];
+	int[] CNG_rand_seed_ptr = new int[1];
 }
@@ -5,13 +5,21 @@
  */
 package org.atalk.impl.neomedia.codec.audio.silk;
 
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.FIND_PITCH_LPC_ORDER_MAX;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.FIND_PITCH_LPC_WIN_MAX;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.LA_PITCH_MAX;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.LA_SHAPE_MAX;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.LTP_BUF_LENGTH;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.LTP_ORDER;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_ARITHM_BYTES;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_FRAME_LENGTH;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_LPC_ORDER;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_MATRIX_SIZE;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.MAX_NLSF_MSVQ_SURVIVORS;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.NB_SUBFR;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.NLSF_MSVQ_MAX_CB_STAGES;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.SHAPE_LPC_ORDER_MAX;
+import static org.atalk.impl.neomedia.codec.audio.silk.Define.SHAPE_LPC_WIN_MAX;
 import static org.atalk.impl.neomedia.codec.audio.silk.Define.VAD_N_BANDS;
 
 import java.util.Arrays;
@@ -218,6 +226,12 @@ class SKP_Silk_encoder_state_FLP
 															 * bitrate redundancy )
 															 */
 
+	/* Scratch buffers, also used by the common struct */
+	SKP_Silk_encoder_scratch_FLP sScratch = new SKP_Silk_encoder_scratch_FLP();
+	{
+		sCmn.sScratch = sScratch;
+	}
+
 	/*
 	 * Function pointer to noise shaping quantizer (will be set to SKP_Silk_NSQ or
 	 * SKP_Silk_NSQ_del_dec)
@@ -331,6 +345,220 @@ class SKP_Silk_encoder_control_FLP
 	float[] input_quality_bands = new float[VAD_N_BANDS];
 	float input_tilt;
 	float[] ResNrg = new float[NB_SUBFR]; /* Residual energy per subframe */
+
+	/**
+	 * set all fields of the instance to zero
+	 */
+	public void memZero()
+	{
+		this.sCmn.memZero();
+
+		Arrays.fill(this.Gains, 0);
+		Arrays.fill(this.PredCoef[0], 0);
+		Arrays.fill(this.PredCoef[1], 0);
+		Arrays.fill(this.LTPCoef, 0);
+		this.LTP_scale = 0;
+
+		Arrays.fill(this.Gains_Q16, 0);
+		Arrays.fill(this.dummy_int32PredCoef_Q12, 0);
+		Arrays.fill(this.PredCoef_Q12[0], (short) 0);
+		Arrays.fill(this.PredCoef_Q12[1], (short) 0);
+		Arrays.fill(this.LTPCoef_Q14, (short) 0);
+		this.LTP_scale_Q14 = 0;
+
+		this.dummy_int32AR2_Q13 = 0;
+		Arrays.fill(this.AR2_Q13, (short) 0);
+		Arrays.fill(this.LF_shp_Q14, 0);
+		Arrays.fill(this.Tilt_Q14, 0);
+		Arrays.fill(this.HarmShapeGain_Q14, 0);
+		this.Lambda_Q10 = 0;
+
+		Arrays.fill(this.AR1, 0);
+		Arrays.fill(this.AR2, 0);
+		Arrays.fill(this.LF_MA_shp, 0);
+		Arrays.fill(this.LF_AR_shp, 0);
+		Arrays.fill(this.GainsPre, 0);
+		Arrays.fill(this.HarmBoost, 0);
+		Arrays.fill(this.Tilt, 0);
+		Arrays.fill(this.HarmShapeGain, 0);
+		this.Lambda = 0;
+		this.input_quality = 0;
+		this.coding_quality = 0;
+		this.pitch_freq_low_Hz = 0;
+		this.current_SNR_dB = 0;
+
+		this.sparseness = 0;
+		this.LTPredCodGain = 0;
+		Arrays.fill(this.input_quality_bands, 0);
+		this.input_tilt = 0;
+		Arrays.fill(this.ResNrg, 0);
+	}
+}
+
+/**
+ * Scratch buffers of the FLP encoder, see <code>SKP_Silk_sigproc_scratch</code>. The fields are
+ * grouped and prefixed by the function using them.
+ *
+ * @author Eng Chong Meng
+ */
+class SKP_Silk_encoder_scratch_FLP extends SKP_Silk_encoder_scratch
+{
+	/* SKP_Silk_SDK_Encode() */
+	short[] API_MaxBytesOut_ptr = new short[1];
+
+	/* SKP_Silk_encode_frame_FLP() */
+	SKP_Silk_encoder_control_FLP sEncCtrl = new SKP_Silk_encoder_control_FLP();
+	short[] frame_pIn_HP = new short[MAX_FRAME_LENGTH];
+	short[] frame_pIn_HP_LP = new short[MAX_FRAME_LENGTH];
+	float[] frame_xfw = new float[MAX_FRAME_LENGTH];
+	float[] frame_res_pitch = new float[2 * MAX_FRAME_LENGTH + LA_PITCH_MAX];
+	byte[] frame_LBRRpayload = new byte[MAX_ARITHM_BYTES];
+	short[] frame_nBytesLBRR = new short[1];
+	int[] frame_nBytes = new int[1];
+
+	/* SKP_Silk_LBRR_encode_FLP() */
+	int[] LBRR_Gains_Q16 = new int[NB_SUBFR];
+	int[] LBRR_TempGainsIndices = new int[NB_SUBFR];
+	float[] LBRR_TempGains = new float[NB_SUBFR];
+	int[] LBRR_nBytes = new int[1];
+	int[] LBRR_prevLastGainIndex_ptr = new int[1];
+
+	/* SKP_Silk_HP_variable_cutoff_FLP() */
+	int[] HP_B_Q28 = new int[3];
+	int[] HP_A_Q28 = new int[2];
+
+	/* SKP_Silk_find_pitch_lags_FLP() */
+	float[] pitch_auto_corr = new float[FIND_PITCH_LPC_ORDER_MAX + 1];
+	float[] pitch_A = new float[FIND_PITCH_LPC_ORDER_MAX];
+	float[] pitch_refl_coef = new float[FIND_PITCH_LPC_ORDER_MAX];
+	float[] pitch_Wsig = new float[FIND_PITCH_LPC_WIN_MAX];
+	int[] pitch_lagIndex_ptr = new int[1];
+	int[] pitch_contourIndex_ptr = new int[1];
+	float[] pitch_LTPCorr_ptr = new float[1];
+
+	/* SKP_Silk_pitch_analysis_core_FLP() */
+	float[] pitch_signal_8kHz = new float[CommonPitchEstDefines.PITCH_EST_FRAME_LENGTH_MS * 8];
+	float[] pitch_signal_4kHz = new float[CommonPitchEstDefines.PITCH_EST_FRAME_LENGTH_MS * 4];
+	float[] pitch_scratch_mem = new float[CommonPitchEstDefines.PITCH_EST_MAX_FRAME_LENGTH * 3];
+	float[] pitch_filt_state = new float[CommonPitchEstDefines.PITCH_EST_MAX_DECIMATE_STATE_LENGTH];
+	float[][] pitch_C = new float[CommonPitchEstDefines.PITCH_EST_NB_SUBFR][(CommonPitchEstDefines.PITCH_EST_MAX_LAG >> 1) + 5];
+	float[] pitch_CC = new float[CommonPitchEstDefines.PITCH_EST_NB_CBKS_STAGE2_EXT];
+	int[] pitch_d_srch = new int[CommonPitchEstDefines.PITCH_EST_D_SRCH_LENGTH];
+	short[] pitch_d_comp = new short[(CommonPitchEstDefines.PITCH_EST_MAX_LAG >> 1) + 5];
+	float[][][] pitch_energies_st3 = new float[CommonPitchEstDefines.PITCH_EST_NB_SUBFR][CommonPitchEstDefines.PITCH_EST_NB_CBKS_STAGE3_MAX][CommonPitchEstDefines.PITCH_EST_NB_STAGE3_LAGS];
+	float[][][] pitch_cross_corr_st3 = new float[CommonPitchEstDefines.PITCH_EST_NB_SUBFR][CommonPitchEstDefines.PITCH_EST_NB_CBKS_STAGE3_MAX][CommonPitchEstDefines.PITCH_EST_NB_STAGE3_LAGS];
+	short[] pitch_signal_short = new short[CommonPitchEstDefines.PITCH_EST_MAX_FRAME_LENGTH];
+	short[] pitch_signal_8 = new short[8 * CommonPitchEstDefines.PITCH_EST_FRAME_LENGTH_MS];
+	int[] pitch_filt_state_fix = new int[8];
+	float[] pitch_scratch_st3 = new float[PitchAnalysisCoreFLP.SCRATCH_SIZE];
+	int[] pitch_resampler_buf = new int[ResamplerPrivate.RESAMPLER_MAX_BATCH_SIZE_IN
+		+ Math.max(ResamplerDown23.ORDER_FIR, ResamplerDown3.ORDER_FIR)];
+
+	/* SKP_Silk_schur_FLP() */
+	float[][] schur_C = new float[SigProcFIX.SKP_Silk_MAX_ORDER_LPC + 1][2];
+
+	/* SKP_Silk_LPC_inverse_pred_gain_FLP() */
+	float[][] invGainFLP_Atmp = new float[2][SigProcFIX.SKP_Silk_MAX_ORDER_LPC];
+
+	/* SKP_Silk_noise_shape_analysis_FLP() */
+	float[] shape_x_windowed = new float[SHAPE_LPC_WIN_MAX];
+	float[] shape_auto_corr = new float[SHAPE_LPC_ORDER_MAX + 1];
+	float[] shape_pre_nrg_ptr = new float[1];
+	float[] shape_nrg_ptr = new float[1];
+	float[] shape_invGain_ptr = new float[1];
+
+	/* SKP_Silk_prefilter_FLP() */
+	float[] prefilt_B = new float[2];
+	float[] prefilt_AR1_shp = new float[NB_SUBFR * SHAPE_LPC_ORDER_MAX];
+	float[] prefilt_HarmShapeFIR = new float[3];
+	float[] prefilt_st_res = new float[MAX_FRAME_LENGTH / NB_SUBFR + MAX_LPC_ORDER];
+
+	/* SKP_Silk_find_pred_coefs_FLP() */
+	float[] pred_WLTP = new float[NB_SUBFR * LTP_ORDER * LTP_ORDER];
+	float[] pred_invGains = new float[NB_SUBFR];
+	float[] pred_Wght = new float[NB_SUBFR];
+	float[] pred_NLSF = new float[MAX_LPC_ORDER];
+	float[] pred_LPC_in_pre = new float[NB_SUBFR * MAX_LPC_ORDER + MAX_FRAME_LENGTH];
+	float[] pred_LTPredCodGain_ptr = new float[1];
+	int[] pred_PERIndex_ptr = new int[1];
+	int[] pred_NLSFInterpCoef_Q2_ptr = new int[1];
+
+	/* SKP_Silk_find_LTP_FLP() */
+	float[] LTP_d = new float[NB_SUBFR];
+	float[] LTP_delta_b = new float[LTP_ORDER];
+	float[] LTP_w = new float[NB_SUBFR];
+	float[] LTP_nrg = new float[NB_SUBFR];
+	float[] LTP_Rr = new float[LTP_ORDER];
+	float[] LTP_rr = new float[NB_SUBFR];
+
+	/* SKP_Silk_solve_LDL_FLP() and SKP_Silk_LDL_FLP() */
+	float[] solve_L_tmp = new float[MAX_MATRIX_SIZE * MAX_MATRIX_SIZE];
+	float[] solve_T = new float[MAX_MATRIX_SIZE];
+	float[] solve_Dinv = new float[MAX_MATRIX_SIZE];
+	float[] solve_v = new float[MAX_MATRIX_SIZE];
+	float[] solve_D = new float[MAX_MATRIX_SIZE];
+
+	/* SKP_Silk_quant_LTP_gains_FLP() */
+	int[] LTPq_temp_idx = new int[NB_SUBFR];
+	float[] LTPq_rate_dist_subfr_ptr = new float[1];
+
+	/* SKP_Silk_find_LPC_FLP() */
+	float[] LPC_a = new float[MAX_LPC_ORDER];
+	float[] LPC_a_tmp = new float[MAX_LPC_ORDER];
+	float[] LPC_NLSF0 = new float[MAX_LPC_ORDER];
+	float[] LPC_res = new float[(MAX_FRAME_LENGTH + NB_SUBFR * MAX_LPC_ORDER) / 2];
+
+	/* SKP_Silk_burg_modified_FLP() */
+	double[] burg_C_first_row = new double[SigProcFIX.SKP_Silk_MAX_ORDER_LPC];
+	double[] burg_C_last_row = new double[SigProcFIX.SKP_Silk_MAX_ORDER_LPC];
+	double[] burg_CAf = new double[SigProcFIX.SKP_Silk_MAX_ORDER_LPC + 1];
+	double[] burg_CAb = new double[SigProcFIX.SKP_Silk_MAX_ORDER_LPC + 1];
+	double[] burg_Af = new double[SigProcFIX.SKP_Silk_MAX_ORDER_LPC];
+
+	/* SKP_Silk_residual_energy_FLP() */
+	float[] resNrg_LPC_res = new float[(MAX_FRAME_LENGTH + NB_SUBFR * MAX_LPC_ORDER) / 2];
+
+	/* SKP_Silk_process_NLSFs_FLP() */
+	float[] NLSF_pNLSFW = new float[MAX_LPC_ORDER];
+	float[] NLSF_pNLSF0_temp = new float[MAX_LPC_ORDER];
+	float[] NLSF_pNLSFW0_temp = new float[MAX_LPC_ORDER];
+
+	/* SKP_Silk_NLSF_MSVQ_encode_FLP(), sized for the non low complexity mode */
+	float[] MSVQ_pNLSF_in = new float[MAX_LPC_ORDER];
+	float[] MSVQ_pRateDist = new float[Define.NLSF_MSVQ_TREE_SEARCH_MAX_VECTORS_EVALUATED()];
+	float[] MSVQ_pRate = new float[MAX_NLSF_MSVQ_SURVIVORS];
+	float[] MSVQ_pRate_new = new float[MAX_NLSF_MSVQ_SURVIVORS];
+	int[] MSVQ_pTempIndices = new int[MAX_NLSF_MSVQ_SURVIVORS];
+	int[] MSVQ_pPath = new int[MAX_NLSF_MSVQ_SURVIVORS * NLSF_MSVQ_MAX_CB_STAGES];
+	int[] MSVQ_pPath_new = new int[MAX_NLSF_MSVQ_SURVIVORS * NLSF_MSVQ_MAX_CB_STAGES];
+	float[] MSVQ_pRes = new float[MAX_NLSF_MSVQ_SURVIVORS * MAX_LPC_ORDER];
+	float[] MSVQ_pRes_new = new float[MAX_NLSF_MSVQ_SURVIVORS * MAX_LPC_ORDER];
+
+	/* SKP_Silk_process_gains_FLP() */
+	int[] gains_Gains_Q16 = new int[NB_SUBFR];
+	int[] gains_LastGainIndex_ptr = new int[1];
+
+	/* Wrappers of the fixed point functions */
+	int[] wrap_NLSF_fix = new int[MAX_LPC_ORDER];
+	int[] wrap_a_fix_Q16 = new int[MAX_LPC_ORDER];
+	short[] wrap_a_fix_Q12 = new short[MAX_LPC_ORDER];
+	int[] wrap_ndelta_min_Q15 = new int[MAX_LPC_ORDER + 1];
+	int[] wrap_x0_int = new int[MAX_LPC_ORDER];
+	int[] wrap_x1_int = new int[MAX_LPC_ORDER];
+	int[] wrap_xi_int = new int[MAX_LPC_ORDER];
+	int[] wrap_SA_Q8 = new int[1];
+	int[] wrap_SNR_dB_Q7 = new int[1];
+	int[] wrap_Tilt_Q15 = new int[1];
+	int[] wrap_Quality_Bands_Q15 = new int[VAD_N_BANDS];
+	short[] wrap_x_16 = new short[MAX_FRAME_LENGTH];
+	int[] wrap_Gains_Q16 = new int[NB_SUBFR];
+	short[][] wrap_PredCoef_Q12 = new short[2][MAX_LPC_ORDER];
+	short[] wrap_PredCoef_Q12_dim1 = new short[2 * MAX_LPC_ORDER];
+	short[] wrap_LTPCoef_Q14 = new short[LTP_ORDER * NB_SUBFR];
+	short[] wrap_AR2_Q13 = new short[NB_SUBFR * SHAPE_LPC_ORDER_MAX];
+	int[] wrap_LF_shp_Q14 = new int[NB_SUBFR];
+	int[] wrap_Tilt_Q14 = new int[NB_SUBFR];
+	int[] wrap_HarmShapeGain_Q14 = new int[NB_SUBFR];
 }
 
 interface NoiseShapingQuantizerFP
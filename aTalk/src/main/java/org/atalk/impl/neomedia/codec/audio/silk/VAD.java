@@ -90,14 +90,14 @@ public class VAD
 	)
 	{
 		int SA_Q15, input_tilt;
-		int[] scratch = new int[3 * Define.MAX_FRAME_LENGTH / 2];
+		int[] scratch = psSilk_VAD.scratch;
 		int decimated_framelength, dec_subframe_length, dec_subframe_offset, SNR_Q7, i, b, s;
 		int sumSquared = 0, smooth_coef_Q16;
 		short HPstateTmp;
 
-		short[][] X = new short[Define.VAD_N_BANDS][Define.MAX_FRAME_LENGTH / 2];
-		int[] Xnrg = new int[Define.VAD_N_BANDS];
-		int[] NrgToNoiseRatio_Q8 = new int[Define.VAD_N_BANDS];
+		short[][] X = psSilk_VAD.X;
+		int[] Xnrg = psSilk_VAD.Xnrg;
+		int[] NrgToNoiseRatio_Q8 = psSilk_VAD.NrgToNoiseRatio_Q8;
 		int speech_nrg, x_tmp;
 		int ret = 0;
 
@@ -7,6 +7,7 @@ package org.atalk.impl.neomedia.device;
 
 import org.atalk.impl.neomedia.audiolevel.AudioLevelEffect;
 import org.atalk.impl.neomedia.audiolevel.AudioLevelEffect2;
+import org.atalk.impl.neomedia.jitterbuffer.AdaptiveJitterBufferDataSource;
 import org.atalk.impl.neomedia.jmfext.media.renderer.audio.AbstractAudioRenderer;
 import org.atalk.service.neomedia.VolumeControl;
 import org.atalk.service.neomedia.event.SimpleAudioLevelListener;
@@ -20,6 +21,8 @@ import javax.media.Renderer;
 import javax.media.UnsupportedPlugInException;
 import javax.media.control.TrackControl;
 import javax.media.format.AudioFormat;
+import javax.media.protocol.PushBufferDataSource;
+import javax.media.rtp.ReceiveStream;
 
 import timber.log.Timber;
 
@@ -97,6 +100,20 @@ public class AudioMediaDeviceSession extends MediaDeviceSession
         return renderer;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Overrides the super implementation in order to play back the audio of the codecs which
+     * support it through the adaptive jitter buffer of neomedia, if it is enabled.
+     */
+    @Override
+    protected PushBufferDataSource createPlaybackDataSource(ReceiveStream receiveStream,
+            PushBufferDataSource dataSource)
+    {
+        PushBufferDataSource jitterBufferDataSource = AdaptiveJitterBufferDataSource.create(dataSource);
+        return (jitterBufferDataSource == null) ? dataSource : jitterBufferDataSource;
+    }
+
     /**
      * Returns the last audio level that was measured by this device session for the specified <code>ssrc</code>.
      *
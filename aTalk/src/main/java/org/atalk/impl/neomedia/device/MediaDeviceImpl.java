@@ -7,6 +7,7 @@ package org.atalk.impl.neomedia.device;
 
 import java.awt.Dimension;
 import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +30,7 @@ import org.atalk.impl.neomedia.protocol.CaptureDeviceDelegatePushBufferDataSourc
 import org.atalk.impl.timberlog.TimberLog;
 import org.atalk.service.neomedia.MediaDirection;
 import org.atalk.service.neomedia.QualityPreset;
+import org.atalk.service.neomedia.RTPExtension;
 import org.atalk.service.neomedia.codec.EncodingConfiguration;
 import org.atalk.service.neomedia.device.MediaDevice;
 import org.atalk.service.neomedia.device.ScreenDevice;
@@ -119,6 +121,11 @@ public class MediaDeviceImpl extends AbstractMediaDevice {
      */
     private final MediaType mediaType;
 
+    /**
+     * The RTP extensions supported by a video device, created on demand.
+     */
+    private List<RTPExtension> rtpExtensions = null;
+
     /**
      * Initializes a new <code>MediaDeviceImpl</code> instance which is to provide an implementation of
      * <code>MediaDevice</code> for a <code>CaptureDevice</code> with a specific <code>CaptureDeviceInfo</code>
@@ -270,6 +277,27 @@ public class MediaDeviceImpl extends AbstractMediaDevice {
         return mediaType;
     }
 
+    /**
+     * Returns a <code>List</code> containing, for a video device, the extension descriptor of the
+     * transport-wide sequence numbers which the transport-cc feedback of the send-side bandwidth
+     * estimation relies on.
+     *
+     * @return a <code>List</code> containing the <code>TRANSPORT_CC_URN</code> extension descriptor
+     * for a video device, or <code>null</code>.
+     */
+    @Override
+    public List<RTPExtension> getSupportedExtensions() {
+        if (!MediaType.VIDEO.equals(getMediaType()))
+            return super.getSupportedExtensions();
+
+        if (rtpExtensions == null) {
+            rtpExtensions = new ArrayList<>(1);
+            rtpExtensions.add(new RTPExtension(URI.create(RTPExtension.TRANSPORT_CC_URN),
+                    MediaDirection.SENDRECV));
+        }
+        return rtpExtensions;
+    }
+
     /**
      * Gets the list of <code>MediaFormat</code>s supported by this <code>MediaDevice</code> and enabled in <code>encodingConfiguration</code>.
      *
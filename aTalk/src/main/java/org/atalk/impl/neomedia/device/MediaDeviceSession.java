@@ -34,6 +34,7 @@ import javax.media.RealizeCompleteEvent;
 import javax.media.Renderer;
 import javax.media.UnsupportedPlugInException;
 import javax.media.control.FormatControl;
+import javax.media.control.JitterBufferControl;
 import javax.media.control.TrackControl;
 import javax.media.format.AudioFormat;
 import javax.media.format.VideoFormat;
@@ -45,6 +46,7 @@ import javax.media.rtp.ReceiveStream;
 
 import org.atalk.android.aTalkApp;
 import org.atalk.impl.neomedia.MediaStreamImpl;
+import org.atalk.impl.neomedia.MediaStreamStatsImpl;
 import org.atalk.impl.neomedia.ProcessorUtility;
 import org.atalk.impl.neomedia.control.AbstractControls;
 import org.atalk.impl.neomedia.format.MediaFormatImpl;
@@ -1583,6 +1585,43 @@ public class MediaDeviceSession extends PropertyChangeNotifier {
         }
     }
 
+    /**
+     * Creates the <code>PushBufferDataSource</code> which is to be played back for a specific
+     * <code>ReceiveStream</code> out of the <code>DataSource</code> of the <code>ReceiveStream</code>.
+     * Allows extenders to insert processing, such as their own jitter buffer, before the
+     * <code>Player</code>. The default implementation returns the specified <code>dataSource</code>.
+     *
+     * @param receiveStream the <code>ReceiveStream</code> to be played back
+     * @param dataSource the <code>DataSource</code> of <code>receiveStream</code>
+     * @return the <code>PushBufferDataSource</code> to be played back for <code>receiveStream</code>
+     */
+    protected PushBufferDataSource createPlaybackDataSource(ReceiveStream receiveStream,
+            PushBufferDataSource dataSource) {
+        return dataSource;
+    }
+
+    /**
+     * Gets the <code>JitterBufferControl</code> of the playback of a specific <code>ReceiveStream</code>
+     * on the <code>MediaDevice</code> represented by this instance, which is the one of the jitter
+     * buffer inserted by {@link #createPlaybackDataSource(ReceiveStream, PushBufferDataSource)} if
+     * any, else the one of the <code>ReceiveStream</code>.
+     *
+     * @param receiveStream the <code>ReceiveStream</code> to get the <code>JitterBufferControl</code> of
+     * @return the <code>JitterBufferControl</code> of the playback of <code>receiveStream</code> or
+     * <code>null</code> if there is none
+     */
+    public JitterBufferControl getJitterBufferControl(ReceiveStream receiveStream) {
+        Playback playback = getPlayback(receiveStream);
+
+        if ((playback != null) && (playback.dataSource != null)) {
+            JitterBufferControl jbc = (JitterBufferControl) playback.dataSource.getControl(
+                    JitterBufferControl.class.getName());
+            if (jbc != null)
+                return jbc;
+        }
+        return MediaStreamStatsImpl.getJitterBufferControl(receiveStream);
+    }
+
     /**
      * Adds a specific <code>ReceiveStream</code> to the list of playbacks of <code>ReceiveStream</code>s
      * and/or <code>DataSource</code>s performed by respective <code>Player</code>s on the
@@ -1608,8 +1647,8 @@ public class MediaDeviceSession extends PropertyChangeNotifier {
                 if (receiveStreamDataSource != null) {
                     if (receiveStreamDataSource instanceof PushBufferDataSource) {
                         receiveStreamDataSource = new ReceiveStreamPushBufferDataSource(
-                                receiveStream, (PushBufferDataSource) receiveStreamDataSource,
-                                true);
+                                receiveStream, createPlaybackDataSource(receiveStream,
+                                (PushBufferDataSource) receiveStreamDataSource), true);
                     }
                     else {
                         Timber.w("Adding ReceiveStream with DataSource not of type PushBufferDataSource but "
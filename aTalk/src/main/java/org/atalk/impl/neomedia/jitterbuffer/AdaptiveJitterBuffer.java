@@ -0,0 +1,697 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+import java.awt.Component;
+import java.util.Arrays;
+
+import javax.media.control.JitterBufferControl;
+
+import org.atalk.util.RTPUtils;
+
+/**
+ * An adaptive jitter buffer for audio which decodes the packets itself and plays out PCM at the
+ * pace of its consumer. The target delay follows the arrival statistics of the packets (see
+ * <code>DelayManager</code>); the actual delay is moved towards the target by stretching the decoded
+ * audio (see <code>TimeStretch</code>) instead of dropping packets or inserting silence. A packet
+ * which is missing when it is due is concealed by the <code>JitterBufferDecoder</code>, from the
+ * in-band FEC of a later packet where the codec has it.
+ *
+ * The packets are inserted by the receiving thread with {@link #insert} and the audio is read by the
+ * playout thread with {@link #read}; all the methods are synchronized.
+ *
+ * @author Eng Chong Meng
+ */
+public class AdaptiveJitterBuffer implements JitterBufferControl {
+    /**
+     * The default maximum delay in milliseconds; packets which would make the buffer longer are
+     * discarded.
+     */
+    public static final int DEFAULT_MAX_DELAY_MS = 600;
+
+    /**
+     * The default minimum target delay in milliseconds.
+     */
+    public static final int DEFAULT_MIN_DELAY_MS = 20;
+
+    /**
+     * The weight of the previous value in the filtered buffer level.
+     */
+    private static final double LEVEL_FILTER = 0.875;
+
+    /**
+     * The time in milliseconds after which concealing an underrun gives way to silence and
+     * buffering up to the target delay again, e.g. during a discontinuous transmission.
+     */
+    private static final int MAX_EXPAND_MS = 200;
+
+    /**
+     * The number of packets which can be buffered, a power of two.
+     */
+    private static final int MAX_PACKETS = 128;
+
+    /**
+     * The number of samples removed by accelerating.
+     */
+    private long acceleratedSamples;
+
+    /**
+     * The indicator which determines whether the playout waits for the buffer to fill up to the
+     * target delay, which is the case at the start and after a long underrun.
+     */
+    private boolean buffering = true;
+
+    /**
+     * The RTP clock rate of the stream in Hz.
+     */
+    private final int clockRate;
+
+    /**
+     * The number of samples produced by concealment.
+     */
+    private long concealedSamples;
+
+    /**
+     * The number of samples inserted by decelerating.
+     */
+    private long deceleratedSamples;
+
+    /**
+     * The decoder of the packets.
+     */
+    private final JitterBufferDecoder decoder;
+
+    /**
+     * The estimator of the target delay.
+     */
+    private final DelayManager delayManager;
+
+    /**
+     * The number of packets discarded because the buffer was longer than {@link #maxDelayMs}.
+     */
+    private int discardedFull;
+
+    /**
+     * The number of packets discarded because they arrived after they were due for playout.
+     */
+    private int discardedLate;
+
+    /**
+     * The number of packets discarded by resets of the buffer.
+     */
+    private int discardedReset;
+
+    /**
+     * The number of samples concealed in a row while no packet was buffered.
+     */
+    private int expandSamples;
+
+    /**
+     * The buffer level in milliseconds, filtered over the recent packets.
+     */
+    private double filteredLevelMs;
+
+    /**
+     * The sequence number of the packet with the highest sequence number inserted so far, or -1.
+     */
+    private int lastSeq = -1;
+
+    /**
+     * The RTP timestamp of the packet {@link #lastSeq}.
+     */
+    private long lastTimestamp;
+
+    /**
+     * The maximum delay in milliseconds.
+     */
+    private final int maxDelayMs;
+
+    /**
+     * The largest number of packets which the buffer has held.
+     */
+    private int maxSizeReached;
+
+    /**
+     * The sequence number of the next packet to be decoded, or -1 before the first packet.
+     */
+    private int nextSeq = -1;
+
+    /**
+     * The number of buffered packets.
+     */
+    private int packetCount;
+
+    /**
+     * The duration in milliseconds of a packet, as estimated from the RTP timestamps.
+     */
+    private int packetMs = 20;
+
+    /**
+     * The buffered packets, indexed by their sequence number modulo {@link #MAX_PACKETS}.
+     */
+    private final Packet[] packets = new Packet[MAX_PACKETS];
+
+    /**
+     * The decoded samples which have not been played out yet, from {@link #pcmStart} for
+     * {@link #pcmLength} samples.
+     */
+    private final short[] pcm;
+
+    /**
+     * The number of samples in {@link #pcm} which have not been played out yet.
+     */
+    private int pcmLength;
+
+    /**
+     * The index in {@link #pcm} of the next sample to be played out.
+     */
+    private int pcmStart;
+
+    /**
+     * The number of samples played out while not buffering.
+     */
+    private long playedSamples;
+
+    /**
+     * The sample rate in Hz of the decoded audio.
+     */
+    private final int sampleRate;
+
+    /**
+     * The time stretcher of the decoded audio.
+     */
+    private final TimeStretch timeStretch;
+
+    /**
+     * Initializes a new <code>AdaptiveJitterBuffer</code>.
+     *
+     * @param decoder the decoder of the packets
+     * @param clockRate the RTP clock rate of the stream in Hz
+     * @param minDelayMs the minimum target delay in milliseconds
+     * @param maxDelayMs the maximum delay in milliseconds
+     */
+    public AdaptiveJitterBuffer(JitterBufferDecoder decoder, int clockRate, int minDelayMs, int maxDelayMs) {
+        this.decoder = decoder;
+        this.clockRate = clockRate;
+        this.maxDelayMs = maxDelayMs;
+
+        sampleRate = decoder.getSampleRate();
+        delayManager = new DelayManager(clockRate, minDelayMs, maxDelayMs);
+        timeStretch = new TimeStretch(sampleRate);
+        pcm = new short[4 * decoder.getMaxDecodedSamples() + 2 * timeStretch.getMinLength()];
+    }
+
+    /**
+     * Inserts a received packet.
+     *
+     * @param seq the RTP sequence number of the packet
+     * @param timestamp the RTP timestamp of the packet
+     * @param data the payload of the packet
+     * @param offset the offset of the payload in <code>data</code>
+     * @param length the length in bytes of the payload
+     * @param arrivalMs the arrival time of the packet in milliseconds
+     */
+    public synchronized void insert(int seq, long timestamp, byte[] data, int offset, int length, long arrivalMs) {
+        seq &= 0xFFFF;
+        if (nextSeq < 0)
+            nextSeq = seq;
+
+        int delta = RTPUtils.getSequenceNumberDelta(seq, nextSeq);
+        if (delta >= 0 && delta < MAX_PACKETS) {
+            Packet p = packets[seq & (MAX_PACKETS - 1)];
+            if (p != null && p.used)
+                return; // a duplicate
+        }
+
+        // Late packets still count for the statistics: they are exactly those which have to raise the target.
+        delayManager.update(timestamp, arrivalMs);
+        if (delta < 0) {
+            discardedLate++;
+            return;
+        }
+        if (delta >= MAX_PACKETS) {
+            // Far ahead of the playout e.g. after a long pause of the sender; start over from it.
+            discardedReset += packetCount;
+            clearPackets();
+            nextSeq = seq;
+        }
+
+        int slot = seq & (MAX_PACKETS - 1);
+        Packet p = packets[slot];
+        if (p == null)
+            packets[slot] = p = new Packet();
+        p.set(seq, timestamp, data, offset, length, arrivalMs);
+        packetCount++;
+        if (packetCount > maxSizeReached)
+            maxSizeReached = packetCount;
+
+        if (lastSeq < 0) {
+            lastSeq = seq;
+            lastTimestamp = timestamp;
+        }
+        else {
+            int seqDelta = RTPUtils.getSequenceNumberDelta(seq, lastSeq);
+            if (seqDelta > 0) {
+                long tsDelta = RTPUtils.rtpTimestampDiff(timestamp, lastTimestamp);
+                if (tsDelta > 0 && seqDelta <= 2) {
+                    packetMs = Math.max(1, (int) (tsDelta * 1000 / clockRate / seqDelta));
+                    delayManager.setPacketMs(packetMs);
+                }
+                lastSeq = seq;
+                lastTimestamp = timestamp;
+            }
+        }
+
+        // Bound the delay by dropping the oldest packets.
+        while (packetCount > 1 && getCurrentDelayMs() > maxDelayMs) {
+            Packet oldest = findNextPacket();
+            oldest.used = false;
+            packetCount--;
+            discardedFull++;
+            nextSeq = (oldest.seq + 1) & 0xFFFF;
+        }
+    }
+
+    /**
+     * Reads the next samples to be played out; silence while buffering.
+     *
+     * @param out the array to write the samples into
+     * @param offset the offset in <code>out</code> at which to start writing
+     * @param length the number of samples to write
+     */
+    public synchronized void read(short[] out, int offset, int length) {
+        if (buffering) {
+            if (packetCount == 0 || getCurrentDelayMs() < delayManager.getTargetDelayMs()) {
+                Arrays.fill(out, offset, offset + length, (short) 0);
+                return;
+            }
+            buffering = false;
+            expandSamples = 0;
+            nextSeq = findNextPacket().seq;
+            filteredLevelMs = getCurrentDelayMs();
+        }
+
+        while (pcmLength < length) {
+            if (!produce())
+                break;
+        }
+
+        int n = Math.min(length, pcmLength);
+        System.arraycopy(pcm, pcmStart, out, offset, n);
+        pcmStart += n;
+        pcmLength -= n;
+        if (pcmLength == 0)
+            pcmStart = 0;
+        if (n < length)
+            Arrays.fill(out, offset + n, offset + length, (short) 0);
+        playedSamples += length;
+    }
+
+    /**
+     * Discards all the buffered packets and audio and the arrival statistics, e.g. when the stream
+     * is stopped.
+     */
+    public synchronized void reset() {
+        discardedReset += packetCount;
+        clearPackets();
+        pcmStart = 0;
+        pcmLength = 0;
+        nextSeq = -1;
+        lastSeq = -1;
+        buffering = true;
+        delayManager.reset();
+    }
+
+    /**
+     * Notifies this instance that a packet has been decoded; its first sample is to be played out
+     * after <code>queuedSamples</code> samples. Does nothing, allows the offline simulator to measure
+     * the mouth-to-ear delay.
+     *
+     * @param seq the RTP sequence number of the packet
+     * @param timestamp the RTP timestamp of the packet
+     * @param queuedSamples the number of samples to be played out before the packet
+     */
+    protected void packetDecoded(int seq, long timestamp, int queuedSamples) {
+    }
+
+    /**
+     * Decodes or conceals the next frame into {@link #pcm}.
+     *
+     * @return <code>false</code> if nothing was produced because the buffer has underrun for too long
+     */
+    private boolean produce() {
+        Packet p = packets[nextSeq & (MAX_PACKETS - 1)];
+        if (p != null && p.used && p.seq == nextSeq) {
+            decodePacket(p);
+            expandSamples = 0;
+            adapt();
+            return true;
+        }
+
+        int n;
+        if (packetCount > 0) {
+            // The packet is lost or too late, and a later one is already here.
+            Packet next = findNextPacket();
+            int distance = RTPUtils.getSequenceNumberDelta(next.seq, nextSeq);
+
+            compact(decoder.getMaxDecodedSamples());
+            n = decoder.conceal(next.data, 0, next.length, distance, pcm, pcmStart + pcmLength);
+            nextSeq = (nextSeq + 1) & 0xFFFF;
+        }
+        else {
+            if (expandSamples >= MAX_EXPAND_MS * sampleRate / 1000) {
+                buffering = true;
+                return false;
+            }
+            compact(decoder.getMaxDecodedSamples());
+            n = decoder.conceal(null, 0, 0, 0, pcm, pcmStart + pcmLength);
+        }
+        if (n <= 0) {
+            n = getSilenceSamples();
+            Arrays.fill(pcm, pcmStart + pcmLength, pcmStart + pcmLength + n, (short) 0);
+        }
+        pcmLength += n;
+        expandSamples += n;
+        concealedSamples += n;
+        return true;
+    }
+
+    /**
+     * Moves the buffer level towards the target delay by stretching the decoded audio which has not
+     * been played out yet.
+     */
+    private void adapt() {
+        int levelMs = getCurrentDelayMs();
+        filteredLevelMs = LEVEL_FILTER * filteredLevelMs + (1 - LEVEL_FILTER) * levelMs;
+
+        int targetMs = delayManager.getTargetDelayMs();
+        int lowMs = targetMs * 3 / 4;
+        int highMs = Math.max(targetMs, lowMs + packetMs);
+        boolean accelerate;
+        if (filteredLevelMs > highMs)
+            accelerate = true;
+        else if (filteredLevelMs < lowMs)
+            accelerate = false;
+        else
+            return;
+
+        int minLength = timeStretch.getMinLength();
+        if (pcmLength < minLength) {
+            // Stretching needs a few pitch periods; decode ahead if the next packet is here.
+            Packet p = packets[nextSeq & (MAX_PACKETS - 1)];
+            if (p == null || !p.used || p.seq != nextSeq)
+                return;
+            decodePacket(p);
+            if (pcmLength < minLength)
+                return;
+        }
+
+        int n;
+        if (accelerate) {
+            n = timeStretch.accelerate(pcm, pcmStart, pcmLength);
+            pcmLength -= n;
+            acceleratedSamples += n;
+            filteredLevelMs -= n * 1000D / sampleRate;
+        }
+        else {
+            compact(minLength / 2);
+            n = timeStretch.decelerate(pcm, pcmStart, pcmLength, pcm.length - pcmStart - pcmLength);
+            pcmLength += n;
+            deceleratedSamples += n;
+            filteredLevelMs += n * 1000D / sampleRate;
+        }
+    }
+
+    /**
+     * Discards all the buffered packets.
+     */
+    private void clearPackets() {
+        for (Packet p : packets) {
+            if (p != null)
+                p.used = false;
+        }
+        packetCount = 0;
+    }
+
+    /**
+     * Moves the samples not played out yet to the start of {@link #pcm} if there is no room for
+     * <code>room</code> more samples after them.
+     *
+     * @param room the number of samples to be appended
+     */
+    private void compact(int room) {
+        if (pcmStart + pcmLength + room > pcm.length) {
+            System.arraycopy(pcm, pcmStart, pcm, 0, pcmLength);
+            pcmStart = 0;
+        }
+    }
+
+    /**
+     * Decodes a specific packet, the one with sequence number {@link #nextSeq}, into {@link #pcm}.
+     *
+     * @param p the packet to decode
+     */
+    private void decodePacket(Packet p) {
+        compact(decoder.getMaxDecodedSamples());
+
+        int queuedSamples = pcmLength;
+        int n = decoder.decode(p.data, 0, p.length, pcm, pcmStart + pcmLength);
+        if (n <= 0) {
+            n = decoder.conceal(null, 0, 0, 0, pcm, pcmStart + pcmLength);
+            if (n <= 0) {
+                n = getSilenceSamples();
+                Arrays.fill(pcm, pcmStart + pcmLength, pcmStart + pcmLength + n, (short) 0);
+            }
+            concealedSamples += n;
+        }
+        pcmLength += n;
+
+        p.used = false;
+        packetCount--;
+        nextSeq = (nextSeq + 1) & 0xFFFF;
+        packetDecoded(p.seq, p.timestamp, queuedSamples);
+    }
+
+    /**
+     * Gets the number of samples of silence which replace a packet that cannot be decoded or
+     * concealed.
+     *
+     * @return the number of samples of one packet, at most the room left for a decoded one
+     */
+    private int getSilenceSamples() {
+        return Math.min(packetMs * sampleRate / 1000, decoder.getMaxDecodedSamples());
+    }
+
+    /**
+     * Finds the buffered packet with the lowest sequence number from {@link #nextSeq} on.
+     *
+     * @return the buffered packet with the lowest sequence number; <code>null</code> if there is none
+     */
+    private Packet findNextPacket() {
+        if (packetCount > 0) {
+            for (int i = 0; i < MAX_PACKETS; i++) {
+                Packet p = packets[(nextSeq + i) & (MAX_PACKETS - 1)];
+                if (p != null && p.used)
+                    return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the sample rate in Hz of the audio read from this buffer.
+     *
+     * @return the sample rate in Hz of the audio read from this buffer
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the current target delay in milliseconds.
+     *
+     * @return the current target delay in milliseconds
+     */
+    public synchronized int getTargetDelayMs() {
+        return delayManager.getTargetDelayMs();
+    }
+
+    /**
+     * Gets the percentage of the played out audio which has been produced by concealment.
+     *
+     * @return the percentage of the played out audio which has been produced by concealment
+     */
+    public synchronized double getPercentConcealed() {
+        return (playedSamples == 0) ? 0D : (100D * concealedSamples / playedSamples);
+    }
+
+    /**
+     * Gets the number of samples removed by accelerating, as a percentage of the played out audio.
+     *
+     * @return the percentage of the played out audio which has been removed by accelerating
+     */
+    public synchronized double getPercentAccelerated() {
+        return (playedSamples == 0) ? 0D : (100D * acceleratedSamples / playedSamples);
+    }
+
+    /**
+     * Gets the number of samples inserted by decelerating, as a percentage of the played out audio.
+     *
+     * @return the percentage of the played out audio which has been inserted by decelerating
+     */
+    public synchronized double getPercentDecelerated() {
+        return (playedSamples == 0) ? 0D : (100D * deceleratedSamples / playedSamples);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getAbsoluteMaximumDelay() {
+        return maxDelayMs;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The delay comprises the buffered packets and the decoded audio not played out yet.
+     */
+    @Override
+    public synchronized int getCurrentDelayMs() {
+        return pcmLength * 1000 / sampleRate + packetCount * packetMs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getCurrentDelayPackets() {
+        return getCurrentDelayMs() / packetMs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getCurrentPacketCount() {
+        return packetCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getCurrentSizePackets() {
+        return MAX_PACKETS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getDiscarded() {
+        return discardedFull + discardedLate + discardedReset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getDiscardedFull() {
+        return discardedFull;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getDiscardedLate() {
+        return discardedLate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getDiscardedReset() {
+        return discardedReset;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The buffer shrinks by accelerating the audio and never discards packets to do so.
+     */
+    @Override
+    public int getDiscardedShrink() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaximumDelay() {
+        return maxDelayMs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int getMaxSizeReached() {
+        return maxSizeReached;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Returns the target delay.
+     */
+    @Override
+    public int getNominalDelay() {
+        return getTargetDelayMs();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isAdaptiveBufferEnabled() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Component getControlComponent() {
+        return null;
+    }
+
+    /**
+     * A buffered packet; the instances are reused.
+     */
+    private static class Packet {
+        long arrivalMs;
+        byte[] data = new byte[0];
+        int length;
+        int seq;
+        long timestamp;
+        boolean used;
+
+        void set(int seq, long timestamp, byte[] data, int offset, int length, long arrivalMs) {
+            if (this.data.length < length)
+                this.data = new byte[length];
+            System.arraycopy(data, offset, this.data, 0, length);
+            this.length = length;
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.arrivalMs = arrivalMs;
+            used = true;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.media.Buffer;
+import javax.media.Format;
+import javax.media.control.JitterBufferControl;
+import javax.media.format.AudioFormat;
+import javax.media.protocol.BufferTransferHandler;
+import javax.media.protocol.ContentDescriptor;
+import javax.media.protocol.PushBufferDataSource;
+import javax.media.protocol.PushBufferStream;
+
+import org.atalk.impl.neomedia.codec.AbstractCodec2;
+import org.atalk.impl.neomedia.codec.audio.ilbc.IlbcJitterBufferDecoder;
+import org.atalk.impl.neomedia.codec.audio.silk.SilkJitterBufferDecoder;
+import org.atalk.impl.neomedia.jmfext.media.renderer.audio.AbstractAudioRenderer;
+import org.atalk.impl.neomedia.protocol.PushBufferDataSourceDelegate;
+import org.atalk.service.configuration.ConfigurationService;
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.service.neomedia.codec.Constants;
+import org.atalk.util.ArrayIOUtils;
+
+import timber.log.Timber;
+
+/**
+ * Wraps the <code>DataSource</code> of an audio <code>ReceiveStream</code> with an
+ * <code>AdaptiveJitterBuffer</code>: the RTP payloads are taken from the wrapped stream as soon as FMJ
+ * pushes them, so that its own packet queue stays empty, and the decoded audio is pushed out as
+ * 16-bit linear PCM on the tick of a playout clock. The <code>Player</code> of the playback then has
+ * no decoder to insert. Only the encodings which have a <code>JitterBufferDecoder</code> are wrapped.
+ *
+ * @author Eng Chong Meng
+ */
+public class AdaptiveJitterBufferDataSource extends PushBufferDataSourceDelegate<PushBufferDataSource> {
+    /**
+     * The name of the <code>boolean</code> property which enables the adaptive jitter buffer for the
+     * audio <code>ReceiveStream</code>s; disabled by default, in which case the playback uses the
+     * FMJ jitter buffer and decoders.
+     */
+    public static final String ENABLE_PNAME = "neomedia.jitterbuffer.ENABLE";
+
+    /**
+     * The name of the property which sets the maximum delay in milliseconds.
+     */
+    public static final String MAX_DELAY_PNAME = "neomedia.jitterbuffer.MAX_DELAY";
+
+    /**
+     * The name of the property which sets the minimum target delay in milliseconds.
+     */
+    public static final String MIN_DELAY_PNAME = "neomedia.jitterbuffer.MIN_DELAY";
+
+    /**
+     * The interval in milliseconds between two consecutive ticks of the playout clock.
+     */
+    private static final long CLOCK_TICK_INTERVAL = 20;
+
+    /**
+     * Wraps a specific <code>DataSource</code> of an audio <code>ReceiveStream</code> if the adaptive
+     * jitter buffer is enabled and supports its encoding.
+     *
+     * @param dataSource the <code>DataSource</code> of the <code>ReceiveStream</code>
+     * @return the new <code>AdaptiveJitterBufferDataSource</code> or <code>null</code> if
+     * <code>dataSource</code> is to be played back as it is
+     */
+    public static AdaptiveJitterBufferDataSource create(PushBufferDataSource dataSource) {
+        ConfigurationService cfg = LibJitsi.getConfigurationService();
+        if (cfg == null || !cfg.getBoolean(ENABLE_PNAME, false))
+            return null;
+
+        PushBufferStream[] streams = dataSource.getStreams();
+        if (streams == null || streams.length != 1)
+            return null;
+
+        Format format = streams[0].getFormat();
+        if (!(format instanceof AudioFormat))
+            return null;
+
+        AudioFormat audioFormat = (AudioFormat) format;
+        int clockRate = (int) audioFormat.getSampleRate();
+        String encoding = audioFormat.getEncoding();
+        JitterBufferDecoder decoder;
+
+        if (Constants.SILK_RTP.equalsIgnoreCase(encoding) && clockRate > 0)
+            decoder = new SilkJitterBufferDecoder(clockRate);
+        else if (Constants.ILBC_RTP.equalsIgnoreCase(encoding))
+            decoder = new IlbcJitterBufferDecoder();
+        else
+            return null;
+
+        if (clockRate <= 0)
+            clockRate = decoder.getSampleRate();
+        AdaptiveJitterBuffer jitterBuffer = new AdaptiveJitterBuffer(decoder, clockRate,
+                cfg.getInt(MIN_DELAY_PNAME, AdaptiveJitterBuffer.DEFAULT_MIN_DELAY_MS),
+                cfg.getInt(MAX_DELAY_PNAME, AdaptiveJitterBuffer.DEFAULT_MAX_DELAY_MS));
+
+        Timber.d("Adaptive jitter buffer for %s", audioFormat);
+        return new AdaptiveJitterBufferDataSource(dataSource, streams[0], jitterBuffer);
+    }
+
+    /**
+     * The single stream of this <code>DataSource</code>.
+     */
+    private final JitterBufferStream stream;
+
+    /**
+     * Initializes a new <code>AdaptiveJitterBufferDataSource</code>.
+     *
+     * @param dataSource the wrapped <code>DataSource</code>
+     * @param stream the single stream of <code>dataSource</code>
+     * @param jitterBuffer the jitter buffer which is to decode and play out the packets of <code>stream</code>
+     */
+    private AdaptiveJitterBufferDataSource(PushBufferDataSource dataSource, PushBufferStream stream,
+            AdaptiveJitterBuffer jitterBuffer) {
+        super(dataSource);
+        this.stream = new JitterBufferStream(stream, jitterBuffer);
+    }
+
+    /**
+     * Gets the <code>AdaptiveJitterBuffer</code> of this <code>DataSource</code>.
+     *
+     * @return the <code>AdaptiveJitterBuffer</code> of this <code>DataSource</code>
+     */
+    public AdaptiveJitterBuffer getJitterBuffer() {
+        return stream.jitterBuffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object getControl(String controlType) {
+        if (JitterBufferControl.class.getName().equals(controlType))
+            return stream.jitterBuffer;
+        return super.getControl(controlType);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getContentType() {
+        return ContentDescriptor.RAW;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PushBufferStream[] getStreams() {
+        return new PushBufferStream[]{stream};
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Starts the playout clock after the wrapped <code>DataSource</code>.
+     */
+    @Override
+    public void start()
+            throws IOException {
+        super.start();
+        stream.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Stops the playout clock and discards the buffered media.
+     */
+    @Override
+    public void stop()
+            throws IOException {
+        stream.stop();
+        super.stop();
+    }
+
+    /**
+     * The <code>PushBufferStream</code> of the decoded audio, which reads the RTP payloads of the
+     * wrapped stream into the jitter buffer and pushes out its audio on the tick of the playout clock.
+     */
+    private static class JitterBufferStream implements BufferTransferHandler, PushBufferStream, Runnable {
+        /**
+         * The <code>Format</code> of the decoded audio.
+         */
+        private final AudioFormat format;
+
+        /**
+         * The number of samples pushed out on a tick of the playout clock.
+         */
+        private final int frameSamples;
+
+        /**
+         * The <code>Buffer</code> into which the RTP payloads are read from {@link #stream}.
+         */
+        private final Buffer inBuffer = new Buffer();
+
+        /**
+         * The jitter buffer.
+         */
+        final AdaptiveJitterBuffer jitterBuffer;
+
+        /**
+         * The samples read from the jitter buffer on a tick of the playout clock.
+         */
+        private final short[] samples;
+
+        /**
+         * The indicator which determines whether {@link #start()} has been invoked without an
+         * intervening {@link #stop()}.
+         */
+        private boolean started;
+
+        /**
+         * The wrapped stream of RTP payloads.
+         */
+        private final PushBufferStream stream;
+
+        /**
+         * The <code>Thread</code> of the playout clock.
+         */
+        private Thread thread;
+
+        /**
+         * The <code>BufferTransferHandler</code> which is notified on the ticks of the playout clock.
+         */
+        private BufferTransferHandler transferHandler;
+
+        JitterBufferStream(PushBufferStream stream, AdaptiveJitterBuffer jitterBuffer) {
+            this.stream = stream;
+            this.jitterBuffer = jitterBuffer;
+
+            AudioFormat inFormat = (AudioFormat) stream.getFormat();
+            int sampleRate = jitterBuffer.getSampleRate();
+            format = new AudioFormat(
+                    AudioFormat.LINEAR,
+                    sampleRate,
+                    16,
+                    1,
+                    AudioFormat.LITTLE_ENDIAN,
+                    AudioFormat.SIGNED,
+                    Format.NOT_SPECIFIED,
+                    Format.NOT_SPECIFIED,
+                    Format.byteArray);
+            frameSamples = (int) (sampleRate * CLOCK_TICK_INTERVAL / 1000);
+            samples = new short[frameSamples];
+
+            Timber.d("Decoding %s to %s", inFormat, format);
+            stream.setTransferHandler(this);
+        }
+
+        /**
+         * Reads an RTP payload from the wrapped stream into the jitter buffer, as soon as it is there.
+         *
+         * @param stream the wrapped stream
+         */
+        @Override
+        public void transferData(PushBufferStream stream) {
+            try {
+                stream.read(inBuffer);
+            } catch (IOException ioe) {
+                Timber.w(ioe, "Failed to read from %s", stream);
+                return;
+            }
+
+            Object data = inBuffer.getData();
+            int length = inBuffer.getLength();
+            if (inBuffer.isDiscard() || length <= 0 || !(data instanceof byte[])
+                    || (inBuffer.getFlags() & Buffer.FLAG_SILENCE) != 0)
+                return;
+
+            jitterBuffer.insert((int) inBuffer.getSequenceNumber(), inBuffer.getRtpTimeStamp(),
+                    (byte[]) data, inBuffer.getOffset(), length, System.currentTimeMillis());
+        }
+
+        /**
+         * Reads the audio of one tick of the playout clock from the jitter buffer.
+         *
+         * @param buffer the <code>Buffer</code> to read the audio into
+         */
+        @Override
+        public void read(Buffer buffer) {
+            jitterBuffer.read(samples, 0, frameSamples);
+
+            byte[] data = AbstractCodec2.validateByteArraySize(buffer, 2 * frameSamples, false);
+            for (int i = 0; i < frameSamples; i++)
+                ArrayIOUtils.writeShort(samples[i], data, 2 * i);
+
+            buffer.setDuration(TimeUnit.MILLISECONDS.toNanos(CLOCK_TICK_INTERVAL));
+            buffer.setFlags(0);
+            buffer.setFormat(format);
+            buffer.setLength(2 * frameSamples);
+            buffer.setOffset(0);
+        }
+
+        /**
+         * Runs in {@link #thread} and ticks the playout clock at a regular interval which is not
+         * affected by the duration of the transfers, the same way as the audio silence capture
+         * device does.
+         */
+        @Override
+        public void run() {
+            try {
+                AbstractAudioRenderer.useAudioThreadPriority();
+
+                long tickTime = System.currentTimeMillis();
+                while (true) {
+                    long sleepInterval = tickTime - System.currentTimeMillis();
+                    boolean tick = (sleepInterval <= 0);
+
+                    if (tick)
+                        tickTime += CLOCK_TICK_INTERVAL;
+                    else {
+                        try {
+                            Thread.sleep(sleepInterval);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                    synchronized (this) {
+                        if ((thread != Thread.currentThread()) || !started)
+                            break;
+                    }
+
+                    if (tick) {
+                        BufferTransferHandler transferHandler = this.transferHandler;
+                        if (transferHandler != null) {
+                            try {
+                                transferHandler.transferData(this);
+                            } catch (Throwable t) {
+                                if (t instanceof ThreadDeath)
+                                    throw (ThreadDeath) t;
+                                else
+                                    Timber.e(t, "Playout of the adaptive jitter buffer failed");
+                            }
+                        }
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    if (thread == Thread.currentThread()) {
+                        thread = null;
+                        started = false;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Starts the playout clock.
+         *
+         * @throws IOException if the thread of the clock could not be started
+         */
+        synchronized void start()
+                throws IOException {
+            if (thread == null) {
+                String className = getClass().getName();
+
+                thread = new Thread(this, className);
+                thread.setDaemon(true);
+                boolean started = false;
+
+                try {
+                    thread.start();
+                    started = true;
+                } finally {
+                    this.started = started;
+                    if (!started) {
+                        thread = null;
+                        notifyAll();
+                        throw new IOException("Failed to start " + className);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Stops the playout clock and resets the jitter buffer.
+         */
+        synchronized void stop() {
+            started = false;
+            thread = null;
+            notifyAll();
+            jitterBuffer.reset();
+        }
+
+        @Override
+        public boolean endOfStream() {
+            return stream.endOfStream();
+        }
+
+        @Override
+        public ContentDescriptor getContentDescriptor() {
+            return new ContentDescriptor(ContentDescriptor.RAW);
+        }
+
+        @Override
+        public long getContentLength() {
+            return LENGTH_UNKNOWN;
+        }
+
+        @Override
+        public Object getControl(String controlType) {
+            if (JitterBufferControl.class.getName().equals(controlType))
+                return jitterBuffer;
+            return stream.getControl(controlType);
+        }
+
+        @Override
+        public Object[] getControls() {
+            Object[] controls = stream.getControls();
+            Object[] result = new Object[(controls == null) ? 1 : (controls.length + 1)];
+
+            result[0] = jitterBuffer;
+            if (controls != null)
+                System.arraycopy(controls, 0, result, 1, controls.length);
+            return result;
+        }
+
+        @Override
+        public Format getFormat() {
+            return format;
+        }
+
+        @Override
+        public void setTransferHandler(BufferTransferHandler transferHandler) {
+            this.transferHandler = transferHandler;
+        }
+    }
+}
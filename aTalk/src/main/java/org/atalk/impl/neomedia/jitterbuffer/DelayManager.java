@@ -0,0 +1,245 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+import java.util.Arrays;
+
+import org.atalk.util.RTPUtils;
+
+/**
+ * Estimates the target delay of an <code>AdaptiveJitterBuffer</code> from the arrival statistics of
+ * the packets. The relative delay of a packet is its transit time (arrival time minus media time)
+ * minus the smallest transit time seen over the last {@link #HISTORY_MS} milliseconds i.e. how much
+ * later than the fastest recent packet it has arrived. The relative delays are kept in a histogram
+ * with exponential forgetting and the target delay is the {@link #QUANTILE} of the histogram plus
+ * one packet, so that the given fraction of the packets arrives before it is due for playout.
+ *
+ * @author Eng Chong Meng
+ */
+public class DelayManager {
+    /**
+     * The width in milliseconds of a bucket of the relative delay histogram.
+     */
+    private static final int BUCKET_MS = 10;
+
+    /**
+     * The number of buckets of the relative delay histogram; the last one collects all the larger
+     * delays.
+     */
+    private static final int BUCKET_COUNT = 200;
+
+    /**
+     * The forget factor of the histogram applied for every packet in the steady state.
+     */
+    private static final double FORGET_FACTOR = 0.983;
+
+    /**
+     * The length in milliseconds of the window over which the smallest transit time is tracked.
+     */
+    private static final int HISTORY_MS = 2000;
+
+    /**
+     * The capacity of the transit time history; at 20 ms packets it covers a little more than
+     * {@link #HISTORY_MS}, older entries are simply overwritten at higher packet rates.
+     */
+    private static final int HISTORY_SIZE = 128;
+
+    /**
+     * The relative delay assumed before any packet has arrived.
+     */
+    private static final int INITIAL_DELAY_MS = 40;
+
+    /**
+     * The fraction of the packets which are to arrive in time for their playout.
+     */
+    private static final double QUANTILE = 0.95;
+
+    /**
+     * The RTP clock rate of the stream in Hz.
+     */
+    private final int clockRate;
+
+    /**
+     * The probabilities of the relative delays, in buckets of {@link #BUCKET_MS}.
+     */
+    private final double[] histogram = new double[BUCKET_COUNT];
+
+    /**
+     * The arrival times of the recent packets, a ring of {@link #HISTORY_SIZE} entries.
+     */
+    private final long[] historyArrivalMs = new long[HISTORY_SIZE];
+
+    /**
+     * The transit times of the recent packets, in the same order as {@link #historyArrivalMs}.
+     */
+    private final long[] historyTransitMs = new long[HISTORY_SIZE];
+
+    /**
+     * The number of valid entries in the history.
+     */
+    private int historyLength;
+
+    /**
+     * The index in the history of the oldest entry.
+     */
+    private int historyStart;
+
+    /**
+     * The last RTP timestamp seen, used to unwrap the timestamps.
+     */
+    private long lastTimestamp = -1;
+
+    /**
+     * The maximum target delay in milliseconds.
+     */
+    private final int maxDelayMs;
+
+    /**
+     * The minimum target delay in milliseconds.
+     */
+    private final int minDelayMs;
+
+    /**
+     * The packet duration in milliseconds added to the quantile of the relative delays.
+     */
+    private int packetMs = 20;
+
+    /**
+     * The relative delay in milliseconds of the last packet.
+     */
+    private int relativeDelayMs;
+
+    /**
+     * The target delay in milliseconds, computed on every update.
+     */
+    private int targetDelayMs;
+
+    /**
+     * The unwrapped RTP timestamp of the last packet.
+     */
+    private long unwrappedTimestamp;
+
+    /**
+     * The number of updates of the histogram, which speeds up the forgetting at the start.
+     */
+    private long updateCount;
+
+    /**
+     * Initializes a new <code>DelayManager</code>.
+     *
+     * @param clockRate the RTP clock rate of the stream in Hz
+     * @param minDelayMs the minimum target delay in milliseconds
+     * @param maxDelayMs the maximum target delay in milliseconds
+     */
+    public DelayManager(int clockRate, int minDelayMs, int maxDelayMs) {
+        this.clockRate = clockRate;
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        reset();
+    }
+
+    /**
+     * Gets the relative delay in milliseconds of the last packet.
+     *
+     * @return the relative delay in milliseconds of the last packet
+     */
+    public int getRelativeDelayMs() {
+        return relativeDelayMs;
+    }
+
+    /**
+     * Gets the current target delay in milliseconds.
+     *
+     * @return the current target delay in milliseconds
+     */
+    public int getTargetDelayMs() {
+        return targetDelayMs;
+    }
+
+    /**
+     * Forgets all the arrival statistics, e.g. after the stream has been restarted.
+     */
+    public void reset() {
+        Arrays.fill(histogram, 0D);
+        histogram[INITIAL_DELAY_MS / BUCKET_MS] = 1D;
+        historyLength = 0;
+        historyStart = 0;
+        lastTimestamp = -1;
+        relativeDelayMs = 0;
+        updateCount = 0;
+        computeTargetDelay();
+    }
+
+    /**
+     * Sets the duration of the packets of the stream.
+     *
+     * @param packetMs the duration in milliseconds of a packet
+     */
+    public void setPacketMs(int packetMs) {
+        if (packetMs > 0 && packetMs != this.packetMs) {
+            this.packetMs = packetMs;
+            computeTargetDelay();
+        }
+    }
+
+    /**
+     * Updates the statistics with the arrival of a packet, late ones included.
+     *
+     * @param timestamp the RTP timestamp of the packet
+     * @param arrivalMs the arrival time of the packet in milliseconds
+     */
+    public void update(long timestamp, long arrivalMs) {
+        if (lastTimestamp < 0)
+            unwrappedTimestamp = timestamp;
+        else
+            unwrappedTimestamp += RTPUtils.rtpTimestampDiff(timestamp, lastTimestamp);
+        lastTimestamp = timestamp;
+
+        long transitMs = arrivalMs - unwrappedTimestamp * 1000 / clockRate;
+
+        // Drop the entries which have left the window or have to make room.
+        while (historyLength > 0
+                && (historyLength == HISTORY_SIZE || arrivalMs - historyArrivalMs[historyStart] > HISTORY_MS)) {
+            historyStart = (historyStart + 1) % HISTORY_SIZE;
+            historyLength--;
+        }
+        int i = (historyStart + historyLength) % HISTORY_SIZE;
+        historyArrivalMs[i] = arrivalMs;
+        historyTransitMs[i] = transitMs;
+        historyLength++;
+
+        long minTransitMs = transitMs;
+        for (int k = 0, j = historyStart; k < historyLength; k++, j = (j + 1) % HISTORY_SIZE) {
+            if (historyTransitMs[j] < minTransitMs)
+                minTransitMs = historyTransitMs[j];
+        }
+        relativeDelayMs = (int) (transitMs - minTransitMs);
+
+        // Forget faster while there are only few samples so that the initial guess fades out quickly.
+        updateCount++;
+        double forget = Math.min(FORGET_FACTOR, 1D - 1D / (updateCount + 1));
+        for (int b = 0; b < BUCKET_COUNT; b++)
+            histogram[b] *= forget;
+        histogram[Math.min(relativeDelayMs / BUCKET_MS, BUCKET_COUNT - 1)] += 1D - forget;
+
+        computeTargetDelay();
+    }
+
+    /**
+     * Computes {@link #targetDelayMs} from the histogram.
+     */
+    private void computeTargetDelay() {
+        double sum = 0D;
+        int b = 0;
+        for (; b < BUCKET_COUNT - 1; b++) {
+            sum += histogram[b];
+            if (sum >= QUANTILE)
+                break;
+        }
+        int delayMs = (b + 1) * BUCKET_MS + packetMs;
+        targetDelayMs = Math.max(minDelayMs, Math.min(maxDelayMs, delayMs));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+/**
+ * The audio decoder of an <code>AdaptiveJitterBuffer</code>. Unlike the FMJ <code>Codec</code>s which
+ * conceal a loss only when they see a gap in the sequence numbers of the next packet, the jitter
+ * buffer decides itself when a frame is to be concealed, so the packet loss concealment (and the
+ * in-band FEC if the codec has one) of the codec is exposed as a separate operation.
+ *
+ * All the methods are invoked with the lock of the <code>AdaptiveJitterBuffer</code> held.
+ *
+ * @author Eng Chong Meng
+ */
+public interface JitterBufferDecoder {
+    /**
+     * Gets the sample rate in Hz of the mono 16-bit PCM produced by this decoder.
+     *
+     * @return the sample rate in Hz of the decoded audio
+     */
+    int getSampleRate();
+
+    /**
+     * Gets the maximum number of samples which a single call to {@link #decode} or
+     * {@link #conceal} may write.
+     *
+     * @return the maximum number of samples which a single call may write
+     */
+    int getMaxDecodedSamples();
+
+    /**
+     * Decodes the payload of a single RTP packet.
+     *
+     * @param in the payload
+     * @param inOffset the offset of the payload in <code>in</code>
+     * @param inLength the length in bytes of the payload
+     * @param out the array to write the decoded samples into
+     * @param outOffset the offset in <code>out</code> at which to start writing
+     * @return the number of samples written into <code>out</code>; <code>0</code> if the payload could
+     * not be decoded
+     */
+    int decode(byte[] in, int inOffset, int inLength, short[] out, int outOffset);
+
+    /**
+     * Produces one frame in place of a packet which is missing, from the in-band FEC of a later
+     * packet if <code>next</code> is given and carries it, or else by the packet loss concealment of
+     * the codec.
+     *
+     * @param next the payload of the first packet available after the missing one or <code>null</code>
+     * @param nextOffset the offset of the payload in <code>next</code>
+     * @param nextLength the length in bytes of the payload in <code>next</code>
+     * @param distance the difference of the sequence numbers of <code>next</code> and the missing packet
+     * @param out the array to write the concealed samples into
+     * @param outOffset the offset in <code>out</code> at which to start writing
+     * @return the number of samples written into <code>out</code>; <code>0</code> if the codec cannot
+     * conceal, in which case the jitter buffer plays silence instead
+     */
+    int conceal(byte[] next, int nextOffset, int nextLength, int distance, short[] out, int outOffset);
+}
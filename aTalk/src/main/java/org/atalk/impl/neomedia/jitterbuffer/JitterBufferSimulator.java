@@ -0,0 +1,286 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays a jitter trace through an <code>AdaptiveJitterBuffer</code> offline and reports the
+ * mouth-to-ear delay and the concealment ratio; for tuning the buffer without a device. The
+ * packets carry 8 kHz linear PCM of a voiced test signal so that the time stretching behaves as
+ * with speech, and the playout clock ticks every 20 ms as that of
+ * <code>AdaptiveJitterBufferDataSource</code>.
+ *
+ * A trace is a text file with one line per packet, in sending order: the send time and the
+ * arrival time in milliseconds, separated by white space; a negative or missing arrival time marks a
+ * lost packet and lines starting with <code>#</code> are ignored. Usage:
+ * <pre>
+ *     JitterBufferSimulator &lt;trace file&gt; [packet ms]
+ *     JitterBufferSimulator -synthetic &lt;seconds&gt; &lt;jitter ms&gt; &lt;loss %&gt; [seed]
+ * </pre>
+ *
+ * @author Eng Chong Meng
+ */
+public class JitterBufferSimulator {
+    /**
+     * The sample rate of the simulated audio.
+     */
+    private static final int SAMPLE_RATE = 8000;
+
+    /**
+     * The interval in milliseconds between two consecutive ticks of the playout clock.
+     */
+    private static final int TICK_MS = 20;
+
+    public static void main(String[] args)
+            throws IOException {
+        int packetMs = 20;
+        long[] arrivalMs;
+
+        if (args.length >= 4 && "-synthetic".equals(args[0])) {
+            arrivalMs = synthesize(Integer.parseInt(args[1]) * 1000 / packetMs, packetMs,
+                    Integer.parseInt(args[2]), Double.parseDouble(args[3]),
+                    (args.length > 4) ? Long.parseLong(args[4]) : 1L);
+        }
+        else if (args.length >= 1) {
+            if (args.length > 1)
+                packetMs = Integer.parseInt(args[1]);
+            arrivalMs = readTrace(args[0], packetMs);
+        }
+        else {
+            System.err.println("Usage: JitterBufferSimulator <trace file> [packet ms]\n"
+                    + "       JitterBufferSimulator -synthetic <seconds> <jitter ms> <loss %> [seed]");
+            return;
+        }
+        new JitterBufferSimulator(packetMs, arrivalMs).run();
+    }
+
+    /**
+     * Reads a trace file; the send times are replaced by the nominal ones.
+     *
+     * @param fileName the name of the trace file
+     * @param packetMs the duration of a packet in milliseconds
+     * @return the arrival times of the packets relative to the nominal send times, -1 for the lost ones
+     * @throws IOException if the trace file cannot be read
+     */
+    private static long[] readTrace(String fileName, int packetMs)
+            throws IOException {
+        List<long[]> lines = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+
+                String[] fields = line.split("\\s+");
+                long sendMs = Long.parseLong(fields[0]);
+                long arrival = (fields.length > 1) ? Long.parseLong(fields[1]) : -1;
+                lines.add(new long[]{sendMs, arrival});
+            }
+        }
+
+        long[] arrivalMs = new long[lines.size()];
+        for (int i = 0; i < arrivalMs.length; i++) {
+            long[] l = lines.get(i);
+            arrivalMs[i] = (l[1] < 0) ? -1 : ((long) i * packetMs + l[1] - l[0]);
+        }
+        return arrivalMs;
+    }
+
+    /**
+     * Synthesizes a trace of a mobile network: a base delay with gaussian jitter, occasional delay
+     * spikes which release the held packets in a burst, and random loss.
+     *
+     * @param count the number of packets
+     * @param packetMs the duration of a packet in milliseconds
+     * @param jitterMs the standard deviation of the jitter in milliseconds
+     * @param lossPercent the percentage of lost packets
+     * @param seed the seed of the random generator
+     * @return the arrival times of the packets relative to the nominal send times, -1 for the lost ones
+     */
+    private static long[] synthesize(int count, int packetMs, int jitterMs, double lossPercent, long seed) {
+        Random random = new Random(seed);
+        long[] arrivalMs = new long[count];
+        long spikeEndMs = -1;
+
+        for (int i = 0; i < count; i++) {
+            long sendMs = (long) i * packetMs;
+            if (random.nextDouble() * 100 < lossPercent) {
+                arrivalMs[i] = -1;
+                continue;
+            }
+            if (spikeEndMs < sendMs && random.nextInt(500) == 0)
+                spikeEndMs = sendMs + 200 + random.nextInt(300);
+
+            long delayMs = 50 + Math.abs(Math.round(random.nextGaussian() * jitterMs));
+            arrivalMs[i] = Math.max(sendMs + delayMs, (sendMs < spikeEndMs) ? spikeEndMs : 0);
+        }
+        return arrivalMs;
+    }
+
+    /**
+     * The arrival times of the packets, -1 for the lost ones.
+     */
+    private final long[] arrivalMs;
+
+    /**
+     * The mouth-to-ear delays of the played out packets in milliseconds.
+     */
+    private final long[] mouthToEarMs;
+
+    /**
+     * The number of played out packets.
+     */
+    private int played;
+
+    /**
+     * The duration of a packet in milliseconds.
+     */
+    private final int packetMs;
+
+    /**
+     * The time of the tick of the playout clock being simulated.
+     */
+    private long tickMs;
+
+    private JitterBufferSimulator(int packetMs, long[] arrivalMs) {
+        this.packetMs = packetMs;
+        this.arrivalMs = arrivalMs;
+        mouthToEarMs = new long[arrivalMs.length];
+    }
+
+    /**
+     * Runs the simulation and prints the report.
+     */
+    private void run() {
+        int samplesPerPacket = packetMs * SAMPLE_RATE / 1000;
+        byte[][] payloads = new byte[arrivalMs.length][];
+        for (int i = 0; i < payloads.length; i++)
+            payloads[i] = PcmDecoder.encode(i * samplesPerPacket, samplesPerPacket);
+
+        // Replay the packets in the order of their arrival.
+        Integer[] order = new Integer[arrivalMs.length];
+        int received = 0;
+        for (int i = 0; i < arrivalMs.length; i++) {
+            if (arrivalMs[i] >= 0)
+                order[received++] = i;
+        }
+        Arrays.sort(order, 0, received, (a, b) -> Long.compare(arrivalMs[a], arrivalMs[b]));
+
+        AdaptiveJitterBuffer jitterBuffer = new AdaptiveJitterBuffer(new PcmDecoder(samplesPerPacket), SAMPLE_RATE,
+                AdaptiveJitterBuffer.DEFAULT_MIN_DELAY_MS, AdaptiveJitterBuffer.DEFAULT_MAX_DELAY_MS) {
+            @Override
+            protected void packetDecoded(int seq, long timestamp, int queuedSamples) {
+                int i = (int) (timestamp / samplesPerPacket);
+                mouthToEarMs[played++] = tickMs + queuedSamples * 1000L / SAMPLE_RATE - (long) i * packetMs;
+            }
+        };
+
+        short[] out = new short[TICK_MS * SAMPLE_RATE / 1000];
+        long endMs = (long) arrivalMs.length * packetMs + AdaptiveJitterBuffer.DEFAULT_MAX_DELAY_MS + 1000;
+        int next = 0;
+        for (tickMs = 0; tickMs < endMs; tickMs += TICK_MS) {
+            for (; next < received && arrivalMs[order[next]] <= tickMs; next++) {
+                int i = order[next];
+                jitterBuffer.insert(i, (long) i * samplesPerPacket, payloads[i], 0, payloads[i].length,
+                        arrivalMs[i]);
+            }
+            jitterBuffer.read(out, 0, out.length);
+        }
+
+        long[] delays = Arrays.copyOf(mouthToEarMs, played);
+        Arrays.sort(delays);
+        double mean = 0;
+        for (long d : delays)
+            mean += d;
+        mean = (played == 0) ? 0 : mean / played;
+
+        System.out.printf("packets %d, lost in network %d, discarded late %d, full %d%n",
+                arrivalMs.length, arrivalMs.length - received, jitterBuffer.getDiscardedLate(),
+                jitterBuffer.getDiscardedFull());
+        System.out.printf("mouth-to-ear delay ms: mean %.1f, median %d, 95th %d, max %d%n", mean,
+                percentile(delays, 0.5), percentile(delays, 0.95), percentile(delays, 1));
+        System.out.printf("concealed %.2f%%, accelerated %.2f%%, decelerated %.2f%%, final target %d ms%n",
+                jitterBuffer.getPercentConcealed(), jitterBuffer.getPercentAccelerated(),
+                jitterBuffer.getPercentDecelerated(), jitterBuffer.getTargetDelayMs());
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return (sorted.length == 0) ? 0 : sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+
+    /**
+     * A decoder of 16-bit linear PCM which conceals by repeating the last frame with a fade out.
+     */
+    private static class PcmDecoder implements JitterBufferDecoder {
+        /**
+         * Encodes the test signal, a vowel-like harmonic tone with a slowly varying pitch.
+         *
+         * @param start the index of the first sample
+         * @param length the number of samples
+         * @return the little-endian samples
+         */
+        static byte[] encode(int start, int length) {
+            byte[] data = new byte[2 * length];
+            for (int i = 0; i < length; i++) {
+                double t = (double) (start + i) / SAMPLE_RATE;
+                double phase = 2 * Math.PI * (120 * t + 5 * Math.sin(2 * Math.PI * 0.5 * t));
+                double v = 0;
+                for (int h = 1; h <= 8; h++)
+                    v += Math.sin(h * phase) / h;
+                short s = (short) (6000 * v);
+                data[2 * i] = (byte) s;
+                data[2 * i + 1] = (byte) (s >> 8);
+            }
+            return data;
+        }
+
+        private final short[] last;
+
+        private int attenuation;
+
+        PcmDecoder(int frameSamples) {
+            last = new short[frameSamples];
+        }
+
+        @Override
+        public int getSampleRate() {
+            return SAMPLE_RATE;
+        }
+
+        @Override
+        public int getMaxDecodedSamples() {
+            return last.length;
+        }
+
+        @Override
+        public int decode(byte[] in, int inOffset, int inLength, short[] out, int outOffset) {
+            int n = Math.min(last.length, inLength / 2);
+            for (int i = 0; i < n; i++) {
+                last[i] = (short) ((in[inOffset + 2 * i] & 0xFF) | (in[inOffset + 2 * i + 1] << 8));
+            }
+            System.arraycopy(last, 0, out, outOffset, n);
+            attenuation = 0;
+            return n;
+        }
+
+        @Override
+        public int conceal(byte[] next, int nextOffset, int nextLength, int distance, short[] out, int outOffset) {
+            attenuation = Math.min(attenuation + 1, 4);
+            for (int i = 0; i < last.length; i++)
+                out[outOffset + i] = (short) (last[i] * (4 - attenuation) / 4);
+            return last.length;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.jitterbuffer;
+
+/**
+ * Changes the duration of mono 16-bit PCM without changing its pitch, in the manner of WSOLA
+ * (waveform similarity overlap-add): the lag in the pitch range at which the signal is most similar
+ * to itself is searched, and one period of that lag is removed (accelerate) or repeated (decelerate)
+ * by cross-fading two consecutive periods. The signal is only stretched where the periodicity is
+ * strong enough or the signal is quiet, so that the result is inaudible; an <code>AdaptiveJitterBuffer</code>
+ * uses it to move its delay towards the target without dropping or inserting whole frames.
+ *
+ * @author Eng Chong Meng
+ */
+public class TimeStretch {
+    /**
+     * The minimum normalized correlation of two consecutive periods for them to be cross-faded.
+     */
+    private static final float CORRELATION_THRESHOLD = 0.9F;
+
+    /**
+     * The shortest pitch period in milliseconds which is searched (400 Hz).
+     */
+    private static final float MIN_LAG_MS = 2.5F;
+
+    /**
+     * The longest pitch period in milliseconds which is searched (66.7 Hz).
+     */
+    private static final int MAX_LAG_MS = 15;
+
+    /**
+     * The mean energy per sample below which the signal is considered quiet and is stretched by the
+     * longest lag regardless of its periodicity.
+     */
+    private static final float QUIET_ENERGY = 100F * 100F;
+
+    /**
+     * The longest searched lag in samples.
+     */
+    private final int maxLag;
+
+    /**
+     * The shortest searched lag in samples.
+     */
+    private final int minLag;
+
+    /**
+     * Initializes a new <code>TimeStretch</code> for audio of a specific sample rate.
+     *
+     * @param sampleRate the sample rate in Hz
+     */
+    public TimeStretch(int sampleRate) {
+        minLag = Math.max(1, (int) (MIN_LAG_MS * sampleRate / 1000));
+        maxLag = MAX_LAG_MS * sampleRate / 1000;
+    }
+
+    /**
+     * Gets the minimum number of samples which {@link #accelerate} and {@link #decelerate} need.
+     *
+     * @return the minimum number of samples to stretch
+     */
+    public int getMinLength() {
+        return 2 * maxLag;
+    }
+
+    /**
+     * Shortens the samples <code>buf[off .. off+len)</code> in place by one pitch period.
+     *
+     * @param buf the samples
+     * @param off the offset of the first sample in <code>buf</code>
+     * @param len the number of samples, at least {@link #getMinLength()}
+     * @return the number of samples removed, <code>0</code> if the signal is not stretchable
+     */
+    public int accelerate(short[] buf, int off, int len) {
+        int lag = bestLag(buf, off, len);
+        if (lag == 0)
+            return 0;
+
+        // The first period fades out into the second, which then continues with the rest.
+        for (int i = 0; i < lag; i++) {
+            buf[off + i] = (short) ((buf[off + i] * (lag - i) + buf[off + lag + i] * i) / lag);
+        }
+        System.arraycopy(buf, off + 2 * lag, buf, off + lag, len - 2 * lag);
+        return lag;
+    }
+
+    /**
+     * Lengthens the samples <code>buf[off .. off+len)</code> in place by one pitch period.
+     *
+     * @param buf the samples, with room for the inserted period after <code>off+len</code>
+     * @param off the offset of the first sample in <code>buf</code>
+     * @param len the number of samples, at least {@link #getMinLength()}
+     * @param maxInsert the maximum number of samples which there is room for
+     * @return the number of samples inserted, <code>0</code> if the signal is not stretchable
+     */
+    public int decelerate(short[] buf, int off, int len, int maxInsert) {
+        int lag = bestLag(buf, off, len);
+        if (lag == 0 || lag > maxInsert)
+            return 0;
+
+        // The second period fades out into a repetition of the first, which then continues with
+        // the second again.
+        System.arraycopy(buf, off + lag, buf, off + 2 * lag, len - lag);
+        for (int i = 0; i < lag; i++) {
+            buf[off + lag + i] = (short) ((buf[off + 2 * lag + i] * (lag - i) + buf[off + i] * i) / lag);
+        }
+        return lag;
+    }
+
+    /**
+     * Searches the lag at which the signal is most similar to itself.
+     *
+     * @param buf the samples
+     * @param off the offset of the first sample in <code>buf</code>
+     * @param len the number of samples
+     * @return the lag in samples, or <code>0</code> if there is not enough signal or the best
+     * normalized correlation is below {@link #CORRELATION_THRESHOLD}
+     */
+    private int bestLag(short[] buf, int off, int len) {
+        if (len < 2 * maxLag)
+            return 0;
+
+        float energy = 0F;
+        for (int i = 0; i < 2 * maxLag; i++) {
+            float x = buf[off + i];
+            energy += x * x;
+        }
+        if (energy < QUIET_ENERGY * 2 * maxLag)
+            return maxLag;
+
+        int bestLag = 0;
+        float bestCorrelation = CORRELATION_THRESHOLD;
+        for (int lag = minLag; lag <= maxLag; lag++) {
+            float xy = 0F, xx = 0F, yy = 0F;
+            for (int i = 0; i < lag; i++) {
+                float x = buf[off + i];
+                float y = buf[off + lag + i];
+                xy += x * y;
+                xx += x * x;
+                yy += y * y;
+            }
+            if (xy <= 0F)
+                continue;
+            float correlation = xy / (float) Math.sqrt((double) xx * yy);
+            if (correlation > bestCorrelation) {
+                bestCorrelation = correlation;
+                bestLag = lag;
+            }
+        }
+        return bestLag;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Appends to a file through an <code>AsynchronousFileChannel</code>: the bytes are collected in buffers
+ * of {@link #BUFFER_SIZE} bytes, and a full buffer is handed to the channel without waiting for it to
+ * reach the disk. The thread writing media is therefore only held when {@link #MAX_PENDING_BUFFERS}
+ * are already in flight. Bytes already written may be overwritten in place with
+ * {@link #writeAt(long, byte[], int, int)}, e.g. to fill in the size of an element once it is known.
+ *
+ * Not thread-safe; the callers serialize the writes. An I/O failure of the channel is reported by the
+ * next call.
+ *
+ * @author Eng Chong Meng
+ */
+class AsyncFileWriter
+{
+    /**
+     * The size of the buffers handed to the channel.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of buffers written by the channel at any time.
+     */
+    private static final int MAX_PENDING_BUFFERS = 8;
+
+    /**
+     * The channel of the file.
+     */
+    private final AsynchronousFileChannel channel;
+
+    /**
+     * The buffer which collects the bytes to be written at {@link #bufferPosition}.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * The position in the file of the first byte of {@link #buffer}.
+     */
+    private long bufferPosition = 0;
+
+    /**
+     * The buffers which have been written and may be reused; guarded by {@link #pendingSyncRoot}.
+     */
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+
+    /**
+     * The number of buffers being written by the channel; guarded by {@link #pendingSyncRoot}.
+     */
+    private int pendingBuffers = 0;
+
+    /**
+     * The failure of a write of the channel, if any; guarded by {@link #pendingSyncRoot}.
+     */
+    private Throwable failure = null;
+
+    /**
+     * The object which synchronizes the completion of the writes with the writing thread.
+     */
+    private final Object pendingSyncRoot = new Object();
+
+    /**
+     * Completes the writes of the channel: writes the rest of a partially written buffer, or returns
+     * the buffer to {@link #pool}.
+     */
+    private final CompletionHandler<Integer, Write> completionHandler = new CompletionHandler<Integer, Write>()
+    {
+        @Override
+        public void completed(Integer written, Write write)
+        {
+            if (write.buffer.hasRemaining()) {
+                write.position += written;
+                channel.write(write.buffer, write.position, write, this);
+                return;
+            }
+            synchronized (pendingSyncRoot) {
+                if (write.buffer.capacity() == BUFFER_SIZE) {
+                    write.buffer.clear();
+                    pool.push(write.buffer);
+                }
+                pendingBuffers--;
+                pendingSyncRoot.notifyAll();
+            }
+        }
+
+        @Override
+        public void failed(Throwable t, Write write)
+        {
+            synchronized (pendingSyncRoot) {
+                if (failure == null)
+                    failure = t;
+                pendingBuffers--;
+                pendingSyncRoot.notifyAll();
+            }
+        }
+    };
+
+    /**
+     * Creates or truncates a file and opens it for writing.
+     *
+     * @param filename the name of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    AsyncFileWriter(String filename)
+            throws IOException
+    {
+        channel = AsynchronousFileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Gets the position in the file of the next byte to be written by {@link #write(byte[], int, int)}.
+     *
+     * @return the number of bytes written so far.
+     */
+    long position()
+    {
+        return bufferPosition + buffer.position();
+    }
+
+    /**
+     * Appends bytes to the file.
+     *
+     * @param buf the bytes to write.
+     * @param off the offset of the bytes in <code>buf</code>.
+     * @param len the number of bytes to write.
+     * @throws IOException if a previous write has failed.
+     */
+    void write(byte[] buf, int off, int len)
+            throws IOException
+    {
+        while (len > 0) {
+            int n = Math.min(len, buffer.remaining());
+            buffer.put(buf, off, n);
+            off += n;
+            len -= n;
+            if (!buffer.hasRemaining())
+                flush();
+        }
+    }
+
+    /**
+     * Overwrites bytes which have already been written to the file.
+     *
+     * @param position the position in the file of the first byte to overwrite.
+     * @param buf the bytes to write.
+     * @param off the offset of the bytes in <code>buf</code>.
+     * @param len the number of bytes to write.
+     * @throws IOException if the bytes are past the end of the file or if a write has failed.
+     */
+    void writeAt(long position, byte[] buf, int off, int len)
+            throws IOException
+    {
+        if (position + len > position())
+            throw new IOException("Cannot write past the end of the file.");
+
+        // The part still in buffer is patched in place.
+        if (position + len > bufferPosition) {
+            int skip = (int) Math.max(0, bufferPosition - position);
+            for (int i = skip; i < len; i++)
+                buffer.put((int) (position + i - bufferPosition), buf[off + i]);
+            len = skip;
+        }
+        if (len > 0) {
+            // The patch must land after the writes of the bytes it overwrites.
+            awaitPendingBuffers(0);
+            submit(ByteBuffer.wrap(Arrays.copyOfRange(buf, off, off + len)), position);
+        }
+    }
+
+    /**
+     * Hands the collected bytes to the channel.
+     *
+     * @throws IOException if a previous write has failed.
+     */
+    void flush()
+            throws IOException
+    {
+        if (buffer.position() == 0)
+            return;
+
+        ByteBuffer full = buffer;
+        full.flip();
+        long position = bufferPosition;
+        bufferPosition += full.remaining();
+
+        synchronized (pendingSyncRoot) {
+            awaitPendingBuffers(MAX_PENDING_BUFFERS - 1);
+            buffer = pool.isEmpty() ? ByteBuffer.allocate(BUFFER_SIZE) : pool.pop();
+        }
+        submit(full, position);
+    }
+
+    /**
+     * Writes the collected bytes, waits for all the writes to complete and closes the file.
+     *
+     * @throws IOException if a write has failed or if the file cannot be closed.
+     */
+    void close()
+            throws IOException
+    {
+        try {
+            flush();
+            awaitPendingBuffers(0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Starts an asynchronous write of a buffer.
+     *
+     * @param buffer the bytes to write.
+     * @param position the position in the file of the first byte of <code>buffer</code>.
+     */
+    private void submit(ByteBuffer buffer, long position)
+    {
+        synchronized (pendingSyncRoot) {
+            pendingBuffers++;
+        }
+        Write write = new Write(buffer, position);
+        channel.write(buffer, position, write, completionHandler);
+    }
+
+    /**
+     * Waits until no more than a specific number of buffers are being written.
+     *
+     * @param max the maximum number of pending buffers.
+     * @throws IOException if a write has failed or if the wait has been interrupted.
+     */
+    private void awaitPendingBuffers(int max)
+            throws IOException
+    {
+        synchronized (pendingSyncRoot) {
+            boolean interrupted = false;
+            while (pendingBuffers > max && failure == null) {
+                try {
+                    pendingSyncRoot.wait();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            if (failure != null)
+                throw new IOException("Failed to write to file.", failure);
+        }
+    }
+
+    /**
+     * A buffer being written by the channel.
+     */
+    private static class Write
+    {
+        /**
+         * The bytes to write.
+         */
+        final ByteBuffer buffer;
+
+        /**
+         * The position in the file of the next byte of {@link #buffer} to be written.
+         */
+        long position;
+
+        Write(ByteBuffer buffer, long position)
+        {
+            this.buffer = buffer;
+            this.position = position;
+        }
+    }
+}
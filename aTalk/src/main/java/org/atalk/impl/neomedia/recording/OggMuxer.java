@@ -0,0 +1,251 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.recording;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes Opus packets to an Ogg Opus file (RFC 7845) without decoding them. The packets are collected
+ * into pages of up to {@link #MAX_PAGE_DURATION} of audio, so that at most that much is lost if the
+ * file is not closed.
+ *
+ * @author Eng Chong Meng
+ */
+class OggMuxer
+{
+    /**
+     * The maximum duration of the audio in a page, in samples at 48 kHz.
+     */
+    private static final long MAX_PAGE_DURATION = 48000;
+
+    /**
+     * The maximum size of the data of a page; a page may hold up to 255 * 255 bytes, but smaller
+     * pages are recommended.
+     */
+    private static final int MAX_PAGE_DATA_SIZE = 4096;
+
+    /**
+     * The maximum number of lacing values of a page.
+     */
+    private static final int MAX_SEGMENTS = 255;
+
+    /**
+     * The header type flag of the first page of the stream.
+     */
+    private static final int BOS = 0x02;
+
+    /**
+     * The header type flag of the last page of the stream.
+     */
+    private static final int EOS = 0x04;
+
+    /**
+     * The lookup table of the CRC of the pages: polynomial 0x04c11db7, not reflected.
+     */
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int j = 0; j < 8; j++)
+                r = ((r & 0x80000000) != 0) ? ((r << 1) ^ 0x04c11db7) : (r << 1);
+            CRC_TABLE[i] = r;
+        }
+    }
+
+    /**
+     * The file written to.
+     */
+    private final AsyncFileWriter out;
+
+    /**
+     * The serial number of the logical stream.
+     */
+    private final int serial;
+
+    /**
+     * The sequence number of the next page.
+     */
+    private int pageSequence = 0;
+
+    /**
+     * The page being collected: 27 bytes of header, up to 255 lacing values, then the data.
+     */
+    private final byte[] page = new byte[27 + MAX_SEGMENTS + MAX_PAGE_DATA_SIZE + 255 * 255];
+
+    /**
+     * The number of lacing values of {@link #page}.
+     */
+    private int segments = 0;
+
+    /**
+     * The number of bytes of data of {@link #page}.
+     */
+    private int dataLength = 0;
+
+    /**
+     * The data of {@link #page}, stored apart from it as the lacing values precede it.
+     */
+    private final byte[] data = new byte[MAX_PAGE_DATA_SIZE + 255 * 255];
+
+    /**
+     * The granule position of the last packet of the previous page.
+     */
+    private long pageStartGranule = 0;
+
+    /**
+     * The granule position of the last packet of {@link #page}.
+     */
+    private long granule = 0;
+
+    /**
+     * Creates or truncates an Ogg Opus file and writes its identification and comment headers.
+     *
+     * @param filename the name of the file.
+     * @param serial the serial number of the logical stream.
+     * @param opusHead the Opus identification header.
+     * @throws IOException if the file cannot be opened or written.
+     */
+    OggMuxer(String filename, int serial, byte[] opusHead)
+            throws IOException
+    {
+        this.serial = serial;
+        out = new AsyncFileWriter(filename);
+
+        // Each header is alone on its page, which has a granule position of 0.
+        addPacket(opusHead, 0, opusHead.length);
+        writePage(BOS);
+
+        byte[] vendor = "aTalk".getBytes(StandardCharsets.UTF_8);
+        byte[] opusTags = new byte[8 + 4 + vendor.length + 4];
+        System.arraycopy("OpusTags".getBytes(StandardCharsets.US_ASCII), 0, opusTags, 0, 8);
+        writeIntLE(opusTags, 8, vendor.length);
+        System.arraycopy(vendor, 0, opusTags, 12, vendor.length);
+        addPacket(opusTags, 0, opusTags.length);
+        writePage(0);
+    }
+
+    /**
+     * Creates an Opus identification header for a single stream of up to two channels.
+     *
+     * @param channels the number of channels.
+     * @param preSkip the number of samples at 48 kHz to discard at the start of the decoded audio.
+     * @param inputSampleRate the sample rate of the original audio, for information only.
+     * @return the OpusHead packet.
+     */
+    static byte[] createOpusHead(int channels, int preSkip, int inputSampleRate)
+    {
+        byte[] opusHead = new byte[19];
+        System.arraycopy("OpusHead".getBytes(StandardCharsets.US_ASCII), 0, opusHead, 0, 8);
+        opusHead[8] = 1; // version
+        opusHead[9] = (byte) channels;
+        opusHead[10] = (byte) preSkip;
+        opusHead[11] = (byte) (preSkip >> 8);
+        writeIntLE(opusHead, 12, inputSampleRate);
+        // output gain 0 and channel mapping family 0.
+        return opusHead;
+    }
+
+    /**
+     * Writes an Opus packet.
+     *
+     * @param granulePosition the number of samples at 48 kHz decoded at the end of the packet.
+     * @param buf the Opus packet.
+     * @param off the offset of the packet in <code>buf</code>.
+     * @param len the length of the packet.
+     * @throws IOException if a page cannot be written.
+     */
+    void writePacket(long granulePosition, byte[] buf, int off, int len)
+            throws IOException
+    {
+        if ((segments + len / 255 + 1 > MAX_SEGMENTS) || (dataLength + len > MAX_PAGE_DATA_SIZE))
+            writePage(0);
+
+        addPacket(buf, off, len);
+        granule = granulePosition;
+        if (granule - pageStartGranule >= MAX_PAGE_DURATION)
+            writePage(0);
+    }
+
+    /**
+     * Writes the last page and closes the file.
+     *
+     * @throws IOException if the file cannot be written or closed.
+     */
+    void close()
+            throws IOException
+    {
+        try {
+            // The last page may have no packet.
+            writePage(EOS);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Adds a packet and its lacing values to the page being collected.
+     */
+    private void addPacket(byte[] buf, int off, int len)
+    {
+        int lacing = len;
+        while (lacing >= 255) {
+            page[27 + segments++] = (byte) 255;
+            lacing -= 255;
+        }
+        page[27 + segments++] = (byte) lacing;
+        System.arraycopy(buf, off, data, dataLength, len);
+        dataLength += len;
+    }
+
+    /**
+     * Writes the page being collected, even if it has no packet.
+     *
+     * @param headerType the header type flags of the page.
+     * @throws IOException if the page cannot be written.
+     */
+    private void writePage(int headerType)
+            throws IOException
+    {
+        page[0] = 'O';
+        page[1] = 'g';
+        page[2] = 'g';
+        page[3] = 'S';
+        page[4] = 0; // version
+        page[5] = (byte) headerType;
+        for (int i = 0; i < 8; i++)
+            page[6 + i] = (byte) (granule >>> (8 * i));
+        writeIntLE(page, 14, serial);
+        writeIntLE(page, 18, pageSequence++);
+        writeIntLE(page, 22, 0);
+        page[26] = (byte) segments;
+        int length = 27 + segments;
+        System.arraycopy(data, 0, page, length, dataLength);
+        length += dataLength;
+
+        int crc = 0;
+        for (int i = 0; i < length; i++)
+            crc = (crc << 8) ^ CRC_TABLE[((crc >>> 24) ^ page[i]) & 0xff];
+        writeIntLE(page, 22, crc);
+
+        out.write(page, 0, length);
+        segments = 0;
+        dataLength = 0;
+        pageStartGranule = granule;
+    }
+
+    /**
+     * Writes a 32-bit integer in little-endian byte order.
+     */
+    private static void writeIntLE(byte[] buf, int off, int value)
+    {
+        buf[off] = (byte) value;
+        buf[off + 1] = (byte) (value >> 8);
+        buf[off + 2] = (byte) (value >> 16);
+        buf[off + 3] = (byte) (value >> 24);
+    }
+}
@@ -91,6 +91,29 @@ public class PacketBuffer implements TransformEngine, PacketTransformer
      */
     private final Map<Long, Buffer> buffers = new HashMap<>();
 
+    /**
+     * The payload types of the packets which are buffered.
+     */
+    private final int[] payloadTypes;
+
+    /**
+     * Initializes a new <code>PacketBuffer</code> which buffers the VP8 packets.
+     */
+    public PacketBuffer()
+    {
+        this(VP8_PAYLOAD_TYPE);
+    }
+
+    /**
+     * Initializes a new <code>PacketBuffer</code> which buffers the packets of specific payload types.
+     *
+     * @param payloadTypes the payload types of the packets to buffer.
+     */
+    public PacketBuffer(int... payloadTypes)
+    {
+        this.payloadTypes = payloadTypes;
+    }
+
 	/**
 	 * Implements {@link PacketTransformer#close()}.
 	 */
@@ -162,7 +185,7 @@ public class PacketBuffer implements TransformEngine, PacketTransformer
 
 	/**
 	 * Checks whether a particular <code>RawPacket</code> will be buffered or not by this instance.
-	 * Currently we only buffer VP8 packets, recognized by their payload type number.
+	 * The packets are recognized by their payload type number.
 	 * 
 	 * @param pkt
 	 *        the packet for which to check.
@@ -170,7 +193,16 @@ public class PacketBuffer implements TransformEngine, PacketTransformer
 	 */
 	private boolean willBuffer(RawPacket pkt)
 	{
-		return (pkt != null && pkt.getPayloadType() == VP8_PAYLOAD_TYPE);
+		if (pkt == null)
+			return false;
+
+		int payloadType = pkt.getPayloadType();
+		for (int pt : payloadTypes)
+		{
+			if (pt == payloadType)
+				return true;
+		}
+		return false;
 	}
 
 	/**
@@ -0,0 +1,518 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.recording;
+
+import java.io.IOException;
+
+import org.atalk.impl.neomedia.codec.video.vp8.DePacketizer.VP8PayloadDescriptor;
+import org.atalk.impl.neomedia.codec.video.vp8.DePacketizer.VP8PayloadHeader;
+import org.atalk.impl.neomedia.codec.video.vp9.DePacketizer.VP9PayloadDescriptor;
+import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.control.KeyFrameControl;
+import org.atalk.service.neomedia.recording.RecorderEvent;
+import org.atalk.service.neomedia.recording.RecorderEventHandler;
+import org.atalk.util.MediaType;
+import org.atalk.util.RTPUtils;
+
+import timber.log.Timber;
+
+/**
+ * Records the RTP packets of one SSRC without decoding them: the VP8 or VP9 frames are reassembled
+ * from their packets and written to a WebM file, and the Opus packets are written as they are to an
+ * Ogg or WebM file. This replaces the FMJ <code>Processor</code>, the decoder, the encoder and the
+ * <code>DataSink</code> of a <code>ReceiveStream</code> of {@link RecorderRtpImpl}.
+ *
+ * After a lost packet, the video frames are dropped and a keyframe is requested until one is received;
+ * the gaps in the audio are filled with empty Opus packets, which the decoder conceals. Only a single
+ * VP9 spatial layer is supported.
+ *
+ * @author Eng Chong Meng
+ */
+class PassThroughStream {
+    /**
+     * The codecs which can be recorded.
+     */
+    enum Codec {
+        VP8, VP9, OPUS
+    }
+
+    /**
+     * The minimum interval in milliseconds between two keyframe requests.
+     */
+    private static final long KEYFRAME_REQUEST_INTERVAL = 1000;
+
+    /**
+     * The largest gap, in samples at 48 kHz, which is filled in the audio: ten minutes.
+     */
+    private static final long MAX_AUDIO_GAP = 48000L * 600;
+
+    /**
+     * The number of channels of the recorded Opus streams, as signaled for Opus in SDP.
+     */
+    private static final int OPUS_CHANNELS = 2;
+
+    /**
+     * The pre-skip of the recorded Opus streams: the usual encoder lookahead.
+     */
+    private static final int OPUS_PRE_SKIP = 312;
+
+    private final long ssrc;
+
+    private final Codec codec;
+
+    /**
+     * The payload type of the packets to record; those of other payload types are ignored.
+     */
+    private final int payloadType;
+
+    private final String filename;
+
+    /**
+     * Whether the audio is written to a WebM rather than an Ogg file.
+     */
+    private final boolean audioWebm;
+
+    private final RecorderEventHandler eventHandler;
+
+    /**
+     * The <code>KeyFrameControl</code> which we use to request a keyframe.
+     */
+    private final KeyFrameControl keyFrameControl;
+
+    private WebmMuxer webmMuxer = null;
+
+    private OggMuxer oggMuxer = null;
+
+    private boolean closed = false;
+
+    /**
+     * The sequence number of the next packet or <code>-1</code> before the first packet.
+     */
+    private int expectedSequenceNumber = -1;
+
+    /**
+     * The RTP timestamp of the first frame written, which the presentation times are relative to.
+     */
+    private long firstTimestamp = -1;
+
+    /**
+     * The video frame being reassembled.
+     */
+    private byte[] frame = new byte[64 * 1024];
+
+    private int frameLength = 0;
+
+    /**
+     * Whether the start of the frame being reassembled has been received.
+     */
+    private boolean frameStarted = false;
+
+    private boolean frameKey = false;
+
+    private long frameTimestamp = -1;
+
+    /**
+     * Whether we are in a state of waiting for a keyframe and discarding non-key frames.
+     */
+    private boolean waitingForKeyframe = true;
+
+    private long lastKeyframeRequestTime = 0;
+
+    /**
+     * The RTP timestamp and the duration in samples of the last Opus packet written.
+     */
+    private long lastAudioTimestamp = -1;
+
+    private int lastAudioSamples = 0;
+
+    /**
+     * The TOC byte of the last Opus packet written.
+     */
+    private byte lastToc = 0;
+
+    /**
+     * The number of samples written to the Ogg file.
+     */
+    private long granulePosition = 0;
+
+    /**
+     * Initializes a new <code>PassThroughStream</code>; the file is created with the first frame.
+     *
+     * @param ssrc the SSRC of the recorded stream.
+     * @param codec the codec of the recorded stream.
+     * @param payloadType the payload type of the recorded stream.
+     * @param filename the name of the file to write.
+     * @param audioWebm whether to write Opus to a WebM file rather than an Ogg file.
+     * @param eventHandler the handler of the RECORDING_STARTED event; may be <code>null</code>.
+     * @param keyFrameControl the <code>KeyFrameControl</code> to request keyframes; may be <code>null</code>.
+     */
+    PassThroughStream(long ssrc, Codec codec, int payloadType, String filename, boolean audioWebm,
+            RecorderEventHandler eventHandler, KeyFrameControl keyFrameControl) {
+        this.ssrc = ssrc;
+        this.codec = codec;
+        this.payloadType = payloadType;
+        this.filename = filename;
+        this.audioWebm = audioWebm;
+        this.eventHandler = eventHandler;
+        this.keyFrameControl = keyFrameControl;
+    }
+
+    String getFilename() {
+        return filename;
+    }
+
+    /**
+     * Records an RTP packet of the stream, which has been reordered by the <code>PacketBuffer</code>.
+     *
+     * @param pkt the RTP packet.
+     * @throws IOException if the file cannot be written.
+     */
+    synchronized void write(RawPacket pkt)
+            throws IOException {
+        if (closed || (pkt.getPayloadType() != payloadType))
+            return;
+
+        int sequenceNumber = pkt.getSequenceNumber();
+        boolean lost = false;
+        if (expectedSequenceNumber != -1) {
+            int delta = RTPUtils.getSequenceNumberDelta(sequenceNumber, expectedSequenceNumber);
+            // Too late for the PacketBuffer to reorder it.
+            if (delta < 0)
+                return;
+            lost = (delta > 0);
+        }
+        expectedSequenceNumber = (sequenceNumber + 1) & 0xffff;
+
+        byte[] buf = pkt.getBuffer();
+        int off = pkt.getOffset() + pkt.getHeaderLength();
+        int len = pkt.getPayloadLength(true);
+        if (len <= 0)
+            return;
+
+        if (codec == Codec.OPUS)
+            writeAudio(pkt.getTimestamp(), buf, off, len);
+        else
+            writeVideo(pkt.getTimestamp(), pkt.isPacketMarked(), lost, buf, off, len);
+    }
+
+    /**
+     * Reassembles a VP8 or VP9 frame from its packets.
+     */
+    private void writeVideo(long timestamp, boolean marker, boolean lost, byte[] buf, int off, int len)
+            throws IOException {
+        if (lost) {
+            // The frame being reassembled or a whole frame is missing, and the next frames may refer to it.
+            frameStarted = false;
+            if (!waitingForKeyframe) {
+                Timber.w("Packet lost, waiting for a keyframe: %s", ssrc);
+                waitingForKeyframe = true;
+            }
+        }
+
+        int descriptorSize;
+        boolean start;
+        if (codec == Codec.VP8) {
+            descriptorSize = VP8PayloadDescriptor.getSize(buf, off, len);
+            start = (descriptorSize > 0) && VP8PayloadDescriptor.isStartOfFrame(buf, off);
+        }
+        else {
+            descriptorSize = VP9PayloadDescriptor.getSize(buf, off, len);
+            start = (descriptorSize > 0) && VP9PayloadDescriptor.isStartOfFrame(buf, off, len);
+        }
+        if ((descriptorSize <= 0) || (descriptorSize >= len)) {
+            frameStarted = false;
+            return;
+        }
+
+        if (start && (!frameStarted || (timestamp != frameTimestamp))) {
+            frameStarted = true;
+            frameTimestamp = timestamp;
+            frameLength = 0;
+            frameKey = (codec == Codec.VP8)
+                    ? VP8PayloadHeader.isKeyFrame(buf, off + descriptorSize)
+                    : isVp9KeyFrame(buf, off + descriptorSize, len - descriptorSize);
+        }
+        else if (!frameStarted || (timestamp != frameTimestamp)) {
+            frameStarted = false;
+            return;
+        }
+
+        len -= descriptorSize;
+        if (frameLength + len > frame.length) {
+            byte[] newFrame = new byte[Math.max(2 * frame.length, frameLength + len)];
+            System.arraycopy(frame, 0, newFrame, 0, frameLength);
+            frame = newFrame;
+        }
+        System.arraycopy(buf, off + descriptorSize, frame, frameLength, len);
+        frameLength += len;
+
+        if (marker) {
+            frameStarted = false;
+            writeFrame();
+        }
+    }
+
+    /**
+     * Writes the reassembled video frame, or drops it if it is not a keyframe while one is awaited.
+     */
+    private void writeFrame()
+            throws IOException {
+        if (waitingForKeyframe) {
+            int size = frameKey ? getFrameSize() : -1;
+            if (size == -1) {
+                long now = System.currentTimeMillis();
+                if ((keyFrameControl != null) && (now - lastKeyframeRequestTime >= KEYFRAME_REQUEST_INTERVAL)) {
+                    lastKeyframeRequestTime = now;
+                    keyFrameControl.requestKeyFrame(true);
+                }
+                return;
+            }
+            waitingForKeyframe = false;
+
+            if (webmMuxer == null) {
+                int width = size >>> 16;
+                int height = size & 0xffff;
+                Timber.i("Received the first keyframe (width=%d; height=%d) ssrc=%s", width, height, ssrc);
+                webmMuxer = new WebmMuxer(filename);
+                webmMuxer.writeVideoHeader((codec == Codec.VP8) ? WebmMuxer.CODEC_VP8 : WebmMuxer.CODEC_VP9,
+                        width, height);
+                firstTimestamp = frameTimestamp;
+
+                if (eventHandler != null) {
+                    RecorderEvent event = new RecorderEvent();
+                    event.setType(RecorderEvent.Type.RECORDING_STARTED);
+                    event.setSsrc(ssrc);
+                    if (height * 4 == width * 3)
+                        event.setAspectRatio(RecorderEvent.AspectRatio.ASPECT_RATIO_4_3);
+                    else if (height * 16 == width * 9)
+                        event.setAspectRatio(RecorderEvent.AspectRatio.ASPECT_RATIO_16_9);
+
+                    event.setFilename(filename);
+                    event.setInstant(System.currentTimeMillis());
+                    event.setRtpTimestamp(frameTimestamp);
+                    event.setMediaType(MediaType.VIDEO);
+                    eventHandler.handleEvent(event);
+                }
+            }
+        }
+
+        // The show_frame flag of VP8; VP9 hidden frames only occur within superframes.
+        boolean invisible = (codec == Codec.VP8) && ((frame[0] & 0x10) == 0);
+        long pts = RTPUtils.rtpTimestampDiff(frameTimestamp, firstTimestamp) / 90;
+        webmMuxer.writeFrame(pts, frameKey, invisible, frame, 0, frameLength);
+    }
+
+    /**
+     * Gets the size of the reassembled keyframe.
+     *
+     * @return the width in the upper 16 bits and the height in the lower 16 bits, or <code>-1</code>
+     * if the keyframe is invalid.
+     */
+    private int getFrameSize() {
+        if (codec == Codec.VP8) {
+            // The start code of the VP8 keyframe header.
+            if ((frameLength < 10) || ((frame[3] & 0xff) != 0x9d) || ((frame[4] & 0xff) != 0x01)
+                    || ((frame[5] & 0xff) != 0x2a))
+                return -1;
+            int width = ((frame[6] & 0xff) | ((frame[7] & 0xff) << 8)) & 0x3fff;
+            int height = ((frame[8] & 0xff) | ((frame[9] & 0xff) << 8)) & 0x3fff;
+            return (width << 16) | height;
+        }
+        return getVp9FrameSize(frame, 0, frameLength);
+    }
+
+    /**
+     * Determines whether a VP9 frame is a keyframe from its uncompressed header.
+     */
+    private static boolean isVp9KeyFrame(byte[] buf, int off, int len) {
+        BitReader reader = new BitReader(buf, off, len);
+        if (reader.read(2) != 2) // frame_marker
+            return false;
+        int profile = reader.read(1);
+        profile |= reader.read(1) << 1;
+        if (profile == 3)
+            reader.read(1);
+        // show_existing_frame, frame_type
+        return (reader.read(1) == 0) && (reader.read(1) == 0) && !reader.overflow;
+    }
+
+    /**
+     * Gets the size of a VP9 keyframe from its uncompressed header.
+     *
+     * @return the width in the upper 16 bits and the height in the lower 16 bits, or <code>-1</code>
+     * if the frame is not a valid keyframe.
+     */
+    private static int getVp9FrameSize(byte[] buf, int off, int len) {
+        BitReader reader = new BitReader(buf, off, len);
+        if (reader.read(2) != 2) // frame_marker
+            return -1;
+        int profile = reader.read(1);
+        profile |= reader.read(1) << 1;
+        if (profile == 3)
+            reader.read(1);
+        if ((reader.read(1) != 0) || (reader.read(1) != 0)) // show_existing_frame, frame_type
+            return -1;
+        reader.read(2); // show_frame, error_resilient_mode
+        if (reader.read(24) != 0x498342) // frame_sync_code
+            return -1;
+
+        // color_config
+        if (profile >= 2)
+            reader.read(1);
+        int colorSpace = reader.read(3);
+        if (colorSpace != 7) {
+            reader.read(1);
+            if (profile == 1 || profile == 3)
+                reader.read(3);
+        }
+        else if (profile == 1 || profile == 3) {
+            reader.read(1);
+        }
+        int width = reader.read(16) + 1;
+        int height = reader.read(16) + 1;
+        return reader.overflow ? -1 : (width << 16) | height;
+    }
+
+    /**
+     * Writes an Opus packet, after empty packets covering the gap since the previous one, if any.
+     */
+    private void writeAudio(long timestamp, byte[] buf, int off, int len)
+            throws IOException {
+        int samples = getOpusSamples(buf, off, len);
+        if (samples <= 0)
+            return;
+
+        if (firstTimestamp == -1) {
+            firstTimestamp = timestamp;
+            byte[] opusHead = OggMuxer.createOpusHead(OPUS_CHANNELS, OPUS_PRE_SKIP, 48000);
+            if (audioWebm) {
+                webmMuxer = new WebmMuxer(filename);
+                webmMuxer.writeOpusHeader(48000, OPUS_CHANNELS, OPUS_PRE_SKIP, opusHead);
+            }
+            else {
+                oggMuxer = new OggMuxer(filename, (int) ssrc, opusHead);
+            }
+
+            if (eventHandler != null) {
+                RecorderEvent event = new RecorderEvent();
+                event.setType(RecorderEvent.Type.RECORDING_STARTED);
+                event.setMediaType(MediaType.AUDIO);
+                event.setSsrc(ssrc);
+                event.setRtpTimestamp(timestamp);
+                event.setFilename(filename);
+                eventHandler.handleEvent(event);
+            }
+        }
+        else {
+            long gap = RTPUtils.rtpTimestampDiff(timestamp, lastAudioTimestamp + lastAudioSamples);
+            if (gap < 0)
+                return;
+
+            // WebM blocks carry their own time, the gaps need no filling.
+            if ((oggMuxer != null) && (gap <= MAX_AUDIO_GAP)) {
+                byte[] empty = {(byte) (lastToc & 0xfc)};
+                int emptySamples = getOpusSamples(empty, 0, 1);
+                for (; gap >= emptySamples; gap -= emptySamples) {
+                    granulePosition += emptySamples;
+                    oggMuxer.writePacket(granulePosition, empty, 0, 1);
+                }
+            }
+        }
+
+        lastAudioTimestamp = timestamp;
+        lastAudioSamples = samples;
+        lastToc = buf[off];
+        if (oggMuxer != null) {
+            granulePosition += samples;
+            oggMuxer.writePacket(granulePosition, buf, off, len);
+        }
+        else {
+            long pts = RTPUtils.rtpTimestampDiff(timestamp, firstTimestamp) / 48;
+            webmMuxer.writeFrame(pts, true, false, buf, off, len);
+        }
+    }
+
+    /**
+     * Gets the duration of an Opus packet from its TOC byte (RFC 6716, section 3.1).
+     *
+     * @return the number of samples at 48 kHz of the packet or <code>-1</code> if it is invalid.
+     */
+    static int getOpusSamples(byte[] buf, int off, int len) {
+        int config = (buf[off] >> 3) & 0x1f;
+        int frameSamples;
+        if (config < 12) // SILK: 10, 20, 40, 60 ms
+            frameSamples = ((config & 3) == 3) ? 2880 : 480 << (config & 3);
+        else if (config < 16) // Hybrid: 10, 20 ms
+            frameSamples = 480 << (config & 1);
+        else // CELT: 2.5, 5, 10, 20 ms
+            frameSamples = 120 << (config & 3);
+
+        int frames;
+        switch (buf[off] & 3) {
+        case 0:
+            frames = 1;
+            break;
+        case 1:
+        case 2:
+            frames = 2;
+            break;
+        default:
+            if (len < 2)
+                return -1;
+            frames = buf[off + 1] & 0x3f;
+            break;
+        }
+        return frames * frameSamples;
+    }
+
+    /**
+     * Writes the last frame and closes the file.
+     */
+    synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+
+        try {
+            if (webmMuxer != null)
+                webmMuxer.close();
+            if (oggMuxer != null)
+                oggMuxer.close();
+        } catch (IOException ioe) {
+            Timber.e(ioe, "Failed to close %s", filename);
+        }
+    }
+
+    /**
+     * Reads the bits of a byte array, most significant first.
+     */
+    private static class BitReader {
+        private final byte[] buf;
+        private final int end;
+        private int bitPosition;
+        boolean overflow = false;
+
+        BitReader(byte[] buf, int off, int len) {
+            this.buf = buf;
+            this.end = off + len;
+            this.bitPosition = off * 8;
+        }
+
+        int read(int bits) {
+            int value = 0;
+            for (int i = 0; i < bits; i++) {
+                int byteIndex = bitPosition >> 3;
+                if (byteIndex >= end) {
+                    overflow = true;
+                    return 0;
+                }
+                value = (value << 1) | ((buf[byteIndex] >> (7 - (bitPosition & 7))) & 1);
+                bitPosition++;
+            }
+            return value;
+        }
+    }
+}
@@ -8,10 +8,12 @@ package org.atalk.impl.neomedia.recording;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.media.CaptureDeviceInfo;
@@ -106,6 +108,7 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
     private static final byte ulpfecPayloadType = 117;
     private static final byte vp8PayloadType = 96;
     private static final byte opusPayloadType = 111;
+    private static final byte vp9PayloadType = 98;
     private static final Format redFormat = new VideoFormat(Constants.RED);
     private static final Format ulpfecFormat = new VideoFormat(Constants.ULPFEC);
     private static final Format vp8RtpFormat = new VideoFormat(Constants.VP8_RTP);
@@ -145,6 +148,19 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
      */
     private static String AUDIO_CODEC_PNAME = "neomedia.recording.AUDIO_CODEC";
 
+    /**
+     * The name of the property which controls whether the RTP payloads are written to the files as
+     * they are, instead of being decoded and encoded again.
+     */
+    private static final String PASS_THROUGH_PNAME = "neomedia.recording.PASS_THROUGH";
+
+    /**
+     * The name of the property which sets the container of the audio recorded with
+     * {@link #PASS_THROUGH_PNAME}: "ogg" (the default) or "webm".
+     */
+    private static final String PASS_THROUGH_AUDIO_CONTAINER_PNAME
+            = "neomedia.recording.PASS_THROUGH_AUDIO_CONTAINER";
+
     /**
      * The <code>ContentDescriptor</code> to use when saving audio.
      */
@@ -222,6 +238,22 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
      */
     private final boolean performActiveSpeakerDetection;
 
+    /**
+     * Whether the VP8, VP9 and Opus payloads are written to the files as they are, by the
+     * {@link #passThroughStreams}, rather than through FMJ <code>Processor</code>s.
+     */
+    private final boolean passThrough;
+
+    /**
+     * Whether the audio recorded with {@link #passThrough} is written to WebM rather than Ogg files.
+     */
+    private final boolean passThroughAudioWebm;
+
+    /**
+     * The streams which record the packets of each SSRC with {@link #passThrough}.
+     */
+    private final Map<Long, PassThroughStream> passThroughStreams = new HashMap<>();
+
     StreamRTPManager streamRTPManager;
 
     private SynchronizerImpl synchronizer;
@@ -238,10 +270,14 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
         this.translator = (RTPTranslatorImpl) translator;
 
         boolean performActiveSpeakerDetection = false;
+        boolean passThrough = false;
+        boolean passThroughAudioWebm = false;
 
         if (cfg != null) {
             performActiveSpeakerDetection
                     = cfg.getBoolean(PERFORM_ASD_PNAME, performActiveSpeakerDetection);
+            passThrough = cfg.getBoolean(PASS_THROUGH_PNAME, passThrough);
+            passThroughAudioWebm = "webm".equalsIgnoreCase(cfg.getString(PASS_THROUGH_AUDIO_CONTAINER_PNAME));
 
             // setting custom audio codec
             String audioCodec = cfg.getString(AUDIO_CODEC_PNAME);
@@ -251,6 +287,8 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
             }
         }
         this.performActiveSpeakerDetection = performActiveSpeakerDetection;
+        this.passThrough = passThrough;
+        this.passThroughAudioWebm = passThroughAudioWebm;
     }
 
     /**
@@ -337,21 +375,24 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
          */
         rtpConnector = new RTPConnectorImpl(redPayloadType, ulpfecPayloadType);
 
-        rtpManager = RTPManager.newInstance();
+        // In pass-through mode the packets are written to the passThroughStreams, not to an RTPManager.
+        if (!passThrough) {
+            rtpManager = RTPManager.newInstance();
 
-        /*
-         * Add the formats that we know about.
-         */
-        rtpManager.addFormat(vp8RtpFormat, vp8PayloadType);
-        rtpManager.addFormat(opusFormat, opusPayloadType);
-        rtpManager.addReceiveStreamListener(this);
+            /*
+             * Add the formats that we know about.
+             */
+            rtpManager.addFormat(vp8RtpFormat, vp8PayloadType);
+            rtpManager.addFormat(opusFormat, opusPayloadType);
+            rtpManager.addReceiveStreamListener(this);
 
-        /*
-         * Note: When this.rtpManager sends RTCP sender/receiver reports, they will end up being
-         * written to its own input stream. This is not expected to cause problems, but might be
-         * something to keep an eye on.
-         */
-        rtpManager.initialize(rtpConnector);
+            /*
+             * Note: When this.rtpManager sends RTCP sender/receiver reports, they will end up being
+             * written to its own input stream. This is not expected to cause problems, but might be
+             * something to keep an eye on.
+             */
+            rtpManager.initialize(rtpConnector);
+        }
 
         streamRTPManager = new StreamRTPManager(mediaStream, translator);
 
@@ -392,9 +433,20 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
                 removeReceiveStream(r, false);
             }
 
+            Set<Long> passThroughSsrcs;
+            synchronized (passThroughStreams) {
+                passThroughSsrcs = new HashSet<>(passThroughStreams.keySet());
+            }
+            for (long ssrc : passThroughSsrcs) {
+                closePassThroughStream(ssrc);
+            }
+
             rtpConnector.rtcpPacketTransformer.close();
             rtpConnector.rtpPacketTransformer.close();
-            rtpManager.dispose();
+            if (rtpManager != null) {
+                rtpManager.dispose();
+                rtpManager = null;
+            }
 
             if (activeSpeakerDetector != null)
                 activeSpeakerDetector.removeActiveSpeakerChangedListener(this);
@@ -971,7 +1023,8 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
     }
 
     private void handleRtpPacket(RawPacket pkt) {
-        if (pkt != null && pkt.getPayloadType() == vp8PayloadType) {
+        if (pkt != null
+                && (pkt.getPayloadType() == vp8PayloadType || pkt.getPayloadType() == vp9PayloadType)) {
             long ssrc = pkt.getSSRCAsLong();
             if (!activeVideoSsrcs.contains(ssrc)) {
                 synchronized (activeVideoSsrcs) {
@@ -1031,6 +1084,88 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
                     false /* already transformed */);
     }
 
+    /**
+     * Writes an RTP packet to the <code>PassThroughStream</code> of its SSRC, which is created on the
+     * first VP8, VP9 or Opus packet.
+     *
+     * @param pkt the RTP packet, reordered by the <code>PacketBuffer</code>.
+     */
+    private void writePassThrough(RawPacket pkt) {
+        long ssrc = pkt.getSSRCAsLong();
+        PassThroughStream stream;
+
+        synchronized (passThroughStreams) {
+            stream = passThroughStreams.get(ssrc);
+            if (stream == null) {
+                int pt = pkt.getPayloadType();
+                PassThroughStream.Codec codec;
+                String suffix;
+                if (pt == vp8PayloadType) {
+                    codec = PassThroughStream.Codec.VP8;
+                    suffix = VIDEO_FILENAME_SUFFIX;
+                }
+                else if (pt == vp9PayloadType) {
+                    codec = PassThroughStream.Codec.VP9;
+                    suffix = VIDEO_FILENAME_SUFFIX;
+                }
+                else if (pt == opusPayloadType) {
+                    codec = PassThroughStream.Codec.OPUS;
+                    suffix = passThroughAudioWebm ? ".webm" : ".ogg";
+                }
+                else {
+                    return;
+                }
+
+                String filename = getNextFilename(path + "/" + ssrc, suffix);
+                stream = new PassThroughStream(ssrc, codec, pt, filename, passThroughAudioWebm,
+                        eventHandler, new KeyFrameControlAdapter() {
+                    @Override
+                    public boolean requestKeyFrame(boolean urgent) {
+                        return (rtcpFeedbackSender != null) && rtcpFeedbackSender.sendFIR((int) ssrc);
+                    }
+                });
+                passThroughStreams.put(ssrc, stream);
+                getSynchronizer().setRtpClockRate(ssrc, (codec == PassThroughStream.Codec.OPUS) ? 48000 : 90000);
+                Timber.i("Recording SSRC = %s (%s) to %s", ssrc, codec, filename);
+            }
+        }
+
+        try {
+            stream.write(pkt);
+        }
+        catch (IOException ioe) {
+            // The stream is kept closed, so that the packets of the SSRC are dropped.
+            Timber.e("Failed to write SSRC = %s to %s: %s", ssrc, stream.getFilename(), ioe.getMessage());
+            stream.close();
+        }
+    }
+
+    /**
+     * Writes the buffered packets of an SSRC to its <code>PassThroughStream</code> and closes it.
+     *
+     * @param ssrc the SSRC.
+     */
+    private void closePassThroughStream(long ssrc) {
+        PassThroughStream stream;
+        synchronized (passThroughStreams) {
+            stream = passThroughStreams.get(ssrc);
+        }
+        if (stream == null)
+            return;
+
+        rtpConnector.packetBuffer.disable(ssrc);
+        emptyPacketBuffer(ssrc);
+        // See removeReceiveStream(): the RTP timestamps may be reset if the SSRC starts again.
+        getSynchronizer().removeMapping(ssrc);
+        rtpConnector.packetBuffer.reset(ssrc);
+
+        synchronized (passThroughStreams) {
+            passThroughStreams.remove(ssrc);
+        }
+        stream.close();
+        Timber.i("Closed %s for SSRC = %s", stream.getFilename(), ssrc);
+    }
+
     /**
      * The <code>RTPConnector</code> implementation used by this <code>RecorderRtpImpl</code>.
      */
@@ -1056,7 +1191,9 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
         private PacketBuffer packetBuffer;
 
         private RTPConnectorImpl(byte redPT, byte ulpfecPT) {
-            packetBuffer = new PacketBuffer();
+            packetBuffer = passThrough
+                    ? new PacketBuffer(vp8PayloadType, vp9PayloadType, opusPayloadType)
+                    : new PacketBuffer();
             // The chain of transformers will be applied in reverse order for incoming packets.
             TransformEngine transformEngine = new TransformEngineChain(new TransformEngine[] {
                     packetBuffer,
@@ -1220,7 +1357,10 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
                     if (i != 0)
                         rawPacketArray[i] = null;
 
-                    if (packet != null) {
+                    if (packet != null && passThrough && !isControlStream) {
+                        writePassThrough(packet);
+                    }
+                    else if (packet != null) {
                         if (isControlStream)
                             pendingControlPacket = packet;
                         else
@@ -1390,6 +1530,8 @@ public class RecorderRtpImpl implements Recorder, ReceiveStreamListener,
                         ReceiveStreamDesc receiveStream = findReceiveStream(ssrc);
                         if (receiveStream != null)
                             removeReceiveStream(receiveStream, false);
+                        else if (passThrough)
+                            closePassThroughStream(ssrc);
                     }
                     else if (pkt != null && pkt.getRTCPPacketType() == 201) {
                         // Do not pass Receiver Reports to FMJ, because it does not need them (it
@@ -0,0 +1,581 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.recording;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the encoded frames of a single VP8, VP9 or Opus track to a WebM file, without the native
+ * <code>WebmWriter</code>. A cluster is collected in memory and written once complete with its exact
+ * size, so that only the segment size, the duration and the position of the cues are filled in when
+ * the file is closed; a file which is not closed is still playable up to its last complete cluster.
+ *
+ * @author Eng Chong Meng
+ */
+class WebmMuxer
+{
+    /**
+     * The codec ID of a VP8 track.
+     */
+    static final String CODEC_VP8 = "V_VP8";
+
+    /**
+     * The codec ID of a VP9 track.
+     */
+    static final String CODEC_VP9 = "V_VP9";
+
+    /**
+     * The codec ID of an Opus track.
+     */
+    static final String CODEC_OPUS = "A_OPUS";
+
+    /*
+     * The IDs of the EBML and Matroska elements used.
+     */
+    private static final int ID_EBML = 0x1A45DFA3;
+    private static final int ID_EBML_VERSION = 0x4286;
+    private static final int ID_EBML_READ_VERSION = 0x42F7;
+    private static final int ID_EBML_MAX_ID_LENGTH = 0x42F2;
+    private static final int ID_EBML_MAX_SIZE_LENGTH = 0x42F3;
+    private static final int ID_DOC_TYPE = 0x4282;
+    private static final int ID_DOC_TYPE_VERSION = 0x4287;
+    private static final int ID_DOC_TYPE_READ_VERSION = 0x4285;
+    private static final int ID_SEGMENT = 0x18538067;
+    private static final int ID_SEEK_HEAD = 0x114D9B74;
+    private static final int ID_SEEK = 0x4DBB;
+    private static final int ID_SEEK_ID = 0x53AB;
+    private static final int ID_SEEK_POSITION = 0x53AC;
+    private static final int ID_VOID = 0xEC;
+    private static final int ID_INFO = 0x1549A966;
+    private static final int ID_TIMECODE_SCALE = 0x2AD7B1;
+    private static final int ID_DURATION = 0x4489;
+    private static final int ID_MUXING_APP = 0x4D80;
+    private static final int ID_WRITING_APP = 0x5741;
+    private static final int ID_TRACKS = 0x1654AE6B;
+    private static final int ID_TRACK_ENTRY = 0xAE;
+    private static final int ID_TRACK_NUMBER = 0xD7;
+    private static final int ID_TRACK_UID = 0x73C5;
+    private static final int ID_TRACK_TYPE = 0x83;
+    private static final int ID_CODEC_ID = 0x86;
+    private static final int ID_CODEC_PRIVATE = 0x63A2;
+    private static final int ID_CODEC_DELAY = 0x56AA;
+    private static final int ID_SEEK_PRE_ROLL = 0x56BB;
+    private static final int ID_VIDEO = 0xE0;
+    private static final int ID_PIXEL_WIDTH = 0xB0;
+    private static final int ID_PIXEL_HEIGHT = 0xBA;
+    private static final int ID_AUDIO = 0xE1;
+    private static final int ID_SAMPLING_FREQUENCY = 0xB5;
+    private static final int ID_CHANNELS = 0x9F;
+    private static final int ID_CLUSTER = 0x1F43B675;
+    private static final int ID_TIMECODE = 0xE7;
+    private static final int ID_SIMPLE_BLOCK = 0xA3;
+    private static final int ID_CUES = 0x1C53BB6B;
+    private static final int ID_CUE_POINT = 0xBB;
+    private static final int ID_CUE_TIME = 0xB3;
+    private static final int ID_CUE_TRACK_POSITIONS = 0xB7;
+    private static final int ID_CUE_TRACK = 0xF7;
+    private static final int ID_CUE_CLUSTER_POSITION = 0xF1;
+
+    /**
+     * The name written as muxing and writing application.
+     */
+    private static final String APP_NAME = "aTalk";
+
+    /**
+     * The maximum duration in milliseconds of a cluster; a new cluster is also started at every video
+     * key frame.
+     */
+    private static final long MAX_CLUSTER_DURATION = 5000;
+
+    /**
+     * The duration in milliseconds of the clusters of an audio track, which is also the precision of
+     * seeking in it.
+     */
+    private static final long AUDIO_CLUSTER_DURATION = 1000;
+
+    /**
+     * The size of a Seek element with 4-byte SeekID and 8-byte SeekPosition.
+     */
+    private static final int SEEK_SIZE = 21;
+
+    /**
+     * The size of the smallest Void element.
+     */
+    private static final int MIN_VOID_SIZE = 2;
+
+    /**
+     * The file written to.
+     */
+    private final AsyncFileWriter out;
+
+    /**
+     * Whether the track is a video track.
+     */
+    private boolean video;
+
+    /**
+     * The position in the file of the data of the Segment, which the positions in the SeekHead and the
+     * Cues are relative to.
+     */
+    private long segmentDataPosition = -1;
+
+    /**
+     * The position in the file of the Void element reserved for the Seek of the Cues.
+     */
+    private long cuesSeekPosition;
+
+    /**
+     * The position in the file of the value of the Duration.
+     */
+    private long durationPosition;
+
+    /**
+     * The content of the cluster being collected, without its ID and size.
+     */
+    private final EbmlBuffer cluster = new EbmlBuffer(64 * 1024);
+
+    /**
+     * The timecode in milliseconds of the cluster being collected or <code>-1</code> if none.
+     */
+    private long clusterTimecode = -1;
+
+    /**
+     * The timecode in milliseconds of the last frame written.
+     */
+    private long lastTimecode = 0;
+
+    /**
+     * The timecodes and the cluster positions of the cue points.
+     */
+    private final List<long[]> cuePoints = new ArrayList<>();
+
+    /**
+     * A buffer for the elements written outside of the clusters.
+     */
+    private final EbmlBuffer header = new EbmlBuffer(256);
+
+    /**
+     * Creates or truncates a WebM file.
+     *
+     * @param filename the name of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    WebmMuxer(String filename)
+            throws IOException
+    {
+        out = new AsyncFileWriter(filename);
+    }
+
+    /**
+     * Writes the header of the file with a VP8 or VP9 track.
+     *
+     * @param codecId {@link #CODEC_VP8} or {@link #CODEC_VP9}.
+     * @param width the width of the video.
+     * @param height the height of the video.
+     * @throws IOException if the header cannot be written.
+     */
+    void writeVideoHeader(String codecId, int width, int height)
+            throws IOException
+    {
+        video = true;
+        EbmlBuffer track = new EbmlBuffer(64);
+        writeTrackEntryStart(track, 1, codecId);
+        EbmlBuffer videoSettings = new EbmlBuffer(16);
+        videoSettings.putUint(ID_PIXEL_WIDTH, width);
+        videoSettings.putUint(ID_PIXEL_HEIGHT, height);
+        track.putElement(ID_VIDEO, videoSettings);
+        writeHeader(track);
+    }
+
+    /**
+     * Writes the header of the file with an Opus track.
+     *
+     * @param sampleRate the sample rate of the track.
+     * @param channels the number of channels of the track.
+     * @param preSkip the number of samples to skip at the start of the track, at 48 kHz.
+     * @param opusHead the Opus identification header.
+     * @throws IOException if the header cannot be written.
+     */
+    void writeOpusHeader(int sampleRate, int channels, int preSkip, byte[] opusHead)
+            throws IOException
+    {
+        video = false;
+        EbmlBuffer track = new EbmlBuffer(64);
+        writeTrackEntryStart(track, 2, CODEC_OPUS);
+        track.putBinary(ID_CODEC_PRIVATE, opusHead, 0, opusHead.length);
+        track.putUint(ID_CODEC_DELAY, preSkip * 1000000000L / 48000);
+        track.putUint(ID_SEEK_PRE_ROLL, 80000000L);
+        EbmlBuffer audioSettings = new EbmlBuffer(16);
+        audioSettings.putFloat(ID_SAMPLING_FREQUENCY, sampleRate);
+        audioSettings.putUint(ID_CHANNELS, channels);
+        track.putElement(ID_AUDIO, audioSettings);
+        writeHeader(track);
+    }
+
+    /**
+     * Writes the start of the TrackEntry of the only track of the file.
+     *
+     * @param track the buffer to write to.
+     * @param type the TrackType: <code>1</code> for video, <code>2</code> for audio.
+     * @param codecId the CodecID of the track.
+     */
+    private static void writeTrackEntryStart(EbmlBuffer track, int type, String codecId)
+    {
+        track.putUint(ID_TRACK_NUMBER, 1);
+        track.putUint(ID_TRACK_UID, 1);
+        track.putUint(ID_TRACK_TYPE, type);
+        track.putString(ID_CODEC_ID, codecId);
+    }
+
+    /**
+     * Writes the EBML header, the start of the Segment, the SeekHead, the Info and the Tracks.
+     *
+     * @param track the content of the TrackEntry.
+     * @throws IOException if the header cannot be written.
+     */
+    private void writeHeader(EbmlBuffer track)
+            throws IOException
+    {
+        EbmlBuffer ebml = new EbmlBuffer(32);
+        ebml.putUint(ID_EBML_VERSION, 1);
+        ebml.putUint(ID_EBML_READ_VERSION, 1);
+        ebml.putUint(ID_EBML_MAX_ID_LENGTH, 4);
+        ebml.putUint(ID_EBML_MAX_SIZE_LENGTH, 8);
+        ebml.putString(ID_DOC_TYPE, "webm");
+        ebml.putUint(ID_DOC_TYPE_VERSION, 4);
+        ebml.putUint(ID_DOC_TYPE_READ_VERSION, 2);
+        header.putElement(ID_EBML, ebml);
+
+        // The size of the Segment is unknown until the file is closed.
+        header.putId(ID_SEGMENT);
+        header.putUnknownSize();
+        segmentDataPosition = header.length;
+
+        EbmlBuffer info = new EbmlBuffer(64);
+        info.putUint(ID_TIMECODE_SCALE, 1000000);
+        info.putString(ID_MUXING_APP, APP_NAME);
+        info.putString(ID_WRITING_APP, APP_NAME);
+        info.putId(ID_DURATION);
+        info.putSize(8);
+        int durationOffset = info.length;
+        info.putDouble(0);
+
+        EbmlBuffer tracks = new EbmlBuffer(64);
+        tracks.putElement(ID_TRACK_ENTRY, track);
+
+        // The Seek of the Info and the Tracks, and a Void for the one of the Cues.
+        int infoPosition = 2 * SEEK_SIZE + SEEK_SIZE + MIN_VOID_SIZE;
+        infoPosition += EbmlBuffer.getIdLength(ID_SEEK_HEAD) + EbmlBuffer.getSizeLength(infoPosition);
+        long tracksPosition = infoPosition + EbmlBuffer.getIdLength(ID_INFO)
+                + EbmlBuffer.getSizeLength(info.length) + info.length;
+        EbmlBuffer seekHead = new EbmlBuffer(64);
+        writeSeek(seekHead, ID_INFO, infoPosition);
+        writeSeek(seekHead, ID_TRACKS, tracksPosition);
+        int seekHeadDataOffset = EbmlBuffer.getIdLength(ID_SEEK_HEAD)
+                + EbmlBuffer.getSizeLength(seekHead.length + SEEK_SIZE + MIN_VOID_SIZE);
+        cuesSeekPosition = segmentDataPosition + seekHeadDataOffset + seekHead.length;
+        seekHead.putId(ID_VOID);
+        seekHead.putSize(SEEK_SIZE + MIN_VOID_SIZE - 2);
+        seekHead.putZeros(SEEK_SIZE + MIN_VOID_SIZE - 2);
+
+        header.putElement(ID_SEEK_HEAD, seekHead);
+        durationPosition = header.length + EbmlBuffer.getIdLength(ID_INFO)
+                + EbmlBuffer.getSizeLength(info.length) + durationOffset;
+        header.putElement(ID_INFO, info);
+        header.putElement(ID_TRACKS, tracks);
+        out.write(header.buf, 0, header.length);
+    }
+
+    /**
+     * Writes a Seek element with 4-byte SeekID and 8-byte SeekPosition i.e. of {@link #SEEK_SIZE} bytes.
+     *
+     * @param buffer the buffer to write to.
+     * @param id the ID of the element sought.
+     * @param position the position of the element, relative to the data of the Segment.
+     */
+    private static void writeSeek(EbmlBuffer buffer, int id, long position)
+    {
+        buffer.putId(ID_SEEK);
+        buffer.putSize(SEEK_SIZE - 3);
+        buffer.putId(ID_SEEK_ID);
+        buffer.putSize(4);
+        buffer.putInt(id);
+        buffer.putId(ID_SEEK_POSITION);
+        buffer.putSize(8);
+        buffer.putLong(position);
+    }
+
+    /**
+     * Writes an encoded frame in a SimpleBlock.
+     *
+     * @param timecode the presentation time of the frame in milliseconds.
+     * @param keyFrame whether the frame is a key frame; all the audio frames are.
+     * @param invisible whether the frame is not to be shown.
+     * @param buf the encoded frame.
+     * @param off the offset of the frame in <code>buf</code>.
+     * @param len the length of the frame.
+     * @throws IOException if a cluster cannot be written.
+     */
+    void writeFrame(long timecode, boolean keyFrame, boolean invisible, byte[] buf, int off, int len)
+            throws IOException
+    {
+        if (segmentDataPosition == -1)
+            throw new IOException("No header written.");
+
+        // The blocks of a track are in decoding order.
+        timecode = Math.max(timecode, lastTimecode);
+        lastTimecode = timecode;
+
+        if ((clusterTimecode == -1)
+                || (video ? keyFrame : (timecode - clusterTimecode >= AUDIO_CLUSTER_DURATION))
+                || (timecode - clusterTimecode >= MAX_CLUSTER_DURATION)) {
+            flushCluster();
+            clusterTimecode = timecode;
+            cluster.putUint(ID_TIMECODE, timecode);
+            if (keyFrame)
+                cuePoints.add(new long[]{timecode, out.position() - segmentDataPosition});
+        }
+
+        cluster.putId(ID_SIMPLE_BLOCK);
+        cluster.putSize(4 + len);
+        cluster.putByte(0x81); // the track number as EBML vint
+        int relativeTimecode = (int) (timecode - clusterTimecode);
+        cluster.putByte(relativeTimecode >> 8);
+        cluster.putByte(relativeTimecode);
+        cluster.putByte((keyFrame ? 0x80 : 0) | (invisible ? 0x08 : 0));
+        cluster.put(buf, off, len);
+    }
+
+    /**
+     * Writes the cluster being collected, if any.
+     *
+     * @throws IOException if the cluster cannot be written.
+     */
+    private void flushCluster()
+            throws IOException
+    {
+        if (cluster.length == 0)
+            return;
+
+        header.length = 0;
+        header.putId(ID_CLUSTER);
+        header.putSize(cluster.length);
+        out.write(header.buf, 0, header.length);
+        out.write(cluster.buf, 0, cluster.length);
+        cluster.length = 0;
+    }
+
+    /**
+     * Writes the last cluster and the cues, fills in the sizes and the duration and closes the file.
+     *
+     * @throws IOException if the file cannot be written or closed.
+     */
+    void close()
+            throws IOException
+    {
+        try {
+            if (segmentDataPosition == -1)
+                return;
+
+            flushCluster();
+            EbmlBuffer patch = new EbmlBuffer(32);
+            if (!cuePoints.isEmpty()) {
+                long cuesPosition = out.position() - segmentDataPosition;
+                EbmlBuffer cues = new EbmlBuffer(cuePoints.size() * 24);
+                EbmlBuffer cuePoint = new EbmlBuffer(24);
+                EbmlBuffer positions = new EbmlBuffer(16);
+                for (long[] point : cuePoints) {
+                    cuePoint.length = 0;
+                    positions.length = 0;
+                    cuePoint.putUint(ID_CUE_TIME, point[0]);
+                    positions.putUint(ID_CUE_TRACK, 1);
+                    positions.putUint(ID_CUE_CLUSTER_POSITION, point[1]);
+                    cuePoint.putElement(ID_CUE_TRACK_POSITIONS, positions);
+                    cues.putElement(ID_CUE_POINT, cuePoint);
+                }
+                header.length = 0;
+                header.putElement(ID_CUES, cues);
+                out.write(header.buf, 0, header.length);
+
+                writeSeek(patch, ID_CUES, cuesPosition);
+                patch.putId(ID_VOID);
+                patch.putSize(MIN_VOID_SIZE - 2);
+                out.writeAt(cuesSeekPosition, patch.buf, 0, patch.length);
+            }
+
+            patch.length = 0;
+            patch.putDouble(lastTimecode);
+            out.writeAt(durationPosition, patch.buf, 0, patch.length);
+
+            patch.length = 0;
+            patch.putSize8(out.position() - segmentDataPosition);
+            out.writeAt(segmentDataPosition - 8, patch.buf, 0, patch.length);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * A growable buffer with the EBML encodings of the elements.
+     */
+    private static class EbmlBuffer
+    {
+        /**
+         * The bytes written.
+         */
+        byte[] buf;
+
+        /**
+         * The number of bytes written.
+         */
+        int length = 0;
+
+        EbmlBuffer(int capacity)
+        {
+            buf = new byte[capacity];
+        }
+
+        /**
+         * Gets the number of bytes of an element ID.
+         *
+         * @param id the element ID, with its length marker.
+         * @return the number of bytes of <code>id</code>.
+         */
+        static int getIdLength(int id)
+        {
+            return (id >= 0x1000000) ? 4 : (id >= 0x10000) ? 3 : (id >= 0x100) ? 2 : 1;
+        }
+
+        /**
+         * Gets the number of bytes of the shortest encoding of an element size.
+         *
+         * @param size the element size.
+         * @return the number of bytes of the vint encoding of <code>size</code>.
+         */
+        static int getSizeLength(long size)
+        {
+            int length = 1;
+            // All ones is reserved for the unknown size.
+            while (size >= (1L << (7 * length)) - 1)
+                length++;
+            return length;
+        }
+
+        private void ensureCapacity(int n)
+        {
+            if (length + n > buf.length) {
+                byte[] newBuf = new byte[Math.max(buf.length * 2, length + n)];
+                System.arraycopy(buf, 0, newBuf, 0, length);
+                buf = newBuf;
+            }
+        }
+
+        void putByte(int b)
+        {
+            ensureCapacity(1);
+            buf[length++] = (byte) b;
+        }
+
+        void put(byte[] b, int off, int len)
+        {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buf, length, len);
+            length += len;
+        }
+
+        void putZeros(int len)
+        {
+            ensureCapacity(len);
+            for (int i = 0; i < len; i++)
+                buf[length++] = 0;
+        }
+
+        void putInt(int value)
+        {
+            for (int shift = 24; shift >= 0; shift -= 8)
+                putByte(value >>> shift);
+        }
+
+        void putLong(long value)
+        {
+            for (int shift = 56; shift >= 0; shift -= 8)
+                putByte((int) (value >>> shift));
+        }
+
+        void putDouble(double value)
+        {
+            putLong(Double.doubleToLongBits(value));
+        }
+
+        void putId(int id)
+        {
+            for (int shift = 8 * (getIdLength(id) - 1); shift >= 0; shift -= 8)
+                putByte(id >>> shift);
+        }
+
+        void putSize(long size)
+        {
+            int sizeLength = getSizeLength(size);
+            long vint = size | (1L << (7 * sizeLength));
+            for (int shift = 8 * (sizeLength - 1); shift >= 0; shift -= 8)
+                putByte((int) (vint >>> shift));
+        }
+
+        /**
+         * Writes an element size with the 8-byte encoding, so that it may be overwritten with any size.
+         *
+         * @param size the element size.
+         */
+        void putSize8(long size)
+        {
+            putLong(size | (1L << 56));
+        }
+
+        void putUnknownSize()
+        {
+            putLong(0x01FFFFFFFFFFFFFFL);
+        }
+
+        void putUint(int id, long value)
+        {
+            int valueLength = 1;
+            while ((valueLength < 8) && ((value >>> (8 * valueLength)) != 0))
+                valueLength++;
+            putId(id);
+            putSize(valueLength);
+            for (int shift = 8 * (valueLength - 1); shift >= 0; shift -= 8)
+                putByte((int) (value >>> shift));
+        }
+
+        void putFloat(int id, double value)
+        {
+            putId(id);
+            putSize(8);
+            putDouble(value);
+        }
+
+        void putString(int id, String value)
+        {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putBinary(id, bytes, 0, bytes.length);
+        }
+
+        void putBinary(int id, byte[] b, int off, int len)
+        {
+            putId(id);
+            putSize(len);
+            put(b, off, len);
+        }
+
+        void putElement(int id, EbmlBuffer content)
+        {
+            putBinary(id, content.buf, 0, content.length);
+        }
+    }
+}
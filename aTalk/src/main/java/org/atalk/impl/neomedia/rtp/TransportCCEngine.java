@@ -16,9 +16,9 @@
 package org.atalk.impl.neomedia.rtp;
 
 import org.atalk.impl.neomedia.RTPPacketPredicate;
+import org.atalk.impl.neomedia.VideoMediaStreamImpl;
 import org.atalk.impl.neomedia.rtcp.RTCPTCCPacket;
-import org.atalk.impl.neomedia.rtp.remotebitrateestimator.RemoteBitrateEstimatorAbsSendTime;
-import org.atalk.impl.neomedia.rtp.remotebitrateestimator.RemoteBitrateObserver;
+import org.atalk.impl.neomedia.rtp.sendsidebandwidthestimation.BandwidthEstimatorImpl;
 import org.atalk.impl.neomedia.transform.PacketTransformer;
 import org.atalk.impl.neomedia.transform.SinglePacketTransformerAdapter;
 import org.atalk.impl.neomedia.transform.TransformEngine;
@@ -29,14 +29,13 @@ import org.atalk.service.neomedia.RawPacket;
 import org.atalk.service.neomedia.TransmissionFailedException;
 import org.atalk.service.neomedia.VideoMediaStream;
 import org.atalk.service.neomedia.rtp.CallStatsObserver;
-import org.atalk.util.LRUCache;
 import org.atalk.util.RTPUtils;
 import org.atalk.util.logging.DiagnosticContext;
 import org.atalk.util.logging.TimeSeriesLogger;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -56,7 +55,7 @@ import timber.log.Timber;
  * @author George Politis
  * @author Eng Chong Meng
  */
-public class TransportCCEngine extends RTCPPacketListenerAdapter implements RemoteBitrateObserver, CallStatsObserver
+public class TransportCCEngine extends RTCPPacketListenerAdapter implements CallStatsObserver
 {
     /**
      * The maximum number of received packets and their timestamps to save.
@@ -64,11 +63,12 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
     private static final int MAX_INCOMING_PACKETS_HISTORY = 200;
 
     /**
-     * The maximum number of received packets and their timestamps to save.
+     * The maximum number of sent packets and their timestamps to save; a power
+     * of 2 which divides the 16-bit sequence number space.
      *
      * XXX this is an uninformed value.
      */
-    private static final int MAX_OUTGOING_PACKETS_HISTORY = 1000;
+    private static final int MAX_OUTGOING_PACKETS_HISTORY = 1024;
 
     /**
      * The {@link TimeSeriesLogger} to be used by this instance to print time series.
@@ -128,7 +128,8 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
     private final Object incomingPacketsSyncRoot = new Object();
 
     /**
-     * Used to synchronize access to {@link #sentPacketDetails}.
+     * Used to synchronize access to {@link #sentSeqs}, {@link #sentTimesMs}
+     * and {@link #sentLengths}.
      */
     private final Object sentPacketsSyncRoot = new Object();
 
@@ -157,16 +158,25 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
      * (that of the sender). This is technically not necessary and it's done for convenience.
      */
     private long localReferenceTimeMs = -1;
+
+    /**
+     * The transport-wide sequence numbers of the last sent packets, indexed by
+     * sequence number modulo {@link #MAX_OUTGOING_PACKETS_HISTORY}, or -1 for
+     * the slots which are empty or whose feedback has been received. Together
+     * with {@link #sentTimesMs} and {@link #sentLengths}, a history without an
+     * allocation per packet.
+     */
+    private final int[] sentSeqs = new int[MAX_OUTGOING_PACKETS_HISTORY];
+
     /**
-     * Holds a key value pair of the packet sequence number and an object made
-     * up of the packet send time and the packet size.
+     * The send times (in millis) of the packets in {@link #sentSeqs}.
      */
-    private Map<Integer, PacketDetail> sentPacketDetails = new LRUCache<>(MAX_OUTGOING_PACKETS_HISTORY);
+    private final long[] sentTimesMs = new long[MAX_OUTGOING_PACKETS_HISTORY];
 
     /**
-     * Used for estimating the bitrate from RTCP TCC feedback packets
+     * The lengths of the packets in {@link #sentSeqs}.
      */
-    private final RemoteBitrateEstimatorAbsSendTime bitrateEstimatorAbsSendTime;
+    private final int[] sentLengths = new int[MAX_OUTGOING_PACKETS_HISTORY];
 
     /**
      * Ctor.
@@ -176,7 +186,7 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
     public TransportCCEngine(@NotNull DiagnosticContext diagnosticContext)
     {
         this.diagnosticContext = diagnosticContext;
-        bitrateEstimatorAbsSendTime = new RemoteBitrateEstimatorAbsSendTime(this, diagnosticContext);
+        Arrays.fill(sentSeqs, -1);
     }
 
     /**
@@ -346,7 +356,10 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
     @Override
     public void onRttUpdate(long avgRttMs, long maxRttMs)
     {
-        bitrateEstimatorAbsSendTime.onRttUpdate(avgRttMs, maxRttMs);
+        BandwidthEstimatorImpl bandwidthEstimator = getBandwidthEstimator();
+        if (bandwidthEstimator != null) {
+            bandwidthEstimator.onRttUpdate(avgRttMs, maxRttMs);
+        }
     }
 
     /**
@@ -360,22 +373,18 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
     }
 
     /**
-     * Called when a receive channel group has a new bitrate estimate for the incoming streams.
+     * Gets the send-side bandwidth estimator which the transport-cc feedback
+     * feeds, i.e. the one of the video stream of the transport.
      *
-     * @param ssrcs
-     * @param bitrate
+     * @return the {@link BandwidthEstimatorImpl}, or null if there is no video stream.
      */
-    @Override
-    public void onReceiveBitrateChanged(Collection<Long> ssrcs, long bitrate)
+    private BandwidthEstimatorImpl getBandwidthEstimator()
     {
-        VideoMediaStream videoStream;
-        for (MediaStream stream : mediaStreams) {
-            if (stream instanceof VideoMediaStream) {
-                videoStream = (VideoMediaStream) stream;
-                videoStream.getOrCreateBandwidthEstimator().updateReceiverEstimate(bitrate);
-                break;
-            }
+        VideoMediaStream videoStream = anyVideoMediaStream;
+        if (videoStream instanceof VideoMediaStreamImpl) {
+            return ((VideoMediaStreamImpl) videoStream).getOrCreateBandwidthEstimator();
         }
+        return null;
     }
 
     /**
@@ -386,11 +395,35 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
     @Override
     public void tccReceived(RTCPTCCPacket tccPacket)
     {
+        BandwidthEstimatorImpl bandwidthEstimator = getBandwidthEstimator();
+        if (bandwidthEstimator == null) {
+            return;
+        }
+
         RTCPTCCPacket.PacketMap packetMap = tccPacket.getPackets();
+        int size = packetMap.size();
+        long[] sendTimesMs = new long[size];
+        long[] arrivalTimesMs = new long[size];
+        int[] lengths = new int[size];
+        int count = 0;
+
         long previousArrivalTimeMs = -1;
         for (Map.Entry<Integer, Long> entry : packetMap.entrySet()) {
+            int seq = entry.getKey();
+            int index = seq & (MAX_OUTGOING_PACKETS_HISTORY - 1);
+            synchronized (sentPacketsSyncRoot) {
+                if (sentSeqs[index] != seq) {
+                    continue;
+                }
+                sentSeqs[index] = -1;
+                sendTimesMs[count] = sentTimesMs[index];
+                lengths[count] = sentLengths[index];
+            }
+
             long arrivalTime250Us = entry.getValue();
             if (arrivalTime250Us == -1) {
+                // Lost, as far as the remote endpoint knows.
+                arrivalTimesMs[count++] = -1;
                 continue;
             }
 
@@ -400,15 +433,6 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
                 localReferenceTimeMs = System.currentTimeMillis();
             }
 
-            PacketDetail packetDetail;
-            synchronized (sentPacketsSyncRoot) {
-                packetDetail = sentPacketDetails.remove(entry.getKey());
-            }
-
-            if (packetDetail == null) {
-                continue;
-            }
-
             long arrivalTimeMs = arrivalTime250Us / 4 - remoteReferenceTimeMs + localReferenceTimeMs;
 
             if (timeSeriesLogger.isTraceEnabled()) {
@@ -416,24 +440,24 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
                     long diff_ms = arrivalTimeMs - previousArrivalTimeMs;
                     timeSeriesLogger.trace(diagnosticContext
                             .makeTimeSeriesPoint("ingress_tcc_ack")
-                            .addField("seq", entry.getKey())
+                            .addField("seq", seq)
                             .addField("arrival_time_ms", arrivalTimeMs)
                             .addField("diff_ms", diff_ms));
                 }
                 else {
                     timeSeriesLogger.trace(diagnosticContext
                             .makeTimeSeriesPoint("ingress_tcc_ack")
-                            .addField("seq", entry.getKey())
+                            .addField("seq", seq)
                             .addField("arrival_time_ms", arrivalTimeMs));
                 }
             }
 
             previousArrivalTimeMs = arrivalTimeMs;
-            long sendTime24bits = RemoteBitrateEstimatorAbsSendTime.convertMsTo24Bits(packetDetail.packetSendTimeMs);
-
-            bitrateEstimatorAbsSendTime.incomingPacketInfo(
-                    arrivalTimeMs, sendTime24bits, packetDetail.packetLength, tccPacket.getSourceSSRC());
+            arrivalTimesMs[count++] = arrivalTimeMs;
         }
+
+        bandwidthEstimator.transportFeedbackReceived(
+                sendTimesMs, arrivalTimesMs, lengths, count, System.currentTimeMillis());
     }
 
     /**
@@ -506,24 +530,6 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
         }
     }
 
-    /**
-     * {@link PacketDetail} is an object that holds the
-     * length(size) of the packet in {@link #packetLength}
-     * and the time stamps of the outgoing packet
-     * in {@link #packetSendTimeMs}
-     */
-    private class PacketDetail
-    {
-        int packetLength;
-        long packetSendTimeMs;
-
-        PacketDetail(int length, long time)
-        {
-            packetLength = length;
-            packetSendTimeMs = time;
-        }
-    }
-
     /**
      * Handles outgoing RTP packets for this {@link TransportCCEngine}.
      */
@@ -547,13 +553,12 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
         public RawPacket transform(RawPacket pkt)
         {
             if (extensionId != -1) {
-                RawPacket.HeaderExtension ext = pkt.getHeaderExtension((byte) extensionId);
-                if (ext == null) {
-                    ext = pkt.addExtension((byte) extensionId, 2);
+                if (pkt.getExtensionDataOffset(extensionId) < 0) {
+                    pkt.addExtension((byte) extensionId, 2);
                 }
 
                 int seq = outgoingSeq.getAndIncrement() & 0xffff;
-                RTPUtils.writeShort(ext.getBuffer(), ext.getOffset() + 1, (short) seq);
+                pkt.writeExtensionValue(extensionId, seq);
 
                 if (timeSeriesLogger.isTraceEnabled()) {
                     timeSeriesLogger.trace(diagnosticContext
@@ -562,8 +567,11 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
                             .addField("pt", RawPacket.getPayloadType(pkt))
                             .addField("tcc_seq", seq));
                 }
+                int index = seq & (MAX_OUTGOING_PACKETS_HISTORY - 1);
                 synchronized (sentPacketsSyncRoot) {
-                    sentPacketDetails.put(seq, new PacketDetail(pkt.getLength(), System.currentTimeMillis()));
+                    sentSeqs[index] = seq;
+                    sentTimesMs[index] = System.currentTimeMillis();
+                    sentLengths[index] = pkt.getLength();
                 }
             }
             return pkt;
@@ -608,9 +616,8 @@ public class TransportCCEngine extends RTCPPacketListenerAdapter implements Remo
         public RawPacket reverseTransform(RawPacket pkt)
         {
             if (extensionId != -1) {
-                RawPacket.HeaderExtension he = pkt.getHeaderExtension((byte) extensionId);
-                if (he != null && he.getExtLength() == 2) {
-                    int seq = RTPUtils.readUint16AsInt(he.getBuffer(), he.getOffset() + 1);
+                if (pkt.getExtensionDataLength(extensionId) == 2) {
+                    int seq = (int) pkt.readExtensionValue(extensionId);
                     packetReceived(seq, RawPacket.getPayloadType(pkt), pkt.isPacketMarked());
                 }
             }
@@ -299,11 +299,18 @@ class AimdRateControl
         inExperiment = false;
     }
 
+    /**
+     * Sets the current estimate, e.g. to the start bitrate of the sender, and makes it valid.
+     *
+     * @param bitrateBps the estimate in bps.
+     * @param nowMs the current time in millis.
+     */
     public void setEstimate(long bitrateBps, long nowMs)
     {
         updated = true;
         bitrateIsInitialized = true;
-        currentBitrateBps = changeBitrate(bitrateBps, bitrateBps, nowMs);
+        currentBitrateBps = Math.max(bitrateBps, minConfiguredBitrateBps);
+        timeLastBitrateChange = nowMs;
     }
 
     public void setMinBitrate(long minBitrateBps)
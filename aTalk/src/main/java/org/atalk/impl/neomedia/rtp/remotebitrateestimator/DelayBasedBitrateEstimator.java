@@ -0,0 +1,360 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.rtp.remotebitrateestimator;
+
+import org.atalk.service.neomedia.rtp.RemoteBitrateEstimator;
+import org.atalk.util.logging.DiagnosticContext;
+import org.atalk.util.logging.TimeSeriesLogger;
+import org.ice4j.util.RateStatistics;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The delay-based part of the send-side bandwidth estimation: runs the {@link InterArrival},
+ * {@link OveruseEstimator}, {@link OveruseDetector} and {@link AimdRateControl} chain over the send
+ * times of our own packets and the arrival times which the remote endpoint reports for them in its
+ * transport-cc feedback. The feedback covers all the streams of the transport, so unlike
+ * {@link RemoteBitrateEstimatorAbsSendTime} there is no per-SSRC state.
+ * <p>
+ * The packets which leave in a single burst, e.g. those of a key frame, are served back to back by
+ * the bottleneck, so their arrival spread measures its capacity: such a probe lifts the estimate at
+ * once instead of the multiplicative increase of 8% per second.
+ * <p>
+ * webrtc/modules/congestion_controller/delay_based_bwe.cc
+ * webrtc/modules/congestion_controller/probe_bitrate_estimator.cc
+ * <p>
+ * The instance is not thread-safe, its owner serializes the calls. All the times are given by the
+ * caller, so that it runs on a simulated clock as well.
+ *
+ * @author Eng Chong Meng
+ */
+public class DelayBasedBitrateEstimator
+{
+    /**
+     * The {@link TimeSeriesLogger} to be used by this instance to print time series.
+     */
+    private static final TimeSeriesLogger timeSeriesLogger
+            = TimeSeriesLogger.getTimeSeriesLogger(DelayBasedBitrateEstimator.class);
+
+    /**
+     * A timestamp group is made of the packets sent at most 5ms after the first one of the group.
+     * The send times are in millis, so a tick of the {@link InterArrival} is a millisecond.
+     */
+    private static final long kTimestampGroupLengthMs = 5;
+
+    /**
+     * The minimum number of packets of a burst for it to be a probe.
+     */
+    private static final int kMinProbePackets = 5;
+
+    /**
+     * The minimum spread (in millis) of the arrival times of a probe; the arrival times are in
+     * millis, so shorter probes are too coarse.
+     */
+    private static final long kMinProbeDeltaMs = 10;
+
+    /**
+     * The fraction of the capacity measured by a probe to set the estimate to, as a decrease
+     * would, so that the jump does not leave a standing queue.
+     */
+    private static final double kProbeFraction = 0.85;
+
+    /**
+     * Reduces the effects of allocations and garbage collection of {@link #incomingPacketFeedback}.
+     */
+    private final long[] deltas = new long[3];
+
+    /**
+     * The input of {@link #rateControl}, reused across the updates.
+     */
+    private final RateControlInput input = new RateControlInput(BandwidthUsage.kBwNormal, 0L, 0D);
+
+    /**
+     * Computes the send-time and arrival-time deltas of the timestamp groups.
+     */
+    private final InterArrival interArrival;
+
+    /**
+     * The Kalman filter which estimates the queuing delay trend.
+     */
+    private final OveruseEstimator estimator;
+
+    /**
+     * Compares the delay trend with an adaptive threshold.
+     */
+    private final OveruseDetector detector;
+
+    /**
+     * Additive increase and multiplicative decrease of the estimate.
+     */
+    private final AimdRateControl rateControl;
+
+    /**
+     * The rate at which the remote endpoint has received our packets, in arrival time.
+     */
+    private final RateStatistics ackedBitrate
+            = new RateStatistics(RemoteBitrateEstimator.kBitrateWindowMs, RemoteBitrateEstimator.kBitrateScale);
+
+    /**
+     * The arrival time of the first acknowledged packet; {@link #ackedBitrate} under-reports until
+     * a full window has elapsed since.
+     */
+    private long firstArrivalTimeMs = -1;
+
+    /**
+     * The arrival time of the last acknowledged packet.
+     */
+    private long lastArrivalTimeMs = -1;
+
+    /**
+     * The send time of the packets of the current burst, or -1.
+     */
+    private long burstSendTimeMs = -1;
+
+    /**
+     * The number of acknowledged packets of the current burst.
+     */
+    private int burstPackets;
+
+    /**
+     * The size (in bytes) of the acknowledged packets of the current burst but the first one.
+     */
+    private long burstBytes;
+
+    /**
+     * The earliest and the latest arrival times of the current burst.
+     */
+    private long burstFirstArrivalTimeMs, burstLastArrivalTimeMs;
+
+    /**
+     * The share of the capacity (in bps) measured by the last probe of the feedback, or 0.
+     */
+    private long probeBitrateBps;
+
+    /**
+     * Whether the last estimate returned by {@link #incomingPacketFeedback} comes from a probe.
+     */
+    private boolean probe;
+
+    /**
+     * The bitrate to start from, or -1 to wait for the first over-use or for
+     * {@link AimdRateControl} to initialize from the incoming bitrate.
+     */
+    private long startBitrateBps = -1;
+
+    /**
+     * Whether {@link #startBitrateBps} has been applied to {@link #rateControl}.
+     */
+    private boolean started = false;
+
+    /**
+     * The {@link DiagnosticContext} of this instance.
+     */
+    private final DiagnosticContext diagnosticContext;
+
+    /**
+     * Ctor.
+     *
+     * @param diagnosticContext the {@link DiagnosticContext} of this instance.
+     */
+    public DelayBasedBitrateEstimator(@NotNull DiagnosticContext diagnosticContext)
+    {
+        this.diagnosticContext = diagnosticContext;
+        OverUseDetectorOptions options = new OverUseDetectorOptions();
+        interArrival = new InterArrival(kTimestampGroupLengthMs, 1D, true, diagnosticContext);
+        estimator = new OveruseEstimator(options, diagnosticContext);
+        detector = new OveruseDetector(options, diagnosticContext);
+        rateControl = new AimdRateControl(diagnosticContext);
+    }
+
+    /**
+     * Sets the bitrate to start from, i.e. the initial send bitrate, so that the estimate is valid
+     * and agrees with the loss-based one from the first feedback on.
+     *
+     * @param startBitrateBps the start bitrate in bps.
+     */
+    public void setStartBitrate(long startBitrateBps)
+    {
+        this.startBitrateBps = startBitrateBps;
+    }
+
+    /**
+     * Sets the minimum bitrate of the estimate.
+     *
+     * @param minBitrateBps the minimum bitrate in bps.
+     */
+    public void setMinBitrate(int minBitrateBps)
+    {
+        rateControl.setMinBitrate(minBitrateBps);
+    }
+
+    /**
+     * Notifies this instance of the round trip time, which paces the additive increase and the
+     * successive decreases.
+     *
+     * @param rttMs the round trip time in millis.
+     */
+    public void onRttUpdate(long rttMs)
+    {
+        rateControl.setRtt(rttMs);
+    }
+
+    /**
+     * Updates the estimate with the transport-cc feedback of a batch of sent packets, in the order
+     * of their transport-wide sequence numbers.
+     *
+     * @param sendTimesMs the send times of the packets, in millis.
+     * @param arrivalTimesMs the arrival times of the packets, in millis, or -1 for the lost ones.
+     * @param sizes the sizes of the packets, in bytes.
+     * @param count the number of packets in the arrays.
+     * @param nowMs the current time in millis.
+     * @return the new estimate in bps, or -1 if it is unchanged or not valid yet.
+     */
+    public long incomingPacketFeedback(
+            long[] sendTimesMs, long[] arrivalTimesMs, int[] sizes, int count, long nowMs)
+    {
+        if (!started) {
+            started = true;
+            if (startBitrateBps > 0) {
+                rateControl.setEstimate(startBitrateBps, nowMs);
+            }
+        }
+
+        long[] deltas = this.deltas;
+        boolean delayBasedFeedback = false;
+        probeBitrateBps = 0;
+        probe = false;
+        for (int i = 0; i < count; i++) {
+            long arrivalTimeMs = arrivalTimesMs[i];
+            if (arrivalTimeMs < 0) {
+                continue;
+            }
+
+            if (firstArrivalTimeMs == -1) {
+                firstArrivalTimeMs = arrivalTimeMs;
+            }
+            if (arrivalTimeMs > lastArrivalTimeMs) {
+                lastArrivalTimeMs = arrivalTimeMs;
+            }
+            ackedBitrate.update(sizes[i], arrivalTimeMs);
+            delayBasedFeedback = true;
+            updateBurst(sendTimesMs[i], arrivalTimeMs, sizes[i]);
+
+            /* long timestampDelta */
+            deltas[0] = 0;
+            /* long timeDelta */
+            deltas[1] = 0;
+            /* int sizeDelta */
+            deltas[2] = 0;
+
+            if (interArrival.computeDeltas(
+                    sendTimesMs[i] & 0xFFFFFFFFL, arrivalTimeMs, sizes[i], deltas, nowMs)) {
+                estimator.update(
+                        /* timeDelta */ deltas[1],
+                        /* timestampDelta */ deltas[0],
+                        /* sizeDelta */ (int) deltas[2],
+                        detector.getState(), nowMs);
+
+                detector.detect(
+                        estimator.getOffset(), deltas[0],
+                        estimator.getNumOfDeltas(), arrivalTimeMs);
+            }
+        }
+        if (!delayBasedFeedback) {
+            return -1;
+        }
+
+        long ackedBitrateBps = lastArrivalTimeMs - firstArrivalTimeMs < RemoteBitrateEstimator.kBitrateWindowMs
+                ? 0 : ackedBitrate.getRate(lastArrivalTimeMs);
+
+        BandwidthUsage state = detector.getState();
+        if (state != BandwidthUsage.kBwOverusing && probeBitrateBps > rateControl.getLatestEstimate()) {
+            rateControl.setEstimate(probeBitrateBps, nowMs);
+            probe = true;
+            return probeBitrateBps;
+        }
+        if (state == BandwidthUsage.kBwOverusing
+                && (ackedBitrateBps == 0 || !rateControl.isTimeToReduceFurther(nowMs, ackedBitrateBps))) {
+            // Without a measure of what gets through, a decrease would fall back to the minimum.
+            return -1;
+        }
+
+        long previousBitrateBps = rateControl.getLatestEstimate();
+        input.bwState = state;
+        input.incomingBitRate = ackedBitrateBps;
+        input.noiseVar = estimator.getVarNoise();
+        rateControl.update(input, nowMs);
+        long bitrateBps = rateControl.updateBandwidthEstimate(nowMs);
+
+        if (!rateControl.isValidEstimate() || bitrateBps == previousBitrateBps) {
+            return -1;
+        }
+
+        if (timeSeriesLogger.isTraceEnabled()) {
+            timeSeriesLogger.trace(diagnosticContext
+                    .makeTimeSeriesPoint("delay_based_estimate", nowMs)
+                    .addField("estimator", hashCode())
+                    .addField("state", state.getValue())
+                    .addField("acked_bps", ackedBitrateBps)
+                    .addField("estimate_bps", bitrateBps));
+        }
+        return bitrateBps;
+    }
+
+    /**
+     * Accumulates an acknowledged packet into the current burst, or measures the capacity over the
+     * current burst if the packet has been sent later.
+     *
+     * @param sendTimeMs the send time of the packet, in millis.
+     * @param arrivalTimeMs the arrival time of the packet, in millis.
+     * @param size the size of the packet, in bytes.
+     */
+    private void updateBurst(long sendTimeMs, long arrivalTimeMs, int size)
+    {
+        if (sendTimeMs == burstSendTimeMs) {
+            burstPackets++;
+            if (arrivalTimeMs < burstFirstArrivalTimeMs) {
+                burstFirstArrivalTimeMs = arrivalTimeMs;
+            }
+            else if (arrivalTimeMs > burstLastArrivalTimeMs) {
+                burstLastArrivalTimeMs = arrivalTimeMs;
+            }
+            burstBytes += size;
+            return;
+        }
+
+        long burstDeltaMs = burstLastArrivalTimeMs - burstFirstArrivalTimeMs;
+        if (burstPackets >= kMinProbePackets && burstDeltaMs >= kMinProbeDeltaMs) {
+            probeBitrateBps = Math.max(probeBitrateBps, (long) (kProbeFraction * burstBytes * 8000 / burstDeltaMs));
+        }
+
+        burstSendTimeMs = sendTimeMs;
+        burstPackets = 1;
+        burstBytes = 0;
+        burstFirstArrivalTimeMs = burstLastArrivalTimeMs = arrivalTimeMs;
+    }
+
+    /**
+     * Returns whether the last estimate returned by {@link #incomingPacketFeedback} has been
+     * measured by a probe rather than inferred from the delay trend; it is then a measure of the
+     * capacity which the loss-based estimate may jump to.
+     *
+     * @return <code>true</code> if the last estimate comes from a probe.
+     */
+    public boolean isProbe()
+    {
+        return probe;
+    }
+
+    /**
+     * Returns the latest estimate.
+     *
+     * @return the latest estimate in bps, or -1 if it is not valid yet.
+     */
+    public long getLatestEstimate()
+    {
+        return rateControl.isValidEstimate() ? rateControl.getLatestEstimate() : -1;
+    }
+}
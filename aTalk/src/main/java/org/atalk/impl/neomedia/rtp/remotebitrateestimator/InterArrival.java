@@ -36,6 +36,12 @@ class InterArrival
 {
     private static final int kBurstDeltaThresholdMs = 5;
 
+    /**
+     * The maximum duration of a burst; a saturated link delivers the packets back to back, which
+     * would otherwise merge all the timestamp groups into a single burst and stall the deltas.
+     */
+    private static final int kMaxBurstDurationMs = 100;
+
     /**
      * webrtc/modules/include/module_common_types.h
      *
@@ -102,7 +108,8 @@ class InterArrival
             return true;
 
         long propagationDeltaMs = arrivalTimeDeltaMs - tsDeltaMs;
-        return (propagationDeltaMs < 0) && (arrivalTimeDeltaMs <= kBurstDeltaThresholdMs);
+        return (propagationDeltaMs < 0) && (arrivalTimeDeltaMs <= kBurstDeltaThresholdMs)
+                && (arrivalTimeMs - currentTimestampGroup.firstArrivalTimeMs < kMaxBurstDurationMs);
     }
 
     /**
@@ -140,6 +147,7 @@ class InterArrival
             // until we have two frames of data to process.
             currentTimestampGroup.timestamp = timestamp;
             currentTimestampGroup.firstTimestamp = timestamp;
+            currentTimestampGroup.firstArrivalTimeMs = arrivalTimeMs;
         }
         else if (!isPacketInOrder(timestamp)) {
             return false;
@@ -196,6 +204,7 @@ class InterArrival
             // The new timestamp is now the current frame.
             currentTimestampGroup.firstTimestamp = timestamp;
             currentTimestampGroup.timestamp = timestamp;
+            currentTimestampGroup.firstArrivalTimeMs = arrivalTimeMs;
             currentTimestampGroup.size = 0;
 
         }
@@ -267,6 +276,8 @@ class InterArrival
     {
         public long completeTimeMs = -1L;
 
+        public long firstArrivalTimeMs = -1L;
+
         public long size = 0L;
 
         public long firstTimestamp = 0L;
@@ -285,6 +296,7 @@ class InterArrival
         public void copy(TimestampGroup source)
         {
             completeTimeMs = source.completeTimeMs;
+            firstArrivalTimeMs = source.firstArrivalTimeMs;
             firstTimestamp = source.firstTimestamp;
             size = source.size;
             timestamp = source.timestamp;
@@ -163,13 +163,8 @@ public class RemoteBitrateEstimatorWrapper extends SinglePacketTransformerAdapte
             return pkt;
         }
 
-        RawPacket.HeaderExtension ext = null;
         int astExtensionID = this.astExtensionID;
-        if (astExtensionID != -1) {
-            ext = pkt.getHeaderExtension((byte) astExtensionID);
-        }
-
-        if (ext != null) {
+        if (astExtensionID != -1 && pkt.getExtensionDataOffset(astExtensionID) >= 0) {
             // If we see AST in header, switch RBE strategy immediately.
             if (!usingAbsoluteSendTime) {
                 usingAbsoluteSendTime = true;
@@ -17,26 +17,36 @@ import net.sf.fmj.media.rtp.RTCPFeedback;
 import net.sf.fmj.media.rtp.RTCPReport;
 
 import org.atalk.impl.neomedia.MediaStreamImpl;
+import org.atalk.impl.neomedia.rtp.remotebitrateestimator.DelayBasedBitrateEstimator;
 import org.atalk.service.configuration.ConfigurationService;
 import org.atalk.service.libjitsi.LibJitsi;
 import org.atalk.service.neomedia.MediaStream;
 import org.atalk.service.neomedia.MediaStreamStats;
 import org.atalk.service.neomedia.rtp.BandwidthEstimator;
+import org.atalk.service.neomedia.rtp.CallStatsObserver;
 import org.atalk.service.neomedia.rtp.RTCPReportAdapter;
 import org.atalk.util.concurrent.RecurringRunnable;
+import org.atalk.util.logging.DiagnosticContext;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
 
 /**
  * Implements part of the send-side bandwidth estimation described in
  * https://tools.ietf.org/html/draft-ietf-rmcat-gcc-01 Heavily based on code from webrtc.org
  * (bitrate_controller_impl.cc, commit ID 7ad9e661f8a035d49d049ccdb87c77ae8ecdfa35).
+ * <p>
+ * This is the single send-side controller of a video stream: the transport-cc feedback feeds both
+ * the {@link DelayBasedBitrateEstimator} and the losses of the {@link SendSideBandwidthEstimation},
+ * which caps its loss-based estimate by the delay-based one and by the REMB. The receiver reports
+ * only feed the losses while no transport-cc feedback is received. All the state is guarded by the
+ * {@link SendSideBandwidthEstimation} instance.
  *
  * @author Boris Grozev
+ * @author Eng Chong Meng
  */
 public class BandwidthEstimatorImpl extends RTCPReportAdapter
-        implements BandwidthEstimator, RecurringRunnable
+        implements BandwidthEstimator, CallStatsObserver, RecurringRunnable
 {
     /**
      * The system property name of the initial value of the estimation, in bits per second.
@@ -54,6 +64,12 @@ public class BandwidthEstimatorImpl extends RTCPReportAdapter
      */
     private final static int MAX_BITRATE_BPS = 20 * 1000 * 1000;
 
+    /**
+     * The time (in millis) after the last transport-cc feedback during which its losses take
+     * precedence over the ones of the receiver reports, so that they are not counted twice.
+     */
+    private final static long TRANSPORT_FEEDBACK_TIMEOUT_MS = 1500;
+
     /**
      * The ConfigurationService to get config values from.
      */
@@ -67,16 +83,42 @@ public class BandwidthEstimatorImpl extends RTCPReportAdapter
 
     /**
      * bitrate_controller_impl.h
+     *
+     * The SSRCs of the report blocks and, at the same index in
+     * {@link #last_received_extended_high_seq_nums_}, the extended highest
+     * sequence number last received for each. A stream reports a handful of
+     * SSRCs, which a linear search walks without boxing them.
+     */
+    private long[] ssrcs_ = new long[4];
+
+    /**
+     * bitrate_controller_impl.h
+     */
+    private long[] last_received_extended_high_seq_nums_ = new long[4];
+
+    /**
+     * The number of SSRCs in {@link #ssrcs_}.
      */
-    private Map<Long, Long> ssrc_to_last_received_extended_high_seq_num_ = new ConcurrentHashMap<>();
+    private int num_ssrcs_ = 0;
 
     private long lastUpdateTime = -1;
 
+    /**
+     * The time (in millis) at which the last transport-cc feedback has been
+     * received, or -1.
+     */
+    private long lastTransportFeedbackTime = -1;
+
     /**
      * bitrate_controller_impl.h
      */
     private final SendSideBandwidthEstimation sendSideBandwidthEstimation;
 
+    /**
+     * The delay-based estimator fed by the transport-cc feedback.
+     */
+    private final DelayBasedBitrateEstimator delayBasedBitrateEstimator;
+
     /**
      * Initializes a new instance which is to belong to a particular {@link MediaStream}.
      *
@@ -84,8 +126,8 @@ public class BandwidthEstimatorImpl extends RTCPReportAdapter
      */
     public BandwidthEstimatorImpl(MediaStreamImpl stream)
     {
-        sendSideBandwidthEstimation = new SendSideBandwidthEstimation(stream, START_BITRATE_BPS);
-        sendSideBandwidthEstimation.setMinMaxBitrate(MIN_BITRATE_BPS, MAX_BITRATE_BPS);
+        this(stream.getDiagnosticContext(),
+                () -> stream.getMediaStreamStats().getSendStats().getRtt());
 
         // Hook us up to receive Report Blocks and REMBs.
         MediaStreamStats stats = stream.getMediaStreamStats();
@@ -93,6 +135,24 @@ public class BandwidthEstimatorImpl extends RTCPReportAdapter
         stats.getRTCPReports().addRTCPReportListener(this);
     }
 
+    /**
+     * Initializes a new instance which is not hooked up to any {@link MediaStream}, e.g. to be driven
+     * by a simulation.
+     *
+     * @param diagnosticContext the {@link DiagnosticContext} of the new instance.
+     * @param rttSupplier supplies the RTT to the endpoint in millis.
+     */
+    BandwidthEstimatorImpl(DiagnosticContext diagnosticContext, LongSupplier rttSupplier)
+    {
+        sendSideBandwidthEstimation
+                = new SendSideBandwidthEstimation(diagnosticContext, rttSupplier, START_BITRATE_BPS);
+        sendSideBandwidthEstimation.setMinMaxBitrate(MIN_BITRATE_BPS, MAX_BITRATE_BPS);
+
+        delayBasedBitrateEstimator = new DelayBasedBitrateEstimator(diagnosticContext);
+        delayBasedBitrateEstimator.setStartBitrate(START_BITRATE_BPS);
+        delayBasedBitrateEstimator.setMinBitrate(MIN_BITRATE_BPS);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -109,46 +169,156 @@ public class BandwidthEstimatorImpl extends RTCPReportAdapter
         long total_number_of_packets = 0;
         long fraction_lost_aggregate = 0;
 
-        // Compute the a weighted average of the fraction loss from all report
-        // blocks.
-        for (RTCPFeedback feedback : report.getFeedbackReports()) {
-            long ssrc = feedback.getSSRC();
-            long extSeqNum = feedback.getXtndSeqNum();
+        synchronized (sendSideBandwidthEstimation) {
+            // Compute the a weighted average of the fraction loss from all report
+            // blocks.
+            for (RTCPFeedback feedback : report.getFeedbackReports()) {
+                long ssrc = feedback.getSSRC();
+                long extSeqNum = feedback.getXtndSeqNum();
+
+                int index = indexOfSsrc(ssrc);
+                long lastEHSN;
+                if (index < 0) {
+                    index = addSsrc(ssrc);
+                    lastEHSN = extSeqNum;
+                }
+                else {
+                    lastEHSN = last_received_extended_high_seq_nums_[index];
+                }
+
+                last_received_extended_high_seq_nums_[index] = extSeqNum;
+
+                if (lastEHSN >= extSeqNum) {
+                    // the first report for this SSRC
+                    continue;
+                }
+
+                long number_of_packets = extSeqNum - lastEHSN;
+
+                fraction_lost_aggregate += number_of_packets * feedback.getFractionLost();
+                total_number_of_packets += number_of_packets;
+            }
 
-            Long lastEHSN = ssrc_to_last_received_extended_high_seq_num_.get(ssrc);
-            if (lastEHSN == null) {
-                lastEHSN = extSeqNum;
+            if (total_number_of_packets == 0) {
+                fraction_lost_aggregate = 0;
+            }
+            else {
+                fraction_lost_aggregate = (fraction_lost_aggregate + total_number_of_packets / 2)
+                        / total_number_of_packets;
+            }
+            if (fraction_lost_aggregate > 255) {
+                return;
             }
 
-            ssrc_to_last_received_extended_high_seq_num_.put(ssrc, extSeqNum);
+            receiverBlockReceived(fraction_lost_aggregate, total_number_of_packets,
+                    System.currentTimeMillis());
+        }
+    }
 
-            if (lastEHSN >= extSeqNum) {
-                // the first report for this SSRC
-                continue;
+    /**
+     * Updates the loss-based estimate with the aggregate of the report blocks of a receiver report,
+     * unless the transport-cc feedback has already reported these losses.
+     *
+     * @param fractionLost the aggregate fraction lost, in 1/256.
+     * @param numberOfPackets the number of packets reported on.
+     * @param nowMs the current time in millis.
+     */
+    void receiverBlockReceived(long fractionLost, long numberOfPackets, long nowMs)
+    {
+        synchronized (sendSideBandwidthEstimation) {
+            if (lastTransportFeedbackTime != -1
+                    && nowMs - lastTransportFeedbackTime < TRANSPORT_FEEDBACK_TIMEOUT_MS) {
+                // The transport-cc feedback has already reported these losses.
+                return;
             }
 
-            long number_of_packets = extSeqNum - lastEHSN;
-
-            fraction_lost_aggregate += number_of_packets * feedback.getFractionLost();
-            total_number_of_packets += number_of_packets;
+            lastUpdateTime = nowMs;
+            sendSideBandwidthEstimation.updateReceiverBlock(fractionLost, numberOfPackets, nowMs);
         }
+    }
 
-        if (total_number_of_packets == 0) {
-            fraction_lost_aggregate = 0;
+    /**
+     * Updates the delay-based and the loss-based estimates with the
+     * transport-cc feedback of a batch of sent packets.
+     *
+     * @param sendTimesMs the send times of the packets, in millis.
+     * @param arrivalTimesMs the arrival times of the packets, in millis, or -1
+     * for the lost ones.
+     * @param sizes the sizes of the packets, in bytes.
+     * @param count the number of packets in the arrays.
+     * @param nowMs the current time in millis.
+     */
+    public void transportFeedbackReceived(
+            long[] sendTimesMs, long[] arrivalTimesMs, int[] sizes, int count, long nowMs)
+    {
+        if (count <= 0) {
+            return;
         }
-        else {
-            fraction_lost_aggregate = (fraction_lost_aggregate + total_number_of_packets / 2)
-                    / total_number_of_packets;
+
+        int lost = 0;
+        for (int i = 0; i < count; i++) {
+            if (arrivalTimesMs[i] < 0) {
+                lost++;
+            }
         }
-        if (fraction_lost_aggregate > 255) {
-            return;
+
+        synchronized (sendSideBandwidthEstimation) {
+            lastTransportFeedbackTime = nowMs;
+
+            long delayBasedBitrate = delayBasedBitrateEstimator.incomingPacketFeedback(
+                    sendTimesMs, arrivalTimesMs, sizes, count, nowMs);
+            if (delayBasedBitrate > 0) {
+                sendSideBandwidthEstimation.updateDelayBasedEstimate(delayBasedBitrate);
+                if (delayBasedBitrateEstimator.isProbe()) {
+                    sendSideBandwidthEstimation.setSendBitrate(delayBasedBitrate);
+                }
+            }
+            sendSideBandwidthEstimation.updatePacketsLost(lost, count, nowMs);
         }
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onRttUpdate(long avgRttMs, long maxRttMs)
+    {
         synchronized (sendSideBandwidthEstimation) {
-            lastUpdateTime = System.currentTimeMillis();
-            sendSideBandwidthEstimation.updateReceiverBlock(fraction_lost_aggregate,
-                    total_number_of_packets, lastUpdateTime);
+            delayBasedBitrateEstimator.onRttUpdate(avgRttMs);
+        }
+    }
+
+    /**
+     * Returns the index of an SSRC in {@link #ssrcs_}.
+     *
+     * @param ssrc the SSRC to look for.
+     * @return the index of the SSRC, or -1 if it has not been reported yet.
+     */
+    private int indexOfSsrc(long ssrc)
+    {
+        for (int i = 0; i < num_ssrcs_; i++) {
+            if (ssrcs_[i] == ssrc) {
+                return i;
+            }
         }
+        return -1;
+    }
+
+    /**
+     * Appends an SSRC to {@link #ssrcs_}, growing the arrays if needed.
+     *
+     * @param ssrc the SSRC to add.
+     * @return the index of the SSRC.
+     */
+    private int addSsrc(long ssrc)
+    {
+        if (num_ssrcs_ == ssrcs_.length) {
+            ssrcs_ = Arrays.copyOf(ssrcs_, 2 * num_ssrcs_);
+            last_received_extended_high_seq_nums_
+                    = Arrays.copyOf(last_received_extended_high_seq_nums_, 2 * num_ssrcs_);
+        }
+        ssrcs_[num_ssrcs_] = ssrc;
+        return num_ssrcs_++;
     }
 
     @Override
@@ -217,9 +387,19 @@ public class BandwidthEstimatorImpl extends RTCPReportAdapter
 
     @Override
     public void run()
+    {
+        update(System.currentTimeMillis());
+    }
+
+    /**
+     * Updates the estimate, e.g. on timeouts of the feedback.
+     *
+     * @param nowMs the current time in millis.
+     */
+    void update(long nowMs)
     {
         synchronized (sendSideBandwidthEstimation) {
-            lastUpdateTime = System.currentTimeMillis();
+            lastUpdateTime = nowMs;
             sendSideBandwidthEstimation.updateEstimate(lastUpdateTime);
         }
     }
@@ -13,7 +13,6 @@
  */
 package org.atalk.impl.neomedia.rtp.sendsidebandwidthestimation;
 
-import org.atalk.impl.neomedia.MediaStreamImpl;
 import org.atalk.impl.neomedia.rtcp.RTCPREMBPacket;
 import org.atalk.impl.neomedia.rtp.RTCPPacketListenerAdapter;
 import org.atalk.service.configuration.ConfigurationService;
@@ -29,6 +28,7 @@ import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.function.LongSupplier;
 
 import timber.log.Timber;
 
@@ -254,6 +254,11 @@ class SendSideBandwidthEstimation extends RTCPPacketListenerAdapter implements B
      */
     private long bwe_incoming_ = 0;
 
+    /**
+     * send_side_bandwidth_estimation.h
+     */
+    private long delay_based_bitrate_bps_ = 0;
+
     /**
      * send_side_bandwidth_estimation.h
      */
@@ -272,19 +277,21 @@ class SendSideBandwidthEstimation extends RTCPPacketListenerAdapter implements B
     private final List<BandwidthEstimator.Listener> listeners = new LinkedList<>();
 
     /**
-     * The {@link MediaStream} for this {@link SendSideBandwidthEstimation}.
+     * Supplies the RTT to the endpoint, e.g. the one of the send statistics of the
+     * {@link MediaStream} of this {@link SendSideBandwidthEstimation}.
      */
-    private final MediaStream mediaStream;
+    private final LongSupplier rttSupplier;
 
     /**
      * The instance that holds stats for this instance.
      */
     private final StatisticsImpl statistics = new StatisticsImpl();
 
-    SendSideBandwidthEstimation(MediaStreamImpl stream, long startBitrate)
+    SendSideBandwidthEstimation(
+            DiagnosticContext diagnosticContext, LongSupplier rttSupplier, long startBitrate)
     {
-        mediaStream = stream;
-        diagnosticContext = stream.getDiagnosticContext();
+        this.diagnosticContext = diagnosticContext;
+        this.rttSupplier = rttSupplier;
 
         float lossExperimentProbability = (float) cfg.getDouble(
                 LOSS_EXPERIMENT_PROBABILITY_PNAME, kDefaultLossExperimentProbability);
@@ -326,6 +333,9 @@ class SendSideBandwidthEstimation extends RTCPPacketListenerAdapter implements B
         if (bwe_incoming_ > 0 && bitrate > bwe_incoming_) {
             bitrate = bwe_incoming_;
         }
+        if (delay_based_bitrate_bps_ > 0 && bitrate > delay_based_bitrate_bps_) {
+            bitrate = delay_based_bitrate_bps_;
+        }
         if (bitrate > max_bitrate_configured_) {
             bitrate = max_bitrate_configured_;
         }
@@ -342,13 +352,23 @@ class SendSideBandwidthEstimation extends RTCPPacketListenerAdapter implements B
     {
         long bitrate = bitrate_;
 
-        // We trust the REMB during the first 2 seconds if we haven't had any
-        // packet loss reported, to allow startup bitrate probing.
-        if (last_fraction_loss_ == 0 && isInStartPhase(now) && bwe_incoming_ > bitrate) {
-            setBitrate(capBitrateToThresholds(bwe_incoming_));
-            min_bitrate_history_.clear();
-            min_bitrate_history_.addLast(new Pair<>(now, bitrate));
-            return;
+        // We trust the REMB and/or the delay-based estimate during the first 2
+        // seconds if we haven't had any packet loss reported, to allow startup
+        // bitrate probing.
+        if (last_fraction_loss_ == 0 && isInStartPhase(now)) {
+            long start_bitrate = bitrate;
+            if (bwe_incoming_ > start_bitrate) {
+                start_bitrate = capBitrateToThresholds(bwe_incoming_);
+            }
+            if (delay_based_bitrate_bps_ > start_bitrate) {
+                start_bitrate = capBitrateToThresholds(delay_based_bitrate_bps_);
+            }
+            if (start_bitrate != bitrate) {
+                setBitrate(start_bitrate);
+                min_bitrate_history_.clear();
+                min_bitrate_history_.addLast(new Pair<>(now, bitrate_));
+                return;
+            }
         }
         updateMinHistory(now);
         if (last_packet_report_ms_ == -1) {
@@ -429,6 +449,35 @@ class SendSideBandwidthEstimation extends RTCPPacketListenerAdapter implements B
      * void SendSideBandwidthEstimation::UpdateReceiverBlock
      */
     synchronized void updateReceiverBlock(long fraction_lost, long number_of_packets, long now)
+    {
+        updatePacketsLostQ8(fraction_lost * number_of_packets, number_of_packets, now);
+    }
+
+    /**
+     * void SendSideBandwidthEstimation::UpdatePacketsLost
+     *
+     * Updates the loss-based estimate with the losses which the transport-cc
+     * feedback reports, several times per RTT rather than once per receiver
+     * report.
+     *
+     * @param packets_lost the number of lost packets.
+     * @param number_of_packets the number of packets the feedback is about.
+     * @param now the current time in millis.
+     */
+    synchronized void updatePacketsLost(long packets_lost, long number_of_packets, long now)
+    {
+        updatePacketsLostQ8(packets_lost << 8, number_of_packets, now);
+    }
+
+    /**
+     * Accumulates the losses of the feedback and updates the estimate once they
+     * are based on enough packets.
+     *
+     * @param num_lost_packets_Q8 the number of lost packets, in Q8.
+     * @param number_of_packets the number of packets the feedback is about.
+     * @param now the current time in millis.
+     */
+    private synchronized void updatePacketsLostQ8(long num_lost_packets_Q8, long number_of_packets, long now)
     {
         last_feedback_ms_ = now;
         if (first_report_time_ms_ == -1) {
@@ -437,8 +486,6 @@ class SendSideBandwidthEstimation extends RTCPPacketListenerAdapter implements B
 
         // Check sequence number diff and weight loss report
         if (number_of_packets > 0) {
-            // Calculate number of lost packets.
-            long num_lost_packets_Q8 = fraction_lost * number_of_packets;
             // Accumulate reports.
             lost_packets_since_last_loss_update_Q8_ += num_lost_packets_Q8;
             expected_packets_since_last_loss_update_ += number_of_packets;
@@ -491,6 +538,26 @@ class SendSideBandwidthEstimation extends RTCPPacketListenerAdapter implements B
         setBitrate(capBitrateToThresholds(bitrate_));
     }
 
+    /**
+     * void SendSideBandwidthEstimation::UpdateDelayBasedEstimate
+     */
+    synchronized void updateDelayBasedEstimate(long bitrate)
+    {
+        delay_based_bitrate_bps_ = bitrate;
+        setBitrate(capBitrateToThresholds(bitrate_));
+    }
+
+    /**
+     * void SendSideBandwidthEstimation::SetSendBitrate
+     */
+    synchronized void setSendBitrate(long bitrate)
+    {
+        setBitrate(capBitrateToThresholds(bitrate));
+        // Clear last sent bitrate history so the new value can be used directly
+        // and not capped.
+        min_bitrate_history_.clear();
+    }
+
     /**
      * void SendSideBandwidthEstimation::SetMinMaxBitrate
      */
@@ -586,7 +653,7 @@ class SendSideBandwidthEstimation extends RTCPPacketListenerAdapter implements B
      */
     private synchronized long getRtt()
     {
-        long rtt = mediaStream.getMediaStreamStats().getSendStats().getRtt();
+        long rtt = rttSupplier.getAsLong();
         if (rtt < 0 || rtt > 1000) {
             Timber.w("RTT not calculated, or has a suspiciously high value (%d). Using the default of 100ms.", rtt);
             rtt = 100;
@@ -16,12 +16,12 @@
 package org.atalk.impl.neomedia.stats;
 
 import org.atalk.service.neomedia.stats.TrackStats;
-import org.ice4j.util.RateStatistics;
 
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Media stream statistics per send or receive SSRC.
+ * Media stream statistics per send or receive SSRC. The counters are updated for every packet
+ * without locking, and may be read from any thread at any time.
  *
  * @author Damian Minkov
  * @author Boris Grozev
@@ -32,14 +32,14 @@ public abstract class AbstractTrackStats
     /**
      * The last jitter (in milliseconds).
      */
-    private double jitter = JITTER_UNSET;
+    private volatile double jitter = JITTER_UNSET;
 
     /**
      * The RTT computed with the RTCP feedback (cf. RFC3550, section 6.4.1,
      * subsection "delay since last SR (DLSR): 32 bits"). {@code -1} if the RTT
      * has not been computed yet. Otherwise, the RTT in milliseconds.
      */
-    private long rtt = -1;
+    private volatile long rtt = -1;
 
     /**
      * The total number of bytes.
@@ -52,6 +52,11 @@ public abstract class AbstractTrackStats
      */
     protected final AtomicLong packets = new AtomicLong();
 
+    /**
+     * The total number of RTCP packets.
+     */
+    protected final AtomicLong rtcpPackets = new AtomicLong();
+
     /**
      * Number of bytes retransmitted.
      */
@@ -83,12 +88,17 @@ public abstract class AbstractTrackStats
     /**
      * The bitrate.
      */
-    protected RateStatistics bitrate;
+    protected final RateCounter bitrate;
 
     /**
      * The packet rate.
      */
-    protected RateStatistics packetRate;
+    protected final RateCounter packetRate;
+
+    /**
+     * The RTCP packet rate.
+     */
+    protected final RateCounter rtcpPacketRate;
 
     /**
      * The length of the interval over which the average bitrate, packet rate
@@ -108,8 +118,9 @@ public abstract class AbstractTrackStats
     {
         this.interval = interval;
         this.ssrc = ssrc;
-        bitrate = new RateStatistics(interval);
-        packetRate = new RateStatistics(interval, 1000F);
+        bitrate = new RateCounter(interval);
+        packetRate = new RateCounter(interval, 1000F);
+        rtcpPacketRate = new RateCounter(interval, 1000F);
     }
 
     /**
@@ -140,6 +151,10 @@ public abstract class AbstractTrackStats
             packets.addAndGet(1);
             packetRate.update(1, now);
         }
+        else {
+            rtcpPackets.addAndGet(1);
+            rtcpPacketRate.update(1, now);
+        }
     }
 
     /**
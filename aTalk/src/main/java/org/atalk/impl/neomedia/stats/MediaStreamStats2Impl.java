@@ -4,6 +4,7 @@ package org.atalk.impl.neomedia.stats;
 import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.atalk.impl.neomedia.MediaStreamImpl;
 import org.atalk.impl.neomedia.MediaStreamStatsImpl;
@@ -28,12 +29,12 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
     /**
      * Hold per-SSRC statistics for received streams.
      */
-    private final Map<Long, ReceiveTrackStatsImpl> receiveSsrcStats = new ConcurrentHashMap<>();
+    private final SsrcTable<ReceiveTrackStatsImpl> receiveSsrcStats = new SsrcTable<>();
 
     /**
      * Hold per-SSRC statistics for sent streams.
      */
-    private final Map<Long, SendTrackStatsImpl> sendSsrcStats = new ConcurrentHashMap<>();
+    private final SsrcTable<SendTrackStatsImpl> sendSsrcStats = new SsrcTable<>();
 
     /**
      * Hold per-SSRC time after which we can clean them.
@@ -65,10 +66,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
      * @param length the length in bytes of the packet.
      */
     public void rtpPacketReceived(long ssrc, int seq, int length) {
-        synchronized (receiveStats) {
-            getReceiveStats(ssrc).rtpPacketReceived(seq, length);
-            receiveStats.packetProcessed(length, System.currentTimeMillis(), true);
-        }
+        getReceiveStats(ssrc).rtpPacketReceived(seq, length);
     }
 
     /**
@@ -121,10 +119,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
             return;
         }
 
-        synchronized (sendStats) {
-            getSendStats(ssrc).rtpPacketSent(seq, length);
-            sendStats.packetProcessed(length, System.currentTimeMillis(), true);
-        }
+        getSendStats(ssrc).rtpPacketSent(seq, length);
     }
 
     /**
@@ -136,9 +131,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
      * @param fractionLost the value of the "fraction lost" field.
      */
     public void rtcpReceiverReportReceived(long ssrc, int fractionLost) {
-        synchronized (sendStats) {
-            getSendStats(ssrc).rtcpReceiverReportReceived(fractionLost);
-        }
+        getSendStats(ssrc).rtcpReceiverReportReceived(fractionLost);
         this.cleanSendStatsOld();
     }
 
@@ -154,7 +147,11 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
         this.sendSsrcStatsToClean.entrySet().stream().forEach(entry ->
         {
             if (entry.getValue() > now) {
-                sendSsrcStats.remove(entry.getKey());
+                SendTrackStatsImpl stats = sendSsrcStats.get(entry.getKey());
+                if (stats != null) {
+                    sendStats.retire(stats);
+                    sendSsrcStats.remove(entry.getKey());
+                }
                 sendSsrcStatsToClean.remove(entry.getKey());
             }
         });
@@ -167,10 +164,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
      * @param length the length in bytes of the packet.
      */
     public void rtcpPacketReceived(long ssrc, int length) {
-        synchronized (receiveStats) {
-            getReceiveStats(ssrc).rtcpPacketReceived(length);
-            receiveStats.packetProcessed(length, System.currentTimeMillis(), false);
-        }
+        getReceiveStats(ssrc).rtcpPacketReceived(length);
     }
 
     /**
@@ -181,10 +175,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
      * @param length the length in bytes of the packet.
      */
     public void rtcpPacketSent(long ssrc, int length) {
-        synchronized (sendStats) {
-            getSendStats(ssrc).rtcpPacketSent(length);
-            sendStats.packetProcessed(length, System.currentTimeMillis(), false);
-        }
+        getSendStats(ssrc).rtcpPacketSent(length);
     }
 
     /**
@@ -272,17 +263,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
             ssrc = -1;
         }
 
-        ReceiveTrackStatsImpl stats = receiveSsrcStats.get(ssrc);
-        if (stats == null) {
-            synchronized (receiveSsrcStats) {
-                stats = receiveSsrcStats.get(ssrc);
-                if (stats == null) {
-                    stats = new ReceiveTrackStatsImpl(INTERVAL, ssrc);
-                    receiveSsrcStats.put(ssrc, stats);
-                }
-            }
-        }
-        return stats;
+        return receiveSsrcStats.computeIfAbsent(ssrc, s -> new ReceiveTrackStatsImpl(INTERVAL, s));
     }
 
     /**
@@ -297,17 +278,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
             ssrc = -1;
         }
 
-        SendTrackStatsImpl stats = sendSsrcStats.get(ssrc);
-        if (stats == null) {
-            synchronized (sendSsrcStats) {
-                stats = sendSsrcStats.get(ssrc);
-                if (stats == null) {
-                    stats = new SendTrackStatsImpl(INTERVAL, ssrc);
-                    sendSsrcStats.put(ssrc, stats);
-                }
-            }
-        }
-        return stats;
+        return sendSsrcStats.computeIfAbsent(ssrc, s -> new SendTrackStatsImpl(INTERVAL, s));
     }
 
     /**
@@ -332,7 +303,11 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
      * @param ssrc the ssrc to process.
      */
     public void removeReceiveSsrc(long ssrc) {
-        receiveSsrcStats.remove(ssrc);
+        ReceiveTrackStatsImpl stats = receiveSsrcStats.get(ssrc);
+        if (stats != null) {
+            receiveStats.retire(stats);
+            receiveSsrcStats.remove(ssrc);
+        }
     }
 
     /**
@@ -346,13 +321,25 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
 
     /**
      * An {@link TrackStats} implementation which aggregates values for a collection of {@link TrackStats} instances.
+     * The packet counts and rates are summed over the children when read, so that the packet threads only update
+     * the statistics of their SSRC.
      */
-    private abstract class AggregateTrackStats<T> extends AbstractTrackStats {
+    private abstract class AggregateTrackStats<T extends AbstractTrackStats> extends AbstractTrackStats {
         /**
          * The collection of {@link TrackStats} for which this instance
          * aggregates.
          */
-        protected final Map<Long, ? extends T> children;
+        protected final SsrcTable<? extends T> children;
+
+        /**
+         * The number of bytes of the children which have been removed.
+         */
+        private final AtomicLong retiredBytes = new AtomicLong();
+
+        /**
+         * The number of packets of the children which have been removed.
+         */
+        private final AtomicLong retiredPackets = new AtomicLong();
 
         /**
          * Initializes a new {@link AggregateTrackStats} instance.
@@ -360,18 +347,99 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
          * @param interval the interval in milliseconds over which average values will be calculated.
          * @param children a reference to the map which holds the statistics to aggregate.
          */
-        AggregateTrackStats(int interval, Map<Long, ? extends T> children) {
+        AggregateTrackStats(int interval, SsrcTable<? extends T> children) {
             super(interval, -1);
             this.children = children;
         }
 
+        /**
+         * Keeps the totals of a child which is about to be removed.
+         *
+         * @param child the statistics of the removed SSRC.
+         */
+        void retire(T child) {
+            retiredBytes.addAndGet(child.bytes.get());
+            retiredPackets.addAndGet(child.packets.get() + child.rtcpPackets.get());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getBytes() {
+            long bytes = retiredBytes.get();
+            for (T child : children.values()) {
+                bytes += child.bytes.get();
+            }
+            return bytes;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * RTCP packets count towards the aggregate packets.
+         */
+        @Override
+        public long getPackets() {
+            long packets = retiredPackets.get();
+            for (T child : children.values()) {
+                packets += child.packets.get() + child.rtcpPackets.get();
+            }
+            return packets;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getBitrate() {
+            long now = System.currentTimeMillis();
+            long bitrate = 0;
+            for (T child : children.values()) {
+                bitrate += child.bitrate.getRate(now);
+            }
+            return bitrate;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * RTCP packets count towards the aggregate packet rate.
+         */
+        @Override
+        public long getPacketRate() {
+            long now = System.currentTimeMillis();
+            long packetRate = 0;
+            for (T child : children.values()) {
+                packetRate += child.packetRate.getRate(now) + child.rtcpPacketRate.getRate(now);
+            }
+            return packetRate;
+        }
+
         /**
          * {@inheritDoc}
          */
         @Override
-        protected void packetProcessed(int length, long now, boolean rtp) {
-            // A hack to make RTCP packets count towards the aggregate packet rate.
-            super.packetProcessed(length, now, true);
+        public long getCurrentBytes() {
+            long now = System.currentTimeMillis();
+            long bytes = 0;
+            for (T child : children.values()) {
+                bytes += child.bitrate.getAccumulatedCount(now);
+            }
+            return bytes;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getCurrentPackets() {
+            long now = System.currentTimeMillis();
+            long packets = 0;
+            for (T child : children.values()) {
+                packets += child.packetRate.getAccumulatedCount(now) + child.rtcpPacketRate.getAccumulatedCount(now);
+            }
+            return packets;
         }
     }
 
@@ -379,7 +447,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
      * An {@link SendTrackStats} implementation which aggregates values for
      * a collection of {@link SendTrackStats} instances.
      */
-    private class AggregateSendTrackStats extends AggregateTrackStats<SendTrackStats>
+    private class AggregateSendTrackStats extends AggregateTrackStats<SendTrackStatsImpl>
             implements SendTrackStats {
         /**
          * Initializes a new {@link AggregateTrackStats} instance.
@@ -387,7 +455,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
          * @param interval the interval in milliseconds over which average values will be calculated.
          * @param children a reference to the map which holds the statistics to aggregate.
          */
-        AggregateSendTrackStats(int interval, Map<Long, ? extends SendTrackStats> children) {
+        AggregateSendTrackStats(int interval, SsrcTable<? extends SendTrackStatsImpl> children) {
             super(interval, children);
         }
 
@@ -421,7 +489,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
      * An {@link ReceiveTrackStats} implementation which aggregates values
      * for a collection of {@link ReceiveTrackStats} instances.
      */
-    private class AggregateReceiveTrackStats extends AggregateTrackStats<ReceiveTrackStats>
+    private class AggregateReceiveTrackStats extends AggregateTrackStats<ReceiveTrackStatsImpl>
             implements ReceiveTrackStats {
         /**
          * Initializes a new {@link AggregateTrackStats} instance.
@@ -429,7 +497,7 @@ public class MediaStreamStats2Impl extends MediaStreamStatsImpl
          * @param interval the interval in milliseconds over which average values will be calculated.
          * @param children a reference to the map which holds the statistics to
          */
-        AggregateReceiveTrackStats(int interval, Map<Long, ? extends ReceiveTrackStats> children) {
+        AggregateReceiveTrackStats(int interval, SsrcTable<? extends ReceiveTrackStatsImpl> children) {
             super(interval, children);
         }
 
@@ -0,0 +1,182 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events over a sliding window, like {@link org.ice4j.util.RateStatistics}, but without
+ * locking: the window is split into {@link #BUCKETS} buckets, each of which holds its count and the
+ * slot of time it belongs to in a single <code>long</code>. Writers add to the bucket of the current
+ * slot with a CAS, and readers sum the buckets of the slots in the window without modifying them,
+ * so that polling the statistics does not stall the packet threads.
+ *
+ * The window moves in steps of one bucket, i.e. <code>interval / BUCKETS</code> milliseconds; the
+ * rate is computed over the time actually covered by the buckets read.
+ *
+ * @author Eng Chong Meng
+ */
+public class RateCounter
+{
+    /**
+     * The number of buckets of the window.
+     */
+    private static final int BUCKETS = 20;
+
+    /**
+     * The number of bits of the count of a bucket; the rest holds the slot.
+     */
+    private static final int COUNT_BITS = 40;
+
+    /**
+     * The mask of the slot of a bucket, once shifted.
+     */
+    private static final long SLOT_MASK = (1L << (64 - COUNT_BITS)) - 1;
+
+    /**
+     * The buckets: the slot in the high bits, the signed count in the low {@link #COUNT_BITS} bits.
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * The duration of a bucket in milliseconds.
+     */
+    private final int bucketMs;
+
+    /**
+     * The coefficient to convert counts/ms to the unit of the rate.
+     */
+    private final float scale;
+
+    /**
+     * Initializes a new {@link RateCounter} which gives rates in bits per second if the counts are
+     * bytes.
+     *
+     * @param interval the length of the window in milliseconds.
+     */
+    public RateCounter(int interval)
+    {
+        this(interval, 8000F);
+    }
+
+    /**
+     * Initializes a new {@link RateCounter}.
+     *
+     * @param interval the length of the window in milliseconds.
+     * @param scale the coefficient to convert counts/ms to the unit of the rate, e.g.
+     * <code>1000</code> for counts per second.
+     */
+    public RateCounter(int interval, float scale)
+    {
+        bucketMs = Math.max(1, interval / BUCKETS);
+        buckets = new AtomicLongArray(Math.max(1, interval / bucketMs));
+        this.scale = scale;
+    }
+
+    /**
+     * Adds a count at a specific time.
+     *
+     * @param count the count to add, which may be negative.
+     * @param nowMs the time in milliseconds.
+     */
+    public void update(int count, long nowMs)
+    {
+        long slot = nowMs / bucketMs;
+        int index = (int) (slot % buckets.length());
+
+        slot &= SLOT_MASK;
+
+        while (true) {
+            long bucket = buckets.get(index);
+            long bucketSlot = bucket >>> COUNT_BITS;
+
+            // A bucket holding another slot holds one at least a window old.
+            long newBucket = (bucketSlot == slot) ? pack(slot, count(bucket) + count) : pack(slot, count);
+
+            if (buckets.compareAndSet(index, bucket, newBucket))
+                return;
+        }
+    }
+
+    /**
+     * Gets the sum of the counts of the window ending at a specific time.
+     *
+     * @param nowMs the time in milliseconds.
+     * @return the sum of the counts of the window.
+     */
+    public long getAccumulatedCount(long nowMs)
+    {
+        long slot = (nowMs / bucketMs) & SLOT_MASK;
+        int length = buckets.length();
+        long sum = 0;
+
+        for (int i = 0; i < length; i++) {
+            long bucket = buckets.get(i);
+            if (((slot - (bucket >>> COUNT_BITS)) & SLOT_MASK) < length)
+                sum += count(bucket);
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the sum of the counts of the window ending now.
+     *
+     * @return the sum of the counts of the window.
+     */
+    public long getAccumulatedCount()
+    {
+        return getAccumulatedCount(System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the rate of the window ending at a specific time.
+     *
+     * @param nowMs the time in milliseconds.
+     * @return the rate, in the unit given by the scale of this instance.
+     */
+    public long getRate(long nowMs)
+    {
+        // The current bucket is only partially elapsed.
+        long coveredMs = (buckets.length() - 1) * bucketMs + nowMs % bucketMs + 1;
+        return (long) (getAccumulatedCount(nowMs) * scale / coveredMs + 0.5F);
+    }
+
+    /**
+     * Gets the rate of the window ending now.
+     *
+     * @return the rate, in the unit given by the scale of this instance.
+     */
+    public long getRate()
+    {
+        return getRate(System.currentTimeMillis());
+    }
+
+    /**
+     * Packs a slot and a count into a bucket.
+     */
+    private static long pack(long slot, long count)
+    {
+        return (slot << COUNT_BITS) | (count & ((1L << COUNT_BITS) - 1));
+    }
+
+    /**
+     * Gets the signed count of a bucket.
+     */
+    private static long count(long bucket)
+    {
+        return (bucket << (64 - COUNT_BITS)) >> (64 - COUNT_BITS);
+    }
+}
@@ -17,7 +17,6 @@ package org.atalk.impl.neomedia.stats;
 
 import org.atalk.service.neomedia.stats.ReceiveTrackStats;
 import org.atalk.util.RTPUtils;
-import org.ice4j.util.RateStatistics;
 
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -31,19 +30,25 @@ public class ReceiveTrackStatsImpl extends AbstractTrackStats
     implements ReceiveTrackStats
 {
     /**
-     * The highest received sequence number.
+     * The highest received sequence number. Only accessed by the thread which
+     * receives the RTP packets of the stream.
      */
     private int highestSeq = -1;
 
     /**
      * The packet loss rate.
      */
-    private RateStatistics packetLossRate;
+    private final RateCounter packetLossRate;
 
     /**
      * The total number of lost packets.
      */
-    private AtomicLong packetsLost = new AtomicLong();
+    private final AtomicLong packetsLost = new AtomicLong();
+
+    /**
+     * The number of RTCP reports sent with a report block about this SSRC.
+     */
+    private final AtomicLong rtcpReportsSent = new AtomicLong();
 
 
     /**
@@ -54,7 +59,7 @@ public class ReceiveTrackStatsImpl extends AbstractTrackStats
     ReceiveTrackStatsImpl(int interval, long ssrc)
     {
         super(interval, ssrc);
-        packetLossRate = new RateStatistics(interval, 1000F);
+        packetLossRate = new RateCounter(interval, 1000F);
     }
 
     /**
@@ -138,6 +143,17 @@ public class ReceiveTrackStatsImpl extends AbstractTrackStats
         super.packetProcessed(length, System.currentTimeMillis(), false);
     }
 
+    /**
+     * Notifies this instance that an RTCP report with a report block about
+     * its SSRC was sent.
+     *
+     * @return the number of RTCP reports sent about this SSRC, including this one.
+     */
+    public long rtcpReportSent()
+    {
+        return rtcpReportsSent.incrementAndGet();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -17,7 +17,8 @@ package org.atalk.impl.neomedia.stats;
 
 import org.atalk.service.neomedia.stats.SendTrackStats;
 import org.atalk.util.RTPUtils;
-import org.ice4j.util.RateStatistics;
+
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Media stream statistics implementation per send SSRC.
@@ -28,24 +29,25 @@ import org.ice4j.util.RateStatistics;
 public class SendTrackStatsImpl extends AbstractTrackStats
         implements SendTrackStats {
     /**
-     * The highest sent sequence number.
+     * The highest sent sequence number. Packets may be sent from several
+     * threads (e.g. retransmissions), so it is only advanced with a CAS.
      */
-    private int highestSeq = -1;
+    private final AtomicInteger highestSeq = new AtomicInteger(-1);
 
     /**
      * Rate of packet that we did not send (i.e. were lost on their way to us)
      */
-    RateStatistics packetsNotSentRate = new RateStatistics(1000, 1000F);
+    final RateCounter packetsNotSentRate = new RateCounter(1000, 1000F);
 
     /**
      * The fraction lost reported in the most recently received RTCP Receiver Report.
      */
-    private double fractionLost = -1d;
+    private volatile double fractionLost = -1d;
 
     /**
      * The time at which {@link #fractionLost} was last updated.
      */
-    private long fractionLostLastUpdate = -1;
+    private volatile long fractionLostLastUpdate = -1;
 
     /**
      * Initializes a new instance.
@@ -70,33 +72,37 @@ public class SendTrackStatsImpl extends AbstractTrackStats
         // update the bit- and packet-rate
         super.packetProcessed(length, now, true);
 
-        if (highestSeq == -1) {
-            highestSeq = seq;
-            return;
-        }
-
         // We monitor the sequence numbers of sent packets in order to
         // calculate the actual number of lost packets.
         // If we are forwarding the stream (as opposed to generating it
         // locally), as is the case in jitsi-videobridge, packets may be lost
         // between the sender and us, and we need to take this into account
         // when calculating packet loss to the receiver.
-        int diff = RTPUtils.getSequenceNumberDelta(seq, highestSeq);
-        if (diff <= 0) {
-            // An old packet, already counted as not send. Un-not-send it ;)
-            packetsNotSentRate.update(-1, now);
-        }
-        else {
-            // A newer packet.
-            highestSeq = seq;
+        while (true) {
+            int highest = highestSeq.get();
+            if (highest == -1) {
+                if (highestSeq.compareAndSet(-1, seq))
+                    return;
+                continue;
+            }
+
+            int diff = RTPUtils.getSequenceNumberDelta(seq, highest);
+            if (diff <= 0) {
+                // An old packet, already counted as not send. Un-not-send it ;)
+                packetsNotSentRate.update(-1, now);
+                return;
+            }
 
-            // diff = 1 is the "normal" case (i.e. we received the very next
-            // packet).
-            if (diff > 1) {
-                packetsNotSentRate.update(diff - 1, now);
+            // A newer packet.
+            if (highestSeq.compareAndSet(highest, seq)) {
+                // diff = 1 is the "normal" case (i.e. we received the very next
+                // packet).
+                if (diff > 1) {
+                    packetsNotSentRate.update(diff - 1, now);
+                }
+                return;
             }
         }
-        // update bytes, packets, loss...
     }
 
     /**
@@ -130,7 +136,7 @@ public class SendTrackStatsImpl extends AbstractTrackStats
      */
     @Override
     public int getHighestSent() {
-        return highestSeq;
+        return highestSeq.get();
     }
 
     /**
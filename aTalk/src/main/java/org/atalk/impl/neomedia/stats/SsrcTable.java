@@ -0,0 +1,137 @@
+/*
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.stats;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Maps SSRCs to the statistics of their tracks. A stream has a handful of SSRCs (a few more with
+ * simulcast and RTX), which are added and removed rarely but looked up for every packet: the
+ * entries are kept in primitive arrays which are copied on every change and scanned without
+ * locking nor boxing the SSRC.
+ *
+ * @param <T> the type of the statistics.
+ * @author Eng Chong Meng
+ */
+class SsrcTable<T>
+{
+    /**
+     * The entries, replaced as a whole on every change.
+     */
+    private volatile Entries<T> entries = new Entries<>(new long[0], new Object[0]);
+
+    /**
+     * Gets the statistics of an SSRC.
+     *
+     * @param ssrc the SSRC.
+     * @return the statistics of <code>ssrc</code>, or <code>null</code> if there are none.
+     */
+    T get(long ssrc)
+    {
+        Entries<T> entries = this.entries;
+        long[] ssrcs = entries.ssrcs;
+
+        for (int i = 0; i < ssrcs.length; i++) {
+            if (ssrcs[i] == ssrc)
+                return entries.values.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the statistics of an SSRC, creating them if there are none.
+     *
+     * @param ssrc the SSRC.
+     * @param factory creates the statistics of <code>ssrc</code>.
+     * @return the statistics of <code>ssrc</code>.
+     */
+    T computeIfAbsent(long ssrc, LongFunction<T> factory)
+    {
+        T value = get(ssrc);
+        if (value != null)
+            return value;
+
+        synchronized (this) {
+            value = get(ssrc);
+            if (value == null) {
+                value = factory.apply(ssrc);
+
+                long[] ssrcs = entries.ssrcs;
+                int length = ssrcs.length;
+                long[] newSsrcs = Arrays.copyOf(ssrcs, length + 1);
+                newSsrcs[length] = ssrc;
+                Object[] newValues = entries.values.toArray(new Object[length + 1]);
+                newValues[length] = value;
+                entries = new Entries<>(newSsrcs, newValues);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Removes the statistics of an SSRC.
+     *
+     * @param ssrc the SSRC.
+     */
+    synchronized void remove(long ssrc)
+    {
+        long[] ssrcs = entries.ssrcs;
+        for (int i = 0; i < ssrcs.length; i++) {
+            if (ssrcs[i] == ssrc) {
+                Object[] values = entries.values.toArray();
+                long[] newSsrcs = new long[ssrcs.length - 1];
+                Object[] newValues = new Object[ssrcs.length - 1];
+
+                System.arraycopy(ssrcs, 0, newSsrcs, 0, i);
+                System.arraycopy(ssrcs, i + 1, newSsrcs, i, newSsrcs.length - i);
+                System.arraycopy(values, 0, newValues, 0, i);
+                System.arraycopy(values, i + 1, newValues, i, newValues.length - i);
+                entries = new Entries<>(newSsrcs, newValues);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the statistics of all the SSRCs.
+     *
+     * @return an unmodifiable snapshot of the statistics of all the SSRCs.
+     */
+    List<T> values()
+    {
+        return entries.values;
+    }
+
+    /**
+     * The SSRCs and their statistics, at the same indices.
+     */
+    private static class Entries<T>
+    {
+        final long[] ssrcs;
+
+        final List<T> values;
+
+        @SuppressWarnings("unchecked")
+        Entries(long[] ssrcs, Object[] values)
+        {
+            this.ssrcs = ssrcs;
+            this.values = (List<T>) Collections.unmodifiableList(Arrays.asList(values));
+        }
+    }
+}
@@ -15,7 +15,6 @@ package org.atalk.impl.neomedia.transform;
 
 import org.atalk.impl.neomedia.RTPPacketPredicate;
 import org.atalk.service.neomedia.RawPacket;
-import org.atalk.util.RTPUtils;
 
 /**
  * Implements a <code>TransformEngine</code> which replaces the timestamps in
@@ -59,11 +58,11 @@ public class AbsSendTimeEngine extends SinglePacketTransformerAdapter
 	public RawPacket transform(RawPacket pkt)
 	{
 		if (extensionID != -1) {
-            RawPacket.HeaderExtension ext = pkt.getHeaderExtension((byte) extensionID);
-            if (ext == null) {
-                ext = pkt.addExtension((byte) extensionID, EXT_LENGTH);
+            int dataOffset = pkt.getExtensionDataOffset(extensionID);
+            if (dataOffset < 0) {
+                dataOffset = pkt.addExtension((byte) extensionID, EXT_LENGTH).getOffset() + 1;
             }
-            setTimestamp(ext.getBuffer(), ext.getOffset() + 1);
+            setTimestamp(pkt.getBuffer(), dataOffset);
 		}
 		return pkt;
 	}
@@ -134,16 +133,7 @@ public class AbsSendTimeEngine extends SinglePacketTransformerAdapter
      */
     public static long getAbsSendTime(RawPacket pkt, byte extensionID)
     {
-        long absSendTime = -1L;
-
-        RawPacket.HeaderExtension header = pkt.getHeaderExtension(extensionID);
-        if (header != null) {
-            //offSet is the byte index to read from
-            int offSet = header.getOffset() + 1;
-            if (header.getExtLength() == EXT_LENGTH) {
-                absSendTime = RTPUtils.readUint24AsInt(header.getBuffer(), offSet);
-            }
-        }
-        return absSendTime;
+        return (pkt.getExtensionDataLength(extensionID) == EXT_LENGTH)
+                ? pkt.readExtensionValue(extensionID) : -1L;
     }
 }
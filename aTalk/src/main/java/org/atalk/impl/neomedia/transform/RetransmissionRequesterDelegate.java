@@ -15,25 +15,27 @@
  */
 package org.atalk.impl.neomedia.transform;
 
+import net.sf.fmj.media.rtp.RTCPCompoundPacket;
+import net.sf.fmj.media.rtp.RTCPPacket;
+
 import org.atalk.impl.timberlog.TimberLog;
 import org.atalk.impl.neomedia.rtcp.NACKPacket;
 import org.atalk.service.neomedia.MediaStream;
 import org.atalk.service.neomedia.RawPacket;
 import org.atalk.service.neomedia.TransmissionFailedException;
+import org.atalk.service.neomedia.stats.MediaStreamStats2;
 import org.atalk.util.RTPUtils;
 import org.atalk.util.TimeProvider;
 import org.atalk.util.concurrent.RecurringRunnable;
+import org.atalk.util.function.RTCPGenerator;
 import org.atalk.util.logging.Logger;
-import org.jetbrains.annotations.NotNull;
 
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import timber.log.Timber;
 
@@ -41,6 +43,14 @@ import timber.log.Timber;
  * Detects lost RTP packets for a particular <code>RtpChannel</code> and requests
  * their retransmission by sending RTCP NACK packets.
  *
+ * The missing packets of each SSRC are kept in a bitmap. A packet is requested
+ * again once per RTT plus a margin for its jitter, as long as a retransmission
+ * can still arrive before the packet is played out by the jitter buffer; the
+ * last request is brought forward so that a lost retransmission can still be
+ * requested once more in time. The requests which are due within
+ * a quarter of an RTT are sent together, and the NACKs for all the SSRCs are
+ * sent in one compound RTCP packet.
+ *
  * @author Boris Grozev
  * @author George Politis
  * @author bbaldino
@@ -61,11 +71,28 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
 
     /**
      * The interval after which another retransmission request will be sent
-     * for a packet, unless it arrives. Ideally this should not be a constant,
-     * but should be based on the RTT to the endpoint.
+     * for a packet, unless it arrives, while the RTT to the endpoint is unknown.
      */
     public static final int RE_REQUEST_AFTER_MILLIS = 150;
 
+    /**
+     * The minimum interval after which another retransmission request will be
+     * sent for a packet, however small the RTT to the endpoint.
+     */
+    public static final int MIN_RE_REQUEST_AFTER_MILLIS = 20;
+
+    /**
+     * The minimum margin added to the RTT for the jitter, before another
+     * retransmission request is sent for a packet.
+     */
+    public static final int MIN_RE_REQUEST_MARGIN_MILLIS = 10;
+
+    /**
+     * The time from the detection of a loss to the playout of the lost packet,
+     * while the jitter buffer does not report its delay.
+     */
+    public static final int DEFAULT_PLAYOUT_DELAY_MILLIS = 1000;
+
     /**
      * The interval we'll ask the {@link RecurringRunnableExecutor} to check back
      * in if there is no current work
@@ -74,6 +101,23 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
      */
     public static final long WAKEUP_INTERVAL_MILLIS = 1000;
 
+    /**
+     * The interval at which the RTT and the jitter buffer delay are read from
+     * the statistics of the stream.
+     */
+    private static final long NETWORK_STATE_UPDATE_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The maximum length in bytes of a compound RTCP packet of NACKs.
+     */
+    private static final int MAX_NACK_PACKET_LENGTH = 1200;
+
+    /**
+     * The number of sequence numbers, before the highest received one, for
+     * which a <code>Requester</code> tracks the missing packets; a power of 2.
+     */
+    private static final int WINDOW = 1024;
+
     /**
      * Maps an SSRC to the <code>Requester</code> instance corresponding to it.
      * TODO: purge these somehow (RTCP BYE? Timeout?)
@@ -99,6 +143,56 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
      */
     protected Runnable workReadyCallback = null;
 
+    /**
+     * The generator of the compound RTCP packets of NACKs.
+     */
+    private final RTCPGenerator generator = new RTCPGenerator();
+
+    /**
+     * The last RTT to the endpoint in milliseconds, or <code>-1</code> if unknown.
+     */
+    private volatile long rtt = -1;
+
+    /**
+     * The time from the detection of a loss to the playout of the lost packet.
+     */
+    private volatile long playoutDelay = DEFAULT_PLAYOUT_DELAY_MILLIS;
+
+    /**
+     * The time at which {@link #rtt} and {@link #playoutDelay} have been updated.
+     */
+    private long networkStateUpdatedAt = -1;
+
+    /**
+     * The number of packets detected as lost.
+     */
+    private final AtomicLong packetsMissing = new AtomicLong();
+
+    /**
+     * The number of sequence numbers sent in NACKs, retries included.
+     */
+    private final AtomicLong packetsRequested = new AtomicLong();
+
+    /**
+     * The number of requested packets received in time for their playout.
+     */
+    private final AtomicLong packetsRecovered = new AtomicLong();
+
+    /**
+     * The number of requested packets received too late for their playout.
+     */
+    private final AtomicLong packetsRecoveredLate = new AtomicLong();
+
+    /**
+     * The number of lost packets which have been given up.
+     */
+    private final AtomicLong packetsAbandoned = new AtomicLong();
+
+    /**
+     * The number of compound RTCP packets of NACKs sent.
+     */
+    private final AtomicLong nackPacketsSent = new AtomicLong();
+
     /**
      * Initializes a new <code>RetransmissionRequesterDelegate</code> for the given <code>RtpChannel</code>.
      *
@@ -119,7 +213,7 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
         Requester requester = getOrCreateRequester(ssrc);
         // If the reception of this packet resulted in there being work that
         // is ready to be done now, fire the work ready callback
-        if (requester.received(seqNum)) {
+        if (requester.received(seqNum, timeProvider.currentTimeMillis())) {
             if (workReadyCallback != null) {
                 workReadyCallback.run();
             }
@@ -157,10 +251,14 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
     {
         long now = timeProvider.currentTimeMillis();
         Timber.log(TimberLog.FINER, "%s running at %s", hashCode(), now);
-        List<Requester> dueRequesters = getDueRequesters(now);
+        updateNetworkState(now);
+
+        // The requests due within a quarter of an RTT are sent now, together.
+        long horizon = now + Math.max(rtt, 0) / 4;
+        List<Requester> dueRequesters = getDueRequesters(horizon);
         Timber.log(TimberLog.FINER, "%s has %s due requesters", hashCode(), dueRequesters.size());
         if (!dueRequesters.isEmpty()) {
-            List<NACKPacket> nackPackets = createNackPackets(now, dueRequesters);
+            List<NACKPacket> nackPackets = createNackPackets(now, horizon, dueRequesters);
             Timber.log(TimberLog.FINER, "%s injecting %s nack packets", hashCode(), nackPackets.size());
             if (!nackPackets.isEmpty()) {
                 injectNackPackets(nackPackets);
@@ -168,6 +266,55 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
         }
     }
 
+    /**
+     * Reads the RTT and the jitter buffer delay from the statistics of the
+     * stream, at most every {@link #NETWORK_STATE_UPDATE_INTERVAL_MILLIS}.
+     *
+     * @param now the current time
+     */
+    private void updateNetworkState(long now)
+    {
+        if (networkStateUpdatedAt != -1
+                && now - networkStateUpdatedAt < NETWORK_STATE_UPDATE_INTERVAL_MILLIS) {
+            return;
+        }
+        networkStateUpdatedAt = now;
+
+        MediaStreamStats2 stats = stream.getMediaStreamStats();
+        if (stats == null)
+            return;
+
+        long rtt = stats.getSendStats().getRtt();
+        this.rtt = (rtt > 0) ? rtt : -1;
+        int jitterBufferDelay = stats.getJitterBufferDelayMs();
+        playoutDelay = (jitterBufferDelay > 0) ? jitterBufferDelay : DEFAULT_PLAYOUT_DELAY_MILLIS;
+    }
+
+    /**
+     * Gets the margin for the jitter of the RTT, after which a retransmission
+     * is considered lost.
+     *
+     * @return the margin in milliseconds
+     */
+    private long getReRequestMargin()
+    {
+        return Math.max(MIN_RE_REQUEST_MARGIN_MILLIS, Math.max(rtt, 0) / 8);
+    }
+
+    /**
+     * Gets the interval after which another retransmission request will be
+     * sent for a packet, unless it arrives.
+     *
+     * @return the interval in milliseconds
+     */
+    private long getReRequestInterval()
+    {
+        long rtt = this.rtt;
+        return (rtt > 0)
+                ? Math.max(MIN_RE_REQUEST_AFTER_MILLIS, rtt + getReRequestMargin())
+                : RE_REQUEST_AFTER_MILLIS;
+    }
+
     private Requester getOrCreateRequester(long ssrc)
     {
         Requester requester;
@@ -210,8 +357,8 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
         synchronized (requesters) {
             for (Requester requester : requesters.values()) {
                 if (requester.isDue(currentTime)) {
-                    Timber.log(TimberLog.FINER, hashCode() + "%s requester for ssrc %s has work due at %s(now = %s) and is missing packets: %s",
-                            requester.ssrc, requester.nextRequestAt, currentTime, requester.getMissingSeqNums());
+                    Timber.log(TimberLog.FINER, hashCode() + "%s requester for ssrc %s has work due at %s(now = %s) and is missing %s packets",
+                            requester.ssrc, requester.nextRequestAt, currentTime, requester.missingCount);
 
                     dueRequesters.add(requester);
                 }
@@ -221,59 +368,70 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
     }
 
     /**
-     * Inject the given nack packets into the outgoing stream
+     * Inject the given nack packets into the outgoing stream, as few compound
+     * RTCP packets of up to {@link #MAX_NACK_PACKET_LENGTH} bytes.
      *
      * @param nackPackets the nack packets to inject
      */
     private void injectNackPackets(List<NACKPacket> nackPackets)
     {
+        List<RTCPPacket> compound = new ArrayList<>(nackPackets.size());
+        int length = 0;
         for (NACKPacket nackPacket : nackPackets) {
-            try {
-                RawPacket packet;
-                try {
-                    packet = nackPacket.toRawPacket();
-                } catch (IOException ioe) {
-                    Timber.w(ioe, "Failed to create a NACK packet");
-                    continue;
-                }
-
-                Timber.log(TimberLog.FINER, "Sending a NACK: %s", nackPacket);
-                stream.injectPacket(packet, /* data */ false, /* after */ null);
-            } catch (TransmissionFailedException e) {
-                Timber.w(e.getCause(), "Failed to inject packet in MediaStream.");
+            int nackLength = nackPacket.calcLength();
+            if (!compound.isEmpty() && length + nackLength > MAX_NACK_PACKET_LENGTH) {
+                injectCompoundPacket(compound);
+                compound.clear();
+                length = 0;
             }
+            compound.add(nackPacket);
+            length += nackLength;
+        }
+        injectCompoundPacket(compound);
+    }
+
+    /**
+     * Injects a compound RTCP packet into the outgoing stream.
+     *
+     * @param rtcpPackets the packets of the compound packet
+     */
+    private void injectCompoundPacket(List<RTCPPacket> rtcpPackets)
+    {
+        RTCPCompoundPacket compound
+                = new RTCPCompoundPacket(rtcpPackets.toArray(new RTCPPacket[0]));
+        RawPacket packet = generator.apply(compound);
+        try {
+            Timber.log(TimberLog.FINER, "Sending NACKs: %s", rtcpPackets);
+            stream.injectPacket(packet, /* data */ false, /* after */ null);
+            nackPacketsSent.incrementAndGet();
+        } catch (TransmissionFailedException e) {
+            Timber.w(e.getCause(), "Failed to inject packet in MediaStream.");
         }
     }
 
     /**
-     * Gather the packets currently marked as missing and create
-     * NACKs for them
+     * Gather the packets currently marked as missing which are due to be
+     * requested, and create NACKs for them
      *
+     * @param now the current time
+     * @param horizon the time until which the requests due are sent now
      * @param dueRequesters the requesters which are due to have nack packets
      * generated
      */
-    protected List<NACKPacket> createNackPackets(long now, List<Requester> dueRequesters)
+    protected List<NACKPacket> createNackPackets(long now, long horizon, List<Requester> dueRequesters)
     {
-        Map<Long, Set<Integer>> packetsToRequest = new HashMap<>();
+        List<NACKPacket> nackPackets = new ArrayList<>();
+        List<Integer> missingPackets = new ArrayList<>();
         for (Requester dueRequester : dueRequesters) {
-            synchronized (dueRequester) {
-                Set<Integer> missingPackets = dueRequester.getMissingSeqNums();
-                if (!missingPackets.isEmpty()) {
-                    Timber.log(TimberLog.FINER, "%S Sending nack with packets %S for ssrc %S",
-                            hashCode(), missingPackets, dueRequester.ssrc);
-                    packetsToRequest.put(dueRequester.ssrc, missingPackets);
-                    dueRequester.notifyNackCreated(now, missingPackets);
-                }
+            missingPackets.clear();
+            dueRequester.getDueSeqNums(now, horizon, missingPackets);
+            if (!missingPackets.isEmpty()) {
+                Timber.log(TimberLog.FINER, "%S Sending nack with packets %S for ssrc %S",
+                        hashCode(), missingPackets, dueRequester.ssrc);
+                packetsRequested.addAndGet(missingPackets.size());
+                nackPackets.add(new NACKPacket(senderSsrc, dueRequester.ssrc, missingPackets));
             }
         }
-
-        List<NACKPacket> nackPackets = new ArrayList<>();
-        for (Map.Entry<Long, Set<Integer>> entry : packetsToRequest.entrySet()) {
-            long sourceSsrc = entry.getKey();
-            Set<Integer> missingPackets = entry.getValue();
-            NACKPacket nack = new NACKPacket(senderSsrc, sourceSsrc, missingPackets);
-            nackPackets.add(nack);
-        }
         return nackPackets;
     }
 
@@ -292,16 +450,47 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
          */
         private int lastReceivedSeq = -1;
 
+        /**
+         * The time at which {@link #lastReceivedSeq} has been received.
+         */
+        private long lastReceivedAt = -1;
+
         /**
          * The time that the next request for this SSRC should be sent.
          */
         private long nextRequestAt = -1;
 
         /**
-         * The set of active requests for this SSRC. The keys are the sequence
-         * numbers.
+         * The bitmap of the missing packets, indexed by sequence number modulo
+         * {@link #WINDOW}. The missing packets are all within {@link #WINDOW}
+         * before {@link #lastReceivedSeq}.
          */
-        private final Map<Integer, Request> requests = new HashMap<>();
+        private final long[] missing = new long[WINDOW / 64];
+
+        /**
+         * The number of bits set in {@link #missing}.
+         */
+        private int missingCount = 0;
+
+        /**
+         * The time at which each missing packet was detected as lost.
+         */
+        private final long[] lostAt = new long[WINDOW];
+
+        /**
+         * The time at which each missing packet was first requested.
+         */
+        private final long[] firstRequestSentAt = new long[WINDOW];
+
+        /**
+         * The time at which each missing packet is to be requested.
+         */
+        private final long[] requestAt = new long[WINDOW];
+
+        /**
+         * The number of times that each missing packet has been requested.
+         */
+        private final byte[] timesRequested = new byte[WINDOW];
 
         /**
          * Initializes a new <code>Requester</code> instance for the given SSRC.
@@ -323,152 +512,235 @@ public class RetransmissionRequesterDelegate implements RecurringRunnable
             return nextRequestAt != -1 && nextRequestAt <= currentTime;
         }
 
+        private boolean isMissing(int index)
+        {
+            return (missing[index >>> 6] & (1L << index)) != 0;
+        }
+
+        private void clearMissing(int index)
+        {
+            missing[index >>> 6] &= ~(1L << index);
+            missingCount--;
+        }
+
         /**
          * Handles a received RTP packet with a specific sequence number.
          *
          * @param seq the RTP sequence number of the received packet.
+         * @param now the current time
          * @return true if there is work for this requester ready to be
          * done now, false otherwise
          */
-        synchronized private boolean received(int seq)
+        synchronized private boolean received(int seq, long now)
         {
             if (lastReceivedSeq == -1) {
                 lastReceivedSeq = seq;
+                lastReceivedAt = now;
                 return false;
             }
 
             int diff = RTPUtils.getSequenceNumberDelta(seq, lastReceivedSeq);
             if (diff <= 0) {
                 // An older packet, possibly already requested.
-                Request r = requests.remove(seq);
-                if (requests.isEmpty()) {
-                    nextRequestAt = -1;
-                }
-
-                if (r != null) {
-                    long rtt = stream.getMediaStreamStats().getSendStats().getRtt();
-                    if (rtt > 0) {
-
-                        // firstRequestSentAt is if we created a Request, but
-                        // haven't yet sent a NACK. Assume a delta of 0 in that case.
-                        long firstRequestSentAt = r.firstRequestSentAt;
-                        long delta = firstRequestSentAt > 0
-                                ? timeProvider.currentTimeMillis() - r.firstRequestSentAt : 0;
-
-                        Timber.d("%s retr_received,stream = %d; delay = %d; rtt = %d",
-                                Logger.Category.STATISTICS, stream.hashCode(), delta, rtt);
+                int index = seq & (WINDOW - 1);
+                if (-diff < WINDOW && isMissing(index)) {
+                    clearMissing(index);
+                    if (timesRequested[index] > 0) {
+                        if (now - lostAt[index] > playoutDelay)
+                            packetsRecoveredLate.incrementAndGet();
+                        else
+                            packetsRecovered.incrementAndGet();
+
+                        long rtt = RetransmissionRequesterDelegate.this.rtt;
+                        if (rtt > 0) {
+                            Timber.d("%s retr_received,stream = %d; delay = %d; rtt = %d",
+                                    Logger.Category.STATISTICS, stream.hashCode(),
+                                    now - firstRequestSentAt[index], rtt);
+                        }
                     }
                 }
-            }
-            else if (diff == 1) {
-                // The very next packet, as expected.
-                lastReceivedSeq = seq;
+                if (missingCount == 0) {
+                    nextRequestAt = -1;
+                }
             }
             else if (diff <= MAX_MISSING) {
-                for (int missing = (lastReceivedSeq + 1) % (1 << 16);
-                     missing != seq;
-                     missing = (missing + 1) % (1 << 16)) {
-                    Request request = new Request(missing);
-                    requests.put(missing, request);
+                // The packets in between, if any, are missing.
+                for (int i = 1; i <= diff; i++) {
+                    int index = (lastReceivedSeq + i) & (WINDOW - 1);
+                    if (isMissing(index)) {
+                        // Too old to be tracked any longer.
+                        clearMissing(index);
+                        packetsAbandoned.incrementAndGet();
+                    }
+                    if (i != diff) {
+                        missing[index >>> 6] |= 1L << index;
+                        missingCount++;
+                        // The packets of a gap were due between the two received
+                        // around it, and so is their playout.
+                        lostAt[index] = lastReceivedAt + (now - lastReceivedAt) * i / diff;
+                        requestAt[index] = now;
+                        timesRequested[index] = 0;
+                    }
                 }
-
                 lastReceivedSeq = seq;
-                nextRequestAt = 0;
+                lastReceivedAt = now;
 
-                return true;
+                if (diff > 1) {
+                    packetsMissing.addAndGet(diff - 1);
+                    nextRequestAt = now;
+                    return true;
+                }
+                if (missingCount == 0) {
+                    nextRequestAt = -1;
+                }
             }
             else // if (diff > MAX_MISSING)
             {
                 // Too many packets missing. Reset.
-                lastReceivedSeq = seq;
                 Timber.d("Resetting retransmission requester state. SSRC: %S, last received: %S, current: %S. Removing %S unsatisfied requests.",
-                        ssrc, lastReceivedSeq, seq, requests.size());
-                requests.clear();
+                        ssrc, lastReceivedSeq, seq, missingCount);
+                lastReceivedSeq = seq;
+                lastReceivedAt = now;
+                packetsAbandoned.addAndGet(missingCount);
+                Arrays.fill(missing, 0);
+                missingCount = 0;
                 nextRequestAt = -1;
             }
             return false;
         }
 
         /**
-         * Returns a set of RTP sequence numbers which are considered still MIA,
-         * and for which a retransmission request needs to be sent.
-         * Assumes that the returned set of sequence numbers will be requested
-         * immediately and updates the state accordingly (i.e. increments the
-         * timesRequested counters and sets the time of next request).
+         * Gets the RTP sequence numbers which are considered still MIA, and
+         * for which a retransmission request is due. Assumes that they will be
+         * requested immediately and updates the state accordingly: increments
+         * the request counters, sets the time of the next requests and gives
+         * up the packets which could not be retransmitted before their playout.
          *
-         * @return a set of RTP sequence numbers which are considered still MIA,
-         * and for which a retransmission request needs to be sent.
+         * @param now the current time
+         * @param horizon the time until which the requests due are returned
+         * @param seqNums the list to add the sequence numbers to
          */
-        synchronized private @NotNull
-        Set<Integer> getMissingSeqNums()
+        synchronized private void getDueSeqNums(long now, long horizon, List<Integer> seqNums)
         {
-            return new HashSet<>(requests.keySet());
-        }
+            long rtt = Math.max(RetransmissionRequesterDelegate.this.rtt, 0);
+            long playoutDelay = RetransmissionRequesterDelegate.this.playoutDelay;
+            long reRequestInterval = getReRequestInterval();
+            long margin = getReRequestMargin();
+            long next = -1;
+
+            for (int word = 0; word < missing.length; word++) {
+                long bits = missing[word];
+                while (bits != 0) {
+                    int index = (word << 6) | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    if (requestAt[index] > horizon) {
+                        if (next == -1 || requestAt[index] < next)
+                            next = requestAt[index];
+                        continue;
+                    }
 
-        /**
-         * Notify this requester that a nack was sent at the given time
-         *
-         * @param time the time at which the nack was sent
-         */
-        public synchronized void notifyNackCreated(long time, Collection<Integer> sequenceNumbers)
-        {
-            for (Integer seqNum : sequenceNumbers) {
-                Request request = requests.get(seqNum);
-                request.timesRequested++;
-                if (request.timesRequested == MAX_REQUESTS) {
-                    Timber.d("Generated the last NACK for SSRC = %S seq = %S. Time since the first request: %S",
-                            ssrc, request.seq, (time - request.firstRequestSentAt));
-                    requests.remove(seqNum);
-                    continue;
-                }
-                if (request.timesRequested == 1) {
-                    request.firstRequestSentAt = time;
+                    // A retransmission requested now would be played out too late.
+                    long playoutAt = lostAt[index] + playoutDelay;
+                    if (timesRequested[index] >= MAX_REQUESTS || now + rtt > playoutAt) {
+                        if (timesRequested[index] > 0 && now <= playoutAt) {
+                            // The last retransmission requested may still arrive in time:
+                            // the packet is only given up after its playout.
+                            requestAt[index] = playoutAt + 1;
+                            if (next == -1 || requestAt[index] < next)
+                                next = requestAt[index];
+                            continue;
+                        }
+                        clearMissing(index);
+                        packetsAbandoned.incrementAndGet();
+                        continue;
+                    }
+
+                    seqNums.add((lastReceivedSeq - ((lastReceivedSeq - index) & (WINDOW - 1))) & 0xffff);
+                    if (timesRequested[index]++ == 0) {
+                        firstRequestSentAt[index] = now;
+                    }
+                    // If the retransmission is lost, another request must still be
+                    // answered before the playout: it is sent early, at the latest
+                    // time it can, even before the retransmission is due.
+                    long lastRequestAt = lostAt[index] + playoutDelay - rtt - margin;
+                    requestAt[index] = Math.max(now + MIN_RE_REQUEST_AFTER_MILLIS,
+                            Math.min(now + reRequestInterval, lastRequestAt));
+                    if (next == -1 || requestAt[index] < next)
+                        next = requestAt[index];
                 }
             }
-            nextRequestAt = (requests.size() > 0) ? time + RE_REQUEST_AFTER_MILLIS : -1;
+            nextRequestAt = next;
         }
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void setSenderSsrc(long ssrc)
+    {
+        senderSsrc = ssrc;
     }
 
     /**
-     * Represents a request for the retransmission of a specific RTP packet.
+     * @return the number of packets detected as lost.
      */
-    private static class Request
+    public long getPacketsMissing()
     {
-        /**
-         * The RTP sequence number.
-         */
-        final int seq;
+        return packetsMissing.get();
+    }
 
-        /**
-         * The system time at the moment a retransmission request for this
-         * packet was first sent.
-         */
-        long firstRequestSentAt = -1;
+    /**
+     * @return the number of sequence numbers sent in NACKs, retries included.
+     */
+    public long getPacketsRequested()
+    {
+        return packetsRequested.get();
+    }
 
-        /**
-         * The number of times that a retransmission request for this packet
-         * has been sent.
-         */
-        int timesRequested = 0;
+    /**
+     * @return the number of requested packets received in time for their playout.
+     */
+    public long getPacketsRecovered()
+    {
+        return packetsRecovered.get();
+    }
 
-        /**
-         * Initializes a new <code>Request</code> instance with the given RTP
-         * sequence number.
-         *
-         * @param seq the RTP sequence number.
-         */
-        Request(int seq)
-        {
-            this.seq = seq;
-        }
+    /**
+     * @return the number of requested packets received too late for their playout.
+     */
+    public long getPacketsRecoveredLate()
+    {
+        return packetsRecoveredLate.get();
     }
 
     /**
-     * {@inheritDoc}
+     * @return the number of lost packets which have been given up.
      */
-    public void setSenderSsrc(long ssrc)
+    public long getPacketsAbandoned()
     {
-        senderSsrc = ssrc;
+        return packetsAbandoned.get();
+    }
+
+    /**
+     * @return the number of compound RTCP packets of NACKs sent.
+     */
+    public long getNackPacketsSent()
+    {
+        return nackPacketsSent.get();
+    }
+
+    /**
+     * Logs the efficiency of the retransmission requests of the stream.
+     */
+    public void logStatistics()
+    {
+        long requested = packetsRequested.get();
+        if (packetsMissing.get() > 0) {
+            Timber.i("%s nack_stats,stream=%d missing=%d, requested=%d, recovered=%d, recovered_late=%d, abandoned=%d, nack_packets=%d, efficiency=%.2f",
+                    Logger.Category.STATISTICS, stream.hashCode(), packetsMissing.get(), requested,
+                    packetsRecovered.get(), packetsRecoveredLate.get(), packetsAbandoned.get(),
+                    nackPacketsSent.get(), (requested == 0) ? 0d : packetsRecovered.get() / (double) requested);
+        }
     }
 }
@@ -130,6 +130,18 @@ public class RetransmissionRequesterImpl extends SinglePacketTransformerAdapter
     {
         closed = true;
         recurringRunnableExecutor.deRegisterRecurringRunnable(retransmissionRequesterDelegate);
+        retransmissionRequesterDelegate.logStatistics();
+    }
+
+    /**
+     * Returns the delegate which schedules the NACKs, and counts the lost,
+     * requested and recovered packets of the stream.
+     *
+     * @return the {@link RetransmissionRequesterDelegate} of this instance.
+     */
+    public RetransmissionRequesterDelegate getDelegate()
+    {
+        return retransmissionRequesterDelegate;
     }
 
     // TransformEngine methods
@@ -19,6 +19,7 @@ import org.atalk.service.neomedia.RTPExtension;
 import org.atalk.service.neomedia.RawPacket;
 import org.atalk.util.ConfigUtils;
 
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -41,6 +42,12 @@ public class CsrcTransformEngine extends SinglePacketTransformer implements Tran
      */
     private byte csrcAudioLevelExtID = -1;
 
+    /**
+     * The (pooled) array into which the CSRC audio levels of the received packets are extracted;
+     * room for the maximum of 15 CSRCs.
+     */
+    private final long[] csrcAudioLevels = new long[2 * 15];
+
     /**
      * The dispatcher that is delivering audio levels to the media steam.
      */
@@ -56,6 +63,12 @@ public class CsrcTransformEngine extends SinglePacketTransformer implements Tran
      */
     private int extensionBuffLen = 0;
 
+    /**
+     * The CSRC audio levels last handed to {@link #csrcAudioLevelDispatcher}; not modified once
+     * handed over, because they are delivered asynchronously.
+     */
+    private long[] lastCsrcAudioLevels;
+
     /**
      * The <code>MediaStreamImpl</code> that this transform engine was created to transform packets for.
      */
@@ -203,15 +216,43 @@ public class CsrcTransformEngine extends SinglePacketTransformer implements Tran
     {
         if ((csrcAudioLevelExtID > 0) && csrcAudioLevelDirection.allowsReceiving()
                 && (csrcAudioLevelDispatcher != null)) {
-            // extract the audio levels and send them to the dispatcher.
-            long[] levels = pkt.extractCsrcAudioLevels(csrcAudioLevelExtID);
+            // extract the audio levels and send them to the dispatcher; a new array is only
+            // needed when they have changed since the previous packet.
+            int count = pkt.extractCsrcAudioLevels(csrcAudioLevelExtID, csrcAudioLevels);
 
-            if (levels != null)
+            if (count > 0) {
+                long[] levels = lastCsrcAudioLevels;
+
+                if (!levelsEqual(levels, csrcAudioLevels, 2 * count)) {
+                    levels = Arrays.copyOf(csrcAudioLevels, 2 * count);
+                    lastCsrcAudioLevels = levels;
+                }
                 csrcAudioLevelDispatcher.addLevels(levels, pkt.getTimestamp());
+            }
         }
         return pkt;
     }
 
+    /**
+     * Determines whether the audio levels last handed to the dispatcher are the same as the ones
+     * just extracted.
+     *
+     * @param levels the audio levels last handed to the dispatcher or <code>null</code>
+     * @param newLevels the array holding the audio levels just extracted
+     * @param length the number of elements of <code>newLevels</code> which hold the audio levels
+     * @return <code>true</code> if <code>levels</code> holds the same audio levels as <code>newLevels</code>
+     */
+    private static boolean levelsEqual(long[] levels, long[] newLevels, int length)
+    {
+        if (levels == null || levels.length != length)
+            return false;
+        for (int i = 0; i < length; i++) {
+            if (levels[i] != newLevels[i])
+                return false;
+        }
+        return true;
+    }
+
     /**
      * Sets the ID that this transformer should be using for audio level extensions or disables
      * audio level extensions if <code>extID</code> is <code>-1</code>.
@@ -58,6 +58,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
 
 import timber.log.Timber;
 
@@ -621,6 +622,19 @@ public class DtlsControlImpl extends AbstractSrtpControl<DtlsTransformEngine> im
         return getCertificateInfo().localFingerprintHashFunction;
     }
 
+    /**
+     * Gets the key under which the DTLS sessions with the remote endpoint are cached for resumption
+     * i.e. the local fingerprint and the remote fingerprints declared over the signaling path.
+     *
+     * @return the session cache key of the remote endpoint or <code>null</code> if it has declared no
+     * fingerprint yet
+     */
+    synchronized String getSessionCacheKey() {
+        if (disposed || (remoteFingerprints == null))
+            return null;
+        return getLocalFingerprint() + " " + new TreeMap<>(remoteFingerprints);
+    }
+
     /**
      * Gets the properties of {@code DtlsControlImpl} and their values which this instance shares
      * with {@link DtlsTransformEngine} and {@link DtlsPacketTransformer}.
@@ -863,10 +877,13 @@ public class DtlsControlImpl extends AbstractSrtpControl<DtlsTransformEngine> im
      * @param certificate the certificate to be verified and validated against the fingerprints
      * presented by the remote endpoint via the signaling path
      *
+     * @return <code>true</code> if the specified <code>certificate</code> matches the fingerprints;
+     * <code>false</code> if it does not but the mismatch is tolerated by configuration
+     *
      * @throws Exception if the specified <code>certificate</code> failed to verify and validate against the
      * fingerprints presented by the remote endpoint over the signaling path
      */
-    public void verifyAndValidateCertificate(org.bouncycastle.tls.Certificate certificate)
+    public boolean verifyAndValidateCertificate(org.bouncycastle.tls.Certificate certificate)
             throws Exception {
         try {
             if (certificate.isEmpty()) {
@@ -879,6 +896,7 @@ public class DtlsControlImpl extends AbstractSrtpControl<DtlsTransformEngine> im
                     verifyAndValidateCertificate(entry);
                 }
             }
+            return true;
         } catch (Exception e) {
             String message = "Failed to verify and/or validate a certificate offered over"
                     + " the media path against fingerprints declared over the signaling path!";
@@ -901,6 +919,7 @@ public class DtlsControlImpl extends AbstractSrtpControl<DtlsTransformEngine> im
                     Timber.w(e, "%s", message);
                 else
                     Timber.w("%s %s", message, throwableMessage);
+                return false;
             }
         }
     }
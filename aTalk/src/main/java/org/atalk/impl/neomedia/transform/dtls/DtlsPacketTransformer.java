@@ -22,6 +22,7 @@ import org.atalk.service.neomedia.DtlsControl;
 import org.atalk.service.neomedia.RawPacket;
 import org.atalk.util.ConfigUtils;
 import org.atalk.util.MediaType;
+import org.atalk.util.concurrent.ExecutorFactory;
 import org.bouncycastle.tls.AlertDescription;
 import org.bouncycastle.tls.AlertLevel;
 import org.bouncycastle.tls.ContentType;
@@ -54,6 +55,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ExecutorService;
 
 import timber.log.Timber;
 
@@ -68,7 +70,7 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
 {
     /**
      * The interval in milliseconds between successive tries to await successful connections in
-     * {@link #runInConnectThread(DTLSProtocol, TlsPeer, DatagramTransport)}.
+     * {@link #runConnectTask(Runnable, DTLSProtocol, TlsPeer, DatagramTransport)}.
      *
      * @see #CONNECT_TRIES
      */
@@ -76,7 +78,7 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
 
     /**
      * The maximum number of times that
-     * {@link #runInConnectThread(DTLSProtocol, TlsPeer, DatagramTransport)} is to retry the invocations of
+     * {@link #runConnectTask(Runnable, DTLSProtocol, TlsPeer, DatagramTransport)} is to retry the invocations of
      * {@link DTLSClientProtocol#connect(TlsClient, DatagramTransport)} and
      * {@link DTLSServerProtocol#accept(TlsServer, DatagramTransport)} in anticipation of a successful connection.
      *
@@ -100,6 +102,35 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
     private static final String DROP_UNENCRYPTED_PKTS_PNAME
             = DtlsPacketTransformer.class.getName() + ".dropUnencryptedPkts";
 
+    /**
+     * The name of the <code>ConfigurationService</code> and/or <code>System</code> property which
+     * specifies the maximum number of DTLS handshakes which are run at the same time; the others wait
+     * in the queue of {@link #connectExecutor}. The default value is <code>4</code>.
+     */
+    private static final String HANDSHAKE_THREADS_PNAME
+            = DtlsPacketTransformer.class.getName() + ".handshakeThreads";
+
+    /**
+     * The name of the <code>ConfigurationService</code> and/or <code>System</code> property which
+     * specifies the number of milliseconds after which a DTLS handshake which has not completed is
+     * abandoned. The default value is <code>30000</code>.
+     */
+    private static final String HANDSHAKE_TIMEOUT_PNAME
+            = DtlsPacketTransformer.class.getName() + ".handshakeTimeout";
+
+    /**
+     * The number of milliseconds after which a DTLS handshake which has not completed is abandoned;
+     * returned by <code>TlsClientImpl</code> and <code>TlsServerImpl</code> to the DTLS protocol.
+     */
+    static final int HANDSHAKE_TIMEOUT_MILLIS;
+
+    /**
+     * The <code>ExecutorService</code> shared by all <code>DtlsPacketTransformer</code>s to run their DTLS
+     * handshakes, in place of a thread per instance. A handshake with an unresponsive peer holds one of
+     * its threads for at most {@link #HANDSHAKE_TIMEOUT_MILLIS}.
+     */
+    private static final ExecutorService connectExecutor;
+
     /**
      * The length of the header of a DTLS record.
      * +1 content_type
@@ -125,6 +156,12 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
     static {
         ConfigurationService cfg = LibJitsi.getConfigurationService();
         DROP_UNENCRYPTED_PKTS = ConfigUtils.getBoolean(cfg, DROP_UNENCRYPTED_PKTS_PNAME, false);
+
+        HANDSHAKE_TIMEOUT_MILLIS = Math.max(0, ConfigUtils.getInt(cfg, HANDSHAKE_TIMEOUT_PNAME, 30000));
+
+        int handshakeThreads = ConfigUtils.getInt(cfg, HANDSHAKE_THREADS_PNAME, 4);
+        connectExecutor = ExecutorFactory.createFixedThreadPool(Math.max(1, handshakeThreads),
+                DtlsPacketTransformer.class.getName() + ".connect-");
     }
 
     /**
@@ -178,9 +215,9 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
     private AbstractRTPConnector mConnector;
 
     /**
-     * The background <code>Thread</code> which initializes {@link #mDtlsTransport}.
+     * The task run by {@link #connectExecutor} which initializes {@link #mDtlsTransport}.
      */
-    private Thread connectThread;
+    private Runnable connectTask;
 
     /**
      * The <code>DatagramTransport</code> implementation which adapts {@link #mConnector} and this
@@ -287,14 +324,15 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
     }
 
     /**
-     * Determines whether {@link #runInConnectThread(DTLSProtocol, TlsPeer, DatagramTransport)} is
+     * Determines whether {@link #runConnectTask(Runnable, DTLSProtocol, TlsPeer, DatagramTransport)} is
      * to try to establish a DTLS connection.
      *
+     * @param task the connect task which is running
      * @param i the number of tries remaining after the current one
      * @param datagramTransport object sending and receiving DTLS data
      * @return <code>true</code> to try to establish a DTLS connection; otherwise, <code>false</code>
      */
-    private boolean enterRunInConnectThreadLoop(int i, DatagramTransport datagramTransport)
+    private boolean enterRunConnectTaskLoop(Runnable task, int i, DatagramTransport datagramTransport)
     {
         if ((i < 0) || (i > CONNECT_TRIES)) {
             return false;
@@ -313,7 +351,7 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
                     if (interrupted)
                         currentThread.interrupt();
                 }
-                return currentThread.equals(this.connectThread)
+                return task.equals(this.connectTask)
                         && datagramTransport.equals(this.datagramTransport);
             }
         }
@@ -368,7 +406,7 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
                 if (srtpTransformer != null)
                     break; // _srtpTransformer is initialized
 
-                if (connectThread == null) {
+                if (connectTask == null) {
                     // Though _srtpTransformer is NOT initialized, there is no
                     // point in waiting because there is no one to initialize it.
                     break;
@@ -400,14 +438,15 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
 
     /**
      * Handles a specific <code>IOException</code> which was thrown during the execution of
-     * {@link #runInConnectThread(DTLSProtocol, TlsPeer, DatagramTransport)} while trying to establish a DTLS connection
+     * {@link #runConnectTask(Runnable, DTLSProtocol, TlsPeer, DatagramTransport)} while trying to establish a DTLS connection
      *
+     * @param task the connect task which is running
      * @param ioe the <code>IOException</code> to handle
      * @param msg the human-readable message to log about the specified <code>ioe</code>
      * @param i the number of tries remaining after the current one
      * @return <code>true</code> if the specified <code>ioe</code> was successfully handled; <code>false</code>, otherwise
      */
-    private boolean handleRunInConnectThreadException(IOException ioe, String msg, int i)
+    private boolean handleRunConnectTaskException(Runnable task, IOException ioe, String msg, int i)
     {
         /*
          * SrtpControl.start(MediaType) starts its associated TransformEngine. We will use that
@@ -423,7 +462,7 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
 
             if (alertDescription == AlertDescription.unexpected_message) {
                 msg += " Received fatal unexpected message.";
-                if ((i == 0) || !Thread.currentThread().equals(connectThread)
+                if ((i == 0) || !task.equals(connectTask)
                         || (mConnector == null)
                         || (mediaType == null)) {
                     msg += " Giving up after " + (CONNECT_TRIES - i) + " retries.";
@@ -851,13 +890,15 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
     }
 
     /**
-     * Runs in {@link #connectThread} to initialize {@link #mDtlsTransport}.
+     * Runs as {@link #connectTask} to initialize {@link #mDtlsTransport}.
      *
+     * @param task the connect task which is running
      * @param dtlsProtocol server or client TLS protocol
      * @param tlsPeer TLS peer
      * @param datagramTransport UDP DatagramTransport
      */
-    private void runInConnectThread(DTLSProtocol dtlsProtocol, TlsPeer tlsPeer, DatagramTransport datagramTransport)
+    private void runConnectTask(Runnable task, DTLSProtocol dtlsProtocol, TlsPeer tlsPeer,
+            DatagramTransport datagramTransport)
     {
         // DTLS client
         if (dtlsProtocol instanceof DTLSClientProtocol) {
@@ -865,13 +906,13 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
             TlsClientImpl tlsClient = (TlsClientImpl) tlsPeer;
 
             for (int i = CONNECT_TRIES - 1; i >= 0; i--) {
-                if (!enterRunInConnectThreadLoop(i, datagramTransport))
+                if (!enterRunConnectTaskLoop(task, i, datagramTransport))
                     break;
                 try {
                     mDtlsTransport = dtlsClientProtocol.connect(tlsClient, datagramTransport);
                     break;
                 } catch (IOException ioe) {
-                    if (handleRunInConnectThreadException(ioe, "Failed to connect DTLS client to server!", i)) {
+                    if (handleRunConnectTaskException(task, ioe, "Failed to connect DTLS client to server!", i)) {
                         break;
                     }
                 }
@@ -884,13 +925,13 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
             TlsServerImpl tlsServer = (TlsServerImpl) tlsPeer;
 
             for (int i = CONNECT_TRIES - 1; i >= 0; i--) {
-                if (!enterRunInConnectThreadLoop(i, datagramTransport))
+                if (!enterRunConnectTaskLoop(task, i, datagramTransport))
                     break;
                 try {
                     mDtlsTransport = dtlsServerProtocol.accept(tlsServer, datagramTransport);
                     break;
                 } catch (IOException ioe) {
-                    if (handleRunInConnectThreadException(ioe, "Failed to accept DTLS client connection!", i)) {
+                    if (handleRunConnectTaskException(task, ioe, "Failed to accept DTLS client connection!", i)) {
                         break;
                     }
                 }
@@ -1013,7 +1054,7 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
     private synchronized void start()
     {
         if (this.datagramTransport != null) {
-            if ((this.connectThread == null) && (mDtlsTransport == null)) {
+            if ((this.connectTask == null) && (mDtlsTransport == null)) {
                 Timber.w("%s has been started but has failed to establish the DTLS connection!",
                         getClass().getName());
             }
@@ -1050,36 +1091,33 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
         final DatagramTransportImpl datagramTransport = new DatagramTransportImpl(componentID);
         datagramTransport.setConnector(connector);
 
-        Thread connectThread = new Thread()
+        Runnable connectTask = new Runnable()
         {
             @Override
             public void run()
             {
                 try {
-                    runInConnectThread(dtlsProtocol, tlsPeer, datagramTransport);
+                    runConnectTask(this, dtlsProtocol, tlsPeer, datagramTransport);
                 } finally {
-                    if (Thread.currentThread().equals(DtlsPacketTransformer.this.connectThread)) {
-                        DtlsPacketTransformer.this.connectThread = null;
+                    if (this.equals(DtlsPacketTransformer.this.connectTask)) {
+                        DtlsPacketTransformer.this.connectTask = null;
                         getDtlsControl().secureOnOff(getSecureCommunicationStatus());
                     }
                 }
             }
         };
 
-        connectThread.setDaemon(true);
-        connectThread.setName(DtlsPacketTransformer.class.getName() + ".connectThread");
-
-        this.connectThread = connectThread;
+        this.connectTask = connectTask;
         this.datagramTransport = datagramTransport;
         boolean started = false;
 
         try {
-            connectThread.start();
+            connectExecutor.execute(connectTask);
             started = true;
         } finally {
             if (!started) {
-                if (connectThread.equals(this.connectThread))
-                    this.connectThread = null;
+                if (connectTask.equals(this.connectTask))
+                    this.connectTask = null;
                 if (datagramTransport.equals(this.datagramTransport))
                     this.datagramTransport = null;
             }
@@ -1093,8 +1131,8 @@ public class DtlsPacketTransformer implements PacketTransformer, PropertyChangeL
     private synchronized void stop()
     {
         mStarted = false;
-        if (connectThread != null)
-            connectThread = null;
+        if (connectTask != null)
+            connectTask = null;
         try {
             /*
              * The dtlsTransport and srtpTransformer SHOULD be closed, of course. The datagramTransport MUST be closed.
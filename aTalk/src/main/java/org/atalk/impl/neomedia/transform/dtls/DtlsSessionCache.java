@@ -0,0 +1,183 @@
+/*
+ * Jitsi, the OpenSource Java VoIP and Instant Messaging client.
+ *
+ * Distributable under LGPL license. See terms of license at gnu.org.
+ */
+package org.atalk.impl.neomedia.transform.dtls;
+
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.util.ConfigUtils;
+import org.bouncycastle.tls.TlsSRTPUtils;
+import org.bouncycastle.tls.TlsSession;
+import org.bouncycastle.tls.UseSRTPData;
+import org.bouncycastle.util.encoders.Hex;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the resumable DTLS sessions established with the remote endpoints so that a later handshake
+ * with the same endpoint, e.g. on a re-call or a re-connection of the transport, is an abbreviated one
+ * without any certificate, key exchange or signature. A resumed session presents no
+ * certificate, so the sessions are keyed by {@link DtlsControlImpl#getSessionCacheKey()} i.e. by the
+ * local certificate and the remote fingerprints declared over the signaling path: a session is only
+ * resumed with an endpoint which has declared the fingerprint its certificate has been verified against.
+ *
+ * @author Eng Chong Meng
+ */
+class DtlsSessionCache {
+    /**
+     * The name of the property which specifies the time in milliseconds during which an established
+     * DTLS session may be resumed.
+     */
+    public static final String SESSION_CACHE_EXPIRE_TIME_PNAME = "neomedia.transform.dtls.SESSION_CACHE_EXPIRE_TIME";
+
+    /**
+     * The default value of {@link #SESSION_CACHE_EXPIRE_TIME_PNAME}: one hour.
+     */
+    private static final long DEFAULT_SESSION_CACHE_EXPIRE_TIME = 1000L * 60L * 60L;
+
+    /**
+     * The maximum number of sessions cached for each of the DTLS client and server roles.
+     */
+    private static final int SESSION_CACHE_CAPACITY = 64;
+
+    /**
+     * The time in milliseconds during which an established DTLS session may be resumed.
+     */
+    private static final long SESSION_CACHE_EXPIRE_TIME = ConfigUtils.getLong(
+            LibJitsi.getConfigurationService(), SESSION_CACHE_EXPIRE_TIME_PNAME, DEFAULT_SESSION_CACHE_EXPIRE_TIME);
+
+    /**
+     * A cached session and the endpoint it has been established with.
+     */
+    private static class Entry {
+        final String key;
+        final TlsSession session;
+        final long expires;
+
+        Entry(String key, TlsSession session) {
+            this.key = key;
+            this.session = session;
+            this.expires = System.currentTimeMillis() + SESSION_CACHE_EXPIRE_TIME;
+        }
+
+        boolean isResumable() {
+            return session.isResumable() && (System.currentTimeMillis() < expires);
+        }
+    }
+
+    /**
+     * The sessions established as DTLS client, by the session cache key of the endpoint; guarded by the class.
+     */
+    private static final Map<String, Entry> clientSessions = newSessionMap();
+
+    /**
+     * The sessions established as DTLS server, by the hex of their session ID; guarded by the class.
+     */
+    private static final Map<String, Entry> serverSessions = newSessionMap();
+
+    /**
+     * Creates a session map which drops its least recently used entry beyond {@link #SESSION_CACHE_CAPACITY}.
+     *
+     * @return a new session map
+     */
+    private static Map<String, Entry> newSessionMap() {
+        return new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > SESSION_CACHE_CAPACITY;
+            }
+        };
+    }
+
+    /**
+     * Returns the session to offer for resumption to an endpoint as DTLS client.
+     *
+     * @param key the session cache key of the endpoint; may be <code>null</code>
+     *
+     * @return the resumable session established with the endpoint or <code>null</code>
+     */
+    static synchronized TlsSession getClientSession(String key) {
+        if (key == null)
+            return null;
+
+        Entry entry = clientSessions.get(key);
+        if (entry == null)
+            return null;
+
+        if (!entry.isResumable()) {
+            clientSessions.remove(key);
+            return null;
+        }
+        return entry.session;
+    }
+
+    /**
+     * Caches a session established with an endpoint as DTLS client.
+     *
+     * @param key the session cache key of the endpoint; may be <code>null</code>
+     * @param session the resumable session; may be <code>null</code>
+     */
+    static synchronized void putClientSession(String key, TlsSession session) {
+        if ((key != null) && (session != null) && session.isResumable())
+            clientSessions.put(key, new Entry(key, session));
+    }
+
+    /**
+     * Returns the session requested for resumption by an endpoint, as DTLS server.
+     *
+     * @param key the session cache key of the endpoint; may be <code>null</code>
+     * @param sessionID the ID of the session which the DTLS client offers to resume
+     *
+     * @return the resumable session or <code>null</code> if it has not been established with the endpoint.
+     */
+    static synchronized TlsSession getServerSession(String key, byte[] sessionID) {
+        if ((key == null) || (sessionID == null) || (sessionID.length == 0))
+            return null;
+
+        String id = Hex.toHexString(sessionID);
+        Entry entry = serverSessions.get(id);
+        if (entry == null)
+            return null;
+
+        if (!entry.isResumable()) {
+            serverSessions.remove(id);
+            return null;
+        }
+        return entry.key.equals(key) ? entry.session : null;
+    }
+
+    /**
+     * Caches a session established with an endpoint as DTLS server.
+     *
+     * @param key the session cache key of the endpoint; may be <code>null</code>
+     * @param session the resumable session; may be <code>null</code>
+     */
+    static synchronized void putServerSession(String key, TlsSession session) {
+        if ((key != null) && (session != null) && session.isResumable()) {
+            byte[] sessionID = session.getSessionID();
+            if ((sessionID != null) && (sessionID.length != 0))
+                serverSessions.put(Hex.toHexString(sessionID), new Entry(key, session));
+        }
+    }
+
+    /**
+     * Returns the SRTP protection profile negotiated by the full handshake of a session. The DTLS stack
+     * does not process the hello extensions of an abbreviated handshake, those of the resumed session apply.
+     *
+     * @param session the resumed session
+     *
+     * @return the negotiated <code>SRTPProtectionProfile</code> or <code>0</code> if none.
+     * @throws IOException if the extensions of the session cannot be read
+     */
+    static int getProtectionProfile(TlsSession session)
+            throws IOException {
+        UseSRTPData useSRTPData
+                = TlsSRTPUtils.getUseSRTPExtension(session.exportSessionParameters().readServerExtensions());
+        if ((useSRTPData == null) || (useSRTPData.getProtectionProfiles().length != 1))
+            return 0;
+        return DtlsControlImpl.chooseSRTPProtectionProfile(useSRTPData.getProtectionProfiles()[0]);
+    }
+}
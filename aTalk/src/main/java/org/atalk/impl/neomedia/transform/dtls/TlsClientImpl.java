@@ -19,6 +19,7 @@ import org.bouncycastle.tls.TlsCredentials;
 import org.bouncycastle.tls.TlsFatalAlert;
 import org.bouncycastle.tls.TlsSRTPUtils;
 import org.bouncycastle.tls.TlsServerCertificate;
+import org.bouncycastle.tls.TlsSession;
 import org.bouncycastle.tls.TlsUtils;
 import org.bouncycastle.tls.UseSRTPData;
 import org.bouncycastle.tls.crypto.TlsCrypto;
@@ -60,6 +61,16 @@ public class TlsClientImpl extends DefaultTlsClient
      */
     private final DtlsPacketTransformer mPacketTransformer;
 
+    /**
+     * The key under which the session with the server is cached for resumption.
+     */
+    private String mSessionCacheKey;
+
+    /**
+     * Whether the certificate of the server has matched the fingerprints declared over the signaling path.
+     */
+    private boolean mServerVerified = false;
+
     /**
      * Initializes a new <code>TlsClientImpl</code> instance.
      *
@@ -80,6 +91,32 @@ public class TlsClientImpl extends DefaultTlsClient
         return authentication;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Bounds the handshake, so that an unresponsive server does not hold a handshake thread.
+     */
+    @Override
+    public int getHandshakeTimeoutMillis()
+    {
+        return DtlsPacketTransformer.HANDSHAKE_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Offers the session last established with the same server, if any, for an abbreviated handshake.
+     */
+    @Override
+    public TlsSession getSessionToResume()
+    {
+        mSessionCacheKey = mPacketTransformer.getDtlsControl().getSessionCacheKey();
+        TlsSession session = DtlsSessionCache.getClientSession(mSessionCacheKey);
+        if (session != null)
+            Timber.d("Offering to resume the DTLS session with the server.");
+        return session;
+    }
+
     /**
      * {@inheritDoc}
      * The implementation of <code>TlsClientImpl</code> always returns <code>ProtocolVersion.DTLSv12 & DTLSv10</code>
@@ -135,12 +172,20 @@ public class TlsClientImpl extends DefaultTlsClient
 
     @Override
     public void notifyHandshakeComplete()
+            throws IOException
     {
+        // A resumed session is already cached; a new one only if the server has been authenticated.
+        if (mServerVerified)
+            DtlsSessionCache.putClientSession(mSessionCacheKey, context.getResumableSession());
+
         if (isSrtpDisabled()) {
             // SRTP is disabled, nothing to do. Why did we get here in the first place?
             return;
         }
 
+        if (context.getSecurityParametersConnection().isResumedSession())
+            mChosenProtectionProfile = DtlsSessionCache.getProtectionProfile(context.getSession());
+
         SinglePacketTransformer srtpTransformer
                 = mPacketTransformer.initializeSRTPTransformer(mChosenProtectionProfile, context);
         synchronized (mPacketTransformer) {
@@ -247,7 +292,8 @@ public class TlsClientImpl extends DefaultTlsClient
                 throws IOException
         {
             try {
-                mPacketTransformer.getDtlsControl().verifyAndValidateCertificate(serverCertificate.getCertificate());
+                mServerVerified = mPacketTransformer.getDtlsControl()
+                        .verifyAndValidateCertificate(serverCertificate.getCertificate());
             } catch (Exception e) {
                 Timber.e(e, "Failed to verify and/or validate server certificate!");
                 if (e instanceof IOException)
@@ -29,6 +29,7 @@ import org.bouncycastle.tls.TlsFatalAlert;
 import org.bouncycastle.tls.TlsSRTPUtils;
 import org.bouncycastle.tls.TlsServer;
 import org.bouncycastle.tls.TlsServerContext;
+import org.bouncycastle.tls.TlsSession;
 import org.bouncycastle.tls.TlsUtils;
 import org.bouncycastle.tls.UseSRTPData;
 import org.bouncycastle.tls.crypto.TlsCrypto;
@@ -90,6 +91,16 @@ public class TlsServerImpl extends DefaultTlsServer {
      */
     private TlsCredentialedSigner ecdsaSignerCredentials;
 
+    /**
+     * The key under which the session with the client is cached for resumption.
+     */
+    private String mSessionCacheKey;
+
+    /**
+     * Whether the certificate of the client has matched the fingerprints declared over the signaling path.
+     */
+    private boolean mClientVerified = false;
+
     /**
      * Initializes a new <code>TlsServerImpl</code> instance.
      *
@@ -170,6 +181,40 @@ public class TlsServerImpl extends DefaultTlsServer {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Bounds the handshake, so that an unresponsive client does not hold a handshake thread.
+     */
+    @Override
+    public int getHandshakeTimeoutMillis() {
+        return DtlsPacketTransformer.HANDSHAKE_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Resumes the session requested by the client only if it has been established with the same endpoint.
+     */
+    @Override
+    public TlsSession getSessionToResume(byte[] sessionID) {
+        mSessionCacheKey = getDtlsControl().getSessionCacheKey();
+        TlsSession session = DtlsSessionCache.getServerSession(mSessionCacheKey, sessionID);
+        if (session != null)
+            Timber.d("Resuming the DTLS session requested by the client.");
+        return session;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Assigns an ID to the new sessions, as none is by default, so that the client may resume them.
+     */
+    @Override
+    public byte[] getNewSessionID() {
+        return context.getNonceGenerator().generateNonce(32);
+    }
+
     /**
      * {@inheritDoc}
      * The implementation of <code>TlsServerImpl</code> always returns <code>ProtocolVersion.DTLSv12 & DTLSv10</code>
@@ -498,6 +543,15 @@ public class TlsServerImpl extends DefaultTlsServer {
     public void notifyHandshakeComplete()
             throws IOException {
         super.notifyHandshakeComplete();
+
+        // A resumed session is already cached; a new one only if the client has been authenticated.
+        if (mClientVerified) {
+            if (mSessionCacheKey == null)
+                mSessionCacheKey = getDtlsControl().getSessionCacheKey();
+            DtlsSessionCache.putServerSession(mSessionCacheKey, context.getResumableSession());
+        }
+        if (context.getSecurityParametersConnection().isResumedSession())
+            chosenProtectionProfile = DtlsSessionCache.getProtectionProfile(context.getSession());
         mPacketTransformer.initializeSRTPTransformer(getChosenProtectionProfile(), context);
     }
 
@@ -508,7 +562,7 @@ public class TlsServerImpl extends DefaultTlsServer {
     public void notifyClientCertificate(Certificate clientCertificate)
             throws IOException {
         try {
-            getDtlsControl().verifyAndValidateCertificate(clientCertificate);
+            mClientVerified = getDtlsControl().verifyAndValidateCertificate(clientCertificate);
         } catch (Exception e) {
             Timber.e(e, "Failed to verify and/or validate client certificate!");
             if (e instanceof IOException)
@@ -85,6 +85,38 @@ public interface MediaStreamStats {
      */
     int getJitterBufferDelayPackets();
 
+    /**
+     * Returns the delay in milliseconds which the adaptive jitter buffer aims at, or <code>0</code> if
+     * the adaptive jitter buffer of neomedia is not in use.
+     *
+     * @return the target delay in milliseconds of the adaptive jitter buffer
+     */
+    int getJitterBufferTargetDelayMs();
+
+    /**
+     * Returns the percentage of the played out audio which has been concealed by the adaptive
+     * jitter buffer because the packets were lost or late.
+     *
+     * @return the percentage of the played out audio which has been concealed
+     */
+    double getJitterBufferConcealedPercent();
+
+    /**
+     * Returns the percentage of the played out audio which has been removed by the adaptive jitter
+     * buffer in order to decrease its delay.
+     *
+     * @return the percentage of the played out audio which has been removed by time stretching
+     */
+    double getJitterBufferAcceleratedPercent();
+
+    /**
+     * Returns the percentage of the played out audio which has been inserted by the adaptive jitter
+     * buffer in order to increase its delay.
+     *
+     * @return the percentage of the played out audio which has been inserted by time stretching
+     */
+    double getJitterBufferDeceleratedPercent();
+
     /**
      * Returns the local IP address of the <code>MediaStream</code>.
      *
@@ -15,6 +15,7 @@
  */
 package org.atalk.service.neomedia;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
 import net.sf.fmj.media.rtp.RTPHeader;
@@ -52,6 +53,13 @@ public class RawPacket implements ByteArrayBuffer {
      */
     public static final int EXT_HEADER_SIZE = 4;
 
+    /**
+     * The number of bytes which are left free in front of the header when {@link #addExtension}
+     * or {@link #setCsrcList} has to allocate a new buffer, so that the following additions can
+     * grow the header in place.
+     */
+    private static final int HEADER_HEADROOM = 32;
+
     /**
      * The size of the fixed part of the RTP header as defined by RFC 3550.
      */
@@ -99,6 +107,44 @@ public class RawPacket implements ByteArrayBuffer {
      */
     private int offset;
 
+    /**
+     * The buffer described by {@link #extensionIndex} or <code>null</code> if the index is invalid.
+     */
+    private byte[] extensionIndexBuffer;
+
+    /**
+     * The end of the RTP header described by {@link #extensionIndex} relative to {@link #offset}.
+     */
+    private int extensionIndexEnd;
+
+    /**
+     * The first byte (with the extension bit and the CSRC count) of the RTP header described by
+     * {@link #extensionIndex}.
+     */
+    private byte extensionIndexFirstByte;
+
+    /**
+     * Whether the RTP header described by {@link #extensionIndex} has no extensions or RFC 5285
+     * one-byte header extensions, which are the ones indexed.
+     */
+    private boolean extensionIndexOneByte;
+
+    /**
+     * The end of the last element of the RTP header extensions described by {@link #extensionIndex}
+     * relative to {@link #offset}; the space from there to {@link #extensionIndexEnd} is padding.
+     */
+    private int extensionIndexUsed;
+
+    /**
+     * The index of the RFC 5285 one-byte header extensions of this packet by extension ID, built in
+     * one pass by {@link #indexExtensions()} and reused until the header changes: the offset of
+     * the data of the extension relative to {@link #offset} shifted left by 5 bits, plus the
+     * length of the data; <code>0</code> if there is no extension with the ID. The methods of this
+     * class which change the header invalidate it; so does a change of the first byte of the
+     * header, but other direct writes into the header extensions through {@link #getBuffer()} do not.
+     */
+    private int[] extensionIndex;
+
     /**
      * A {@link HeaderExtensions} instance, used to iterate over the RTP header extensions of this {@link RawPacket}.
      */
@@ -129,7 +175,6 @@ public class RawPacket implements ByteArrayBuffer {
         this.buffer = buffer;
         this.offset = offset;
         this.length = length;
-        headerExtensions = new HeaderExtensions();
     }
 
     /**
@@ -324,8 +369,14 @@ public class RawPacket implements ByteArrayBuffer {
 
     /**
      * Adds an RTP header extension with a given ID and a given length to this
-     * packet. The contents of the extension are not set to anything, and the
-     * caller of this method is responsible for filling them in.
+     * packet. The contents of the extension are zeroed, and the caller of this
+     * method is responsible for filling them in.
+     *
+     * The extension is written into the padding of the existing extensions if
+     * it fits there; otherwise the header is moved into the free space before
+     * it or the payload into the free space after it, and a new buffer (with
+     * {@link #HEADER_HEADROOM} for the next additions) is only allocated if
+     * there is not enough of either.
      *
      * This method MUST NOT be called while iterating over the extensions using
      * {@link #getHeaderExtensions()}, or while manipulating the state of this
@@ -340,99 +391,66 @@ public class RawPacket implements ByteArrayBuffer {
         if (id < 1 || id > 15 || len < 1 || len > 16) {
             throw new IllegalArgumentException("id=" + id + " len=" + len);
         }
+        if (!indexExtensions()) {
+            throw new IllegalStateException("Not RFC 5285 one-byte header extensions");
+        }
 
         // The byte[] of a RawPacket has the following structure:
         // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
         // | A: unused | B: hdr + ext | C: payload | D: unused |
         // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
-        // And the regions have the following sizes:
-        // A: this.offset
-        // B: this.getHeaderLength()
-        // C: this.getPayloadLength()
-        // D: this.buffer.length - this.length - this.offset
-        // We will try to extend the packet so that it uses A and/or D if
-        // possible, in order to avoid allocating new memory.
-
-        // We get this early, before we modify the buffer.
-        int payloadLength = getPayloadLength();
-        boolean extensionBit = getExtensionBit();
+        // B ends with the padding of the extensions, which is where the new
+        // extension goes if it fits. Otherwise B has to grow into A (moving
+        // the header to the left) or into D (moving the payload to the
+        // right), and only if neither is big enough a new buffer is needed.
+        HeaderExtension he = getHeaderExtensionInstance();
         int extHeaderOffset = FIXED_HEADER_SIZE + 4 * getCsrcCount();
+        boolean extensionBit = getExtensionBit();
+        int used = extensionBit ? extensionIndexUsed : (extHeaderOffset + EXT_HEADER_SIZE);
+
+        if (extensionBit && extensionIndexEnd - used >= 1 + len) {
+            int elementOffset = offset + used;
+
+            buffer[elementOffset] = (byte) ((id & 0x0f) << 4 | (len - 1) & 0x0f);
+            Arrays.fill(buffer, elementOffset + 1, elementOffset + 1 + len, (byte) 0);
+            if (extensionIndex[id] == 0)
+                extensionIndex[id] = ((used + 1) << 5) | len;
+            extensionIndexUsed = used + 1 + len;
+            he.setOffsetLength(elementOffset, len + 1);
+            return he;
+        }
 
-
-        // This is an upper bound on the required length for the packet after
-        // the addition of the new extension. It is easier to calculate than
-        // the exact number, and is relatively close (it may be off by a few
-        // bytes due to padding)
-        int maxRequiredLength
-                = getLength()
-                + (extensionBit ? 0 : EXT_HEADER_SIZE)
-                + 1 /* the 1-byte header of the extension element */
-                + len
-                + 3 /* padding */;
-
+        int headerLength = getHeaderLength();
+        int payloadLength = length - headerLength;
+        int extensionBytes = used - (extHeaderOffset + EXT_HEADER_SIZE) + 1 + len;
+        int paddingBytes = (4 - (extensionBytes % 4)) % 4;
+        int newHeaderLength = extHeaderOffset + EXT_HEADER_SIZE + extensionBytes + paddingBytes;
+        int growth = newHeaderLength - headerLength;
 
         byte[] newBuffer;
-        int newPayloadOffset;
-        if (buffer.length >= maxRequiredLength) {
-            // We don't need a new buffer.
+        int newOffset;
+        if (offset >= growth) {
+            // Region A is enough: move the header to the left.
             newBuffer = buffer;
-
-            if ((offset + getHeaderLength()) >=
-                    (maxRequiredLength - getPayloadLength())) {
-                // If region A (see above) is enough to accommodate the new
-                // packet, then keep the payload where it is.
-                newPayloadOffset = getPayloadOffset();
-            }
-            else {
-                // Otherwise, we have to use region D. To do so, move the
-                // payload to the right.
-                newPayloadOffset = buffer.length - payloadLength;
-                System.arraycopy(buffer, getPayloadOffset(),
-                        buffer, newPayloadOffset,
-                        payloadLength);
-            }
+            newOffset = offset - growth;
         }
-        else {
-            // We need a new buffer. We will place the payload to the very right.
-            newBuffer = new byte[maxRequiredLength];
-            newPayloadOffset = newBuffer.length - payloadLength;
-            System.arraycopy(buffer, getPayloadOffset(),
-                    newBuffer, newPayloadOffset,
-                    payloadLength);
+        else if (buffer.length - offset - length >= growth) {
+            // Region D is enough: move the payload to the right.
+            newBuffer = buffer;
+            newOffset = offset;
+            System.arraycopy(buffer, offset + headerLength,
+                    buffer, offset + newHeaderLength, payloadLength);
         }
-
-        // By now we have the payload in a position which leaves enough space
-        // for the whole new header.
-        // Next, we are going to construct a new header + extensions (including
-        // the one we are adding) at offset 0, and once finished, we will move
-        // them to the correct offset.
-
-
-        int newHeaderLength = extHeaderOffset;
-        // The bytes in the header extensions, excluding the (0xBEDE, length)
-        // field and any padding.
-        int extensionBytes = 0;
-        if (extensionBit) {
-            // (0xBEDE, length)
-            newHeaderLength += 4;
-
-            // We can't find the actual length without an iteration because
-            // of padding. It is safe to iterate, because we have not yet
-            // modified the header (we only might have moved the offset right)
-            HeaderExtensions hes = getHeaderExtensions();
-            while (hes.hasNext()) {
-                HeaderExtension he = hes.next();
-                // 1 byte for id/len + data
-                extensionBytes += 1 + he.getExtLength();
-            }
-
-            newHeaderLength += extensionBytes;
+        else {
+            newBuffer = new byte[HEADER_HEADROOM + newHeaderLength + payloadLength];
+            newOffset = HEADER_HEADROOM;
+            System.arraycopy(buffer, offset + headerLength,
+                    newBuffer, newOffset + newHeaderLength, payloadLength);
         }
 
-        // Copy the header (and extensions, excluding padding, if there are any)
-        System.arraycopy(buffer, offset,
-                newBuffer, 0,
-                newHeaderLength);
+        // Copy the header and the existing extensions, without their padding.
+        System.arraycopy(buffer, offset, newBuffer, newOffset,
+                extensionBit ? used : extHeaderOffset);
 
         if (!extensionBit) {
             // If the original packet didn't have any extensions, we need to
@@ -442,56 +460,29 @@ public class RawPacket implements ByteArrayBuffer {
             // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
             // |       0xBE    |    0xDE       |           length              |
             // +-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+-+
-            RTPUtils.writeShort(newBuffer, extHeaderOffset, (short) 0xBEDE);
-            // We will set the length field later.
-            newHeaderLength += 4;
+            RTPUtils.writeShort(newBuffer, newOffset + extHeaderOffset, (short) 0xBEDE);
         }
-
-        // Finally we get to add our extension.
-        newBuffer[newHeaderLength++]
-                = (byte) ((id & 0x0f) << 4 | (len - 1) & 0x0f);
-        extensionBytes++;
-
-        // This is where the data of the extension that we add begins. We just
-        // skip 'len' bytes, and let the caller fill them in. We have to go
-        // back one byte, because newHeaderLength already moved.
-        int extensionDataOffset = newHeaderLength - 1;
-        newHeaderLength += len;
-        extensionBytes += len;
-
-        int paddingBytes = (4 - (extensionBytes % 4)) % 4;
-        for (int i = 0; i < paddingBytes; i++) {
-            // Set the padding to 0 (we have to do this because we may be
-            // reusing a buffer).
-            newBuffer[newHeaderLength++] = 0;
-        }
-
-        RTPUtils.writeShort(newBuffer, extHeaderOffset + 2,
+        RTPUtils.writeShort(newBuffer, newOffset + extHeaderOffset + 2,
                 (short) ((extensionBytes + paddingBytes) / 4));
 
-        // Now we have the new header, with the added header extension and with
-        // the correct padding, in newBuffer at offset 0. Lets move it to the
-        // correct place (right before the payload).
-        int newOffset = newPayloadOffset - newHeaderLength;
-        if (newOffset != 0) {
-            System.arraycopy(newBuffer, 0,
-                    newBuffer, newOffset,
-                    newHeaderLength);
-        }
+        // Finally we get to add our (zeroed) extension, followed by the
+        // padding (which we have to zero because we may be reusing a buffer).
+        int elementOffset = newOffset + used;
+        newBuffer[elementOffset] = (byte) ((id & 0x0f) << 4 | (len - 1) & 0x0f);
+        Arrays.fill(newBuffer, elementOffset + 1, newOffset + newHeaderLength, (byte) 0);
 
         // All that is left to do is update the RawPacket state.
-        setBuffer(newBuffer);
+        if (newBuffer != buffer)
+            setBuffer(newBuffer);
         this.offset = newOffset;
         this.length = newHeaderLength + payloadLength;
 
         // ... and set the extension bit.
         setExtensionBit(true);
+        invalidateExtensionIndex();
 
-        // Setup the single HeaderExtension instance of this RawPacket and
-        // return it.
-        HeaderExtension he = getHeaderExtensions().headerExtension;
-        he.setOffset(getOffset() + extensionDataOffset);
-        he.setLength(len + 1);
+        he.buffer = buffer;
+        he.setOffsetLength(elementOffset, len + 1);
         return he;
     }
 
@@ -546,8 +537,35 @@ public class RawPacket implements ByteArrayBuffer {
          */
         long[] csrcLevels = new long[csrcCount * 2];
 
+        extractCsrcAudioLevels(csrcExtID, csrcLevels);
+        return csrcLevels;
+    }
+
+    /**
+     * Writes the CSRC IDs and the audio levels reported for them by the remote
+     * party that sent this packet into a specific (pooled) array, in the form
+     * returned by {@link #extractCsrcAudioLevels(byte)}.
+     *
+     * @param csrcExtID the ID of the extension that's transporting csrc audio
+     * levels in the session that this <code>RawPacket</code> belongs to.
+     * @param csrcLevels the array to write into; at most
+     * <code>csrcLevels.length / 2</code> CSRCs are written.
+     *
+     * @return the number of CSRCs written into <code>csrcLevels</code>, which
+     * is <code>0</code> if this packet carries no audio levels.
+     */
+    public int extractCsrcAudioLevels(byte csrcExtID, long[] csrcLevels) {
+        if (!getExtensionBit() || (getExtensionLength() == 0))
+            return 0;
+
+        int csrcCount = Math.min(getCsrcCount(), csrcLevels.length / 2);
+        // With one-byte header extensions, the levels are looked up only once.
+        boolean indexed = indexExtensions();
+        int levelsOffset = indexed ? getExtensionDataOffset(csrcExtID) : -1;
+        int levelsCount = (levelsOffset < 0) ? 0 : getExtensionDataLength(csrcExtID);
+
         //first extract the csrc IDs
-        for (int i = 0, csrcStartIndex = offset + FIXED_HEADER_SIZE;
+        for (int i = 0, csrcStartIndex = FIXED_HEADER_SIZE;
              i < csrcCount;
              i++, csrcStartIndex += 4) {
             int csrcLevelsIndex = 2 * i;
@@ -559,10 +577,13 @@ public class RawPacket implements ByteArrayBuffer {
              * value domain. Which means that the audio level generated from a
              * muted audio source is 0/zero.
              */
-            csrcLevels[csrcLevelsIndex + 1] = getCsrcAudioLevel(csrcExtID, i, (byte) 0);
+            if (indexed)
+                csrcLevels[csrcLevelsIndex + 1] = (i < levelsCount) ? (0x7F & buffer[levelsOffset + i]) : 0;
+            else
+                csrcLevels[csrcLevelsIndex + 1] = getCsrcAudioLevel(csrcExtID, i, (byte) 0);
         }
 
-        return csrcLevels;
+        return csrcCount;
     }
 
     /**
@@ -571,16 +592,30 @@ public class RawPacket implements ByteArrayBuffer {
      * @return an array containing the list of CSRC IDs, currently encapsulated in this packet.
      */
     public long[] extractCsrcList() {
-        int csrcCount = getCsrcCount();
-        long[] csrcList = new long[csrcCount];
+        long[] csrcList = new long[getCsrcCount()];
+
+        extractCsrcList(csrcList);
+        return csrcList;
+    }
+
+    /**
+     * Writes the list of CSRC IDs currently encapsulated in this packet into a
+     * specific (pooled) array.
+     *
+     * @param csrcList the array to write into.
+     *
+     * @return the number of CSRC IDs written into <code>csrcList</code>.
+     */
+    public int extractCsrcList(long[] csrcList) {
+        int csrcCount = Math.min(getCsrcCount(), csrcList.length);
 
-        for (int i = 0, csrcStartIndex = offset + FIXED_HEADER_SIZE;
+        for (int i = 0, csrcStartIndex = FIXED_HEADER_SIZE;
              i < csrcCount;
              i++, csrcStartIndex += 4) {
             csrcList[i] = readInt(csrcStartIndex);
         }
 
-        return csrcList;
+        return csrcCount;
     }
 
     /**
@@ -619,7 +654,12 @@ public class RawPacket implements ByteArrayBuffer {
      */
     private int findExtension(int extensionID) {
         if (!getExtensionBit() || getExtensionLength() == 0)
-            return 0;
+            return -1;
+
+        if (indexExtensions()) {
+            int dataOffset = getExtensionDataOffset(extensionID);
+            return (dataOffset < 0) ? -1 : dataOffset;
+        }
 
         int extOffset = offset + FIXED_HEADER_SIZE
                 + getCsrcCount() * 4 + EXT_HEADER_SIZE;
@@ -676,6 +716,171 @@ public class RawPacket implements ByteArrayBuffer {
         return -1;
     }
 
+    /**
+     * Returns the offset in the buffer of this packet of the data of the RTP
+     * header extension with a specific ID.
+     *
+     * @param id the ID of the extension (an RFC 5285 one-byte header ID).
+     *
+     * @return the offset in {@link #getBuffer()} of the first byte of the data
+     * of the extension with ID <code>id</code> or <code>-1</code> if this
+     * packet does not have such an extension.
+     */
+    public int getExtensionDataOffset(int id) {
+        if (id < 1 || id > 14 || !indexExtensions())
+            return -1;
+
+        int entry = extensionIndex[id];
+        return (entry == 0) ? -1 : (offset + (entry >>> 5));
+    }
+
+    /**
+     * Returns the number of bytes of data of the RTP header extension with a
+     * specific ID.
+     *
+     * @param id the ID of the extension (an RFC 5285 one-byte header ID).
+     *
+     * @return the number of bytes of data of the extension with ID
+     * <code>id</code> or <code>-1</code> if this packet does not have such an
+     * extension.
+     */
+    public int getExtensionDataLength(int id) {
+        if (id < 1 || id > 14 || !indexExtensions())
+            return -1;
+
+        int entry = extensionIndex[id];
+        return (entry == 0) ? -1 : (entry & 0x1f);
+    }
+
+    /**
+     * Reads the data of the RTP header extension with a specific ID as an
+     * unsigned big-endian number, e.g. the 24-bit abs-send-time or the 16-bit
+     * transport-wide sequence number.
+     *
+     * @param id the ID of the extension (an RFC 5285 one-byte header ID).
+     *
+     * @return the value of the extension with ID <code>id</code> or
+     * <code>-1</code> if this packet does not have such an extension or its
+     * data is longer than 7 bytes.
+     */
+    public long readExtensionValue(int id) {
+        int len = getExtensionDataLength(id);
+        if (len < 0 || len > 7)
+            return -1;
+
+        int off = offset + (extensionIndex[id] >>> 5);
+        long value = 0;
+        for (int i = 0; i < len; i++)
+            value = (value << 8) | (buffer[off + i] & 0xFF);
+        return value;
+    }
+
+    /**
+     * Rewrites in place the data of the RTP header extension with a specific
+     * ID with an unsigned big-endian number of the length of the extension.
+     *
+     * @param id the ID of the extension (an RFC 5285 one-byte header ID).
+     * @param value the value to write; only as many of its least significant
+     * bytes as the extension has are written.
+     *
+     * @return <code>true</code> if the extension was rewritten or
+     * <code>false</code> if this packet does not have such an extension.
+     */
+    public boolean writeExtensionValue(int id, long value) {
+        int len = getExtensionDataLength(id);
+        if (len < 0)
+            return false;
+
+        int off = offset + (extensionIndex[id] >>> 5);
+        for (int i = len - 1; i >= 0; i--) {
+            buffer[off + i] = (byte) value;
+            value >>>= 8;
+        }
+        return true;
+    }
+
+    /**
+     * Makes sure that {@link #extensionIndex} describes the RTP header
+     * extensions of this packet, walking them once if the header has changed
+     * since the last time.
+     *
+     * @return <code>true</code> if the extensions of this packet (if any) use
+     * RFC 5285 one-byte headers and are thus indexed, <code>false</code>
+     * otherwise.
+     */
+    private boolean indexExtensions() {
+        if (extensionIndexBuffer == buffer && buffer != null
+                && extensionIndexFirstByte == buffer[offset]) {
+            return extensionIndexOneByte;
+        }
+        if (buffer == null || length < FIXED_HEADER_SIZE)
+            return false;
+
+        if (extensionIndex == null)
+            extensionIndex = new int[16];
+        else
+            Arrays.fill(extensionIndex, 0);
+        extensionIndexBuffer = buffer;
+        extensionIndexFirstByte = buffer[offset];
+        extensionIndexEnd = getHeaderLength();
+        extensionIndexUsed = extensionIndexEnd;
+        extensionIndexOneByte = !getExtensionBit();
+        if (extensionIndexOneByte || getExtensionHeaderLength() != 1)
+            return extensionIndexOneByte;
+
+        int start = FIXED_HEADER_SIZE + getCsrcCount() * 4 + EXT_HEADER_SIZE;
+        int end = start + getExtensionLength();
+        int off = start;
+        int used = start;
+
+        while (off < end) {
+            int b = buffer[offset + off] & 0xFF;
+            int id = b >>> 4;
+
+            if (id == 0) {
+                // Padding.
+                off++;
+                continue;
+            }
+            if (id == 15) {
+                // Reserved; the parsing stops here (RFC 5285).
+                break;
+            }
+
+            int len = (b & 0x0F) + 1;
+            if (off + 1 + len > end)
+                break;
+            if (extensionIndex[id] == 0)
+                extensionIndex[id] = ((off + 1) << 5) | len;
+            off += 1 + len;
+            used = off;
+        }
+        extensionIndexEnd = end;
+        extensionIndexUsed = used;
+        extensionIndexOneByte = true;
+        return true;
+    }
+
+    /**
+     * Invalidates {@link #extensionIndex} if a write to this packet touches the
+     * CSRC list or the extensions; the fixed header fields do not move them.
+     *
+     * @param off the offset of the write relative to {@link #offset}
+     * @param len the number of bytes written
+     */
+    private void headerWritten(int off, int len) {
+        if (off < extensionIndexEnd && off + len > FIXED_HEADER_SIZE)
+            invalidateExtensionIndex();
+    }
+
+    /**
+     * Makes {@link #extensionIndex} be rebuilt on its next use; called by the
+     * methods which change the header of this packet.
+     */
+    private void invalidateExtensionIndex() {
+        extensionIndexBuffer = null;
+    }
+
     /**
      * Get buffer containing the content of this packet
      *
@@ -708,7 +913,7 @@ public class RawPacket implements ByteArrayBuffer {
                 if (levelsStart != -1) {
                     int levelsCount = getLengthForExtension(levelsStart);
 
-                    if (levelsCount < index) {
+                    if (levelsCount <= index) {
                         //apparently the remote side sent more CSRCs than levels.
                         // ... yeah remote sides do that now and then ...
                     }
@@ -1470,6 +1675,7 @@ public class RawPacket implements ByteArrayBuffer {
      * @param val
      */
     public void writeShort(int off, short val) {
+        headerWritten(off, 2);
         RTPUtils.writeShort(buffer, offset + off, val);
     }
 
@@ -1499,6 +1705,7 @@ public class RawPacket implements ByteArrayBuffer {
 
         this.length -= extHeaderLen;
         setExtensionBit(false);
+        invalidateExtensionIndex();
     }
 
     /**
@@ -1506,7 +1713,7 @@ public class RawPacket implements ByteArrayBuffer {
      */
     public void setBuffer(byte[] buffer) {
         this.buffer = buffer;
-        headerExtensions = new HeaderExtensions();
+        invalidateExtensionIndex();
     }
 
     /**
@@ -1518,44 +1725,42 @@ public class RawPacket implements ByteArrayBuffer {
      */
     public void setCsrcList(long[] newCsrcList) {
         int newCsrcCount = newCsrcList.length;
-        byte[] csrcBuff = new byte[newCsrcCount * 4];
-        int csrcOffset = 0;
+        int oldCsrcCount = getCsrcCount();
+        int growth = (newCsrcCount - oldCsrcCount) * 4;
+
+        // The CSRC list sits between the fixed header and the rest of the
+        // packet, so it is the (small) fixed header which is moved: to the
+        // left into the free space before it, or to the right if the list
+        // shrinks. Only if there is no such free space is a new buffer needed.
+        if (growth <= offset) {
+            if (growth != 0) {
+                System.arraycopy(buffer, offset, buffer, offset - growth, FIXED_HEADER_SIZE);
+                offset -= growth;
+                length += growth;
+            }
+        }
+        else {
+            byte[] newBuffer = new byte[HEADER_HEADROOM + length + growth];
+            int restOffset = offset + FIXED_HEADER_SIZE + oldCsrcCount * 4;
 
+            System.arraycopy(buffer, offset, newBuffer, HEADER_HEADROOM, FIXED_HEADER_SIZE);
+            System.arraycopy(buffer, restOffset,
+                    newBuffer, HEADER_HEADROOM + FIXED_HEADER_SIZE + newCsrcCount * 4,
+                    offset + length - restOffset);
+            setBuffer(newBuffer);
+            offset = HEADER_HEADROOM;
+            length += growth;
+        }
+
+        int csrcOffset = offset + FIXED_HEADER_SIZE;
         for (long csrc : newCsrcList) {
-            RTPUtils.writeInt(csrcBuff, csrcOffset, (int) csrc);
+            RTPUtils.writeInt(buffer, csrcOffset, (int) csrc);
             csrcOffset += 4;
         }
 
-        int oldCsrcCount = getCsrcCount();
-        byte[] oldBuffer = this.getBuffer();
-
-        //the new buffer needs to be bigger than the new one in order to
-        //accommodate the list of CSRC IDs (unless there were more of them
-        //previously than after setting the new list).
-        byte[] newBuffer
-                = new byte[length + offset + csrcBuff.length - oldCsrcCount * 4];
-
-        //copy the part up to the CSRC list
-        System.arraycopy(oldBuffer, 0, newBuffer, 0, offset + FIXED_HEADER_SIZE);
-
-        //copy the new CSRC list
-        System.arraycopy(csrcBuff, 0, newBuffer, offset + FIXED_HEADER_SIZE, csrcBuff.length);
-
-        //now copy the payload from the old buff and make sure we don't copy
-        //the CSRC list if there was one in the old packet
-        int payloadOffsetForOldBuff = offset + FIXED_HEADER_SIZE + oldCsrcCount * 4;
-
-        int payloadOffsetForNewBuff = offset + FIXED_HEADER_SIZE + newCsrcCount * 4;
-
-        System.arraycopy(oldBuffer, payloadOffsetForOldBuff,
-                newBuffer, payloadOffsetForNewBuff,
-                length - payloadOffsetForOldBuff);
-
         //set the new CSRC count
-        newBuffer[offset] = (byte) ((newBuffer[offset] & 0xF0) | newCsrcCount);
-
-        setBuffer(newBuffer);
-        this.length = payloadOffsetForNewBuff + length - payloadOffsetForOldBuff - offset;
+        buffer[offset] = (byte) ((buffer[offset] & 0xF0) | newCsrcCount);
+        invalidateExtensionIndex();
     }
 
     /**
@@ -1589,6 +1794,7 @@ public class RawPacket implements ByteArrayBuffer {
     @Override
     public void setLength(int length) {
         this.length = length;
+        invalidateExtensionIndex();
     }
 
     /**
@@ -1611,6 +1817,7 @@ public class RawPacket implements ByteArrayBuffer {
     @Override
     public void setOffset(int offset) {
         this.offset = offset;
+        invalidateExtensionIndex();
     }
 
     /**
@@ -1674,6 +1881,7 @@ public class RawPacket implements ByteArrayBuffer {
      * @param b byte to write
      */
     public void writeByte(int off, byte b) {
+        headerWritten(off, 1);
         buffer[offset + off] = b;
     }
 
@@ -1684,6 +1892,7 @@ public class RawPacket implements ByteArrayBuffer {
      * @param data The integer to store in the packet
      */
     public void writeInt(int off, int data) {
+        headerWritten(off, 4);
         RTPUtils.writeInt(buffer, offset + off, data);
     }
 
@@ -1793,14 +2002,25 @@ public class RawPacket implements ByteArrayBuffer {
      * iterator.
      */
     public HeaderExtension getHeaderExtension(byte id) {
-        HeaderExtensions hes = getHeaderExtensions();
-        while (hes.hasNext()) {
-            HeaderExtension he = hes.next();
-            if (he.getExtId() == id) {
-                return he;
-            }
+        int dataOffset = getExtensionDataOffset(id);
+        if (dataOffset < 0)
+            return null;
+
+        HeaderExtension he = getHeaderExtensionInstance();
+        he.setOffsetLength(dataOffset - 1, getExtensionDataLength(id) + 1);
+        return he;
+    }
+
+    /**
+     * @return the single {@link HeaderExtension} instance of this {@link RawPacket}, pointing to its current buffer.
+     */
+    private HeaderExtension getHeaderExtensionInstance() {
+        if (headerExtensions == null) {
+            headerExtensions = new HeaderExtensions();
         }
-        return null;
+        HeaderExtension he = headerExtensions.headerExtension;
+        he.buffer = buffer;
+        return he;
     }
 
     /**
@@ -1865,6 +2085,8 @@ public class RawPacket implements ByteArrayBuffer {
          * {@link RawPacket}.
          */
         private void reset() {
+            headerExtension.buffer = buffer;
+
             int len = getExtensionLength();
             if (len <= 0) {
                 // No extensions.
@@ -1890,6 +2112,11 @@ public class RawPacket implements ByteArrayBuffer {
             if (remainingLen <= 0 || nextOff < 0) {
                 return false;
             }
+            // Skip the padding between (and after) the elements.
+            while (remainingLen > 0 && buffer[nextOff] == 0) {
+                nextOff++;
+                remainingLen--;
+            }
             int len = getExtLength(buffer, nextOff, remainingLen);
             return len > 0;
         }
@@ -1901,7 +2128,7 @@ public class RawPacket implements ByteArrayBuffer {
          * byte and checks the boundaries.
          */
         private int getExtLength(byte[] buf, int off, int len) {
-            if (len <= 2) {
+            if (len < 2) {
                 return -1;
             }
 
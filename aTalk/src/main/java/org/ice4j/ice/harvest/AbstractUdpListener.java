@@ -22,8 +22,8 @@ import org.ice4j.StackProperties;
 import org.ice4j.Transport;
 import org.ice4j.TransportAddress;
 import org.ice4j.attribute.Attribute;
-import org.ice4j.attribute.UsernameAttribute;
 import org.ice4j.message.Message;
+import org.ice4j.message.MessageBuffer;
 import org.ice4j.util.QueueStatistics;
 
 import java.io.IOException;
@@ -138,37 +138,38 @@ public abstract class AbstractUdpListener
             return null;
         }
 
-        try
-        {
-            Message stunMessage = Message.decode(buf, off, len);
-
-            if (stunMessage.getMessageType()
-                != Message.BINDING_REQUEST)
-            {
-                return null;
-            }
-
-            UsernameAttribute usernameAttribute
-                = (UsernameAttribute)
-                stunMessage.getAttribute(Attribute.USERNAME);
-            if (usernameAttribute == null)
-                return null;
+        // Read the message in place rather than decoding it into a Message
+        // and its attributes, as only the USERNAME is needed here.
+        MessageBuffer stunMessage = new MessageBuffer();
 
-            String usernameString
-                = new String(usernameAttribute.getUsername());
-            return usernameString.split(":")[0];
+        if (!stunMessage.wrap(buf, off, len)
+            || stunMessage.getMessageType() != Message.BINDING_REQUEST)
+        {
+            return null;
         }
-        catch (Exception e)
+
+        // RFC 5389 says that we should ignore bad CRCs.
+        if (stunMessage.getAttributeOffset(Attribute.FINGERPRINT) >= 0
+            && !stunMessage.validateFingerprint())
         {
-            // Catch everything. We are going to log, and then drop the packet
-            // anyway.
             if (logger.isDebugEnabled())
             {
-                logger.debug("Failed to extract local ufrag: " + e);
+                logger.debug("Failed to extract local ufrag: wrong FINGERPRINT");
             }
+            return null;
         }
 
-        return null;
+        int username = stunMessage.getAttributeOffset(Attribute.USERNAME);
+        if (username < 0)
+            return null;
+
+        int start = username + Attribute.HEADER_LENGTH;
+        int end = start + stunMessage.getAttributeLength(username);
+        int colon = start;
+
+        while (colon < end && buf[colon] != ':')
+            colon++;
+        return new String(buf, start, colon - start);
     }
 
     /**
@@ -28,12 +28,9 @@ import org.ice4j.stack.StunStack;
 import org.ice4j.stack.TransactionID;
 
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -928,12 +925,62 @@ public abstract class Message
         //make sure we have everything necessary to encode a proper message
         validateAttributePresentity();
 
+        byte binMsg[] = new byte[HEADER_LENGTH + getDataLength()];
+
+        encodeTo(stunStack, binMsg, 0);
+        return binMsg;
+    }
+
+    /**
+     * Encodes this message into a caller-supplied buffer e.g. a reused send
+     * buffer, rather than into a new array.
+     *
+     * @param stunStack the <tt>StunStack</tt> in the context of which the
+     * request to encode this <tt>Message</tt> is being made
+     * @param buf the buffer to encode this message into.
+     * @param off the index in <tt>buf</tt> where the message is to start.
+     * @return the number of bytes of the encoded message.
+     *
+     * @throws IllegalStateException if the message does not have all
+     * required attributes.
+     * @throws IllegalArgumentException if <tt>buf</tt> is too small.
+     */
+    public int encode(StunStack stunStack, byte[] buf, int off)
+        throws IllegalStateException, IllegalArgumentException
+    {
+        prepareForEncoding();
+
+        //make sure we have everything necessary to encode a proper message
+        validateAttributePresentity();
+
+        int length = HEADER_LENGTH + getDataLength();
+
+        if (off < 0 || buf.length - off < length)
+        {
+            throw new IllegalArgumentException(
+                    "Buffer too small to encode " + getName() + ": "
+                        + (buf.length - off) + " < " + length);
+        }
+        encodeTo(stunStack, buf, off);
+        return length;
+    }
+
+    /**
+     * Writes the binary representation of this message, which must fit in
+     * <tt>binMsg</tt> from <tt>msgOffset</tt>.
+     *
+     * @param stunStack the <tt>StunStack</tt> in the context of which the
+     * request to encode this <tt>Message</tt> is being made
+     * @param binMsg the buffer to encode this message into.
+     * @param msgOffset the index in <tt>binMsg</tt> where the message starts.
+     */
+    private void encodeTo(StunStack stunStack, byte[] binMsg, int msgOffset)
+    {
         final char dataLength;
 
         dataLength = getDataLength();
 
-        byte binMsg[] = new byte[HEADER_LENGTH + dataLength];
-        int offset    = 0;
+        int offset    = msgOffset;
 
         // STUN Message Type
         binMsg[offset++] = (byte)(getMessageType() >> 8);
@@ -961,20 +1008,17 @@ public abstract class Message
             offset += RFC3489_TRANSACTION_ID_LENGTH;
         }
 
-        Vector<Map.Entry<Character, Attribute>> v = new Vector<>();
-        Iterator<Map.Entry<Character, Attribute>> iter = null;
+        Attribute[] attributeArray;
         char dataLengthForContentDependentAttribute = 0;
 
         synchronized (attributes)
         {
-            v.addAll(attributes.entrySet());
+            attributeArray
+                = attributes.values().toArray(new Attribute[attributes.size()]);
         }
 
-        iter = v.iterator();
-
-        while (iter.hasNext())
+        for (Attribute attribute : attributeArray)
         {
-            Attribute attribute = iter.next().getValue();
             int attributeLength
                 = attribute.getDataLength() + Attribute.HEADER_LENGTH;
 
@@ -998,7 +1042,8 @@ public abstract class Message
                     = (byte)(dataLengthForContentDependentAttribute & 0xFF);
                 binAtt
                     = ((ContentDependentAttribute)attribute)
-                            .encode(stunStack, binMsg, 0, offset);
+                            .encode(stunStack, binMsg, msgOffset,
+                                    offset - msgOffset);
             }
             else
             {
@@ -1017,8 +1062,6 @@ public abstract class Message
         // Message Length
         binMsg[messageLengthOffset]     = (byte)(dataLength >> 8);
         binMsg[messageLengthOffset + 1] = (byte)(dataLength & 0xFF);
-
-        return binMsg;
     }
 
     /**
@@ -1103,17 +1146,18 @@ public abstract class Message
         int length = (char)((binMessage[offset++] << 8)
                           | (binMessage[offset++]  & 0xFF));
 
-        /* copy the cookie */
-        byte[] cookie = new byte[4];
-        System.arraycopy(binMessage, offset, cookie, 0, 4);
-        offset += 4;
-
+        /* compare the cookie in place */
         boolean rfc3489Compat = false;
 
-        if (!Arrays.equals(MAGIC_COOKIE, cookie))
+        for (int i = 0; i < MAGIC_COOKIE.length; i++)
         {
-            rfc3489Compat = true;
+            if (binMessage[offset + i] != MAGIC_COOKIE[i])
+            {
+                rfc3489Compat = true;
+                break;
+            }
         }
+        offset += 4;
 
         if (arrayLen - offset - TRANSACTION_ID_LENGTH < length)
         {
@@ -1129,28 +1173,21 @@ public abstract class Message
                             + (offset + TRANSACTION_ID_LENGTH + length));
         }
 
-        byte[] tranID = new byte[TRANSACTION_ID_LENGTH];
-        System.arraycopy(binMessage, offset, tranID, 0, TRANSACTION_ID_LENGTH);
-        try
+        /*
+         * The transaction ID is copied once, straight into the message; an
+         * RFC3489 one includes the 4 bytes of the (missing) cookie.
+         */
+        if (rfc3489Compat)
         {
-            if (rfc3489Compat)
-            {
-                byte[] rfc3489TranID = new byte[TRANSACTION_ID_LENGTH + 4];
-                System.arraycopy(cookie, 0, rfc3489TranID, 0, 4);
-                System.arraycopy(tranID, 0, rfc3489TranID, 4,
-                        TRANSACTION_ID_LENGTH);
-                message.setTransactionID(rfc3489TranID);
-            }
-            else
-            {
-                message.setTransactionID(tranID);
-            }
+            message.transactionID = new byte[RFC3489_TRANSACTION_ID_LENGTH];
+            System.arraycopy(binMessage, offset - 4, message.transactionID, 0,
+                    RFC3489_TRANSACTION_ID_LENGTH);
         }
-        catch (StunException exc)
+        else
         {
-            throw new StunException( StunException.ILLEGAL_ARGUMENT,
-                            "The given binary array does not seem to "
-                            + "contain a whole StunMessage", exc);
+            message.transactionID = new byte[TRANSACTION_ID_LENGTH];
+            System.arraycopy(binMessage, offset, message.transactionID, 0,
+                    TRANSACTION_ID_LENGTH);
         }
 
         offset += TRANSACTION_ID_LENGTH;
@@ -1184,7 +1221,7 @@ public abstract class Message
      * @param attribute the <tt>Attribute</tt> we'd like to process.
      * @param binMessage the byte array that the message arrived with.
      * @param offset the index where data starts in <tt>binMessage</tt>.
-     * @param msgLen the number of message bytes in <tt>binMessage</tt>.
+     * @param msgLen the index of <tt>attribute</tt> in <tt>binMessage</tt>.
      *
      * @throws StunException if there's something in the <tt>attribute</tt> that
      * caused us to discard the whole message (e.g. an invalid checksum or
@@ -1212,13 +1249,14 @@ public abstract class Message
     /**
      * Recalculates the FINGERPRINT CRC32 checksum of the <tt>message</tt>
      * array so that we could compare it with the value brought by the
-     * {@link FingerprintAttribute}.
+     * {@link FingerprintAttribute}. The checksum is computed in place with a
+     * reused <tt>CRC32</tt>.
      *
      * @param fingerprint the attribute that we need to validate.
      * @param message the message whose CRC32 checksum we'd need to recalculate.
      * @param offset the index in <tt>message</tt> where data starts.
-     * @param length the number of bytes in <tt>message</tt> that the CRC32
-     * would need to be calculated over.
+     * @param fingerprintOffset the index in <tt>message</tt> of the
+     * FINGERPRINT attribute i.e. where the CRC32 calculation ends.
      *
      * @return <tt>true</tt> if <tt>FINGERPRINT</tt> contains a valid CRC32
      * value and <tt>false</tt> otherwise.
@@ -1226,21 +1264,18 @@ public abstract class Message
     private static boolean validateFingerprint(FingerprintAttribute fingerprint,
                                                byte[]               message,
                                                int                  offset,
-                                               int                  length)
+                                               int                  fingerprintOffset)
     {
-
-        byte[] incomingCrcBytes = fingerprint.getChecksum();
-
         //now check whether the CRC really is what it's supposed to be.
-        //re calculate the check sum
-        byte[] realCrcBytes = FingerprintAttribute.calculateXorCRC32(
-                        message, offset, length);
-
-        //CRC validation.
-        if ( ! Arrays.equals(incomingCrcBytes, realCrcBytes))
+        if (!MessageBuffer.validateFingerprint(
+                message, offset, fingerprintOffset))
         {
             if (logger.isLoggable(Level.FINE))
             {
+                byte[] incomingCrcBytes = fingerprint.getChecksum();
+                byte[] realCrcBytes = FingerprintAttribute.calculateXorCRC32(
+                        message, offset, fingerprintOffset - offset);
+
                 logger.fine(
                         "An incoming message arrived with a wrong FINGERPRINT "
                         +"attribute value. "
@@ -0,0 +1,322 @@
+/*
+ * ice4j, the OpenSource Java Solution for NAT and Firewall Traversal.
+ *
+ * Copyright @ 2015 Atlassian Pty Ltd
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.message;
+
+import org.ice4j.attribute.Attribute;
+import org.ice4j.attribute.FingerprintAttribute;
+import org.ice4j.attribute.MessageIntegrityAttribute;
+
+import java.security.GeneralSecurityException;
+import java.util.zip.CRC32;
+
+import javax.crypto.Mac;
+
+/**
+ * A flyweight view of an encoded STUN message, which reads the header and
+ * the attributes in place in the datagram buffer i.e. without creating a
+ * <tt>Message</tt>, an <tt>Attribute</tt> per TLV or any copy of the bytes.
+ * It serves the paths which only need a few fields of a message, e.g. the
+ * USERNAME of the first packet from a remote address, and verifies the
+ * MESSAGE-INTEGRITY and FINGERPRINT attributes over the buffer itself.
+ * <p>
+ * An instance is reused for another message through
+ * {@link #wrap(byte[], int, int)} and is not thread-safe.
+ *
+ * @author Eng Chong Meng
+ */
+public class MessageBuffer
+{
+    /**
+     * The <tt>CRC32</tt> of the current thread, used to verify FINGERPRINT.
+     */
+    private static final ThreadLocal<CRC32> crc32
+        = ThreadLocal.withInitial(CRC32::new);
+
+    /**
+     * The HMAC output buffer of the current thread, used to verify
+     * MESSAGE-INTEGRITY.
+     */
+    private static final ThreadLocal<byte[]> hmacSha1
+        = ThreadLocal.withInitial(
+                () -> new byte[MessageIntegrityAttribute.DATA_LENGTH]);
+
+    /**
+     * The buffer of the wrapped message; <tt>null</tt> if none.
+     */
+    private byte[] buf;
+
+    /**
+     * The index where the wrapped message starts in {@link #buf}.
+     */
+    private int offset;
+
+    /**
+     * The length of the wrapped message, header included.
+     */
+    private int length;
+
+    /**
+     * Wraps an encoded STUN message if the bytes look like one as per RFC5389,
+     * Section 6: the two most significant bits are zeroes, the magic cookie is
+     * present and the message length is a multiple of 4 which fits in
+     * <tt>len</tt>.
+     *
+     * @param buf the buffer of the message.
+     * @param off the index where the message starts in <tt>buf</tt>.
+     * @param len the number of bytes available in <tt>buf</tt> from
+     * <tt>off</tt>.
+     *
+     * @return <tt>true</tt> if the bytes have been wrapped; <tt>false</tt> if
+     * they are not a STUN message.
+     */
+    public boolean wrap(byte[] buf, int off, int len)
+    {
+        this.buf = null;
+
+        if (buf == null || off < 0 || len < Message.HEADER_LENGTH
+                || buf.length < off + len)
+            return false;
+
+        if ((buf[off] & 0xC0) != 0)
+            return false;
+
+        for (int i = 0; i < Message.MAGIC_COOKIE.length; i++)
+        {
+            if (buf[off + 4 + i] != Message.MAGIC_COOKIE[i])
+                return false;
+        }
+
+        int dataLength = readChar(buf, off + 2);
+
+        if ((dataLength & 0x3) != 0
+                || Message.HEADER_LENGTH + dataLength > len)
+            return false;
+
+        this.buf = buf;
+        this.offset = off;
+        this.length = Message.HEADER_LENGTH + dataLength;
+        return true;
+    }
+
+    /**
+     * Returns the buffer of the wrapped message.
+     *
+     * @return the buffer of the wrapped message.
+     */
+    public byte[] getBuffer()
+    {
+        return buf;
+    }
+
+    /**
+     * Returns the length of the wrapped message, header included.
+     *
+     * @return the length of the wrapped message.
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns the type of the wrapped message.
+     *
+     * @return the type of the wrapped message.
+     */
+    public char getMessageType()
+    {
+        return readChar(buf, offset);
+    }
+
+    /**
+     * Determines whether the wrapped message has a specific transaction ID.
+     *
+     * @param tranID the transaction ID to compare with.
+     *
+     * @return <tt>true</tt> if the transaction ID of the wrapped message is
+     * <tt>tranID</tt>.
+     */
+    public boolean hasTransactionID(byte[] tranID)
+    {
+        if (tranID == null || tranID.length != Message.TRANSACTION_ID_LENGTH)
+            return false;
+
+        for (int i = 0; i < Message.TRANSACTION_ID_LENGTH; i++)
+        {
+            if (buf[offset + 8 + i] != tranID[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index in {@link #getBuffer()} of the first attribute of a
+     * specific type in the wrapped message.
+     *
+     * @param attributeType the type of the attribute.
+     *
+     * @return the index of the attribute header, or <tt>-1</tt> if the
+     * message has no such attribute or its attributes are malformed.
+     */
+    public int getAttributeOffset(char attributeType)
+    {
+        int end = offset + length;
+        int at = offset + Message.HEADER_LENGTH;
+
+        while (at + Attribute.HEADER_LENGTH <= end)
+        {
+            int attributeLength = readChar(buf, at + 2);
+
+            if (at + Attribute.HEADER_LENGTH + attributeLength > end)
+                return -1;
+            if (readChar(buf, at) == attributeType)
+                return at;
+
+            // skip the value and its padding
+            at += Attribute.HEADER_LENGTH + ((attributeLength + 3) & ~0x3);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the length of the value of the attribute at a specific index.
+     *
+     * @param attributeOffset the index of the attribute header as returned by
+     * {@link #getAttributeOffset(char)}.
+     *
+     * @return the length of the value of the attribute, padding excluded.
+     */
+    public int getAttributeLength(int attributeOffset)
+    {
+        return readChar(buf, attributeOffset + 2);
+    }
+
+    /**
+     * Verifies the FINGERPRINT of the wrapped message, which must be its last
+     * attribute.
+     *
+     * @return <tt>true</tt> if the message ends with a FINGERPRINT attribute
+     * whose CRC32 is valid.
+     */
+    public boolean validateFingerprint()
+    {
+        int at = offset + length - Attribute.HEADER_LENGTH - 4;
+
+        if (at < offset + Message.HEADER_LENGTH
+                || readChar(buf, at) != Attribute.FINGERPRINT
+                || readChar(buf, at + 2) != 4)
+            return false;
+
+        return validateFingerprint(buf, offset, at);
+    }
+
+    /**
+     * Verifies a FINGERPRINT over the bytes of the message which precede it,
+     * without copying them.
+     *
+     * @param message the buffer of the message.
+     * @param offset the index where the message starts in <tt>message</tt>.
+     * @param fingerprintOffset the index of the FINGERPRINT attribute header
+     * in <tt>message</tt>.
+     *
+     * @return <tt>true</tt> if the CRC32 of the FINGERPRINT is valid.
+     */
+    static boolean validateFingerprint(
+            byte[] message, int offset, int fingerprintOffset)
+    {
+        CRC32 crc = crc32.get();
+
+        crc.reset();
+        crc.update(message, offset, fingerprintOffset - offset);
+
+        long xorCrc = crc.getValue()
+            ^ (((FingerprintAttribute.XOR_MASK[0] & 0xFFL) << 24)
+                | ((FingerprintAttribute.XOR_MASK[1] & 0xFFL) << 16)
+                | ((FingerprintAttribute.XOR_MASK[2] & 0xFFL) << 8)
+                | (FingerprintAttribute.XOR_MASK[3] & 0xFFL));
+        int value = fingerprintOffset + Attribute.HEADER_LENGTH;
+
+        return xorCrc
+            == (((message[value] & 0xFFL) << 24)
+                | ((message[value + 1] & 0xFFL) << 16)
+                | ((message[value + 2] & 0xFFL) << 8)
+                | (message[value + 3] & 0xFFL));
+    }
+
+    /**
+     * Verifies the MESSAGE-INTEGRITY of the wrapped message. As per RFC5389,
+     * Section 15.4, the HMAC is computed over the message up to the attribute
+     * with a message length which ends with it; the length is fed to the
+     * <tt>Mac</tt> rather than written to the buffer, so the datagram is left
+     * untouched.
+     *
+     * @param key the short-term or long-term key of the message.
+     *
+     * @return <tt>true</tt> if the message has a MESSAGE-INTEGRITY attribute
+     * whose HMAC-SHA1 is valid for <tt>key</tt>.
+     */
+    public boolean validateMessageIntegrity(byte[] key)
+    {
+        int at = getAttributeOffset(Attribute.MESSAGE_INTEGRITY);
+
+        if (at < 0
+                || getAttributeLength(at)
+                    != MessageIntegrityAttribute.DATA_LENGTH)
+            return false;
+
+        byte[] hmac = hmacSha1.get();
+
+        try
+        {
+            Mac mac = MessageIntegrityAttribute.getHmacSha1(key);
+            int dataLength = at + Attribute.HEADER_LENGTH
+                + MessageIntegrityAttribute.DATA_LENGTH
+                - offset - Message.HEADER_LENGTH;
+
+            mac.update(buf, offset, 2);
+            mac.update((byte) (dataLength >> 8));
+            mac.update((byte) dataLength);
+            mac.update(buf, offset + 4, at - offset - 4);
+            mac.doFinal(hmac, 0);
+        }
+        catch (GeneralSecurityException | IllegalStateException e)
+        {
+            return false;
+        }
+
+        // compare in constant time
+        int diff = 0;
+
+        for (int i = 0; i < hmac.length; i++)
+            diff |= hmac[i] ^ buf[at + Attribute.HEADER_LENGTH + i];
+        return diff == 0;
+    }
+
+    /**
+     * Reads an unsigned 16-bit big endian value.
+     *
+     * @param buf the buffer to read from.
+     * @param off the index of the value in <tt>buf</tt>.
+     *
+     * @return the value read.
+     */
+    private static char readChar(byte[] buf, int off)
+    {
+        return (char) (((buf[off] & 0xFF) << 8) | (buf[off + 1] & 0xFF));
+    }
+}
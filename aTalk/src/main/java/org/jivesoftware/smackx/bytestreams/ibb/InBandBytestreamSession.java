@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -457,14 +459,24 @@ public class InBandBytestreamSession implements BytestreamSession {
     /**
      * IQIBBInputStream class implements IBBInputStream to be used with IQ stanzas encapsulating the
      * data packets.
+     * <p>
+     * The data IQs may be processed concurrently and so out of order. A data packet ahead of the expected sequence,
+     * within {@link #MAX_REORDER} packets, is held back until the packets before it have arrived, and is then
+     * queued in sequence order.
      */
     private final class IQIBBInputStream extends IBBInputStream {
 
+        /* maximum number of data packets held back ahead of the expected sequence */
+        private static final int MAX_REORDER = 16;
+
         @Override
         protected StanzaListener getDataPacketListener() {
             return new StanzaListener() {
 
-                private UInt16 expectedSequence = UInt16.MIN_VALUE;;
+                private UInt16 expectedSequence = UInt16.MIN_VALUE;
+
+                /* data packets received ahead of the expected sequence */
+                private final Map<UInt16, DataPacketExtension> heldBack = new HashMap<>();
 
                 @Override
                 public void processStanza(Stanza packet) throws NotConnectedException, InterruptedException {
@@ -473,46 +485,55 @@ public class InBandBytestreamSession implements BytestreamSession {
                     DataPacketExtension data = dataIq.getDataPacketExtension();
 
                     final UInt16 seq = data.getSeq();
-                    /*
-                     * check if sequence was not used already (see XEP-0047 Section 2.2)
-                     */
-                    if (!expectedSequence.equals(seq)) {
-                        String descriptiveEnTest = UNEXPECTED_IBB_SEQUENCE + " " + seq + " received, expected "
-                                        + expectedSequence;
-                        StanzaError stanzaError = StanzaError.getBuilder()
-                                        .setCondition(StanzaError.Condition.unexpected_request)
-                                        .setDescriptiveEnText(descriptiveEnTest)
-                                        .build();
-                        IQ unexpectedRequest = IQ.createErrorResponse(dataIq, stanzaError);
-                        connection.sendStanza(unexpectedRequest);
-
-                        try {
-                            // TODO: It would be great if close would take a "close error reason" argument. Also there
-                            // is the question if this is really a reason to close the stream. We could have some more
-                            // tolerance regarding out-of-sequence stanzas arriving: Even though XMPP has the in-order
-                            // guarantee, I could imagine that there are cases where stanzas are, for example,
-                            // duplicated because of stream resumption.
-                            close();
-                        } catch (IOException e) {
-                            LOGGER.log(Level.FINER, "Could not close session, because of IOException. Close reason: "
-                                            + descriptiveEnTest);
+                    synchronized (this) {
+                        /*
+                         * check if sequence was not used already (see XEP-0047 Section 2.2)
+                         */
+                        int distance = (seq.intValue() - expectedSequence.intValue()) & 0xffff;
+                        if (distance >= MAX_REORDER || heldBack.containsKey(seq)) {
+                            String descriptiveEnTest = UNEXPECTED_IBB_SEQUENCE + " " + seq + " received, expected "
+                                            + expectedSequence;
+                            StanzaError stanzaError = StanzaError.getBuilder()
+                                            .setCondition(StanzaError.Condition.unexpected_request)
+                                            .setDescriptiveEnText(descriptiveEnTest)
+                                            .build();
+                            IQ unexpectedRequest = IQ.createErrorResponse(dataIq, stanzaError);
+                            connection.sendStanza(unexpectedRequest);
+
+                            try {
+                                // TODO: It would be great if close would take a "close error reason" argument.
+                                // Also there is the question if this is really a reason to close the stream: a
+                                // stanza may, for example, be duplicated because of stream resumption.
+                                close();
+                            } catch (IOException e) {
+                                LOGGER.log(Level.FINER, "Could not close session, because of IOException. Close "
+                                                + "reason: " + descriptiveEnTest);
+                            }
+                            return;
                         }
-                        return;
-                    }
 
-                    // check if encoded data is valid (see XEP-0047 Section 2.2)
-                    if (data.getDecodedData() == null) {
-                        // data is invalid; respond with bad-request error
-                        IQ badRequest = IQ.createErrorResponse((IQ) packet,
-                                        StanzaError.Condition.bad_request);
-                        connection.sendStanza(badRequest);
-                        return;
-                    }
-
-                    expectedSequence = seq.incrementedByOne();
+                        // check if encoded data is valid (see XEP-0047 Section 2.2)
+                        if (data.getDecodedData() == null) {
+                            // data is invalid; respond with bad-request error
+                            IQ badRequest = IQ.createErrorResponse((IQ) packet,
+                                            StanzaError.Condition.bad_request);
+                            connection.sendStanza(badRequest);
+                            return;
+                        }
 
-                    // data is valid; add to data queue
-                    dataQueue.offer(data);
+                        if (distance > 0) {
+                            // ahead of the expected sequence; hold back until the gap is filled
+                            heldBack.put(seq, data);
+                        }
+                        else {
+                            // data is valid; add it and the held back data that follows to data queue
+                            do {
+                                dataQueue.offer(data);
+                                expectedSequence = expectedSequence.incrementedByOne();
+                                data = heldBack.remove(expectedSequence);
+                            } while (data != null);
+                        }
+                    }
 
                     // confirm IQ
                     IQ confirmData = IQ.createResultIQ((IQ) packet);
@@ -623,6 +644,9 @@ public class InBandBytestreamSession implements BytestreamSession {
         /* buffer with the size of this sessions block size */
         private final byte[] buffer;
 
+        /* current block size; may be adapted below the negotiated block size by the subclass */
+        int blockSize;
+
         /* pointer to next byte to write to buffer */
         private int bufferPointer = 0;
 
@@ -637,6 +661,7 @@ public class InBandBytestreamSession implements BytestreamSession {
          */
         private IBBOutputStream() {
             this.buffer = new byte[byteStreamRequest.getBlockSize()];
+            this.blockSize = buffer.length;
         }
 
         /**
@@ -649,6 +674,14 @@ public class InBandBytestreamSession implements BytestreamSession {
          */
         abstract void writeToXML(DataPacketExtension data) throws IOException, NotConnectedException, InterruptedException;
 
+        /**
+         * Waits until all data packets written to the XMPP stream have been acknowledged by the peer.
+         *
+         * @throws IOException if a data packet was rejected or the wait was interrupted
+         */
+        void drain() throws IOException {
+        }
+
         @Override
         public synchronized void write(int b) throws IOException {
             if (this.isClosed) {
@@ -656,7 +689,7 @@ public class InBandBytestreamSession implements BytestreamSession {
             }
 
             // if buffer is full flush buffer
-            if (bufferPointer >= buffer.length) {
+            if (bufferPointer >= blockSize) {
                 flushBuffer();
             }
 
@@ -680,17 +713,12 @@ public class InBandBytestreamSession implements BytestreamSession {
                 throw new IOException("Stream is closed");
             }
 
-            // is data to send greater than buffer size
-            if (len >= buffer.length) {
-
-                // "byte" off the first chunk to write out
-                writeOut(b, off, buffer.length);
-
-                // recursively call this method with the lesser amount
-                write(b, off + buffer.length, len - buffer.length);
-            }
-            else {
-                writeOut(b, off, len);
+            // write out the data in chunks of at most the current block size
+            while (len > 0) {
+                int chunk = Math.min(len, blockSize);
+                writeOut(b, off, chunk);
+                off += chunk;
+                len -= chunk;
             }
         }
 
@@ -718,9 +746,9 @@ public class InBandBytestreamSession implements BytestreamSession {
             int available = 0;
 
             // is data to send greater that buffer space left
-            if (len > buffer.length - bufferPointer) {
+            if (len > blockSize - bufferPointer) {
                 // fill buffer to capacity and send it
-                available = buffer.length - bufferPointer;
+                available = Math.max(0, blockSize - bufferPointer);
                 System.arraycopy(b, off, buffer, bufferPointer, available);
                 bufferPointer += available;
                 flushBuffer();
@@ -737,6 +765,7 @@ public class InBandBytestreamSession implements BytestreamSession {
                 throw new IOException("Stream is closed");
             }
             flushBuffer();
+            drain();
         }
 
         private synchronized void flushBuffer() throws IOException {
@@ -791,6 +820,7 @@ public class InBandBytestreamSession implements BytestreamSession {
             try {
                 if (flush) {
                     flushBuffer();
+                    drain();
                 }
             }
             catch (IOException e) {
@@ -805,26 +835,126 @@ public class InBandBytestreamSession implements BytestreamSession {
     /**
      * IQIBBOutputStream class implements IBBOutputStream to be used with IQ stanzas encapsulating
      * the data packets.
+     * <p>
+     * Only one data packet is unacknowledged at a time: the peer may process the data IQs concurrently, and a peer
+     * which does not reorder them rejects a data packet that overtakes its predecessor and closes the session. The
+     * block size adapts to the measured round trip time: it grows while the round trip time stays near its minimum,
+     * and is reduced when it rises due to queuing at the servers. The block size never exceeds the block size
+     * negotiated for the session.
      */
     private final class IQIBBOutputStream extends IBBOutputStream {
 
+        /* maximum number of unacknowledged data packets in flight */
+        private static final int MAX_WINDOW = 1;
+
+        /* lower bound of the adapted block size */
+        private static final int MIN_BLOCK_SIZE = 1024;
+
+        /* number of data packets sent but not yet acknowledged */
+        private int inFlight = 0;
+
+        /* minimum measured round trip time in nanoseconds */
+        private long minRtt = Long.MAX_VALUE;
+
+        /* the first error reported for a data packet; all following writes fail */
+        private IOException ackError = null;
+
         @Override
-        protected synchronized void writeToXML(DataPacketExtension data) throws IOException {
+        protected void writeToXML(DataPacketExtension data) throws IOException {
             // create IQ stanza containing data packet
             IQ iq = new Data(data);
             iq.setTo(remoteJID);
 
+            synchronized (this) {
+                try {
+                    while (inFlight >= MAX_WINDOW && ackError == null) {
+                        wait();
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                if (ackError != null) {
+                    // do not send further data once the session is being closed on error
+                    if (this.isClosed) {
+                        return;
+                    }
+                    throw ackError;
+                }
+                inFlight++;
+            }
+
+            final long sendTime = System.nanoTime();
             try {
-                connection.sendIqRequestAndWaitForResponse(iq);
+                connection.sendIqRequestAsync(iq)
+                        .onSuccess(result -> onAcknowledged(System.nanoTime() - sendTime))
+                        .onError(this::onRejected);
             }
             catch (Exception e) {
-                // close session unless it is already closed
-                if (!this.isClosed) {
+                onRejected(e);
+                checkAckError();
+            }
+        }
+
+        @Override
+        synchronized void drain() throws IOException {
+            try {
+                while (inFlight > 0 && ackError == null) {
+                    wait();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            checkAckError();
+        }
+
+        private synchronized void onAcknowledged(long rtt) {
+            inFlight--;
+            minRtt = Math.min(minRtt, rtt);
+            int maxBlockSize = byteStreamRequest.getBlockSize();
+            if (rtt <= minRtt + minRtt / 2) {
+                // No queuing; grow the block size up to the negotiated one
+                if (blockSize < maxBlockSize) {
+                    blockSize = Math.min(maxBlockSize, blockSize * 2);
+                }
+            }
+            else if (rtt > 2 * minRtt) {
+                // Queue is building up; back off
+                blockSize = Math.max(Math.min(MIN_BLOCK_SIZE, maxBlockSize), blockSize / 2);
+            }
+            notifyAll();
+        }
+
+        private void onRejected(Exception e) {
+            synchronized (this) {
+                inFlight--;
+                if (ackError != null) {
+                    notifyAll();
+                    return;
+                }
+                ackError = (e instanceof IOException) ? (IOException) e : new IOException(e);
+                notifyAll();
+            }
+
+            // close session unless it is already closed
+            if (!this.isClosed) {
+                try {
                     InBandBytestreamSession.this.close();
-                    throw new IOException(e);
+                }
+                catch (IOException ioe) {
+                    LOGGER.log(Level.FINER, "Could not close session after data packet error: " + ioe);
                 }
             }
+        }
 
+        private void checkAckError() throws IOException {
+            IOException error = ackError;
+            if (error != null && !this.isClosed) {
+                throw error;
+            }
         }
     }
 
@@ -19,13 +19,16 @@ import static net.java.sip.communicator.impl.netaddr.NetworkAddressManagerServic
 import static net.java.sip.communicator.impl.netaddr.NetworkAddressManagerServiceImpl.TURN_SRV_NAME;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 
+import net.java.sip.communicator.service.netaddr.IceServerDescriptor;
+
 import org.ice4j.Transport;
 import org.ice4j.TransportAddress;
 import org.ice4j.ice.harvest.StunCandidateHarvester;
-import org.ice4j.ice.harvest.TurnCandidateHarvester;
 import org.ice4j.security.LongTermCredential;
 
 import org.jivesoftware.smack.XMPPConnection;
@@ -40,13 +43,29 @@ import org.jivesoftware.smack.util.StringUtils;
  */
 public class IceCandidateHarvester {
     public static List<StunCandidateHarvester> getExtServiceHarvester(XMPPConnection connection, String protocol) {
-        List<StunCandidateHarvester> stunServices = null;
+        List<StunCandidateHarvester> stunServices = new ArrayList<>();
+        for (IceServerDescriptor iceServer : getExtServices(connection, protocol)) {
+            stunServices.add(iceServer.createHarvester(null));
+        }
+        return stunServices;
+    }
+
+    /**
+     * Returns the resolved STUN and TURN servers found in external service discovery, with the credentials
+     * and the expiry time specified by the server.
+     *
+     * @param connection the XMPPConnection of the account
+     * @param protocol the transport protocol of the services e.g. udp
+     *
+     * @return the list of the STUN and TURN servers; may be empty.
+     */
+    public static List<IceServerDescriptor> getExtServices(XMPPConnection connection, String protocol) {
+        List<IceServerDescriptor> stunServices = new ArrayList<>();
 
         ExternalServiceDiscoveryManager xServiceManager = ExternalServiceDiscoveryManager.getInstanceFor(connection);
         if (xServiceManager.hasExtService()) {
             List<ServiceElement> services = xServiceManager.getTransportServices(protocol);
             if (services != null && !services.isEmpty()) {
-                stunServices = new ArrayList<>();
                 for (ServiceElement service : services) {
                     String host = service.getHost();
                     int port = service.getPort();
@@ -56,15 +75,25 @@ public class IceCandidateHarvester {
                         continue;
                     }
 
+                    long expires = Long.MAX_VALUE;
+                    if (service.getExpires() != null) {
+                        try {
+                            expires = Instant.parse(service.getExpires()).toEpochMilli();
+                        } catch (DateTimeParseException e) {
+                            // ignore; the service has no valid expiry time
+                        }
+                    }
+
                     // IllegalArgumentException
                     TransportAddress transportAddress = new TransportAddress(host, port, Transport.parse(transport));
                     if (TURN_SRV_NAME.equals(service.getType())) {
                         byte[] userName = service.getUserName().getBytes(StandardCharsets.UTF_8);
                         byte[] password = service.getPassword().getBytes(StandardCharsets.UTF_8);
-                        stunServices.add(new TurnCandidateHarvester(transportAddress, new LongTermCredential(userName, password)));
+                        stunServices.add(new IceServerDescriptor(transportAddress, true,
+                                new LongTermCredential(userName, password), expires));
                     }
                     else if (STUN_SRV_NAME.equals(service.getType())) {
-                        stunServices.add(new StunCandidateHarvester(transportAddress));
+                        stunServices.add(new IceServerDescriptor(transportAddress, false, null, expires));
                     }
                 }
             }
@@ -0,0 +1,322 @@
+/*
+ *
+ * Copyright 2017-2022 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.httpfileupload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.modes.GCMModeCipher;
+import org.jivesoftware.smackx.httpfileupload.AbstractHttpUploadException.HttpUploadErrorException;
+import org.jivesoftware.smackx.httpfileupload.AbstractHttpUploadException.HttpUploadIOException;
+import org.jivesoftware.smackx.httpfileupload.element.Slot;
+import org.jivesoftware.smackx.omemo_media_sharing.OmemoMediaSharingUtils;
+
+/**
+ * File upload engine for XEP-0363: HTTP File Upload, with optional XEP-0454: OMEMO Media Sharing encryption.
+ *
+ * The content is read through a channel ({@link FileChannel} for a file) in large chunks and encrypted with a streaming
+ * AES-GCM cipher by a reader stage, which runs on its own thread and overlaps with the network writes of the calling
+ * thread. The chunk buffers are recycled between the two stages. Progress callbacks are rate limited.
+ *
+ * The upload of a file is retried from the beginning on network failure: XEP-0363 defines no way to resume a PUT. An
+ * upload from an input stream cannot read its content again, and is not retried.
+ *
+ * @author Eng Chong Meng
+ */
+final class HttpFileUploadEngine {
+    private static final Logger LOGGER = Logger.getLogger(HttpFileUploadEngine.class.getName());
+
+    /**
+     * Factory to create a new PUT URL connection with the slot headers and tls settings applied.
+     */
+    interface ConnectionFactory {
+        HttpURLConnection createConnection() throws IOException;
+    }
+
+    /**
+     * Opens the content to upload, once for each attempt.
+     */
+    private interface ContentSource {
+        ReadableByteChannel open() throws IOException;
+    }
+
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    // Extra space for the cipher buffered partial block and the appended authentication tag
+    private static final int SLACK_SIZE = 64;
+
+    // Number of chunk buffers shared between the reader stage and the network writer
+    private static final int CHUNK_COUNT = 4;
+
+    private static final int MAX_RETRIES = 3;
+
+    // Minimum interval between two progress callbacks
+    private static final long PROGRESS_INTERVAL = 200;
+
+    private final ContentSource mSource;
+    private final int mMaxRetries;
+    private final byte[] mKey;
+    private final byte[] mIv;
+    private final long mUploadSize;
+    private final Slot mSlot;
+    private final ConnectionFactory mConnectionFactory;
+    private final UploadProgressListener mListener;
+
+    private final Chunk[] mChunks = new Chunk[CHUNK_COUNT];
+
+    private long mLastProgressTime = 0;
+
+    /**
+     * Creates an upload engine for the given file.
+     *
+     * @param file the file to upload
+     * @param key the aes encryption key, or null for a plain upload
+     * @param iv the aes initialization vector, or null for a plain upload
+     * @param slot the upload slot
+     * @param connectionFactory the factory to create the PUT URL connection
+     * @param listener the upload progress listener; may be null
+     */
+    HttpFileUploadEngine(File file, byte[] key, byte[] iv, Slot slot, ConnectionFactory connectionFactory,
+            UploadProgressListener listener) {
+        mSource = () -> new FileInputStream(file).getChannel();
+        mMaxRetries = MAX_RETRIES;
+        mKey = key;
+        mIv = iv;
+        mUploadSize = (key == null) ? file.length() : file.length() + OmemoMediaSharingUtils.LEN_AUTH_TAG;
+        mSlot = slot;
+        mConnectionFactory = connectionFactory;
+        mListener = listener;
+    }
+
+    /**
+     * Creates a plain upload engine for the given input stream, which is closed once the upload ends.
+     *
+     * @param inputStream the content to upload
+     * @param size the number of bytes of the content
+     * @param slot the upload slot
+     * @param connectionFactory the factory to create the PUT URL connection
+     * @param listener the upload progress listener; may be null
+     */
+    HttpFileUploadEngine(InputStream inputStream, long size, Slot slot, ConnectionFactory connectionFactory,
+            UploadProgressListener listener) {
+        mSource = () -> Channels.newChannel(inputStream);
+        mMaxRetries = 0;
+        mKey = null;
+        mIv = null;
+        mUploadSize = size;
+        mSlot = slot;
+        mConnectionFactory = connectionFactory;
+        mListener = listener;
+    }
+
+    /**
+     * Upload the content, retrying a file upload on network failure.
+     *
+     * @throws IOException if the upload failed after all retries.
+     */
+    void upload() throws IOException {
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            mChunks[i] = new Chunk(CHUNK_SIZE + SLACK_SIZE);
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                uploadOnce();
+                fireProgress(mUploadSize, true);
+                return;
+            } catch (HttpUploadErrorException e) {
+                // Rejected by the server: another attempt would be rejected too.
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= mMaxRetries || Thread.currentThread().isInterrupted())
+                    throw new HttpUploadIOException(mUploadSize, mSlot, e);
+                LOGGER.log(Level.WARNING, "Upload interrupted (attempt " + attempt + "), restart from beginning: "
+                        + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Perform a single PUT request sending the whole upload content.
+     */
+    private void uploadOnce() throws IOException {
+        final HttpURLConnection urlConnection = mConnectionFactory.createConnection();
+        urlConnection.setRequestMethod("PUT");
+        urlConnection.setUseCaches(false);
+        urlConnection.setDoOutput(true);
+        urlConnection.setFixedLengthStreamingMode(mUploadSize);
+
+        Reader reader = new Reader();
+        Thread readerThread = new Thread(reader, "HttpFileUpload-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+        try {
+            try (OutputStream outputStream = urlConnection.getOutputStream()) {
+                fireProgress(0, true);
+                long position = 0;
+                while (true) {
+                    Chunk chunk = reader.filled.take();
+                    if (chunk.error != null) {
+                        throw chunk.error;
+                    }
+
+                    outputStream.write(chunk.data, 0, chunk.length);
+                    position += chunk.length;
+                    boolean last = chunk.last;
+                    reader.free.put(chunk);
+
+                    if (last)
+                        break;
+                    fireProgress(position, false);
+                }
+            }
+
+            int status = urlConnection.getResponseCode();
+            switch (status) {
+            case HttpURLConnection.HTTP_OK:
+            case HttpURLConnection.HTTP_CREATED:
+            case HttpURLConnection.HTTP_NO_CONTENT:
+                break;
+            default:
+                throw new HttpUploadErrorException(status, urlConnection.getResponseMessage(), mUploadSize, mSlot);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted");
+        } finally {
+            readerThread.interrupt();
+            urlConnection.disconnect();
+            // The chunk buffers are reused by the next attempt; wait for the reader stage to release them.
+            try {
+                readerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void fireProgress(long uploadedBytes, boolean force) {
+        if (mListener == null)
+            return;
+
+        long now = System.currentTimeMillis();
+        if (force || now - mLastProgressTime >= PROGRESS_INTERVAL) {
+            mLastProgressTime = now;
+            mListener.onUploadProgress(uploadedBytes, mUploadSize);
+        }
+    }
+
+    /**
+     * A buffer passed between the reader stage and the network writer.
+     */
+    private static final class Chunk {
+        final byte[] data;
+        int length;
+        boolean last;
+        IOException error;
+
+        Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+
+    /**
+     * The reader stage: reads the content and encrypts it (when required) into the free chunks, and queues them in
+     * upload order for the network writer.
+     */
+    private final class Reader implements Runnable {
+        final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(CHUNK_COUNT);
+        // One extra slot is reserved for the error signal.
+        final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(CHUNK_COUNT + 1);
+
+        Reader() {
+            for (Chunk chunk : mChunks) {
+                chunk.length = 0;
+                chunk.last = false;
+                chunk.error = null;
+                free.add(chunk);
+            }
+        }
+
+        @Override
+        public void run() {
+            try (ReadableByteChannel channel = mSource.open()) {
+                GCMModeCipher cipher = (mKey == null) ? null
+                        : OmemoMediaSharingUtils.streamingCipherFrom(true, mKey, mIv);
+                ByteBuffer plainBuffer = (cipher == null) ? null : ByteBuffer.allocate(CHUNK_SIZE);
+
+                boolean eof = false;
+                while (!eof) {
+                    Chunk chunk = free.take();
+                    if (cipher == null) {
+                        ByteBuffer buffer = ByteBuffer.wrap(chunk.data, 0, CHUNK_SIZE);
+                        eof = fill(channel, buffer);
+                        chunk.length = buffer.position();
+                    }
+                    else {
+                        plainBuffer.clear();
+                        eof = fill(channel, plainBuffer);
+                        int length = cipher.processBytes(plainBuffer.array(), 0, plainBuffer.position(), chunk.data, 0);
+                        if (eof) {
+                            length += cipher.doFinal(chunk.data, length);
+                        }
+                        chunk.length = length;
+                    }
+                    chunk.last = eof;
+                    filled.put(chunk);
+                }
+            } catch (InterruptedException e) {
+                // Upload aborted by the network writer.
+            } catch (IOException | InvalidCipherTextException | RuntimeException e) {
+                Chunk error = new Chunk(0);
+                error.error = (e instanceof IOException) ? (IOException) e : new IOException(e);
+                filled.offer(error);
+            }
+        }
+
+        /**
+         * Fill the buffer from the content channel.
+         *
+         * @return true if the end of the content is reached.
+         */
+        private boolean fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1)
+                    return true;
+            }
+            if (channel instanceof FileChannel) {
+                FileChannel fileChannel = (FileChannel) channel;
+                return fileChannel.position() >= fileChannel.size();
+            }
+            return false;
+        }
+    }
+}
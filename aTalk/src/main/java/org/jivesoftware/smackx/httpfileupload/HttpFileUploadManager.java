@@ -16,13 +16,10 @@
  */
 package org.jivesoftware.smackx.httpfileupload;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.security.InvalidAlgorithmParameterException;
@@ -35,8 +32,6 @@ import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.crypto.NoSuchPaddingException;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
@@ -54,8 +49,6 @@ import org.jivesoftware.smack.proxy.ProxyInfo;
 
 import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
 import org.jivesoftware.smackx.disco.packet.DiscoverInfo;
-import org.jivesoftware.smackx.httpfileupload.AbstractHttpUploadException.HttpUploadErrorException;
-import org.jivesoftware.smackx.httpfileupload.AbstractHttpUploadException.HttpUploadIOException;
 import org.jivesoftware.smackx.httpfileupload.UploadService.Version;
 import org.jivesoftware.smackx.httpfileupload.element.Slot;
 import org.jivesoftware.smackx.httpfileupload.element.SlotRequest;
@@ -270,10 +263,7 @@ public final class HttpFileUploadManager extends Manager {
             throw new FileNotFoundException("The path " + file.getAbsolutePath() + " is not a file");
         }
         final Slot slot = requestSlot(file.getName(), file.length(), "application/octet-stream");
-        final long fileSize = file.length();
-        // Construct the FileInputStream first to make sure we can actually read the file.
-        final FileInputStream fis = new FileInputStream(file);
-        upload(fis, fileSize, slot, listener);
+        new HttpFileUploadEngine(file, null, null, slot, () -> createPutConnection(slot), listener).upload();
         return slot.getGetUrl();
     }
 
@@ -319,7 +309,7 @@ public final class HttpFileUploadManager extends Manager {
             throw new IllegalArgumentException("File size cannot be negative");
         }
         final Slot slot = requestSlot(fileName, fileSize, "application/octet-stream");
-        upload(inputStream, fileSize, slot, listener);
+        new HttpFileUploadEngine(inputStream, fileSize, slot, () -> createPutConnection(slot), listener).upload();
         return slot.getGetUrl();
     }
 
@@ -358,7 +348,7 @@ public final class HttpFileUploadManager extends Manager {
         }
 
         // The encrypted file will contain an extra block with the AEAD MAC.
-        long cipherFileLength = file.length() + 16;
+        long cipherFileLength = file.length() + OmemoMediaSharingUtils.LEN_AUTH_TAG;
 
         final Slot slot = requestSlot(file.getName(), cipherFileLength, "application/octet-stream");
         URL slotUrl = slot.getGetUrl();
@@ -366,13 +356,9 @@ public final class HttpFileUploadManager extends Manager {
         // fresh AES key + iv
         byte[] key = OmemoMediaSharingUtils.generateRandomKey();
         byte[] iv = OmemoMediaSharingUtils.generateRandomIV();
-        Cipher cipher = OmemoMediaSharingUtils.encryptionCipherFrom(key, iv);
 
-        FileInputStream fis = new FileInputStream(file);
-        // encrypt the file on the fly - encryption actually happens below in uploadFile()
-        CipherInputStream cis = new CipherInputStream(fis, cipher);
-
-        upload(cis, cipherFileLength, slot, listener);
+        // encrypt the file on the fly - encryption actually happens in the upload engine reader stage
+        new HttpFileUploadEngine(file, key, iv, slot, () -> createPutConnection(slot), listener).upload();
         return new AesgcmUrl(slotUrl, key, iv);
     }
 
@@ -489,7 +475,14 @@ public final class HttpFileUploadManager extends Manager {
         this.tlsSocketFactory = tlsContext.getSocketFactory();
     }
 
-    private void upload(InputStream iStream, long fileSize, Slot slot, UploadProgressListener listener) throws IOException {
+    /**
+     * Create a connection to the slot PUT URL, with the slot headers and the tls settings applied.
+     *
+     * @param slot the upload slot
+     * @return the url connection
+     * @throws IOException if an I/O error occurred.
+     */
+    private HttpURLConnection createPutConnection(Slot slot) throws IOException {
         final URL putUrl = slot.getPutUrl();
         final XMPPConnection connection = connection();
         final HttpURLConnection urlConnection = createURLConnection(connection, putUrl);
@@ -511,10 +504,6 @@ public final class HttpFileUploadManager extends Manager {
             }
         }
 
-        urlConnection.setRequestMethod("PUT");
-        urlConnection.setUseCaches(false);
-        urlConnection.setDoOutput(true);
-        urlConnection.setFixedLengthStreamingMode(fileSize);
         urlConnection.setRequestProperty("Content-Type", "application/octet-stream");
         for (Map.Entry<String, String> header : slot.getHeaders().entrySet()) {
             urlConnection.setRequestProperty(header.getKey(), header.getValue());
@@ -525,63 +514,7 @@ public final class HttpFileUploadManager extends Manager {
             HttpsURLConnection httpsUrlConnection = (HttpsURLConnection) urlConnection;
             httpsUrlConnection.setSSLSocketFactory(tlsSocketFactory);
         }
-
-        try {
-            OutputStream outputStream = urlConnection.getOutputStream();
-
-            long bytesSend = 0;
-
-            if (listener != null) {
-                listener.onUploadProgress(0, fileSize);
-            }
-
-            BufferedInputStream inputStream = new BufferedInputStream(iStream);
-
-            // TODO Factor in extra static method (and re-use e.g. in bytestream code).
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            try {
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                    bytesSend += bytesRead;
-
-                    if (listener != null) {
-                        listener.onUploadProgress(bytesSend, fileSize);
-                    }
-                }
-            }
-            finally {
-                try {
-                    inputStream.close();
-                }
-                // Must include IllegalStateException: GCM cipher cannot be reused for encryption (happen on Note-5)
-                catch (IOException | IllegalStateException e) {
-                    LOGGER.log(Level.WARNING, "Exception while closing input stream", e);
-                }
-                try {
-                    outputStream.close();
-                }
-                catch (IOException e) {
-                    LOGGER.log(Level.WARNING, "Exception while closing output stream", e);
-                }
-            }
-
-            int status = urlConnection.getResponseCode();
-            switch (status) {
-            case HttpURLConnection.HTTP_OK:
-            case HttpURLConnection.HTTP_CREATED:
-            case HttpURLConnection.HTTP_NO_CONTENT:
-                break;
-            default:
-                throw new HttpUploadErrorException(status, urlConnection.getResponseMessage(), fileSize, slot);
-            }
-        }
-        catch (IOException e) {
-            throw new HttpUploadIOException(fileSize, slot, e);
-        }
-        finally {
-            urlConnection.disconnect();
-        }
+        return urlConnection;
     }
 
     private static HttpURLConnection createURLConnection(XMPPConnection connection, URL putUrl) throws IOException {
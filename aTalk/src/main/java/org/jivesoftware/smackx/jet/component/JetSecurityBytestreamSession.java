@@ -45,6 +45,24 @@ public class JetSecurityBytestreamSession extends JingleSecurityBytestreamSessio
         return new CipherOutputStream(wrapped.getOutputStream(), cipher);
     }
 
+    /**
+     * Get the cipher of this session, for a data path that applies the cipher directly on its own buffers.
+     *
+     * @return the session cipher
+     */
+    public Cipher getCipher() {
+        return cipher;
+    }
+
+    /**
+     * Get the underlying unencrypted bytestream session.
+     *
+     * @return the wrapped bytestream session
+     */
+    public BytestreamSession getWrappedSession() {
+        return wrapped;
+    }
+
     @Override
     public void close() throws IOException {
         wrapped.close();
@@ -0,0 +1,286 @@
+/*
+ *
+ * Copyright 2017-2022 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.jingle_filetransfer.component;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+import javax.crypto.Cipher;
+
+import org.jivesoftware.smackx.bytestreams.BytestreamSession;
+import org.jivesoftware.smackx.jet.component.JetSecurityBytestreamSession;
+
+/**
+ * Data path of the Jingle file transfer between the local file and the bytestream session.
+ *
+ * The content is copied in large blocks through pooled buffers. The bytestream sessions only expose streams, so the
+ * copy cannot be delegated to the kernel; large blocks keep the per-call overhead low instead. For JET encrypted
+ * sessions, the cipher and the file hash are applied directly in the copy loop on the same buffers, instead of through
+ * a chain of cipher and digest streams.
+ *
+ * The copy loop only updates a byte counter; the progress listeners are notified by a shared scheduler at a fixed
+ * interval, so they never stall the data transfer.
+ *
+ * @author Eng Chong Meng
+ */
+final class JingleFileStreamer {
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    // Extra output space for the cipher buffered partial block and the authentication tag
+    private static final int SLACK_SIZE = 64;
+
+    private static final int POOL_SIZE = 4;
+
+    private static final long PROGRESS_INTERVAL = 100;
+
+    private static final BlockingQueue<byte[]> bufferPool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private static final ScheduledExecutorService progressScheduler = Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+                Thread thread = new Thread(runnable, "JingleFileTransfer progress");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final BooleanSupplier mCancelled;
+    private final LongConsumer mProgress;
+
+    private volatile long mByteCount = 0;
+    private long mLastReported = 0;
+
+    // Set when the transfer has ended; a periodic report still running must not follow the final report.
+    private volatile boolean mCompleted = false;
+
+    /**
+     * Create a streamer for a single file transfer.
+     *
+     * @param cancelled returns true when the user has cancelled the transfer
+     * @param progress receives the number of bytes transferred so far
+     */
+    JingleFileStreamer(BooleanSupplier cancelled, LongConsumer progress) {
+        mCancelled = cancelled;
+        mProgress = progress;
+    }
+
+    /**
+     * Send the source content to the bytestream session.
+     *
+     * @param source the file content source
+     * @param session the bytestream session; may be a JET encrypted session
+     * @return the number of source bytes sent
+     * @throws IOException if an I/O error occurred.
+     */
+    long send(InputStream source, BytestreamSession session) throws IOException {
+        ScheduledFuture<?> progressTask = startProgressReporter();
+        byte[] buffer = acquireBuffer();
+        try {
+            if (session instanceof JetSecurityBytestreamSession) {
+                JetSecurityBytestreamSession jetSession = (JetSecurityBytestreamSession) session;
+                OutputStream out = jetSession.getWrappedSession().getOutputStream();
+                encryptCopy(source, out, jetSession.getCipher(), buffer);
+                out.flush();
+                out.close();
+            }
+            else {
+                OutputStream out = session.getOutputStream();
+                int length;
+                while (!mCancelled.getAsBoolean() && (length = source.read(buffer, 0, BUFFER_SIZE)) != -1) {
+                    out.write(buffer, 0, length);
+                    mByteCount += length;
+                }
+                out.flush();
+                out.close();
+            }
+        } finally {
+            releaseBuffer(buffer);
+            stopProgressReporter(progressTask);
+        }
+        return mByteCount;
+    }
+
+    /**
+     * Receive the file content from the bytestream session into the target.
+     *
+     * @param session the bytestream session; may be a JET encrypted session
+     * @param target the file content target
+     * @param digest the message digest to be updated with the received content; may be null
+     * @param fileSize the expected file size; the transfer ends when it is reached
+     * @return the number of bytes received
+     * @throws IOException if an I/O error occurred.
+     */
+    long receive(BytestreamSession session, OutputStream target, MessageDigest digest, long fileSize)
+            throws IOException {
+        ScheduledFuture<?> progressTask = startProgressReporter();
+        byte[] buffer = acquireBuffer();
+        InputStream in = null;
+        try {
+            if (session instanceof JetSecurityBytestreamSession) {
+                JetSecurityBytestreamSession jetSession = (JetSecurityBytestreamSession) session;
+                in = jetSession.getWrappedSession().getInputStream();
+                decryptCopy(in, target, jetSession.getCipher(), digest, buffer);
+            }
+            else {
+                in = session.getInputStream();
+                int length;
+                while (!mCancelled.getAsBoolean() && (length = in.read(buffer, 0, BUFFER_SIZE)) != -1) {
+                    if (digest != null)
+                        digest.update(buffer, 0, length);
+                    target.write(buffer, 0, length);
+                    mByteCount += length;
+                    if (mByteCount == fileSize)
+                        break;
+                }
+            }
+        } finally {
+            releaseBuffer(buffer);
+            stopProgressReporter(progressTask);
+            if (in != null)
+                in.close();
+        }
+        return mByteCount;
+    }
+
+    /**
+     * Encrypt the source into the raw bytestream output; the cipher is applied in the copy loop.
+     */
+    private void encryptCopy(InputStream source, OutputStream out, Cipher cipher, byte[] buffer)
+            throws IOException {
+        byte[] outBuf = acquireBuffer();
+        try {
+            FileChannel channel = (source instanceof FileInputStream) ? ((FileInputStream) source).getChannel() : null;
+            ByteBuffer inBuffer = ByteBuffer.wrap(buffer, 0, BUFFER_SIZE);
+            int length;
+            while (!mCancelled.getAsBoolean()) {
+                if (channel != null) {
+                    inBuffer.clear();
+                    length = channel.read(inBuffer);
+                }
+                else {
+                    length = source.read(buffer, 0, BUFFER_SIZE);
+                }
+                if (length == -1)
+                    break;
+
+                int count = cipher.update(buffer, 0, length, outBuf, 0);
+                out.write(outBuf, 0, count);
+                mByteCount += length;
+            }
+            int count = cipher.doFinal(outBuf, 0);
+            out.write(outBuf, 0, count);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Encryption failed: " + e.getMessage(), e);
+        } finally {
+            releaseBuffer(outBuf);
+        }
+    }
+
+    /**
+     * Decrypt the raw bytestream input into the target, updating the digest with the plain content in the same
+     * loop; the authentication tag is verified at end of stream.
+     */
+    private void decryptCopy(InputStream in, OutputStream target, Cipher cipher, MessageDigest digest,
+            byte[] buffer) throws IOException {
+        byte[] outBuf = acquireBuffer();
+        try {
+            FileChannel channel = (target instanceof FileOutputStream) ? ((FileOutputStream) target).getChannel() : null;
+            int length;
+            while (!mCancelled.getAsBoolean() && (length = in.read(buffer, 0, BUFFER_SIZE)) != -1) {
+                int count = cipher.update(buffer, 0, length, outBuf, 0);
+                writePlain(outBuf, count, target, channel, digest);
+            }
+            if (!mCancelled.getAsBoolean()) {
+                int count = cipher.doFinal(outBuf, 0);
+                writePlain(outBuf, count, target, channel, digest);
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Decryption failed: " + e.getMessage(), e);
+        } finally {
+            releaseBuffer(outBuf);
+        }
+    }
+
+    private void writePlain(byte[] data, int length, OutputStream target, FileChannel channel, MessageDigest digest)
+            throws IOException {
+        if (length <= 0)
+            return;
+
+        if (digest != null)
+            digest.update(data, 0, length);
+        if (channel != null) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(data, 0, length);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        }
+        else {
+            target.write(data, 0, length);
+        }
+        mByteCount += length;
+    }
+
+    private ScheduledFuture<?> startProgressReporter() {
+        mCompleted = false;
+        return progressScheduler.scheduleWithFixedDelay(() -> reportProgress(false),
+                PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopProgressReporter(ScheduledFuture<?> progressTask) {
+        mCompleted = true;
+        progressTask.cancel(true);
+        reportProgress(true);
+    }
+
+    /**
+     * Report the byte count if it has changed since the last report.
+     *
+     * @param last true for the final report at the end of the transfer
+     */
+    private synchronized void reportProgress(boolean last) {
+        if (mCompleted && !last)
+            return;
+
+        long byteCount = mByteCount;
+        if (byteCount != mLastReported) {
+            mLastReported = byteCount;
+            mProgress.accept(byteCount);
+        }
+    }
+
+    private static byte[] acquireBuffer() {
+        byte[] buffer = bufferPool.poll();
+        return (buffer != null) ? buffer : new byte[BUFFER_SIZE + SLACK_SIZE];
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        bufferPool.offer(buffer);
+    }
+}
@@ -19,9 +19,7 @@ package org.jivesoftware.smackx.jingle_filetransfer.component;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.logging.Level;
@@ -80,32 +78,14 @@ public class JingleIncomingFileOffer extends AbstractJingleFileOffer implements
             LOGGER.log(Level.INFO, "File offer had checksum: " + digest.toString());
         }
 
-        InputStream inputStream = null;
         try {
-            inputStream = bytestreamSession.getInputStream();
+            JingleFileStreamer streamer = new JingleFileStreamer(() -> mState == State.cancelled,
+                    readByte -> notifyProgressListeners((int) readByte));
+            streamer.receive(bytestreamSession, target, digest, metadata.getSize());
 
-            if (digest != null) {
-                inputStream = new DigestInputStream(inputStream, digest);
-            }
-
-            int length;
-            int readByte = 0;
-            long fileSize = metadata.getSize();
-            byte[] readBuf = new byte[4096];
-            while ((length = inputStream.read(readBuf)) >= 0) {
-                // User cancels incoming file transfer in active progress.
-                if (mState == State.cancelled) {
-                    LOGGER.log(Level.INFO, "User canceled file offer in active transfer.");
-                    break;
-                }
-
-                target.write(readBuf, 0, length);
-                readByte += length;
-                // LOGGER.log(Level.INFO, "Read " + readByte + " (" + length + ") of " + fileSize + " bytes.");
-                notifyProgressListeners(readByte);
-                if (readByte == fileSize) {
-                    break;
-                }
+            // User cancels incoming file transfer in active progress.
+            if (mState == State.cancelled) {
+                LOGGER.log(Level.INFO, "User canceled file offer in active transfer.");
             }
             LOGGER.log(Level.INFO, "Reading/Writing file finished: " + fname);
         }
@@ -113,19 +93,10 @@ public class JingleIncomingFileOffer extends AbstractJingleFileOffer implements
             LOGGER.log(Level.SEVERE, "Cannot get InputStream from BytestreamSession: " + e, e);
             // will cause ConcurrentModificationException as progressListener will be removed onError.
             // notifyProgressListenersOnError(JingleReason.Reason.connectivity_error, e.getMessage());
+            digest = null;
         }
         finally {
             mState = State.ended;
-            if (inputStream != null) {
-                try {
-                    inputStream.close();
-                    LOGGER.log(Level.INFO, "CipherInputStream closed.");
-                }
-                catch (IOException e) {
-                    LOGGER.log(Level.WARNING, "Could not close InputStream: " + e, e);
-                }
-            }
-
             if (target != null) {
                 try {
                     target.close();
@@ -137,8 +108,8 @@ public class JingleIncomingFileOffer extends AbstractJingleFileOffer implements
             }
         }
 
-        if (digest != null && inputStream != null) {
-            byte[] mDigest = ((DigestInputStream) inputStream).getMessageDigest().digest();
+        if (digest != null) {
+            byte[] mDigest = digest.digest();
             if (!Arrays.equals(hashElement.getHash(), mDigest)) {
                 LOGGER.log(Level.WARNING, "CHECKSUM MISMATCH!");
             }
@@ -21,7 +21,6 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -68,31 +67,15 @@ public class JingleOutgoingFileOffer extends AbstractJingleFileOffer implements
         mState = State.active;
         notifyProgressListenersStarted();
 
-        OutputStream outputStream;
         try {
-            outputStream = bytestreamSession.getOutputStream();
+            JingleFileStreamer streamer = new JingleFileStreamer(() -> mState == State.cancelled,
+                    writeByte -> notifyProgressListeners((int) writeByte));
+            streamer.send(mSource, bytestreamSession);
 
-            int writeByte = 0;
-            byte[] buf = new byte[8192];
-            while (true) {
-                int length = mSource.read(buf);
-                if (length < 0) {
-                    break;
-                }
-                // User cancels JFT file transfer in active data streaming.
-                if (mState == State.cancelled) {
-                    LOGGER.log(Level.INFO, "User canceled file offer in active streaming.");
-                    break;
-                }
-
-                outputStream.write(buf, 0, length);
-                writeByte += length;
-                notifyProgressListeners(writeByte);
+            // User cancels JFT file transfer in active data streaming.
+            if (mState == State.cancelled) {
+                LOGGER.log(Level.INFO, "User canceled file offer in active streaming.");
             }
-
-            outputStream.flush();
-            outputStream.close();
-
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Exception while sending file: " + e, e);
             notifyProgressListenersOnError(JingleReason.Reason.connectivity_error, e.getMessage());
@@ -44,6 +44,7 @@ import org.jivesoftware.smackx.jingle_rtp.element.IceUdpTransportCandidate;
 import org.jivesoftware.smackx.jingle_rtp.element.IceUdpTransportRemoteCandidate;
 import org.jivesoftware.smackx.jingle_rtp.element.Parameter;
 import org.jivesoftware.smackx.jingle_rtp.element.PayloadType;
+import org.jivesoftware.smackx.jingle_rtp.element.RtcpFb;
 import org.jivesoftware.smackx.jingle_rtp.element.RtcpMux;
 import org.jivesoftware.smackx.jingle_rtp.element.RtpDescription;
 import org.jivesoftware.smackx.jingle_rtp.element.RtpHeader;
@@ -59,6 +60,11 @@ import timber.log.Timber;
  * @author Eng Chong Meng
  */
 public class JingleUtils {
+    /**
+     * The RTCP feedback type of the transport-wide congestion control feedback.
+     */
+    private static final String RTCP_FB_TRANSPORT_CC = "transport-cc";
+
     /**
      * Extracts and returns the list of <code>MediaFormat</code>s advertised in <code>description</code>
      * preserving their oder and registering dynamic payload type numbers in the specified
@@ -511,6 +517,16 @@ public class JingleUtils {
                     .setNameValue(entry.getKey(), entry.getValue())
                     .build());
         }
+
+        /*
+         * Ask for the transport-cc feedback of the video, which the send-side bandwidth estimation
+         * uses along with the transport-wide sequence numbers RTP header extension.
+         */
+        if (MediaType.VIDEO.equals(format.getMediaType())) {
+            ptBuilder.addRtcpFeedbackType(RtcpFb.getBuilder()
+                    .setFeedbackType(RTCP_FB_TRANSPORT_CC)
+                    .build());
+        }
         return ptBuilder.build();
     }
 
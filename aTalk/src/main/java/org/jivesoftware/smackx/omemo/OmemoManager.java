@@ -39,6 +39,7 @@ import org.jivesoftware.smack.Manager;
 import org.jivesoftware.smack.SmackConfiguration;
 import org.jivesoftware.smack.SmackException;
 import org.jivesoftware.smack.SmackException.NotConnectedException;
+import org.jivesoftware.smack.StanzaListener;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
 import org.jivesoftware.smack.packet.Message;
@@ -50,6 +51,7 @@ import org.jivesoftware.smack.packet.id.StandardStanzaIdSource;
 import org.jivesoftware.smack.util.Async;
 import org.jivesoftware.smack.util.stringencoder.Base64;
 
+import org.jivesoftware.smackx.carbons.CarbonCopyReceivedListener;
 import org.jivesoftware.smackx.carbons.CarbonManager;
 import org.jivesoftware.smackx.carbons.packet.CarbonExtension;
 import org.jivesoftware.smackx.disco.ServiceDiscoveryManager;
@@ -139,6 +141,10 @@ public final class OmemoManager extends Manager implements JingleEnvelopeManager
     PepEventListener<OmemoDeviceListElement> pepDeviceListEventListener_Omemo;
     PepEventListener<OmemoDeviceListElement> pepDeviceListEventListener_Axolotl;
 
+    // The same instances must be given to add and remove; a method reference is a new instance each time.
+    private final StanzaListener omemoMessageStanzaListener = this::internalOmemoMessageStanzaListener;
+    private final CarbonCopyReceivedListener omemoCarbonCopyListener = this::internalOmemoCarbonCopyListener;
+
     /**
      * Private constructor.
      *
@@ -1090,8 +1096,12 @@ public final class OmemoManager extends Manager implements JingleEnvelopeManager
         CarbonManager carbonManager = CarbonManager.getInstanceFor(connection());
 
         // Remove listeners to avoid them getting added twice
-        connection().removeAsyncStanzaListener(this::internalOmemoMessageStanzaListener);
-        carbonManager.removeCarbonCopyReceivedListener(this::internalOmemoCarbonCopyListener);
+        if (pepDeviceListEventListener_Omemo != null) {
+            pepManager.removePepEventListener(pepDeviceListEventListener_Omemo);
+            pepManager.removePepEventListener(pepDeviceListEventListener_Axolotl);
+        }
+        connection().removeAsyncStanzaListener(omemoMessageStanzaListener);
+        carbonManager.removeCarbonCopyReceivedListener(omemoCarbonCopyListener);
 
         // Add both omemo PEP_NODE_DEVICES_x namespaces to PepEventListener.
         pepDeviceListEventListener_Omemo = new PepEventOmemoListener(true);
@@ -1102,8 +1112,8 @@ public final class OmemoManager extends Manager implements JingleEnvelopeManager
         pepManager.addPepEventListener(OmemoConstants.PEP_NODE_DEVICES_V_AXOLOTL, OmemoDeviceListElement.class,
                 pepDeviceListEventListener_Axolotl);
 
-        connection().addAsyncStanzaListener(this::internalOmemoMessageStanzaListener, OmemoManager::isOmemoMessage);
-        carbonManager.addCarbonCopyReceivedListener(this::internalOmemoCarbonCopyListener);
+        connection().addAsyncStanzaListener(omemoMessageStanzaListener, OmemoManager::isOmemoMessage);
+        carbonManager.addCarbonCopyReceivedListener(omemoCarbonCopyListener);
     }
 
     /**
@@ -1112,8 +1122,8 @@ public final class OmemoManager extends Manager implements JingleEnvelopeManager
     public void stopStanzaAndPEPListeners() {
         pepManager.removePepEventListener(pepDeviceListEventListener_Omemo);
         pepManager.removePepEventListener(pepDeviceListEventListener_Axolotl);
-        connection().removeAsyncStanzaListener(this::internalOmemoMessageStanzaListener);
-        CarbonManager.getInstanceFor(connection()).removeCarbonCopyReceivedListener(this::internalOmemoCarbonCopyListener);
+        connection().removeAsyncStanzaListener(omemoMessageStanzaListener);
+        CarbonManager.getInstanceFor(connection()).removeCarbonCopyReceivedListener(omemoCarbonCopyListener);
     }
 
     /**
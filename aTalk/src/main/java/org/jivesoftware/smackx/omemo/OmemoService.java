@@ -24,6 +24,7 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -33,6 +34,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -110,6 +115,26 @@ public abstract class OmemoService<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey,
 
     private static final long MILLIS_PER_HOUR = 1000L * 60 * 60;
 
+    /**
+     * The number of threads, including the caller, which decrypt the payloads of a MAM query result.
+     */
+    private static final int MAM_DECRYPT_WORKERS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * The minimum number of payloads of a MAM query result to decrypt them in parallel.
+     */
+    private static final int MAM_PARALLEL_DECRYPT_THRESHOLD = 16;
+
+    /**
+     * Pool used to decrypt the payloads of a MAM query result in parallel, once their keys have been retrieved.
+     */
+    private static final ExecutorService MAM_DECRYPT_EXECUTOR = Executors.newFixedThreadPool(MAM_DECRYPT_WORKERS - 1,
+            runnable -> {
+                Thread thread = new Thread(runnable, "OMEMO MAM decryption");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private static OmemoService<?, ?, ?, ?, ?, ?, ?, ?, ?> INSTANCE;
 
     private OmemoStore<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey, T_Sess, T_Addr, T_ECPub, T_Bundle, T_Ciph> omemoStore;
@@ -469,6 +494,27 @@ public abstract class OmemoService<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey,
         int senderId = omemoElement.getHeader().getSid();
         OmemoDevice senderDevice = new OmemoDevice(senderJid, senderId);
 
+        return decryptPayload(unwrapMessageKey(manager, senderDevice, omemoElement));
+    }
+
+    /**
+     * Retrieve the message key of an OMEMO element from the ratchet of its sender device, and reset the message
+     * counter of that device. This steps the ratchet and uses the store.
+     *
+     * @param manager OmemoManager.
+     * @param senderDevice the device which sent the element.
+     * @param omemoElement omemoElement.
+     *
+     * @return the element with its message key and the fingerprint of its sender.
+     *
+     * @throws CorruptedOmemoKeyException if the identityKey of the sender is damaged.
+     * @throws CryptoFailedException if the message key cannot be decrypted.
+     * @throws NoRawSessionException if we have no session with the device and it sent a normal (non-preKey) message.
+     * @throws IOException if an I/O error occurred.
+     */
+    private UnwrappedMessage unwrapMessageKey(OmemoManager manager, OmemoDevice senderDevice,
+            OmemoElement omemoElement)
+            throws CorruptedOmemoKeyException, CryptoFailedException, NoRawSessionException, IOException {
         CipherAndAuthTag cipherAndAuthTag = getOmemoRatchet(manager)
                 .retrieveMessageKeyAndAuthTag(senderDevice, omemoElement);
 
@@ -484,18 +530,48 @@ public abstract class OmemoService<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey,
         // Reset the message counter.
         omemoStore.storeOmemoMessageCounter(manager.getOwnDevice(), senderDevice, 0);
 
-        if (omemoElement.isMessageElement()) {
-            // Use symmetric message key to decrypt message payload.
-            String plaintext = OmemoRatchet.decryptMessageElement(omemoElement, cipherAndAuthTag);
+        return new UnwrappedMessage(omemoElement, cipherAndAuthTag, senderFingerprint, senderDevice);
+    }
 
-            return new OmemoMessage.Received(omemoElement, cipherAndAuthTag.getKey(), cipherAndAuthTag.getIv(),
-                    plaintext, senderFingerprint, senderDevice, cipherAndAuthTag.wasPreKeyEncrypted());
+    /**
+     * Decrypt the payload of an OMEMO element with its unwrapped message key. This needs neither the session nor the
+     * store, so it may run on any thread.
+     *
+     * @param unwrapped the element with its message key.
+     *
+     * @return decrypted OmemoMessage object.
+     *
+     * @throws CryptoFailedException if decryption fails.
+     */
+    static OmemoMessage.Received decryptPayload(UnwrappedMessage unwrapped) throws CryptoFailedException {
+        OmemoElement omemoElement = unwrapped.element;
+        CipherAndAuthTag cipherAndAuthTag = unwrapped.cipherAndAuthTag;
 
+        // KeyTransportMessages don't require decryption of the payload.
+        String plaintext = null;
+        if (omemoElement.isMessageElement()) {
+            // Use symmetric message key to decrypt message payload.
+            plaintext = OmemoRatchet.decryptMessageElement(omemoElement, cipherAndAuthTag);
         }
-        else {
-            // KeyTransportMessages don't require decryption of the payload.
-            return new OmemoMessage.Received(omemoElement, cipherAndAuthTag.getKey(), cipherAndAuthTag.getIv(),
-                    null, senderFingerprint, senderDevice, cipherAndAuthTag.wasPreKeyEncrypted());
+        return new OmemoMessage.Received(omemoElement, cipherAndAuthTag.getKey(), cipherAndAuthTag.getIv(),
+                plaintext, unwrapped.senderFingerprint, unwrapped.senderDevice, cipherAndAuthTag.wasPreKeyEncrypted());
+    }
+
+    /**
+     * An OMEMO element whose message key has been retrieved from the ratchet of its sender device.
+     */
+    static class UnwrappedMessage {
+        final OmemoElement element;
+        final CipherAndAuthTag cipherAndAuthTag;
+        final OmemoFingerprint senderFingerprint;
+        final OmemoDevice senderDevice;
+
+        UnwrappedMessage(OmemoElement element, CipherAndAuthTag cipherAndAuthTag,
+                OmemoFingerprint senderFingerprint, OmemoDevice senderDevice) {
+            this.element = element;
+            this.cipherAndAuthTag = cipherAndAuthTag;
+            this.senderFingerprint = senderFingerprint;
+            this.senderDevice = senderDevice;
         }
     }
 
@@ -1129,27 +1205,118 @@ public abstract class OmemoService<T_IdKeyPair, T_IdKey, T_PreKey, T_SigPreKey,
      */
     List<MessageOrOmemoMessage> decryptMamQueryResult(OmemoManager.LoggedInOmemoManager managerGuard,
             MamManager.MamQuery mamQuery) throws IOException {
-        List<MessageOrOmemoMessage> result = new ArrayList<>();
-        OmemoElement element;
-        for (Message message : mamQuery.getMessages()) {
-            if ((element = OmemoManager.getOmemoMessage(message)) != null) {
-                // Decrypt OMEMO messages
+        List<Message> messages = mamQuery.getMessages();
+        MessageOrOmemoMessage[] result = new MessageOrOmemoMessage[messages.size()];
+        List<MamPayload> payloads = new ArrayList<>();
+
+        // Unwrap the message keys in archive order: this steps the ratchets and uses the store (libsignal serializes
+        // it anyway), so it is done on this thread with the same lock as the other decryption paths.
+        OmemoManager manager = managerGuard.get();
+        synchronized (manager) {
+            for (int i = 0; i < result.length; i++) {
+                Message message = messages.get(i);
+                OmemoElement element = OmemoManager.getOmemoMessage(message);
+                if (element == null) {
+                    // Wrap cleartext messages
+                    result[i] = new MessageOrOmemoMessage(message);
+                    continue;
+                }
+
+                OmemoDevice senderDevice = new OmemoDevice(message.getFrom().asBareJid(), element.getHeader().getSid());
                 try {
-                    OmemoMessage.Received omemoMessage = decryptMessage(managerGuard, message.getFrom().asBareJid(), element);
-                    result.add(new MessageOrOmemoMessage(omemoMessage));
+                    UnwrappedMessage unwrapped = unwrapMessageKey(manager, senderDevice, element);
+                    if (element.isMessageElement()) {
+                        // The payload is decrypted below, without the session.
+                        payloads.add(new MamPayload(i, unwrapped));
+                    }
+                    else {
+                        result[i] = new MessageOrOmemoMessage(decryptPayload(unwrapped));
+                    }
                 }
                 catch (NoRawSessionException | CorruptedOmemoKeyException | CryptoFailedException e) {
-                    LOGGER.log(Level.WARNING, "decryptMamQueryResult failed to decrypt message from "
-                            + message.getFrom() + " due to corrupted session/key: " + e.getMessage());
-                    result.add(new MessageOrOmemoMessage(message));
+                    logMamDecryptionFailure(message, e);
+                    result[i] = new MessageOrOmemoMessage(message);
                 }
             }
-            else {
-                // Wrap cleartext messages
-                result.add(new MessageOrOmemoMessage(message));
+        }
+
+        // Decrypt the payloads with their AES keys, which needs neither the session nor the store.
+        if (payloads.size() < MAM_PARALLEL_DECRYPT_THRESHOLD) {
+            decryptMamPayloads(messages, payloads, 0, 1, result);
+            return Arrays.asList(result);
+        }
+
+        int workers = MAM_DECRYPT_WORKERS;
+        List<Future<?>> tasks = new ArrayList<>(workers);
+        for (int w = 1; w < workers; w++) {
+            final int first = w;
+            tasks.add(MAM_DECRYPT_EXECUTOR.submit(
+                    () -> decryptMamPayloads(messages, payloads, first, workers, result)));
+        }
+        decryptMamPayloads(messages, payloads, 0, workers, result);
+
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        }
+        catch (InterruptedException e) {
+            for (Future<?> task : tasks) {
+                task.cancel(true);
             }
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decrypting MAM query result", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Decrypt every <code>step</code>-th payload of a MAM query result, starting with the <code>first</code>.
+     * Each decrypted or failed message is stored at its archive index in the given result array.
+     *
+     * @param messages all messages of the MAM query result
+     * @param payloads the payloads to decrypt, with their message keys
+     * @param first the index in payloads of the first payload to decrypt
+     * @param step the distance in payloads between two payloads to decrypt
+     * @param result the array to receive the wrapped messages
+     */
+    static void decryptMamPayloads(List<Message> messages, List<MamPayload> payloads, int first, int step,
+            MessageOrOmemoMessage[] result) {
+        for (int p = first; p < payloads.size(); p += step) {
+            MamPayload payload = payloads.get(p);
+            try {
+                result[payload.index] = new MessageOrOmemoMessage(decryptPayload(payload.message));
+            }
+            catch (CryptoFailedException e) {
+                logMamDecryptionFailure(messages.get(payload.index), e);
+                result[payload.index] = new MessageOrOmemoMessage(messages.get(payload.index));
+            }
+        }
+    }
+
+    private static void logMamDecryptionFailure(Message message, Exception e) {
+        LOGGER.log(Level.WARNING, "decryptMamQueryResult failed to decrypt message from "
+                + message.getFrom() + " due to corrupted session/key: " + e.getMessage());
+    }
+
+    /**
+     * The payload of an OMEMO message of a MAM query result, whose message key has been retrieved.
+     */
+    static class MamPayload {
+        final int index;
+        final UnwrappedMessage message;
+
+        MamPayload(int index, UnwrappedMessage message) {
+            this.index = index;
+            this.message = message;
         }
-        return result;
     }
 
     @Override
@@ -25,6 +25,7 @@ import java.security.NoSuchAlgorithmException;
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
 
+import org.bouncycastle.crypto.modes.GCMModeCipher;
 import org.jivesoftware.smack.util.Objects;
 import org.jivesoftware.smack.util.StringUtils;
 
@@ -116,6 +117,17 @@ public class AesgcmUrl {
         return OmemoMediaSharingUtils.decryptionCipherFrom(keyBytes, ivBytes);
     }
 
+    /**
+     * Returns a streaming AES-GCM cipher, which can be used to decrypt (or re-encrypt) the offered file on the fly.
+     *
+     * @param forEncryption true for encryption mode, false for decryption mode
+     *
+     * @return streaming cipher
+     */
+    public GCMModeCipher getStreamingCipher(boolean forEncryption) {
+        return OmemoMediaSharingUtils.streamingCipherFrom(forEncryption, keyBytes, ivBytes);
+    }
+
     private static URL extractHttpsUrl(String aesgcmUrlString) {
         // aesgcm -> https
         String httpsUrlString = aesgcmUrlString.replaceFirst(PROTOCOL, "https");
@@ -27,6 +27,11 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMBlockCipher;
+import org.bouncycastle.crypto.modes.GCMModeCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
 import org.jivesoftware.smack.util.RandomUtil;
 
 /**
@@ -50,6 +55,8 @@ public class OmemoMediaSharingUtils {
     // Note: Contrary to what the ProtoXEP states, 16 byte IV length is used in the wild instead of 12.
     // At some point we should switch to 12 bytes though.
     private static final int LEN_IV = LEN_IV_16;
+    // 128 bit GCM authentication tag appended to the encrypted file
+    public static final int LEN_AUTH_TAG = 16;
 
     public static byte[] generateRandomIV() {
         return generateRandomIV(LEN_IV);
@@ -119,4 +126,22 @@ public class OmemoMediaSharingUtils {
         cipher.init(Cipher.ENCRYPT_MODE, secretKey, ivSpec);
         return cipher;
     }
+
+    /**
+     * Create a streaming AES-GCM cipher from a given key and iv.
+     * Unlike the JCE {@link Cipher}, whose GCM decryption mode buffers the whole ciphertext until the final call,
+     * the returned cipher releases decrypted data as it is processed, holding back only the trailing
+     * authentication tag which is verified on {@link GCMModeCipher#doFinal(byte[], int)}.
+     *
+     * @param forEncryption true for encryption mode, false for decryption mode
+     * @param key aes encryption key
+     * @param iv initialization vector
+     *
+     * @return initialized streaming cipher
+     */
+    public static GCMModeCipher streamingCipherFrom(boolean forEncryption, byte[] key, byte[] iv) {
+        GCMModeCipher cipher = GCMBlockCipher.newInstance(AESEngine.newInstance());
+        cipher.init(forEncryption, new AEADParameters(new KeyParameter(key), LEN_AUTH_TAG * 8, iv));
+        return cipher;
+    }
 }
@@ -0,0 +1,348 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.rtp.sendsidebandwidthestimation;
+
+import org.atalk.service.libjitsi.LibJitsi;
+import org.atalk.util.logging.DiagnosticContext;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Drives a {@link BandwidthEstimatorImpl} with a deterministic simulation of one video sender behind
+ * a drop-tail bottleneck whose capacity follows a trace, in simulated time, and prints the link
+ * utilization, the queuing delay, the loss and the time the estimate takes to converge after each
+ * change of the capacity.
+ * <p>
+ * The receiver sends the transport-cc feedback of a batch of packets once it spans 100 ms (20 ms if
+ * it ends a frame) and a receiver report every second; the propagation delay is 25 ms each way. The
+ * encoder follows the estimate, every {@link #FPS}th of a second, with a key frame of 8 times the
+ * size of a frame every <code>keyInterval</code> millis.
+ * <p>
+ * Run with <code>java org.atalk.impl.neomedia.rtp.sendsidebandwidthestimation.BandwidthEstimationSimulation
+ * [keyInterval] [bufferBytes] [trace]</code>.
+ *
+ * @author Eng Chong Meng
+ */
+public class BandwidthEstimationSimulation
+{
+    /**
+     * The time origin of the simulation, in millis.
+     */
+    private static final long BASE_MS = 1000000000L;
+
+    /**
+     * The one-way propagation delay, in millis.
+     */
+    private static final int PROPAGATION_MS = 25;
+
+    /**
+     * The maximum size of a packet, in bytes.
+     */
+    private static final int MTU = 1200;
+
+    /**
+     * The frame rate of the encoder.
+     */
+    private static final int FPS = 30;
+
+    /**
+     * The maximum bitrate of the encoder, in bits per second.
+     */
+    private static final long MAX_ENCODER_BPS = 2500000;
+
+    /**
+     * The maximum number of packets sent in a simulation.
+     */
+    private static final int MAX_PACKETS = 1 << 20;
+
+    private final BandwidthEstimatorImpl bwe;
+
+    /**
+     * The capacity of the bottleneck at a time, in bits per second.
+     */
+    private final LongUnaryOperator capacity;
+
+    private final long durationMs;
+
+    private final int bufferBytes;
+
+    private final long keyIntervalMs;
+
+    /**
+     * The events of the sender and of the receiver, by time.
+     */
+    private final TreeMap<Long, List<Runnable>> senderEvents = new TreeMap<>();
+
+    private final TreeMap<Long, List<Runnable>> receiverEvents = new TreeMap<>();
+
+    /**
+     * The RTT which the sender currently measures, in millis.
+     */
+    private long rttMs = 2 * PROPAGATION_MS;
+
+    private final long[] sendTimesMs = new long[MAX_PACKETS];
+
+    private final long[] arrivalTimesMs = new long[MAX_PACKETS];
+
+    private final int[] sizes = new int[MAX_PACKETS];
+
+    private int seq = 0;
+
+    /**
+     * The departure times and sizes of the packets in the bottleneck queue.
+     */
+    private final ArrayDeque<double[]> queue = new ArrayDeque<>();
+
+    private int queueBytes = 0;
+
+    private double lastDepartureMs = 0;
+
+    private int feedbackFrom = 0;
+
+    private int highestReceived = -1;
+
+    private long feedbackFirstArrivalMs = -1;
+
+    private int reportHighestReceived = -1;
+
+    private int reportReceived = 0;
+
+    private long capacityBits = 0;
+
+    private long deliveredBits = 0;
+
+    private long lost = 0;
+
+    private final double[] queueDelaysMs = new double[MAX_PACKETS];
+
+    private final long[] estimates;
+
+    private BandwidthEstimationSimulation(
+            LongUnaryOperator capacity, long durationMs, int bufferBytes, long keyIntervalMs)
+    {
+        this.capacity = capacity;
+        this.durationMs = durationMs;
+        this.bufferBytes = bufferBytes;
+        this.keyIntervalMs = keyIntervalMs;
+        estimates = new long[(int) durationMs];
+        Arrays.fill(arrivalTimesMs, -1);
+        bwe = new BandwidthEstimatorImpl(new DiagnosticContext(), () -> rttMs);
+    }
+
+    private static void at(TreeMap<Long, List<Runnable>> events, long t, Runnable event)
+    {
+        events.computeIfAbsent(t, k -> new ArrayList<>()).add(event);
+    }
+
+    private void run()
+    {
+        bwe.onRttUpdate(rttMs, rttMs);
+
+        double nextFrameMs = 0;
+        for (long t = 0; t < durationMs; t++) {
+            capacityBits += capacity.applyAsLong(t) / 1000;
+
+            List<Runnable> events = receiverEvents.remove(t);
+            if (events != null) {
+                events.forEach(Runnable::run);
+            }
+            events = senderEvents.remove(t);
+            if (events != null) {
+                events.forEach(Runnable::run);
+            }
+
+            if (t % 25 == 0) {
+                bwe.update(BASE_MS + t);
+            }
+            if (t % 1000 == 999) {
+                sendReceiverReport(t);
+            }
+            if (t >= nextFrameMs) {
+                sendFrame(t);
+                nextFrameMs += 1000.0 / FPS;
+            }
+            estimates[(int) t] = bwe.getLatestEstimate();
+        }
+    }
+
+    private void sendFrame(long t)
+    {
+        int bytes = (int) (Math.min(bwe.getLatestEstimate(), MAX_ENCODER_BPS) / 8 / FPS);
+        if (t % keyIntervalMs < 1000 / FPS) {
+            bytes = Math.max(12000, 8 * bytes);
+        }
+
+        while (bytes > 0) {
+            int size = Math.min(MTU, bytes);
+            bytes -= size;
+            send(t, size, bytes == 0);
+        }
+    }
+
+    private void send(long t, int size, boolean marked)
+    {
+        int s = seq++;
+        sendTimesMs[s] = BASE_MS + t;
+        sizes[s] = size;
+
+        while (!queue.isEmpty() && queue.peekFirst()[0] <= t) {
+            queueBytes -= (int) queue.pollFirst()[1];
+        }
+        if (queueBytes + size > bufferBytes) {
+            lost++;
+            return;
+        }
+
+        double departureMs = Math.max(t, lastDepartureMs) + size * 8000.0 / capacity.applyAsLong(t);
+        lastDepartureMs = departureMs;
+        queue.addLast(new double[]{departureMs, size});
+        queueBytes += size;
+        queueDelaysMs[s] = departureMs - t;
+
+        long arrivalMs = (long) Math.floor(departureMs) + PROPAGATION_MS;
+        at(receiverEvents, arrivalMs, () -> received(s, arrivalMs, marked));
+    }
+
+    private void received(int s, long arrivalMs, boolean marked)
+    {
+        arrivalTimesMs[s] = BASE_MS + arrivalMs;
+        deliveredBits += sizes[s] * 8L;
+        highestReceived = Math.max(highestReceived, s);
+        reportReceived++;
+
+        if (feedbackFirstArrivalMs == -1) {
+            feedbackFirstArrivalMs = arrivalMs;
+        }
+        long spanMs = arrivalMs - feedbackFirstArrivalMs;
+        if (spanMs > 100 || (spanMs > 20 && marked)) {
+            int from = feedbackFrom, to = highestReceived;
+            feedbackFrom = highestReceived + 1;
+            feedbackFirstArrivalMs = -1;
+
+            long nowMs = arrivalMs + PROPAGATION_MS;
+            at(senderEvents, nowMs, () -> {
+                int count = to - from + 1;
+                bwe.transportFeedbackReceived(
+                        Arrays.copyOfRange(sendTimesMs, from, to + 1),
+                        Arrays.copyOfRange(arrivalTimesMs, from, to + 1),
+                        Arrays.copyOfRange(sizes, from, to + 1), count, BASE_MS + nowMs);
+            });
+        }
+    }
+
+    private void sendReceiverReport(long t)
+    {
+        int expected = highestReceived - reportHighestReceived;
+        int fractionLost = (expected <= 0)
+                ? 0 : Math.max(0, Math.min(255, ((expected - reportReceived) << 8) / expected));
+        reportHighestReceived = highestReceived;
+        reportReceived = 0;
+
+        // The RTT includes the standing queue.
+        long rtt = 2 * PROPAGATION_MS + (long) Math.max(0, lastDepartureMs - t);
+        long nowMs = t + PROPAGATION_MS;
+        at(senderEvents, nowMs, () -> {
+            bwe.receiverBlockReceived(fractionLost, Math.max(expected, 0), BASE_MS + nowMs);
+            rttMs = rtt;
+            bwe.onRttUpdate(rtt, rtt);
+        });
+    }
+
+    /**
+     * Gets the time the estimate takes, after a change of the capacity, to stay for a second within
+     * 70% to 110% of the new capacity.
+     */
+    private String convergence(long fromMs, long toMs)
+    {
+        long c = capacity.applyAsLong(fromMs);
+        for (long t = fromMs; t < toMs - 1000; t++) {
+            boolean converged = true;
+            for (long u = t; u < t + 1000 && converged; u += 25) {
+                long e = estimates[(int) u];
+                converged = e >= 0.7 * c && e <= 1.1 * c;
+            }
+            if (converged) {
+                return String.format("%5.1fs", (t - fromMs) / 1000.0);
+            }
+        }
+        return "  n/a";
+    }
+
+    private String report(long[] changesMs)
+    {
+        int sent = seq;
+        double[] delays = new double[sent];
+        int n = 0;
+        for (int i = 0; i < sent; i++) {
+            if (arrivalTimesMs[i] != -1) {
+                delays[n++] = queueDelaysMs[i];
+            }
+        }
+        delays = Arrays.copyOf(delays, n);
+        Arrays.sort(delays);
+        double mean = Arrays.stream(delays).average().orElse(0);
+
+        StringBuilder sb = new StringBuilder(String.format(
+                "util %4.1f%%  queue delay mean %6.1f ms p95 %6.1f ms  loss %4.2f%%  convergence",
+                100.0 * deliveredBits / capacityBits, mean, (n == 0) ? 0 : delays[(int) (0.95 * n)],
+                100.0 * lost / sent));
+        for (int i = 0; i < changesMs.length; i++) {
+            sb.append(' ').append(convergence(changesMs[i],
+                    (i + 1 < changesMs.length) ? changesMs[i + 1] : durationMs));
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args)
+    {
+        long keyIntervalMs = (args.length > 0) ? Long.parseLong(args[0]) : 5000;
+        int bufferBytes = (args.length > 1) ? Integer.parseInt(args[1]) : 60000;
+        String trace = (args.length > 2) ? args[2] : "all";
+
+        // SendSideBandwidthEstimation reads its thresholds from the ConfigurationService.
+        LibJitsi.start();
+
+        if (trace.equals("all") || trace.equals("step")) {
+            BandwidthEstimationSimulation step = new BandwidthEstimationSimulation(
+                    t -> (t < 20000) ? 2000000 : (t < 40000) ? 500000 : 1500000,
+                    60000, bufferBytes, keyIntervalMs);
+            step.run();
+            System.out.println("step 2M/0.5M/1.5M : " + step.report(new long[]{0, 20000, 40000}));
+        }
+
+        if (trace.equals("all") || trace.equals("mobile")) {
+            // A random walk of the capacity, every second.
+            Random random = new Random(42);
+            long[] capacities = new long[60];
+            long c = 1000000;
+            for (int i = 0; i < capacities.length; i++) {
+                c = Math.max(300000, Math.min(2000000, c + (random.nextInt(5) - 2) * 150000));
+                capacities[i] = c;
+            }
+            BandwidthEstimationSimulation mobile = new BandwidthEstimationSimulation(
+                    t -> capacities[(int) (t / 1000)], 60000, bufferBytes, keyIntervalMs);
+            mobile.run();
+            System.out.println("mobile walk 1s    : " + mobile.report(new long[0]));
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.atalk.impl.neomedia.transform;
+
+import org.atalk.service.neomedia.MediaStream;
+import org.atalk.service.neomedia.RawPacket;
+import org.atalk.service.neomedia.stats.MediaStreamStats2;
+import org.atalk.service.neomedia.stats.SendTrackStats;
+import org.atalk.util.TimeProvider;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Drives a {@link RetransmissionRequesterDelegate} with a deterministic simulation, in simulated
+ * time, of a lossy path between a sender and the receiving stream, and prints the residual loss at
+ * playout and the cost of the retransmissions.
+ * <p>
+ * The sender sends two video tracks of 300 packets per second and an audio track of 50 packets per
+ * second. Both directions share a Gilbert-Elliott loss model, and have the same one-way delay plus
+ * up to 10% of in-order jitter. A packet is played out in time if it arrives, first sent or
+ * retransmitted, within the one-way delay plus the jitter buffer delay of its first sending. The
+ * sender retransmits every sequence number it is sent a NACK for.
+ * <p>
+ * Run with <code>java org.atalk.impl.neomedia.transform.RetransmissionRequesterSimulation
+ * oneWayMs jitterBufferMs pGoodToBad pBadToGood lossGood lossBad seconds</code>, e.g.
+ * <code>50 200 0.01 0.2 0.005 0.6 20</code> for bursty loss on a 100 ms RTT.
+ *
+ * @author Eng Chong Meng
+ */
+public class RetransmissionRequesterSimulation
+{
+    /**
+     * The SSRCs of the two video tracks and of the audio track.
+     */
+    private static final long[] SSRCS = {0x1111, 0x2222, 0x3333};
+
+    /**
+     * The time origin of the simulation, in millis.
+     */
+    private static final long BASE_MS = 1000000000L;
+
+    private final int oneWayMs;
+
+    private final int jitterBufferMs;
+
+    private final double pGoodToBad;
+
+    private final double pBadToGood;
+
+    private final double lossGood;
+
+    private final double lossBad;
+
+    private final Random random = new Random(42);
+
+    private boolean bad = false;
+
+    private long now = 0;
+
+    /**
+     * The events by time.
+     */
+    private final TreeMap<Long, List<Runnable>> events = new TreeMap<>();
+
+    /**
+     * The time of the last delivery in each direction, which keeps the packets in order.
+     */
+    private final long[] lastDeliveryMs = new long[2];
+
+    /**
+     * The send time of the packets of each track, by sequence number, or 0 if not sent.
+     */
+    private final long[][] sentAt = new long[SSRCS.length][65536];
+
+    /**
+     * The state of the packets of each track: 0 if not received, 1 if received in time, 2 if late.
+     */
+    private final int[][] state = new int[SSRCS.length][65536];
+
+    private int sent = 0;
+
+    private int late = 0;
+
+    private int duplicates = 0;
+
+    private int nackPackets = 0;
+
+    private int nackBytes = 0;
+
+    private int nackedSeqs = 0;
+
+    private int retransmissions = 0;
+
+    private final RetransmissionRequesterDelegate delegate;
+
+    private RetransmissionRequesterSimulation(int oneWayMs, int jitterBufferMs,
+            double pGoodToBad, double pBadToGood, double lossGood, double lossBad)
+    {
+        this.oneWayMs = oneWayMs;
+        this.jitterBufferMs = jitterBufferMs;
+        this.pGoodToBad = pGoodToBad;
+        this.pBadToGood = pBadToGood;
+        this.lossGood = lossGood;
+        this.lossBad = lossBad;
+
+        SendTrackStats sendStats = proxy(SendTrackStats.class, (name, args) ->
+                name.equals("getRtt") ? (Object) (2L * oneWayMs) : null);
+        MediaStreamStats2 stats = proxy(MediaStreamStats2.class, (name, args) ->
+                name.equals("getSendStats") ? sendStats
+                        : name.equals("getJitterBufferDelayMs") ? (Object) jitterBufferMs : null);
+        MediaStream stream = proxy(MediaStream.class, (name, args) -> {
+            if (name.equals("getMediaStreamStats")) {
+                return stats;
+            }
+            if (name.equals("injectPacket")) {
+                nackReceived((RawPacket) args[0]);
+            }
+            return null;
+        });
+
+        delegate = new RetransmissionRequesterDelegate(stream, new TimeProvider()
+        {
+            @Override
+            public long currentTimeMillis()
+            {
+                return BASE_MS + now;
+            }
+        });
+        delegate.setSenderSsrc(0x9999);
+    }
+
+    private interface Handler
+    {
+        Object invoke(String name, Object[] args);
+    }
+
+    /**
+     * Implements the methods of an interface that the delegate uses; the others return
+     * <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> iface, Handler handler)
+    {
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return iface.getSimpleName();
+                    default:
+                        return handler.invoke(method.getName(), args);
+                    }
+                });
+    }
+
+    private void at(long t, Runnable event)
+    {
+        events.computeIfAbsent(t, k -> new ArrayList<>()).add(event);
+    }
+
+    private boolean drop()
+    {
+        if (bad) {
+            if (random.nextDouble() < pBadToGood)
+                bad = false;
+        }
+        else if (random.nextDouble() < pGoodToBad) {
+            bad = true;
+        }
+        return random.nextDouble() < (bad ? lossBad : lossGood);
+    }
+
+    /**
+     * Sends something over the path in a direction, unless it is lost.
+     *
+     * @param direction 0 for the media, 1 for the NACKs.
+     * @param delivery what happens on delivery.
+     */
+    private void transmit(int direction, Runnable delivery)
+    {
+        if (drop())
+            return;
+
+        long deliveryMs = Math.max(lastDeliveryMs[direction],
+                now + oneWayMs + random.nextInt(Math.max(1, oneWayMs / 10)));
+        lastDeliveryMs[direction] = deliveryMs;
+        at(deliveryMs, delivery);
+    }
+
+    private void sendMedia(int track, int seq)
+    {
+        transmit(0, () -> {
+            if (state[track][seq] != 0) {
+                duplicates++;
+                return;
+            }
+            boolean inTime = BASE_MS + now <= sentAt[track][seq] + oneWayMs + jitterBufferMs;
+            state[track][seq] = inTime ? 1 : 2;
+            if (!inTime)
+                late++;
+            delegate.packetReceived(SSRCS[track], seq);
+        });
+    }
+
+    /**
+     * Sends a compound RTCP packet of NACKs to the sender, which retransmits the packets.
+     */
+    private void nackReceived(RawPacket packet)
+    {
+        byte[] buf = packet.getBuffer();
+        int end = packet.getOffset() + packet.getLength();
+        List<int[]> requests = new ArrayList<>();
+
+        nackPackets++;
+        nackBytes += packet.getLength() + 28;
+        for (int off = packet.getOffset(); off + 4 <= end; ) {
+            int length = ((((buf[off + 2] & 0xff) << 8) | (buf[off + 3] & 0xff)) + 1) * 4;
+            if ((buf[off + 1] & 0xff) == 205 && (buf[off] & 0x1f) == 1) {
+                long ssrc = ((buf[off + 8] & 0xffL) << 24) | ((buf[off + 9] & 0xff) << 16)
+                        | ((buf[off + 10] & 0xff) << 8) | (buf[off + 11] & 0xff);
+                int track = indexOf(ssrc);
+                for (int fci = off + 12; fci + 4 <= off + length; fci += 4) {
+                    int pid = ((buf[fci] & 0xff) << 8) | (buf[fci + 1] & 0xff);
+                    int blp = ((buf[fci + 2] & 0xff) << 8) | (buf[fci + 3] & 0xff);
+                    for (int i = 0; i <= 16; i++) {
+                        if (i == 0 || (blp & (1 << (i - 1))) != 0)
+                            requests.add(new int[]{track, (pid + i) & 0xffff});
+                    }
+                }
+            }
+            off += length;
+        }
+
+        transmit(1, () -> {
+            for (int[] request : requests) {
+                nackedSeqs++;
+                if (request[0] >= 0 && sentAt[request[0]][request[1]] != 0) {
+                    retransmissions++;
+                    sendMedia(request[0], request[1]);
+                }
+            }
+        });
+    }
+
+    private static int indexOf(long ssrc)
+    {
+        for (int i = 0; i < SSRCS.length; i++) {
+            if (SSRCS[i] == ssrc)
+                return i;
+        }
+        return -1;
+    }
+
+    private void run(int seconds)
+    {
+        int[] seqs = {1000, 30000, 65000};
+        long end = seconds * 1000L + 2L * oneWayMs + jitterBufferMs + 1500;
+
+        for (now = 0; now < end; now++) {
+            if (now < seconds * 1000L && now % 10 == 0) {
+                for (int track = 0; track < SSRCS.length; track++) {
+                    int count = (track < 2) ? 3 : (now % 20 == 0 ? 1 : 0);
+                    for (int k = 0; k < count; k++) {
+                        int seq = seqs[track]++ & 0xffff;
+                        sentAt[track][seq] = BASE_MS + now;
+                        sent++;
+                        sendMedia(track, seq);
+                    }
+                }
+            }
+
+            // The packets are received before the requester runs, as on its own thread.
+            List<Runnable> due = events.remove(now);
+            if (due != null) {
+                for (int i = 0; i < due.size(); i++) {
+                    due.get(i).run();
+                }
+            }
+            if (delegate.getTimeUntilNextRun() == 0) {
+                delegate.run();
+            }
+        }
+    }
+
+    private String report()
+    {
+        int missingAtPlayout = 0;
+        for (int track = 0; track < SSRCS.length; track++) {
+            for (int seq = 0; seq < 65536; seq++) {
+                if (sentAt[track][seq] != 0 && state[track][seq] != 1)
+                    missingAtPlayout++;
+            }
+        }
+        return String.format("sent=%d missing_at_playout=%d (%.3f%%) late=%d dup=%d"
+                        + " | nack_packets=%d nack_kbytes=%.1f nacked_seqs=%d retransmissions=%d"
+                        + " | missing=%d requested=%d recovered=%d recovered_late=%d abandoned=%d",
+                sent, missingAtPlayout, 100.0 * missingAtPlayout / sent, late, duplicates,
+                nackPackets, nackBytes / 1000.0, nackedSeqs, retransmissions,
+                delegate.getPacketsMissing(), delegate.getPacketsRequested(),
+                delegate.getPacketsRecovered(), delegate.getPacketsRecoveredLate(),
+                delegate.getPacketsAbandoned());
+    }
+
+    public static void main(String[] args)
+    {
+        RetransmissionRequesterSimulation simulation = new RetransmissionRequesterSimulation(
+                Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Double.parseDouble(args[2]), Double.parseDouble(args[3]),
+                Double.parseDouble(args[4]), Double.parseDouble(args[5]));
+        simulation.run(Integer.parseInt(args[6]));
+        System.out.println(simulation.report());
+    }
+}
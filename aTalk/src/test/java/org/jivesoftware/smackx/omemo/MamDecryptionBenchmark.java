@@ -0,0 +1,207 @@
+/*
+ * aTalk, android VoIP and Instant Messaging client
+ * Copyright 2014 Eng Chong Meng
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jivesoftware.smackx.omemo;
+
+import static org.jivesoftware.smackx.omemo.util.OmemoConstants.Crypto.CIPHERMODE;
+import static org.jivesoftware.smackx.omemo.util.OmemoConstants.Crypto.KEYLENGTH;
+import static org.jivesoftware.smackx.omemo.util.OmemoConstants.Crypto.KEYTYPE;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jivesoftware.smack.packet.Message;
+import org.jivesoftware.smackx.omemo.element.OmemoElement;
+import org.jivesoftware.smackx.omemo.element.OmemoElement_VAxolotl;
+import org.jivesoftware.smackx.omemo.element.OmemoHeaderElement_VAxolotl;
+import org.jivesoftware.smackx.omemo.internal.CipherAndAuthTag;
+import org.jivesoftware.smackx.omemo.internal.OmemoDevice;
+import org.jivesoftware.smackx.omemo.util.MessageOrOmemoMessage;
+import org.jivesoftware.smackx.omemo.util.OmemoMessageBuilder;
+import org.jxmpp.jid.BareJid;
+import org.jxmpp.jid.impl.JidCreate;
+import org.whispersystems.libsignal.IdentityKeyPair;
+import org.whispersystems.libsignal.SessionBuilder;
+import org.whispersystems.libsignal.SessionCipher;
+import org.whispersystems.libsignal.SignalProtocolAddress;
+import org.whispersystems.libsignal.protocol.CiphertextMessage;
+import org.whispersystems.libsignal.protocol.PreKeySignalMessage;
+import org.whispersystems.libsignal.protocol.SignalMessage;
+import org.whispersystems.libsignal.state.PreKeyBundle;
+import org.whispersystems.libsignal.state.PreKeyRecord;
+import org.whispersystems.libsignal.state.SignedPreKeyRecord;
+import org.whispersystems.libsignal.state.impl.InMemorySignalProtocolStore;
+import org.whispersystems.libsignal.util.KeyHelper;
+
+/**
+ * Measures the decryption throughput of a MAM page of OMEMO messages from several sender devices, over locally
+ * generated Signal sessions, in the two phases of {@link OmemoService#decryptMamQueryResult}: the message keys are
+ * unwrapped from the double ratchet of each sender device in archive order, then the AES-GCM payloads are decrypted
+ * with {@link OmemoService#decryptMamPayloads}, serially and on a pool.
+ *
+ * The ratchet step is the libsignal <code>SessionCipher</code> decryption which the Signal OMEMO ratchet performs, with
+ * in-memory stores: it does not go through an <code>OmemoManager</code> nor the SQLite OMEMO store, whose cost is not
+ * measured.
+ *
+ * Run with <code>java org.jivesoftware.smackx.omemo.MamDecryptionBenchmark [messages] [devices] [threads]
+ * [rounds]</code>.
+ *
+ * @author Eng Chong Meng
+ */
+public class MamDecryptionBenchmark {
+    private static final SignalProtocolAddress RECEIVER = new SignalProtocolAddress("receiver@example.org", 1);
+
+    public static void main(String[] args) throws Exception {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        int devices = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+        int rounds = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+
+        byte[] body = new byte[200];
+        Arrays.fill(body, (byte) 'a');
+        List<Message> messages = Collections.nCopies(count, null);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        for (int round = 0; round < rounds; round++) {
+            // A message key can only be unwrapped once, so each run gets a page of its own.
+            Page page = new Page(count, devices, body);
+            long start = System.nanoTime();
+            List<OmemoService.MamPayload> payloads = page.unwrap();
+            long unwrap = System.nanoTime() - start;
+            MessageOrOmemoMessage[] result = new MessageOrOmemoMessage[count];
+            OmemoService.decryptMamPayloads(messages, payloads, 0, 1, result);
+            long serial = System.nanoTime() - start;
+            check(result, body);
+
+            page = new Page(count, devices, body);
+            start = System.nanoTime();
+            List<OmemoService.MamPayload> pooledPayloads = page.unwrap();
+            MessageOrOmemoMessage[] pooledResult = new MessageOrOmemoMessage[count];
+            List<Future<?>> tasks = new ArrayList<>(threads);
+            for (int t = 1; t < threads; t++) {
+                final int first = t;
+                tasks.add(executor.submit(() -> OmemoService.decryptMamPayloads(messages, pooledPayloads, first,
+                        threads, pooledResult)));
+            }
+            OmemoService.decryptMamPayloads(messages, pooledPayloads, 0, threads, pooledResult);
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+            long pooled = System.nanoTime() - start;
+            check(pooledResult, body);
+
+            System.out.printf("%d messages from %d devices: unwrap %.0f msg/s; unwrap and payloads serial %.0f msg/s,"
+                            + " payloads on %d threads %.0f msg/s%n", count, devices, count * 1e9 / unwrap,
+                    count * 1e9 / serial, threads, count * 1e9 / pooled);
+        }
+        executor.shutdown();
+    }
+
+    private static void check(MessageOrOmemoMessage[] result, byte[] body) {
+        String expected = new String(body, StandardCharsets.UTF_8);
+        for (MessageOrOmemoMessage message : result) {
+            if (!message.isOmemoMessage() || !expected.equals(message.getOmemoMessage().getBody()))
+                throw new IllegalStateException("Payload not decrypted");
+        }
+    }
+
+    /**
+     * A page of OMEMO messages sent to the receiver by several devices in turn, each over a session that is
+     * established (the receiver has answered its first message), with the receiving side of the sessions.
+     */
+    private static class Page {
+        private final BareJid senderJid = JidCreate.bareFrom("sender@example.org");
+        private final SessionCipher[] receivingCiphers;
+        private final OmemoElement[] elements;
+        private final byte[][] wrappedKeys;
+
+        Page(int count, int devices, byte[] body) throws Exception {
+            IdentityKeyPair receiverIdentity = KeyHelper.generateIdentityKeyPair();
+            int receiverRegistrationId = KeyHelper.generateRegistrationId(false);
+            InMemorySignalProtocolStore receiverStore
+                    = new InMemorySignalProtocolStore(receiverIdentity, receiverRegistrationId);
+            SignedPreKeyRecord signedPreKey = KeyHelper.generateSignedPreKey(receiverIdentity, 1);
+            receiverStore.storeSignedPreKey(signedPreKey.getId(), signedPreKey);
+
+            SessionCipher[] sendingCiphers = new SessionCipher[devices];
+            receivingCiphers = new SessionCipher[devices];
+            for (int d = 0; d < devices; d++) {
+                PreKeyRecord preKey = KeyHelper.generatePreKeys(d + 1, 1).get(0);
+                receiverStore.storePreKey(preKey.getId(), preKey);
+
+                SignalProtocolAddress sender = new SignalProtocolAddress(senderJid.toString(), d + 1);
+                InMemorySignalProtocolStore senderStore = new InMemorySignalProtocolStore(
+                        KeyHelper.generateIdentityKeyPair(), KeyHelper.generateRegistrationId(false));
+                new SessionBuilder(senderStore, RECEIVER).process(new PreKeyBundle(receiverRegistrationId,
+                        RECEIVER.getDeviceId(), preKey.getId(), preKey.getKeyPair().getPublicKey(),
+                        signedPreKey.getId(), signedPreKey.getKeyPair().getPublicKey(), signedPreKey.getSignature(),
+                        receiverIdentity.getPublicKey()));
+
+                sendingCiphers[d] = new SessionCipher(senderStore, RECEIVER);
+                receivingCiphers[d] = new SessionCipher(receiverStore, sender);
+                CiphertextMessage hello = sendingCiphers[d].encrypt(new byte[32]);
+                receivingCiphers[d].decrypt(new PreKeySignalMessage(hello.serialize()));
+                CiphertextMessage answer = receivingCiphers[d].encrypt(new byte[32]);
+                sendingCiphers[d].decrypt(new SignalMessage(answer.serialize()));
+            }
+
+            elements = new OmemoElement[count];
+            wrappedKeys = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                int d = i % devices;
+                byte[] key = OmemoMessageBuilder.generateKey(KEYTYPE, KEYLENGTH);
+                byte[] iv = OmemoMessageBuilder.generateIv();
+                Cipher cipher = Cipher.getInstance(CIPHERMODE);
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, KEYTYPE), new GCMParameterSpec(128, iv));
+                byte[] cipherText = cipher.doFinal(body);
+
+                // The auth tag travels with the message key, not with the payload.
+                byte[] payload = Arrays.copyOf(cipherText, cipherText.length - 16);
+                byte[] keyAndAuthTag = Arrays.copyOf(key, 32);
+                System.arraycopy(cipherText, cipherText.length - 16, keyAndAuthTag, 16, 16);
+                wrappedKeys[i] = sendingCiphers[d].encrypt(keyAndAuthTag).serialize();
+                elements[i] = new OmemoElement_VAxolotl(
+                        new OmemoHeaderElement_VAxolotl(d + 1, Collections.emptyList(), iv), payload);
+            }
+        }
+
+        /**
+         * Unwraps the message keys of the page in archive order, as the first phase of the MAM decryption does.
+         */
+        List<OmemoService.MamPayload> unwrap() throws Exception {
+            List<OmemoService.MamPayload> payloads = new ArrayList<>(elements.length);
+            for (int i = 0; i < elements.length; i++) {
+                int d = elements[i].getHeader().getSid() - 1;
+                byte[] keyAndAuthTag = receivingCiphers[d].decrypt(new SignalMessage(wrappedKeys[i]));
+                CipherAndAuthTag cipherAndAuthTag = new CipherAndAuthTag(Arrays.copyOf(keyAndAuthTag, 16),
+                        elements[i].getHeader().getIv(), Arrays.copyOfRange(keyAndAuthTag, 16, 32), false);
+                payloads.add(new OmemoService.MamPayload(i, new OmemoService.UnwrappedMessage(elements[i],
+                        cipherAndAuthTag, null, new OmemoDevice(senderJid, d + 1))));
+            }
+            return payloads;
+        }
+    }
+}